@@ -28,6 +28,7 @@ import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import com.unboundid.util.ByteArrayPool;
 import com.unboundid.util.ByteStringBuffer;
 import com.unboundid.util.DebugType;
 import com.unboundid.util.Mutable;
@@ -147,6 +148,31 @@ public final class ASN1Buffer
 
 
 
+  /**
+   * Creates a new instance of this ASN.1 buffer with an optional maximum
+   * retained size whose backing arrays will be obtained from the provided
+   * pool.  No array will be obtained from the pool until data is written to
+   * the buffer, and the {@link #release} method should be called when the
+   * buffer is no longer needed so that its backing array can be reused.
+   *
+   * @param  maxBufferSize  The maximum buffer size that will be retained by
+   *                        this ASN.1 buffer.  A value less than or equal to
+   *                        zero indicates that no maximum size should be
+   *                        enforced.
+   * @param  pool           The pool from which to obtain backing arrays.  It
+   *                        may be {@code null} if arrays should always be
+   *                        allocated.
+   */
+  public ASN1Buffer(final int maxBufferSize, final ByteArrayPool pool)
+  {
+    this.maxBufferSize = maxBufferSize;
+
+    buffer            = new ByteStringBuffer(0, pool);
+    zeroBufferOnClear = new AtomicBoolean(false);
+  }
+
+
+
   /**
    * Indicates whether the content of the buffer should be zeroed out the next
    * time it is cleared in order to wipe any sensitive information it may
@@ -190,6 +216,20 @@ public final class ASN1Buffer
 
 
 
+  /**
+   * Clears the contents of this buffer and releases its backing array to the
+   * pool from which it was obtained, if any.  The buffer may continue to be
+   * used after it has been released, in which case a new backing array will be
+   * obtained when data is written to it.
+   */
+  public void release()
+  {
+    buffer.clear(zeroBufferOnClear.getAndSet(false));
+    buffer.release();
+  }
+
+
+
   /**
    * Retrieves the current length of this buffer in bytes.
    *
@@ -56,40 +56,37 @@ public final class ASN1OctetString
 
   /*
    * NOTE:  This class uses lazy initialization for the value.  The value may
-   * be initially specified as either a string or a byte array, and if the value
-   * is provided as a string, then the byte array version of that value will be
-   * computed on-demand later.  Even though this class is externally immutable,
-   * that does not by itself make it completely threadsafe, because weirdness in
-   * the Java memory model could allow the assignment to be performed out of
-   * order.  By passing the value through a volatile variable any time the value
-   * is set other than in the constructor (which will always be safe) we ensure
-   * that this reordering cannot happen.  This is only needed for the valueBytes
-   * array because it is not required for primitives (like length and offset) or
-   * for objects with only final fields (like stringValue).
-   *
-   * In the majority of cases, passing the value through a volatile variable is
-   * much faster than declaring valueBytes itself to be volatile because a
-   * volatile variable cannot be held in CPU caches or registers and must only
-   * be accessed from memory visible to all threads.  Since the value may be
-   * read much more often than it is written, passing it through a volatile
-   * variable rather than making it volatile directly can help avoid that
-   * penalty when possible.
+   * be initially specified as either a string or a byte array (or a portion of
+   * a larger byte array), and if the value is provided as a string or as a
+   * portion of a larger array, then a byte array containing only the value
+   * will be computed on-demand later.  Even though this class is externally
+   * immutable, that does not by itself make it completely threadsafe, because
+   * another thread could otherwise observe a partially-updated combination of
+   * the array, offset, and length.  To avoid that, the valueBytes, offset, and
+   * length fields are final and are never altered once the element has been
+   * constructed, and the array computed on-demand is held separately and is
+   * only published through a volatile variable once it has been fully
+   * populated.  Two threads may race to compute that array, but they will
+   * compute equivalent arrays from the same immutable source, so either result
+   * may be used.
    */
 
 
 
-  // The binary representation of the value for this element.
-  private byte[] valueBytes;
+  // The binary representation of the value for this element, or the array
+  // that contains it.  It will be null if the value was provided as a string.
+  private final byte[] valueBytes;
 
-  // A volatile variable used to guard publishing the valueBytes array.  See the
-  // note above to explain why this is needed.
-  private volatile byte[] valueBytesGuard;
+  // A byte array containing only the value for this element, if it has been
+  // computed on-demand because the value was provided as a string or as a
+  // portion of a larger array.
+  private transient volatile byte[] materializedValue;
 
   // The length of the value in the byte array, if applicable.
-  private int length;
+  private final int length;
 
   // The offset in the byte array at which the value begins, if applicable.
-  private int offset;
+  private final int offset;
 
   // The string representation of the value for this element.
   private String stringValue;
@@ -331,7 +328,14 @@ public final class ASN1OctetString
   @Override()
   public int getValueLength()
   {
-    return getValue().length;
+    if (valueBytes == null)
+    {
+      return getValue().length;
+    }
+    else
+    {
+      return length;
+    }
   }
 
 
@@ -342,23 +346,28 @@ public final class ASN1OctetString
   @Override()
   public byte[] getValue()
   {
-    if (valueBytes == null)
+    if ((valueBytes != null) && (offset == 0) && (length == valueBytes.length))
     {
-      valueBytesGuard = getBytes(stringValue);
-      offset          = 0;
-      length          = valueBytesGuard.length;
-      valueBytes      = valueBytesGuard;
+      return valueBytes;
     }
-    else if ((offset != 0) || (length != valueBytes.length))
+
+    byte[] value = materializedValue;
+    if (value == null)
     {
-      final byte[] newArray = new byte[length];
-      System.arraycopy(valueBytes, offset, newArray, 0, length);
-      offset = 0;
-      valueBytesGuard = newArray;
-      valueBytes      = valueBytesGuard;
+      if (valueBytes == null)
+      {
+        value = getBytes(stringValue);
+      }
+      else
+      {
+        value = new byte[length];
+        System.arraycopy(valueBytes, offset, value, 0, length);
+      }
+
+      materializedValue = value;
     }
 
-    return valueBytes;
+    return value;
   }
 
 
@@ -31,6 +31,7 @@ import java.net.SocketTimeoutException;
 import java.util.logging.Level;
 import javax.security.sasl.SaslClient;
 
+import com.unboundid.util.ByteArrayPool;
 import com.unboundid.util.Mutable;
 import com.unboundid.util.ThreadSafety;
 import com.unboundid.util.ThreadSafetyLevel;
@@ -63,6 +64,24 @@ public final class ASN1StreamReader
   // subsequent reads of an element.
   private boolean ignoreSubsequentSocketTimeout;
 
+  // Indicates whether to read the entire value of each top-level sequence into
+  // a single buffer that octet string values may reference.
+  private boolean useZeroCopyDecoding;
+
+  // The buffer holding the value of the top-level sequence currently being
+  // read, if zero-copy decoding is enabled.  It will be null if there is no
+  // such sequence or if its value has been completely consumed.
+  private byte[] sequenceBuffer;
+
+  // The position in the sequence buffer one byte beyond the end of the data.
+  private int sequenceBufferEnd;
+
+  // The position in the sequence buffer of the next byte to be read.
+  private int sequenceBufferPos;
+
+  // The pool from which temporary buffers should be obtained, if any.
+  private volatile ByteArrayPool bufferPool;
+
   // The input stream that will be used for reading data after it has been
   // unwrapped by SASL processing.
   private volatile ByteArrayInputStream saslInputStream;
@@ -137,6 +156,10 @@ public final class ASN1StreamReader
     totalBytesRead                = 0L;
     ignoreInitialSocketTimeout    = false;
     ignoreSubsequentSocketTimeout = false;
+    useZeroCopyDecoding           = false;
+    sequenceBuffer                = null;
+    sequenceBufferEnd             = 0;
+    sequenceBufferPos             = 0;
     saslClient                    = null;
     saslInputStream               = null;
   }
@@ -270,6 +293,76 @@ public final class ASN1StreamReader
 
 
 
+  /**
+   * Indicates whether this reader should use zero-copy decoding.  When
+   * zero-copy decoding is enabled, the entire value of each sequence that is
+   * not itself nested inside another sequence (for example, an LDAP message)
+   * will be read into a single buffer as soon as the sequence header is read,
+   * and octet strings read with the {@link #readOctetString} method will
+   * reference that buffer rather than a separate copy of their values.  This
+   * can significantly reduce the number of objects allocated when decoding
+   * elements with a large number of octet string values, at the expense of
+   * retaining the entire buffer for as long as any of those octet strings
+   * remain referenced.
+   *
+   * @return  {@code true} if this reader should use zero-copy decoding, or
+   *          {@code false} if not.
+   */
+  public boolean useZeroCopyDecoding()
+  {
+    return useZeroCopyDecoding;
+  }
+
+
+
+  /**
+   * Specifies whether this reader should use zero-copy decoding.  See the
+   * {@link #useZeroCopyDecoding()} method for details about zero-copy decoding.
+   * Any change will take effect with the next sequence that is not nested
+   * inside another sequence.
+   *
+   * @param  useZeroCopyDecoding  Indicates whether this reader should use
+   *                              zero-copy decoding.
+   */
+  public void setUseZeroCopyDecoding(final boolean useZeroCopyDecoding)
+  {
+    this.useZeroCopyDecoding = useZeroCopyDecoding;
+  }
+
+
+
+  /**
+   * Retrieves the pool from which this reader should obtain the temporary
+   * buffers that it uses while decoding data, if any.  Only buffers that are
+   * never exposed to the caller (for example, the raw bytes of a string value
+   * or data to be unwrapped by a SASL client) will be obtained from the pool.
+   *
+   * @return  The pool from which this reader should obtain temporary buffers,
+   *          or {@code null} if temporary buffers should always be newly
+   *          allocated.
+   */
+  public ByteArrayPool getBufferPool()
+  {
+    return bufferPool;
+  }
+
+
+
+  /**
+   * Specifies the pool from which this reader should obtain the temporary
+   * buffers that it uses while decoding data.
+   *
+   * @param  bufferPool  The pool from which this reader should obtain
+   *                     temporary buffers.  It may be {@code null} if
+   *                     temporary buffers should always be newly allocated.
+   */
+  public void setBufferPool(final ByteArrayPool bufferPool)
+  {
+    this.bufferPool = bufferPool;
+  }
+
+
+
   /**
    * Peeks at the next byte to be read from the input stream without actually
    * consuming it.
@@ -287,6 +380,11 @@ public final class ASN1StreamReader
   public int peek()
          throws IOException
   {
+    if (sequenceBuffer != null)
+    {
+      return (sequenceBuffer[sequenceBufferPos] & 0xFF);
+    }
+
     final InputStream is;
     if (saslClient == null)
     {
@@ -413,29 +511,50 @@ public final class ASN1StreamReader
       return;
     }
 
+    if (sequenceBuffer != null)
+    {
+      if (numBytes > (sequenceBufferEnd - sequenceBufferPos))
+      {
+        throw new IOException(ERR_READ_END_BEFORE_VALUE_END.get());
+      }
+
+      sequenceBufferPos += numBytes;
+      totalBytesRead += numBytes;
+      releaseConsumedSequenceBuffer();
+      return;
+    }
+
     if (saslClient != null)
     {
       int skippedSoFar = 0;
-      final byte[] skipBuffer = new byte[numBytes];
-      while (true)
+      final ByteArrayPool pool = bufferPool;
+      final byte[] skipBuffer = acquireBuffer(pool, numBytes);
+      try
       {
-        final int bytesRead = read(skipBuffer, skippedSoFar,
-             (numBytes - skippedSoFar));
-        if (bytesRead < 0)
+        while (true)
         {
-          // We unexpectedly hit the end of the stream.  We'll just return since
-          // we clearly can't skip any more, and subsequent read attempts will
-          // fail.
-          return;
-        }
+          final int bytesRead = read(skipBuffer, skippedSoFar,
+               (numBytes - skippedSoFar));
+          if (bytesRead < 0)
+          {
+            // We unexpectedly hit the end of the stream.  We'll just return
+            // since we clearly can't skip any more, and subsequent read
+            // attempts will fail.
+            return;
+          }
 
-        skippedSoFar += bytesRead;
-        totalBytesRead += bytesRead;
-        if (skippedSoFar >= numBytes)
-        {
-          return;
+          skippedSoFar += bytesRead;
+          totalBytesRead += bytesRead;
+          if (skippedSoFar >= numBytes)
+          {
+            return;
+          }
         }
       }
+      finally
+      {
+        releaseBuffer(pool, skipBuffer);
+      }
     }
 
     long totalBytesSkipped = inputStream.skip(numBytes);
@@ -837,6 +956,61 @@ public final class ASN1StreamReader
 
 
 
+  /**
+   * Reads an ASN.1 octet string element from the input stream.  If zero-copy
+   * decoding is enabled and the element is part of a sequence whose value has
+   * been buffered, then the octet string that is returned will reference that
+   * buffer rather than a separate copy of the value.
+   *
+   * @return  The ASN.1 octet string element read, or {@code null} if the end
+   *          of the input stream was reached before any data could be read.
+   *          If {@code null} is returned, then the input stream will have been
+   *          closed.
+   *
+   * @throws  IOException  If a problem occurs while reading from the input
+   *                       stream, if the end of the input stream is reached in
+   *                       the middle of the element, or or if an attempt is
+   *                       made to read an element larger than the maximum
+   *                       allowed size.
+   */
+  public ASN1OctetString readOctetString()
+         throws IOException
+  {
+    final int type = readType();
+    if (type < 0)
+    {
+      return null;
+    }
+
+    final int length = readLength();
+
+    final ASN1OctetString octetString;
+    if (sequenceBuffer == null)
+    {
+      final byte[] value = new byte[length];
+      readFully(value, length);
+      octetString = new ASN1OctetString((byte) type, value);
+    }
+    else
+    {
+      if (length > (sequenceBufferEnd - sequenceBufferPos))
+      {
+        throw new IOException(ERR_READ_END_BEFORE_VALUE_END.get());
+      }
+
+      octetString = new ASN1OctetString((byte) type, sequenceBuffer,
+           sequenceBufferPos, length);
+      sequenceBufferPos += length;
+      releaseConsumedSequenceBuffer();
+    }
+
+    totalBytesRead += length;
+    debugASN1Read(octetString);
+    return octetString;
+  }
+
+
+
   /**
    * Reads an ASN.1 octet string element from the input stream and returns the
    * value as a {@code String} using the UTF-8 encoding.
@@ -863,24 +1037,44 @@ public final class ASN1StreamReader
 
     final int length = readLength();
 
-    int valueBytesRead = 0;
-    int bytesRemaining = length;
-    final byte[] value = new byte[length];
-    while (valueBytesRead < length)
+    final String s;
+    if (sequenceBuffer == null)
     {
-      final int bytesRead = read(value, valueBytesRead, bytesRemaining);
-      if (bytesRead < 0)
+      final ByteArrayPool pool = bufferPool;
+      if ((pool == null) || (length < pool.getMinArraySize()))
+      {
+        final byte[] value = new byte[length];
+        readFully(value, length);
+        s = toUTF8String(value);
+      }
+      else
+      {
+        final byte[] value = pool.acquire(length);
+        try
+        {
+          readFully(value, length);
+          s = toUTF8String(value, 0, length);
+        }
+        finally
+        {
+          pool.release(value);
+        }
+      }
+    }
+    else
+    {
+      if (length > (sequenceBufferEnd - sequenceBufferPos))
       {
         throw new IOException(ERR_READ_END_BEFORE_VALUE_END.get());
       }
 
-      valueBytesRead += bytesRead;
-      bytesRemaining -= bytesRead;
+      s = toUTF8String(sequenceBuffer, sequenceBufferPos, length);
+      sequenceBufferPos += length;
+      releaseConsumedSequenceBuffer();
     }
 
     totalBytesRead += length;
 
-    final String s = toUTF8String(value);
     debugASN1Read(Level.INFO, "String", type, length, s);
     return s;
   }
@@ -918,7 +1112,22 @@ public final class ASN1StreamReader
     final int length = readLength();
 
     debugASN1Read(Level.INFO, "Sequence Header", type, length, null);
-    return new ASN1StreamReaderSequence(this, (byte) type, length);
+    final ASN1StreamReaderSequence sequence =
+         new ASN1StreamReaderSequence(this, (byte) type, length);
+
+    if (useZeroCopyDecoding && (sequenceBuffer == null) && (length > 0))
+    {
+      // Read the entire value of the sequence so that all of the elements it
+      // contains can be decoded from a single buffer.  The total number of
+      // bytes read will be updated as those elements are consumed.
+      final byte[] value = new byte[length];
+      readFully(value, length);
+      sequenceBuffer    = value;
+      sequenceBufferPos = 0;
+      sequenceBufferEnd = length;
+    }
+
+    return sequence;
   }
 
 
@@ -972,6 +1181,13 @@ public final class ASN1StreamReader
   private int read(final boolean initial)
           throws IOException
   {
+    if (sequenceBuffer != null)
+    {
+      final int b = (sequenceBuffer[sequenceBufferPos++] & 0xFF);
+      releaseConsumedSequenceBuffer();
+      return b;
+    }
+
     if (saslClient != null)
     {
       if (saslInputStream != null)
@@ -1047,6 +1263,17 @@ public final class ASN1StreamReader
   private int read(final byte[] buffer, final int offset, final int length)
           throws IOException
   {
+    if (sequenceBuffer != null)
+    {
+      final int bytesRead =
+           Math.min(length, (sequenceBufferEnd - sequenceBufferPos));
+      System.arraycopy(sequenceBuffer, sequenceBufferPos, buffer, offset,
+           bytesRead);
+      sequenceBufferPos += bytesRead;
+      releaseConsumedSequenceBuffer();
+      return bytesRead;
+    }
+
     if (saslClient != null)
     {
       if (saslInputStream != null)
@@ -1092,6 +1319,96 @@ public final class ASN1StreamReader
 
 
 
+  /**
+   * Reads the specified number of bytes into the beginning of the provided
+   * array.
+   *
+   * @param  value   The array to fill with data read from the input stream.
+   * @param  length  The number of bytes to read.  It must not be greater than
+   *                 the length of the provided array.
+   *
+   * @throws  IOException  If a problem occurs while reading data, or if the end
+   *                       of the input stream is reached before the requested
+   *                       number of bytes could be read.
+   */
+  private void readFully(final byte[] value, final int length)
+          throws IOException
+  {
+    int valueBytesRead = 0;
+    while (valueBytesRead < length)
+    {
+      final int bytesRead =
+           read(value, valueBytesRead, (length - valueBytesRead));
+      if (bytesRead < 0)
+      {
+        throw new IOException(ERR_READ_END_BEFORE_VALUE_END.get());
+      }
+
+      valueBytesRead += bytesRead;
+    }
+  }
+
+
+
+  /**
+   * Obtains a temporary buffer of at least the specified size, either from the
+   * provided pool or by allocating a new array.
+   *
+   * @param  pool    The pool from which to obtain the buffer.  It may be
+   *                 {@code null} if a new array should be allocated.
+   * @param  length  The minimum size for the buffer.
+   *
+   * @return  The buffer that was obtained.
+   */
+  private static byte[] acquireBuffer(final ByteArrayPool pool,
+                                      final int length)
+  {
+    if (pool == null)
+    {
+      return new byte[length];
+    }
+    else
+    {
+      return pool.acquire(length);
+    }
+  }
+
+
+
+  /**
+   * Returns the provided temporary buffer to the given pool, if appropriate.
+   *
+   * @param  pool    The pool from which the buffer was obtained.  It may be
+   *                 {@code null} if the buffer was newly allocated.
+   * @param  buffer  The buffer to be released.
+   */
+  private static void releaseBuffer(final ByteArrayPool pool,
+                                    final byte[] buffer)
+  {
+    if (pool != null)
+    {
+      pool.release(buffer);
+    }
+  }
+
+
+
+  /**
+   * Releases the sequence buffer if all of the data it contains has been
+   * consumed, so that subsequent reads will use the input stream.
+   */
+  private void releaseConsumedSequenceBuffer()
+  {
+    if (sequenceBufferPos >= sequenceBufferEnd)
+    {
+      sequenceBuffer    = null;
+      sequenceBufferPos = 0;
+      sequenceBufferEnd = 0;
+    }
+  }
+
+
+
   /**
    * Sets the SASL client to use to unwrap any data read over this ASN.1 stream
    * reader.
@@ -1164,26 +1481,35 @@ public final class ASN1StreamReader
     }
 
     int wrappedDataPos = 0;
-    final byte[] wrappedData = new byte[numWrappedBytes];
-    while (true)
+    final ByteArrayPool pool = bufferPool;
+    final byte[] wrappedData = acquireBuffer(pool, numWrappedBytes);
+    final byte[] unwrappedData;
+    try
     {
-      final int numBytesRead = inputStream.read(wrappedData, wrappedDataPos,
-           (numWrappedBytes - wrappedDataPos));
-      if (numBytesRead < 0)
+      while (true)
       {
-        throw new IOException(ERR_STREAM_READER_EOS_READING_SASL_DATA.get(
-             wrappedDataPos, numWrappedBytes));
-      }
+        final int numBytesRead = inputStream.read(wrappedData, wrappedDataPos,
+             (numWrappedBytes - wrappedDataPos));
+        if (numBytesRead < 0)
+        {
+          throw new IOException(ERR_STREAM_READER_EOS_READING_SASL_DATA.get(
+               wrappedDataPos, numWrappedBytes));
+        }
 
-      wrappedDataPos += numBytesRead;
-      if (wrappedDataPos >= numWrappedBytes)
-      {
-        break;
+        wrappedDataPos += numBytesRead;
+        if (wrappedDataPos >= numWrappedBytes)
+        {
+          break;
+        }
       }
+
+      unwrappedData = saslClient.unwrap(wrappedData, 0, numWrappedBytes);
+    }
+    finally
+    {
+      releaseBuffer(pool, wrappedData);
     }
 
-    final byte[] unwrappedData =
-         saslClient.unwrap(wrappedData, 0, numWrappedBytes);
     saslInputStream = new ByteArrayInputStream(unwrappedData, 0,
          unwrappedData.length);
   }
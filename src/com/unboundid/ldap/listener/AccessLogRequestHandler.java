@@ -604,6 +604,13 @@ public final class AccessLogRequestHandler
       final long startTimeNanos = System.nanoTime();
       final LDAPMessage responseMessage = requestHandler.processSearchRequest(
            messageID, request, controls);
+      if (responseMessage == null)
+      {
+        // The search is still active (e.g., a persistent search), so there is
+        // no result to log.
+        return null;
+      }
+
       final long eTimeNanos = System.nanoTime() - startTimeNanos;
       final SearchResultDoneProtocolOp protocolOp =
            responseMessage.getSearchResultDoneProtocolOp();
@@ -680,6 +680,28 @@ public final class InMemoryDirectoryServer
 
 
 
+  /**
+   * Writes a checkpoint of the current content of this in-memory directory
+   * server instance to the configured journal directory and waits for it to
+   * be written.  Once this method returns, a new server instance created with
+   * the same journal directory will be able to recover this content without
+   * replaying any of the changes journaled before the checkpoint.
+   * <BR><BR>
+   * This method may be used regardless of whether the server is listening for
+   * client connections.
+   *
+   * @throws  LDAPException  If the server is not configured with a journal
+   *                         directory, or if a problem occurs while writing
+   *                         the checkpoint.
+   */
+  public void checkpointJournal()
+         throws LDAPException
+  {
+    inMemoryHandler.checkpointJournal();
+  }
+
+
+
   /**
    * Retrieves the list of base DNs configured for use by the server.
    *
@@ -1228,6 +1250,96 @@ public final class InMemoryDirectoryServer
 
 
 
+  /**
+   * Reads entries from the specified LDIF file and loads them into the server
+   * in bulk, optionally replacing all existing entries.  The LDIF file will be
+   * parsed by the specified number of threads, and the same number of threads
+   * will be used to validate the entries that are read.  See the
+   * {@link #bulkImportFromLDIF(boolean,LDIFReader,int)} method for details
+   * about how a bulk import differs from a normal import.
+   * <BR><BR>
+   * This method may be used regardless of whether the server is listening for
+   * client connections.
+   *
+   * @param  clear       Indicates whether to remove all existing entries prior
+   *                     to adding entries read from LDIF.
+   * @param  path        The path to the LDIF file from which the entries
+   *                     should be read.  It must not be {@code null}.
+   * @param  numThreads  The number of threads to use to parse and validate
+   *                     entries.  If this is less than or equal to one, then
+   *                     all processing will be performed by the calling
+   *                     thread.
+   *
+   * @return  Information about the entries that were imported and the time
+   *          required to import them.
+   *
+   * @throws  LDAPException  If a problem occurs while reading entries or if
+   *                         any of them cannot be added to the server.
+   */
+  public InMemoryDirectoryServerBulkImportResult bulkImportFromLDIF(
+              final boolean clear, final String path, final int numThreads)
+         throws LDAPException
+  {
+    final LDIFReader reader;
+    try
+    {
+      reader = new LDIFReader(path, ((numThreads > 1) ? numThreads : 0));
+    }
+    catch (final Exception e)
+    {
+      Debug.debugException(e);
+      throw new LDAPException(ResultCode.LOCAL_ERROR,
+           ERR_MEM_DS_INIT_FROM_LDIF_CANNOT_CREATE_READER.get(path,
+                StaticUtils.getExceptionMessage(e)),
+           e);
+    }
+
+    return bulkImportFromLDIF(clear, reader, numThreads);
+  }
+
+
+
+  /**
+   * Reads entries from the provided LDIF reader and loads them into the server
+   * in bulk, optionally replacing all existing entries.  This may be
+   * considerably faster than {@link #importFromLDIF(boolean,LDIFReader)} for
+   * large data sets.  Entries are validated in parallel without blocking other
+   * operations, and are then sorted by DN and swapped into the server in a
+   * single step, after which all attribute indexes are rebuilt in one pass.
+   * Each entry is subject to the same constraints as an entry added with the
+   * {@code importFromLDIF} method, and if any entry cannot be added, then the
+   * content of the server will not be altered.  However, bulk-loaded entries
+   * will not be recorded in the changelog or delivered to persistent search or
+   * content synchronization requests.
+   * <BR><BR>
+   * This method may be used regardless of whether the server is listening for
+   * client connections.
+   *
+   * @param  clear       Indicates whether to remove all existing entries prior
+   *                     to adding entries read from LDIF.
+   * @param  reader      The LDIF reader to use to obtain the entries to be
+   *                     imported.  It will be closed before this method
+   *                     returns.
+   * @param  numThreads  The number of threads to use to validate entries.  If
+   *                     this is less than or equal to one, then all entries
+   *                     will be validated by the calling thread.
+   *
+   * @return  Information about the entries that were imported and the time
+   *          required to import them.
+   *
+   * @throws  LDAPException  If a problem occurs while reading entries or if
+   *                         any of them cannot be added to the server.
+   */
+  public InMemoryDirectoryServerBulkImportResult bulkImportFromLDIF(
+              final boolean clear, final LDIFReader reader,
+              final int numThreads)
+         throws LDAPException
+  {
+    return inMemoryHandler.bulkImportFromLDIF(clear, reader, numThreads);
+  }
+
+
+
   /**
    * Writes the current contents of the server in LDIF form to the specified
    * file.
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.listener;
+
+
+
+import java.io.Serializable;
+
+import com.unboundid.util.NotMutable;
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+
+
+/**
+ * This class provides information about the result of a bulk import into an
+ * in-memory directory server, including the number of entries imported and the
+ * time spent in each phase of the import.  The import consists of a prepare
+ * phase, in which entries are read from LDIF, validated, and sorted by DN, and
+ * a load phase, in which the prepared entries are merged with any existing
+ * content, swapped into the server, and indexed.
+ */
+@NotMutable()
+@ThreadSafety(level=ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+public final class InMemoryDirectoryServerBulkImportResult
+       implements Serializable
+{
+  /**
+   * The serial version UID for this serializable class.
+   */
+  private static final long serialVersionUID = -3104886426018391253L;
+
+
+
+  // The number of entries that were imported.
+  private final int entriesImported;
+
+  // The length of time in milliseconds spent in the load phase.
+  private final long loadDurationMillis;
+
+  // The length of time in milliseconds spent in the prepare phase.
+  private final long prepareDurationMillis;
+
+
+
+  /**
+   * Creates a new bulk import result with the provided information.
+   *
+   * @param  entriesImported        The number of entries that were imported.
+   * @param  prepareDurationMillis  The length of time in milliseconds spent
+   *                                reading, validating, and sorting entries.
+   * @param  loadDurationMillis     The length of time in milliseconds spent
+   *                                loading the prepared entries into the
+   *                                server and indexing them.
+   */
+  InMemoryDirectoryServerBulkImportResult(final int entriesImported,
+                                          final long prepareDurationMillis,
+                                          final long loadDurationMillis)
+  {
+    this.entriesImported       = entriesImported;
+    this.prepareDurationMillis = prepareDurationMillis;
+    this.loadDurationMillis    = loadDurationMillis;
+  }
+
+
+
+  /**
+   * Retrieves the number of entries that were read from LDIF and added to the
+   * server.
+   *
+   * @return  The number of entries that were read from LDIF and added to the
+   *          server.
+   */
+  public int getEntriesImported()
+  {
+    return entriesImported;
+  }
+
+
+
+  /**
+   * Retrieves the length of time in milliseconds spent reading entries from
+   * LDIF, validating them, and sorting them by DN.
+   *
+   * @return  The length of time in milliseconds spent reading entries from
+   *          LDIF, validating them, and sorting them by DN.
+   */
+  public long getPrepareDurationMillis()
+  {
+    return prepareDurationMillis;
+  }
+
+
+
+  /**
+   * Retrieves the length of time in milliseconds spent merging the prepared
+   * entries with any existing content, swapping them into the server, and
+   * building the attribute indexes.  Other operations that alter the server
+   * content will have been blocked during this time.
+   *
+   * @return  The length of time in milliseconds spent loading the prepared
+   *          entries into the server.
+   */
+  public long getLoadDurationMillis()
+  {
+    return loadDurationMillis;
+  }
+
+
+
+  /**
+   * Retrieves the total length of time in milliseconds spent processing the
+   * import.
+   *
+   * @return  The total length of time in milliseconds spent processing the
+   *          import.
+   */
+  public long getTotalDurationMillis()
+  {
+    return (prepareDurationMillis + loadDurationMillis);
+  }
+
+
+
+  /**
+   * Retrieves the average number of entries imported per second over the
+   * duration of the import.
+   *
+   * @return  The average number of entries imported per second.
+   */
+  public double getEntriesPerSecond()
+  {
+    final long totalDurationMillis = Math.max(1L, getTotalDurationMillis());
+    return (1000.0d * entriesImported / totalDurationMillis);
+  }
+
+
+
+  /**
+   * Retrieves a string representation of this bulk import result.
+   *
+   * @return  A string representation of this bulk import result.
+   */
+  @Override()
+  public String toString()
+  {
+    final StringBuilder buffer = new StringBuilder();
+    toString(buffer);
+    return buffer.toString();
+  }
+
+
+
+  /**
+   * Appends a string representation of this bulk import result to the
+   * provided buffer.
+   *
+   * @param  buffer  The buffer to which the information should be appended.
+   */
+  public void toString(final StringBuilder buffer)
+  {
+    buffer.append("InMemoryDirectoryServerBulkImportResult(entriesImported=");
+    buffer.append(entriesImported);
+    buffer.append(", prepareDurationMillis=");
+    buffer.append(prepareDurationMillis);
+    buffer.append(", loadDurationMillis=");
+    buffer.append(loadDurationMillis);
+    buffer.append(", entriesPerSecond=");
+    buffer.append(Math.round(getEntriesPerSecond()));
+    buffer.append(')');
+  }
+}
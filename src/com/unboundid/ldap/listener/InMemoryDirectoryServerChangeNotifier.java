@@ -0,0 +1,599 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.listener;
+
+
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.controls.PersistentSearchChangeType;
+import com.unboundid.util.Debug;
+import com.unboundid.util.LDAPSDKThreadFactory;
+import com.unboundid.util.Mutable;
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+
+
+/**
+ * This class provides a mechanism for delivering notifications about changes
+ * made in the in-memory directory server to interested subscribers, like
+ * persistent search and content synchronization requests.  Changes are
+ * published by the thread processing the write operation, which only needs to
+ * add each change to the queue of each interested subscriber.  The changes in
+ * each queue are delivered, in order, by a thread from a shared pool, so a
+ * subscriber that is slow to consume changes will not delay write operations
+ * or the delivery of changes to other subscribers.  Each queue is bounded, and
+ * a subscriber whose queue fills up will be notified and will not receive any
+ * further changes.
+ * <BR><BR>
+ * This class also maintains a change sequence number that is incremented for
+ * every change, and that may be used to construct a cookie that represents the
+ * state of the data at a given point in time.
+ */
+@Mutable()
+@ThreadSafety(level=ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+final class InMemoryDirectoryServerChangeNotifier
+{
+  // The sequence number for the most recent change.
+  private final AtomicLong changeSequence;
+
+  // The subscribers that are currently registered.
+  private final CopyOnWriteArrayList<Subscriber> subscribers;
+
+  // A string that uniquely identifies this notifier, and is used to ensure
+  // that cookies from a different server instance will not be accepted.
+  private final String instanceID;
+
+  // The executor used to deliver changes to subscribers.
+  private final ThreadPoolExecutor deliveryExecutor;
+
+
+
+  /**
+   * Creates a new change notifier with no subscribers.
+   */
+  InMemoryDirectoryServerChangeNotifier()
+  {
+    changeSequence = new AtomicLong(0L);
+    subscribers = new CopyOnWriteArrayList<Subscriber>();
+    instanceID = UUID.randomUUID().toString();
+
+    // Delivery threads will be created as needed and will exit once they have
+    // been idle for a while.  Each subscriber will use at most one thread at a
+    // time.
+    deliveryExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L,
+         TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+         new LDAPSDKThreadFactory(
+              "In-Memory Directory Server Change Notification Delivery",
+              true));
+  }
+
+
+
+  /**
+   * Publishes information about a change to all registered subscribers that
+   * are interested in it.  This must be called while holding the lock that
+   * prevents concurrent write operations, so that changes are published in the
+   * order in which they were applied.
+   *
+   * @param  changeType   The type of change that was processed.
+   * @param  entryBefore  The entry as it appeared before the change.  It will
+   *                      be {@code null} for an add.
+   * @param  entryAfter   The entry as it appeared after the change.  It will
+   *                      be {@code null} for a delete.
+   */
+  void publish(final PersistentSearchChangeType changeType,
+               final Entry entryBefore, final Entry entryAfter)
+  {
+    final long sequenceNumber = changeSequence.incrementAndGet();
+    if (subscribers.isEmpty())
+    {
+      return;
+    }
+
+    final Change change = new Change(changeType, entryBefore, entryAfter,
+         sequenceNumber, getCookie(sequenceNumber));
+    for (final Subscriber s : subscribers)
+    {
+      s.offer(change);
+    }
+  }
+
+
+
+  /**
+   * Indicates that the data has been altered in a way that is not represented
+   * by individual changes (e.g., because it has been replaced with the contents
+   * of an LDIF file), so that cookies obtained before this point will no
+   * longer be considered current.
+   */
+  void invalidateCookies()
+  {
+    changeSequence.incrementAndGet();
+  }
+
+
+
+  /**
+   * Retrieves a cookie that represents the state of the data after the most
+   * recent change.  To ensure that it is consistent with the data, this should
+   * be called while holding a lock that prevents concurrent write operations.
+   *
+   * @return  A cookie that represents the state of the data after the most
+   *          recent change.
+   */
+  ASN1OctetString getCookie()
+  {
+    return getCookie(changeSequence.get());
+  }
+
+
+
+  /**
+   * Retrieves a cookie that represents the state of the data after the change
+   * with the specified sequence number.
+   *
+   * @param  sequenceNumber  The sequence number for the change.
+   *
+   * @return  A cookie that represents the state of the data after the change
+   *          with the specified sequence number.
+   */
+  private ASN1OctetString getCookie(final long sequenceNumber)
+  {
+    return new ASN1OctetString(instanceID + ':' + sequenceNumber);
+  }
+
+
+
+  /**
+   * Registers the provided subscriber so that it will be notified of any
+   * subsequent changes that it accepts.  Changes will be held in the
+   * subscriber's queue until its {@link Subscriber#start} method is called.
+   *
+   * @param  subscriber  The subscriber to register.
+   */
+  void register(final Subscriber subscriber)
+  {
+    subscribers.add(subscriber);
+  }
+
+
+
+  /**
+   * Deregisters the provided subscriber so that it will not be notified of any
+   * further changes.
+   *
+   * @param  subscriber  The subscriber to deregister.
+   */
+  void deregister(final Subscriber subscriber)
+  {
+    subscribers.remove(subscriber);
+  }
+
+
+
+  /**
+   * Retrieves the number of subscribers that are currently registered.
+   *
+   * @return  The number of subscribers that are currently registered.
+   */
+  int getSubscriberCount()
+  {
+    return subscribers.size();
+  }
+
+
+
+  /**
+   * This class provides information about a single change.
+   */
+  static final class Change
+  {
+    // The cookie that represents the state of the data after this change.
+    private final ASN1OctetString cookie;
+
+    // The entry as it appeared after the change.
+    private final Entry entryAfter;
+
+    // The entry as it appeared before the change.
+    private final Entry entryBefore;
+
+    // The sequence number for this change.
+    private final long sequenceNumber;
+
+    // The type of change that was processed.
+    private final PersistentSearchChangeType changeType;
+
+
+
+    /**
+     * Creates a new change with the provided information.
+     *
+     * @param  changeType      The type of change that was processed.
+     * @param  entryBefore     The entry as it appeared before the change.
+     * @param  entryAfter      The entry as it appeared after the change.
+     * @param  sequenceNumber  The sequence number for this change.
+     * @param  cookie          The cookie that represents the state of the
+     *                         data after this change.
+     */
+    private Change(final PersistentSearchChangeType changeType,
+                   final Entry entryBefore, final Entry entryAfter,
+                   final long sequenceNumber, final ASN1OctetString cookie)
+    {
+      this.changeType     = changeType;
+      this.entryBefore    = entryBefore;
+      this.entryAfter     = entryAfter;
+      this.sequenceNumber = sequenceNumber;
+      this.cookie         = cookie;
+    }
+
+
+
+    /**
+     * Retrieves the type of change that was processed.
+     *
+     * @return  The type of change that was processed.
+     */
+    PersistentSearchChangeType getChangeType()
+    {
+      return changeType;
+    }
+
+
+
+    /**
+     * Retrieves the entry as it appeared before the change.
+     *
+     * @return  The entry as it appeared before the change, or {@code null} if
+     *          the change was an add.
+     */
+    Entry getEntryBefore()
+    {
+      return entryBefore;
+    }
+
+
+
+    /**
+     * Retrieves the entry as it appeared after the change.
+     *
+     * @return  The entry as it appeared after the change, or {@code null} if
+     *          the change was a delete.
+     */
+    Entry getEntryAfter()
+    {
+      return entryAfter;
+    }
+
+
+
+    /**
+     * Retrieves the DN of the entry before the change, if it was a modify DN
+     * operation.
+     *
+     * @return  The DN of the entry before the change, or {@code null} if the
+     *          change was not a modify DN operation.
+     */
+    String getPreviousDN()
+    {
+      if (changeType == PersistentSearchChangeType.MODIFY_DN)
+      {
+        return entryBefore.getDN();
+      }
+      else
+      {
+        return null;
+      }
+    }
+
+
+
+    /**
+     * Retrieves the sequence number for this change.
+     *
+     * @return  The sequence number for this change.
+     */
+    long getSequenceNumber()
+    {
+      return sequenceNumber;
+    }
+
+
+
+    /**
+     * Retrieves the cookie that represents the state of the data after this
+     * change.
+     *
+     * @return  The cookie that represents the state of the data after this
+     *          change.
+     */
+    ASN1OctetString getCookie()
+    {
+      return cookie;
+    }
+  }
+
+
+
+  /**
+   * This class provides the basis for a subscriber that will be notified of
+   * changes.  Each subscriber has a bounded queue of changes waiting to be
+   * delivered, and adding a change to that queue will never block.  If the
+   * queue is full when a change needs to be added, then the subscriber will be
+   * deregistered and its {@link #backlogExceeded} method will be called.
+   */
+  abstract static class Subscriber
+           implements Runnable
+  {
+    // Indicates whether the subscriber has been cancelled.
+    private volatile boolean cancelled;
+
+    // Indicates whether the maximum backlog has been exceeded.
+    private volatile boolean overflowed;
+
+    // Indicates whether delivery has been started.
+    private volatile boolean started;
+
+    // Indicates whether a delivery task is currently scheduled or running.
+    private final AtomicBoolean scheduled;
+
+    // The number of changes waiting to be delivered.
+    private final AtomicInteger backlog;
+
+    // The changes waiting to be delivered.
+    private final ConcurrentLinkedQueue<Change> queue;
+
+    // The notifier with which this subscriber is associated.
+    private final InMemoryDirectoryServerChangeNotifier notifier;
+
+    // The maximum number of changes that may be waiting to be delivered.
+    private final int maxBacklog;
+
+
+
+    /**
+     * Creates a new subscriber with the provided information.  It will not
+     * be registered with the notifier.
+     *
+     * @param  notifier    The notifier with which this subscriber is
+     *                     associated.
+     * @param  maxBacklog  The maximum number of changes that may be waiting to
+     *                     be delivered.
+     */
+    Subscriber(final InMemoryDirectoryServerChangeNotifier notifier,
+               final int maxBacklog)
+    {
+      this.notifier   = notifier;
+      this.maxBacklog = maxBacklog;
+
+      cancelled  = false;
+      overflowed = false;
+      started    = false;
+      scheduled  = new AtomicBoolean(false);
+      backlog    = new AtomicInteger(0);
+      queue      = new ConcurrentLinkedQueue<Change>();
+    }
+
+
+
+    /**
+     * Indicates whether this subscriber may be interested in the provided
+     * change.  This will be called by the thread processing the write
+     * operation, so it should be fast and must not block.  Any more expensive
+     * checks should be performed when the change is delivered.
+     *
+     * @param  change  The change for which to make the determination.
+     *
+     * @return  {@code true} if the change should be added to this subscriber's
+     *          queue, or {@code false} if not.
+     */
+    abstract boolean accepts(final Change change);
+
+
+
+    /**
+     * Delivers the provided change.
+     *
+     * @param  change  The change to deliver.
+     *
+     * @return  {@code true} if the subscriber should continue to receive
+     *          changes, or {@code false} if not.
+     */
+    abstract boolean deliver(final Change change);
+
+
+
+    /**
+     * Performs any necessary processing when this subscriber is terminated
+     * because the number of changes waiting to be delivered exceeded the
+     * maximum backlog.  It will be called by a delivery thread.
+     */
+    abstract void backlogExceeded();
+
+
+
+    /**
+     * Retrieves the maximum number of changes that may be waiting to be
+     * delivered.
+     *
+     * @return  The maximum number of changes that may be waiting to be
+     *          delivered.
+     */
+    final int getMaxBacklog()
+    {
+      return maxBacklog;
+    }
+
+
+
+    /**
+     * Adds the provided change to the queue for this subscriber, if it is
+     * interested in it.
+     *
+     * @param  change  The change to add.
+     */
+    final void offer(final Change change)
+    {
+      if (cancelled || overflowed || (! accepts(change)))
+      {
+        return;
+      }
+
+      if (backlog.incrementAndGet() > maxBacklog)
+      {
+        overflowed = true;
+        notifier.deregister(this);
+        queue.clear();
+      }
+      else
+      {
+        queue.add(change);
+      }
+
+      schedule();
+    }
+
+
+
+    /**
+     * Starts delivering changes to this subscriber, including any changes
+     * that were queued after it was registered.
+     */
+    final void start()
+    {
+      started = true;
+      schedule();
+    }
+
+
+
+    /**
+     * Cancels this subscriber so that it will not receive any further changes.
+     */
+    final void cancel()
+    {
+      cancelled = true;
+      notifier.deregister(this);
+      queue.clear();
+    }
+
+
+
+    /**
+     * Indicates whether this subscriber has been cancelled.
+     *
+     * @return  {@code true} if this subscriber has been cancelled, or
+     *          {@code false} if not.
+     */
+    final boolean isCancelled()
+    {
+      return cancelled;
+    }
+
+
+
+    /**
+     * Ensures that a delivery task is scheduled for this subscriber if
+     * delivery has been started and there is work to do.
+     */
+    private void schedule()
+    {
+      if (started && scheduled.compareAndSet(false, true))
+      {
+        try
+        {
+          notifier.deliveryExecutor.execute(this);
+        }
+        catch (final RejectedExecutionException ree)
+        {
+          Debug.debugException(ree);
+          scheduled.set(false);
+        }
+      }
+    }
+
+
+
+    /**
+     * Delivers all changes in the queue for this subscriber.
+     */
+    public final void run()
+    {
+      while (true)
+      {
+        try
+        {
+          if (overflowed && (! cancelled))
+          {
+            cancelled = true;
+            backlogExceeded();
+            return;
+          }
+
+          while (! cancelled)
+          {
+            final Change change = queue.poll();
+            if (change == null)
+            {
+              break;
+            }
+
+            backlog.decrementAndGet();
+            if (! deliver(change))
+            {
+              cancel();
+            }
+          }
+        }
+        catch (final Exception e)
+        {
+          Debug.debugException(e);
+          cancel();
+        }
+        finally
+        {
+          scheduled.set(false);
+        }
+
+        // If more changes were added after the queue was found to be empty but
+        // before the scheduled flag was cleared, then make sure that they are
+        // delivered.
+        if (cancelled || (queue.isEmpty() && (! overflowed)) ||
+            (! scheduled.compareAndSet(false, true)))
+        {
+          return;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,626 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.listener;
+
+
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.ReadOnlyEntry;
+import com.unboundid.ldap.sdk.schema.Schema;
+import com.unboundid.util.ByteStringBuffer;
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+
+
+/**
+ * This class provides a store that may be used to hold the entries of an
+ * in-memory directory server in a compact encoded form in direct byte buffers,
+ * so that they do not occupy space in the JVM heap.  Entries are appended to
+ * fixed-size segments, and each stored entry is represented by a small handle
+ * that references the segment and the location of the entry within it.  An
+ * entry is decoded into a new {@code ReadOnlyEntry} each time it is retrieved.
+ * <BR><BR>
+ * The DN of an entry is not included in its encoded form, since it is always
+ * available from the entry map.  The encoding consists of the number of
+ * attributes, followed by the attribute name identifier, the number of values,
+ * and the length and bytes of each value for each attribute, with all integers
+ * written in a variable-length form.  Attribute names are held in a dictionary
+ * that is shared by all entries in the store.
+ * <BR><BR>
+ * Segments are never altered once an entry has been written to them, and the
+ * memory for a segment will be reclaimed by the garbage collector once no
+ * handles remain for any of the entries written to it (including any handles
+ * held in snapshots).  The map that owns the store reports when each handle
+ * starts and stops being part of its current content, so that the store can
+ * keep track of the number of live bytes in each segment.  When more than half
+ * of the bytes written to the segments in use have been superseded, the map
+ * compacts the store by re-storing the live entries from each segment in
+ * which more than a quarter of the bytes have been superseded, so that those
+ * segments may be reclaimed.  Entries may only be stored by one thread at a
+ * time, but they may be retrieved by any number of threads concurrently.
+ */
+@ThreadSafety(level=ThreadSafetyLevel.MOSTLY_THREADSAFE)
+final class InMemoryDirectoryServerCompactEntryStore
+{
+  /**
+   * The size in bytes of each segment to which entries are written.  Entries
+   * whose encoded form is larger than this will be written to a dedicated
+   * buffer of the appropriate size.
+   */
+  static final int SEGMENT_SIZE = 8 * 1024 * 1024;
+
+
+
+  // The buffer used to encode entries.
+  private final ByteStringBuffer encodeBuffer;
+
+  // The segments that hold at least one live entry.
+  private final LinkedHashSet<Segment> liveSegments;
+
+  // The segment to which entries are currently being written.  It will be null
+  // if no entries have been written since the store was created, cleared, or
+  // compacted.
+  private Segment currentSegment;
+
+  // The map from attribute names to their identifiers.
+  private final HashMap<String,Integer> attributeNameIDs;
+
+  // The number of times the store has been compacted.
+  private volatile long numCompactions;
+
+  // The total number of bytes allocated for segments that hold at least one
+  // live entry.
+  private volatile long allocatedBytes;
+
+  // The total number of bytes held by live entries.
+  private volatile long liveBytes;
+
+  // The total number of bytes that have been written to segments that hold at
+  // least one live entry.
+  private long writtenBytes;
+
+  // The attribute names, indexed by their identifiers.  Once a name has been
+  // added, the array will be published again so that it is visible to threads
+  // decoding entries that use the name.
+  private volatile String[] attributeNames;
+
+  // The reference to the schema to use when decoding entries.
+  private final AtomicReference<Schema> schemaRef;
+
+
+
+  /**
+   * Creates a new, empty compact entry store.
+   *
+   * @param  schemaRef  The reference to the schema that should be used when
+   *                    decoding entries.  The schema it holds may be
+   *                    {@code null}.
+   */
+  InMemoryDirectoryServerCompactEntryStore(
+       final AtomicReference<Schema> schemaRef)
+  {
+    this.schemaRef = schemaRef;
+
+    encodeBuffer     = new ByteStringBuffer();
+    liveSegments     = new LinkedHashSet<Segment>(10);
+    attributeNameIDs = new HashMap<String,Integer>(100);
+    attributeNames   = new String[100];
+    currentSegment   = null;
+    numCompactions   = 0L;
+    allocatedBytes   = 0L;
+    liveBytes        = 0L;
+    writtenBytes     = 0L;
+  }
+
+
+
+  /**
+   * Encodes the provided entry and writes it to this store.  The stored entry
+   * will be considered live until it is released.
+   *
+   * @param  entry  The entry to be stored.
+   *
+   * @return  The handle that may be used to retrieve the stored entry.
+   */
+  StoredEntry store(final ReadOnlyEntry entry)
+  {
+    encodeBuffer.clear();
+
+    final Collection<Attribute> attributes = entry.getAttributes();
+    appendInt(attributes.size());
+    for (final Attribute a : attributes)
+    {
+      appendInt(getAttributeNameID(a.getName()));
+
+      final byte[][] values = a.getValueByteArrays();
+      appendInt(values.length);
+      for (final byte[] value : values)
+      {
+        appendInt(value.length);
+        encodeBuffer.append(value);
+      }
+    }
+
+    final int length = encodeBuffer.length();
+    final Segment segment = getSegmentForWrite(length);
+    final int offset = segment.writtenBytes;
+
+    final ByteBuffer b = segment.buffer.duplicate();
+    b.position(offset);
+    b.put(encodeBuffer.getBackingArray(), 0, length);
+
+    return append(segment, offset, length);
+  }
+
+
+
+  /**
+   * Indicates that the provided stored entry has once again become part of the
+   * content of the map that owns this store, as when the map adopts the
+   * content of a snapshot.
+   *
+   * @param  storedEntry  The stored entry that has become live.
+   */
+  void retain(final StoredEntry storedEntry)
+  {
+    final Segment segment = storedEntry.segment;
+    if (segment.liveBytes == 0)
+    {
+      liveSegments.add(segment);
+      allocatedBytes += segment.buffer.capacity();
+      writtenBytes += segment.writtenBytes;
+    }
+
+    segment.liveBytes += storedEntry.length;
+    liveBytes += storedEntry.length;
+  }
+
+
+
+  /**
+   * Indicates that the provided stored entry is no longer part of the content
+   * of the map that owns this store.  The entry will remain available for as
+   * long as its handle is referenced (for example, by a snapshot), but the
+   * space that it occupies will no longer be considered live.
+   *
+   * @param  storedEntry  The stored entry that is no longer live.
+   */
+  void release(final StoredEntry storedEntry)
+  {
+    final Segment segment = storedEntry.segment;
+    segment.liveBytes -= storedEntry.length;
+    liveBytes -= storedEntry.length;
+
+    if (segment.liveBytes == 0)
+    {
+      liveSegments.remove(segment);
+      allocatedBytes -= segment.buffer.capacity();
+      writtenBytes -= segment.writtenBytes;
+      segment.reclaim = false;
+    }
+  }
+
+
+
+  /**
+   * Indicates that all entries previously written to this store are no longer
+   * needed by the map that owns it, so that subsequent entries should be
+   * written to a new segment.  Entries that have already been stored will
+   * remain available for as long as their handles are referenced.
+   */
+  void clear()
+  {
+    for (final Segment segment : liveSegments)
+    {
+      segment.liveBytes = 0;
+      segment.reclaim = false;
+    }
+
+    liveSegments.clear();
+    currentSegment = null;
+    allocatedBytes = 0L;
+    liveBytes = 0L;
+    writtenBytes = 0L;
+  }
+
+
+
+  /**
+   * Indicates whether the store should be compacted because more than half of
+   * the bytes written to the segments that hold live entries have been
+   * superseded, and the superseded bytes amount to more than a full segment.
+   *
+   * @return  {@code true} if the store should be compacted, or {@code false}
+   *          if not.
+   */
+  boolean needsCompaction()
+  {
+    final long supersededBytes = writtenBytes - liveBytes;
+    return ((supersededBytes > SEGMENT_SIZE) && (supersededBytes > liveBytes));
+  }
+
+
+
+  /**
+   * Begins compacting the store by identifying the segments in which more than
+   * a quarter of the bytes have been superseded.  The map that owns the store
+   * should then call {@link #relocate} for each of its live entries, and
+   * finally call {@link #endCompaction}.
+   */
+  void beginCompaction()
+  {
+    for (final Segment segment : liveSegments)
+    {
+      if ((4L * segment.liveBytes) < (3L * segment.writtenBytes))
+      {
+        segment.reclaim = true;
+        if (segment == currentSegment)
+        {
+          currentSegment = null;
+        }
+      }
+    }
+  }
+
+
+
+  /**
+   * Re-stores the provided live entry if it is held in a segment that is being
+   * reclaimed.  The entry is copied without being decoded, and the original
+   * handle is released.
+   *
+   * @param  storedEntry  The live entry that may need to be relocated.
+   *
+   * @return  A handle for the relocated entry, or the provided handle if the
+   *          entry did not need to be relocated.
+   */
+  StoredEntry relocate(final StoredEntry storedEntry)
+  {
+    if (! storedEntry.segment.reclaim)
+    {
+      return storedEntry;
+    }
+
+    final int length = storedEntry.length;
+    final Segment segment = getSegmentForWrite(length);
+    final int offset = segment.writtenBytes;
+
+    final ByteBuffer source = storedEntry.segment.buffer.duplicate();
+    source.position(storedEntry.offset);
+    source.limit(storedEntry.offset + length);
+
+    final ByteBuffer b = segment.buffer.duplicate();
+    b.position(offset);
+    b.put(source);
+
+    final StoredEntry relocated = append(segment, offset, length);
+    release(storedEntry);
+    return relocated;
+  }
+
+
+
+  /**
+   * Indicates that the map that owns the store has relocated all of its live
+   * entries held in segments that were being reclaimed.
+   */
+  void endCompaction()
+  {
+    for (final Segment segment : liveSegments)
+    {
+      segment.reclaim = false;
+    }
+
+    numCompactions++;
+  }
+
+
+
+  /**
+   * Retrieves the total number of bytes currently allocated outside of the JVM
+   * heap for segments that hold at least one live entry.  Segments that only
+   * hold entries that are no longer live are not included, although their
+   * memory will not be reclaimed until any snapshots that reference them are
+   * no longer in use.
+   *
+   * @return  The total number of bytes allocated for segments that hold live
+   *          entries.
+   */
+  long getAllocatedBytes()
+  {
+    return allocatedBytes;
+  }
+
+
+
+  /**
+   * Retrieves the total number of bytes held by live entries in this store.
+   *
+   * @return  The total number of bytes held by live entries.
+   */
+  long getLiveBytes()
+  {
+    return liveBytes;
+  }
+
+
+
+  /**
+   * Retrieves the number of times that this store has been compacted.
+   *
+   * @return  The number of times that this store has been compacted.
+   */
+  long getNumCompactions()
+  {
+    return numCompactions;
+  }
+
+
+
+  /**
+   * Retrieves the segment to which an entry with the specified encoded length
+   * should be written, allocating a new segment if necessary.  Entries that
+   * are larger than the segment size will be written to a dedicated segment.
+   *
+   * @param  length  The encoded length of the entry to be written.
+   *
+   * @return  The segment to which the entry should be written.
+   */
+  private Segment getSegmentForWrite(final int length)
+  {
+    if (length > SEGMENT_SIZE)
+    {
+      return new Segment(ByteBuffer.allocateDirect(length));
+    }
+
+    if ((currentSegment == null) ||
+        ((SEGMENT_SIZE - currentSegment.writtenBytes) < length))
+    {
+      currentSegment = new Segment(ByteBuffer.allocateDirect(SEGMENT_SIZE));
+    }
+
+    return currentSegment;
+  }
+
+
+
+  /**
+   * Records that an entry has been written to the specified location in the
+   * provided segment, and creates a live handle for it.
+   *
+   * @param  segment  The segment to which the entry was written.
+   * @param  offset   The offset of the entry within the segment.
+   * @param  length   The encoded length of the entry.
+   *
+   * @return  The handle for the entry.
+   */
+  private StoredEntry append(final Segment segment, final int offset,
+                             final int length)
+  {
+    segment.writtenBytes += length;
+    if (segment.liveBytes > 0)
+    {
+      writtenBytes += length;
+    }
+
+    final StoredEntry storedEntry = new StoredEntry(segment, offset, length);
+    retain(storedEntry);
+    return storedEntry;
+  }
+
+
+
+  /**
+   * Retrieves the identifier for the provided attribute name, assigning a new
+   * identifier if necessary.
+   *
+   * @param  name  The attribute name for which to retrieve the identifier.
+   *
+   * @return  The identifier for the provided attribute name.
+   */
+  private int getAttributeNameID(final String name)
+  {
+    final Integer existingID = attributeNameIDs.get(name);
+    if (existingID != null)
+    {
+      return existingID;
+    }
+
+    final int id = attributeNameIDs.size();
+    String[] names = attributeNames;
+    if (id == names.length)
+    {
+      final String[] newNames = new String[names.length * 2];
+      System.arraycopy(names, 0, newNames, 0, names.length);
+      names = newNames;
+    }
+
+    names[id] = name;
+    attributeNames = names;
+    attributeNameIDs.put(name, id);
+    return id;
+  }
+
+
+
+  /**
+   * Appends the provided non-negative integer value to the encode buffer in a
+   * variable-length form, using seven bits per byte with the high-order bit
+   * set in all but the last byte.
+   *
+   * @param  value  The value to append.
+   */
+  private void appendInt(final int value)
+  {
+    int v = value;
+    while ((v & 0xFFFFFF80) != 0)
+    {
+      encodeBuffer.append((byte) ((v & 0x7F) | 0x80));
+      v >>>= 7;
+    }
+
+    encodeBuffer.append((byte) v);
+  }
+
+
+
+  /**
+   * Reads an integer value encoded by the {@link #appendInt} method from the
+   * provided buffer.
+   *
+   * @param  buffer  The buffer from which to read the value.
+   *
+   * @return  The value that was read.
+   */
+  private static int readInt(final ByteBuffer buffer)
+  {
+    int value = 0;
+    int shift = 0;
+    while (true)
+    {
+      final byte b = buffer.get();
+      value |= ((b & 0x7F) << shift);
+      if ((b & 0x80) == 0)
+      {
+        return value;
+      }
+
+      shift += 7;
+    }
+  }
+
+
+
+  /**
+   * This class holds a buffer to which entries are written, along with the
+   * information used to determine whether its space should be reclaimed.
+   */
+  private static final class Segment
+  {
+    // The buffer that holds the encoded entries.
+    private final ByteBuffer buffer;
+
+    // Indicates whether the live entries in the segment are being relocated.
+    private boolean reclaim;
+
+    // The number of bytes held by live entries in the segment.
+    private int liveBytes;
+
+    // The number of bytes that have been written to the segment.
+    private int writtenBytes;
+
+
+
+    /**
+     * Creates a new, empty segment with the provided buffer.
+     *
+     * @param  buffer  The buffer that will hold the encoded entries.
+     */
+    private Segment(final ByteBuffer buffer)
+    {
+      this.buffer = buffer;
+
+      reclaim      = false;
+      liveBytes    = 0;
+      writtenBytes = 0;
+    }
+  }
+
+
+
+  /**
+   * This class provides a handle for an entry held in a compact entry store.
+   */
+  final class StoredEntry
+  {
+    // The encoded length of the entry.
+    private final int length;
+
+    // The offset of the entry within the segment.
+    private final int offset;
+
+    // The segment in which the entry is held.
+    private final Segment segment;
+
+
+
+    /**
+     * Creates a new handle for the entry at the specified location.
+     *
+     * @param  segment  The segment in which the entry is held.
+     * @param  offset   The offset of the entry within the segment.
+     * @param  length   The encoded length of the entry.
+     */
+    private StoredEntry(final Segment segment, final int offset,
+                        final int length)
+    {
+      this.segment = segment;
+      this.offset  = offset;
+      this.length  = length;
+    }
+
+
+
+    /**
+     * Decodes the stored entry.
+     *
+     * @param  dn  The DN for the entry.
+     *
+     * @return  The decoded entry.
+     */
+    ReadOnlyEntry getEntry(final DN dn)
+    {
+      final ByteBuffer b = segment.buffer.duplicate();
+      b.position(offset);
+
+      final String[] names = attributeNames;
+      final Schema schema = schemaRef.get();
+
+      final int numAttributes = readInt(b);
+      final ArrayList<Attribute> attributes =
+           new ArrayList<Attribute>(numAttributes);
+      for (int i=0; i < numAttributes; i++)
+      {
+        final String name = names[readInt(b)];
+
+        final byte[][] values = new byte[readInt(b)][];
+        for (int j=0; j < values.length; j++)
+        {
+          values[j] = new byte[readInt(b)];
+          b.get(values[j]);
+        }
+
+        attributes.add(new Attribute(name, schema, values));
+      }
+
+      return new ReadOnlyEntry(dn, schema, attributes);
+    }
+  }
+}
@@ -22,6 +22,7 @@ package com.unboundid.ldap.listener;
 
 
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -91,6 +92,21 @@ import static com.unboundid.ldap.listener.ListenerMessages.*;
  *       exception handler.</LI>
  *   <LI>Maximum Size Limit:  The server will not enforce a maximum search size
  *       limit.</LI>
+ *   <LI>Allow Concurrent Read Operations:  The server will process all
+ *       operations one at a time.</LI>
+ *   <LI>Search Evaluation Threads:  Each search will be evaluated by the
+ *       thread processing it.</LI>
+ *   <LI>Stream Search Results:  Search result entries will not be returned
+ *       until all matching entries have been identified.</LI>
+ *   <LI>Maximum Change Notification Backlog:  A persistent search or content
+ *       synchronization request may have up to 1000 changes waiting to be
+ *       delivered before it is terminated.</LI>
+ *   <LI>Journal Directory:  The server will not maintain a journal of changes,
+ *       so its content will not be preserved across restarts.</LI>
+ *   <LI>Journal Checkpoint Interval:  When a journal is maintained, a
+ *       checkpoint will be written after every 100000 changes.</LI>
+ *   <LI>Use Compact Entry Storage:  Entries will be held in the JVM heap as
+ *       {@code ReadOnlyEntry} objects.</LI>
  * </UL>
  */
 @NotExtensible()
@@ -98,6 +114,10 @@ import static com.unboundid.ldap.listener.ListenerMessages.*;
 @ThreadSafety(level=ThreadSafetyLevel.NOT_THREADSAFE)
 public class InMemoryDirectoryServerConfig
 {
+  // Indicates whether operations that only read from the data set may be
+  // processed concurrently.
+  private boolean allowConcurrentReadOperations;
+
   // Indicates whether to enforce the requirement that attribute values comply
   // with the associated attribute syntax.
   private boolean enforceAttributeSyntaxCompliance;
@@ -134,6 +154,30 @@ public class InMemoryDirectoryServerConfig
   // operation.
   private int maxSizeLimit;
 
+  // The maximum number of threads that may be used to evaluate the entries
+  // examined in a single search operation.
+  private int searchEvaluationThreads;
+
+  // Indicates whether the server should send search result entries to the
+  // client as soon as they are identified.
+  private boolean streamSearchResults;
+
+  // The maximum number of changes that may be waiting to be delivered to a
+  // single persistent search or content synchronization request.
+  private int maxChangeNotificationBacklog;
+
+  // The directory in which to maintain a journal of changes and checkpoints of
+  // the server content.
+  private File journalDirectory;
+
+  // The number of changes that may be written to the journal before a new
+  // checkpoint is written.
+  private int journalCheckpointInterval;
+
+  // Indicates whether entries should be held in a compact encoded form
+  // outside of the JVM heap.
+  private boolean useCompactEntryStorage;
+
   // The exception handler that should be used for the listener.
   private LDAPListenerExceptionHandler exceptionHandler;
 
@@ -157,6 +201,16 @@ public class InMemoryDirectoryServerConfig
   // The names or OIDs of the attributes for which to maintain equality indexes.
   private final List<String> equalityIndexAttributes;
 
+  // The names or OIDs of the attributes for which to maintain presence indexes.
+  private final List<String> presenceIndexAttributes;
+
+  // The names or OIDs of the attributes for which to maintain substring
+  // indexes.
+  private final List<String> substringIndexAttributes;
+
+  // The names or OIDs of the attributes for which to maintain ordering indexes.
+  private final List<String> orderingIndexAttributes;
+
   // A set of additional credentials that can be used for binding without
   // requiring a corresponding entry in the data set.
   private final Map<DN,byte[]> additionalBindCredentials;
@@ -232,6 +286,7 @@ public class InMemoryDirectoryServerConfig
 
     additionalBindCredentials            = new LinkedHashMap<DN,byte[]>(1);
     accessLogHandler                     = null;
+    allowConcurrentReadOperations        = false;
     ldapDebugLogHandler                  = null;
     enforceAttributeSyntaxCompliance     = true;
     enforceSingleStructuralObjectClass   = true;
@@ -239,8 +294,17 @@ public class InMemoryDirectoryServerConfig
     maxChangeLogEntries                  = 0;
     maxConnections                       = 0;
     maxSizeLimit                         = 0;
+    searchEvaluationThreads              = 1;
+    streamSearchResults                  = false;
+    maxChangeNotificationBacklog         = 1000;
+    journalDirectory                     = null;
+    journalCheckpointInterval            = 100000;
+    useCompactEntryStorage               = false;
     exceptionHandler                     = null;
     equalityIndexAttributes              = new ArrayList<String>(10);
+    presenceIndexAttributes              = new ArrayList<String>(10);
+    substringIndexAttributes             = new ArrayList<String>(10);
+    orderingIndexAttributes              = new ArrayList<String>(10);
     rootDSEEntry                         = null;
     schema                               = Schema.getDefaultStandardSchema();
     allowedOperationTypes                = EnumSet.allOf(OperationType.class);
@@ -305,15 +369,28 @@ public class InMemoryDirectoryServerConfig
 
     equalityIndexAttributes =
          new ArrayList<String>(cfg.equalityIndexAttributes);
+    presenceIndexAttributes =
+         new ArrayList<String>(cfg.presenceIndexAttributes);
+    substringIndexAttributes =
+         new ArrayList<String>(cfg.substringIndexAttributes);
+    orderingIndexAttributes =
+         new ArrayList<String>(cfg.orderingIndexAttributes);
 
     enforceAttributeSyntaxCompliance   = cfg.enforceAttributeSyntaxCompliance;
     enforceSingleStructuralObjectClass = cfg.enforceSingleStructuralObjectClass;
     generateOperationalAttributes      = cfg.generateOperationalAttributes;
+    allowConcurrentReadOperations      = cfg.allowConcurrentReadOperations;
     accessLogHandler                   = cfg.accessLogHandler;
     ldapDebugLogHandler                = cfg.ldapDebugLogHandler;
     maxChangeLogEntries                = cfg.maxChangeLogEntries;
     maxConnections                     = cfg.maxConnections;
     maxSizeLimit                       = cfg.maxSizeLimit;
+    searchEvaluationThreads            = cfg.searchEvaluationThreads;
+    streamSearchResults                = cfg.streamSearchResults;
+    maxChangeNotificationBacklog       = cfg.maxChangeNotificationBacklog;
+    journalDirectory                   = cfg.journalDirectory;
+    journalCheckpointInterval          = cfg.journalCheckpointInterval;
+    useCompactEntryStorage             = cfg.useCompactEntryStorage;
     exceptionHandler                   = cfg.exceptionHandler;
     rootDSEEntry                       = cfg.rootDSEEntry;
     schema                             = cfg.schema;
@@ -1041,6 +1118,46 @@ public class InMemoryDirectoryServerConfig
 
 
 
+  /**
+   * Indicates whether the server should allow operations that only read from
+   * the data set (including search, compare, and simple bind operations) to be
+   * processed concurrently with each other.  Operations that may alter the data
+   * set will always be processed one at a time, and no read operation will be
+   * processed while a write operation is in progress, so each operation will
+   * always see a consistent view of the data.
+   *
+   * @return  {@code true} if the server should allow read operations to be
+   *          processed concurrently, or {@code false} if all operations should
+   *          be processed one at a time.
+   */
+  public boolean allowConcurrentReadOperations()
+  {
+    return allowConcurrentReadOperations;
+  }
+
+
+
+  /**
+   * Specifies whether the server should allow operations that only read from
+   * the data set (including search, compare, and simple bind operations) to be
+   * processed concurrently with each other.  Operations that may alter the data
+   * set will always be processed one at a time, and no read operation will be
+   * processed while a write operation is in progress.  Note that SASL bind and
+   * extended operations will always be treated as write operations because the
+   * associated handlers may alter the data set.
+   *
+   * @param  allowConcurrentReadOperations  Indicates whether the server should
+   *                                        allow read operations to be
+   *                                        processed concurrently.
+   */
+  public void setAllowConcurrentReadOperations(
+                   final boolean allowConcurrentReadOperations)
+  {
+    this.allowConcurrentReadOperations = allowConcurrentReadOperations;
+  }
+
+
+
   /**
    * Retrieves the maximum number of changelog entries that the server should
    * maintain.
@@ -1157,6 +1274,252 @@ public class InMemoryDirectoryServerConfig
 
 
 
+  /**
+   * Retrieves the maximum number of threads that the server may use to
+   * evaluate the entries examined by a single search operation.  If this is
+   * greater than one, then searches that need to examine a large number of
+   * entries will divide those entries into batches that may be evaluated
+   * against the search criteria in parallel.  The entries will still be
+   * returned in the same order as if they had been evaluated by a single
+   * thread.
+   *
+   * @return  The maximum number of threads that the server may use to evaluate
+   *          the entries examined by a single search operation, or one if each
+   *          search should be evaluated only by the thread processing it.
+   */
+  public int getSearchEvaluationThreads()
+  {
+    return searchEvaluationThreads;
+  }
+
+
+
+  /**
+   * Specifies the maximum number of threads that the server may use to
+   * evaluate the entries examined by a single search operation.  The threads
+   * will be shared by all searches processed by the server, and if they are all
+   * busy then the thread processing a search will evaluate its own entries.  A
+   * value less than or equal to one indicates that each search should be
+   * evaluated only by the thread processing it.
+   *
+   * @param  searchEvaluationThreads  The maximum number of threads that the
+   *                                  server may use to evaluate the entries
+   *                                  examined by a single search operation.
+   */
+  public void setSearchEvaluationThreads(final int searchEvaluationThreads)
+  {
+    if (searchEvaluationThreads > 1)
+    {
+      this.searchEvaluationThreads = searchEvaluationThreads;
+    }
+    else
+    {
+      this.searchEvaluationThreads = 1;
+    }
+  }
+
+
+
+  /**
+   * Indicates whether the server should send search result entries to the
+   * client as soon as they have been identified as matching the search
+   * criteria, rather than holding all of the matching entries in memory until
+   * the search has completed.  Even if this is enabled, the entries will still
+   * be held until the search has completed for requests that include the
+   * server-side sort, simple paged results, or virtual list view request
+   * controls, since those require the full set of matching entries.
+   *
+   * @return  {@code true} if the server should send search result entries to
+   *          the client as soon as they have been identified, or
+   *          {@code false} if it should wait until all matching entries have
+   *          been identified.
+   */
+  public boolean streamSearchResults()
+  {
+    return streamSearchResults;
+  }
+
+
+
+  /**
+   * Specifies whether the server should send search result entries to the
+   * client as soon as they have been identified as matching the search
+   * criteria, rather than holding all of the matching entries in memory until
+   * the search has completed.  This can substantially reduce the memory
+   * required to process searches that match a large number of entries, and
+   * can allow the client to begin processing results sooner.
+   *
+   * @param  streamSearchResults  Indicates whether the server should send
+   *                              search result entries to the client as soon
+   *                              as they have been identified.
+   */
+  public void setStreamSearchResults(final boolean streamSearchResults)
+  {
+    this.streamSearchResults = streamSearchResults;
+  }
+
+
+
+  /**
+   * Retrieves the maximum number of changes that may be waiting to be
+   * delivered to a single persistent search or content synchronization request
+   * operating in refreshAndPersist mode.  Changes are delivered to each such
+   * request by a separate thread, so that a client that is slow to read them
+   * will not delay write operations.  If the number of changes waiting to be
+   * delivered to a request exceeds this limit, then that request will be
+   * terminated with an adminLimitExceeded result.
+   *
+   * @return  The maximum number of changes that may be waiting to be delivered
+   *          to a single persistent search or content synchronization request.
+   */
+  public int getMaxChangeNotificationBacklog()
+  {
+    return maxChangeNotificationBacklog;
+  }
+
+
+
+  /**
+   * Specifies the maximum number of changes that may be waiting to be
+   * delivered to a single persistent search or content synchronization request
+   * operating in refreshAndPersist mode.  A value less than or equal to zero
+   * indicates that the default limit of 1000 changes should be used.
+   *
+   * @param  maxChangeNotificationBacklog  The maximum number of changes that
+   *                                       may be waiting to be delivered to a
+   *                                       single persistent search or content
+   *                                       synchronization request.
+   */
+  public void setMaxChangeNotificationBacklog(
+                   final int maxChangeNotificationBacklog)
+  {
+    if (maxChangeNotificationBacklog > 0)
+    {
+      this.maxChangeNotificationBacklog = maxChangeNotificationBacklog;
+    }
+    else
+    {
+      this.maxChangeNotificationBacklog = 1000;
+    }
+  }
+
+
+
+  /**
+   * Retrieves the directory in which the server should maintain a journal of
+   * the changes made to its content, along with periodic checkpoints of that
+   * content.  If a journal directory is configured, then each change will be
+   * appended to the journal as it is made, and when the server is created it
+   * will recover its content by loading the most recent checkpoint and
+   * replaying any changes that were journaled after it was written.  This
+   * allows a large data set to be restored far more quickly than by importing
+   * it from LDIF.
+   *
+   * @return  The directory in which the server should maintain a journal of
+   *          changes, or {@code null} if no journal should be maintained.
+   */
+  public File getJournalDirectory()
+  {
+    return journalDirectory;
+  }
+
+
+
+  /**
+   * Specifies the directory in which the server should maintain a journal of
+   * the changes made to its content, along with periodic checkpoints of that
+   * content.  The directory will be created if it does not already exist.  A
+   * journal directory should only be used by one server instance at a time.
+   *
+   * @param  journalDirectory  The directory in which the server should
+   *                           maintain a journal of changes.  It may be
+   *                           {@code null} if no journal should be maintained.
+   */
+  public void setJournalDirectory(final File journalDirectory)
+  {
+    this.journalDirectory = journalDirectory;
+  }
+
+
+
+  /**
+   * Retrieves the number of changes that may be written to the journal before
+   * the server writes a new checkpoint of its content and discards the
+   * journaled changes that the checkpoint includes.  Checkpoints are written
+   * in the background, so the number of changes that may need to be replayed
+   * when recovering from the journal may be somewhat larger than this.  This
+   * will only be used if a journal directory has been configured.
+   *
+   * @return  The number of changes that may be written to the journal before
+   *          a new checkpoint is written, or a value less than or equal to
+   *          zero if checkpoints should only be written when explicitly
+   *          requested.
+   */
+  public int getJournalCheckpointInterval()
+  {
+    return journalCheckpointInterval;
+  }
+
+
+
+  /**
+   * Specifies the number of changes that may be written to the journal before
+   * the server writes a new checkpoint of its content and discards the
+   * journaled changes that the checkpoint includes.  A checkpoint will also be
+   * written whenever the entire content of the server is replaced (for
+   * example, when the server is cleared or when an LDIF import replaces the
+   * existing content).
+   *
+   * @param  journalCheckpointInterval  The number of changes that may be
+   *                                    written to the journal before a new
+   *                                    checkpoint is written.  A value less
+   *                                    than or equal to zero indicates that
+   *                                    checkpoints should only be written when
+   *                                    explicitly requested.
+   */
+  public void setJournalCheckpointInterval(final int journalCheckpointInterval)
+  {
+    this.journalCheckpointInterval = journalCheckpointInterval;
+  }
+
+
+
+  /**
+   * Indicates whether the server should hold its entries in a compact encoded
+   * form outside of the JVM heap rather than as {@code ReadOnlyEntry} objects.
+   *
+   * @return  {@code true} if the server should use compact entry storage, or
+   *          {@code false} if entries should be held in the JVM heap.
+   */
+  public boolean useCompactEntryStorage()
+  {
+    return useCompactEntryStorage;
+  }
+
+
+
+  /**
+   * Specifies whether the server should hold its entries in a compact encoded
+   * form outside of the JVM heap rather than as {@code ReadOnlyEntry} objects.
+   * This can substantially reduce the amount of heap space needed to hold a
+   * large data set, since an encoded entry typically requires only a small
+   * fraction of the memory of the equivalent object representation.  The DN
+   * of each entry and any attribute indexes will still be held in the heap.
+   * Entries will be decoded each time they are accessed, so operations that
+   * examine a large number of entries will be slower than they would be
+   * otherwise.
+   *
+   * @param  useCompactEntryStorage  Indicates whether the server should hold
+   *                                 its entries in a compact encoded form
+   *                                 outside of the JVM heap.
+   */
+  public void setUseCompactEntryStorage(final boolean useCompactEntryStorage)
+  {
+    this.useCompactEntryStorage = useCompactEntryStorage;
+  }
+
+
+
   /**
    * Retrieves a list containing the names or OIDs of the attribute types for
    * which to maintain an equality index to improve the performance of certain
@@ -1216,6 +1579,188 @@ public class InMemoryDirectoryServerConfig
 
 
 
+  /**
+   * Retrieves a list containing the names or OIDs of the attribute types for
+   * which to maintain a presence index to improve the performance of searches
+   * with presence filters.
+   *
+   * @return  A list containing the names or OIDs of the attribute types for
+   *          which to maintain a presence index, or an empty list if no
+   *          presence indexes should be created.
+   */
+  public List<String> getPresenceIndexAttributes()
+  {
+    return presenceIndexAttributes;
+  }
+
+
+
+  /**
+   * Specifies the names or OIDs of the attribute types for which to maintain
+   * a presence index to improve the performance of searches with
+   * presence filters.
+   *
+   * @param  presenceIndexAttributes  The names or OIDs of the attributes for
+   *                                  which to maintain a presence index to
+   *                                  improve the performance of searches with
+   *                                  presence filters.  It may be {@code null}
+   *                                  or empty to indicate that no presence
+   *                                  indexes should be maintained.
+   */
+  public void setPresenceIndexAttributes(
+                   final String... presenceIndexAttributes)
+  {
+    setPresenceIndexAttributes(StaticUtils.toList(presenceIndexAttributes));
+  }
+
+
+
+  /**
+   * Specifies the names or OIDs of the attribute types for which to maintain
+   * a presence index to improve the performance of searches with
+   * presence filters.
+   *
+   * @param  presenceIndexAttributes  The names or OIDs of the attributes for
+   *                                  which to maintain a presence index to
+   *                                  improve the performance of searches with
+   *                                  presence filters.  It may be {@code null}
+   *                                  or empty to indicate that no presence
+   *                                  indexes should be maintained.
+   */
+  public void setPresenceIndexAttributes(
+                   final Collection<String> presenceIndexAttributes)
+  {
+    this.presenceIndexAttributes.clear();
+    if (presenceIndexAttributes != null)
+    {
+      this.presenceIndexAttributes.addAll(presenceIndexAttributes);
+    }
+  }
+
+
+
+  /**
+   * Retrieves a list containing the names or OIDs of the attribute types for
+   * which to maintain a substring index to improve the performance of searches
+   * with substring filters.
+   *
+   * @return  A list containing the names or OIDs of the attribute types for
+   *          which to maintain a substring index, or an empty list if no
+   *          substring indexes should be created.
+   */
+  public List<String> getSubstringIndexAttributes()
+  {
+    return substringIndexAttributes;
+  }
+
+
+
+  /**
+   * Specifies the names or OIDs of the attribute types for which to maintain
+   * a substring index to improve the performance of searches with
+   * substring filters.
+   *
+   * @param  substringIndexAttributes  The names or OIDs of the attributes for
+   *                                   which to maintain a substring index to
+   *                                   improve the performance of searches with
+   *                                   substring filters.  It may be
+   *                                   {@code null} or empty to indicate that no
+   *                                   substring indexes should be maintained.
+   */
+  public void setSubstringIndexAttributes(
+                   final String... substringIndexAttributes)
+  {
+    setSubstringIndexAttributes(StaticUtils.toList(substringIndexAttributes));
+  }
+
+
+
+  /**
+   * Specifies the names or OIDs of the attribute types for which to maintain
+   * a substring index to improve the performance of searches with
+   * substring filters.
+   *
+   * @param  substringIndexAttributes  The names or OIDs of the attributes for
+   *                                   which to maintain a substring index to
+   *                                   improve the performance of searches with
+   *                                   substring filters.  It may be
+   *                                   {@code null} or empty to indicate that no
+   *                                   substring indexes should be maintained.
+   */
+  public void setSubstringIndexAttributes(
+                   final Collection<String> substringIndexAttributes)
+  {
+    this.substringIndexAttributes.clear();
+    if (substringIndexAttributes != null)
+    {
+      this.substringIndexAttributes.addAll(substringIndexAttributes);
+    }
+  }
+
+
+
+  /**
+   * Retrieves a list containing the names or OIDs of the attribute types for
+   * which to maintain an ordering index to improve the performance of searches
+   * with greater-or-equal and less-or-equal filters.
+   *
+   * @return  A list containing the names or OIDs of the attribute types for
+   *          which to maintain an ordering index, or an empty list if no
+   *          ordering indexes should be created.
+   */
+  public List<String> getOrderingIndexAttributes()
+  {
+    return orderingIndexAttributes;
+  }
+
+
+
+  /**
+   * Specifies the names or OIDs of the attribute types for which to maintain
+   * an ordering index to improve the performance of searches with
+   * greater-or-equal and less-or-equal filters.
+   *
+   * @param  orderingIndexAttributes  The names or OIDs of the attributes for
+   *                                  which to maintain an ordering index to
+   *                                  improve the performance of searches with
+   *                                  greater-or-equal and less-or-equal
+   *                                  filters.  It may be {@code null} or
+   *                                  empty to indicate that no ordering
+   *                                  indexes should be maintained.
+   */
+  public void setOrderingIndexAttributes(
+                   final String... orderingIndexAttributes)
+  {
+    setOrderingIndexAttributes(StaticUtils.toList(orderingIndexAttributes));
+  }
+
+
+
+  /**
+   * Specifies the names or OIDs of the attribute types for which to maintain
+   * an ordering index to improve the performance of searches with
+   * greater-or-equal and less-or-equal filters.
+   *
+   * @param  orderingIndexAttributes  The names or OIDs of the attributes for
+   *                                  which to maintain an ordering index to
+   *                                  improve the performance of searches with
+   *                                  greater-or-equal and less-or-equal
+   *                                  filters.  It may be {@code null} or
+   *                                  empty to indicate that no ordering
+   *                                  indexes should be maintained.
+   */
+  public void setOrderingIndexAttributes(
+                   final Collection<String> orderingIndexAttributes)
+  {
+    this.orderingIndexAttributes.clear();
+    if (orderingIndexAttributes != null)
+    {
+      this.orderingIndexAttributes.addAll(orderingIndexAttributes);
+    }
+  }
+
+
+
   /**
    * Retrieves the names of the attributes for which referential integrity
    * should be maintained.  If referential integrity is to be provided and an
@@ -1514,6 +2059,60 @@ public class InMemoryDirectoryServerConfig
       buffer.append('}');
     }
 
+    if (! presenceIndexAttributes.isEmpty())
+    {
+      buffer.append(", presenceIndexAttributes={");
+
+      final Iterator<String> attrIterator = presenceIndexAttributes.iterator();
+      while (attrIterator.hasNext())
+      {
+        buffer.append('\'');
+        buffer.append(attrIterator.next());
+        buffer.append('\'');
+        if (attrIterator.hasNext())
+        {
+          buffer.append(", ");
+        }
+      }
+      buffer.append('}');
+    }
+
+    if (! substringIndexAttributes.isEmpty())
+    {
+      buffer.append(", substringIndexAttributes={");
+
+      final Iterator<String> attrIterator = substringIndexAttributes.iterator();
+      while (attrIterator.hasNext())
+      {
+        buffer.append('\'');
+        buffer.append(attrIterator.next());
+        buffer.append('\'');
+        if (attrIterator.hasNext())
+        {
+          buffer.append(", ");
+        }
+      }
+      buffer.append('}');
+    }
+
+    if (! orderingIndexAttributes.isEmpty())
+    {
+      buffer.append(", orderingIndexAttributes={");
+
+      final Iterator<String> attrIterator = orderingIndexAttributes.iterator();
+      while (attrIterator.hasNext())
+      {
+        buffer.append('\'');
+        buffer.append(attrIterator.next());
+        buffer.append('\'');
+        if (attrIterator.hasNext())
+        {
+          buffer.append(", ");
+        }
+      }
+      buffer.append('}');
+    }
+
     if (! referentialIntegrityAttributes.isEmpty())
     {
       buffer.append(", referentialIntegrityAttributes={");
@@ -1535,6 +2134,8 @@ public class InMemoryDirectoryServerConfig
 
     buffer.append(", generateOperationalAttributes=");
     buffer.append(generateOperationalAttributes);
+    buffer.append(", allowConcurrentReadOperations=");
+    buffer.append(allowConcurrentReadOperations);
 
     if (maxChangeLogEntries > 0)
     {
@@ -1547,6 +2148,33 @@ public class InMemoryDirectoryServerConfig
     buffer.append(", maxSizeLimit=");
     buffer.append(maxSizeLimit);
 
+    if (searchEvaluationThreads > 1)
+    {
+      buffer.append(", searchEvaluationThreads=");
+      buffer.append(searchEvaluationThreads);
+    }
+
+    if (streamSearchResults)
+    {
+      buffer.append(", streamSearchResults=true");
+    }
+
+    buffer.append(", maxChangeNotificationBacklog=");
+    buffer.append(maxChangeNotificationBacklog);
+
+    if (journalDirectory != null)
+    {
+      buffer.append(", journalDirectory='");
+      buffer.append(journalDirectory.getAbsolutePath());
+      buffer.append("', journalCheckpointInterval=");
+      buffer.append(journalCheckpointInterval);
+    }
+
+    if (useCompactEntryStorage)
+    {
+      buffer.append(", useCompactEntryStorage=true");
+    }
+
     if (! extendedOperationHandlers.isEmpty())
     {
       buffer.append(", extendedOperationHandlers={");
@@ -0,0 +1,312 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.listener;
+
+
+
+import java.util.Arrays;
+
+import com.unboundid.util.Mutable;
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+
+
+/**
+ * This class provides a compact, sorted list of entry IDs for use as an index
+ * posting list.  The IDs are held in a primitive array rather than as a set of
+ * DNs, which greatly reduces the memory and allocation needed for values that
+ * are shared by a large number of entries.  It also provides methods for
+ * intersecting and merging sorted arrays of entry IDs.
+ */
+@Mutable()
+@ThreadSafety(level=ThreadSafetyLevel.NOT_THREADSAFE)
+final class InMemoryDirectoryServerEntryIDList
+{
+  /**
+   * An empty array of entry IDs.
+   */
+  static final int[] NO_IDS = new int[0];
+
+
+
+  // The entry IDs in this list, in ascending order.  Only the first size
+  // elements are in use.
+  private int[] ids;
+
+  // The number of entry IDs in this list.
+  private int size;
+
+
+
+  /**
+   * Creates a new, empty entry ID list.
+   */
+  InMemoryDirectoryServerEntryIDList()
+  {
+    ids  = new int[4];
+    size = 0;
+  }
+
+
+
+  /**
+   * Retrieves the number of entry IDs in this list.
+   *
+   * @return  The number of entry IDs in this list.
+   */
+  int size()
+  {
+    return size;
+  }
+
+
+
+  /**
+   * Indicates whether this list is empty.
+   *
+   * @return  {@code true} if this list is empty, or {@code false} if not.
+   */
+  boolean isEmpty()
+  {
+    return (size == 0);
+  }
+
+
+
+  /**
+   * Indicates whether this list contains the specified entry ID.
+   *
+   * @param  id  The entry ID for which to make the determination.
+   *
+   * @return  {@code true} if this list contains the specified entry ID, or
+   *          {@code false} if not.
+   */
+  boolean contains(final int id)
+  {
+    return (Arrays.binarySearch(ids, 0, size, id) >= 0);
+  }
+
+
+
+  /**
+   * Adds the specified entry ID to this list.  Entry IDs are generally assigned
+   * in increasing order, so this will usually just append to the end of the
+   * list.
+   *
+   * @param  id  The entry ID to add.
+   *
+   * @return  {@code true} if the entry ID was added, or {@code false} if it was
+   *          already present.
+   */
+  boolean add(final int id)
+  {
+    final int pos;
+    if ((size == 0) || (ids[size-1] < id))
+    {
+      pos = size;
+    }
+    else
+    {
+      final int i = Arrays.binarySearch(ids, 0, size, id);
+      if (i >= 0)
+      {
+        return false;
+      }
+      pos = -(i+1);
+    }
+
+    if (size == ids.length)
+    {
+      final int[] newIDs = new int[size + (size >> 1) + 1];
+      System.arraycopy(ids, 0, newIDs, 0, size);
+      ids = newIDs;
+    }
+
+    System.arraycopy(ids, pos, ids, pos+1, size-pos);
+    ids[pos] = id;
+    size++;
+    return true;
+  }
+
+
+
+  /**
+   * Removes the specified entry ID from this list.
+   *
+   * @param  id  The entry ID to remove.
+   *
+   * @return  {@code true} if the entry ID was removed, or {@code false} if it
+   *          was not present.
+   */
+  boolean remove(final int id)
+  {
+    final int pos = Arrays.binarySearch(ids, 0, size, id);
+    if (pos < 0)
+    {
+      return false;
+    }
+
+    System.arraycopy(ids, pos+1, ids, pos, size-pos-1);
+    size--;
+
+    if ((ids.length > 16) && (size < (ids.length >> 2)))
+    {
+      final int[] newIDs = new int[ids.length >> 1];
+      System.arraycopy(ids, 0, newIDs, 0, size);
+      ids = newIDs;
+    }
+
+    return true;
+  }
+
+
+
+  /**
+   * Retrieves a copy of the entry IDs in this list, in ascending order.
+   *
+   * @return  A copy of the entry IDs in this list.
+   */
+  int[] toArray()
+  {
+    if (size == 0)
+    {
+      return NO_IDS;
+    }
+
+    final int[] a = new int[size];
+    System.arraycopy(ids, 0, a, 0, size);
+    return a;
+  }
+
+
+
+  /**
+   * Retrieves the entry IDs that are contained in both of the provided sorted
+   * arrays.
+   *
+   * @param  a  The first sorted array of entry IDs.
+   * @param  b  The second sorted array of entry IDs.
+   *
+   * @return  A sorted array of the entry IDs contained in both arrays.
+   */
+  static int[] intersect(final int[] a, final int[] b)
+  {
+    final int[] result = new int[Math.min(a.length, b.length)];
+    int n = 0;
+    int i = 0;
+    int j = 0;
+    while ((i < a.length) && (j < b.length))
+    {
+      if (a[i] < b[j])
+      {
+        i++;
+      }
+      else if (a[i] > b[j])
+      {
+        j++;
+      }
+      else
+      {
+        result[n++] = a[i];
+        i++;
+        j++;
+      }
+    }
+
+    return trim(result, n);
+  }
+
+
+
+  /**
+   * Retrieves the entry IDs that are contained in either of the provided
+   * sorted arrays.
+   *
+   * @param  a  The first sorted array of entry IDs.
+   * @param  b  The second sorted array of entry IDs.
+   *
+   * @return  A sorted array of the entry IDs contained in either array.
+   */
+  static int[] union(final int[] a, final int[] b)
+  {
+    final int[] result = new int[a.length + b.length];
+    int n = 0;
+    int i = 0;
+    int j = 0;
+    while ((i < a.length) && (j < b.length))
+    {
+      if (a[i] < b[j])
+      {
+        result[n++] = a[i++];
+      }
+      else if (a[i] > b[j])
+      {
+        result[n++] = b[j++];
+      }
+      else
+      {
+        result[n++] = a[i];
+        i++;
+        j++;
+      }
+    }
+
+    while (i < a.length)
+    {
+      result[n++] = a[i++];
+    }
+
+    while (j < b.length)
+    {
+      result[n++] = b[j++];
+    }
+
+    return trim(result, n);
+  }
+
+
+
+  /**
+   * Retrieves an array containing the first elements of the provided array.
+   *
+   * @param  a  The array to trim.
+   * @param  n  The number of elements to retain.
+   *
+   * @return  The provided array if all of its elements should be retained, or
+   *          a new array with only the first elements.
+   */
+  static int[] trim(final int[] a, final int n)
+  {
+    if (n == a.length)
+    {
+      return a;
+    }
+    else if (n == 0)
+    {
+      return NO_IDS;
+    }
+
+    final int[] trimmed = new int[n];
+    System.arraycopy(a, 0, trimmed, 0, n);
+    return trimmed;
+  }
+}
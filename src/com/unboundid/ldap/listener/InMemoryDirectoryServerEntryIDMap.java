@@ -0,0 +1,226 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.listener;
+
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.util.Mutable;
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+
+
+/**
+ * This class provides a data structure that assigns compact integer IDs to
+ * entry DNs so that index posting lists can hold primitive IDs rather than
+ * DNs.  IDs are reference counted, so an ID will remain assigned to a DN for
+ * as long as any posting list refers to it, and will be made available for
+ * reuse once it is no longer referenced.
+ */
+@Mutable()
+@ThreadSafety(level=ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+final class InMemoryDirectoryServerEntryIDMap
+{
+  // The DNs to which IDs have been assigned, indexed by ID.  Elements for IDs
+  // that are not currently assigned will be null.
+  private final ArrayList<DN> dnsByID;
+
+  // The IDs that have been assigned, mapped from the associated DN.
+  private final HashMap<DN,Integer> idsByDN;
+
+  // The IDs that are available for reuse.
+  private int[] freeIDs;
+
+  // The number of IDs that are available for reuse.
+  private int numFreeIDs;
+
+  // The number of references to each ID, indexed by ID.
+  private int[] referenceCounts;
+
+
+
+  /**
+   * Creates a new, empty entry ID map.
+   */
+  InMemoryDirectoryServerEntryIDMap()
+  {
+    dnsByID         = new ArrayList<DN>(100);
+    idsByDN         = new HashMap<DN,Integer>(100);
+    freeIDs         = new int[16];
+    numFreeIDs      = 0;
+    referenceCounts = new int[100];
+  }
+
+
+
+  /**
+   * Retrieves the ID for the provided DN, assigning a new one if necessary,
+   * and increments its reference count.  Each call to this method should be
+   * matched by a subsequent call to {@link #release}.
+   *
+   * @param  dn  The DN for which to obtain the ID.
+   *
+   * @return  The ID for the provided DN.
+   */
+  synchronized int acquire(final DN dn)
+  {
+    final Integer existingID = idsByDN.get(dn);
+    if (existingID != null)
+    {
+      final int id = existingID;
+      referenceCounts[id]++;
+      return id;
+    }
+
+    final int id;
+    if (numFreeIDs > 0)
+    {
+      id = freeIDs[--numFreeIDs];
+      dnsByID.set(id, dn);
+    }
+    else
+    {
+      id = dnsByID.size();
+      dnsByID.add(dn);
+      if (id == referenceCounts.length)
+      {
+        final int[] newCounts = new int[id + (id >> 1) + 1];
+        System.arraycopy(referenceCounts, 0, newCounts, 0, id);
+        referenceCounts = newCounts;
+      }
+    }
+
+    idsByDN.put(dn, id);
+    referenceCounts[id] = 1;
+    return id;
+  }
+
+
+
+  /**
+   * Decrements the reference count for the specified ID, and makes it
+   * available for reuse if it is no longer referenced.
+   *
+   * @param  id  The ID to release.
+   */
+  synchronized void release(final int id)
+  {
+    if (--referenceCounts[id] > 0)
+    {
+      return;
+    }
+
+    idsByDN.remove(dnsByID.set(id, null));
+
+    if (numFreeIDs == freeIDs.length)
+    {
+      final int[] newFreeIDs = new int[numFreeIDs << 1];
+      System.arraycopy(freeIDs, 0, newFreeIDs, 0, numFreeIDs);
+      freeIDs = newFreeIDs;
+    }
+    freeIDs[numFreeIDs++] = id;
+  }
+
+
+
+  /**
+   * Retrieves the ID currently assigned to the provided DN.
+   *
+   * @param  dn  The DN for which to retrieve the ID.
+   *
+   * @return  The ID currently assigned to the provided DN, or -1 if no ID is
+   *          assigned to it.
+   */
+  synchronized int getID(final DN dn)
+  {
+    final Integer id = idsByDN.get(dn);
+    if (id == null)
+    {
+      return -1;
+    }
+    else
+    {
+      return id;
+    }
+  }
+
+
+
+  /**
+   * Retrieves the DN to which the specified ID is assigned.
+   *
+   * @param  id  The ID for which to retrieve the DN.
+   *
+   * @return  The DN to which the specified ID is assigned, or {@code null} if
+   *          it is not currently assigned.
+   */
+  synchronized DN getDN(final int id)
+  {
+    if ((id < 0) || (id >= dnsByID.size()))
+    {
+      return null;
+    }
+
+    return dnsByID.get(id);
+  }
+
+
+
+  /**
+   * Retrieves the DNs to which the provided IDs are assigned.
+   *
+   * @param  ids  The IDs for which to retrieve the DNs.
+   *
+   * @return  A set containing the DNs to which the provided IDs are assigned.
+   */
+  synchronized Set<DN> getDNs(final int[] ids)
+  {
+    final TreeSet<DN> dnSet = new TreeSet<DN>();
+    for (final int id : ids)
+    {
+      final DN dn = dnsByID.get(id);
+      if (dn != null)
+      {
+        dnSet.add(dn);
+      }
+    }
+
+    return dnSet;
+  }
+
+
+
+  /**
+   * Retrieves the number of IDs that are currently assigned.
+   *
+   * @return  The number of IDs that are currently assigned.
+   */
+  synchronized int size()
+  {
+    return idsByDN.size();
+  }
+}
@@ -0,0 +1,1658 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.listener;
+
+
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.ReadOnlyEntry;
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+
+
+/**
+ * This class provides a map of the entries held in an in-memory directory
+ * server, ordered by DN in the same way as a {@code TreeMap}.  It is backed by
+ * a persistent balanced binary tree in which nodes are never altered once they
+ * have been created.  Each update creates new copies of only the nodes on the
+ * path to the affected entry and shares all other nodes with the previous
+ * version of the tree.  As a result, a read-only view that reflects the content
+ * of the map at a given point in time may be obtained in constant time, and it
+ * will remain unaffected by any subsequent updates.
+ * <BR><BR>
+ * Updates to the map must be externally synchronized, but it is safe to read
+ * from the map (including iterating through its contents) without any
+ * synchronization.  Iterators will always reflect the content of the map at the
+ * time they were created.
+ * <BR><BR>
+ * Because DNs are ordered hierarchically, an entry and all of its subordinates
+ * always occupy a contiguous range of the map, so subtree iteration only needs
+ * to visit the entries in that range.  A map that may be updated also
+ * maintains an index from the DN of each parent entry to the DNs of its
+ * immediate children so that the entries below a given entry may be found
+ * without examining the rest of its subtree.  That index is not available in
+ * read-only views, which instead find each child and then skip directly past
+ * all of its subordinates, so that they also avoid examining the rest of the
+ * subtree.
+ * <BR><BR>
+ * A map may optionally be backed by a compact entry store, in which case the
+ * entries will be held in an encoded form outside of the JVM heap, and will be
+ * decoded each time they are retrieved from the map.  The map informs the
+ * store whenever an entry stops or starts being part of its content, and
+ * compacts the store whenever the store indicates that too much of the space
+ * in its segments is held by entries that are no longer live.
+ */
+@ThreadSafety(level=ThreadSafetyLevel.MOSTLY_THREADSAFE)
+final class InMemoryDirectoryServerEntryMap
+      extends AbstractMap<DN,ReadOnlyEntry>
+      implements Serializable
+{
+  /**
+   * The serial version UID for this serializable class.
+   */
+  private static final long serialVersionUID = -1787640893418404395L;
+
+
+
+  // Indicates whether this map is a read-only view.
+  private final boolean readOnly;
+
+  // A map from the DN of each parent entry to the DNs of its immediate
+  // children.  It will be null for read-only views.
+  private final transient HashMap<DN,TreeSet<DN>> childDNs;
+
+  // The compact entry store in which entries are held, if any.
+  private final transient InMemoryDirectoryServerCompactEntryStore store;
+
+  // The current version of the tree that backs this map.
+  private volatile Tree tree;
+
+
+
+  /**
+   * Creates a new, empty entry map that may be updated.
+   */
+  InMemoryDirectoryServerEntryMap()
+  {
+    this(Tree.EMPTY, false, null);
+  }
+
+
+
+  /**
+   * Creates a new, empty entry map that may be updated and that will hold its
+   * entries in the provided compact entry store.
+   *
+   * @param  store  The compact entry store in which entries should be held.
+   *                It may be {@code null} if entries should be held in the
+   *                JVM heap.
+   */
+  InMemoryDirectoryServerEntryMap(
+       final InMemoryDirectoryServerCompactEntryStore store)
+  {
+    this(Tree.EMPTY, false, store);
+  }
+
+
+
+  /**
+   * Creates a new entry map that is backed by the provided tree.
+   *
+   * @param  tree      The tree that will back the map.
+   * @param  readOnly  Indicates whether the map should be read-only.
+   * @param  store     The compact entry store in which entries are held, if
+   *                   any.
+   */
+  private InMemoryDirectoryServerEntryMap(final Tree tree,
+               final boolean readOnly,
+               final InMemoryDirectoryServerCompactEntryStore store)
+  {
+    this.tree     = tree;
+    this.readOnly = readOnly;
+    this.store    = store;
+
+    if (readOnly)
+    {
+      childDNs = null;
+    }
+    else
+    {
+      childDNs = new HashMap<DN,TreeSet<DN>>(10);
+    }
+  }
+
+
+
+  /**
+   * Retrieves a read-only view of the content of this map as it exists at the
+   * time this method is called.  The view will not be affected by any
+   * subsequent updates to this map.  This is a constant-time operation.
+   *
+   * @return  A read-only view of the current content of this map.
+   */
+  InMemoryDirectoryServerEntryMap getReadOnlyView()
+  {
+    if (readOnly)
+    {
+      return this;
+    }
+
+    return new InMemoryDirectoryServerEntryMap(tree, true, store);
+  }
+
+
+
+  /**
+   * Retrieves the number of entries contained in this map.
+   *
+   * @return  The number of entries contained in this map.
+   */
+  @Override()
+  public int size()
+  {
+    return tree.size;
+  }
+
+
+
+  /**
+   * Indicates whether this map is empty.
+   *
+   * @return  {@code true} if this map is empty, or {@code false} if not.
+   */
+  @Override()
+  public boolean isEmpty()
+  {
+    return (tree.size == 0);
+  }
+
+
+
+  /**
+   * Indicates whether this map contains an entry with the provided DN.
+   *
+   * @param  key  The DN for which to make the determination.
+   *
+   * @return  {@code true} if this map contains an entry with the provided DN,
+   *          or {@code false} if not.
+   */
+  @Override()
+  public boolean containsKey(final Object key)
+  {
+    return (get(key) != null);
+  }
+
+
+
+  /**
+   * Retrieves the entry with the provided DN.
+   *
+   * @param  key  The DN of the entry to retrieve.
+   *
+   * @return  The entry with the provided DN, or {@code null} if there is no
+   *          such entry.
+   */
+  @Override()
+  public ReadOnlyEntry get(final Object key)
+  {
+    if (! (key instanceof DN))
+    {
+      return null;
+    }
+
+    final Node n = getNode(tree, (DN) key);
+    if (n == null)
+    {
+      return null;
+    }
+
+    return n.getValue();
+  }
+
+
+
+  /**
+   * Adds the provided entry to this map, replacing any existing entry with the
+   * same DN.
+   *
+   * @param  key    The DN of the entry to add.  It must not be {@code null}.
+   * @param  value  The entry to add.  It must not be {@code null}.
+   *
+   * @return  The entry that was replaced, or {@code null} if there was no
+   *          entry with the provided DN.
+   */
+  @Override()
+  public ReadOnlyEntry put(final DN key, final ReadOnlyEntry value)
+  {
+    ensureWritable();
+
+    final Tree t = tree;
+    final Object[] oldValue = new Object[1];
+    final Node newRoot = insert(t.root, key, toStoredValue(value), oldValue);
+    if (oldValue[0] == null)
+    {
+      tree = new Tree(newRoot, (t.size + 1));
+      addChildDN(key);
+    }
+    else
+    {
+      tree = new Tree(newRoot, t.size);
+      releaseStoredValue(oldValue[0]);
+      compactStoreIfNeeded();
+    }
+
+    return toEntry(key, oldValue[0]);
+  }
+
+
+
+  /**
+   * Removes the entry with the provided DN from this map.
+   *
+   * @param  key  The DN of the entry to remove.
+   *
+   * @return  The entry that was removed, or {@code null} if there was no entry
+   *          with the provided DN.
+   */
+  @Override()
+  public ReadOnlyEntry remove(final Object key)
+  {
+    ensureWritable();
+
+    if (! (key instanceof DN))
+    {
+      return null;
+    }
+
+    final Tree t = tree;
+    final Object[] oldValue = new Object[1];
+    final Node newRoot = delete(t.root, (DN) key, oldValue);
+    if (oldValue[0] != null)
+    {
+      tree = new Tree(newRoot, (t.size - 1));
+      removeChildDN((DN) key);
+      releaseStoredValue(oldValue[0]);
+      compactStoreIfNeeded();
+    }
+
+    return toEntry((DN) key, oldValue[0]);
+  }
+
+
+
+  /**
+   * Adds all of the entries in the provided map to this map.  If this map is
+   * empty and the provided map is another entry map or a sorted map in natural
+   * order, then this map will be populated without the need to insert each
+   * entry individually.  In the case of another entry map that holds its
+   * entries in the same way as this map, this is a constant-time operation.
+   *
+   * @param  m  The map containing the entries to add.
+   */
+  @Override()
+  public void putAll(final Map<? extends DN,? extends ReadOnlyEntry> m)
+  {
+    ensureWritable();
+
+    if (tree.size == 0)
+    {
+      if ((m instanceof InMemoryDirectoryServerEntryMap) &&
+          (((InMemoryDirectoryServerEntryMap) m).store == store))
+      {
+        tree = ((InMemoryDirectoryServerEntryMap) m).tree;
+        rebuildChildDNs();
+        if (store != null)
+        {
+          retainStoredValues(tree.root);
+        }
+        return;
+      }
+      else if ((m instanceof InMemoryDirectoryServerEntryMap) ||
+               ((m instanceof SortedMap) &&
+                (((SortedMap<?,?>) m).comparator() == null)))
+      {
+        final ArrayList<Map.Entry<? extends DN,? extends ReadOnlyEntry>> l =
+             new ArrayList<Map.Entry<? extends DN,? extends ReadOnlyEntry>>(
+                  m.entrySet());
+        tree = new Tree(build(l, 0, l.size()), l.size());
+        rebuildChildDNs();
+        return;
+      }
+    }
+
+    super.putAll(m);
+  }
+
+
+
+  /**
+   * Replaces the content of this map with the content of the provided map, and
+   * identifies the entries that differ between the old and new content.  If
+   * the provided map is another entry map that holds its entries in the same
+   * way as this map, then its tree will be adopted directly, and because the
+   * two trees will share all nodes that have not been altered since one was
+   * derived from the other, only the portions of the trees that differ will be
+   * examined.  Otherwise, a new tree will be built from the provided map and
+   * compared with the old tree in full.
+   *
+   * @param  m               The map whose content should replace the content
+   *                         of this map.
+   * @param  removedEntries  A list to which the entries that were in this map
+   *                         but are not in the provided map will be added,
+   *                         along with the old versions of any entries that
+   *                         were replaced.
+   * @param  addedEntries    A list to which the entries that are in the
+   *                         provided map but were not in this map will be
+   *                         added, along with the new versions of any entries
+   *                         that were replaced.
+   */
+  void replaceContent(final Map<DN,ReadOnlyEntry> m,
+                      final List<Map.Entry<DN,ReadOnlyEntry>> removedEntries,
+                      final List<Map.Entry<DN,ReadOnlyEntry>> addedEntries)
+  {
+    ensureWritable();
+
+    // If the tree is adopted, then entries that it holds in the compact entry
+    // store must be retained as they are found.  Otherwise, the entries were
+    // retained as they were stored while building the new tree.
+    final Tree oldTree = tree;
+    final Tree newTree;
+    final boolean adopted;
+    if ((m instanceof InMemoryDirectoryServerEntryMap) &&
+        (((InMemoryDirectoryServerEntryMap) m).store == store))
+    {
+      newTree = ((InMemoryDirectoryServerEntryMap) m).tree;
+      adopted = true;
+    }
+    else
+    {
+      final ArrayList<Map.Entry<? extends DN,? extends ReadOnlyEntry>> l;
+      if ((m instanceof InMemoryDirectoryServerEntryMap) ||
+          ((m instanceof SortedMap) &&
+           (((SortedMap<?,?>) m).comparator() == null)))
+      {
+        l = new ArrayList<Map.Entry<? extends DN,? extends ReadOnlyEntry>>(
+             m.entrySet());
+      }
+      else
+      {
+        l = new ArrayList<Map.Entry<? extends DN,? extends ReadOnlyEntry>>(
+             new TreeMap<DN,ReadOnlyEntry>(m).entrySet());
+      }
+
+      newTree = new Tree(build(l, 0, l.size()), l.size());
+      adopted = false;
+    }
+
+    tree = newTree;
+
+
+    // Walk through both trees in order.  Whenever both walks reach the same
+    // subtree, it can be skipped because its content is unchanged.
+    final DiffCursor oldCursor = new DiffCursor(oldTree.root);
+    final DiffCursor newCursor = new DiffCursor(newTree.root);
+    while (true)
+    {
+      final Node oldNode = oldCursor.peek();
+      final Node newNode = newCursor.peek();
+      if ((oldNode == null) && (newNode == null))
+      {
+        break;
+      }
+
+      if ((oldNode != null) && (! oldCursor.peekIsSingleNode()))
+      {
+        if (oldNode == newNode)
+        {
+          oldCursor.pop();
+          newCursor.pop();
+        }
+        else if ((newNode == null) || newCursor.peekIsSingleNode() ||
+                 (oldNode.height >= newNode.height))
+        {
+          oldCursor.expand();
+        }
+        else
+        {
+          newCursor.expand();
+        }
+        continue;
+      }
+      else if ((newNode != null) && (! newCursor.peekIsSingleNode()))
+      {
+        newCursor.expand();
+        continue;
+      }
+
+      final int c;
+      if (oldNode == null)
+      {
+        c = 1;
+      }
+      else if (newNode == null)
+      {
+        c = -1;
+      }
+      else
+      {
+        c = oldNode.key.compareTo(newNode.key);
+      }
+
+      if (c < 0)
+      {
+        oldCursor.pop();
+        removedEntries.add(oldNode);
+        removeChildDN(oldNode.key);
+        releaseStoredValue(oldNode.value);
+      }
+      else if (c > 0)
+      {
+        newCursor.pop();
+        addedEntries.add(newNode);
+        addChildDN(newNode.key);
+        if (adopted)
+        {
+          retainStoredValue(newNode.value);
+        }
+      }
+      else
+      {
+        oldCursor.pop();
+        newCursor.pop();
+        if (oldNode.value != newNode.value)
+        {
+          removedEntries.add(oldNode);
+          addedEntries.add(newNode);
+          releaseStoredValue(oldNode.value);
+          if (adopted)
+          {
+            retainStoredValue(newNode.value);
+          }
+        }
+      }
+    }
+
+    compactStoreIfNeeded();
+  }
+
+
+
+  /**
+   * Removes all entries from this map.
+   */
+  @Override()
+  public void clear()
+  {
+    ensureWritable();
+    tree = Tree.EMPTY;
+    childDNs.clear();
+
+    if (store != null)
+    {
+      store.clear();
+    }
+  }
+
+
+
+  /**
+   * Indicates whether this map contains any entries that are subordinate to
+   * the entry with the provided DN.  This is a logarithmic-time operation.
+   *
+   * @param  dn  The DN for which to make the determination.  It must not be
+   *             {@code null}.
+   *
+   * @return  {@code true} if this map contains at least one entry that is
+   *          subordinate to the provided DN, or {@code false} if not.
+   */
+  boolean hasSubordinates(final DN dn)
+  {
+    final NodeIterator iterator = new NodeIterator(tree, dn, dn);
+    while (iterator.hasNext())
+    {
+      if (! iterator.next().getKey().equals(dn))
+      {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+
+
+  /**
+   * Retrieves the DNs of the entries in this map that are immediate children
+   * of the entry with the provided DN.  For a map that may be updated, this
+   * will be obtained from the index of child DNs.  For a read-only view, each
+   * child will be located with a logarithmic-time search that skips over the
+   * subtree below the previous child, so the cost will be proportional to the
+   * number of children rather than the size of the subtree.
+   *
+   * @param  dn  The DN of the entry for which to retrieve the child DNs.  It
+   *             must not be {@code null}.
+   *
+   * @return  An unmodifiable set containing the DNs of the immediate children
+   *          of the entry with the provided DN, or an empty set if there are
+   *          none.
+   */
+  Set<DN> getChildDNs(final DN dn)
+  {
+    if (childDNs != null)
+    {
+      final TreeSet<DN> dnSet = childDNs.get(dn);
+      if (dnSet == null)
+      {
+        return Collections.emptySet();
+      }
+      else
+      {
+        return Collections.unmodifiableSet(dnSet);
+      }
+    }
+
+    // Each node found below the provided DN will either be a child or, if the
+    // child entry does not exist, the first of its subordinates that does.  In
+    // either case, nothing else in that node's subtree can be a child, so it
+    // can be skipped.
+    final Tree t = tree;
+    final TreeSet<DN> dnSet = new TreeSet<DN>();
+    Node n = getHigherNode(t, dn, false);
+    while ((n != null) && n.key.isDescendantOf(dn, false))
+    {
+      final DN parentDN = n.key.getParent();
+      if ((parentDN != null) && parentDN.equals(dn))
+      {
+        dnSet.add(n.key);
+      }
+
+      n = getHigherNode(t, n.key, true);
+    }
+
+    return Collections.unmodifiableSet(dnSet);
+  }
+
+
+
+  /**
+   * Retrieves an iterator that may be used to traverse the immediate children
+   * of the entry with the provided DN, in the order in which they appear in
+   * this map.
+   *
+   * @param  dn  The DN of the entry whose children should be traversed.  It
+   *             must not be {@code null}.
+   *
+   * @return  An iterator that may be used to traverse the immediate children
+   *          of the entry with the provided DN.
+   */
+  Iterator<Map.Entry<DN,ReadOnlyEntry>> childIterator(final DN dn)
+  {
+    final Tree t = tree;
+    final Set<DN> dnSet = getChildDNs(dn);
+    final ArrayList<Map.Entry<DN,ReadOnlyEntry>> childEntries =
+         new ArrayList<Map.Entry<DN,ReadOnlyEntry>>(dnSet.size());
+    for (final DN childDN : dnSet)
+    {
+      final Node n = getNode(t, childDN);
+      if (n != null)
+      {
+        childEntries.add(n);
+      }
+    }
+
+    return Collections.unmodifiableList(childEntries).iterator();
+  }
+
+
+
+  /**
+   * Retrieves an iterator that may be used to traverse the entry with the
+   * provided DN (if it exists) and all of its subordinates, in the order in
+   * which they appear in this map.  Only the entries in that subtree will be
+   * examined.  The iterator will reflect the content of the map at the time it
+   * was created.
+   *
+   * @param  baseDN  The DN of the entry at the top of the subtree to traverse.
+   *                 It must not be {@code null}.
+   *
+   * @return  An iterator that may be used to traverse the specified subtree.
+   */
+  Iterator<Map.Entry<DN,ReadOnlyEntry>> subtreeIterator(final DN baseDN)
+  {
+    return new NodeIterator(tree, baseDN, baseDN);
+  }
+
+
+
+  /**
+   * Retrieves a set view of the entries in this map.  Any iterator obtained
+   * from the set will reflect the content of the map at the time the iterator
+   * was created.  The set may not be used to alter the content of the map.
+   *
+   * @return  A set view of the entries in this map.
+   */
+  @Override()
+  public Set<Map.Entry<DN,ReadOnlyEntry>> entrySet()
+  {
+    return new AbstractSet<Map.Entry<DN,ReadOnlyEntry>>()
+    {
+      @Override()
+      public Iterator<Map.Entry<DN,ReadOnlyEntry>> iterator()
+      {
+        return new NodeIterator(tree, null, null);
+      }
+
+      @Override()
+      public int size()
+      {
+        return tree.size;
+      }
+    };
+  }
+
+
+
+  /**
+   * Retrieves the node for the entry with the provided DN from the given tree.
+   *
+   * @param  t   The tree from which to retrieve the node.
+   * @param  dn  The DN of the entry for which to retrieve the node.
+   *
+   * @return  The node for the entry with the provided DN, or {@code null} if
+   *          the tree does not contain an entry with that DN.
+   */
+  private static Node getNode(final Tree t, final DN dn)
+  {
+    Node n = t.root;
+    while (n != null)
+    {
+      final int c = dn.compareTo(n.key);
+      if (c < 0)
+      {
+        n = n.left;
+      }
+      else if (c > 0)
+      {
+        n = n.right;
+      }
+      else
+      {
+        return n;
+      }
+    }
+
+    return null;
+  }
+
+
+
+  /**
+   * Retrieves the first node in the provided tree whose DN is greater than the
+   * provided DN, optionally skipping over all nodes for entries that are
+   * subordinate to the provided DN.  Because an entry and all of its
+   * subordinates occupy a contiguous range of the tree, this is a
+   * logarithmic-time operation.
+   *
+   * @param  t            The tree in which to search.
+   * @param  dn           The DN after which to search.
+   * @param  skipSubtree  Indicates whether to skip nodes for entries that are
+   *                      subordinate to the provided DN.
+   *
+   * @return  The first matching node, or {@code null} if there is none.
+   */
+  private static Node getHigherNode(final Tree t, final DN dn,
+                                    final boolean skipSubtree)
+  {
+    Node result = null;
+    Node n = t.root;
+    while (n != null)
+    {
+      if ((dn.compareTo(n.key) >= 0) ||
+          (skipSubtree && n.key.isDescendantOf(dn, false)))
+      {
+        n = n.right;
+      }
+      else
+      {
+        result = n;
+        n = n.left;
+      }
+    }
+
+    return result;
+  }
+
+
+
+  /**
+   * Updates the index of child DNs to reflect the addition of an entry with
+   * the provided DN.
+   *
+   * @param  dn  The DN of the entry that was added.
+   */
+  private void addChildDN(final DN dn)
+  {
+    final DN parentDN = dn.getParent();
+    if (parentDN != null)
+    {
+      TreeSet<DN> dnSet = childDNs.get(parentDN);
+      if (dnSet == null)
+      {
+        dnSet = new TreeSet<DN>();
+        childDNs.put(parentDN, dnSet);
+      }
+      dnSet.add(dn);
+    }
+  }
+
+
+
+  /**
+   * Updates the index of child DNs to reflect the removal of the entry with
+   * the provided DN.
+   *
+   * @param  dn  The DN of the entry that was removed.
+   */
+  private void removeChildDN(final DN dn)
+  {
+    final DN parentDN = dn.getParent();
+    if (parentDN != null)
+    {
+      final TreeSet<DN> dnSet = childDNs.get(parentDN);
+      if (dnSet != null)
+      {
+        dnSet.remove(dn);
+        if (dnSet.isEmpty())
+        {
+          childDNs.remove(parentDN);
+        }
+      }
+    }
+  }
+
+
+
+  /**
+   * Rebuilds the index of child DNs from the current content of this map.
+   */
+  private void rebuildChildDNs()
+  {
+    childDNs.clear();
+
+    final NodeIterator iterator = new NodeIterator(tree, null, null);
+    while (iterator.hasNext())
+    {
+      addChildDN(iterator.next().getKey());
+    }
+  }
+
+
+
+  /**
+   * Ensures that this map may be updated.
+   *
+   * @throws  UnsupportedOperationException  If this map is a read-only view.
+   */
+  private void ensureWritable()
+          throws UnsupportedOperationException
+  {
+    if (readOnly)
+    {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+
+
+  /**
+   * Retrieves the object that should be serialized in place of this map.
+   * Read-only views are included in serialized snapshots, and they will be
+   * serialized as an unmodifiable {@code TreeMap}.
+   *
+   * @return  The object that should be serialized in place of this map.
+   */
+  private Object writeReplace()
+  {
+    return Collections.unmodifiableMap(new TreeMap<DN,ReadOnlyEntry>(this));
+  }
+
+
+
+  /**
+   * Retrieves the height of the provided subtree.
+   *
+   * @param  n  The root of the subtree.  It may be {@code null}.
+   *
+   * @return  The height of the provided subtree.
+   */
+  private static int height(final Node n)
+  {
+    return ((n == null) ? 0 : n.height);
+  }
+
+
+
+  /**
+   * Creates a new node with the provided content, rotating as necessary to
+   * keep the resulting subtree balanced.  The heights of the provided subtrees
+   * must not differ by more than two.
+   *
+   * @param  key    The DN for the node.
+   * @param  value  The value for the node.
+   * @param  left   The left subtree for the node.
+   * @param  right  The right subtree for the node.
+   *
+   * @return  The root of the balanced subtree.
+   */
+  private static Node balance(final DN key, final Object value,
+                              final Node left, final Node right)
+  {
+    final int leftHeight  = height(left);
+    final int rightHeight = height(right);
+    if (leftHeight > (rightHeight + 1))
+    {
+      if (height(left.left) >= height(left.right))
+      {
+        return new Node(left.key, left.value, left.left,
+             new Node(key, value, left.right, right));
+      }
+      else
+      {
+        final Node lr = left.right;
+        return new Node(lr.key, lr.value,
+             new Node(left.key, left.value, left.left, lr.left),
+             new Node(key, value, lr.right, right));
+      }
+    }
+    else if (rightHeight > (leftHeight + 1))
+    {
+      if (height(right.right) >= height(right.left))
+      {
+        return new Node(right.key, right.value,
+             new Node(key, value, left, right.left), right.right);
+      }
+      else
+      {
+        final Node rl = right.left;
+        return new Node(rl.key, rl.value,
+             new Node(key, value, left, rl.left),
+             new Node(right.key, right.value, rl.right, right.right));
+      }
+    }
+    else
+    {
+      return new Node(key, value, left, right);
+    }
+  }
+
+
+
+  /**
+   * Creates a copy of the provided subtree with the given entry added.
+   *
+   * @param  n         The root of the subtree.  It may be {@code null}.
+   * @param  key       The DN of the entry to add.
+   * @param  value     The node value for the entry to add.
+   * @param  oldValue  An array whose first element will be set to the node
+   *                   value for the entry that was replaced, if any.
+   *
+   * @return  The root of the new subtree.
+   */
+  private static Node insert(final Node n, final DN key, final Object value,
+                             final Object[] oldValue)
+  {
+    if (n == null)
+    {
+      return new Node(key, value, null, null);
+    }
+
+    final int c = key.compareTo(n.key);
+    if (c < 0)
+    {
+      return balance(n.key, n.value, insert(n.left, key, value, oldValue),
+           n.right);
+    }
+    else if (c > 0)
+    {
+      return balance(n.key, n.value, n.left,
+           insert(n.right, key, value, oldValue));
+    }
+    else
+    {
+      oldValue[0] = n.value;
+      return new Node(n.key, value, n.left, n.right);
+    }
+  }
+
+
+
+  /**
+   * Creates a copy of the provided subtree with the specified entry removed.
+   *
+   * @param  n         The root of the subtree.  It may be {@code null}.
+   * @param  key       The DN of the entry to remove.
+   * @param  oldValue  An array whose first element will be set to the node
+   *                   value for the entry that was removed, if any.
+   *
+   * @return  The root of the new subtree, which will be the same as the
+   *          provided subtree if it does not contain the specified entry.
+   */
+  private static Node delete(final Node n, final DN key,
+                             final Object[] oldValue)
+  {
+    if (n == null)
+    {
+      return null;
+    }
+
+    final int c = key.compareTo(n.key);
+    if (c < 0)
+    {
+      final Node newLeft = delete(n.left, key, oldValue);
+      if (newLeft == n.left)
+      {
+        return n;
+      }
+      return balance(n.key, n.value, newLeft, n.right);
+    }
+    else if (c > 0)
+    {
+      final Node newRight = delete(n.right, key, oldValue);
+      if (newRight == n.right)
+      {
+        return n;
+      }
+      return balance(n.key, n.value, n.left, newRight);
+    }
+
+    oldValue[0] = n.value;
+    if (n.left == null)
+    {
+      return n.right;
+    }
+    else if (n.right == null)
+    {
+      return n.left;
+    }
+
+    Node successor = n.right;
+    while (successor.left != null)
+    {
+      successor = successor.left;
+    }
+
+    return balance(successor.key, successor.value, n.left,
+         deleteMin(n.right));
+  }
+
+
+
+  /**
+   * Creates a copy of the provided subtree with its first entry removed.
+   *
+   * @param  n  The root of the subtree.  It must not be {@code null}.
+   *
+   * @return  The root of the new subtree.
+   */
+  private static Node deleteMin(final Node n)
+  {
+    if (n.left == null)
+    {
+      return n.right;
+    }
+
+    return balance(n.key, n.value, deleteMin(n.left), n.right);
+  }
+
+
+
+  /**
+   * Builds a balanced subtree from the specified portion of the provided list,
+   * which must be sorted by DN.
+   *
+   * @param  l      The sorted list of entries.
+   * @param  start  The position of the first element to include.
+   * @param  end    The position immediately after the last element to include.
+   *
+   * @return  The root of the new subtree, or {@code null} if the specified
+   *          portion of the list is empty.
+   */
+  private Node build(
+       final ArrayList<Map.Entry<? extends DN,? extends ReadOnlyEntry>> l,
+       final int start, final int end)
+  {
+    if (start >= end)
+    {
+      return null;
+    }
+
+    final int mid = (start + end) >>> 1;
+    final Map.Entry<? extends DN,? extends ReadOnlyEntry> e = l.get(mid);
+    return new Node(e.getKey(), toStoredValue(e.getValue()),
+         build(l, start, mid), build(l, (mid + 1), end));
+  }
+
+
+
+  /**
+   * Retrieves the value that should be held in a node for the provided entry.
+   *
+   * @param  entry  The entry for which to retrieve the value.
+   *
+   * @return  The entry itself if this map does not use a compact entry store,
+   *          or a handle for the entry in the store if it does.
+   */
+  private Object toStoredValue(final ReadOnlyEntry entry)
+  {
+    if (store == null)
+    {
+      return entry;
+    }
+
+    return store.store(entry);
+  }
+
+
+
+  /**
+   * Informs the compact entry store that the provided node value is once
+   * again part of the content of this map, if it is a handle for an entry in
+   * the store.
+   *
+   * @param  value  The node value that has become part of this map.
+   */
+  private void retainStoredValue(final Object value)
+  {
+    if (value instanceof InMemoryDirectoryServerCompactEntryStore.StoredEntry)
+    {
+      store.retain(
+           (InMemoryDirectoryServerCompactEntryStore.StoredEntry) value);
+    }
+  }
+
+
+
+  /**
+   * Informs the compact entry store that all of the values in the subtree
+   * rooted at the provided node are once again part of the content of this
+   * map.
+   *
+   * @param  n  The root of the subtree whose values have become part of this
+   *            map.  It may be {@code null}.
+   */
+  private void retainStoredValues(final Node n)
+  {
+    if (n != null)
+    {
+      retainStoredValues(n.left);
+      retainStoredValue(n.value);
+      retainStoredValues(n.right);
+    }
+  }
+
+
+
+  /**
+   * Informs the compact entry store that the provided node value is no longer
+   * part of the content of this map, if it is a handle for an entry in the
+   * store.
+   *
+   * @param  value  The node value that is no longer part of this map.
+   */
+  private void releaseStoredValue(final Object value)
+  {
+    if (value instanceof InMemoryDirectoryServerCompactEntryStore.StoredEntry)
+    {
+      store.release(
+           (InMemoryDirectoryServerCompactEntryStore.StoredEntry) value);
+    }
+  }
+
+
+
+  /**
+   * Compacts the compact entry store if it indicates that too much of its
+   * space is held by entries that are no longer part of this map.  Entries in
+   * segments that are being reclaimed are relocated, and only the nodes on the
+   * paths to those entries are replaced, so any read-only views and snapshots
+   * will continue to reference the original entries.
+   */
+  private void compactStoreIfNeeded()
+  {
+    if ((store == null) || (! store.needsCompaction()))
+    {
+      return;
+    }
+
+    store.beginCompaction();
+    final Tree t = tree;
+    tree = new Tree(relocateStoredValues(t.root), t.size);
+    store.endCompaction();
+  }
+
+
+
+  /**
+   * Relocates the stored entries in the subtree rooted at the provided node
+   * that are held in segments that are being reclaimed.
+   *
+   * @param  n  The root of the subtree to process.  It may be {@code null}.
+   *
+   * @return  The root of the resulting subtree, which will be the provided
+   *          node if no entries in the subtree needed to be relocated.
+   */
+  private Node relocateStoredValues(final Node n)
+  {
+    if (n == null)
+    {
+      return null;
+    }
+
+    final Node left = relocateStoredValues(n.left);
+    final Object value = store.relocate(
+         (InMemoryDirectoryServerCompactEntryStore.StoredEntry) n.value);
+    final Node right = relocateStoredValues(n.right);
+
+    if ((left == n.left) && (value == n.value) && (right == n.right))
+    {
+      return n;
+    }
+
+    return new Node(n.key, value, left, right);
+  }
+
+
+
+  /**
+   * Retrieves the entry represented by the provided node value.
+   *
+   * @param  dn     The DN of the entry.
+   * @param  value  The node value, which may be an entry or a handle for an
+   *                entry in a compact entry store.  It may be {@code null}.
+   *
+   * @return  The entry represented by the provided value, or {@code null} if
+   *          the value was {@code null}.
+   */
+  private static ReadOnlyEntry toEntry(final DN dn, final Object value)
+  {
+    if (value instanceof InMemoryDirectoryServerCompactEntryStore.StoredEntry)
+    {
+      return ((InMemoryDirectoryServerCompactEntryStore.StoredEntry) value).
+           getEntry(dn);
+    }
+
+    return (ReadOnlyEntry) value;
+  }
+
+
+
+  /**
+   * This class represents a single version of the tree that backs the map.
+   */
+  private static final class Tree
+  {
+    /**
+     * An empty tree.
+     */
+    private static final Tree EMPTY = new Tree(null, 0);
+
+
+
+    // The number of entries in the tree.
+    private final int size;
+
+    // The root node for the tree.
+    private final Node root;
+
+
+
+    /**
+     * Creates a new tree with the provided information.
+     *
+     * @param  root  The root node for the tree.  It may be {@code null} if
+     *               the tree is empty.
+     * @param  size  The number of entries in the tree.
+     */
+    private Tree(final Node root, final int size)
+    {
+      this.root = root;
+      this.size = size;
+    }
+  }
+
+
+
+  /**
+   * This class represents an immutable node in the tree.
+   */
+  private static final class Node
+          implements Map.Entry<DN,ReadOnlyEntry>
+  {
+    // The height of the subtree rooted at this node.
+    private final int height;
+
+    // The DN of the entry for this node.
+    private final DN key;
+
+    // The left subtree for this node.
+    private final Node left;
+
+    // The right subtree for this node.
+    private final Node right;
+
+    // The entry for this node, or a handle for the entry in a compact entry
+    // store.
+    private final Object value;
+
+
+
+    /**
+     * Creates a new node with the provided information.
+     *
+     * @param  key    The DN of the entry for this node.
+     * @param  value  The entry for this node, or a handle for the entry in a
+     *                compact entry store.
+     * @param  left   The left subtree for this node.
+     * @param  right  The right subtree for this node.
+     */
+    private Node(final DN key, final Object value, final Node left,
+                 final Node right)
+    {
+      this.key   = key;
+      this.value = value;
+      this.left  = left;
+      this.right = right;
+
+      height = Math.max(height(left), height(right)) + 1;
+    }
+
+
+
+    /**
+     * Retrieves the DN of the entry for this node.
+     *
+     * @return  The DN of the entry for this node.
+     */
+    public DN getKey()
+    {
+      return key;
+    }
+
+
+
+    /**
+     * Retrieves the entry for this node.  If the entry is held in a compact
+     * entry store, then it will be decoded.
+     *
+     * @return  The entry for this node.
+     */
+    public ReadOnlyEntry getValue()
+    {
+      return toEntry(key, value);
+    }
+
+
+
+    /**
+     * Indicates that the entry for this node may not be altered.
+     *
+     * @param  value  The new entry for this node.
+     *
+     * @return  This method will never return normally.
+     *
+     * @throws  UnsupportedOperationException  Always.
+     */
+    public ReadOnlyEntry setValue(final ReadOnlyEntry value)
+           throws UnsupportedOperationException
+    {
+      throw new UnsupportedOperationException();
+    }
+
+
+
+    /**
+     * Retrieves a hash code for this node, as defined by {@code Map.Entry}.
+     *
+     * @return  A hash code for this node.
+     */
+    @Override()
+    public int hashCode()
+    {
+      return key.hashCode() ^ getValue().hashCode();
+    }
+
+
+
+    /**
+     * Indicates whether the provided object is equal to this node, as defined
+     * by {@code Map.Entry}.
+     *
+     * @param  o  The object for which to make the determination.
+     *
+     * @return  {@code true} if the provided object is equal to this node, or
+     *          {@code false} if not.
+     */
+    @Override()
+    public boolean equals(final Object o)
+    {
+      if (! (o instanceof Map.Entry))
+      {
+        return false;
+      }
+
+      final Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+      return key.equals(e.getKey()) && getValue().equals(e.getValue());
+    }
+
+
+
+    /**
+     * Retrieves a string representation of this node.
+     *
+     * @return  A string representation of this node.
+     */
+    @Override()
+    public String toString()
+    {
+      return key + "=" + getValue();
+    }
+  }
+
+
+
+  /**
+   * This class provides a cursor that may be used to walk through the nodes of
+   * a tree in order, in which the nodes of a subtree are only visited
+   * individually once the subtree has been expanded.  This makes it possible
+   * to skip a subtree without visiting any of its nodes.
+   */
+  private static final class DiffCursor
+  {
+    // The number of elements currently held in the stack.
+    private int depth;
+
+    // Indicates whether each element in the stack represents only its node
+    // rather than the entire subtree rooted at that node.
+    private final boolean[] singleNode;
+
+    // The stack of nodes and subtrees that have yet to be visited.
+    private final Node[] stack;
+
+
+
+    /**
+     * Creates a new cursor for the tree with the provided root.
+     *
+     * @param  root  The root node for the tree.  It may be {@code null} if
+     *               the tree is empty.
+     */
+    private DiffCursor(final Node root)
+    {
+      // Each expansion replaces a subtree with at most three elements from the
+      // next level down.
+      final int maxDepth = (2 * height(root)) + 1;
+      stack      = new Node[maxDepth];
+      singleNode = new boolean[maxDepth];
+      depth      = 0;
+
+      push(root, false);
+    }
+
+
+
+    /**
+     * Retrieves the node at the top of the stack without removing it.
+     *
+     * @return  The node at the top of the stack, or {@code null} if there are
+     *          no more nodes to visit.
+     */
+    private Node peek()
+    {
+      if (depth == 0)
+      {
+        return null;
+      }
+
+      return stack[depth - 1];
+    }
+
+
+
+    /**
+     * Indicates whether the element at the top of the stack represents only its
+     * node rather than the entire subtree rooted at that node.  This must only
+     * be called if the stack is not empty.
+     *
+     * @return  {@code true} if the element at the top of the stack represents
+     *          only its node, or {@code false} if it represents a subtree.
+     */
+    private boolean peekIsSingleNode()
+    {
+      return singleNode[depth - 1];
+    }
+
+
+
+    /**
+     * Removes the element at the top of the stack, which may be a single node
+     * or an entire subtree.  This must only be called if the stack is not
+     * empty.
+     *
+     * @return  The node for the element that was removed.
+     */
+    private Node pop()
+    {
+      final Node n = stack[--depth];
+      stack[depth] = null;
+      return n;
+    }
+
+
+
+    /**
+     * Replaces the subtree at the top of the stack with its right subtree, its
+     * root node, and its left subtree, so that the left subtree will be at the
+     * top of the stack.  This must only be called if the element at the top of
+     * the stack represents a subtree.
+     */
+    private void expand()
+    {
+      final Node n = pop();
+      push(n.right, false);
+      push(n, true);
+      push(n.left, false);
+    }
+
+
+
+    /**
+     * Pushes the provided node or subtree onto the stack.
+     *
+     * @param  n           The node to push.  Nothing will be pushed if it is
+     *                     {@code null}.
+     * @param  singleNode  Indicates whether the element represents only the
+     *                     provided node rather than the subtree rooted at it.
+     */
+    private void push(final Node n, final boolean singleNode)
+    {
+      if (n != null)
+      {
+        stack[depth] = n;
+        this.singleNode[depth] = singleNode;
+        depth++;
+      }
+    }
+  }
+
+
+
+  /**
+   * This class provides an iterator that traverses the nodes of a tree in
+   * order.
+   */
+  private static final class NodeIterator
+          implements Iterator<Map.Entry<DN,ReadOnlyEntry>>
+  {
+    // The number of nodes currently held in the stack.
+    private int depth;
+
+    // The DN of the entry at the top of the subtree to which iteration should
+    // be restricted, if any.
+    private final DN baseDN;
+
+    // The stack of nodes whose entries and right subtrees have yet to be
+    // visited.
+    private final Node[] stack;
+
+
+
+    /**
+     * Creates a new iterator for the provided tree.
+     *
+     * @param  tree     The tree to traverse.
+     * @param  startDN  The DN at which to start the traversal.  The first entry
+     *                  returned will be the first entry whose DN is greater
+     *                  than or equal to this DN.  It may be {@code null} to
+     *                  start with the first entry in the tree.
+     * @param  baseDN   The DN of the entry at the top of the subtree to which
+     *                  the traversal should be restricted.  The traversal will
+     *                  end with the first entry that is not within that
+     *                  subtree.  It may be {@code null} if the traversal should
+     *                  not be restricted.
+     */
+    private NodeIterator(final Tree tree, final DN startDN, final DN baseDN)
+    {
+      this.baseDN = baseDN;
+
+      stack = new Node[height(tree.root)];
+      depth = 0;
+
+      if (startDN == null)
+      {
+        pushLeft(tree.root);
+      }
+      else
+      {
+        Node n = tree.root;
+        while (n != null)
+        {
+          if (startDN.compareTo(n.key) <= 0)
+          {
+            stack[depth++] = n;
+            n = n.left;
+          }
+          else
+          {
+            n = n.right;
+          }
+        }
+      }
+    }
+
+
+
+    /**
+     * Pushes the provided node and all of its left descendants onto the stack.
+     *
+     * @param  node  The node to push.  It may be {@code null}.
+     */
+    private void pushLeft(final Node node)
+    {
+      Node n = node;
+      while (n != null)
+      {
+        stack[depth++] = n;
+        n = n.left;
+      }
+    }
+
+
+
+    /**
+     * Indicates whether there are more entries to be returned.
+     *
+     * @return  {@code true} if there are more entries to be returned, or
+     *          {@code false} if not.
+     */
+    public boolean hasNext()
+    {
+      if (depth == 0)
+      {
+        return false;
+      }
+
+      return ((baseDN == null) ||
+           stack[depth - 1].key.isDescendantOf(baseDN, true));
+    }
+
+
+
+    /**
+     * Retrieves the next entry.
+     *
+     * @return  The next entry.
+     *
+     * @throws  NoSuchElementException  If there are no more entries.
+     */
+    public Map.Entry<DN,ReadOnlyEntry> next()
+           throws NoSuchElementException
+    {
+      if (! hasNext())
+      {
+        throw new NoSuchElementException();
+      }
+
+      final Node n = stack[--depth];
+      stack[depth] = null;
+      pushLeft(n.right);
+      return n;
+    }
+
+
+
+    /**
+     * Indicates that entries may not be removed through this iterator.
+     *
+     * @throws  UnsupportedOperationException  Always.
+     */
+    public void remove()
+           throws UnsupportedOperationException
+    {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -48,17 +48,25 @@ import static com.unboundid.ldap.listener.ListenerMessages.*;
 
 /**
  * This class provides a data structure for maintaining an equality index for a
- * specified attribute.
+ * specified attribute.  Each posting list is held as a sorted array of entry
+ * IDs obtained from an {@link InMemoryDirectoryServerEntryIDMap}, so that
+ * values shared by a large number of entries may be stored and combined
+ * without allocating a set of DNs.
  */
 @Mutable()
 @ThreadSafety(level=ThreadSafetyLevel.COMPLETELY_THREADSAFE)
 final class InMemoryDirectoryServerEqualityAttributeIndex
+      extends InMemoryDirectoryServerAttributeIndex
 {
   // The attribute type with which this index is associated.
   private final AttributeTypeDefinition attributeType;
 
-  // A map from normalized values to the DNs of entries with those values.
-  private final Map<ASN1OctetString,TreeSet<DN>> indexMap;
+  // The map used to assign IDs to the entries in this index.
+  private final InMemoryDirectoryServerEntryIDMap entryIDs;
+
+  // A map from normalized values to the IDs of entries with those values.
+  private final Map<ASN1OctetString,InMemoryDirectoryServerEntryIDList>
+       indexMap;
 
   // The matching rule used to normalize values.
   private final MatchingRule matchingRule;
@@ -83,8 +91,34 @@ final class InMemoryDirectoryServerEqualityAttributeIndex
   InMemoryDirectoryServerEqualityAttributeIndex(final String attributeType,
                                                 final Schema schema)
        throws LDAPException
+  {
+    this(attributeType, schema, new InMemoryDirectoryServerEntryIDMap());
+  }
+
+
+
+  /**
+   * Creates a new equality attribute index for the specified attribute type
+   * that will use the provided map to obtain entry IDs.
+   *
+   * @param  attributeType  The name or OID of the attribute type with which
+   *                        this index is associated.  It must be defined in the
+   *                        schema.
+   * @param  schema         The schema for the server.  It must not be
+   *                        {@code null}.
+   * @param  entryIDs       The map used to assign IDs to entries.  It may be
+   *                        shared with other indexes so that their entry IDs
+   *                        may be combined.
+   *
+   * @throws  LDAPException  If the specified attribute type is not defined in
+   *                         the schema.
+   */
+  InMemoryDirectoryServerEqualityAttributeIndex(final String attributeType,
+       final Schema schema, final InMemoryDirectoryServerEntryIDMap entryIDs)
+       throws LDAPException
   {
     this.schema = schema;
+    this.entryIDs = entryIDs;
     if (schema == null)
     {
       throw new LDAPException(ResultCode.PARAM_ERROR,
@@ -101,7 +135,8 @@ final class InMemoryDirectoryServerEqualityAttributeIndex
     matchingRule = MatchingRule.selectEqualityMatchingRule(attributeType,
          schema);
 
-    indexMap = new HashMap<ASN1OctetString,TreeSet<DN>>(100);
+    indexMap =
+         new HashMap<ASN1OctetString,InMemoryDirectoryServerEntryIDList>(100);
   }
 
 
@@ -111,6 +146,7 @@ final class InMemoryDirectoryServerEqualityAttributeIndex
    *
    * @return  The attribute type definition for this index.
    */
+  @Override()
   AttributeTypeDefinition getAttributeType()
   {
     return attributeType;
@@ -121,8 +157,17 @@ final class InMemoryDirectoryServerEqualityAttributeIndex
   /**
    * Clears all index data for the associated attribute.
    */
+  @Override()
   synchronized void clear()
   {
+    for (final InMemoryDirectoryServerEntryIDList l : indexMap.values())
+    {
+      for (final int id : l.toArray())
+      {
+        entryIDs.release(id);
+      }
+    }
+
     indexMap.clear();
   }
 
@@ -139,9 +184,11 @@ final class InMemoryDirectoryServerEqualityAttributeIndex
   {
     final HashMap<ASN1OctetString,TreeSet<DN>> m =
          new HashMap<ASN1OctetString,TreeSet<DN>>(indexMap.size());
-    for (final Map.Entry<ASN1OctetString,TreeSet<DN>> e : indexMap.entrySet())
+    for (final Map.Entry<ASN1OctetString,InMemoryDirectoryServerEntryIDList> e :
+         indexMap.entrySet())
     {
-      m.put(e.getKey(), new TreeSet<DN>(e.getValue()));
+      m.put(e.getKey(),
+           new TreeSet<DN>(entryIDs.getDNs(e.getValue().toArray())));
     }
 
     return Collections.unmodifiableMap(m);
@@ -165,14 +212,76 @@ final class InMemoryDirectoryServerEqualityAttributeIndex
   synchronized Set<DN> getMatchingEntries(final ASN1OctetString value)
                throws LDAPException
   {
-    final TreeSet<DN> dnSet = indexMap.get(matchingRule.normalize(value));
-    if (dnSet == null)
+    final InMemoryDirectoryServerEntryIDList idList =
+         indexMap.get(matchingRule.normalize(value));
+    if (idList == null)
     {
       return Collections.emptySet();
     }
     else
     {
-      return Collections.unmodifiableSet(dnSet);
+      return Collections.unmodifiableSet(
+           entryIDs.getDNs(idList.toArray()));
+    }
+  }
+
+
+
+  /**
+   * Retrieves the IDs of the entries that have the specified value for the
+   * associated attribute.  The IDs may be mapped back to DNs using the
+   * entry ID map provided when this index was created.
+   *
+   * @param  value  The value for which to retrieve the corresponding entry IDs.
+   *
+   * @return  A sorted array containing the IDs of the entries that have the
+   *          provided value, or an empty array if there are none.
+   *
+   * @throws  LDAPException  If a problem is encountered while attempting to
+   *                         make the determination (e.g., if the given value is
+   *                         not acceptable for the associated attribute type).
+   */
+  synchronized int[] getMatchingEntryIDs(final ASN1OctetString value)
+               throws LDAPException
+  {
+    final InMemoryDirectoryServerEntryIDList idList =
+         indexMap.get(matchingRule.normalize(value));
+    if (idList == null)
+    {
+      return InMemoryDirectoryServerEntryIDList.NO_IDS;
+    }
+    else
+    {
+      return idList.toArray();
+    }
+  }
+
+
+
+  /**
+   * Retrieves the number of entries that have the specified value for the
+   * associated attribute.
+   *
+   * @param  value  The value for which to make the determination.
+   *
+   * @return  The number of entries that have the provided value.
+   *
+   * @throws  LDAPException  If a problem is encountered while attempting to
+   *                         make the determination (e.g., if the given value is
+   *                         not acceptable for the associated attribute type).
+   */
+  synchronized int countMatchingEntries(final ASN1OctetString value)
+               throws LDAPException
+  {
+    final InMemoryDirectoryServerEntryIDList idList =
+         indexMap.get(matchingRule.normalize(value));
+    if (idList == null)
+    {
+      return 0;
+    }
+    else
+    {
+      return idList.size();
     }
   }
 
@@ -187,6 +296,7 @@ final class InMemoryDirectoryServerEqualityAttributeIndex
    *                         one or more values that are not acceptable for the
    *                         associated attribute type).
    */
+  @Override()
   synchronized void processAdd(final Entry entry)
                throws LDAPException
   {
@@ -206,13 +316,18 @@ final class InMemoryDirectoryServerEqualityAttributeIndex
 
       for (final ASN1OctetString v : normalizedValues)
       {
-        TreeSet<DN> dnSet = indexMap.get(v);
-        if (dnSet == null)
+        InMemoryDirectoryServerEntryIDList idList = indexMap.get(v);
+        if (idList == null)
+        {
+          idList = new InMemoryDirectoryServerEntryIDList();
+          indexMap.put(v, idList);
+        }
+
+        final int id = entryIDs.acquire(dn);
+        if (! idList.add(id))
         {
-          dnSet = new TreeSet<DN>();
-          indexMap.put(v, dnSet);
+          entryIDs.release(id);
         }
-        dnSet.add(dn);
       }
     }
   }
@@ -228,6 +343,7 @@ final class InMemoryDirectoryServerEqualityAttributeIndex
    *                         one or more values that are not acceptable for the
    *                         associated attribute type).
    */
+  @Override()
   synchronized void processDelete(final Entry entry)
                throws LDAPException
   {
@@ -235,7 +351,11 @@ final class InMemoryDirectoryServerEqualityAttributeIndex
          entry.getAttribute(attributeType.getNameOrOID(), schema);
     if (a != null)
     {
-      final DN dn = entry.getParsedDN();
+      final int id = entryIDs.getID(entry.getParsedDN());
+      if (id < 0)
+      {
+        return;
+      }
 
       final ASN1OctetString[] rawValues = a.getRawValues();
       final ASN1OctetString[] normalizedValues =
@@ -247,11 +367,11 @@ final class InMemoryDirectoryServerEqualityAttributeIndex
 
       for (final ASN1OctetString v : normalizedValues)
       {
-        final TreeSet<DN> dnSet = indexMap.get(v);
-        if (dnSet != null)
+        final InMemoryDirectoryServerEntryIDList idList = indexMap.get(v);
+        if ((idList != null) && idList.remove(id))
         {
-          dnSet.remove(dn);
-          if (dnSet.isEmpty())
+          entryIDs.release(id);
+          if (idList.isEmpty())
           {
             indexMap.remove(v);
           }
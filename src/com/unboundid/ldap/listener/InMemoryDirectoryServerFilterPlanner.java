@@ -0,0 +1,933 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.listener;
+
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.schema.AttributeTypeDefinition;
+import com.unboundid.ldap.sdk.schema.Schema;
+import com.unboundid.util.Debug;
+import com.unboundid.util.DebugType;
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+
+
+/**
+ * This class provides a simple cost-based planner that uses the attribute
+ * indexes defined in the in-memory directory server to obtain a candidate list
+ * for a search filter.  It uses the indexes to estimate the number of entries
+ * that may match each component of the filter, evaluates the components of an
+ * AND filter starting with the most selective, stops intersecting candidate
+ * sets once the candidate list is small enough that the remaining components
+ * may simply be checked against each candidate, and indicates that the entries
+ * should be scanned when the estimated candidate list is large enough that
+ * using it would not be cheaper than a scan.
+ * <BR><BR>
+ * The plan chosen for each search will be written to the debug logger with a
+ * debug type of {@link DebugType#OTHER} when debugging is enabled for that
+ * type.
+ * <BR><BR>
+ * Candidate lists obtained from equality indexes are kept as sorted arrays of
+ * entry IDs while the filter is being processed, and are only converted to
+ * DNs once the final candidate list has been determined.
+ */
+@ThreadSafety(level=ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+final class InMemoryDirectoryServerFilterPlanner
+{
+  /**
+   * The candidate list size at or below which no further AND components will
+   * be evaluated, since it is cheaper to check the remaining components
+   * against each candidate entry.
+   */
+  static final int SHORT_CIRCUIT_THRESHOLD = 16;
+
+
+
+  /**
+   * The factor used when deciding whether to use a candidate list rather than
+   * scanning the entries.  A candidate list will only be used if its estimated
+   * size multiplied by this factor does not exceed the number of entries in the
+   * server, since retrieving each candidate is more expensive than visiting
+   * the next entry in a scan.
+   */
+  static final int SCAN_COST_FACTOR = 2;
+
+
+
+  // The map used to assign IDs to entries in the equality indexes.
+  private final InMemoryDirectoryServerEntryIDMap entryIDs;
+
+  // A reference to the schema for the server.
+  private final AtomicReference<Schema> schemaRef;
+
+  // The set of equality indexes defined for the server.
+  private final Map<AttributeTypeDefinition,
+     InMemoryDirectoryServerEqualityAttributeIndex> equalityIndexes;
+
+  // The set of ordering indexes defined for the server.
+  private final Map<AttributeTypeDefinition,
+     InMemoryDirectoryServerOrderingAttributeIndex> orderingIndexes;
+
+  // The set of presence indexes defined for the server.
+  private final Map<AttributeTypeDefinition,
+     InMemoryDirectoryServerPresenceAttributeIndex> presenceIndexes;
+
+  // The set of substring indexes defined for the server.
+  private final Map<AttributeTypeDefinition,
+     InMemoryDirectoryServerSubstringAttributeIndex> substringIndexes;
+
+
+
+  /**
+   * Creates a new filter planner that will use the provided indexes.
+   *
+   * @param  schemaRef         A reference to the schema for the server.
+   * @param  entryIDs          The map used to assign IDs to entries in the
+   *                           equality indexes.
+   * @param  equalityIndexes   The set of equality indexes defined for the
+   *                           server.
+   * @param  presenceIndexes   The set of presence indexes defined for the
+   *                           server.
+   * @param  substringIndexes  The set of substring indexes defined for the
+   *                           server.
+   * @param  orderingIndexes   The set of ordering indexes defined for the
+   *                           server.
+   */
+  InMemoryDirectoryServerFilterPlanner(
+       final AtomicReference<Schema> schemaRef,
+       final InMemoryDirectoryServerEntryIDMap entryIDs,
+       final Map<AttributeTypeDefinition,
+            InMemoryDirectoryServerEqualityAttributeIndex> equalityIndexes,
+       final Map<AttributeTypeDefinition,
+            InMemoryDirectoryServerPresenceAttributeIndex> presenceIndexes,
+       final Map<AttributeTypeDefinition,
+            InMemoryDirectoryServerSubstringAttributeIndex> substringIndexes,
+       final Map<AttributeTypeDefinition,
+            InMemoryDirectoryServerOrderingAttributeIndex> orderingIndexes)
+  {
+    this.schemaRef        = schemaRef;
+    this.entryIDs         = entryIDs;
+    this.equalityIndexes  = equalityIndexes;
+    this.presenceIndexes  = presenceIndexes;
+    this.substringIndexes = substringIndexes;
+    this.orderingIndexes  = orderingIndexes;
+  }
+
+
+
+  /**
+   * Attempts to use the indexes to obtain a candidate list for the provided
+   * filter.  The candidate list may include entries that do not match the
+   * filter, so each candidate must still be checked against it.
+   *
+   * @param  filter      The filter to be processed.
+   * @param  entryCount  The total number of entries in the server.
+   * @param  planBuffer  A buffer to which a description of the chosen plan
+   *                     should be appended.  It may be {@code null} if the
+   *                     description is only needed for debug logging.
+   *
+   * @return  The DNs of entries which may match the given filter, or
+   *          {@code null} if the entries should be scanned instead.
+   */
+  Set<DN> getCandidateDNs(final Filter filter, final int entryCount,
+                          final StringBuilder planBuffer)
+  {
+    final boolean debugEnabled = Debug.debugEnabled(DebugType.OTHER);
+    final StringBuilder buffer;
+    if ((planBuffer == null) && debugEnabled)
+    {
+      buffer = new StringBuilder();
+    }
+    else
+    {
+      buffer = planBuffer;
+    }
+
+    final int estimate = estimate(filter);
+
+    final Set<DN> candidateDNs;
+    if (estimate < 0)
+    {
+      candidateDNs = null;
+      if (buffer != null)
+      {
+        buffer.append("filter=");
+        filter.toString(buffer);
+        buffer.append(" plan=scan (unindexed)");
+      }
+    }
+    else if (((long) estimate * SCAN_COST_FACTOR) > entryCount)
+    {
+      candidateDNs = null;
+      if (buffer != null)
+      {
+        buffer.append("filter=");
+        filter.toString(buffer);
+        buffer.append(" plan=scan (estimate ");
+        buffer.append(estimate);
+        buffer.append(" of ");
+        buffer.append(entryCount);
+        buffer.append(" entries)");
+      }
+    }
+    else
+    {
+      StringBuilder evaluationBuffer = null;
+      if (buffer != null)
+      {
+        buffer.append("filter=");
+        filter.toString(buffer);
+        buffer.append(" plan=");
+        evaluationBuffer = buffer;
+      }
+
+      final CandidateList candidates = evaluate(filter, evaluationBuffer);
+      if (candidates == null)
+      {
+        candidateDNs = null;
+      }
+      else
+      {
+        candidateDNs = toDNs(candidates);
+      }
+
+      if (buffer != null)
+      {
+        buffer.append(" candidates=");
+        if (candidateDNs == null)
+        {
+          buffer.append("none");
+        }
+        else
+        {
+          buffer.append(candidateDNs.size());
+        }
+      }
+    }
+
+    if (debugEnabled)
+    {
+      Debug.debug(Level.INFO, DebugType.OTHER,
+           "In-memory directory server search " + buffer.toString());
+    }
+
+    return candidateDNs;
+  }
+
+
+
+  /**
+   * Estimates the number of entries that may match the provided filter, based
+   * on the information in the indexes.
+   *
+   * @param  filter  The filter for which to obtain the estimate.
+   *
+   * @return  The estimated number of entries that may match the provided
+   *          filter, or -1 if the filter cannot be processed using the
+   *          indexes.
+   */
+  int estimate(final Filter filter)
+  {
+    try
+    {
+      switch (filter.getFilterType())
+      {
+        case Filter.FILTER_TYPE_AND:
+          int andEstimate = -1;
+          for (final Filter f : filter.getComponents())
+          {
+            final int e = estimate(f);
+            if ((e >= 0) && ((andEstimate < 0) || (e < andEstimate)))
+            {
+              andEstimate = e;
+            }
+          }
+          return andEstimate;
+
+        case Filter.FILTER_TYPE_OR:
+          long orEstimate = 0L;
+          for (final Filter f : filter.getComponents())
+          {
+            final int e = estimate(f);
+            if (e < 0)
+            {
+              return -1;
+            }
+            orEstimate += e;
+          }
+          return (int) Math.min(orEstimate, Integer.MAX_VALUE);
+
+        case Filter.FILTER_TYPE_EQUALITY:
+          final InMemoryDirectoryServerEqualityAttributeIndex eqIndex =
+               equalityIndexes.get(getAttributeType(filter));
+          if (eqIndex == null)
+          {
+            return -1;
+          }
+          return eqIndex.countMatchingEntries(filter.getRawAssertionValue());
+
+        case Filter.FILTER_TYPE_PRESENCE:
+          final InMemoryDirectoryServerPresenceAttributeIndex presIndex =
+               presenceIndexes.get(getAttributeType(filter));
+          if (presIndex == null)
+          {
+            return -1;
+          }
+          return presIndex.getMatchingEntries().size();
+
+        case Filter.FILTER_TYPE_SUBSTRING:
+          final InMemoryDirectoryServerSubstringAttributeIndex subIndex =
+               substringIndexes.get(getAttributeType(filter));
+          if (subIndex == null)
+          {
+            return -1;
+          }
+          return subIndex.estimateMatchingEntries(
+               filter.getRawSubInitialValue(), filter.getRawSubAnyValues(),
+               filter.getRawSubFinalValue());
+
+        case Filter.FILTER_TYPE_GREATER_OR_EQUAL:
+          final InMemoryDirectoryServerOrderingAttributeIndex geIndex =
+               orderingIndexes.get(getAttributeType(filter));
+          if (geIndex == null)
+          {
+            return -1;
+          }
+          return geIndex.countEntriesGreaterThanOrEqualTo(
+               filter.getRawAssertionValue());
+
+        case Filter.FILTER_TYPE_LESS_OR_EQUAL:
+          final InMemoryDirectoryServerOrderingAttributeIndex leIndex =
+               orderingIndexes.get(getAttributeType(filter));
+          if (leIndex == null)
+          {
+            return -1;
+          }
+          return leIndex.countEntriesLessThanOrEqualTo(
+               filter.getRawAssertionValue());
+
+        default:
+          // NOT, approximate match, and extensible match filters can't be
+          // processed using the indexes.
+          return -1;
+      }
+    }
+    catch (final Exception e)
+    {
+      Debug.debugException(e);
+      return -1;
+    }
+  }
+
+
+
+  /**
+   * Uses the indexes to obtain a candidate list for the provided filter.
+   *
+   * @param  filter  The filter to be processed.
+   * @param  buffer  A buffer to which a description of the plan should be
+   *                 appended.  It may be {@code null} if no description is
+   *                 needed.
+   *
+   * @return  The candidate list for the given filter, or {@code null} if the
+   *          filter cannot be processed using the indexes.
+   */
+  private CandidateList evaluate(final Filter filter,
+                                 final StringBuilder buffer)
+  {
+    try
+    {
+      switch (filter.getFilterType())
+      {
+        case Filter.FILTER_TYPE_AND:
+          return evaluateAND(filter, buffer);
+
+        case Filter.FILTER_TYPE_OR:
+          return evaluateOR(filter, buffer);
+
+        case Filter.FILTER_TYPE_EQUALITY:
+          final InMemoryDirectoryServerEqualityAttributeIndex eqIndex =
+               equalityIndexes.get(getAttributeType(filter));
+          if (eqIndex == null)
+          {
+            return unindexed(filter, buffer);
+          }
+          return indexed(filter, "equality",
+               new CandidateList(
+                    eqIndex.getMatchingEntryIDs(filter.getRawAssertionValue())),
+               buffer);
+
+        case Filter.FILTER_TYPE_PRESENCE:
+          final InMemoryDirectoryServerPresenceAttributeIndex presIndex =
+               presenceIndexes.get(getAttributeType(filter));
+          if (presIndex == null)
+          {
+            return unindexed(filter, buffer);
+          }
+          return indexed(filter, "presence",
+               new CandidateList(presIndex.getMatchingEntries()), buffer);
+
+        case Filter.FILTER_TYPE_SUBSTRING:
+          final InMemoryDirectoryServerSubstringAttributeIndex subIndex =
+               substringIndexes.get(getAttributeType(filter));
+          if (subIndex == null)
+          {
+            return unindexed(filter, buffer);
+          }
+          return indexed(filter, "substring",
+               CandidateList.forDNs(subIndex.getMatchingEntries(
+                    filter.getRawSubInitialValue(),
+                    filter.getRawSubAnyValues(),
+                    filter.getRawSubFinalValue())),
+               buffer);
+
+        case Filter.FILTER_TYPE_GREATER_OR_EQUAL:
+          final InMemoryDirectoryServerOrderingAttributeIndex geIndex =
+               orderingIndexes.get(getAttributeType(filter));
+          if (geIndex == null)
+          {
+            return unindexed(filter, buffer);
+          }
+          return indexed(filter, "ordering",
+               new CandidateList(geIndex.getEntriesGreaterThanOrEqualTo(
+                    filter.getRawAssertionValue())),
+               buffer);
+
+        case Filter.FILTER_TYPE_LESS_OR_EQUAL:
+          final InMemoryDirectoryServerOrderingAttributeIndex leIndex =
+               orderingIndexes.get(getAttributeType(filter));
+          if (leIndex == null)
+          {
+            return unindexed(filter, buffer);
+          }
+          return indexed(filter, "ordering",
+               new CandidateList(leIndex.getEntriesLessThanOrEqualTo(
+                    filter.getRawAssertionValue())),
+               buffer);
+
+        default:
+          return unindexed(filter, buffer);
+      }
+    }
+    catch (final Exception e)
+    {
+      Debug.debugException(e);
+      return unindexed(filter, buffer);
+    }
+  }
+
+
+
+  /**
+   * Uses the indexes to obtain a candidate list for the provided AND filter.
+   * The indexed components will be evaluated in order of increasing estimated
+   * size, and evaluation will stop once the candidate list is no larger than
+   * {@link #SHORT_CIRCUIT_THRESHOLD}.
+   *
+   * @param  filter  The AND filter to be processed.
+   * @param  buffer  A buffer to which a description of the plan should be
+   *                 appended.  It may be {@code null} if no description is
+   *                 needed.
+   *
+   * @return  The candidate list for the given filter, or {@code null} if none
+   *          of its components can be processed using the indexes.
+   */
+  private CandidateList evaluateAND(final Filter filter,
+                                    final StringBuilder buffer)
+  {
+    final Filter[] comps = filter.getComponents();
+    final ArrayList<PlannedComponent> indexedComps =
+         new ArrayList<PlannedComponent>(comps.length);
+    final ArrayList<Filter> unindexedComps = new ArrayList<Filter>(5);
+    for (final Filter f : comps)
+    {
+      final int e = estimate(f);
+      if (e < 0)
+      {
+        unindexedComps.add(f);
+      }
+      else
+      {
+        indexedComps.add(new PlannedComponent(f, e));
+      }
+    }
+    Collections.sort(indexedComps);
+
+    if (buffer != null)
+    {
+      buffer.append("and{");
+    }
+
+    CandidateList candidates = null;
+    boolean first = true;
+    for (final PlannedComponent c : indexedComps)
+    {
+      if (buffer != null)
+      {
+        if (! first)
+        {
+          buffer.append(", ");
+        }
+        first = false;
+      }
+
+      if ((candidates != null) &&
+          (candidates.size() <= SHORT_CIRCUIT_THRESHOLD))
+      {
+        if (buffer != null)
+        {
+          c.filter.toString(buffer);
+          buffer.append(":skipped(estimate=");
+          buffer.append(c.estimate);
+          buffer.append(')');
+        }
+        continue;
+      }
+
+      final CandidateList l = evaluate(c.filter, buffer);
+      if (l == null)
+      {
+        continue;
+      }
+
+      if (candidates == null)
+      {
+        candidates = l;
+      }
+      else
+      {
+        candidates = intersect(candidates, l);
+      }
+    }
+
+    if (buffer != null)
+    {
+      for (final Filter f : unindexedComps)
+      {
+        if (! first)
+        {
+          buffer.append(", ");
+        }
+        first = false;
+        unindexed(f, buffer);
+      }
+
+      buffer.append('}');
+    }
+
+    return candidates;
+  }
+
+
+
+  /**
+   * Uses the indexes to obtain a candidate list for the provided OR filter.
+   * If all of the components yield entry IDs, then the result will also be
+   * expressed as entry IDs.
+   *
+   * @param  filter  The OR filter to be processed.
+   * @param  buffer  A buffer to which a description of the plan should be
+   *                 appended.  It may be {@code null} if no description is
+   *                 needed.
+   *
+   * @return  The candidate list for the given filter, or {@code null} if any
+   *          of its components cannot be processed using the indexes.
+   */
+  private CandidateList evaluateOR(final Filter filter,
+                                   final StringBuilder buffer)
+  {
+    if (buffer != null)
+    {
+      buffer.append("or{");
+    }
+
+    int[] candidateIDs = InMemoryDirectoryServerEntryIDList.NO_IDS;
+    TreeSet<DN> candidateDNs = null;
+    boolean first = true;
+    for (final Filter f : filter.getComponents())
+    {
+      if (buffer != null)
+      {
+        if (! first)
+        {
+          buffer.append(", ");
+        }
+        first = false;
+      }
+
+      final CandidateList l = evaluate(f, buffer);
+      if (l == null)
+      {
+        if (buffer != null)
+        {
+          buffer.append('}');
+        }
+        return null;
+      }
+
+      if ((candidateDNs == null) && (l.ids != null))
+      {
+        candidateIDs = InMemoryDirectoryServerEntryIDList.union(candidateIDs,
+             l.ids);
+      }
+      else
+      {
+        if (candidateDNs == null)
+        {
+          candidateDNs = new TreeSet<DN>(entryIDs.getDNs(candidateIDs));
+        }
+        candidateDNs.addAll(toDNs(l));
+      }
+    }
+
+    if (buffer != null)
+    {
+      buffer.append('}');
+    }
+
+    if (candidateDNs == null)
+    {
+      return new CandidateList(candidateIDs);
+    }
+    else
+    {
+      return new CandidateList(candidateDNs);
+    }
+  }
+
+
+
+  /**
+   * Appends a description of an indexed filter component to the provided
+   * buffer.
+   *
+   * @param  filter      The filter that was processed.
+   * @param  indexType   The type of index that was used.
+   * @param  candidates  The candidate list obtained from the index.  It may be
+   *                     {@code null} if the index could not be used.
+   * @param  buffer      The buffer to which the description should be
+   *                     appended.  It may be {@code null} if no description
+   *                     is needed.
+   *
+   * @return  The provided candidate list.
+   */
+  private static CandidateList indexed(final Filter filter,
+                                       final String indexType,
+                                       final CandidateList candidates,
+                                       final StringBuilder buffer)
+  {
+    if (buffer != null)
+    {
+      if (candidates == null)
+      {
+        unindexed(filter, buffer);
+      }
+      else
+      {
+        filter.toString(buffer);
+        buffer.append(':');
+        buffer.append(indexType);
+        buffer.append('(');
+        buffer.append(candidates.size());
+        buffer.append(')');
+      }
+    }
+
+    return candidates;
+  }
+
+
+
+  /**
+   * Appends a description of a filter component that cannot be processed using
+   * the indexes to the provided buffer.
+   *
+   * @param  filter  The filter that could not be processed.
+   * @param  buffer  The buffer to which the description should be appended.
+   *                 It may be {@code null} if no description is needed.
+   *
+   * @return  Always {@code null}, to indicate that no candidate list is
+   *          available for the filter.
+   */
+  private static CandidateList unindexed(final Filter filter,
+                                         final StringBuilder buffer)
+  {
+    if (buffer != null)
+    {
+      filter.toString(buffer);
+      buffer.append(":unindexed");
+    }
+
+    return null;
+  }
+
+
+
+  /**
+   * Retrieves the intersection of the provided candidate lists.  The result
+   * will be expressed as entry IDs if either of the lists is expressed as
+   * entry IDs.
+   *
+   * @param  a  The first candidate list.
+   * @param  b  The second candidate list.
+   *
+   * @return  The intersection of the provided candidate lists.
+   */
+  private CandidateList intersect(final CandidateList a, final CandidateList b)
+  {
+    if (a.ids != null)
+    {
+      if (b.ids != null)
+      {
+        return new CandidateList(
+             InMemoryDirectoryServerEntryIDList.intersect(a.ids, b.ids));
+      }
+
+      final int[] ids = new int[a.ids.length];
+      int n = 0;
+      for (final int id : a.ids)
+      {
+        if (b.dns.contains(entryIDs.getDN(id)))
+        {
+          ids[n++] = id;
+        }
+      }
+      return new CandidateList(InMemoryDirectoryServerEntryIDList.trim(ids, n));
+    }
+    else if (b.ids != null)
+    {
+      final int[] ids = new int[a.dns.size()];
+      int n = 0;
+      for (final DN dn : a.dns)
+      {
+        final int id = entryIDs.getID(dn);
+        if ((id >= 0) && (Arrays.binarySearch(b.ids, id) >= 0))
+        {
+          ids[n++] = id;
+        }
+      }
+      Arrays.sort(ids, 0, n);
+      return new CandidateList(InMemoryDirectoryServerEntryIDList.trim(ids, n));
+    }
+    else
+    {
+      final TreeSet<DN> dnSet = new TreeSet<DN>(a.dns);
+      dnSet.retainAll(b.dns);
+      return new CandidateList(dnSet);
+    }
+  }
+
+
+
+  /**
+   * Retrieves the DNs of the entries in the provided candidate list.
+   *
+   * @param  candidates  The candidate list for which to retrieve the DNs.
+   *
+   * @return  The DNs of the entries in the provided candidate list.
+   */
+  private Set<DN> toDNs(final CandidateList candidates)
+  {
+    if (candidates.dns != null)
+    {
+      return candidates.dns;
+    }
+    else
+    {
+      return entryIDs.getDNs(candidates.ids);
+    }
+  }
+
+
+
+  /**
+   * Retrieves the attribute type definition for the attribute targeted by the
+   * provided filter.
+   *
+   * @param  filter  The filter for which to retrieve the attribute type.
+   *
+   * @return  The attribute type definition for the attribute targeted by the
+   *          provided filter, or {@code null} if the server does not have a
+   *          schema or the attribute type is not defined in it.
+   */
+  private AttributeTypeDefinition getAttributeType(final Filter filter)
+  {
+    final Schema schema = schemaRef.get();
+    if (schema == null)
+    {
+      return null;
+    }
+
+    return schema.getAttributeType(filter.getAttributeName());
+  }
+
+
+
+  /**
+   * This class holds a component of an AND filter along with its estimated
+   * number of matching entries, ordered so that the components with the
+   * smallest estimates come first.
+   */
+  private static final class PlannedComponent
+          implements Comparable<PlannedComponent>
+  {
+    // The estimated number of entries matching the filter.
+    private final int estimate;
+
+    // The filter component.
+    private final Filter filter;
+
+
+
+    /**
+     * Creates a new planned component with the provided information.
+     *
+     * @param  filter    The filter component.
+     * @param  estimate  The estimated number of entries matching the filter.
+     */
+    private PlannedComponent(final Filter filter, final int estimate)
+    {
+      this.filter   = filter;
+      this.estimate = estimate;
+    }
+
+
+
+    /**
+     * Compares this planned component with the provided component.
+     *
+     * @param  c  The component to compare with this component.
+     *
+     * @return  A negative value if this component has a smaller estimate than
+     *          the provided component, a positive value if it has a larger
+     *          estimate, or zero if they have the same estimate.
+     */
+    public int compareTo(final PlannedComponent c)
+    {
+      if (estimate < c.estimate)
+      {
+        return -1;
+      }
+      else if (estimate > c.estimate)
+      {
+        return 1;
+      }
+      else
+      {
+        return 0;
+      }
+    }
+  }
+
+
+
+  /**
+   * This class holds a candidate list that is expressed either as a sorted
+   * array of entry IDs or as a set of DNs.
+   */
+  private static final class CandidateList
+  {
+    // The candidate entry IDs, in ascending order, or null if the candidates
+    // are expressed as DNs.
+    private final int[] ids;
+
+    // The candidate DNs, or null if the candidates are expressed as entry IDs.
+    private final Set<DN> dns;
+
+
+
+    /**
+     * Creates a new candidate list with the provided entry IDs.
+     *
+     * @param  ids  The candidate entry IDs, in ascending order.
+     */
+    private CandidateList(final int[] ids)
+    {
+      this.ids = ids;
+      dns      = null;
+    }
+
+
+
+    /**
+     * Creates a new candidate list with the provided DNs.
+     *
+     * @param  dns  The candidate DNs.
+     */
+    private CandidateList(final Set<DN> dns)
+    {
+      this.dns = dns;
+      ids      = null;
+    }
+
+
+
+    /**
+     * Creates a new candidate list with the provided DNs, if available.
+     *
+     * @param  dns  The candidate DNs.  It may be {@code null} if no candidate
+     *              list is available.
+     *
+     * @return  The candidate list, or {@code null} if the provided set of DNs
+     *          was {@code null}.
+     */
+    private static CandidateList forDNs(final Set<DN> dns)
+    {
+      if (dns == null)
+      {
+        return null;
+      }
+
+      return new CandidateList(dns);
+    }
+
+
+
+    /**
+     * Retrieves the number of candidates in this list.
+     *
+     * @return  The number of candidates in this list.
+     */
+    private int size()
+    {
+      if (ids == null)
+      {
+        return dns.size();
+      }
+      else
+      {
+        return ids.length;
+      }
+    }
+  }
+}
@@ -0,0 +1,1311 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.listener;
+
+
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.zip.CRC32;
+
+import com.unboundid.asn1.ASN1Element;
+import com.unboundid.asn1.ASN1Exception;
+import com.unboundid.asn1.ASN1Long;
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.asn1.ASN1Sequence;
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ReadOnlyEntry;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.controls.PersistentSearchChangeType;
+import com.unboundid.ldap.sdk.schema.Schema;
+import com.unboundid.util.Debug;
+import com.unboundid.util.DebugType;
+import com.unboundid.util.LDAPSDKThreadFactory;
+import com.unboundid.util.Mutable;
+import com.unboundid.util.StaticUtils;
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+import static com.unboundid.ldap.listener.ListenerMessages.*;
+
+
+
+/**
+ * This class provides an append-only journal of the changes made to the
+ * content of an in-memory directory server, along with periodic checkpoints of
+ * that content, so that the content can be recovered when a new server
+ * instance is created with the same journal directory.  The journal directory
+ * holds the following files:
+ * <UL>
+ *   <LI>{@code checkpoint} -- The number of the first journal file whose
+ *       changes are not reflected in the checkpoint and the subschema
+ *       subentry, followed by the complete content of the server at a point in
+ *       time in the binary format used by
+ *       {@link InMemoryDirectoryServerSnapshot#writeTo}.  A new checkpoint is
+ *       written to a temporary file and then renamed, so this file will always
+ *       hold a complete checkpoint.</LI>
+ *   <LI>{@code journal.}<I>N</I> -- A sequence of change records, each of
+ *       which holds the entry that was added or replaced and/or the DN of the
+ *       entry that was removed, along with a checksum so that a record that
+ *       was only partially written when the process ended can be detected and
+ *       ignored.  A new journal file is started each time a checkpoint is
+ *       written, and journal files are removed once a checkpoint that includes
+ *       all of their changes has been written.</LI>
+ * </UL>
+ * Change records are written while holding the server's write lock, so they
+ * are recorded in the order in which they were applied.  Checkpoints are
+ * written in the background from a snapshot of the server content, so that
+ * they do not block write operations.  When recovering, the checkpoint file is
+ * memory-mapped and decoded, and then the changes in any subsequent journal
+ * files are replayed on top of it.
+ * <BR><BR>
+ * With the exception of the {@link #waitForCheckpoint} method, the methods in
+ * this class must only be invoked while holding the server's write lock.
+ */
+@Mutable()
+@ThreadSafety(level=ThreadSafetyLevel.NOT_THREADSAFE)
+final class InMemoryDirectoryServerJournal
+{
+  /**
+   * The name of the file that holds the most recent complete checkpoint.
+   */
+  static final String CHECKPOINT_FILE_NAME = "checkpoint";
+
+
+
+  /**
+   * The name of the file to which a new checkpoint is written before it is
+   * renamed to replace the existing checkpoint.
+   */
+  static final String TEMP_CHECKPOINT_FILE_NAME = "checkpoint.tmp";
+
+
+
+  /**
+   * The prefix used for the names of journal files.  It will be followed by
+   * the journal file number.
+   */
+  static final String JOURNAL_FILE_PREFIX = "journal.";
+
+
+
+  /**
+   * The value that will appear at the start of a checkpoint file.
+   */
+  private static final int CHECKPOINT_MAGIC = 0x554D4350;
+
+
+
+  /**
+   * The value that will appear at the start of a journal file.
+   */
+  private static final int JOURNAL_MAGIC = 0x554D4A4C;
+
+
+
+  /**
+   * The version of the checkpoint and journal file formats.
+   */
+  private static final int FORMAT_VERSION = 1;
+
+
+
+  /**
+   * The BER type for the change record element that holds the DN of an entry
+   * that was removed.
+   */
+  private static final byte TYPE_REMOVED_DN = (byte) 0x80;
+
+
+
+  /**
+   * The BER type for the change record element that holds an entry that was
+   * added or replaced.
+   */
+  private static final byte TYPE_ENTRY = (byte) 0xA1;
+
+
+
+  /**
+   * The maximum size of the region of a file that will be mapped into memory
+   * at any one time while recovering.
+   */
+  private static final int MAP_WINDOW_SIZE = 64 * 1024 * 1024;
+
+
+
+  // Indicates whether a checkpoint is currently being written.
+  private final AtomicBoolean checkpointInProgress;
+
+  // Indicates whether a checkpoint should be written as soon as possible
+  // because a change could not be written to the journal.
+  private boolean checkpointAfterFailure;
+
+  // The checksum generator used for journal records.
+  private final CRC32 crc;
+
+  // The output stream used to write to the current journal file.
+  private DataOutputStream journalOutputStream;
+
+  // The journal directory.
+  private final File directory;
+
+  // The journal file that is currently being written.
+  private File journalFile;
+
+  // The number of changes that may be journaled before a new checkpoint is
+  // written.
+  private final int checkpointInterval;
+
+  // The number of changes that have been journaled since the last checkpoint
+  // was started.
+  private int changesSinceCheckpoint;
+
+  // The exception caught while writing to the current journal file, if any.
+  // No further changes will be written until a checkpoint has been written.
+  private IOException writeFailure;
+
+  // The number of the journal file that is currently being written.
+  private long journalFileNumber;
+
+  // The executor used to write checkpoints.
+  private final ThreadPoolExecutor checkpointExecutor;
+
+
+
+  /**
+   * Creates a new journal that will use the specified directory.  The
+   * {@link #recover} method must be called before any changes are journaled.
+   *
+   * @param  directory           The journal directory.  It will be created if
+   *                             it does not already exist.
+   * @param  checkpointInterval  The number of changes that may be journaled
+   *                             before a new checkpoint is written.  A value
+   *                             less than or equal to zero indicates that
+   *                             checkpoints should only be written when
+   *                             explicitly requested.
+   *
+   * @throws  LDAPException  If the journal directory does not exist and
+   *                         cannot be created.
+   */
+  InMemoryDirectoryServerJournal(final File directory,
+                                 final int checkpointInterval)
+       throws LDAPException
+  {
+    if (! (directory.isDirectory() || directory.mkdirs()))
+    {
+      throw new LDAPException(ResultCode.LOCAL_ERROR,
+           ERR_MEM_JOURNAL_CANNOT_CREATE_DIRECTORY.get(
+                directory.getAbsolutePath()));
+    }
+
+    this.directory          = directory;
+    this.checkpointInterval = checkpointInterval;
+
+    checkpointInProgress   = new AtomicBoolean(false);
+    checkpointAfterFailure = false;
+    crc                    = new CRC32();
+    journalOutputStream    = null;
+    journalFile            = null;
+    changesSinceCheckpoint = 0;
+    writeFailure           = null;
+    journalFileNumber      = -1L;
+
+    // Checkpoints are written one at a time, in the order in which they were
+    // requested, by a thread that will exit once it has been idle for a while.
+    checkpointExecutor = new ThreadPoolExecutor(0, 1, 60L, TimeUnit.SECONDS,
+         new LinkedBlockingQueue<Runnable>(),
+         new LDAPSDKThreadFactory(
+              "In-Memory Directory Server Journal Checkpoint", true));
+  }
+
+
+
+  /**
+   * Recovers the server content from the checkpoint and journal files in the
+   * journal directory, and opens a new journal file so that subsequent changes
+   * may be journaled.
+   *
+   * @param  initialContent            The content that the server would have
+   *                                   if there were no journaled changes.  It
+   *                                   will be used as the starting point if
+   *                                   there is no checkpoint.
+   * @param  initialSubschemaSubentry  The subschema subentry that the server
+   *                                   would have if there were no journaled
+   *                                   changes.
+   * @param  initialSchema             The schema that the server would have if
+   *                                   there were no journaled changes.  It may
+   *                                   be {@code null} if the server does not
+   *                                   use a schema, in which case any
+   *                                   journaled schema changes will be
+   *                                   ignored.
+   *
+   * @return  The recovered content, or {@code null} if the journal directory
+   *          did not hold a checkpoint or any journaled changes.
+   *
+   * @throws  LDAPException  If a problem occurs while reading the checkpoint
+   *                         or journal files, or while opening a new journal
+   *                         file.
+   */
+  RecoveredContent recover(
+                        final InMemoryDirectoryServerSnapshot initialContent,
+                        final ReadOnlyEntry initialSubschemaSubentry,
+                        final Schema initialSchema)
+       throws LDAPException
+  {
+    final RecoveredContent content = new RecoveredContent(initialContent,
+         initialSubschemaSubentry, initialSchema);
+    boolean recovered = false;
+
+    final File tempCheckpointFile =
+         new File(directory, TEMP_CHECKPOINT_FILE_NAME);
+    if (tempCheckpointFile.exists())
+    {
+      // This is left over from a checkpoint that was never completed.
+      deleteFile(tempCheckpointFile);
+    }
+
+    long firstFileNumber = 0L;
+    final File checkpointFile = new File(directory, CHECKPOINT_FILE_NAME);
+    if (checkpointFile.exists())
+    {
+      firstFileNumber = readCheckpoint(checkpointFile, content);
+      recovered = true;
+    }
+
+    journalFileNumber = firstFileNumber - 1L;
+    for (final long fileNumber : getJournalFileNumbers())
+    {
+      final File f = getJournalFile(fileNumber);
+      if (fileNumber < firstFileNumber)
+      {
+        // This file's changes are already reflected in the checkpoint.
+        deleteFile(f);
+        continue;
+      }
+
+      replayJournalFile(f, content);
+      journalFileNumber = fileNumber;
+      recovered = true;
+    }
+
+    changesSinceCheckpoint = content.replayedChanges;
+
+    try
+    {
+      openNextJournalFile();
+    }
+    catch (final IOException ioe)
+    {
+      Debug.debugException(ioe);
+      throw new LDAPException(ResultCode.LOCAL_ERROR,
+           ERR_MEM_JOURNAL_CANNOT_OPEN_SEGMENT.get(
+                journalFile.getAbsolutePath(),
+                StaticUtils.getExceptionMessage(ioe)),
+           ioe);
+    }
+
+    if (recovered)
+    {
+      return content;
+    }
+    else
+    {
+      return null;
+    }
+  }
+
+
+
+  /**
+   * Appends a record of the provided change to the journal.
+   *
+   * @param  changeType         The type of change that was processed.
+   * @param  entryBefore        The entry as it appeared before the change.  It
+   *                            will be {@code null} for an add.
+   * @param  entryAfter         The entry as it appeared after the change.  It
+   *                            will be {@code null} for a delete.
+   * @param  firstChangeNumber  The first change number after the change was
+   *                            applied.
+   * @param  lastChangeNumber   The last change number after the change was
+   *                            applied.
+   */
+  void append(final PersistentSearchChangeType changeType,
+              final Entry entryBefore, final Entry entryAfter,
+              final long firstChangeNumber, final long lastChangeNumber)
+  {
+    changesSinceCheckpoint++;
+    if (writeFailure != null)
+    {
+      return;
+    }
+
+    final ArrayList<ASN1Element> elements = new ArrayList<ASN1Element>(4);
+    elements.add(new ASN1Long(firstChangeNumber));
+    elements.add(new ASN1Long(lastChangeNumber));
+
+    if ((changeType == PersistentSearchChangeType.DELETE) ||
+        (changeType == PersistentSearchChangeType.MODIFY_DN))
+    {
+      elements.add(new ASN1OctetString(TYPE_REMOVED_DN, entryBefore.getDN()));
+    }
+
+    if (entryAfter != null)
+    {
+      elements.add(new ASN1Sequence(TYPE_ENTRY,
+           InMemoryDirectoryServerSnapshot.encodeEntry(entryAfter).elements()));
+    }
+
+    final byte[] recordBytes = new ASN1Sequence(elements).encode();
+    crc.reset();
+    crc.update(recordBytes);
+
+    try
+    {
+      journalOutputStream.writeInt(recordBytes.length);
+      journalOutputStream.writeInt((int) crc.getValue());
+      journalOutputStream.write(recordBytes);
+      journalOutputStream.flush();
+    }
+    catch (final IOException ioe)
+    {
+      Debug.debugException(ioe);
+      writeFailure = ioe;
+      checkpointAfterFailure = true;
+      closeJournalOutputStream();
+    }
+  }
+
+
+
+  /**
+   * Indicates whether a new checkpoint should be written, either because the
+   * checkpoint interval has been reached and a checkpoint is not already being
+   * written, or because a change could not be written to the journal.
+   *
+   * @return  {@code true} if a new checkpoint should be written, or
+   *          {@code false} if not.
+   */
+  boolean checkpointNeeded()
+  {
+    if (checkpointAfterFailure)
+    {
+      return true;
+    }
+
+    return ((checkpointInterval > 0) &&
+            (changesSinceCheckpoint >= checkpointInterval) &&
+            (! checkpointInProgress.get()));
+  }
+
+
+
+  /**
+   * Starts writing a new checkpoint from the provided snapshot, and starts a
+   * new journal file for subsequent changes.  The checkpoint will be written
+   * in the background unless a change could not be written to the journal, in
+   * which case this method will wait for the checkpoint to be written so that
+   * journaling may safely resume.
+   *
+   * @param  snapshot           A snapshot of the current server content.
+   * @param  subschemaSubentry  The current subschema subentry.
+   *
+   * @return  A future that may be used to wait for the checkpoint to be
+   *          written.
+   *
+   * @throws  LDAPException  If a new journal file cannot be opened, or if
+   *                         this method waited for the checkpoint and it could
+   *                         not be written.
+   */
+  Future<Void> checkpoint(final InMemoryDirectoryServerSnapshot snapshot,
+                          final ReadOnlyEntry subschemaSubentry)
+       throws LDAPException
+  {
+    checkpointAfterFailure = false;
+    changesSinceCheckpoint = 0;
+
+    closeJournalOutputStream();
+    try
+    {
+      openNextJournalFile();
+    }
+    catch (final IOException ioe)
+    {
+      Debug.debugException(ioe);
+      closeJournalOutputStream();
+      writeFailure = ioe;
+      throw new LDAPException(ResultCode.LOCAL_ERROR,
+           ERR_MEM_JOURNAL_CANNOT_OPEN_SEGMENT.get(
+                journalFile.getAbsolutePath(),
+                StaticUtils.getExceptionMessage(ioe)),
+           ioe);
+    }
+
+    checkpointInProgress.set(true);
+    final Future<Void> future = checkpointExecutor.submit(
+         new CheckpointWriter(snapshot, subschemaSubentry, journalFileNumber));
+
+    if (writeFailure != null)
+    {
+      // Changes made since the failure are only reflected in this checkpoint,
+      // so they would be lost if the process ended before it was written.
+      waitForCheckpoint(future);
+      writeFailure = null;
+    }
+
+    return future;
+  }
+
+
+
+  /**
+   * Waits for a checkpoint to be written.  This method does not need to be
+   * called while holding the server's write lock.
+   *
+   * @param  future  The future returned when the checkpoint was started.
+   *
+   * @throws  LDAPException  If the checkpoint could not be written, or if the
+   *                         thread was interrupted while waiting for it.
+   */
+  static void waitForCheckpoint(final Future<Void> future)
+         throws LDAPException
+  {
+    try
+    {
+      future.get();
+    }
+    catch (final InterruptedException ie)
+    {
+      Debug.debugException(ie);
+      Thread.currentThread().interrupt();
+      throw new LDAPException(ResultCode.LOCAL_ERROR,
+           ERR_MEM_JOURNAL_CHECKPOINT_INTERRUPTED.get(), ie);
+    }
+    catch (final ExecutionException ee)
+    {
+      Debug.debugException(ee);
+      final Throwable cause = ee.getCause();
+      if (cause instanceof LDAPException)
+      {
+        throw (LDAPException) cause;
+      }
+
+      throw new LDAPException(ResultCode.LOCAL_ERROR,
+           StaticUtils.getExceptionMessage(cause), cause);
+    }
+  }
+
+
+
+  /**
+   * Retrieves the number of changes that have been journaled since the most
+   * recent checkpoint was started.
+   *
+   * @return  The number of changes that have been journaled since the most
+   *          recent checkpoint was started.
+   */
+  int getChangesSinceCheckpoint()
+  {
+    return changesSinceCheckpoint;
+  }
+
+
+
+  /**
+   * Opens the next journal file and writes its header.
+   *
+   * @throws  IOException  If a problem occurs while opening the file.
+   */
+  private void openNextJournalFile()
+          throws IOException
+  {
+    journalFileNumber++;
+    journalFile = getJournalFile(journalFileNumber);
+    journalOutputStream = new DataOutputStream(new BufferedOutputStream(
+         new FileOutputStream(journalFile), 65536));
+    journalOutputStream.writeInt(JOURNAL_MAGIC);
+    journalOutputStream.writeInt(FORMAT_VERSION);
+    journalOutputStream.flush();
+  }
+
+
+
+  /**
+   * Closes the output stream for the current journal file, if it is open.
+   */
+  private void closeJournalOutputStream()
+  {
+    if (journalOutputStream != null)
+    {
+      try
+      {
+        journalOutputStream.close();
+      }
+      catch (final IOException ioe)
+      {
+        Debug.debugException(ioe);
+      }
+
+      journalOutputStream = null;
+    }
+  }
+
+
+
+  /**
+   * Retrieves the journal file with the specified number.
+   *
+   * @param  fileNumber  The number of the journal file to retrieve.
+   *
+   * @return  The journal file with the specified number.
+   */
+  private File getJournalFile(final long fileNumber)
+  {
+    return new File(directory, JOURNAL_FILE_PREFIX + fileNumber);
+  }
+
+
+
+  /**
+   * Retrieves the numbers of the journal files in the journal directory, in
+   * ascending order.
+   *
+   * @return  The numbers of the journal files in the journal directory.
+   */
+  private List<Long> getJournalFileNumbers()
+  {
+    final ArrayList<Long> fileNumbers = new ArrayList<Long>(10);
+    final File[] files = directory.listFiles();
+    if (files != null)
+    {
+      for (final File f : files)
+      {
+        final String name = f.getName();
+        if (name.startsWith(JOURNAL_FILE_PREFIX))
+        {
+          try
+          {
+            fileNumbers.add(Long.parseLong(
+                 name.substring(JOURNAL_FILE_PREFIX.length())));
+          }
+          catch (final NumberFormatException nfe)
+          {
+            Debug.debugException(nfe);
+          }
+        }
+      }
+    }
+
+    Collections.sort(fileNumbers);
+    return fileNumbers;
+  }
+
+
+
+  /**
+   * Deletes the journal files whose changes are reflected in a checkpoint.
+   *
+   * @param  firstFileNumber  The number of the first journal file whose
+   *                          changes are not reflected in the checkpoint.
+   */
+  private void deleteObsoleteJournalFiles(final long firstFileNumber)
+  {
+    for (final long fileNumber : getJournalFileNumbers())
+    {
+      if (fileNumber < firstFileNumber)
+      {
+        deleteFile(getJournalFile(fileNumber));
+      }
+    }
+  }
+
+
+
+  /**
+   * Attempts to delete the specified file.  A failure will be logged but will
+   * not otherwise be reported.
+   *
+   * @param  f  The file to delete.
+   */
+  private static void deleteFile(final File f)
+  {
+    if (! f.delete())
+    {
+      Debug.debug(Level.WARNING, DebugType.OTHER,
+           "Unable to delete file " + f.getAbsolutePath());
+    }
+  }
+
+
+
+  /**
+   * Reads the content of the specified checkpoint file into the provided
+   * recovered content.
+   *
+   * @param  checkpointFile  The checkpoint file to read.
+   * @param  content         The recovered content to update.
+   *
+   * @return  The number of the first journal file whose changes are not
+   *          reflected in the checkpoint.
+   *
+   * @throws  LDAPException  If a problem occurs while reading the checkpoint.
+   */
+  private static long readCheckpoint(final File checkpointFile,
+                                     final RecoveredContent content)
+          throws LDAPException
+  {
+    RandomAccessFile raf = null;
+    try
+    {
+      raf = new RandomAccessFile(checkpointFile, "r");
+      final MappedFileReader reader = new MappedFileReader(raf.getChannel());
+      if ((reader.readInt() != CHECKPOINT_MAGIC) ||
+          (reader.readInt() != FORMAT_VERSION))
+      {
+        throw new LDAPException(ResultCode.LOCAL_ERROR,
+             ERR_MEM_JOURNAL_INVALID_CHECKPOINT_HEADER.get(
+                  checkpointFile.getAbsolutePath()));
+      }
+
+      final long firstFileNumber = reader.readLong();
+      final int subschemaSubentryLength = reader.readInt();
+      content.setSubschemaSubentry(InMemoryDirectoryServerSnapshot.decodeEntry(
+           ASN1Sequence.decodeAsSequence(
+                reader.readBytes(subschemaSubentryLength)),
+           content.schema));
+
+      // The rest of the file holds a snapshot of the entries, which must be
+      // decoded with the schema from the checkpointed subschema subentry.
+      final InMemoryDirectoryServerSnapshot snapshot =
+           InMemoryDirectoryServerSnapshot.read(raf.getChannel(),
+                (20L + subschemaSubentryLength), content.schema);
+      content.entryMap.clear();
+      content.entryMap.putAll(snapshot.getEntryMap());
+      content.firstChangeNumber = snapshot.getFirstChangeNumber();
+      content.lastChangeNumber  = snapshot.getLastChangeNumber();
+      return firstFileNumber;
+    }
+    catch (final LDAPException le)
+    {
+      Debug.debugException(le);
+      throw new LDAPException(le.getResultCode(),
+           ERR_MEM_JOURNAL_CANNOT_READ_CHECKPOINT.get(
+                checkpointFile.getAbsolutePath(), le.getMessage()),
+           le);
+    }
+    catch (final Exception e)
+    {
+      Debug.debugException(e);
+      throw new LDAPException(ResultCode.LOCAL_ERROR,
+           ERR_MEM_JOURNAL_CANNOT_READ_CHECKPOINT.get(
+                checkpointFile.getAbsolutePath(),
+                StaticUtils.getExceptionMessage(e)),
+           e);
+    }
+    finally
+    {
+      closeQuietly(raf);
+    }
+  }
+
+
+
+  /**
+   * Replays the changes in the specified journal file on top of the provided
+   * recovered content.  If the file ends with a record that was only
+   * partially written, then that record will be ignored.
+   *
+   * @param  f        The journal file to replay.
+   * @param  content  The recovered content to update.
+   *
+   * @throws  LDAPException  If a problem occurs while reading the file, or if
+   *                         it contains a complete record that cannot be
+   *                         decoded.
+   */
+  private void replayJournalFile(final File f, final RecoveredContent content)
+          throws LDAPException
+  {
+    RandomAccessFile raf = null;
+    try
+    {
+      raf = new RandomAccessFile(f, "r");
+      final MappedFileReader reader = new MappedFileReader(raf.getChannel());
+      if ((reader.getRemaining() < 8L) ||
+          (reader.readInt() != JOURNAL_MAGIC) ||
+          (reader.readInt() != FORMAT_VERSION))
+      {
+        return;
+      }
+
+      while (reader.getRemaining() >= 8L)
+      {
+        final int length = reader.readInt();
+        final int checksum = reader.readInt();
+        if ((length < 0) || (length > reader.getRemaining()))
+        {
+          break;
+        }
+
+        final byte[] recordBytes = reader.readBytes(length);
+        crc.reset();
+        crc.update(recordBytes);
+        if (((int) crc.getValue()) != checksum)
+        {
+          break;
+        }
+
+        content.replay(recordBytes);
+      }
+    }
+    catch (final EOFException eofe)
+    {
+      // The last record was only partially written.
+      Debug.debugException(eofe);
+    }
+    catch (final Exception e)
+    {
+      Debug.debugException(e);
+      throw new LDAPException(ResultCode.LOCAL_ERROR,
+           ERR_MEM_JOURNAL_CANNOT_READ_SEGMENT.get(f.getAbsolutePath(),
+                StaticUtils.getExceptionMessage(e)),
+           e);
+    }
+    finally
+    {
+      closeQuietly(raf);
+    }
+  }
+
+
+
+  /**
+   * Closes the provided file, if it is not {@code null}.
+   *
+   * @param  raf  The file to close.
+   */
+  private static void closeQuietly(final RandomAccessFile raf)
+  {
+    if (raf != null)
+    {
+      try
+      {
+        raf.close();
+      }
+      catch (final IOException ioe)
+      {
+        Debug.debugException(ioe);
+      }
+    }
+  }
+
+
+
+  /**
+   * This class holds the server content as it is being recovered from the
+   * journal.
+   */
+  static final class RecoveredContent
+  {
+    // The number of changes that have been replayed.
+    private int replayedChanges;
+
+    // The first change number for the recovered content.
+    private long firstChangeNumber;
+
+    // The last change number for the recovered content.
+    private long lastChangeNumber;
+
+    // The DN of the subschema subentry.
+    private final DN subschemaSubentryDN;
+
+    // The recovered entries.
+    private final Map<DN,ReadOnlyEntry> entryMap;
+
+    // The recovered subschema subentry.
+    private ReadOnlyEntry subschemaSubentry;
+
+    // The recovered schema, if the server uses a schema.
+    private Schema schema;
+
+
+
+    /**
+     * Creates a new recovered content object with the provided initial
+     * content.
+     *
+     * @param  initialContent            The initial server content.
+     * @param  initialSubschemaSubentry  The initial subschema subentry.
+     * @param  initialSchema             The initial schema, if any.
+     *
+     * @throws  LDAPException  If the DN of the subschema subentry cannot be
+     *                         parsed.
+     */
+    private RecoveredContent(
+                 final InMemoryDirectoryServerSnapshot initialContent,
+                 final ReadOnlyEntry initialSubschemaSubentry,
+                 final Schema initialSchema)
+            throws LDAPException
+    {
+      entryMap = new HashMap<DN,ReadOnlyEntry>(initialContent.getEntryMap());
+      firstChangeNumber = initialContent.getFirstChangeNumber();
+      lastChangeNumber = initialContent.getLastChangeNumber();
+      subschemaSubentry = initialSubschemaSubentry;
+      subschemaSubentryDN = initialSubschemaSubentry.getParsedDN();
+      schema = initialSchema;
+      replayedChanges = 0;
+    }
+
+
+
+    /**
+     * Replaces the subschema subentry, and the schema created from it, if the
+     * server uses a schema.
+     *
+     * @param  e  The new subschema subentry.
+     */
+    private void setSubschemaSubentry(final ReadOnlyEntry e)
+    {
+      if (schema != null)
+      {
+        subschemaSubentry = e;
+        schema = new Schema(e);
+      }
+    }
+
+
+
+    /**
+     * Applies the change in the provided journal record.
+     *
+     * @param  recordBytes  The bytes that comprise the journal record.
+     *
+     * @throws  ASN1Exception  If the record cannot be decoded.
+     *
+     * @throws  LDAPException  If the record contains an invalid DN or entry.
+     */
+    private void replay(final byte[] recordBytes)
+            throws ASN1Exception, LDAPException
+    {
+      final ASN1Element[] elements =
+           ASN1Sequence.decodeAsSequence(recordBytes).elements();
+      firstChangeNumber = ASN1Long.decodeAsLong(elements[0]).longValue();
+      lastChangeNumber = ASN1Long.decodeAsLong(elements[1]).longValue();
+
+      for (int i=2; i < elements.length; i++)
+      {
+        switch (elements[i].getType())
+        {
+          case TYPE_REMOVED_DN:
+            entryMap.remove(new DN(ASN1OctetString.decodeAsOctetString(
+                 elements[i]).stringValue(), schema));
+            break;
+
+          case TYPE_ENTRY:
+            final ReadOnlyEntry e = InMemoryDirectoryServerSnapshot.decodeEntry(
+                 ASN1Sequence.decodeAsSequence(elements[i]), schema);
+            final DN dn = e.getParsedDN();
+            if (dn.equals(subschemaSubentryDN))
+            {
+              setSubschemaSubentry(e);
+            }
+            else
+            {
+              entryMap.put(dn, e);
+            }
+            break;
+        }
+      }
+
+      replayedChanges++;
+    }
+
+
+
+    /**
+     * Retrieves a snapshot of the recovered entries and change numbers.
+     *
+     * @return  A snapshot of the recovered entries and change numbers.
+     */
+    InMemoryDirectoryServerSnapshot getSnapshot()
+    {
+      return new InMemoryDirectoryServerSnapshot(entryMap, firstChangeNumber,
+           lastChangeNumber);
+    }
+
+
+
+    /**
+     * Retrieves the recovered subschema subentry.
+     *
+     * @return  The recovered subschema subentry.
+     */
+    ReadOnlyEntry getSubschemaSubentry()
+    {
+      return subschemaSubentry;
+    }
+
+
+
+    /**
+     * Retrieves the recovered schema.
+     *
+     * @return  The recovered schema, or {@code null} if the server does not
+     *          use a schema.
+     */
+    Schema getSchema()
+    {
+      return schema;
+    }
+
+
+
+    /**
+     * Retrieves the number of journaled changes that were replayed.
+     *
+     * @return  The number of journaled changes that were replayed.
+     */
+    int getReplayedChanges()
+    {
+      return replayedChanges;
+    }
+  }
+
+
+
+  /**
+   * This class writes a checkpoint from a snapshot of the server content, and
+   * removes the journal files whose changes are reflected in it.
+   */
+  private final class CheckpointWriter
+          implements Callable<Void>
+  {
+    // The number of the first journal file whose changes are not reflected in
+    // the snapshot.
+    private final long firstFileNumber;
+
+    // The subschema subentry at the time the snapshot was created.
+    private final ReadOnlyEntry subschemaSubentry;
+
+    // The snapshot to write.
+    private final InMemoryDirectoryServerSnapshot snapshot;
+
+
+
+    /**
+     * Creates a new checkpoint writer with the provided information.
+     *
+     * @param  snapshot           The snapshot to write.
+     * @param  subschemaSubentry  The subschema subentry at the time the
+     *                            snapshot was created.
+     * @param  firstFileNumber    The number of the first journal file whose
+     *                            changes are not reflected in the snapshot.
+     */
+    private CheckpointWriter(final InMemoryDirectoryServerSnapshot snapshot,
+                             final ReadOnlyEntry subschemaSubentry,
+                             final long firstFileNumber)
+    {
+      this.snapshot          = snapshot;
+      this.subschemaSubentry = subschemaSubentry;
+      this.firstFileNumber   = firstFileNumber;
+    }
+
+
+
+    /**
+     * Writes the checkpoint.
+     *
+     * @return  {@code null}.
+     *
+     * @throws  LDAPException  If a problem occurs while writing the
+     *                         checkpoint.
+     */
+    public Void call()
+           throws LDAPException
+    {
+      try
+      {
+        writeCheckpoint();
+        deleteObsoleteJournalFiles(firstFileNumber);
+        return null;
+      }
+      catch (final LDAPException le)
+      {
+        // If this checkpoint was written in the background, then nothing will
+        // examine the exception.  The journal files will be retained, so the
+        // content can still be recovered from the previous checkpoint.
+        Debug.debugException(le);
+        throw le;
+      }
+      finally
+      {
+        checkpointInProgress.set(false);
+      }
+    }
+
+
+
+    /**
+     * Writes the checkpoint to a temporary file and renames it to replace the
+     * existing checkpoint.
+     *
+     * @throws  LDAPException  If a problem occurs while writing the
+     *                         checkpoint.
+     */
+    private void writeCheckpoint()
+            throws LDAPException
+    {
+      final File tempFile = new File(directory, TEMP_CHECKPOINT_FILE_NAME);
+      final File checkpointFile = new File(directory, CHECKPOINT_FILE_NAME);
+
+      FileOutputStream fileOutputStream = null;
+      try
+      {
+        fileOutputStream = new FileOutputStream(tempFile);
+        final DataOutputStream outputStream = new DataOutputStream(
+             new BufferedOutputStream(fileOutputStream, 1048576));
+
+        final byte[] subschemaSubentryBytes = InMemoryDirectoryServerSnapshot.
+             encodeEntry(subschemaSubentry).encode();
+        outputStream.writeInt(CHECKPOINT_MAGIC);
+        outputStream.writeInt(FORMAT_VERSION);
+        outputStream.writeLong(firstFileNumber);
+        outputStream.writeInt(subschemaSubentryBytes.length);
+        outputStream.write(subschemaSubentryBytes);
+        snapshot.write(outputStream);
+
+        outputStream.flush();
+        fileOutputStream.getFD().sync();
+        outputStream.close();
+        fileOutputStream = null;
+      }
+      catch (final IOException ioe)
+      {
+        Debug.debugException(ioe);
+        throw new LDAPException(ResultCode.LOCAL_ERROR,
+             ERR_MEM_JOURNAL_CANNOT_WRITE_CHECKPOINT.get(
+                  tempFile.getAbsolutePath(),
+                  StaticUtils.getExceptionMessage(ioe)),
+             ioe);
+      }
+      finally
+      {
+        if (fileOutputStream != null)
+        {
+          try
+          {
+            fileOutputStream.close();
+          }
+          catch (final IOException ioe)
+          {
+            Debug.debugException(ioe);
+          }
+        }
+      }
+
+      // Some platforms will not allow a file to be renamed over an existing
+      // file.
+      if (! tempFile.renameTo(checkpointFile))
+      {
+        if (! (checkpointFile.delete() && tempFile.renameTo(checkpointFile)))
+        {
+          throw new LDAPException(ResultCode.LOCAL_ERROR,
+               ERR_MEM_JOURNAL_CANNOT_RENAME_CHECKPOINT.get(
+                    tempFile.getAbsolutePath(),
+                    checkpointFile.getAbsolutePath()));
+        }
+      }
+    }
+  }
+
+
+
+  /**
+   * This class provides a mechanism for reading from a file that has been
+   * mapped into memory.  Large files are mapped one region at a time.
+   */
+  private static final class MappedFileReader
+  {
+    // The channel for the file being read.
+    private final FileChannel channel;
+
+    // The total size of the file.
+    private final long fileSize;
+
+    // The position in the file of the start of the currently-mapped region.
+    private long regionStart;
+
+    // The currently-mapped region of the file.
+    private MappedByteBuffer region;
+
+
+
+    /**
+     * Creates a new reader for the provided file channel.
+     *
+     * @param  channel  The channel for the file to read.
+     *
+     * @throws  IOException  If a problem occurs while mapping the file.
+     */
+    private MappedFileReader(final FileChannel channel)
+            throws IOException
+    {
+      this.channel = channel;
+
+      fileSize    = channel.size();
+      regionStart = 0L;
+      region      = map(0L, 0);
+    }
+
+
+
+    /**
+     * Maps a region of the file into memory.
+     *
+     * @param  position  The position in the file at which the region starts.
+     * @param  minSize   The minimum size of the region.
+     *
+     * @return  The mapped region.
+     *
+     * @throws  IOException  If a problem occurs while mapping the region.
+     */
+    private MappedByteBuffer map(final long position, final int minSize)
+            throws IOException
+    {
+      final long size = Math.min(fileSize - position,
+           Math.max(minSize, MAP_WINDOW_SIZE));
+      return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+    }
+
+
+
+    /**
+     * Retrieves the number of bytes remaining to be read.
+     *
+     * @return  The number of bytes remaining to be read.
+     */
+    private long getRemaining()
+    {
+      return (fileSize - regionStart - region.position());
+    }
+
+
+
+    /**
+     * Ensures that the specified number of bytes may be read from the mapped
+     * region, mapping a new region if necessary.
+     *
+     * @param  length  The number of bytes that will be read.
+     *
+     * @throws  IOException  If the file does not contain enough bytes, or if
+     *                       a problem occurs while mapping a new region.
+     */
+    private void require(final int length)
+            throws IOException
+    {
+      if (region.remaining() >= length)
+      {
+        return;
+      }
+
+      if ((length < 0) || (length > getRemaining()))
+      {
+        throw new EOFException();
+      }
+
+      regionStart += region.position();
+      region = map(regionStart, length);
+    }
+
+
+
+    /**
+     * Reads a four-byte integer from the file.
+     *
+     * @return  The integer that was read.
+     *
+     * @throws  IOException  If a problem occurs while reading.
+     */
+    private int readInt()
+            throws IOException
+    {
+      require(4);
+      return region.getInt();
+    }
+
+
+
+    /**
+     * Reads an eight-byte long from the file.
+     *
+     * @return  The long that was read.
+     *
+     * @throws  IOException  If a problem occurs while reading.
+     */
+    private long readLong()
+            throws IOException
+    {
+      require(8);
+      return region.getLong();
+    }
+
+
+
+    /**
+     * Reads the specified number of bytes from the file.
+     *
+     * @param  length  The number of bytes to read.
+     *
+     * @return  The bytes that were read.
+     *
+     * @throws  IOException  If a problem occurs while reading.
+     */
+    private byte[] readBytes(final int length)
+            throws IOException
+    {
+      require(length);
+      final byte[] b = new byte[length];
+      region.get(b);
+      return b;
+    }
+  }
+}
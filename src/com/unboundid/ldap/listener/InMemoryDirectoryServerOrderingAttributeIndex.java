@@ -0,0 +1,419 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.listener;
+
+
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.matchingrules.MatchingRule;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.schema.AttributeTypeDefinition;
+import com.unboundid.ldap.sdk.schema.Schema;
+import com.unboundid.util.Debug;
+import com.unboundid.util.Mutable;
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+import static com.unboundid.ldap.listener.ListenerMessages.*;
+
+
+
+/**
+ * This class provides a data structure for maintaining an ordering index for a
+ * specified attribute.  Normalized values are kept in the order defined by the
+ * ordering matching rule for the attribute type so that the entries with
+ * values in a given range can be found without examining every entry.
+ */
+@Mutable()
+@ThreadSafety(level=ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+final class InMemoryDirectoryServerOrderingAttributeIndex
+      extends InMemoryDirectoryServerAttributeIndex
+{
+  // The attribute type with which this index is associated.
+  private final AttributeTypeDefinition attributeType;
+
+  // The matching rule used to normalize and order values.
+  private final MatchingRule matchingRule;
+
+  // The schema for the server.
+  private final Schema schema;
+
+  // A map from normalized values, in order, to the DNs of entries with those
+  // values.
+  private final TreeMap<ASN1OctetString,TreeSet<DN>> indexMap;
+
+
+
+  /**
+   * Creates a new ordering attribute index for the specified attribute type.
+   *
+   * @param  attributeType  The name or OID of the attribute type with which
+   *                        this index is associated.  It must be defined in the
+   *                        schema.
+   * @param  schema         The schema for the server.  It must not be
+   *                        {@code null}.
+   *
+   * @throws  LDAPException  If the specified attribute type is not defined in
+   *                         the schema.
+   */
+  InMemoryDirectoryServerOrderingAttributeIndex(final String attributeType,
+                                                final Schema schema)
+       throws LDAPException
+  {
+    this.schema = schema;
+    if (schema == null)
+    {
+      throw new LDAPException(ResultCode.PARAM_ERROR,
+           ERR_DS_ORD_INDEX_NO_SCHEMA.get(attributeType));
+    }
+
+    this.attributeType = schema.getAttributeType(attributeType);
+    if (this.attributeType == null)
+    {
+      throw new LDAPException(ResultCode.PARAM_ERROR,
+           ERR_DS_ORD_INDEX_UNDEFINED_ATTRIBUTE_TYPE.get(attributeType));
+    }
+
+    matchingRule = MatchingRule.selectOrderingMatchingRule(attributeType,
+         schema);
+
+    indexMap = new TreeMap<ASN1OctetString,TreeSet<DN>>(
+         new ValueComparator(matchingRule));
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override()
+  AttributeTypeDefinition getAttributeType()
+  {
+    return attributeType;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override()
+  synchronized void clear()
+  {
+    indexMap.clear();
+  }
+
+
+
+  /**
+   * Retrieves the DNs of the entries that have at least one value that is
+   * greater than or equal to the provided value.
+   *
+   * @param  value  The value for which to retrieve the corresponding entry DNs.
+   *
+   * @return  A set containing the DNs of the matching entries, or an empty set
+   *          if there are none.
+   *
+   * @throws  LDAPException  If a problem is encountered while attempting to
+   *                         make the determination (e.g., if the given value is
+   *                         not acceptable for the associated attribute type).
+   */
+  synchronized Set<DN> getEntriesGreaterThanOrEqualTo(
+                            final ASN1OctetString value)
+               throws LDAPException
+  {
+    final TreeSet<DN> dnSet = new TreeSet<DN>();
+    for (final TreeSet<DN> s :
+         indexMap.tailMap(matchingRule.normalize(value)).values())
+    {
+      dnSet.addAll(s);
+    }
+
+    return dnSet;
+  }
+
+
+
+  /**
+   * Retrieves the DNs of the entries that have at least one value that is less
+   * than or equal to the provided value.
+   *
+   * @param  value  The value for which to retrieve the corresponding entry DNs.
+   *
+   * @return  A set containing the DNs of the matching entries, or an empty set
+   *          if there are none.
+   *
+   * @throws  LDAPException  If a problem is encountered while attempting to
+   *                         make the determination (e.g., if the given value is
+   *                         not acceptable for the associated attribute type).
+   */
+  synchronized Set<DN> getEntriesLessThanOrEqualTo(
+                            final ASN1OctetString value)
+               throws LDAPException
+  {
+    final ASN1OctetString normalizedValue = matchingRule.normalize(value);
+
+    final TreeSet<DN> dnSet = new TreeSet<DN>();
+    for (final TreeSet<DN> s : indexMap.headMap(normalizedValue).values())
+    {
+      dnSet.addAll(s);
+    }
+
+    final TreeSet<DN> equalSet = indexMap.get(normalizedValue);
+    if (equalSet != null)
+    {
+      dnSet.addAll(equalSet);
+    }
+
+    return dnSet;
+  }
+
+
+
+  /**
+   * Retrieves an upper bound on the number of entries that have at least one
+   * value that is greater than or equal to the provided value, without
+   * actually identifying those entries.  An entry with multiple values in the
+   * range will be counted once for each of them.
+   *
+   * @param  value  The value for which to make the determination.
+   *
+   * @return  An upper bound on the number of matching entries.
+   *
+   * @throws  LDAPException  If a problem is encountered while attempting to
+   *                         make the determination (e.g., if the given value is
+   *                         not acceptable for the associated attribute type).
+   */
+  synchronized int countEntriesGreaterThanOrEqualTo(
+                        final ASN1OctetString value)
+               throws LDAPException
+  {
+    return countEntries(indexMap.tailMap(matchingRule.normalize(value)));
+  }
+
+
+
+  /**
+   * Retrieves an upper bound on the number of entries that have at least one
+   * value that is less than or equal to the provided value, without actually
+   * identifying those entries.  An entry with multiple values in the range
+   * will be counted once for each of them.
+   *
+   * @param  value  The value for which to make the determination.
+   *
+   * @return  An upper bound on the number of matching entries.
+   *
+   * @throws  LDAPException  If a problem is encountered while attempting to
+   *                         make the determination (e.g., if the given value is
+   *                         not acceptable for the associated attribute type).
+   */
+  synchronized int countEntriesLessThanOrEqualTo(final ASN1OctetString value)
+               throws LDAPException
+  {
+    final ASN1OctetString normalizedValue = matchingRule.normalize(value);
+
+    int count = countEntries(indexMap.headMap(normalizedValue));
+
+    final TreeSet<DN> equalSet = indexMap.get(normalizedValue);
+    if (equalSet != null)
+    {
+      count += equalSet.size();
+    }
+
+    return count;
+  }
+
+
+
+  /**
+   * Retrieves the total size of all of the DN sets in the provided map.
+   *
+   * @param  m  The map to examine.
+   *
+   * @return  The total size of all of the DN sets in the provided map.
+   */
+  private static int countEntries(final Map<ASN1OctetString,TreeSet<DN>> m)
+  {
+    int count = 0;
+    for (final TreeSet<DN> s : m.values())
+    {
+      count += s.size();
+    }
+
+    return count;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override()
+  synchronized void processAdd(final Entry entry)
+               throws LDAPException
+  {
+    final Attribute a =
+         entry.getAttribute(attributeType.getNameOrOID(), schema);
+    if (a != null)
+    {
+      final DN dn = entry.getParsedDN();
+      for (final ASN1OctetString v : normalizeValues(a))
+      {
+        TreeSet<DN> dnSet = indexMap.get(v);
+        if (dnSet == null)
+        {
+          dnSet = new TreeSet<DN>();
+          indexMap.put(v, dnSet);
+        }
+        dnSet.add(dn);
+      }
+    }
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override()
+  synchronized void processDelete(final Entry entry)
+               throws LDAPException
+  {
+    final Attribute a =
+         entry.getAttribute(attributeType.getNameOrOID(), schema);
+    if (a != null)
+    {
+      final DN dn = entry.getParsedDN();
+      for (final ASN1OctetString v : normalizeValues(a))
+      {
+        final TreeSet<DN> dnSet = indexMap.get(v);
+        if (dnSet != null)
+        {
+          dnSet.remove(dn);
+          if (dnSet.isEmpty())
+          {
+            indexMap.remove(v);
+          }
+        }
+      }
+    }
+  }
+
+
+
+  /**
+   * Normalizes all values of the provided attribute.
+   *
+   * @param  a  The attribute whose values should be normalized.
+   *
+   * @return  The normalized values.
+   *
+   * @throws  LDAPException  If any of the values cannot be normalized.
+   */
+  private ASN1OctetString[] normalizeValues(final Attribute a)
+          throws LDAPException
+  {
+    final ASN1OctetString[] rawValues = a.getRawValues();
+    final ASN1OctetString[] normalizedValues =
+         new ASN1OctetString[rawValues.length];
+    for (int i=0; i < rawValues.length; i++)
+    {
+      normalizedValues[i] = matchingRule.normalize(rawValues[i]);
+    }
+
+    return normalizedValues;
+  }
+
+
+
+  /**
+   * This class provides a comparator that orders values using an ordering
+   * matching rule.  If the matching rule is unable to compare a pair of
+   * values, then they will be ordered by their bytes so that the ordering is
+   * still consistent.
+   */
+  private static final class ValueComparator
+          implements Comparator<ASN1OctetString>
+  {
+    // The matching rule used to compare values.
+    private final MatchingRule matchingRule;
+
+
+
+    /**
+     * Creates a new value comparator that will use the provided matching rule.
+     *
+     * @param  matchingRule  The matching rule used to compare values.
+     */
+    private ValueComparator(final MatchingRule matchingRule)
+    {
+      this.matchingRule = matchingRule;
+    }
+
+
+
+    /**
+     * Compares the provided values.
+     *
+     * @param  v1  The first value to compare.
+     * @param  v2  The second value to compare.
+     *
+     * @return  A negative value if the first value should be ordered before
+     *          the second, a positive value if the first value should be
+     *          ordered after the second, or zero if they are equal.
+     */
+    public int compare(final ASN1OctetString v1, final ASN1OctetString v2)
+    {
+      try
+      {
+        return matchingRule.compareValues(v1, v2);
+      }
+      catch (final LDAPException le)
+      {
+        Debug.debugException(le);
+      }
+
+      final byte[] b1 = v1.getValue();
+      final byte[] b2 = v2.getValue();
+      final int minLength = Math.min(b1.length, b2.length);
+      for (int i=0; i < minLength; i++)
+      {
+        final int difference = (b1[i] & 0xFF) - (b2[i] & 0xFF);
+        if (difference != 0)
+        {
+          return difference;
+        }
+      }
+
+      return b1.length - b2.length;
+    }
+  }
+}
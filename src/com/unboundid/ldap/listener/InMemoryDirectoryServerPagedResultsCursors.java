@@ -0,0 +1,302 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.listener;
+
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.SearchResultReference;
+import com.unboundid.util.Mutable;
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+
+
+/**
+ * This class provides a data structure for retaining the results of searches
+ * that use the simple paged results control, so that subsequent pages can be
+ * returned without processing the search again.  Each retained set of results
+ * is referenced by an integer cursor ID that is included in the paged results
+ * cookie.  The number of cursors that may be retained is bounded, with the
+ * least recently used cursor discarded to make room for a new one, and a
+ * cursor will be discarded if it has not been used for a specified length of
+ * time.  If the cursor referenced by a cookie is no longer available, then the
+ * search should simply be processed again.
+ */
+@Mutable()
+@ThreadSafety(level=ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+final class InMemoryDirectoryServerPagedResultsCursors
+{
+  /**
+   * The default maximum number of cursors that may be retained.
+   */
+  static final int DEFAULT_MAX_CURSORS = 10;
+
+
+
+  /**
+   * The default length of time in milliseconds that a cursor may remain unused
+   * before it is discarded.
+   */
+  static final long DEFAULT_TIMEOUT_MILLIS = 300000L;
+
+
+
+  // The maximum number of cursors that may be retained.
+  private final int maxCursors;
+
+  // The ID to assign to the next cursor that is registered.
+  private int nextCursorID;
+
+  // The retained cursors, in order from least recently used to most recently
+  // used.
+  private final LinkedHashMap<Integer,Cursor> cursors;
+
+  // The length of time in milliseconds that a cursor may remain unused before
+  // it is discarded.
+  private final long timeoutMillis;
+
+
+
+  /**
+   * Creates a new, empty set of cursors with the default limits.
+   */
+  InMemoryDirectoryServerPagedResultsCursors()
+  {
+    this(DEFAULT_MAX_CURSORS, DEFAULT_TIMEOUT_MILLIS);
+  }
+
+
+
+  /**
+   * Creates a new, empty set of cursors with the provided limits.
+   *
+   * @param  maxCursors     The maximum number of cursors that may be retained.
+   *                        It must be greater than zero.
+   * @param  timeoutMillis  The length of time in milliseconds that a cursor
+   *                        may remain unused before it is discarded.
+   */
+  InMemoryDirectoryServerPagedResultsCursors(final int maxCursors,
+                                             final long timeoutMillis)
+  {
+    this.maxCursors    = maxCursors;
+    this.timeoutMillis = timeoutMillis;
+
+    cursors = new LinkedHashMap<Integer,Cursor>(maxCursors, 0.75f, true);
+    nextCursorID = 0;
+  }
+
+
+
+  /**
+   * Retains the provided search results so that they may be used to return
+   * subsequent pages.  If the maximum number of cursors are already retained,
+   * then the least recently used cursor will be discarded.
+   *
+   * @param  requestKey  A string that identifies the search that produced the
+   *                     results, which must be provided when retrieving the
+   *                     cursor.
+   * @param  entries     The complete, ordered list of matching entries.
+   * @param  references  The search result references to return with each
+   *                     page.
+   *
+   * @return  The ID assigned to the new cursor.
+   */
+  synchronized int register(final String requestKey, final List<Entry> entries,
+                            final List<SearchResultReference> references)
+  {
+    final long currentTime = System.currentTimeMillis();
+    removeExpiredCursors(currentTime);
+
+    if (cursors.size() >= maxCursors)
+    {
+      final Iterator<Integer> iterator = cursors.keySet().iterator();
+      iterator.next();
+      iterator.remove();
+    }
+
+    final int cursorID = nextCursorID;
+    nextCursorID = (nextCursorID == Integer.MAX_VALUE) ? 0 : (nextCursorID + 1);
+
+    cursors.put(cursorID, new Cursor(requestKey, entries, references,
+         currentTime + timeoutMillis));
+    return cursorID;
+  }
+
+
+
+  /**
+   * Retrieves the specified cursor, if it is still available and was created
+   * for the same search.
+   *
+   * @param  cursorID    The ID of the cursor to retrieve.
+   * @param  requestKey  A string that identifies the search for which the
+   *                     cursor is to be used.
+   *
+   * @return  The requested cursor, or {@code null} if it is no longer
+   *          available or was created for a different search.
+   */
+  synchronized Cursor get(final int cursorID, final String requestKey)
+  {
+    final long currentTime = System.currentTimeMillis();
+    removeExpiredCursors(currentTime);
+
+    final Cursor cursor = cursors.get(cursorID);
+    if ((cursor == null) || (! cursor.requestKey.equals(requestKey)))
+    {
+      return null;
+    }
+
+    cursor.expirationTime = currentTime + timeoutMillis;
+    return cursor;
+  }
+
+
+
+  /**
+   * Discards the specified cursor, if it is still available.
+   *
+   * @param  cursorID  The ID of the cursor to discard.
+   */
+  synchronized void remove(final int cursorID)
+  {
+    cursors.remove(cursorID);
+  }
+
+
+
+  /**
+   * Discards all retained cursors.
+   */
+  synchronized void clear()
+  {
+    cursors.clear();
+  }
+
+
+
+  /**
+   * Retrieves the number of cursors that are currently retained.
+   *
+   * @return  The number of cursors that are currently retained.
+   */
+  synchronized int size()
+  {
+    removeExpiredCursors(System.currentTimeMillis());
+    return cursors.size();
+  }
+
+
+
+  /**
+   * Discards any cursors that have expired.
+   *
+   * @param  currentTime  The current time.
+   */
+  private void removeExpiredCursors(final long currentTime)
+  {
+    final Iterator<Cursor> iterator = cursors.values().iterator();
+    while (iterator.hasNext())
+    {
+      if (iterator.next().expirationTime <= currentTime)
+      {
+        iterator.remove();
+      }
+    }
+  }
+
+
+
+  /**
+   * This class holds the retained results of a single search.
+   */
+  static final class Cursor
+  {
+    // The complete, ordered list of matching entries.
+    private final List<Entry> entries;
+
+    // The search result references to return with each page.
+    private final List<SearchResultReference> references;
+
+    // The time at which this cursor will expire if it is not used.
+    private long expirationTime;
+
+    // A string that identifies the search that produced the results.
+    private final String requestKey;
+
+
+
+    /**
+     * Creates a new cursor with the provided information.
+     *
+     * @param  requestKey      A string that identifies the search that produced
+     *                         the results.
+     * @param  entries         The complete, ordered list of matching entries.
+     * @param  references      The search result references to return with
+     *                         each page.
+     * @param  expirationTime  The time at which this cursor will expire if it
+     *                         is not used.
+     */
+    private Cursor(final String requestKey, final List<Entry> entries,
+                   final List<SearchResultReference> references,
+                   final long expirationTime)
+    {
+      this.requestKey     = requestKey;
+      this.expirationTime = expirationTime;
+
+      this.entries = Collections.unmodifiableList(
+           Arrays.asList(entries.toArray(new Entry[entries.size()])));
+      this.references = Collections.unmodifiableList(
+           new ArrayList<SearchResultReference>(references));
+    }
+
+
+
+    /**
+     * Retrieves the complete, ordered list of matching entries.
+     *
+     * @return  The complete, ordered list of matching entries.
+     */
+    List<Entry> getEntries()
+    {
+      return entries;
+    }
+
+
+
+    /**
+     * Retrieves the search result references to return with each page.
+     *
+     * @return  The search result references to return with each page.
+     */
+    List<SearchResultReference> getReferences()
+    {
+      return references;
+    }
+  }
+}
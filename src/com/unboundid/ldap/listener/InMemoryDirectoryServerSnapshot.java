@@ -22,17 +22,48 @@ package com.unboundid.ldap.listener;
 
 
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import com.unboundid.asn1.ASN1Element;
+import com.unboundid.asn1.ASN1Exception;
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.asn1.ASN1Sequence;
+import com.unboundid.ldap.sdk.Attribute;
 import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPException;
 import com.unboundid.ldap.sdk.ReadOnlyEntry;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.schema.Schema;
+import com.unboundid.util.Debug;
+import com.unboundid.util.LDAPSDKThreadFactory;
 import com.unboundid.util.NotMutable;
+import com.unboundid.util.StaticUtils;
 import com.unboundid.util.ThreadSafety;
 import com.unboundid.util.ThreadSafetyLevel;
 
+import static com.unboundid.ldap.listener.ListenerMessages.*;
+
 
 
 /**
@@ -41,6 +72,15 @@ import com.unboundid.util.ThreadSafetyLevel;
  * will reflect only data held in the server (including both user data and any
  * changelog information, if that is enabled), but will not alter the settings
  * of the server which are defined through configuration.
+ * <BR><BR>
+ * A snapshot may be written to a file with the {@link #writeTo} method and read
+ * back with the {@link #readFrom} method (for example, to share a populated
+ * data set between test processes), which is much faster than exporting and
+ * importing the data as LDIF.  The file uses a compact, versioned binary format
+ * consisting of a header, a length-prefixed BER encoding of each entry in DN
+ * order, an index block with the offset of each entry, and a trailer that
+ * locates the index.  When reading, the file is memory-mapped, and the index
+ * allows the entries to be decoded in parallel.
  */
 @NotMutable()
 @ThreadSafety(level=ThreadSafetyLevel.COMPLETELY_THREADSAFE)
@@ -54,6 +94,42 @@ public final class InMemoryDirectoryServerSnapshot
 
 
 
+  /**
+   * The value that will appear at the start and end of a snapshot file.
+   */
+  private static final int SNAPSHOT_MAGIC = 0x554D5353;
+
+
+
+  /**
+   * The version of the snapshot file format.
+   */
+  private static final int FORMAT_VERSION = 1;
+
+
+
+  /**
+   * The size in bytes of the snapshot file header.
+   */
+  private static final int HEADER_SIZE = 28;
+
+
+
+  /**
+   * The size in bytes of the snapshot file trailer.
+   */
+  private static final int TRAILER_SIZE = 12;
+
+
+
+  /**
+   * The number of entries that will be decoded by a single task when reading a
+   * snapshot file.
+   */
+  private static final int ENTRIES_PER_DECODE_TASK = 8192;
+
+
+
   // The first change number value at the time the snapshot was created.
   private final long firstChangeNumber;
 
@@ -84,7 +160,15 @@ public final class InMemoryDirectoryServerSnapshot
     this.firstChangeNumber = firstChangeNumber;
     this.lastChangeNumber  = lastChangeNumber;
 
-    entryMap = Collections.unmodifiableMap(new TreeMap<DN,ReadOnlyEntry>(m));
+    if (m instanceof InMemoryDirectoryServerEntryMap)
+    {
+      entryMap = ((InMemoryDirectoryServerEntryMap) m).getReadOnlyView();
+    }
+    else
+    {
+      entryMap = Collections.unmodifiableSortedMap(
+           new TreeMap<DN,ReadOnlyEntry>(m));
+    }
   }
 
 
@@ -130,4 +214,437 @@ public final class InMemoryDirectoryServerSnapshot
   {
     return lastChangeNumber;
   }
+
+
+
+  /**
+   * Writes this snapshot to the specified file in a compact binary format.  If
+   * the file already exists, then it will be overwritten.
+   *
+   * @param  file  The file to which the snapshot should be written.  It must
+   *               not be {@code null}.
+   *
+   * @throws  IOException  If a problem occurs while writing the file.
+   */
+  public void writeTo(final File file)
+         throws IOException
+  {
+    final FileOutputStream fileOutputStream = new FileOutputStream(file);
+    try
+    {
+      final DataOutputStream outputStream = new DataOutputStream(
+           new BufferedOutputStream(fileOutputStream, 1048576));
+      write(outputStream);
+      outputStream.flush();
+    }
+    finally
+    {
+      fileOutputStream.close();
+    }
+  }
+
+
+
+  /**
+   * Writes the binary representation of this snapshot to the provided output
+   * stream.  Offsets in the encoded snapshot are relative to the position in
+   * the stream at which this method is called.
+   *
+   * @param  outputStream  The output stream to which the snapshot should be
+   *                       written.
+   *
+   * @throws  IOException  If a problem occurs while writing the snapshot.
+   */
+  void write(final DataOutputStream outputStream)
+       throws IOException
+  {
+    final int numEntries = entryMap.size();
+    outputStream.writeInt(SNAPSHOT_MAGIC);
+    outputStream.writeInt(FORMAT_VERSION);
+    outputStream.writeLong(firstChangeNumber);
+    outputStream.writeLong(lastChangeNumber);
+    outputStream.writeInt(numEntries);
+
+    final long[] offsets = new long[numEntries];
+    long offset = HEADER_SIZE;
+    int i = 0;
+    for (final ReadOnlyEntry e : entryMap.values())
+    {
+      final byte[] entryBytes = encodeEntry(e).encode();
+      offsets[i++] = offset;
+      outputStream.writeInt(entryBytes.length);
+      outputStream.write(entryBytes);
+      offset += (4L + entryBytes.length);
+    }
+
+    for (final long l : offsets)
+    {
+      outputStream.writeLong(l);
+    }
+
+    outputStream.writeLong(offset);
+    outputStream.writeInt(SNAPSHOT_MAGIC);
+  }
+
+
+
+  /**
+   * Reads a snapshot from the specified file, which must have been written by
+   * the {@link #writeTo} method.  The resulting snapshot may be provided to
+   * the {@link InMemoryDirectoryServer#restoreSnapshot} method.
+   *
+   * @param  file    The file from which the snapshot should be read.  It must
+   *                 not be {@code null}.
+   * @param  schema  The schema to use for the entries in the snapshot.  It
+   *                 should generally be the schema for the server in which
+   *                 the snapshot will be restored.  It may be {@code null} if
+   *                 that server does not use a schema.
+   *
+   * @return  The snapshot that was read.
+   *
+   * @throws  IOException  If a problem occurs while reading the file.
+   *
+   * @throws  LDAPException  If the file does not contain a valid snapshot.
+   */
+  public static InMemoryDirectoryServerSnapshot readFrom(final File file,
+                                                         final Schema schema)
+         throws IOException, LDAPException
+  {
+    final RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try
+    {
+      return read(raf.getChannel(), 0L, schema);
+    }
+    finally
+    {
+      raf.close();
+    }
+  }
+
+
+
+  /**
+   * Reads a snapshot whose binary representation starts at the specified
+   * position in the provided file channel and extends to the end of the file.
+   *
+   * @param  channel        The file channel from which to read the snapshot.
+   * @param  startPosition  The position in the file at which the snapshot
+   *                        starts.
+   * @param  schema         The schema to use for the entries in the snapshot,
+   *                        if any.
+   *
+   * @return  The snapshot that was read.
+   *
+   * @throws  IOException  If a problem occurs while reading the file.
+   *
+   * @throws  LDAPException  If the file does not contain a valid snapshot.
+   */
+  static InMemoryDirectoryServerSnapshot read(final FileChannel channel,
+                                              final long startPosition,
+                                              final Schema schema)
+         throws IOException, LDAPException
+  {
+    final long size = channel.size() - startPosition;
+    if (size < (HEADER_SIZE + TRAILER_SIZE))
+    {
+      throw new LDAPException(ResultCode.DECODING_ERROR,
+           ERR_MEM_SNAPSHOT_INVALID_FORMAT.get());
+    }
+
+    final ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY,
+         startPosition, HEADER_SIZE);
+    final ByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY,
+         startPosition + size - TRAILER_SIZE, TRAILER_SIZE);
+    if ((header.getInt() != SNAPSHOT_MAGIC) ||
+        (header.getInt() != FORMAT_VERSION))
+    {
+      throw new LDAPException(ResultCode.DECODING_ERROR,
+           ERR_MEM_SNAPSHOT_INVALID_FORMAT.get());
+    }
+
+    final long firstChangeNumber = header.getLong();
+    final long lastChangeNumber = header.getLong();
+    final int numEntries = header.getInt();
+    final long indexOffset = trailer.getLong();
+    if ((trailer.getInt() != SNAPSHOT_MAGIC) || (numEntries < 0) ||
+        (indexOffset < HEADER_SIZE) ||
+        ((indexOffset + (8L * numEntries) + TRAILER_SIZE) != size))
+    {
+      throw new LDAPException(ResultCode.DECODING_ERROR,
+           ERR_MEM_SNAPSHOT_INVALID_FORMAT.get());
+    }
+
+    final long[] offsets = new long[numEntries + 1];
+    final LongBuffer index = channel.map(FileChannel.MapMode.READ_ONLY,
+         startPosition + indexOffset, 8L * numEntries).asLongBuffer();
+    index.get(offsets, 0, numEntries);
+    offsets[numEntries] = indexOffset;
+
+
+    // Decode the entries.  If there are enough of them, then split them into
+    // groups that will be decoded in parallel.
+    final ReadOnlyEntry[] entries = new ReadOnlyEntry[numEntries];
+    final int numTasks = ((numEntries + ENTRIES_PER_DECODE_TASK - 1) /
+         ENTRIES_PER_DECODE_TASK);
+    final int numThreads = Math.min(numTasks,
+         Runtime.getRuntime().availableProcessors());
+    if (numThreads <= 1)
+    {
+      new EntryDecoder(channel, startPosition, offsets, 0, numEntries, schema,
+           entries).call();
+    }
+    else
+    {
+      final ThreadPoolExecutor executor = new ThreadPoolExecutor(numThreads,
+           numThreads, 0L, TimeUnit.MILLISECONDS,
+           new LinkedBlockingQueue<Runnable>(),
+           new LDAPSDKThreadFactory(
+                "In-Memory Directory Server Snapshot Reader", true));
+      try
+      {
+        final List<Future<Void>> futures =
+             new ArrayList<Future<Void>>(numTasks);
+        for (int i=0; i < numEntries; i += ENTRIES_PER_DECODE_TASK)
+        {
+          futures.add(executor.submit(new EntryDecoder(channel, startPosition,
+               offsets, i, Math.min(numEntries, (i + ENTRIES_PER_DECODE_TASK)),
+               schema, entries)));
+        }
+
+        for (final Future<Void> f : futures)
+        {
+          f.get();
+        }
+      }
+      catch (final InterruptedException ie)
+      {
+        Debug.debugException(ie);
+        Thread.currentThread().interrupt();
+        throw new LDAPException(ResultCode.LOCAL_ERROR,
+             ERR_MEM_SNAPSHOT_READ_INTERRUPTED.get(), ie);
+      }
+      catch (final ExecutionException ee)
+      {
+        Debug.debugException(ee);
+        final Throwable cause = ee.getCause();
+        if (cause instanceof IOException)
+        {
+          throw (IOException) cause;
+        }
+        else if (cause instanceof LDAPException)
+        {
+          throw (LDAPException) cause;
+        }
+        else
+        {
+          throw new LDAPException(ResultCode.LOCAL_ERROR,
+               StaticUtils.getExceptionMessage(cause), cause);
+        }
+      }
+      finally
+      {
+        executor.shutdownNow();
+      }
+    }
+
+    final TreeMap<DN,ReadOnlyEntry> m = new TreeMap<DN,ReadOnlyEntry>();
+    for (final ReadOnlyEntry e : entries)
+    {
+      m.put(e.getParsedDN(), e);
+    }
+
+    return new InMemoryDirectoryServerSnapshot(m, firstChangeNumber,
+         lastChangeNumber);
+  }
+
+
+
+  /**
+   * Encodes the provided entry to an ASN.1 sequence containing the DN followed
+   * by the encoded attributes.
+   *
+   * @param  e  The entry to encode.
+   *
+   * @return  The encoded entry.
+   */
+  static ASN1Sequence encodeEntry(final Entry e)
+  {
+    final ArrayList<ASN1Element> elements =
+         new ArrayList<ASN1Element>(e.getAttributes().size() + 1);
+    elements.add(new ASN1OctetString(e.getDN()));
+    for (final Attribute a : e.getAttributes())
+    {
+      elements.add(a.encode());
+    }
+
+    return new ASN1Sequence(elements);
+  }
+
+
+
+  /**
+   * Decodes an entry from the provided ASN.1 sequence, which must have been
+   * created by the {@link #encodeEntry} method (although it may use a
+   * different BER type).
+   *
+   * @param  entrySequence  The sequence containing the encoded entry.
+   * @param  schema         The schema to use for the entry, if any.
+   *
+   * @return  The decoded entry.
+   *
+   * @throws  ASN1Exception  If the sequence cannot be decoded.
+   *
+   * @throws  LDAPException  If the sequence does not represent a valid entry.
+   */
+  static ReadOnlyEntry decodeEntry(final ASN1Sequence entrySequence,
+                                   final Schema schema)
+         throws ASN1Exception, LDAPException
+  {
+    final ASN1Element[] elements = entrySequence.elements();
+    if (elements.length == 0)
+    {
+      throw new LDAPException(ResultCode.DECODING_ERROR,
+           ERR_MEM_SNAPSHOT_INVALID_FORMAT.get());
+    }
+
+    final String dn =
+         ASN1OctetString.decodeAsOctetString(elements[0]).stringValue();
+
+    final ArrayList<Attribute> attributes =
+         new ArrayList<Attribute>(elements.length - 1);
+    for (int i=1; i < elements.length; i++)
+    {
+      // Re-create the attribute so that it uses the appropriate matching rule.
+      final Attribute a =
+           Attribute.decode(ASN1Sequence.decodeAsSequence(elements[i]));
+      attributes.add(new Attribute(a.getName(), schema, a.getRawValues()));
+    }
+
+    // Parse the DN now so that it will be cached in the entry, which allows
+    // the work to be done by the thread decoding the entry.
+    final ReadOnlyEntry e = new ReadOnlyEntry(dn, schema, attributes);
+    e.getParsedDN();
+    return e;
+  }
+
+
+
+  /**
+   * This class decodes a contiguous range of the entries in a snapshot file.
+   */
+  private static final class EntryDecoder
+          implements Callable<Void>
+  {
+    // The file channel from which to read the entries.
+    private final FileChannel channel;
+
+    // The index of the first entry to decode.
+    private final int startIndex;
+
+    // The index after the last entry to decode.
+    private final int endIndex;
+
+    // The position in the file at which the snapshot starts.
+    private final long startPosition;
+
+    // The offsets of the entries in the snapshot, followed by the offset of the
+    // index block.
+    private final long[] offsets;
+
+    // The array into which the decoded entries should be placed.
+    private final ReadOnlyEntry[] entries;
+
+    // The schema to use for the entries, if any.
+    private final Schema schema;
+
+
+
+    /**
+     * Creates a new entry decoder with the provided information.
+     *
+     * @param  channel        The file channel from which to read the entries.
+     * @param  startPosition  The position in the file at which the snapshot
+     *                        starts.
+     * @param  offsets        The offsets of the entries in the snapshot,
+     *                        followed by the offset of the index block.
+     * @param  startIndex     The index of the first entry to decode.
+     * @param  endIndex       The index after the last entry to decode.
+     * @param  schema         The schema to use for the entries, if any.
+     * @param  entries        The array into which the decoded entries should
+     *                        be placed.
+     */
+    private EntryDecoder(final FileChannel channel, final long startPosition,
+                         final long[] offsets, final int startIndex,
+                         final int endIndex, final Schema schema,
+                         final ReadOnlyEntry[] entries)
+    {
+      this.channel       = channel;
+      this.startPosition = startPosition;
+      this.offsets       = offsets;
+      this.startIndex    = startIndex;
+      this.endIndex      = endIndex;
+      this.schema        = schema;
+      this.entries       = entries;
+    }
+
+
+
+    /**
+     * Decodes the entries in the associated range.
+     *
+     * @return  {@code null}.
+     *
+     * @throws  IOException  If a problem occurs while mapping the file.
+     *
+     * @throws  LDAPException  If an entry cannot be decoded.
+     */
+    public Void call()
+           throws IOException, LDAPException
+    {
+      final long regionStart = offsets[startIndex];
+      final long regionSize = offsets[endIndex] - regionStart;
+      if ((regionSize < 0L) || (regionSize > Integer.MAX_VALUE))
+      {
+        throw new LDAPException(ResultCode.DECODING_ERROR,
+             ERR_MEM_SNAPSHOT_INVALID_FORMAT.get());
+      }
+
+      final ByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY,
+           startPosition + regionStart, regionSize);
+      for (int i=startIndex; i < endIndex; i++)
+      {
+        final int position = (int) (offsets[i] - regionStart);
+        if ((position < 0) || (position > (region.limit() - 4)))
+        {
+          throw new LDAPException(ResultCode.DECODING_ERROR,
+               ERR_MEM_SNAPSHOT_INVALID_FORMAT.get());
+        }
+
+        final int length = region.getInt(position);
+        if ((length < 0) || (length > (region.limit() - position - 4)))
+        {
+          throw new LDAPException(ResultCode.DECODING_ERROR,
+               ERR_MEM_SNAPSHOT_INVALID_FORMAT.get());
+        }
+
+        final byte[] entryBytes = new byte[length];
+        region.position(position + 4);
+        region.get(entryBytes);
+
+        try
+        {
+          entries[i] = decodeEntry(ASN1Sequence.decodeAsSequence(entryBytes),
+               schema);
+        }
+        catch (final ASN1Exception ae)
+        {
+          Debug.debugException(ae);
+          throw new LDAPException(ResultCode.DECODING_ERROR,
+               ERR_MEM_SNAPSHOT_CANNOT_DECODE_ENTRY.get(ae.getMessage()), ae);
+        }
+      }
+
+      return null;
+    }
+  }
 }
@@ -0,0 +1,655 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.listener;
+
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.matchingrules.MatchingRule;
+import com.unboundid.ldap.matchingrules.SimpleMatchingRule;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.schema.AttributeTypeDefinition;
+import com.unboundid.ldap.sdk.schema.Schema;
+import com.unboundid.util.Mutable;
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+import static com.unboundid.ldap.listener.ListenerMessages.*;
+
+
+
+/**
+ * This class provides a data structure for maintaining a substring index for a
+ * specified attribute.  The index is made up of three parts:
+ * <UL>
+ *   <LI>A map of normalized values in byte order, which will be used to find
+ *       values that start with the subInitial component of a filter.</LI>
+ *   <LI>A map of normalized values with their bytes reversed, which will be
+ *       used to find values that end with the subFinal component.</LI>
+ *   <LI>A map of every three-byte sequence contained in any normalized value,
+ *       which will be used to find values that contain each subAny component
+ *       that is at least three bytes long.</LI>
+ * </UL>
+ * The index can only be used if the substring matching rule for the attribute
+ * type compares normalized values and substrings byte-for-byte, as is the case
+ * for all {@link SimpleMatchingRule} implementations.  For any other matching
+ * rule, the index will not hold any data and will not be used when processing
+ * searches.
+ */
+@Mutable()
+@ThreadSafety(level=ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+final class InMemoryDirectoryServerSubstringAttributeIndex
+      extends InMemoryDirectoryServerAttributeIndex
+{
+  /**
+   * The length in bytes of the sequences held in the map used to process
+   * subAny components.
+   */
+  static final int SUBSTRING_LENGTH = 3;
+
+
+
+  // The attribute type with which this index is associated.
+  private final AttributeTypeDefinition attributeType;
+
+  // Indicates whether the matching rule allows the index to be used.
+  private final boolean indexable;
+
+  // A map from each three-byte sequence contained in a normalized value to the
+  // DNs of entries with values containing that sequence.
+  private final Map<Integer,TreeSet<DN>> substringMap;
+
+  // The matching rule used to normalize values.
+  private final MatchingRule matchingRule;
+
+  // The schema for the server.
+  private final Schema schema;
+
+  // A map from normalized values to the DNs of entries with those values.
+  private final TreeMap<byte[],TreeSet<DN>> prefixMap;
+
+  // A map from reversed normalized values to the DNs of entries with those
+  // values.
+  private final TreeMap<byte[],TreeSet<DN>> suffixMap;
+
+
+
+  /**
+   * Creates a new substring attribute index for the specified attribute type.
+   *
+   * @param  attributeType  The name or OID of the attribute type with which
+   *                        this index is associated.  It must be defined in the
+   *                        schema.
+   * @param  schema         The schema for the server.  It must not be
+   *                        {@code null}.
+   *
+   * @throws  LDAPException  If the specified attribute type is not defined in
+   *                         the schema.
+   */
+  InMemoryDirectoryServerSubstringAttributeIndex(final String attributeType,
+                                                 final Schema schema)
+       throws LDAPException
+  {
+    this.schema = schema;
+    if (schema == null)
+    {
+      throw new LDAPException(ResultCode.PARAM_ERROR,
+           ERR_DS_SUB_INDEX_NO_SCHEMA.get(attributeType));
+    }
+
+    this.attributeType = schema.getAttributeType(attributeType);
+    if (this.attributeType == null)
+    {
+      throw new LDAPException(ResultCode.PARAM_ERROR,
+           ERR_DS_SUB_INDEX_UNDEFINED_ATTRIBUTE_TYPE.get(attributeType));
+    }
+
+    matchingRule = MatchingRule.selectSubstringMatchingRule(attributeType,
+         schema);
+    indexable = (matchingRule instanceof SimpleMatchingRule);
+
+    final ByteArrayComparator comparator = new ByteArrayComparator();
+    prefixMap    = new TreeMap<byte[],TreeSet<DN>>(comparator);
+    suffixMap    = new TreeMap<byte[],TreeSet<DN>>(comparator);
+    substringMap = new HashMap<Integer,TreeSet<DN>>(1000);
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override()
+  AttributeTypeDefinition getAttributeType()
+  {
+    return attributeType;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override()
+  synchronized void clear()
+  {
+    prefixMap.clear();
+    suffixMap.clear();
+    substringMap.clear();
+  }
+
+
+
+  /**
+   * Retrieves the DNs of the entries that may have a value matching the
+   * provided substring assertion.  The set that is returned may include
+   * entries that do not actually match the assertion, but it will not omit any
+   * entries that do.
+   *
+   * @param  subInitial  The subInitial component of the assertion, if any.
+   * @param  subAny      The subAny components of the assertion, if any.
+   * @param  subFinal    The subFinal component of the assertion, if any.
+   *
+   * @return  The DNs of the entries that may match the provided assertion, or
+   *          {@code null} if the index cannot be used to process the assertion
+   *          (e.g., because the only components are subAny components that are
+   *          too short).
+   *
+   * @throws  LDAPException  If a problem is encountered while normalizing any
+   *                         of the components.
+   */
+  synchronized Set<DN> getMatchingEntries(final ASN1OctetString subInitial,
+                                          final ASN1OctetString[] subAny,
+                                          final ASN1OctetString subFinal)
+               throws LDAPException
+  {
+    if (! indexable)
+    {
+      return null;
+    }
+
+    final ArrayList<Set<DN>> dnSets = new ArrayList<Set<DN>>(5);
+    if (subInitial != null)
+    {
+      final byte[] b = matchingRule.normalizeSubstring(subInitial,
+           MatchingRule.SUBSTRING_TYPE_SUBINITIAL).getValue();
+      if (b.length > 0)
+      {
+        dnSets.add(getEntriesWithPrefix(prefixMap, b));
+      }
+    }
+
+    if (subAny != null)
+    {
+      for (final ASN1OctetString s : subAny)
+      {
+        final byte[] b = matchingRule.normalizeSubstring(s,
+             MatchingRule.SUBSTRING_TYPE_SUBANY).getValue();
+        for (int i=0; i <= (b.length - SUBSTRING_LENGTH); i++)
+        {
+          final TreeSet<DN> dnSet = substringMap.get(getSubstringKey(b, i));
+          if (dnSet == null)
+          {
+            return Collections.emptySet();
+          }
+          dnSets.add(dnSet);
+        }
+      }
+    }
+
+    if (subFinal != null)
+    {
+      final byte[] b = matchingRule.normalizeSubstring(subFinal,
+           MatchingRule.SUBSTRING_TYPE_SUBFINAL).getValue();
+      if (b.length > 0)
+      {
+        dnSets.add(getEntriesWithPrefix(suffixMap, reverse(b)));
+      }
+    }
+
+    if (dnSets.isEmpty())
+    {
+      return null;
+    }
+
+    // Start with the smallest set and remove anything that isn't in all of
+    // the others.
+    Set<DN> smallestSet = dnSets.get(0);
+    for (final Set<DN> s : dnSets)
+    {
+      if (s.size() < smallestSet.size())
+      {
+        smallestSet = s;
+      }
+    }
+
+    final TreeSet<DN> candidateSet = new TreeSet<DN>(smallestSet);
+    for (final Set<DN> s : dnSets)
+    {
+      if (candidateSet.isEmpty())
+      {
+        break;
+      }
+
+      if (s != smallestSet)
+      {
+        candidateSet.retainAll(s);
+      }
+    }
+
+    return candidateSet;
+  }
+
+
+
+  /**
+   * Retrieves an estimate of the number of entries that may match a substring
+   * assertion with the provided components, without actually identifying
+   * those entries.  The estimate will be the size of the smallest set of
+   * entries that would be considered when processing the assertion.
+   *
+   * @param  subInitial  The subInitial component of the assertion, if any.
+   * @param  subAny      The subAny components of the assertion, if any.
+   * @param  subFinal    The subFinal component of the assertion, if any.
+   *
+   * @return  An estimate of the number of entries that may match the provided
+   *          assertion, or -1 if the index cannot be used to process the
+   *          assertion.
+   *
+   * @throws  LDAPException  If a problem is encountered while normalizing any
+   *                         of the components.
+   */
+  synchronized int estimateMatchingEntries(final ASN1OctetString subInitial,
+                                           final ASN1OctetString[] subAny,
+                                           final ASN1OctetString subFinal)
+               throws LDAPException
+  {
+    if (! indexable)
+    {
+      return -1;
+    }
+
+    int estimate = -1;
+    if (subAny != null)
+    {
+      for (final ASN1OctetString s : subAny)
+      {
+        final byte[] b = matchingRule.normalizeSubstring(s,
+             MatchingRule.SUBSTRING_TYPE_SUBANY).getValue();
+        for (int i=0; i <= (b.length - SUBSTRING_LENGTH); i++)
+        {
+          final TreeSet<DN> dnSet = substringMap.get(getSubstringKey(b, i));
+          if (dnSet == null)
+          {
+            return 0;
+          }
+
+          if ((estimate < 0) || (dnSet.size() < estimate))
+          {
+            estimate = dnSet.size();
+          }
+        }
+      }
+    }
+
+    if (subInitial != null)
+    {
+      final byte[] b = matchingRule.normalizeSubstring(subInitial,
+           MatchingRule.SUBSTRING_TYPE_SUBINITIAL).getValue();
+      if (b.length > 0)
+      {
+        final int count = countEntriesWithPrefix(prefixMap, b);
+        if ((estimate < 0) || (count < estimate))
+        {
+          estimate = count;
+        }
+      }
+    }
+
+    if (subFinal != null)
+    {
+      final byte[] b = matchingRule.normalizeSubstring(subFinal,
+           MatchingRule.SUBSTRING_TYPE_SUBFINAL).getValue();
+      if (b.length > 0)
+      {
+        final int count = countEntriesWithPrefix(suffixMap, reverse(b));
+        if ((estimate < 0) || (count < estimate))
+        {
+          estimate = count;
+        }
+      }
+    }
+
+    return estimate;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override()
+  synchronized void processAdd(final Entry entry)
+               throws LDAPException
+  {
+    if (! indexable)
+    {
+      return;
+    }
+
+    final Attribute a =
+         entry.getAttribute(attributeType.getNameOrOID(), schema);
+    if (a != null)
+    {
+      final DN dn = entry.getParsedDN();
+      for (final byte[] v : normalizeValues(a))
+      {
+        addDN(prefixMap, v, dn);
+        addDN(suffixMap, reverse(v), dn);
+        for (int i=0; i <= (v.length - SUBSTRING_LENGTH); i++)
+        {
+          addDN(substringMap, getSubstringKey(v, i), dn);
+        }
+      }
+    }
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override()
+  synchronized void processDelete(final Entry entry)
+               throws LDAPException
+  {
+    if (! indexable)
+    {
+      return;
+    }
+
+    final Attribute a =
+         entry.getAttribute(attributeType.getNameOrOID(), schema);
+    if (a != null)
+    {
+      final DN dn = entry.getParsedDN();
+      for (final byte[] v : normalizeValues(a))
+      {
+        removeDN(prefixMap, v, dn);
+        removeDN(suffixMap, reverse(v), dn);
+        for (int i=0; i <= (v.length - SUBSTRING_LENGTH); i++)
+        {
+          removeDN(substringMap, getSubstringKey(v, i), dn);
+        }
+      }
+    }
+  }
+
+
+
+  /**
+   * Normalizes all values of the provided attribute.  All values will be
+   * normalized before any of them are used so that the index will not be
+   * partially updated if any of them are invalid.
+   *
+   * @param  a  The attribute whose values should be normalized.
+   *
+   * @return  The normalized values.
+   *
+   * @throws  LDAPException  If any of the values cannot be normalized.
+   */
+  private byte[][] normalizeValues(final Attribute a)
+          throws LDAPException
+  {
+    final ASN1OctetString[] rawValues = a.getRawValues();
+    final byte[][] normalizedValues = new byte[rawValues.length][];
+    for (int i=0; i < rawValues.length; i++)
+    {
+      normalizedValues[i] = matchingRule.normalize(rawValues[i]).getValue();
+    }
+
+    return normalizedValues;
+  }
+
+
+
+  /**
+   * Retrieves the DNs of all entries with a value in the provided map that
+   * starts with the given prefix.
+   *
+   * @param  m       The map to examine.
+   * @param  prefix  The prefix for which to retrieve the matching entries.
+   *
+   * @return  The DNs of all entries with a value that starts with the given
+   *          prefix.
+   */
+  private static TreeSet<DN> getEntriesWithPrefix(
+                                  final TreeMap<byte[],TreeSet<DN>> m,
+                                  final byte[] prefix)
+  {
+    final TreeSet<DN> dnSet = new TreeSet<DN>();
+    for (final Map.Entry<byte[],TreeSet<DN>> e : m.tailMap(prefix).entrySet())
+    {
+      if (! startsWith(e.getKey(), prefix))
+      {
+        break;
+      }
+
+      dnSet.addAll(e.getValue());
+    }
+
+    return dnSet;
+  }
+
+
+
+  /**
+   * Retrieves an upper bound on the number of entries with a value in the
+   * provided map that starts with the given prefix.  An entry with multiple
+   * values that start with the prefix will be counted once for each value.
+   *
+   * @param  m       The map to examine.
+   * @param  prefix  The prefix for which to count the matching entries.
+   *
+   * @return  An upper bound on the number of entries with a value that starts
+   *          with the given prefix.
+   */
+  private static int countEntriesWithPrefix(
+                          final TreeMap<byte[],TreeSet<DN>> m,
+                          final byte[] prefix)
+  {
+    int count = 0;
+    for (final Map.Entry<byte[],TreeSet<DN>> e : m.tailMap(prefix).entrySet())
+    {
+      if (! startsWith(e.getKey(), prefix))
+      {
+        break;
+      }
+
+      count += e.getValue().size();
+    }
+
+    return count;
+  }
+
+
+
+  /**
+   * Indicates whether the provided array starts with the given prefix.
+   *
+   * @param  b       The array to examine.
+   * @param  prefix  The prefix for which to make the determination.
+   *
+   * @return  {@code true} if the provided array starts with the given prefix,
+   *          or {@code false} if not.
+   */
+  private static boolean startsWith(final byte[] b, final byte[] prefix)
+  {
+    if (b.length < prefix.length)
+    {
+      return false;
+    }
+
+    for (int i=0; i < prefix.length; i++)
+    {
+      if (b[i] != prefix[i])
+      {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+
+
+  /**
+   * Retrieves the key used in the substring map for the three-byte sequence
+   * starting at the specified position in the provided array.
+   *
+   * @param  b    The array containing the sequence.
+   * @param  pos  The position of the first byte of the sequence.
+   *
+   * @return  The key used in the substring map for the specified sequence.
+   */
+  private static Integer getSubstringKey(final byte[] b, final int pos)
+  {
+    return ((b[pos] & 0xFF) << 16) | ((b[pos+1] & 0xFF) << 8) |
+         (b[pos+2] & 0xFF);
+  }
+
+
+
+  /**
+   * Creates a copy of the provided array with the bytes in reverse order.
+   *
+   * @param  b  The array to reverse.
+   *
+   * @return  A copy of the provided array with the bytes in reverse order.
+   */
+  private static byte[] reverse(final byte[] b)
+  {
+    final byte[] reversed = new byte[b.length];
+    for (int i=0; i < b.length; i++)
+    {
+      reversed[i] = b[b.length - i - 1];
+    }
+
+    return reversed;
+  }
+
+
+
+  /**
+   * Adds the provided DN to the set associated with the given key in the
+   * provided map, creating the set if necessary.
+   *
+   * @param  <K>  The type of key used in the map.
+   * @param  m    The map to update.
+   * @param  key  The key for the set to update.
+   * @param  dn   The DN to add.
+   */
+  private static <K> void addDN(final Map<K,TreeSet<DN>> m, final K key,
+                                final DN dn)
+  {
+    TreeSet<DN> dnSet = m.get(key);
+    if (dnSet == null)
+    {
+      dnSet = new TreeSet<DN>();
+      m.put(key, dnSet);
+    }
+    dnSet.add(dn);
+  }
+
+
+
+  /**
+   * Removes the provided DN from the set associated with the given key in the
+   * provided map, removing the set if it becomes empty.
+   *
+   * @param  <K>  The type of key used in the map.
+   * @param  m    The map to update.
+   * @param  key  The key for the set to update.
+   * @param  dn   The DN to remove.
+   */
+  private static <K> void removeDN(final Map<K,TreeSet<DN>> m, final K key,
+                                   final DN dn)
+  {
+    final TreeSet<DN> dnSet = m.get(key);
+    if (dnSet != null)
+    {
+      dnSet.remove(dn);
+      if (dnSet.isEmpty())
+      {
+        m.remove(key);
+      }
+    }
+  }
+
+
+
+  /**
+   * This class provides a comparator that orders byte arrays by the unsigned
+   * values of their bytes, with shorter arrays ordered before longer arrays
+   * that start with the same bytes.
+   */
+  private static final class ByteArrayComparator
+          implements Comparator<byte[]>
+  {
+    /**
+     * Compares the provided byte arrays.
+     *
+     * @param  b1  The first array to compare.
+     * @param  b2  The second array to compare.
+     *
+     * @return  A negative value if the first array should be ordered before
+     *          the second, a positive value if the first array should be
+     *          ordered after the second, or zero if they are equal.
+     */
+    public int compare(final byte[] b1, final byte[] b2)
+    {
+      final int minLength = Math.min(b1.length, b2.length);
+      for (int i=0; i < minLength; i++)
+      {
+        final int difference = (b1[i] & 0xFF) - (b2[i] & 0xFF);
+        if (difference != 0)
+        {
+          return difference;
+        }
+      }
+
+      return b1.length - b2.length;
+    }
+  }
+}
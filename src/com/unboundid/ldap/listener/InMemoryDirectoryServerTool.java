@@ -132,6 +132,16 @@ import static com.unboundid.ldap.listener.ListenerMessages.*;
  *       index should be maintained for the specified attribute.  The equality
  *       index may be used to speed up certain kinds of searches, although it
  *       will cause the server to consume more memory.</LI>
+ *   <LI>"--presenceIndex {attr}" -- specifies that a presence index should be
+ *       maintained for the specified attribute.  The presence index may be
+ *       used to speed up searches with presence filters.</LI>
+ *   <LI>"--substringIndex {attr}" -- specifies that a substring index should
+ *       be maintained for the specified attribute.  The substring index may be
+ *       used to speed up searches with substring filters.</LI>
+ *   <LI>"--orderingIndex {attr}" -- specifies that an ordering index should be
+ *       maintained for the specified attribute.  The ordering index may be
+ *       used to speed up searches with greater-or-equal and less-or-equal
+ *       filters.</LI>
  *   <LI>"-Z" or "--useSSL" -- indicates that the server should encrypt all
  *       communication using SSL.  If this is provided, then the
  *       "--keyStorePath" and "--keyStorePassword" arguments must also be
@@ -267,6 +277,18 @@ public final class InMemoryDirectoryServerTool
   // indexes.
   private StringArgument equalityIndexArgument;
 
+  // The argument used to specify the attributes for which to maintain
+  // ordering indexes.
+  private StringArgument orderingIndexArgument;
+
+  // The argument used to specify the attributes for which to maintain
+  // presence indexes.
+  private StringArgument presenceIndexArgument;
+
+  // The argument used to specify the attributes for which to maintain
+  // substring indexes.
+  private StringArgument substringIndexArgument;
+
   // The argument used to specify the password to use to access the contents of
   // the SSL key store
   private StringArgument keyStorePasswordArgument;
@@ -370,6 +392,9 @@ public final class InMemoryDirectoryServerTool
     portArgument                      = null;
     additionalBindPasswordArgument    = null;
     equalityIndexArgument             = null;
+    orderingIndexArgument             = null;
+    presenceIndexArgument             = null;
+    substringIndexArgument            = null;
     keyStorePasswordArgument          = null;
     keyStoreTypeArgument              = null;
     trustStorePasswordArgument        = null;
@@ -569,6 +594,30 @@ public final class InMemoryDirectoryServerTool
     equalityIndexArgument.addLongIdentifier("equality-index");
     parser.addArgument(equalityIndexArgument);
 
+    presenceIndexArgument = new StringArgument(null, "presenceIndex", false, 0,
+         INFO_MEM_DS_TOOL_ARG_PLACEHOLDER_ATTR.get(),
+         INFO_MEM_DS_TOOL_ARG_DESC_PRES_INDEX.get());
+    presenceIndexArgument.setArgumentGroupName(
+         INFO_MEM_DS_TOOL_GROUP_DATA.get());
+    presenceIndexArgument.addLongIdentifier("presence-index");
+    parser.addArgument(presenceIndexArgument);
+
+    substringIndexArgument = new StringArgument(null, "substringIndex", false,
+         0, INFO_MEM_DS_TOOL_ARG_PLACEHOLDER_ATTR.get(),
+         INFO_MEM_DS_TOOL_ARG_DESC_SUB_INDEX.get());
+    substringIndexArgument.setArgumentGroupName(
+         INFO_MEM_DS_TOOL_GROUP_DATA.get());
+    substringIndexArgument.addLongIdentifier("substring-index");
+    parser.addArgument(substringIndexArgument);
+
+    orderingIndexArgument = new StringArgument(null, "orderingIndex", false, 0,
+         INFO_MEM_DS_TOOL_ARG_PLACEHOLDER_ATTR.get(),
+         INFO_MEM_DS_TOOL_ARG_DESC_ORD_INDEX.get());
+    orderingIndexArgument.setArgumentGroupName(
+         INFO_MEM_DS_TOOL_GROUP_DATA.get());
+    orderingIndexArgument.addLongIdentifier("ordering-index");
+    parser.addArgument(orderingIndexArgument);
+
     maxChangeLogEntriesArgument = new IntegerArgument('c',
          "maxChangeLogEntries", false, 1,
          INFO_MEM_DS_TOOL_ARG_PLACEHOLDER_COUNT.get(),
@@ -1057,6 +1106,30 @@ public final class InMemoryDirectoryServerTool
            equalityIndexArgument.getValues());
     }
 
+
+    // If presence indexing is to be performed, then configure it.
+    if (presenceIndexArgument.isPresent())
+    {
+      serverConfig.setPresenceIndexAttributes(
+           presenceIndexArgument.getValues());
+    }
+
+
+    // If substring indexing is to be performed, then configure it.
+    if (substringIndexArgument.isPresent())
+    {
+      serverConfig.setSubstringIndexAttributes(
+           substringIndexArgument.getValues());
+    }
+
+
+    // If ordering indexing is to be performed, then configure it.
+    if (orderingIndexArgument.isPresent())
+    {
+      serverConfig.setOrderingIndexAttributes(
+           orderingIndexArgument.getValues());
+    }
+
     return serverConfig;
   }
 
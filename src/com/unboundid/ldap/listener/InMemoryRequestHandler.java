@@ -31,6 +31,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -38,12 +39,25 @@ import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import com.unboundid.asn1.ASN1Constants;
+import com.unboundid.asn1.ASN1Element;
 import com.unboundid.asn1.ASN1Integer;
 import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.asn1.ASN1Sequence;
+import com.unboundid.ldap.protocol.AbandonRequestProtocolOp;
 import com.unboundid.ldap.protocol.AddRequestProtocolOp;
 import com.unboundid.ldap.protocol.AddResponseProtocolOp;
 import com.unboundid.ldap.protocol.BindRequestProtocolOp;
@@ -54,6 +68,7 @@ import com.unboundid.ldap.protocol.DeleteRequestProtocolOp;
 import com.unboundid.ldap.protocol.DeleteResponseProtocolOp;
 import com.unboundid.ldap.protocol.ExtendedRequestProtocolOp;
 import com.unboundid.ldap.protocol.ExtendedResponseProtocolOp;
+import com.unboundid.ldap.protocol.IntermediateResponseProtocolOp;
 import com.unboundid.ldap.protocol.LDAPMessage;
 import com.unboundid.ldap.protocol.ModifyRequestProtocolOp;
 import com.unboundid.ldap.protocol.ModifyResponseProtocolOp;
@@ -100,9 +115,18 @@ import com.unboundid.ldap.sdk.schema.Schema;
 import com.unboundid.ldap.sdk.controls.AssertionRequestControl;
 import com.unboundid.ldap.sdk.controls.AuthorizationIdentityRequestControl;
 import com.unboundid.ldap.sdk.controls.AuthorizationIdentityResponseControl;
+import com.unboundid.ldap.sdk.controls.ContentSyncDoneControl;
+import com.unboundid.ldap.sdk.controls.ContentSyncInfoIntermediateResponse;
+import com.unboundid.ldap.sdk.controls.ContentSyncRequestControl;
+import com.unboundid.ldap.sdk.controls.ContentSyncRequestMode;
+import com.unboundid.ldap.sdk.controls.ContentSyncState;
+import com.unboundid.ldap.sdk.controls.ContentSyncStateControl;
 import com.unboundid.ldap.sdk.controls.DontUseCopyRequestControl;
+import com.unboundid.ldap.sdk.controls.EntryChangeNotificationControl;
 import com.unboundid.ldap.sdk.controls.ManageDsaITRequestControl;
 import com.unboundid.ldap.sdk.controls.PermissiveModifyRequestControl;
+import com.unboundid.ldap.sdk.controls.PersistentSearchChangeType;
+import com.unboundid.ldap.sdk.controls.PersistentSearchRequestControl;
 import com.unboundid.ldap.sdk.controls.PostReadRequestControl;
 import com.unboundid.ldap.sdk.controls.PostReadResponseControl;
 import com.unboundid.ldap.sdk.controls.PreReadRequestControl;
@@ -130,6 +154,7 @@ import com.unboundid.ldif.LDIFModifyDNChangeRecord;
 import com.unboundid.ldif.LDIFReader;
 import com.unboundid.ldif.LDIFWriter;
 import com.unboundid.util.Debug;
+import com.unboundid.util.LDAPSDKThreadFactory;
 import com.unboundid.util.Mutable;
 import com.unboundid.util.ObjectPair;
 import com.unboundid.util.StaticUtils;
@@ -159,6 +184,38 @@ public final class InMemoryRequestHandler
 
 
 
+  /**
+   * The number of entries that will be included in each batch of entries
+   * evaluated in parallel when the server is configured to use multiple
+   * threads to evaluate searches.  Searches that examine no more than this
+   * many entries will always be evaluated by the thread processing them.
+   */
+  static final int SEARCH_EVALUATION_BATCH_SIZE = 1000;
+
+
+
+  /**
+   * The number of entries that will be included in each batch of entries
+   * prepared in parallel during a bulk import.
+   */
+  static final int BULK_IMPORT_BATCH_SIZE = 1000;
+
+
+
+  /**
+   * The OIDs of the search request controls that affect the set of entries
+   * returned by a search, or the order in which they are returned, and
+   * therefore must be the same for a paged results cursor to be used.
+   */
+  private static final String[] PAGED_RESULTS_REQUEST_KEY_CONTROL_OIDS =
+  {
+    ManageDsaITRequestControl.MANAGE_DSA_IT_REQUEST_OID,
+    ServerSideSortRequestControl.SERVER_SIDE_SORT_REQUEST_OID,
+    SubentriesRequestControl.SUBENTRIES_REQUEST_OID
+  };
+
+
+
   /**
    * The OID for a proprietary control that can be used to indicate that the
    * associated operation should be considered an internal operation that was
@@ -219,9 +276,15 @@ public final class InMemoryRequestHandler
   // The client connection for this request handler instance.
   private final LDAPListenerClientConnection connection;
 
-  // The set of equality indexes defined for the server.
-  private final Map<AttributeTypeDefinition,
-     InMemoryDirectoryServerEqualityAttributeIndex> equalityIndexes;
+  // The planner used to obtain candidate lists from the indexes.
+  private final InMemoryDirectoryServerFilterPlanner filterPlanner;
+
+  // The retained results of searches using the simple paged results control
+  // that have been processed on the associated connection.
+  private final InMemoryDirectoryServerPagedResultsCursors pagedResultsCursors;
+
+  // All of the indexes defined for the server, regardless of their type.
+  private final List<InMemoryDirectoryServerAttributeIndex> attributeIndexes;
 
   // An additional set of credentials that may be used for bind operations.
   private final Map<DN,byte[]> additionalBindCredentials;
@@ -242,8 +305,42 @@ public final class InMemoryRequestHandler
   // The set of referential integrity attributes for the server.
   private final Set<String> referentialIntegrityAttributes;
 
+  // The lock that must be held while processing operations that read from the
+  // data set.  This will be the read lock for the server if concurrent read
+  // operations are allowed, or the write lock otherwise.
+  private final Lock readLock;
+
+  // The lock that must be held while processing operations that may alter the
+  // data set.
+  private final Lock writeLock;
+
   // The map of entries currently held in the server.
-  private final Map<DN,ReadOnlyEntry> entryMap;
+  private final InMemoryDirectoryServerEntryMap entryMap;
+
+  // The executor used to evaluate batches of entries in parallel for large
+  // searches.  This will be null if searches should only be evaluated by the
+  // thread processing them.
+  private final ThreadPoolExecutor searchEvaluationExecutor;
+
+  // Indicates whether matching search result entries should be sent to the
+  // client as soon as they are identified, when possible.
+  private final boolean streamSearchResults;
+
+  // The notifier used to deliver information about changes to persistent
+  // search and content synchronization requests.
+  private final InMemoryDirectoryServerChangeNotifier changeNotifier;
+
+  // The maximum number of changes that may be waiting to be delivered to a
+  // single persistent search or content synchronization request.
+  private final int maxChangeNotificationBacklog;
+
+  // The persistent search and content synchronization requests that are
+  // active on the associated connection, indexed by message ID.
+  private final Map<Integer,ChangeNotificationSubscriber>
+       changeNotificationSubscribers;
+
+  // The journal to which changes will be written, if any.
+  private final InMemoryDirectoryServerJournal journal;
 
 
 
@@ -285,7 +382,46 @@ public final class InMemoryRequestHandler
            ERR_MEM_HANDLER_NO_BASE_DNS.get());
     }
 
-    entryMap = new TreeMap<DN,ReadOnlyEntry>();
+    if (config.useCompactEntryStorage())
+    {
+      entryMap = new InMemoryDirectoryServerEntryMap(
+           new InMemoryDirectoryServerCompactEntryStore(schemaRef));
+    }
+    else
+    {
+      entryMap = new InMemoryDirectoryServerEntryMap();
+    }
+
+    final ReentrantReadWriteLock entryMapLock = new ReentrantReadWriteLock();
+    writeLock = entryMapLock.writeLock();
+    if (config.allowConcurrentReadOperations())
+    {
+      readLock = entryMapLock.readLock();
+    }
+    else
+    {
+      readLock = writeLock;
+    }
+
+    // Threads in the search evaluation pool will be created as needed and
+    // will exit once they have been idle for a while.  If all of them are busy,
+    // then the thread processing a search will evaluate the batch itself.
+    final int searchEvaluationThreads = config.getSearchEvaluationThreads();
+    if (searchEvaluationThreads > 1)
+    {
+      searchEvaluationExecutor = new ThreadPoolExecutor(0,
+           searchEvaluationThreads, 60L, TimeUnit.SECONDS,
+           new SynchronousQueue<Runnable>(),
+           new LDAPSDKThreadFactory(
+                "In-Memory Directory Server Search Evaluator", true),
+           new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+    else
+    {
+      searchEvaluationExecutor = null;
+    }
+
+    streamSearchResults = config.streamSearchResults();
 
     final LinkedHashSet<DN> baseDNSet =
          new LinkedHashSet<DN>(Arrays.asList(baseDNArray));
@@ -353,16 +489,70 @@ public final class InMemoryRequestHandler
     additionalBindCredentials = Collections.unmodifiableMap(
          config.getAdditionalBindCredentials());
 
+    final InMemoryDirectoryServerEntryIDMap entryIDs =
+         new InMemoryDirectoryServerEntryIDMap();
     final List<String> eqIndexAttrs = config.getEqualityIndexAttributes();
-    equalityIndexes = new HashMap<AttributeTypeDefinition,
+    final HashMap<AttributeTypeDefinition,
+         InMemoryDirectoryServerEqualityAttributeIndex> equalityIndexes =
+         new HashMap<AttributeTypeDefinition,
          InMemoryDirectoryServerEqualityAttributeIndex>(eqIndexAttrs.size());
     for (final String s : eqIndexAttrs)
     {
       final InMemoryDirectoryServerEqualityAttributeIndex i =
-           new InMemoryDirectoryServerEqualityAttributeIndex(s, schema);
+           new InMemoryDirectoryServerEqualityAttributeIndex(s, schema,
+                entryIDs);
       equalityIndexes.put(i.getAttributeType(), i);
     }
 
+    final List<String> presIndexAttrs = config.getPresenceIndexAttributes();
+    final HashMap<AttributeTypeDefinition,
+         InMemoryDirectoryServerPresenceAttributeIndex> presenceIndexes =
+         new HashMap<AttributeTypeDefinition,
+         InMemoryDirectoryServerPresenceAttributeIndex>(presIndexAttrs.size());
+    for (final String s : presIndexAttrs)
+    {
+      final InMemoryDirectoryServerPresenceAttributeIndex i =
+           new InMemoryDirectoryServerPresenceAttributeIndex(s, schema);
+      presenceIndexes.put(i.getAttributeType(), i);
+    }
+
+    final List<String> subIndexAttrs = config.getSubstringIndexAttributes();
+    final HashMap<AttributeTypeDefinition,
+         InMemoryDirectoryServerSubstringAttributeIndex> substringIndexes =
+         new HashMap<AttributeTypeDefinition,
+         InMemoryDirectoryServerSubstringAttributeIndex>(subIndexAttrs.size());
+    for (final String s : subIndexAttrs)
+    {
+      final InMemoryDirectoryServerSubstringAttributeIndex i =
+           new InMemoryDirectoryServerSubstringAttributeIndex(s, schema);
+      substringIndexes.put(i.getAttributeType(), i);
+    }
+
+    final List<String> ordIndexAttrs = config.getOrderingIndexAttributes();
+    final HashMap<AttributeTypeDefinition,
+         InMemoryDirectoryServerOrderingAttributeIndex> orderingIndexes =
+         new HashMap<AttributeTypeDefinition,
+         InMemoryDirectoryServerOrderingAttributeIndex>(ordIndexAttrs.size());
+    for (final String s : ordIndexAttrs)
+    {
+      final InMemoryDirectoryServerOrderingAttributeIndex i =
+           new InMemoryDirectoryServerOrderingAttributeIndex(s, schema);
+      orderingIndexes.put(i.getAttributeType(), i);
+    }
+
+    final ArrayList<InMemoryDirectoryServerAttributeIndex> allIndexes =
+         new ArrayList<InMemoryDirectoryServerAttributeIndex>(
+              equalityIndexes.size() + presenceIndexes.size() +
+                   substringIndexes.size() + orderingIndexes.size());
+    allIndexes.addAll(equalityIndexes.values());
+    allIndexes.addAll(presenceIndexes.values());
+    allIndexes.addAll(substringIndexes.values());
+    allIndexes.addAll(orderingIndexes.values());
+    attributeIndexes = Collections.unmodifiableList(allIndexes);
+    filterPlanner = new InMemoryDirectoryServerFilterPlanner(schemaRef,
+         entryIDs, equalityIndexes, presenceIndexes, substringIndexes,
+         orderingIndexes);
+
     referentialIntegrityAttributes = Collections.unmodifiableSet(
          config.getReferentialIntegrityAttributes());
 
@@ -371,6 +561,10 @@ public final class InMemoryRequestHandler
     authenticatedDN               = new DN("cn=Internal Root User", schema);
     connection                    = null;
     connectionState               = Collections.emptyMap();
+    pagedResultsCursors = new InMemoryDirectoryServerPagedResultsCursors();
+    changeNotificationSubscribers = Collections.emptyMap();
+    changeNotifier = new InMemoryDirectoryServerChangeNotifier();
+    maxChangeNotificationBacklog = config.getMaxChangeNotificationBacklog();
     firstChangeNumber             = new AtomicLong(0L);
     lastChangeNumber              = new AtomicLong(0L);
     processingDelayMillis         = new AtomicLong(0L);
@@ -417,6 +611,35 @@ public final class InMemoryRequestHandler
     }
 
     initialSnapshot = createSnapshot();
+
+    // If a journal directory was configured, then recover any content that
+    // was journaled by a previous instance.
+    if (config.getJournalDirectory() == null)
+    {
+      journal = null;
+    }
+    else
+    {
+      journal = new InMemoryDirectoryServerJournal(
+           config.getJournalDirectory(),
+           config.getJournalCheckpointInterval());
+
+      final InMemoryDirectoryServerJournal.RecoveredContent recoveredContent =
+           journal.recover(initialSnapshot, subschemaSubentryRef.get(),
+                schemaRef.get());
+      if (recoveredContent != null)
+      {
+        final Schema recoveredSchema = recoveredContent.getSchema();
+        if ((recoveredSchema != null) && (recoveredSchema != schema))
+        {
+          subschemaSubentryRef.set(recoveredContent.getSubschemaSubentry());
+          schemaRef.set(recoveredSchema);
+          entryValidatorRef.set(new EntryValidator(recoveredSchema));
+        }
+
+        restoreContent(recoveredContent.getSnapshot());
+      }
+    }
   }
 
 
@@ -436,6 +659,9 @@ public final class InMemoryRequestHandler
     authenticatedDN = DN.NULL_DN;
     connectionState =
          Collections.synchronizedMap(new LinkedHashMap<String,Object>(0));
+    pagedResultsCursors = new InMemoryDirectoryServerPagedResultsCursors();
+    changeNotificationSubscribers = Collections.synchronizedMap(
+         new HashMap<Integer,ChangeNotificationSubscriber>(0));
 
     config                         = parent.config;
     generateOperationalAttributes  = parent.generateOperationalAttributes;
@@ -447,9 +673,16 @@ public final class InMemoryRequestHandler
     processingDelayMillis          = parent.processingDelayMillis;
     maxChangelogEntries            = parent.maxChangelogEntries;
     maxSizeLimit                   = parent.maxSizeLimit;
-    equalityIndexes                = parent.equalityIndexes;
+    attributeIndexes               = parent.attributeIndexes;
+    filterPlanner                  = parent.filterPlanner;
     referentialIntegrityAttributes = parent.referentialIntegrityAttributes;
     entryMap                       = parent.entryMap;
+    searchEvaluationExecutor       = parent.searchEvaluationExecutor;
+    streamSearchResults            = parent.streamSearchResults;
+    changeNotifier                 = parent.changeNotifier;
+    maxChangeNotificationBacklog   = parent.maxChangeNotificationBacklog;
+    readLock                       = parent.readLock;
+    writeLock                      = parent.writeLock;
     entryValidatorRef              = parent.entryValidatorRef;
     extendedRequestHandlers        = parent.extendedRequestHandlers;
     saslBindHandlers               = parent.saslBindHandlers;
@@ -457,6 +690,7 @@ public final class InMemoryRequestHandler
     subschemaSubentryRef           = parent.subschemaSubentryRef;
     subschemaSubentryDN            = parent.subschemaSubentryDN;
     initialSnapshot                = parent.initialSnapshot;
+    journal                        = parent.journal;
   }
 
 
@@ -483,6 +717,58 @@ public final class InMemoryRequestHandler
 
 
 
+  /**
+   * Indicates that the client connection with which this request handler
+   * instance is associated is being closed, so any persistent search or
+   * content synchronization requests that are active on it should be
+   * cancelled.
+   */
+  @Override()
+  public void closeInstance()
+  {
+    synchronized (changeNotificationSubscribers)
+    {
+      for (final ChangeNotificationSubscriber s :
+           changeNotificationSubscribers.values())
+      {
+        s.cancel();
+      }
+      changeNotificationSubscribers.clear();
+    }
+  }
+
+
+
+  /**
+   * Attempts to process the provided abandon request.  The only operations
+   * that can be abandoned are persistent search and content synchronization
+   * requests operating in a mode in which they remain active after the initial
+   * search has completed.  No response will be sent for an abandoned
+   * operation.
+   *
+   * @param  messageID  The message ID of the LDAP message containing the
+   *                    abandon request.
+   * @param  request    The abandon request that was included in the LDAP
+   *                    message that was received.
+   * @param  controls   The set of controls included in the LDAP message.  It
+   *                    may be empty if there were no controls, but will not be
+   *                    {@code null}.
+   */
+  @Override()
+  public void processAbandonRequest(final int messageID,
+                                    final AbandonRequestProtocolOp request,
+                                    final List<Control> controls)
+  {
+    final ChangeNotificationSubscriber s =
+         changeNotificationSubscribers.remove(request.getIDToAbandon());
+    if (s != null)
+    {
+      s.cancel();
+    }
+  }
+
+
+
   /**
    * Creates a point-in-time snapshot of the information contained in this
    * in-memory request handler.  If desired, it may be restored using the
@@ -493,38 +779,156 @@ public final class InMemoryRequestHandler
    */
   public InMemoryDirectoryServerSnapshot createSnapshot()
   {
-    synchronized (entryMap)
+    readLock.lock();
+    try
     {
-      return new InMemoryDirectoryServerSnapshot(entryMap,
+      return new InMemoryDirectoryServerSnapshot(entryMap.getReadOnlyView(),
            firstChangeNumber.get(), lastChangeNumber.get());
     }
+    finally
+    {
+      readLock.unlock();
+    }
   }
 
 
 
   /**
    * Updates the content of this in-memory request handler to match what it was
-   * at the time the snapshot was created.
+   * at the time the snapshot was created.  If a journal is maintained, then a
+   * checkpoint of the restored content will be written before this method
+   * returns.
    *
    * @param  snapshot  The snapshot to be restored.  It must not be
    *                   {@code null}.
    */
   public void restoreSnapshot(final InMemoryDirectoryServerSnapshot snapshot)
   {
-    synchronized (entryMap)
+    writeLock.lock();
+    try
+    {
+      restoreContent(snapshot);
+
+      // The restored content is not represented by any journaled changes, so
+      // it must be checkpointed before any further changes are journaled.
+      if (journal != null)
+      {
+        try
+        {
+          InMemoryDirectoryServerJournal.waitForCheckpoint(journal.checkpoint(
+               createSnapshot(), subschemaSubentryRef.get()));
+        }
+        catch (final LDAPException le)
+        {
+          // The journal will write a new checkpoint with the next change.
+          Debug.debugException(le);
+        }
+      }
+    }
+    finally
+    {
+      writeLock.unlock();
+    }
+  }
+
+
+
+  /**
+   * Writes a checkpoint of the current content of this in-memory request
+   * handler to the journal directory and waits for it to be written, so that
+   * none of the changes journaled so far will need to be replayed when the
+   * content is recovered.  Write operations may be processed while the
+   * checkpoint is being written.
+   *
+   * @throws  LDAPException  If the server is not configured with a journal
+   *                         directory, or if a problem occurs while writing
+   *                         the checkpoint.
+   */
+  public void checkpointJournal()
+         throws LDAPException
+  {
+    if (journal == null)
+    {
+      throw new LDAPException(ResultCode.UNWILLING_TO_PERFORM,
+           ERR_MEM_HANDLER_JOURNAL_NOT_CONFIGURED.get());
+    }
+
+    final Future<Void> future;
+    writeLock.lock();
+    try
+    {
+      future = journal.checkpoint(createSnapshot(),
+           subschemaSubentryRef.get());
+    }
+    finally
+    {
+      writeLock.unlock();
+    }
+
+    InMemoryDirectoryServerJournal.waitForCheckpoint(future);
+  }
+
+
+
+  /**
+   * Replaces the content of this in-memory request handler with the content
+   * of the provided snapshot.  This must only be called while holding the write
+   * lock.  If the snapshot was created from this request handler, then the
+   * snapshot's entries will be adopted directly and only the entries that have
+   * changed since the snapshot was created will need to be updated in the
+   * attribute indexes.
+   *
+   * @param  snapshot  The snapshot to be restored.
+   */
+  private void restoreContent(final InMemoryDirectoryServerSnapshot snapshot)
+  {
+    final int previousSize = entryMap.size();
+    final ArrayList<Map.Entry<DN,ReadOnlyEntry>> removedEntries =
+         new ArrayList<Map.Entry<DN,ReadOnlyEntry>>(10);
+    final ArrayList<Map.Entry<DN,ReadOnlyEntry>> addedEntries =
+         new ArrayList<Map.Entry<DN,ReadOnlyEntry>>(10);
+    entryMap.replaceContent(snapshot.getEntryMap(), removedEntries,
+         addedEntries);
+
+    if (! attributeIndexes.isEmpty())
     {
-      entryMap.clear();
-      entryMap.putAll(snapshot.getEntryMap());
+      // If none of the previous entries remain, then it is cheaper to clear
+      // the indexes than to remove each entry from them.
+      if (removedEntries.size() == previousSize)
+      {
+        for (final InMemoryDirectoryServerAttributeIndex i : attributeIndexes)
+        {
+          i.clear();
+        }
+      }
+      else
+      {
+        for (final Map.Entry<DN,ReadOnlyEntry> e : removedEntries)
+        {
+          final ReadOnlyEntry entry = e.getValue();
+          for (final InMemoryDirectoryServerAttributeIndex i :
+               attributeIndexes)
+          {
+            try
+            {
+              i.processDelete(entry);
+            }
+            catch (final Exception ex)
+            {
+              Debug.debugException(ex);
+            }
+          }
+        }
+      }
 
-      for (final InMemoryDirectoryServerEqualityAttributeIndex i :
-           equalityIndexes.values())
+      for (final Map.Entry<DN,ReadOnlyEntry> e : addedEntries)
       {
-        i.clear();
-        for (final Entry e : entryMap.values())
+        final ReadOnlyEntry entry = e.getValue();
+        for (final InMemoryDirectoryServerAttributeIndex i : attributeIndexes)
         {
           try
           {
-            i.processAdd(e);
+            i.processAdd(entry);
           }
           catch (final Exception ex)
           {
@@ -532,10 +936,11 @@ public final class InMemoryRequestHandler
           }
         }
       }
-
-      firstChangeNumber.set(snapshot.getFirstChangeNumber());
-      lastChangeNumber.set(snapshot.getLastChangeNumber());
     }
+
+    firstChangeNumber.set(snapshot.getFirstChangeNumber());
+    lastChangeNumber.set(snapshot.getLastChangeNumber());
+    changeNotifier.invalidateCookies();
   }
 
 
@@ -745,7 +1150,8 @@ public final class InMemoryRequestHandler
                                        final AddRequestProtocolOp request,
                                        final List<Control> controls)
   {
-    synchronized (entryMap)
+    writeLock.lock();
+    try
     {
       // Sleep before processing, if appropriate.
       sleepBeforeProcessing();
@@ -817,28 +1223,9 @@ public final class InMemoryRequestHandler
 
       // Get the entry to be added.  If a schema was provided, then make sure
       // the attributes are created with the appropriate matching rules.
-      final Entry entry;
       final Schema schema = schemaRef.get();
-      if (schema == null)
-      {
-        entry = new Entry(request.getDN(), request.getAttributes());
-      }
-      else
-      {
-        final List<Attribute> providedAttrs = request.getAttributes();
-        final List<Attribute> newAttrs =
-             new ArrayList<Attribute>(providedAttrs.size());
-        for (final Attribute a : providedAttrs)
-        {
-          final String baseName = a.getBaseName();
-          final MatchingRule matchingRule =
-               MatchingRule.selectEqualityMatchingRule(baseName, schema);
-          newAttrs.add(new Attribute(a.getName(), matchingRule,
-               a.getRawValues()));
-        }
-
-        entry = new Entry(request.getDN(), schema, newAttrs);
-      }
+      final Entry entry =
+           createEntryForAdd(request.getDN(), request.getAttributes(), schema);
 
       // Make sure that the DN is valid.
       final DN dn;
@@ -901,50 +1288,9 @@ public final class InMemoryRequestHandler
              ERR_MEM_HANDLER_ADD_ALREADY_EXISTS.get(request.getDN()), null));
       }
 
-      // Make sure that all RDN attribute values are present in the entry.
-      final RDN      rdn           = dn.getRDN();
-      final String[] rdnAttrNames  = rdn.getAttributeNames();
-      final byte[][] rdnAttrValues = rdn.getByteArrayAttributeValues();
-      for (int i=0; i < rdnAttrNames.length; i++)
-      {
-        final MatchingRule matchingRule =
-             MatchingRule.selectEqualityMatchingRule(rdnAttrNames[i], schema);
-        entry.addAttribute(new Attribute(rdnAttrNames[i], matchingRule,
-             rdnAttrValues[i]));
-      }
-
-      // Make sure that all superior object classes are present in the entry.
-      if (schema != null)
-      {
-        final String[] objectClasses = entry.getObjectClassValues();
-        if (objectClasses != null)
-        {
-          final LinkedHashMap<String,String> ocMap =
-               new LinkedHashMap<String,String>(objectClasses.length);
-          for (final String ocName : objectClasses)
-          {
-            final ObjectClassDefinition oc = schema.getObjectClass(ocName);
-            if (oc == null)
-            {
-              ocMap.put(StaticUtils.toLowerCase(ocName), ocName);
-            }
-            else
-            {
-              ocMap.put(StaticUtils.toLowerCase(oc.getNameOrOID()), ocName);
-              for (final ObjectClassDefinition supClass :
-                   oc.getSuperiorClasses(schema, true))
-              {
-                ocMap.put(StaticUtils.toLowerCase(supClass.getNameOrOID()),
-                     supClass.getNameOrOID());
-              }
-            }
-          }
-
-          final String[] newObjectClasses = new String[ocMap.size()];
-          ocMap.values().toArray(newObjectClasses);
-          entry.setAttribute("objectClass", newObjectClasses);
-        }
-      }
+      // Make sure that all RDN attribute values and superior object classes
+      // are present in the entry.
+      addRDNValuesAndSuperiorClasses(entry, dn, schema);
 
       // If a schema was provided, then make sure the entry complies with it.
       // Also make sure that there are no attributes marked with
@@ -995,48 +1341,7 @@ public final class InMemoryRequestHandler
       // Add a number of operational attributes to the entry.
       if (generateOperationalAttributes)
       {
-        final Date d = new Date();
-        if (! entry.hasAttribute("entryDN"))
-        {
-          entry.addAttribute(new Attribute("entryDN",
-               DistinguishedNameMatchingRule.getInstance(),
-               dn.toNormalizedString()));
-        }
-        if (! entry.hasAttribute("entryUUID"))
-        {
-          entry.addAttribute(new Attribute("entryUUID",
-               UUID.randomUUID().toString()));
-        }
-        if (! entry.hasAttribute("subschemaSubentry"))
-        {
-          entry.addAttribute(new Attribute("subschemaSubentry",
-               DistinguishedNameMatchingRule.getInstance(),
-               subschemaSubentryDN.toString()));
-        }
-        if (! entry.hasAttribute("creatorsName"))
-        {
-          entry.addAttribute(new Attribute("creatorsName",
-               DistinguishedNameMatchingRule.getInstance(),
-               authzDN.toString()));
-        }
-        if (! entry.hasAttribute("createTimestamp"))
-        {
-          entry.addAttribute(new Attribute("createTimestamp",
-               GeneralizedTimeMatchingRule.getInstance(),
-               StaticUtils.encodeGeneralizedTime(d)));
-        }
-        if (! entry.hasAttribute("modifiersName"))
-        {
-          entry.addAttribute(new Attribute("modifiersName",
-               DistinguishedNameMatchingRule.getInstance(),
-               authzDN.toString()));
-        }
-        if (! entry.hasAttribute("modifyTimestamp"))
-        {
-          entry.addAttribute(new Attribute("modifyTimestamp",
-               GeneralizedTimeMatchingRule.getInstance(),
-               StaticUtils.encodeGeneralizedTime(d)));
-        }
+        addCreateOperationalAttributes(entry, dn, authzDN);
       }
 
       // If the request includes the assertion request control, then check it
@@ -1065,9 +1370,12 @@ public final class InMemoryRequestHandler
       // add the entry.
       if (baseDNs.contains(dn))
       {
-        entryMap.put(dn, new ReadOnlyEntry(entry));
+        final ReadOnlyEntry addedEntry = new ReadOnlyEntry(entry);
+        entryMap.put(dn, addedEntry);
         indexAdd(entry);
         addChangeLogEntry(request, authzDN);
+        publishChange(PersistentSearchChangeType.ADD, null,
+             addedEntry);
         return new LDAPMessage(messageID,
              new AddResponseProtocolOp(ResultCode.SUCCESS_INT_VALUE, null, null,
                   null),
@@ -1078,9 +1386,12 @@ public final class InMemoryRequestHandler
       final DN parentDN = dn.getParent();
       if ((parentDN != null) && entryMap.containsKey(parentDN))
       {
-        entryMap.put(dn, new ReadOnlyEntry(entry));
+        final ReadOnlyEntry addedEntry = new ReadOnlyEntry(entry);
+        entryMap.put(dn, addedEntry);
         indexAdd(entry);
         addChangeLogEntry(request, authzDN);
+        publishChange(PersistentSearchChangeType.ADD, null,
+             addedEntry);
         return new LDAPMessage(messageID,
              new AddResponseProtocolOp(ResultCode.SUCCESS_INT_VALUE, null, null,
                   null),
@@ -1094,67 +1405,239 @@ public final class InMemoryRequestHandler
                 dn.getParentString()),
            null));
     }
+    finally
+    {
+      writeLock.unlock();
+    }
   }
 
 
 
   /**
-   * Attempts to process the provided bind request.  The attempt will fail if
-   * any of the following conditions is true:
-   * <UL>
-   *   <LI>There is a problem with any of the request controls.</LI>
-   *   <LI>The bind request is not a simple bind request.</LI>
-   *   <LI>The bind request contains a malformed bind DN.</LI>
-   *   <LI>The bind DN is not the null DN and is not the DN of any entry in the
-   *       data set.</LI>
-   *   <LI>The bind password is empty and the bind DN is not the null DN.</LI>
-   *   <LI>The target user does not have a userPassword value that matches the
-   *       provided bind password.</LI>
-   * </UL>
+   * Creates the entry to be added to the server from the provided DN and set
+   * of attributes.  If a schema is provided, then the attributes will be
+   * created with the appropriate matching rules.
    *
-   * @param  messageID  The message ID of the LDAP message containing the bind
-   *                    request.
-   * @param  request    The bind request that was included in the LDAP message
-   *                    that was received.
-   * @param  controls   The set of controls included in the LDAP message.  It
-   *                    may be empty if there were no controls, but will not be
-   *                    {@code null}.
+   * @param  dn      The DN for the entry.
+   * @param  attrs   The attributes for the entry.
+   * @param  schema  The schema for the server, or {@code null} if there is
+   *                 none.
    *
-   * @return  The {@link LDAPMessage} containing the response to send to the
-   *          client.  The protocol op in the {@code LDAPMessage} must be a
-   *          {@code BindResponseProtocolOp}.
+   * @return  The entry that was created.
    */
-  @Override()
-  public LDAPMessage processBindRequest(final int messageID,
-                                        final BindRequestProtocolOp request,
-                                        final List<Control> controls)
+  private static Entry createEntryForAdd(final String dn,
+                                         final Collection<Attribute> attrs,
+                                         final Schema schema)
   {
-    synchronized (entryMap)
+    if (schema == null)
     {
-      // Sleep before processing, if appropriate.
-      sleepBeforeProcessing();
+      return new Entry(dn, attrs);
+    }
 
-      // If this operation type is not allowed, then reject it.
-      if (! config.getAllowedOperationTypes().contains(OperationType.BIND))
-      {
-        return new LDAPMessage(messageID, new BindResponseProtocolOp(
-             ResultCode.UNWILLING_TO_PERFORM_INT_VALUE, null,
-             ERR_MEM_HANDLER_BIND_NOT_ALLOWED.get(), null, null));
-      }
+    final List<Attribute> newAttrs = new ArrayList<Attribute>(attrs.size());
+    for (final Attribute a : attrs)
+    {
+      final String baseName = a.getBaseName();
+      final MatchingRule matchingRule =
+           MatchingRule.selectEqualityMatchingRule(baseName, schema);
+      newAttrs.add(new Attribute(a.getName(), matchingRule,
+           a.getRawValues()));
+    }
 
+    return new Entry(dn, schema, newAttrs);
+  }
 
-      authenticatedDN = DN.NULL_DN;
 
 
-      // If this operation type requires authentication and it is a simple bind
-      // request , then ensure that the request includes credentials.
-      if ((authenticatedDN.isNullDN() &&
-           config.getAuthenticationRequiredOperationTypes().contains(
-                OperationType.BIND)))
-      {
-        if ((request.getCredentialsType() ==
-             BindRequestProtocolOp.CRED_TYPE_SIMPLE) &&
-             ((request.getSimplePassword() == null) ||
+  /**
+   * Ensures that the provided entry to be added contains all of its RDN
+   * attribute values and, if a schema is provided, all superior object
+   * classes for the object classes it contains.
+   *
+   * @param  entry   The entry to be updated.
+   * @param  dn      The parsed DN for the entry.
+   * @param  schema  The schema for the server, or {@code null} if there is
+   *                 none.
+   */
+  private static void addRDNValuesAndSuperiorClasses(final Entry entry,
+                                                     final DN dn,
+                                                     final Schema schema)
+  {
+    // Make sure that all RDN attribute values are present in the entry.
+    final RDN      rdn           = dn.getRDN();
+    final String[] rdnAttrNames  = rdn.getAttributeNames();
+    final byte[][] rdnAttrValues = rdn.getByteArrayAttributeValues();
+    for (int i=0; i < rdnAttrNames.length; i++)
+    {
+      final MatchingRule matchingRule =
+           MatchingRule.selectEqualityMatchingRule(rdnAttrNames[i], schema);
+      entry.addAttribute(new Attribute(rdnAttrNames[i], matchingRule,
+           rdnAttrValues[i]));
+    }
+
+    // Make sure that all superior object classes are present in the entry.
+    if (schema != null)
+    {
+      final String[] objectClasses = entry.getObjectClassValues();
+      if (objectClasses != null)
+      {
+        final LinkedHashMap<String,String> ocMap =
+             new LinkedHashMap<String,String>(objectClasses.length);
+        for (final String ocName : objectClasses)
+        {
+          final ObjectClassDefinition oc = schema.getObjectClass(ocName);
+          if (oc == null)
+          {
+            ocMap.put(StaticUtils.toLowerCase(ocName), ocName);
+          }
+          else
+          {
+            ocMap.put(StaticUtils.toLowerCase(oc.getNameOrOID()), ocName);
+            for (final ObjectClassDefinition supClass :
+                 oc.getSuperiorClasses(schema, true))
+            {
+              ocMap.put(StaticUtils.toLowerCase(supClass.getNameOrOID()),
+                   supClass.getNameOrOID());
+            }
+          }
+        }
+
+        final String[] newObjectClasses = new String[ocMap.size()];
+        ocMap.values().toArray(newObjectClasses);
+        entry.setAttribute("objectClass", newObjectClasses);
+      }
+    }
+  }
+
+
+
+  /**
+   * Adds the operational attributes that should be generated for a new entry,
+   * if they are not already present in it.
+   *
+   * @param  entry    The entry to be updated.
+   * @param  dn       The parsed DN for the entry.
+   * @param  authzDN  The DN of the user that is adding the entry.
+   */
+  private void addCreateOperationalAttributes(final Entry entry, final DN dn,
+                                              final DN authzDN)
+  {
+    final Date d = new Date();
+    if (! entry.hasAttribute("entryDN"))
+    {
+      entry.addAttribute(new Attribute("entryDN",
+           DistinguishedNameMatchingRule.getInstance(),
+           dn.toNormalizedString()));
+    }
+    if (! entry.hasAttribute("entryUUID"))
+    {
+      entry.addAttribute(new Attribute("entryUUID",
+           UUID.randomUUID().toString()));
+    }
+    if (! entry.hasAttribute("subschemaSubentry"))
+    {
+      entry.addAttribute(new Attribute("subschemaSubentry",
+           DistinguishedNameMatchingRule.getInstance(),
+           subschemaSubentryDN.toString()));
+    }
+    if (! entry.hasAttribute("creatorsName"))
+    {
+      entry.addAttribute(new Attribute("creatorsName",
+           DistinguishedNameMatchingRule.getInstance(),
+           authzDN.toString()));
+    }
+    if (! entry.hasAttribute("createTimestamp"))
+    {
+      entry.addAttribute(new Attribute("createTimestamp",
+           GeneralizedTimeMatchingRule.getInstance(),
+           StaticUtils.encodeGeneralizedTime(d)));
+    }
+    if (! entry.hasAttribute("modifiersName"))
+    {
+      entry.addAttribute(new Attribute("modifiersName",
+           DistinguishedNameMatchingRule.getInstance(),
+           authzDN.toString()));
+    }
+    if (! entry.hasAttribute("modifyTimestamp"))
+    {
+      entry.addAttribute(new Attribute("modifyTimestamp",
+           GeneralizedTimeMatchingRule.getInstance(),
+           StaticUtils.encodeGeneralizedTime(d)));
+    }
+  }
+
+
+
+  /**
+   * Attempts to process the provided bind request.  The attempt will fail if
+   * any of the following conditions is true:
+   * <UL>
+   *   <LI>There is a problem with any of the request controls.</LI>
+   *   <LI>The bind request is not a simple bind request.</LI>
+   *   <LI>The bind request contains a malformed bind DN.</LI>
+   *   <LI>The bind DN is not the null DN and is not the DN of any entry in the
+   *       data set.</LI>
+   *   <LI>The bind password is empty and the bind DN is not the null DN.</LI>
+   *   <LI>The target user does not have a userPassword value that matches the
+   *       provided bind password.</LI>
+   * </UL>
+   *
+   * @param  messageID  The message ID of the LDAP message containing the bind
+   *                    request.
+   * @param  request    The bind request that was included in the LDAP message
+   *                    that was received.
+   * @param  controls   The set of controls included in the LDAP message.  It
+   *                    may be empty if there were no controls, but will not be
+   *                    {@code null}.
+   *
+   * @return  The {@link LDAPMessage} containing the response to send to the
+   *          client.  The protocol op in the {@code LDAPMessage} must be a
+   *          {@code BindResponseProtocolOp}.
+   */
+  @Override()
+  public LDAPMessage processBindRequest(final int messageID,
+                                        final BindRequestProtocolOp request,
+                                        final List<Control> controls)
+  {
+    // SASL bind handlers may need to alter the data set, so only simple binds
+    // are eligible to be processed concurrently with other read operations.
+    final Lock lock;
+    if (request.getCredentialsType() == BindRequestProtocolOp.CRED_TYPE_SIMPLE)
+    {
+      lock = readLock;
+    }
+    else
+    {
+      lock = writeLock;
+    }
+
+    lock.lock();
+    try
+    {
+      // Sleep before processing, if appropriate.
+      sleepBeforeProcessing();
+
+      // If this operation type is not allowed, then reject it.
+      if (! config.getAllowedOperationTypes().contains(OperationType.BIND))
+      {
+        return new LDAPMessage(messageID, new BindResponseProtocolOp(
+             ResultCode.UNWILLING_TO_PERFORM_INT_VALUE, null,
+             ERR_MEM_HANDLER_BIND_NOT_ALLOWED.get(), null, null));
+      }
+
+
+      authenticatedDN = DN.NULL_DN;
+
+
+      // If this operation type requires authentication and it is a simple bind
+      // request , then ensure that the request includes credentials.
+      if ((authenticatedDN.isNullDN() &&
+           config.getAuthenticationRequiredOperationTypes().contains(
+                OperationType.BIND)))
+      {
+        if ((request.getCredentialsType() ==
+             BindRequestProtocolOp.CRED_TYPE_SIMPLE) &&
+             ((request.getSimplePassword() == null) ||
                   request.getSimplePassword().getValueLength() == 0))
         {
           return new LDAPMessage(messageID, new BindResponseProtocolOp(
@@ -1348,6 +1831,10 @@ public final class InMemoryRequestHandler
              null));
       }
     }
+    finally
+    {
+      lock.unlock();
+    }
   }
 
 
@@ -1378,7 +1865,8 @@ public final class InMemoryRequestHandler
                           final CompareRequestProtocolOp request,
                           final List<Control> controls)
   {
-    synchronized (entryMap)
+    readLock.lock();
+    try
     {
       // Sleep before processing, if appropriate.
       sleepBeforeProcessing();
@@ -1505,6 +1993,10 @@ public final class InMemoryRequestHandler
            new CompareResponseProtocolOp(resultCode, null, null, null),
            responseControls);
     }
+    finally
+    {
+      readLock.unlock();
+    }
   }
 
 
@@ -1539,7 +2031,8 @@ public final class InMemoryRequestHandler
                                           final DeleteRequestProtocolOp request,
                                           final List<Control> controls)
   {
-    synchronized (entryMap)
+    writeLock.lock();
+    try
     {
       // Sleep before processing, if appropriate.
       sleepBeforeProcessing();
@@ -1670,26 +2163,31 @@ public final class InMemoryRequestHandler
              ERR_MEM_HANDLER_DELETE_NO_SUCH_ENTRY.get(request.getDN()), null));
       }
 
-      // Create a list with the DN of the target entry, and all the DNs of its
-      // subordinates.  If the entry has subordinates and the subtree delete
-      // control was not provided, then fail.
-      final ArrayList<DN> subordinateDNs = new ArrayList<DN>(entryMap.size());
-      for (final DN mapEntryDN : entryMap.keySet())
+      // If the entry has subordinates and the subtree delete control was not
+      // provided, then fail.  Otherwise, create a list with the DNs of all of
+      // its subordinates.
+      final ArrayList<DN> subordinateDNs = new ArrayList<DN>(10);
+      if (entryMap.hasSubordinates(dn))
       {
-        if (mapEntryDN.isDescendantOf(dn, false))
+        if (! controlMap.containsKey(
+                   SubtreeDeleteRequestControl.SUBTREE_DELETE_REQUEST_OID))
         {
-          subordinateDNs.add(mapEntryDN);
+          return new LDAPMessage(messageID, new DeleteResponseProtocolOp(
+               ResultCode.NOT_ALLOWED_ON_NONLEAF_INT_VALUE, null,
+               ERR_MEM_HANDLER_DELETE_HAS_SUBORDINATES.get(request.getDN()),
+               null));
         }
-      }
 
-      if ((! subordinateDNs.isEmpty()) &&
-           (! controlMap.containsKey(
-                SubtreeDeleteRequestControl.SUBTREE_DELETE_REQUEST_OID)))
-      {
-        return new LDAPMessage(messageID, new DeleteResponseProtocolOp(
-             ResultCode.NOT_ALLOWED_ON_NONLEAF_INT_VALUE, null,
-             ERR_MEM_HANDLER_DELETE_HAS_SUBORDINATES.get(request.getDN()),
-             null));
+        final Iterator<Map.Entry<DN,ReadOnlyEntry>> iterator =
+             entryMap.subtreeIterator(dn);
+        while (iterator.hasNext())
+        {
+          final DN mapEntryDN = iterator.next().getKey();
+          if (! mapEntryDN.equals(dn))
+          {
+            subordinateDNs.add(mapEntryDN);
+          }
+        }
       }
 
       // Handle the necessary processing for the assertion, pre-read, and
@@ -1724,6 +2222,8 @@ public final class InMemoryRequestHandler
         final Entry subEntry = entryMap.remove(subordinateDN);
         indexDelete(subEntry);
         addDeleteChangeLogEntry(subEntry, authzDN);
+        publishChange(PersistentSearchChangeType.DELETE, subEntry,
+             null);
         handleReferentialIntegrityDelete(subordinateDN);
       }
 
@@ -1731,6 +2231,7 @@ public final class InMemoryRequestHandler
       entryMap.remove(dn);
       indexDelete(entry);
       addDeleteChangeLogEntry(entry, authzDN);
+      publishChange(PersistentSearchChangeType.DELETE, entry, null);
       handleReferentialIntegrityDelete(dn);
 
       return new LDAPMessage(messageID,
@@ -1738,6 +2239,10 @@ public final class InMemoryRequestHandler
                 null, null),
            responseControls);
     }
+    finally
+    {
+      writeLock.unlock();
+    }
   }
 
 
@@ -1782,9 +2287,12 @@ public final class InMemoryRequestHandler
           copy.removeAttributeValue(attrName, dn.toNormalizedString(),
                DistinguishedNameMatchingRule.getInstance());
         }
-        entryMap.put(mapDN, new ReadOnlyEntry(copy));
+        final ReadOnlyEntry newEntry = new ReadOnlyEntry(copy);
+        entryMap.put(mapDN, newEntry);
         indexDelete(e);
         indexAdd(copy);
+        publishChange(PersistentSearchChangeType.MODIFY, e,
+             newEntry);
       }
     }
   }
@@ -1812,7 +2320,8 @@ public final class InMemoryRequestHandler
                           final ExtendedRequestProtocolOp request,
                           final List<Control> controls)
   {
-    synchronized (entryMap)
+    writeLock.lock();
+    try
     {
       // Sleep before processing, if appropriate.
       sleepBeforeProcessing();
@@ -1893,6 +2402,10 @@ public final class InMemoryRequestHandler
              null, null, null));
       }
     }
+    finally
+    {
+      writeLock.unlock();
+    }
   }
 
 
@@ -1928,7 +2441,8 @@ public final class InMemoryRequestHandler
                                           final ModifyRequestProtocolOp request,
                                           final List<Control> controls)
   {
-    synchronized (entryMap)
+    writeLock.lock();
+    try
     {
       // Sleep before processing, if appropriate.
       sleepBeforeProcessing();
@@ -2171,25 +2685,32 @@ public final class InMemoryRequestHandler
 
 
       // Replace the entry in the map and return a success result.
+      final ReadOnlyEntry newEntry = new ReadOnlyEntry(modifiedEntry);
       if (dn.equals(subschemaSubentryDN))
       {
         final Schema newSchema = new Schema(modifiedEntry);
-        subschemaSubentryRef.set(new ReadOnlyEntry(modifiedEntry));
+        subschemaSubentryRef.set(newEntry);
         schemaRef.set(newSchema);
         entryValidatorRef.set(new EntryValidator(newSchema));
       }
       else
       {
-        entryMap.put(dn, new ReadOnlyEntry(modifiedEntry));
+        entryMap.put(dn, newEntry);
         indexDelete(entry);
         indexAdd(modifiedEntry);
       }
       addChangeLogEntry(request, authzDN);
+      publishChange(PersistentSearchChangeType.MODIFY, entry,
+           newEntry);
       return new LDAPMessage(messageID,
            new ModifyResponseProtocolOp(ResultCode.SUCCESS_INT_VALUE, null,
                 null, null),
            responseControls);
     }
+    finally
+    {
+      writeLock.unlock();
+    }
   }
 
 
@@ -2361,7 +2882,8 @@ public final class InMemoryRequestHandler
                           final ModifyDNRequestProtocolOp request,
                           final List<Control> controls)
   {
-    synchronized (entryMap)
+    writeLock.lock();
+    try
     {
       // Sleep before processing, if appropriate.
       sleepBeforeProcessing();
@@ -2753,45 +3275,55 @@ public final class InMemoryRequestHandler
       }
 
       // Remove the old entry and add the new one.
+      final ReadOnlyEntry newEntry = new ReadOnlyEntry(updatedEntry);
       entryMap.remove(dn);
-      entryMap.put(newDN, new ReadOnlyEntry(updatedEntry));
+      entryMap.put(newDN, newEntry);
       indexDelete(originalEntry);
       indexAdd(updatedEntry);
+      publishChange(PersistentSearchChangeType.MODIFY_DN,
+           originalEntry, newEntry);
 
       // If the target entry had any subordinates, then rename them as well.
       final RDN[] oldDNComps = dn.getRDNs();
       final RDN[] newDNComps = newDN.getRDNs();
-      final Set<DN> dnSet = new LinkedHashSet<DN>(entryMap.keySet());
-      for (final DN mapEntryDN : dnSet)
+      final ArrayList<DN> subordinateDNs = new ArrayList<DN>(10);
+      final Iterator<Map.Entry<DN,ReadOnlyEntry>> iterator =
+           entryMap.subtreeIterator(dn);
+      while (iterator.hasNext())
       {
-        if (mapEntryDN.isDescendantOf(dn, false))
-        {
-          final Entry o = entryMap.remove(mapEntryDN);
-          final Entry e = o.duplicate();
+        subordinateDNs.add(iterator.next().getKey());
+      }
 
-          final RDN[] oldMapEntryComps = mapEntryDN.getRDNs();
-          final int compsToSave = oldMapEntryComps.length - oldDNComps.length;
+      for (final DN mapEntryDN : subordinateDNs)
+      {
+        final Entry o = entryMap.remove(mapEntryDN);
+        final Entry e = o.duplicate();
 
-          final RDN[] newMapEntryComps =
-               new RDN[compsToSave + newDNComps.length];
-          System.arraycopy(oldMapEntryComps, 0, newMapEntryComps, 0,
-               compsToSave);
-          System.arraycopy(newDNComps, 0, newMapEntryComps, compsToSave,
-               newDNComps.length);
+        final RDN[] oldMapEntryComps = mapEntryDN.getRDNs();
+        final int compsToSave = oldMapEntryComps.length - oldDNComps.length;
 
-          final DN newMapEntryDN = new DN(newMapEntryComps);
-          e.setDN(newMapEntryDN);
-          if (generateOperationalAttributes)
-          {
-            e.setAttribute(new Attribute("entryDN",
-                 DistinguishedNameMatchingRule.getInstance(),
-                 newMapEntryDN.toNormalizedString()));
-          }
-          entryMap.put(newMapEntryDN, new ReadOnlyEntry(e));
-          indexDelete(o);
-          indexAdd(e);
-          handleReferentialIntegrityModifyDN(mapEntryDN, newMapEntryDN);
+        final RDN[] newMapEntryComps =
+             new RDN[compsToSave + newDNComps.length];
+        System.arraycopy(oldMapEntryComps, 0, newMapEntryComps, 0,
+             compsToSave);
+        System.arraycopy(newDNComps, 0, newMapEntryComps, compsToSave,
+             newDNComps.length);
+
+        final DN newMapEntryDN = new DN(newMapEntryComps);
+        e.setDN(newMapEntryDN);
+        if (generateOperationalAttributes)
+        {
+          e.setAttribute(new Attribute("entryDN",
+               DistinguishedNameMatchingRule.getInstance(),
+               newMapEntryDN.toNormalizedString()));
         }
+        final ReadOnlyEntry newMapEntry = new ReadOnlyEntry(e);
+        entryMap.put(newMapEntryDN, newMapEntry);
+        indexDelete(o);
+        indexAdd(e);
+        publishChange(PersistentSearchChangeType.MODIFY_DN, o,
+             newMapEntry);
+        handleReferentialIntegrityModifyDN(mapEntryDN, newMapEntryDN);
       }
 
       addChangeLogEntry(request, authzDN);
@@ -2801,6 +3333,10 @@ public final class InMemoryRequestHandler
                 null, null),
            responseControls);
     }
+    finally
+    {
+      writeLock.unlock();
+    }
   }
 
 
@@ -2850,9 +3386,12 @@ public final class InMemoryRequestHandler
             copy.addAttribute(attrName, newDN.toString());
           }
         }
-        entryMap.put(mapDN, new ReadOnlyEntry(copy));
+        final ReadOnlyEntry newEntry = new ReadOnlyEntry(copy);
+        entryMap.put(mapDN, newEntry);
         indexDelete(e);
         indexAdd(copy);
+        publishChange(PersistentSearchChangeType.MODIFY, e,
+             newEntry);
       }
     }
   }
@@ -2891,99 +3430,501 @@ public final class InMemoryRequestHandler
                                           final SearchRequestProtocolOp request,
                                           final List<Control> controls)
   {
-    synchronized (entryMap)
+    // Persistent search and content synchronization requests may remain
+    // active after the initial search has completed, so they need to be
+    // processed differently.
+    if (connection != null)
     {
-      final List<SearchResultEntry> entryList =
-           new ArrayList<SearchResultEntry>(entryMap.size());
-      final List<SearchResultReference> referenceList =
-           new ArrayList<SearchResultReference>(entryMap.size());
-
-      final LDAPMessage returnMessage = processSearchRequest(messageID, request,
-           controls, entryList, referenceList);
-
-      for (final SearchResultEntry e : entryList)
+      for (final Control c : controls)
       {
-        try
-        {
-          connection.sendSearchResultEntry(messageID, e, e.getControls());
-        }
-        catch (final LDAPException le)
+        final String oid = c.getOID();
+        if (oid.equals(PersistentSearchRequestControl.
+                 PERSISTENT_SEARCH_REQUEST_OID) ||
+            oid.equals(ContentSyncRequestControl.SYNC_REQUEST_OID))
         {
-          Debug.debugException(le);
-          return new LDAPMessage(messageID,
-               new SearchResultDoneProtocolOp(le.getResultCode().intValue(),
-                    le.getMatchedDN(), le.getDiagnosticMessage(),
-                    StaticUtils.toList(le.getReferralURLs())),
-               le.getResponseControls());
+          return processChangeNotificationSearch(messageID, request, controls);
         }
       }
+    }
 
-      for (final SearchResultReference r : referenceList)
+    final List<SearchResultEntry> entryList =
+         new ArrayList<SearchResultEntry>(10);
+    final List<SearchResultReference> referenceList =
+         new ArrayList<SearchResultReference>(10);
+
+    final LDAPMessage returnMessage = processSearchRequest(messageID, request,
+         controls, streamSearchResults, entryList, referenceList);
+
+    for (final SearchResultEntry e : entryList)
+    {
+      try
       {
-        try
-        {
-          connection.sendSearchResultReference(messageID,
-               new SearchResultReferenceProtocolOp(
-                    StaticUtils.toList(r.getReferralURLs())),
-               r.getControls());
-        }
-        catch (final LDAPException le)
-        {
-          Debug.debugException(le);
-          return new LDAPMessage(messageID,
-               new SearchResultDoneProtocolOp(le.getResultCode().intValue(),
-                    le.getMatchedDN(), le.getDiagnosticMessage(),
-                    StaticUtils.toList(le.getReferralURLs())),
-               le.getResponseControls());
-        }
+        connection.sendSearchResultEntry(messageID, e, e.getControls());
+      }
+      catch (final LDAPException le)
+      {
+        Debug.debugException(le);
+        return new LDAPMessage(messageID,
+             new SearchResultDoneProtocolOp(le.getResultCode().intValue(),
+                  le.getMatchedDN(), le.getDiagnosticMessage(),
+                  StaticUtils.toList(le.getReferralURLs())),
+             le.getResponseControls());
       }
+    }
 
-      return returnMessage;
+    for (final SearchResultReference r : referenceList)
+    {
+      try
+      {
+        connection.sendSearchResultReference(messageID,
+             new SearchResultReferenceProtocolOp(
+                  StaticUtils.toList(r.getReferralURLs())),
+             r.getControls());
+      }
+      catch (final LDAPException le)
+      {
+        Debug.debugException(le);
+        return new LDAPMessage(messageID,
+             new SearchResultDoneProtocolOp(le.getResultCode().intValue(),
+                  le.getMatchedDN(), le.getDiagnosticMessage(),
+                  StaticUtils.toList(le.getReferralURLs())),
+             le.getResponseControls());
+      }
     }
+
+    return returnMessage;
   }
 
 
 
   /**
-   * Attempts to process the provided search request.  The attempt will fail
-   * if any of the following conditions is true:
-   * <UL>
-   *   <LI>There is a problem with any of the request controls.</LI>
-   *   <LI>The modify DN request contains a malformed target DN, new RDN, or
-   *       new superior DN.</LI>
-   *   <LI>The new DN of the entry would conflict with the DN of an existing
-   *       entry.</LI>
-   *   <LI>The new DN of the entry would exist outside the set of defined
-   *       base DNs.</LI>
-   *   <LI>The new DN of the entry is not a defined base DN and does not exist
-   *       immediately below an existing entry.</LI>
-   * </UL>
+   * Processes a search request that includes the persistent search or content
+   * synchronization request control.  Any initial content will be identified
+   * while holding a lock that prevents write operations, and if the request
+   * is to remain active then it will be registered for change notification
+   * before that lock is released, so that no change will be missed or
+   * included twice.  Once the initial content has been sent, changes that
+   * match the search criteria will be sent to the client by a separate thread
+   * until the request is abandoned, the connection is closed, or the client
+   * falls too far behind.
    *
-   * @param  messageID      The message ID of the LDAP message containing the
-   *                        search request.
-   * @param  request        The search request that was included in the LDAP
-   *                        message that was received.
-   * @param  controls       The set of controls included in the LDAP message.
-   *                        It may be empty if there were no controls, but will
-   *                        not be {@code null}.
-   * @param  entryList      A list to which to add search result entries
-   *                        intended for return to the client.  It must not be
-   *                        {@code null}.
-   * @param  referenceList  A list to which to add search result references
-   *                        intended for return to the client.  It must not be
-   *                        {@code null}.
+   * @param  messageID  The message ID of the LDAP message containing the search
+   *                    request.
+   * @param  request    The search request that was included in the LDAP message
+   *                    that was received.
+   * @param  controls   The set of controls included in the LDAP message.
    *
    * @return  The {@link LDAPMessage} containing the response to send to the
-   *          client.  The protocol op in the {@code LDAPMessage} must be an
-   *          {@code SearchResultDoneProtocolOp}.
+   *          client, or {@code null} if the request remains active and the
+   *          response will be sent later (if at all).
    */
-  LDAPMessage processSearchRequest(final int messageID,
+  private LDAPMessage processChangeNotificationSearch(final int messageID,
+                           final SearchRequestProtocolOp request,
+                           final List<Control> controls)
+  {
+    final Map<String,Control> controlMap;
+    final DN baseDN;
+    try
+    {
+      controlMap = RequestControlPreProcessor.processControls(
+           LDAPMessage.PROTOCOL_OP_TYPE_SEARCH_REQUEST, controls);
+      baseDN = new DN(request.getBaseDN(), schemaRef.get());
+    }
+    catch (final LDAPException le)
+    {
+      Debug.debugException(le);
+      return new LDAPMessage(messageID, new SearchResultDoneProtocolOp(
+           le.getResultCode().intValue(), null, le.getMessage(), null));
+    }
+
+    final PersistentSearchRequestControl psearchControl =
+         (PersistentSearchRequestControl) controlMap.get(
+              PersistentSearchRequestControl.PERSISTENT_SEARCH_REQUEST_OID);
+    final ContentSyncRequestControl syncControl =
+         (ContentSyncRequestControl) controlMap.get(
+              ContentSyncRequestControl.SYNC_REQUEST_OID);
+
+    // The remaining controls will be used for the initial search.
+    final ArrayList<Control> searchControls =
+         new ArrayList<Control>(controls.size());
+    for (final Control c : controls)
+    {
+      final String oid = c.getOID();
+      if (! (oid.equals(PersistentSearchRequestControl.
+                  PERSISTENT_SEARCH_REQUEST_OID) ||
+             oid.equals(ContentSyncRequestControl.SYNC_REQUEST_OID)))
+      {
+        searchControls.add(c);
+      }
+    }
+
+    // Determine whether the initial content should be returned.  A content
+    // synchronization request with a cookie will only be accepted if no
+    // changes have been made since that cookie was issued, since the server
+    // does not retain enough history to determine what has changed.
+    final boolean returnInitialContent;
+    final boolean persist;
+    if (psearchControl != null)
+    {
+      returnInitialContent = (! psearchControl.changesOnly());
+      persist = true;
+    }
+    else
+    {
+      returnInitialContent = (syncControl.getCookie() == null);
+      persist = (syncControl.getMode() ==
+           ContentSyncRequestMode.REFRESH_AND_PERSIST);
+    }
+
+    final ChangeNotificationSubscriber subscriber;
+    if (persist)
+    {
+      subscriber = new ChangeNotificationSubscriber(messageID, baseDN,
+           request, controlMap, psearchControl);
+    }
+    else
+    {
+      subscriber = null;
+    }
+
+    final List<SearchResultEntry> entryList =
+         new ArrayList<SearchResultEntry>(10);
+    final List<SearchResultReference> referenceList =
+         new ArrayList<SearchResultReference>(10);
+    final List<UUID> entryUUIDs = new ArrayList<UUID>(10);
+    final ASN1OctetString cookie;
+    final LDAPMessage searchResult;
+    final boolean successful;
+    readLock.lock();
+    try
+    {
+      cookie = changeNotifier.getCookie();
+      if ((syncControl != null) && (syncControl.getCookie() != null) &&
+          (! syncControl.getCookie().stringValue().equals(
+               cookie.stringValue())))
+      {
+        return new LDAPMessage(messageID, new SearchResultDoneProtocolOp(
+             ResultCode.E_SYNC_REFRESH_REQUIRED_INT_VALUE, null,
+             ERR_MEM_HANDLER_SYNC_REFRESH_REQUIRED.get(), null));
+      }
+
+      // If the initial content should not be returned, then a base-level
+      // search is still used to ensure that the request is acceptable.
+      if (returnInitialContent)
+      {
+        searchResult = processSearchRequest(messageID, request,
+             searchControls, false, entryList, referenceList);
+      }
+      else
+      {
+        final SearchRequestProtocolOp baseRequest =
+             new SearchRequestProtocolOp(request.getBaseDN(),
+                  SearchScope.BASE, request.getDerefPolicy(), 0, 0, true,
+                  Filter.createPresenceFilter("objectClass"),
+                  Arrays.asList("1.1"));
+        searchResult = processSearchRequest(messageID, baseRequest,
+             searchControls, false, new ArrayList<SearchResultEntry>(1),
+             new ArrayList<SearchResultReference>(1));
+      }
+
+      if (syncControl != null)
+      {
+        for (final SearchResultEntry e : entryList)
+        {
+          Entry entry = null;
+          try
+          {
+            entry = entryMap.get(e.getParsedDN());
+          }
+          catch (final LDAPException le)
+          {
+            Debug.debugException(le);
+          }
+
+          if (entry == null)
+          {
+            entryUUIDs.add(getEntryUUID(e));
+          }
+          else
+          {
+            entryUUIDs.add(getEntryUUID(entry));
+          }
+        }
+      }
+
+      successful = (searchResult.getSearchResultDoneProtocolOp().
+           getResultCode() == ResultCode.SUCCESS_INT_VALUE);
+      if (successful && (subscriber != null))
+      {
+        changeNotifier.register(subscriber);
+        changeNotificationSubscribers.put(messageID, subscriber);
+      }
+    }
+    finally
+    {
+      readLock.unlock();
+    }
+
+    if (! successful)
+    {
+      return sendChangeNotificationSearchResults(messageID, entryList,
+           entryUUIDs, referenceList, searchResult);
+    }
+
+    final LDAPMessage errorMessage = sendChangeNotificationSearchResults(
+         messageID, entryList, entryUUIDs, referenceList, null);
+    if (errorMessage != null)
+    {
+      if (subscriber != null)
+      {
+        changeNotificationSubscribers.remove(messageID);
+        subscriber.cancel();
+      }
+      return errorMessage;
+    }
+
+    // For a content synchronization request, indicate that the refresh phase
+    // is complete.  If the client provided a cookie, then there were no
+    // changes and it doesn't need to remove any of its entries.
+    if (syncControl != null)
+    {
+      if (! persist)
+      {
+        return new LDAPMessage(messageID,
+             searchResult.getSearchResultDoneProtocolOp(),
+             new ContentSyncDoneControl(cookie, (! returnInitialContent)));
+      }
+
+      final ContentSyncInfoIntermediateResponse ir;
+      if (returnInitialContent)
+      {
+        ir = ContentSyncInfoIntermediateResponse.createRefreshPresentResponse(
+             cookie, true);
+      }
+      else
+      {
+        ir = ContentSyncInfoIntermediateResponse.createRefreshDeleteResponse(
+             cookie, true);
+      }
+
+      try
+      {
+        connection.sendIntermediateResponse(messageID,
+             new IntermediateResponseProtocolOp(ir));
+      }
+      catch (final LDAPException le)
+      {
+        Debug.debugException(le);
+        changeNotificationSubscribers.remove(messageID);
+        subscriber.cancel();
+        return new LDAPMessage(messageID,
+             new SearchResultDoneProtocolOp(le.getResultCode().intValue(),
+                  le.getMatchedDN(), le.getDiagnosticMessage(),
+                  StaticUtils.toList(le.getReferralURLs())),
+             le.getResponseControls());
+      }
+    }
+
+    subscriber.start();
+    return null;
+  }
+
+
+
+  /**
+   * Sends the provided initial search results for a persistent search or
+   * content synchronization request to the client.
+   *
+   * @param  messageID      The message ID for the search request.
+   * @param  entryList      The search result entries to send.
+   * @param  entryUUIDs     The entryUUID values for the search result entries,
+   *                        in the same order, if they should include content
+   *                        synchronization state controls.  It may be empty
+   *                        if the entries should not include those controls.
+   * @param  referenceList  The search result references to send.
+   * @param  doneMessage    The search result done message to return after
+   *                        the entries and references have been sent.  It may
+   *                        be {@code null} if there is none yet.
+   *
+   * @return  A search result done message for the error that occurred if a
+   *          problem was encountered while sending the results, or the
+   *          provided done message otherwise.
+   */
+  private LDAPMessage sendChangeNotificationSearchResults(final int messageID,
+               final List<SearchResultEntry> entryList,
+               final List<UUID> entryUUIDs,
+               final List<SearchResultReference> referenceList,
+               final LDAPMessage doneMessage)
+  {
+    try
+    {
+      for (int i=0; i < entryList.size(); i++)
+      {
+        final SearchResultEntry e = entryList.get(i);
+        if (entryUUIDs.isEmpty())
+        {
+          connection.sendSearchResultEntry(messageID, e, e.getControls());
+        }
+        else
+        {
+          final Control[] entryControls =
+               new Control[e.getControls().length + 1];
+          System.arraycopy(e.getControls(), 0, entryControls, 0,
+               e.getControls().length);
+          entryControls[entryControls.length - 1] =
+               new ContentSyncStateControl(ContentSyncState.ADD,
+                    entryUUIDs.get(i), null);
+          connection.sendSearchResultEntry(messageID, e, entryControls);
+        }
+      }
+
+      for (final SearchResultReference r : referenceList)
+      {
+        connection.sendSearchResultReference(messageID,
+             new SearchResultReferenceProtocolOp(
+                  StaticUtils.toList(r.getReferralURLs())),
+             r.getControls());
+      }
+    }
+    catch (final LDAPException le)
+    {
+      Debug.debugException(le);
+      return new LDAPMessage(messageID,
+           new SearchResultDoneProtocolOp(le.getResultCode().intValue(),
+                le.getMatchedDN(), le.getDiagnosticMessage(),
+                StaticUtils.toList(le.getReferralURLs())),
+           le.getResponseControls());
+    }
+
+    return doneMessage;
+  }
+
+
+
+  /**
+   * Retrieves the UUID that should be used to identify the provided entry in
+   * content synchronization state controls.  It will be taken from the
+   * entryUUID attribute if possible, or generated from the normalized DN of
+   * the entry otherwise.
+   *
+   * @param  entry  The entry for which to obtain the UUID.
+   *
+   * @return  The UUID that should be used to identify the provided entry.
+   */
+  private static UUID getEntryUUID(final Entry entry)
+  {
+    final String uuidString = entry.getAttributeValue("entryUUID");
+    if (uuidString != null)
+    {
+      try
+      {
+        return UUID.fromString(uuidString);
+      }
+      catch (final Exception e)
+      {
+        Debug.debugException(e);
+      }
+    }
+
+    try
+    {
+      return UUID.nameUUIDFromBytes(StaticUtils.getBytes(
+           entry.getParsedDN().toNormalizedString()));
+    }
+    catch (final LDAPException le)
+    {
+      Debug.debugException(le);
+      return UUID.nameUUIDFromBytes(StaticUtils.getBytes(entry.getDN()));
+    }
+  }
+
+
+
+  /**
+   * Attempts to process the provided search request.  The attempt will fail
+   * if any of the following conditions is true:
+   * <UL>
+   *   <LI>There is a problem with any of the request controls.</LI>
+   *   <LI>The modify DN request contains a malformed target DN, new RDN, or
+   *       new superior DN.</LI>
+   *   <LI>The new DN of the entry would conflict with the DN of an existing
+   *       entry.</LI>
+   *   <LI>The new DN of the entry would exist outside the set of defined
+   *       base DNs.</LI>
+   *   <LI>The new DN of the entry is not a defined base DN and does not exist
+   *       immediately below an existing entry.</LI>
+   * </UL>
+   *
+   * @param  messageID      The message ID of the LDAP message containing the
+   *                        search request.
+   * @param  request        The search request that was included in the LDAP
+   *                        message that was received.
+   * @param  controls       The set of controls included in the LDAP message.
+   *                        It may be empty if there were no controls, but will
+   *                        not be {@code null}.
+   * @param  entryList      A list to which to add search result entries
+   *                        intended for return to the client.  It must not be
+   *                        {@code null}.
+   * @param  referenceList  A list to which to add search result references
+   *                        intended for return to the client.  It must not be
+   *                        {@code null}.
+   *
+   * @return  The {@link LDAPMessage} containing the response to send to the
+   *          client.  The protocol op in the {@code LDAPMessage} must be an
+   *          {@code SearchResultDoneProtocolOp}.
+   */
+  LDAPMessage processSearchRequest(final int messageID,
                    final SearchRequestProtocolOp request,
                    final List<Control> controls,
                    final List<SearchResultEntry> entryList,
                    final List<SearchResultReference> referenceList)
   {
-    synchronized (entryMap)
+    return processSearchRequest(messageID, request, controls, false, entryList,
+         referenceList);
+  }
+
+
+
+  /**
+   * Attempts to process the provided search request, optionally sending
+   * matching entries to the client as soon as they are identified rather than
+   * adding them to the provided entry list.
+   *
+   * @param  messageID      The message ID of the LDAP message containing the
+   *                        search request.
+   * @param  request        The search request that was included in the LDAP
+   *                        message that was received.
+   * @param  controls       The set of controls included in the LDAP message.
+   *                        It may be empty if there were no controls, but will
+   *                        not be {@code null}.
+   * @param  streamResults  Indicates whether matching entries should be sent
+   *                        to the client as soon as they are identified.  This
+   *                        will only be done if there is a client connection
+   *                        and the request does not include any control that
+   *                        requires all of the matching entries to be
+   *                        identified before any can be returned.  Otherwise,
+   *                        they will be added to the entry list.
+   * @param  entryList      A list to which to add search result entries
+   *                        intended for return to the client.  It must not be
+   *                        {@code null}.
+   * @param  referenceList  A list to which to add search result references
+   *                        intended for return to the client.  It must not be
+   *                        {@code null}.
+   *
+   * @return  The {@link LDAPMessage} containing the response to send to the
+   *          client.  The protocol op in the {@code LDAPMessage} must be an
+   *          {@code SearchResultDoneProtocolOp}.
+   */
+  private LDAPMessage processSearchRequest(final int messageID,
+                           final SearchRequestProtocolOp request,
+                           final List<Control> controls,
+                           final boolean streamResults,
+                           final List<SearchResultEntry> entryList,
+                           final List<SearchResultReference> referenceList)
+  {
+    readLock.lock();
+    boolean locked = true;
+    try
     {
       // Sleep before processing, if appropriate.
       final long processingStartTime = System.currentTimeMillis();
@@ -3026,6 +3967,20 @@ public final class InMemoryRequestHandler
       final ArrayList<Control> responseControls = new ArrayList<Control>(1);
 
 
+      // Persistent search and content synchronization requests can only be
+      // processed for a client connection, and will have been handled before
+      // getting here.
+      if (controlMap.containsKey(
+               PersistentSearchRequestControl.PERSISTENT_SEARCH_REQUEST_OID) ||
+          controlMap.containsKey(ContentSyncRequestControl.SYNC_REQUEST_OID))
+      {
+        return new LDAPMessage(messageID, new SearchResultDoneProtocolOp(
+             ResultCode.UNWILLING_TO_PERFORM_INT_VALUE, null,
+             ERR_MEM_HANDLER_CHANGE_NOTIFICATION_REQUIRES_CONNECTION.get(),
+             null));
+      }
+
+
       // If this operation type is not allowed, then reject it.
       final boolean isInternalOp =
            controlMap.containsKey(OID_INTERNAL_OPERATION_REQUEST_CONTROL);
@@ -3123,61 +4078,196 @@ public final class InMemoryRequestHandler
              le.getResultCode().intValue(), null, le.getMessage(), null));
       }
 
-      // Create a temporary list to hold all of the entries to be returned.
-      // These entries will not have been pared down based on the requested
-      // attributes.
-      final List<Entry> fullEntryList = new ArrayList<Entry>(entryMap.size());
-
-findEntriesAndRefs:
+      // If the request included the simple paged results control with a cookie
+      // that references the retained results of an earlier request for the
+      // same search, then the requested page can be taken from those results
+      // rather than by processing the search again.  The cookie will be an
+      // encoded sequence of the offset within the result list at which to
+      // start the next page and the ID of the retained results, although a
+      // cookie that only holds the offset will also be accepted.
+      final SimplePagedResultsControl pagedResultsControl =
+           (SimplePagedResultsControl)
+                controlMap.get(SimplePagedResultsControl.PAGED_RESULTS_OID);
+      int pagedResultsOffset = 0;
+      int pagedResultsCursorID = -1;
+      InMemoryDirectoryServerPagedResultsCursors.Cursor pagedResultsCursor =
+           null;
+      String pagedResultsRequestKey = null;
+      if (pagedResultsControl != null)
       {
-        // Check the scope.  If it is a base-level search, then we only need to
-        // examine the base entry.  Otherwise, we'll have to scan the entire
-        // entry map.
-        final Filter filter = request.getFilter();
-        final SearchScope scope = request.getScope();
-        final boolean includeSubEntries = ((scope == SearchScope.BASE) ||
-             controlMap.containsKey(
-                  SubentriesRequestControl.SUBENTRIES_REQUEST_OID));
-        if (scope == SearchScope.BASE)
+        pagedResultsRequestKey =
+             getPagedResultsRequestKey(baseDN, request, controlMap);
+
+        final ASN1OctetString cookie = pagedResultsControl.getCookie();
+        if ((cookie != null) && (cookie.getValueLength() > 0))
         {
           try
           {
-            if (filter.matchesEntry(baseEntry, schema))
+            final ASN1Element cookieElement =
+                 ASN1Element.decode(cookie.getValue());
+            if (cookieElement.getType() ==
+                 ASN1Constants.UNIVERSAL_INTEGER_TYPE)
+            {
+              pagedResultsOffset =
+                   ASN1Integer.decodeAsInteger(cookieElement).intValue();
+            }
+            else
             {
-              processSearchEntry(baseEntry, includeSubEntries, includeChangeLog,
-                   hasManageDsaIT, fullEntryList, referenceList);
+              final ASN1Element[] cookieElements =
+                   ASN1Sequence.decodeAsSequence(cookieElement).elements();
+              pagedResultsOffset =
+                   ASN1Integer.decodeAsInteger(cookieElements[0]).intValue();
+              pagedResultsCursorID =
+                   ASN1Integer.decodeAsInteger(cookieElements[1]).intValue();
             }
           }
           catch (final Exception e)
           {
             Debug.debugException(e);
+            return new LDAPMessage(messageID,
+                 new SearchResultDoneProtocolOp(
+                      ResultCode.PROTOCOL_ERROR_INT_VALUE, null,
+                      ERR_MEM_HANDLER_MALFORMED_PAGED_RESULTS_COOKIE.get(),
+                      null),
+                 responseControls);
           }
 
-          break findEntriesAndRefs;
+          if (pagedResultsCursorID >= 0)
+          {
+            pagedResultsCursor = pagedResultsCursors.get(pagedResultsCursorID,
+                 pagedResultsRequestKey);
+          }
         }
+      }
 
-        // If the search uses a single-level scope and the base DN is the root
-        // DSE, then we will only examine the defined base entries for the data
-        // set.
-        if ((scope == SearchScope.ONE) && baseDN.isNullDN())
-        {
-          for (final DN dn : baseDNs)
-          {
-            final Entry e = entryMap.get(dn);
+      // Process the set of requested attributes so that we can pare down the
+      // entries.
+      final AtomicBoolean allUserAttrs = new AtomicBoolean(false);
+      final AtomicBoolean allOpAttrs = new AtomicBoolean(false);
+      final Map<String,List<List<String>>> returnAttrs =
+           processRequestedAttributes(request.getAttributes(), allUserAttrs,
+                allOpAttrs);
+
+      final int sizeLimit;
+      if (request.getSizeLimit() > 0)
+      {
+        sizeLimit = Math.min(request.getSizeLimit(), maxSizeLimit);
+      }
+      else
+      {
+        sizeLimit = maxSizeLimit;
+      }
+
+      // If appropriate, create a sender that will be used to send matching
+      // entries to the client as soon as they are identified.  This can't be
+      // done if the request includes a control that requires the full set of
+      // matching entries before any of them can be returned.
+      final SearchEntrySender searchEntrySender;
+      if (streamResults && (connection != null) &&
+          (! controlMap.containsKey(
+               ServerSideSortRequestControl.SERVER_SIDE_SORT_REQUEST_OID)) &&
+          (! controlMap.containsKey(
+               SimplePagedResultsControl.PAGED_RESULTS_OID)) &&
+          (! controlMap.containsKey(
+               VirtualListViewRequestControl.VIRTUAL_LIST_VIEW_REQUEST_OID)))
+      {
+        searchEntrySender = new SearchEntrySender(messageID, sizeLimit,
+             allUserAttrs.get(), allOpAttrs.get(), returnAttrs,
+             request.typesOnly(), schema);
+      }
+      else
+      {
+        searchEntrySender = null;
+      }
+
+      // Create a temporary list to hold all of the entries to be returned.
+      // These entries will not have been pared down based on the requested
+      // attributes.  If the entries are to be sent to the client as they are
+      // identified, then this list will not be used.
+      final List<Entry> fullEntryList = new ArrayList<Entry>(10);
+
+      // Get a read-only view of the entries as they exist right now, along with
+      // any candidate list that can be obtained from the indexes.  For a
+      // single-level search, the children of the base entry may also be used as
+      // a candidate list if that is smaller.  Once that has been done, the rest
+      // of the search can be processed against that view without holding the
+      // lock, so that a search that needs to examine a large number of entries
+      // will not block write operations.
+      final Filter filter = request.getFilter();
+      final SearchScope scope = request.getScope();
+      final InMemoryDirectoryServerEntryMap entries =
+           entryMap.getReadOnlyView();
+      final List<DN> candidateDNs;
+      if ((scope == SearchScope.BASE) ||
+          ((scope == SearchScope.ONE) && baseDN.isNullDN()) ||
+          (pagedResultsCursor != null))
+      {
+        candidateDNs = null;
+      }
+      else
+      {
+        Set<DN> dnSet = filterPlanner.getCandidateDNs(filter, entryMap.size(),
+             null);
+        if (scope == SearchScope.ONE)
+        {
+          final Set<DN> childDNs = entryMap.getChildDNs(baseDN);
+          if ((dnSet == null) || (childDNs.size() < dnSet.size()))
+          {
+            dnSet = childDNs;
+          }
+        }
+
+        if (dnSet == null)
+        {
+          candidateDNs = null;
+        }
+        else
+        {
+          candidateDNs = new ArrayList<DN>(dnSet);
+        }
+      }
+
+      readLock.unlock();
+      locked = false;
+
+      // The entries that are in scope will be checked against the filter by
+      // the evaluator, which may do so in parallel for large searches.
+      final boolean includeSubEntries = ((scope == SearchScope.BASE) ||
+           controlMap.containsKey(
+                SubentriesRequestControl.SUBENTRIES_REQUEST_OID));
+      final SearchEvaluator evaluator = new SearchEvaluator(filter, schema,
+           includeSubEntries, includeChangeLog, hasManageDsaIT,
+           searchEntrySender, fullEntryList, referenceList);
+
+findEntriesAndRefs:
+      {
+        // If the results are to be taken from a paged results cursor, then
+        // there's no need to examine any entries.
+        if (pagedResultsCursor != null)
+        {
+          break findEntriesAndRefs;
+        }
+
+        // Check the scope.  If it is a base-level search, then we only need to
+        // examine the base entry.  Otherwise, we'll have to scan the entire
+        // entry map.
+        if (scope == SearchScope.BASE)
+        {
+          evaluator.evaluate(baseEntry);
+          break findEntriesAndRefs;
+        }
+
+        // If the search uses a single-level scope and the base DN is the root
+        // DSE, then we will only examine the defined base entries for the data
+        // set.
+        if ((scope == SearchScope.ONE) && baseDN.isNullDN())
+        {
+          for (final DN dn : baseDNs)
+          {
+            final Entry e = entries.get(dn);
             if (e != null)
             {
-              try
-              {
-                if (filter.matchesEntry(e, schema))
-                {
-                  processSearchEntry(e, includeSubEntries, includeChangeLog,
-                       hasManageDsaIT, fullEntryList, referenceList);
-                }
-              }
-              catch (final Exception ex)
-              {
-                Debug.debugException(ex);
-              }
+              evaluator.evaluate(e);
             }
           }
 
@@ -3185,24 +4275,24 @@ findEntriesAndRefs:
         }
 
 
-        // Try to use indexes to process the request.  If we can't use any
-        // indexes to get a candidate list, then just iterate over all the
-        // entries.  It's not necessary to consider the root DSE for non-base
-        // scopes.
-        final Set<DN> candidateDNs = indexSearch(filter);
+        // Use the candidate list obtained from the indexes, if available.  If
+        // we couldn't use any indexes to get a candidate list, then just
+        // iterate over all the entries in the subtree below the base entry.
+        // It's not necessary to consider the root DSE for non-base scopes.
+        // If the evaluator has stopped because no more entries can be sent to
+        // the client, then there's no need to examine any more entries.
         if (candidateDNs == null)
         {
-          for (final Map.Entry<DN,ReadOnlyEntry> me : entryMap.entrySet())
+          final Iterator<Map.Entry<DN,ReadOnlyEntry>> iterator =
+               entries.subtreeIterator(baseDN);
+          while (iterator.hasNext() && (! evaluator.isStopped()))
           {
-            final DN dn = me.getKey();
-            final Entry entry = me.getValue();
+            final Map.Entry<DN,ReadOnlyEntry> me = iterator.next();
             try
             {
-              if (dn.matchesBaseAndScope(baseDN, scope) &&
-                   filter.matchesEntry(entry, schema))
+              if (me.getKey().matchesBaseAndScope(baseDN, scope))
               {
-                processSearchEntry(entry, includeSubEntries, includeChangeLog,
-                     hasManageDsaIT, fullEntryList, referenceList);
+                evaluator.evaluate(me.getValue());
               }
             }
             catch (final Exception e)
@@ -3215,18 +4305,20 @@ findEntriesAndRefs:
         {
           for (final DN dn : candidateDNs)
           {
-            try
+            if (evaluator.isStopped())
             {
-              if (! dn.matchesBaseAndScope(baseDN, scope))
-              {
-                continue;
-              }
+              break;
+            }
 
-              final Entry entry = entryMap.get(dn);
-              if (filter.matchesEntry(entry, schema))
+            try
+            {
+              if (dn.matchesBaseAndScope(baseDN, scope))
               {
-                processSearchEntry(entry, includeSubEntries, includeChangeLog,
-                     hasManageDsaIT, fullEntryList, referenceList);
+                final Entry entry = entries.get(dn);
+                if (entry != null)
+                {
+                  evaluator.evaluate(entry);
+                }
               }
             }
             catch (final Exception e)
@@ -3236,6 +4328,33 @@ findEntriesAndRefs:
           }
         }
       }
+      evaluator.complete();
+
+
+      // If the matching entries were sent to the client as they were
+      // identified, then see whether that was interrupted by a problem or by
+      // reaching the size limit.
+      if (searchEntrySender != null)
+      {
+        final LDAPException le = searchEntrySender.getSendException();
+        if (le != null)
+        {
+          return new LDAPMessage(messageID,
+               new SearchResultDoneProtocolOp(le.getResultCode().intValue(),
+                    le.getMatchedDN(), le.getDiagnosticMessage(),
+                    StaticUtils.toList(le.getReferralURLs())),
+               le.getResponseControls());
+        }
+
+        if (searchEntrySender.sizeLimitExceeded())
+        {
+          return new LDAPMessage(messageID,
+               new SearchResultDoneProtocolOp(
+                    ResultCode.SIZE_LIMIT_EXCEEDED_INT_VALUE, null,
+                    ERR_MEM_HANDLER_SEARCH_SIZE_LIMIT_EXCEEDED.get(), null),
+               responseControls);
+        }
+      }
 
 
       // If the request included the server-side sort request control, then sort
@@ -3257,85 +4376,68 @@ findEntriesAndRefs:
 
 
       // If the request included the simple paged results control, then handle
-      // it.
-      final SimplePagedResultsControl pagedResultsControl =
-           (SimplePagedResultsControl)
-                controlMap.get(SimplePagedResultsControl.PAGED_RESULTS_OID);
+      // it.  If there are more entries after the requested page, then retain
+      // the full set of results so that the next page can be returned without
+      // processing the search again.  A request with a page size of zero and a
+      // non-empty cookie indicates that the client is abandoning the paged
+      // search, so any retained results should be discarded.
       if (pagedResultsControl != null)
       {
-        final int totalSize = fullEntryList.size();
-        final int pageSize = pagedResultsControl.getSize();
-        final ASN1OctetString cookie = pagedResultsControl.getCookie();
-
-        final int offset;
-        if ((cookie == null) || (cookie.getValueLength() == 0))
+        final List<Entry> allEntries;
+        if (pagedResultsCursor == null)
         {
-          // This is the first request in the series, so start at the beginning
-          // of the list.
-          offset = 0;
+          allEntries = fullEntryList;
         }
         else
         {
-          // The cookie value will simply be an integer representation of the
-          // offset within the result list at which to start the next batch.
-          try
-          {
-            final ASN1Integer offsetInteger =
-                 ASN1Integer.decodeAsInteger(cookie.getValue());
-            offset = offsetInteger.intValue();
-          }
-          catch (final Exception e)
-          {
-            Debug.debugException(e);
-            return new LDAPMessage(messageID,
-                 new SearchResultDoneProtocolOp(
-                      ResultCode.PROTOCOL_ERROR_INT_VALUE, null,
-                      ERR_MEM_HANDLER_MALFORMED_PAGED_RESULTS_COOKIE.get(),
-                      null),
-                 responseControls);
-          }
+          allEntries = pagedResultsCursor.getEntries();
+          referenceList.addAll(pagedResultsCursor.getReferences());
         }
 
-        // Create an iterator that will be used to remove entries from the
-        // result set that are outside of the requested page of results.
-        int pos = 0;
-        final Iterator<Entry> iterator = fullEntryList.iterator();
+        final int totalSize = allEntries.size();
+        final int pageSize = Math.max(0, pagedResultsControl.getSize());
+        final int start = Math.min(Math.max(0, pagedResultsOffset), totalSize);
+        final int end = (int) Math.min((((long) start) + pageSize), totalSize);
+        final boolean abandon = (pageSize == 0) &&
+             ((pagedResultsOffset > 0) || (pagedResultsCursorID >= 0));
 
-        // First, remove entries at the beginning of the list until we hit the
-        // offset.
-        while (iterator.hasNext() && (pos < offset))
+        if ((end < totalSize) && (! abandon))
         {
-          iterator.next();
-          iterator.remove();
-          pos++;
-        }
+          if (pagedResultsCursor == null)
+          {
+            pagedResultsCursorID = pagedResultsCursors.register(
+                 pagedResultsRequestKey, fullEntryList, referenceList);
+          }
 
-        // Next, skip over the entries that should be returned.
-        int keptEntries = 0;
-        while (iterator.hasNext() && (keptEntries < pageSize))
-        {
-          iterator.next();
-          pos++;
-          keptEntries++;
+          responseControls.add(new SimplePagedResultsControl(totalSize,
+               new ASN1OctetString(new ASN1Sequence(
+                    new ASN1Integer(end),
+                    new ASN1Integer(pagedResultsCursorID)).encode()),
+               false));
         }
-
-        // If there are still entries left, then remove them and create a cookie
-        // to include in the response.  Otherwise, use an empty cookie.
-        if (iterator.hasNext())
+        else
         {
-          responseControls.add(new SimplePagedResultsControl(totalSize,
-               new ASN1OctetString(new ASN1Integer(pos).encode()), false));
-          while (iterator.hasNext())
+          if (pagedResultsCursorID >= 0)
           {
-            iterator.next();
-            iterator.remove();
+            pagedResultsCursors.remove(pagedResultsCursorID);
           }
+
+          responseControls.add(new SimplePagedResultsControl(totalSize,
+               new ASN1OctetString(), false));
+        }
+
+        final List<Entry> pageEntries;
+        if (abandon)
+        {
+          pageEntries = Collections.emptyList();
         }
         else
         {
-          responseControls.add(new SimplePagedResultsControl(totalSize,
-               new ASN1OctetString(), false));
+          pageEntries = new ArrayList<Entry>(allEntries.subList(start, end));
         }
+
+        fullEntryList.clear();
+        fullEntryList.addAll(pageEntries);
       }
 
 
@@ -3410,24 +4512,6 @@ findEntriesAndRefs:
       }
 
 
-      // Process the set of requested attributes so that we can pare down the
-      // entries.
-      final AtomicBoolean allUserAttrs = new AtomicBoolean(false);
-      final AtomicBoolean allOpAttrs = new AtomicBoolean(false);
-      final Map<String,List<List<String>>> returnAttrs =
-           processRequestedAttributes(request.getAttributes(), allUserAttrs,
-                allOpAttrs);
-
-      final int sizeLimit;
-      if (request.getSizeLimit() > 0)
-      {
-        sizeLimit = Math.min(request.getSizeLimit(), maxSizeLimit);
-      }
-      else
-      {
-        sizeLimit = maxSizeLimit;
-      }
-
       int entryCount = 0;
       for (final Entry e : fullEntryList)
       {
@@ -3441,21 +4525,8 @@ findEntriesAndRefs:
                responseControls);
         }
 
-        final Entry trimmedEntry = trimForRequestedAttributes(e,
-             allUserAttrs.get(), allOpAttrs.get(), returnAttrs);
-        if (request.typesOnly())
-        {
-          final Entry typesOnlyEntry = new Entry(trimmedEntry.getDN(), schema);
-          for (final Attribute a : trimmedEntry.getAttributes())
-          {
-            typesOnlyEntry.addAttribute(new Attribute(a.getName()));
-          }
-          entryList.add(new SearchResultEntry(typesOnlyEntry));
-        }
-        else
-        {
-          entryList.add(new SearchResultEntry(trimmedEntry));
-        }
+        entryList.add(createSearchResultEntry(e, allUserAttrs.get(),
+             allOpAttrs.get(), returnAttrs, request.typesOnly(), schema));
       }
 
       return new LDAPMessage(messageID,
@@ -3463,6 +4534,54 @@ findEntriesAndRefs:
                 null, null),
            responseControls);
     }
+    finally
+    {
+      if (locked)
+      {
+        readLock.unlock();
+      }
+    }
+  }
+
+
+
+  /**
+   * Retrieves a string that identifies the set of entries that will be
+   * matched by the provided search request, for use in determining whether a
+   * paged results cursor may be used to process it.  It will reflect all
+   * elements of the request that affect which entries are returned and the
+   * order in which they are returned, but not those that only affect how each
+   * entry is returned.
+   *
+   * @param  baseDN      The parsed base DN for the search request.
+   * @param  request     The search request.
+   * @param  controlMap  The controls included in the search request.
+   *
+   * @return  A string that identifies the set of entries that will be matched
+   *          by the provided search request.
+   */
+  private static String getPagedResultsRequestKey(final DN baseDN,
+                             final SearchRequestProtocolOp request,
+                             final Map<String,Control> controlMap)
+  {
+    final StringBuilder buffer = new StringBuilder();
+    buffer.append(baseDN.toNormalizedString());
+    buffer.append('|');
+    buffer.append(request.getScope().intValue());
+    buffer.append('|');
+    request.getFilter().toNormalizedString(buffer);
+
+    for (final String oid : PAGED_RESULTS_REQUEST_KEY_CONTROL_OIDS)
+    {
+      final Control c = controlMap.get(oid);
+      if (c != null)
+      {
+        buffer.append('|');
+        c.toString(buffer);
+      }
+    }
+
+    return buffer.toString();
   }
 
 
@@ -3474,8 +4593,7 @@ findEntriesAndRefs:
    */
   private void indexAdd(final Entry entry)
   {
-    for (final InMemoryDirectoryServerEqualityAttributeIndex i :
-         equalityIndexes.values())
+    for (final InMemoryDirectoryServerAttributeIndex i : attributeIndexes)
     {
       try
       {
@@ -3497,8 +4615,7 @@ findEntriesAndRefs:
    */
   private void indexDelete(final Entry entry)
   {
-    for (final InMemoryDirectoryServerEqualityAttributeIndex i :
-         equalityIndexes.values())
+    for (final InMemoryDirectoryServerAttributeIndex i : attributeIndexes)
     {
       try
       {
@@ -3513,117 +4630,6 @@ findEntriesAndRefs:
 
 
 
-  /**
-   * Attempts to use indexes to obtain a candidate list for the provided filter.
-   *
-   * @param  filter  The filter to be processed.
-   *
-   * @return  The DNs of entries which may match the given filter, or
-   *          {@code null} if the filter is not indexed.
-   */
-  private Set<DN> indexSearch(final Filter filter)
-  {
-    switch (filter.getFilterType())
-    {
-      case Filter.FILTER_TYPE_AND:
-        Filter[] comps = filter.getComponents();
-        if (comps.length == 0)
-        {
-          return null;
-        }
-        else if (comps.length == 1)
-        {
-          return indexSearch(comps[0]);
-        }
-        else
-        {
-          Set<DN> candidateSet = null;
-          for (final Filter f : comps)
-          {
-            final Set<DN> dnSet = indexSearch(f);
-            if (dnSet != null)
-            {
-              if (candidateSet == null)
-              {
-                candidateSet = new TreeSet<DN>(dnSet);
-              }
-              else
-              {
-                candidateSet.retainAll(dnSet);
-              }
-            }
-          }
-          return candidateSet;
-        }
-
-      case Filter.FILTER_TYPE_OR:
-        comps = filter.getComponents();
-        if (comps.length == 0)
-        {
-          return Collections.emptySet();
-        }
-        else if (comps.length == 1)
-        {
-          return indexSearch(comps[0]);
-        }
-        else
-        {
-          Set<DN> candidateSet = null;
-          for (final Filter f : comps)
-          {
-            final Set<DN> dnSet = indexSearch(f);
-            if (dnSet == null)
-            {
-              return null;
-            }
-
-            if (candidateSet == null)
-            {
-              candidateSet = new TreeSet<DN>(dnSet);
-            }
-            else
-            {
-              candidateSet.addAll(dnSet);
-            }
-          }
-          return candidateSet;
-        }
-
-      case Filter.FILTER_TYPE_EQUALITY:
-        final Schema schema = schemaRef.get();
-        if (schema == null)
-        {
-          return null;
-        }
-        final AttributeTypeDefinition at =
-             schema.getAttributeType(filter.getAttributeName());
-        if (at == null)
-        {
-          return null;
-        }
-        final InMemoryDirectoryServerEqualityAttributeIndex i =
-             equalityIndexes.get(at);
-        if (i == null)
-        {
-          return null;
-        }
-        try
-        {
-          return i.getMatchingEntries(filter.getRawAssertionValue());
-        }
-        catch (final Exception e)
-        {
-          Debug.debugException(e);
-          return null;
-        }
-
-      default:
-        return null;
-    }
-  }
-
-
-
   /**
    * Determines whether the provided set of controls includes a transaction
    * specification request control.  If so, then it will verify that it
@@ -3738,7 +4744,8 @@ findEntriesAndRefs:
    */
   public int countEntries(final boolean includeChangeLog)
   {
-    synchronized (entryMap)
+    readLock.lock();
+    try
     {
       if (includeChangeLog || (maxChangelogEntries == 0))
       {
@@ -3759,6 +4766,10 @@ findEntriesAndRefs:
         return count;
       }
     }
+    finally
+    {
+      readLock.unlock();
+    }
   }
 
 
@@ -3778,21 +4789,26 @@ findEntriesAndRefs:
   public int countEntriesBelow(final String baseDN)
          throws LDAPException
   {
-    synchronized (entryMap)
+    readLock.lock();
+    try
     {
       final DN parsedBaseDN = new DN(baseDN, schemaRef.get());
 
       int count = 0;
-      for (final DN dn : entryMap.keySet())
+      final Iterator<Map.Entry<DN,ReadOnlyEntry>> iterator =
+           entryMap.subtreeIterator(parsedBaseDN);
+      while (iterator.hasNext())
       {
-        if (dn.isDescendantOf(parsedBaseDN, true))
-        {
-          count++;
-        }
+        iterator.next();
+        count++;
       }
 
       return count;
     }
+    finally
+    {
+      readLock.unlock();
+    }
   }
 
 
@@ -3804,10 +4820,15 @@ findEntriesAndRefs:
    */
   public void clear()
   {
-    synchronized (entryMap)
+    writeLock.lock();
+    try
     {
       restoreSnapshot(initialSnapshot);
     }
+    finally
+    {
+      writeLock.unlock();
+    }
   }
 
 
@@ -3832,7 +4853,8 @@ findEntriesAndRefs:
   public int importFromLDIF(final boolean clear, final LDIFReader ldifReader)
          throws LDAPException
   {
-    synchronized (entryMap)
+    writeLock.lock();
+    try
     {
       final InMemoryDirectoryServerSnapshot snapshot = createSnapshot();
       boolean restoreSnapshot = true;
@@ -3894,6 +4916,436 @@ findEntriesAndRefs:
         }
       }
     }
+    finally
+    {
+      writeLock.unlock();
+    }
+  }
+
+
+
+  /**
+   * Reads entries from the provided LDIF reader and loads them into the server
+   * in bulk, optionally replacing all existing entries.  This may be
+   * considerably faster than {@link #importFromLDIF} for large data sets.
+   * Entries are prepared and validated in parallel by the specified number of
+   * threads without holding any lock, and the server will continue to process
+   * other operations while that is in progress.  The prepared entries are then
+   * sorted by DN, merged with the existing content, and swapped into the
+   * server in a single step, after which all attribute indexes are rebuilt in
+   * one pass.
+   * <BR><BR>
+   * Each entry is subject to the same constraints as an entry added with
+   * {@link #importFromLDIF}, and if any entry cannot be added, then the content
+   * of the server will not be altered.  However, bulk-loaded entries will not
+   * be recorded in the changelog or delivered to persistent search or content
+   * synchronization requests, and any content synchronization cookies that
+   * were previously issued will be invalidated.
+   *
+   * @param  clear       Indicates whether to remove all existing entries prior
+   *                     to adding entries read from LDIF.
+   * @param  ldifReader  The LDIF reader to use to obtain the entries to be
+   *                     imported.  It will be closed before this method
+   *                     returns.  It may be configured to use multiple threads
+   *                     to parse the LDIF records.
+   * @param  numThreads  The number of threads to use to prepare and validate
+   *                     the entries that are read.  If this is less than or
+   *                     equal to one, then all entries will be prepared by the
+   *                     calling thread.
+   *
+   * @return  Information about the entries that were imported and the time
+   *          required to import them.
+   *
+   * @throws  LDAPException  If a problem occurs while reading entries or if
+   *                         any of them cannot be added to the server.
+   */
+  public InMemoryDirectoryServerBulkImportResult bulkImportFromLDIF(
+              final boolean clear, final LDIFReader ldifReader,
+              final int numThreads)
+         throws LDAPException
+  {
+    final long startTime = System.nanoTime();
+
+    // Read and prepare all of the entries without holding any lock.  They will
+    // be sorted by DN as they are collected.
+    final ThreadPoolExecutor executor;
+    if (numThreads > 1)
+    {
+      executor = new ThreadPoolExecutor(numThreads, numThreads, 0L,
+           TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+           new LDAPSDKThreadFactory("In-Memory Directory Server Bulk Import",
+                true));
+    }
+    else
+    {
+      executor = null;
+    }
+
+    final TreeMap<DN,ReadOnlyEntry> importedEntries;
+    try
+    {
+      importedEntries = readBulkImportEntries(ldifReader, executor);
+    }
+    finally
+    {
+      if (executor != null)
+      {
+        executor.shutdownNow();
+      }
+
+      try
+      {
+        ldifReader.close();
+      }
+      catch (final Exception e)
+      {
+        Debug.debugException(e);
+      }
+    }
+
+    final int entriesImported = importedEntries.size();
+    final long prepareCompleteTime = System.nanoTime();
+
+
+    // Make sure that each entry can be placed in the resulting data set, and
+    // then swap that data set in.  Restoring the content will update the
+    // indexes for the entries that differ from the current content and write a
+    // journal checkpoint if appropriate.
+    writeLock.lock();
+    try
+    {
+      final InMemoryDirectoryServerSnapshot baseSnapshot =
+           (clear ? initialSnapshot : createSnapshot());
+      final Map<DN,ReadOnlyEntry> baseEntries = baseSnapshot.getEntryMap();
+      for (final Map.Entry<DN,ReadOnlyEntry> me : importedEntries.entrySet())
+      {
+        verifyBulkImportEntryPlacement(me.getKey(), me.getValue(),
+             importedEntries, baseEntries);
+      }
+
+      importedEntries.putAll(baseEntries);
+
+      final InMemoryDirectoryServerEntryMap newEntryMap =
+           new InMemoryDirectoryServerEntryMap();
+      newEntryMap.putAll(importedEntries);
+      restoreSnapshot(new InMemoryDirectoryServerSnapshot(newEntryMap,
+           baseSnapshot.getFirstChangeNumber(),
+           baseSnapshot.getLastChangeNumber()));
+    }
+    finally
+    {
+      writeLock.unlock();
+    }
+
+    final long endTime = System.nanoTime();
+    return new InMemoryDirectoryServerBulkImportResult(entriesImported,
+         TimeUnit.NANOSECONDS.toMillis(prepareCompleteTime - startTime),
+         TimeUnit.NANOSECONDS.toMillis(endTime - prepareCompleteTime));
+  }
+
+
+
+  /**
+   * Reads all entries from the provided LDIF reader and prepares them for a
+   * bulk import.
+   *
+   * @param  ldifReader  The LDIF reader from which to read the entries.
+   * @param  executor    The executor to use to prepare batches of entries in
+   *                     parallel, or {@code null} if they should be prepared
+   *                     by the calling thread.
+   *
+   * @return  A map of the prepared entries, sorted by DN.
+   *
+   * @throws  LDAPException  If a problem occurs while reading or preparing any
+   *                         of the entries, or if the LDIF contains multiple
+   *                         entries with the same DN.
+   */
+  private TreeMap<DN,ReadOnlyEntry> readBulkImportEntries(
+               final LDIFReader ldifReader, final ThreadPoolExecutor executor)
+          throws LDAPException
+  {
+    final TreeMap<DN,ReadOnlyEntry> importedEntries =
+         new TreeMap<DN,ReadOnlyEntry>();
+    final LinkedList<Future<ReadOnlyEntry[]>> submittedBatches =
+         new LinkedList<Future<ReadOnlyEntry[]>>();
+
+    final DN authzDN = authenticatedDN;
+    BulkImportBatch batch = new BulkImportBatch(authzDN);
+    while (true)
+    {
+      final Entry entry;
+      try
+      {
+        entry = ldifReader.readEntry();
+      }
+      catch (final LDIFException le)
+      {
+        Debug.debugException(le);
+        throw new LDAPException(ResultCode.LOCAL_ERROR,
+             ERR_MEM_HANDLER_INIT_FROM_LDIF_READ_ERROR.get(le.getMessage()),
+             le);
+      }
+      catch (final Exception e)
+      {
+        Debug.debugException(e);
+        throw new LDAPException(ResultCode.LOCAL_ERROR,
+             ERR_MEM_HANDLER_INIT_FROM_LDIF_READ_ERROR.get(
+                  StaticUtils.getExceptionMessage(e)),
+             e);
+      }
+
+      if ((entry != null) && (! batch.add(entry)))
+      {
+        continue;
+      }
+
+      if (executor == null)
+      {
+        addBulkImportEntries(batch.call(), importedEntries);
+      }
+      else
+      {
+        submittedBatches.add(executor.submit(batch));
+
+        // Collect the results of any batches at the front of the list that
+        // have already been prepared.
+        while ((! submittedBatches.isEmpty()) &&
+               submittedBatches.getFirst().isDone())
+        {
+          addBulkImportEntries(
+               getBulkImportBatchResult(submittedBatches.removeFirst()),
+               importedEntries);
+        }
+      }
+
+      if (entry == null)
+      {
+        break;
+      }
+      batch = new BulkImportBatch(authzDN);
+    }
+
+    for (final Future<ReadOnlyEntry[]> f : submittedBatches)
+    {
+      addBulkImportEntries(getBulkImportBatchResult(f), importedEntries);
+    }
+
+    return importedEntries;
+  }
+
+
+
+  /**
+   * Waits for the provided batch of entries to be prepared and retrieves the
+   * result.
+   *
+   * @param  future  The future for the batch.
+   *
+   * @return  The prepared entries.
+   *
+   * @throws  LDAPException  If a problem occurred while preparing any of the
+   *                         entries, or if the thread is interrupted.
+   */
+  private static ReadOnlyEntry[] getBulkImportBatchResult(
+                                      final Future<ReadOnlyEntry[]> future)
+          throws LDAPException
+  {
+    try
+    {
+      return future.get();
+    }
+    catch (final InterruptedException ie)
+    {
+      Debug.debugException(ie);
+      Thread.currentThread().interrupt();
+      throw new LDAPException(ResultCode.LOCAL_ERROR,
+           ERR_MEM_HANDLER_BULK_IMPORT_INTERRUPTED.get(), ie);
+    }
+    catch (final ExecutionException ee)
+    {
+      Debug.debugException(ee);
+      final Throwable cause = ee.getCause();
+      if (cause instanceof LDAPException)
+      {
+        throw (LDAPException) cause;
+      }
+
+      throw new LDAPException(ResultCode.LOCAL_ERROR,
+           ERR_MEM_HANDLER_BULK_IMPORT_ERROR.get(
+                StaticUtils.getExceptionMessage(cause)),
+           cause);
+    }
+  }
+
+
+
+  /**
+   * Adds the provided prepared entries to the given map.
+   *
+   * @param  entries          The prepared entries to add.
+   * @param  importedEntries  The map of entries to which they should be added.
+   *
+   * @throws  LDAPException  If the map already contains an entry with the same
+   *                         DN as any of the provided entries.
+   */
+  private static void addBulkImportEntries(final ReadOnlyEntry[] entries,
+                           final TreeMap<DN,ReadOnlyEntry> importedEntries)
+          throws LDAPException
+  {
+    for (final ReadOnlyEntry e : entries)
+    {
+      if (importedEntries.put(e.getParsedDN(), e) != null)
+      {
+        throw new LDAPException(ResultCode.ENTRY_ALREADY_EXISTS,
+             ERR_MEM_HANDLER_ADD_ALREADY_EXISTS.get(e.getDN()));
+      }
+    }
+  }
+
+
+
+  /**
+   * Prepares the provided entry read from LDIF to be bulk imported into the
+   * server.  The same processing will be performed as for an internal add
+   * operation, except that no checks will be performed that depend on the
+   * other entries in the server.  This method may be called concurrently by
+   * multiple threads.
+   *
+   * @param  ldifEntry       The entry read from LDIF.
+   * @param  schema          The schema for the server, or {@code null} if
+   *                         there is none.
+   * @param  entryValidator  The entry validator for the server, or
+   *                         {@code null} if there is none.
+   * @param  authzDN         The DN of the user performing the import.
+   *
+   * @return  The prepared entry.
+   *
+   * @throws  LDAPException  If the entry may not be added to the server.
+   */
+  private ReadOnlyEntry prepareBulkImportEntry(final Entry ldifEntry,
+                             final Schema schema,
+                             final EntryValidator entryValidator,
+                             final DN authzDN)
+          throws LDAPException
+  {
+    final Entry entry = createEntryForAdd(ldifEntry.getDN(),
+         ldifEntry.getAttributes(), schema);
+
+    final DN dn;
+    try
+    {
+      dn = entry.getParsedDN();
+    }
+    catch (final LDAPException le)
+    {
+      Debug.debugException(le);
+      throw new LDAPException(ResultCode.INVALID_DN_SYNTAX,
+           ERR_MEM_HANDLER_ADD_MALFORMED_DN.get(entry.getDN(),
+                le.getMessage()),
+           le);
+    }
+
+    if (dn.isNullDN())
+    {
+      throw new LDAPException(ResultCode.ENTRY_ALREADY_EXISTS,
+           ERR_MEM_HANDLER_ADD_ROOT_DSE.get());
+    }
+    else if (dn.isDescendantOf(subschemaSubentryDN, true))
+    {
+      throw new LDAPException(ResultCode.ENTRY_ALREADY_EXISTS,
+           ERR_MEM_HANDLER_ADD_SCHEMA.get(subschemaSubentryDN.toString()));
+    }
+    else if (dn.isDescendantOf(changeLogBaseDN, true))
+    {
+      throw new LDAPException(ResultCode.UNWILLING_TO_PERFORM,
+           ERR_MEM_HANDLER_ADD_CHANGELOG.get(changeLogBaseDN.toString()));
+    }
+
+    addRDNValuesAndSuperiorClasses(entry, dn, schema);
+
+    if (entryValidator != null)
+    {
+      final ArrayList<String> invalidReasons = new ArrayList<String>(1);
+      if (! entryValidator.entryIsValid(entry, invalidReasons))
+      {
+        throw new LDAPException(ResultCode.OBJECT_CLASS_VIOLATION,
+             ERR_MEM_HANDLER_ADD_VIOLATES_SCHEMA.get(entry.getDN(),
+                  StaticUtils.concatenateStrings(invalidReasons)));
+      }
+    }
+
+    if (generateOperationalAttributes)
+    {
+      addCreateOperationalAttributes(entry, dn, authzDN);
+    }
+
+    return new ReadOnlyEntry(entry);
+  }
+
+
+
+  /**
+   * Ensures that the provided prepared entry may be placed in the data set that
+   * will result from a bulk import.  The entry must not already exist in the
+   * base data set, it must not be below a referral entry, and its parent must
+   * exist unless it is one of the base DNs for the server.
+   *
+   * @param  dn               The DN of the entry.
+   * @param  entry            The entry to verify.
+   * @param  importedEntries  The map of all entries being imported.
+   * @param  baseEntries      The map of entries with which the imported
+   *                          entries will be merged.
+   *
+   * @throws  LDAPException  If the entry may not be added.
+   */
+  private void verifyBulkImportEntryPlacement(final DN dn,
+                    final ReadOnlyEntry entry,
+                    final Map<DN,ReadOnlyEntry> importedEntries,
+                    final Map<DN,ReadOnlyEntry> baseEntries)
+          throws LDAPException
+  {
+    if (baseEntries.containsKey(dn))
+    {
+      throw new LDAPException(ResultCode.ENTRY_ALREADY_EXISTS,
+           ERR_MEM_HANDLER_ADD_ALREADY_EXISTS.get(entry.getDN()));
+    }
+
+    DN ancestorDN = dn.getParent();
+    while (ancestorDN != null)
+    {
+      Entry ancestor = importedEntries.get(ancestorDN);
+      if (ancestor == null)
+      {
+        ancestor = baseEntries.get(ancestorDN);
+      }
+
+      if (ancestor != null)
+      {
+        if (ancestor.hasObjectClass("referral"))
+        {
+          throw new LDAPException(ResultCode.REFERRAL,
+               INFO_MEM_HANDLER_REFERRAL_ENCOUNTERED.get(), ancestor.getDN(),
+               stringListToArray(getReferralURLs(dn, ancestor)));
+        }
+        break;
+      }
+
+      ancestorDN = ancestorDN.getParent();
+    }
+
+    if (baseDNs.contains(dn))
+    {
+      return;
+    }
+
+    final DN parentDN = dn.getParent();
+    if ((parentDN == null) || ((! importedEntries.containsKey(parentDN)) &&
+         (! baseEntries.containsKey(parentDN))))
+    {
+      throw new LDAPException(ResultCode.NO_SUCH_OBJECT,
+           ERR_MEM_HANDLER_ADD_MISSING_PARENT.get(entry.getDN(),
+                dn.getParentString()));
+    }
   }
 
 
@@ -3923,7 +5375,8 @@ findEntriesAndRefs:
                           final boolean closeWriter)
          throws LDAPException
   {
-    synchronized (entryMap)
+    readLock.lock();
+    try
     {
       boolean exceptionThrown = false;
 
@@ -3996,6 +5449,10 @@ findEntriesAndRefs:
         }
       }
     }
+    finally
+    {
+      readLock.unlock();
+    }
   }
 
 
@@ -4073,7 +5530,8 @@ findEntriesAndRefs:
   public void addEntries(final List<? extends Entry> entries)
          throws LDAPException
   {
-    synchronized (entryMap)
+    writeLock.lock();
+    try
     {
       final InMemoryDirectoryServerSnapshot snapshot = createSnapshot();
       boolean restoreSnapshot = true;
@@ -4094,6 +5552,10 @@ findEntriesAndRefs:
         }
       }
     }
+    finally
+    {
+      writeLock.unlock();
+    }
   }
 
 
@@ -4115,7 +5577,8 @@ findEntriesAndRefs:
   public int deleteSubtree(final String baseDN)
          throws LDAPException
   {
-    synchronized (entryMap)
+    writeLock.lock();
+    try
     {
       final DN dn = new DN(baseDN, schemaRef.get());
       if (dn.isNullDN())
@@ -4124,21 +5587,27 @@ findEntriesAndRefs:
              ERR_MEM_HANDLER_DELETE_ROOT_DSE.get());
       }
 
-      int numDeleted = 0;
-
+      final ArrayList<DN> dnsToDelete = new ArrayList<DN>(10);
       final Iterator<Map.Entry<DN,ReadOnlyEntry>> iterator =
-           entryMap.entrySet().iterator();
+           entryMap.subtreeIterator(dn);
       while (iterator.hasNext())
       {
-        final Map.Entry<DN,ReadOnlyEntry> e = iterator.next();
-        if (e.getKey().isDescendantOf(dn, true))
-        {
-          iterator.remove();
-          numDeleted++;
-        }
+        dnsToDelete.add(iterator.next().getKey());
+      }
+
+      for (int i=(dnsToDelete.size() - 1); i >= 0; i--)
+      {
+        final ReadOnlyEntry deletedEntry = entryMap.remove(dnsToDelete.get(i));
+        indexDelete(deletedEntry);
+        publishChange(PersistentSearchChangeType.DELETE,
+             deletedEntry, null);
       }
 
-      return numDeleted;
+      return dnsToDelete.size();
+    }
+    finally
+    {
+      writeLock.unlock();
     }
   }
 
@@ -4215,7 +5684,8 @@ findEntriesAndRefs:
    */
   public ReadOnlyEntry getEntry(final DN dn)
   {
-    synchronized (entryMap)
+    readLock.lock();
+    try
     {
       if (dn.isNullDN())
       {
@@ -4238,6 +5708,10 @@ findEntriesAndRefs:
         }
       }
     }
+    finally
+    {
+      readLock.unlock();
+    }
   }
 
 
@@ -4263,7 +5737,8 @@ findEntriesAndRefs:
                                     final Filter filter)
          throws LDAPException
   {
-    synchronized (entryMap)
+    readLock.lock();
+    try
     {
       final DN parsedDN;
       final Schema schema = schemaRef.get();
@@ -4344,9 +5819,20 @@ findEntriesAndRefs:
         return Collections.unmodifiableList(entryList);
       }
 
+      final Iterator<Map.Entry<DN,ReadOnlyEntry>> iterator;
+      if (scope == SearchScope.ONE)
+      {
+        iterator = entryMap.childIterator(parsedDN);
+      }
+      else
+      {
+        iterator = entryMap.subtreeIterator(parsedDN);
+      }
+
       final List<ReadOnlyEntry> entryList = new ArrayList<ReadOnlyEntry>(10);
-      for (final Map.Entry<DN,ReadOnlyEntry> me : entryMap.entrySet())
+      while (iterator.hasNext())
       {
+        final Map.Entry<DN,ReadOnlyEntry> me = iterator.next();
         final DN dn = me.getKey();
         if (dn.matchesBaseAndScope(parsedDN, scope))
         {
@@ -4374,6 +5860,10 @@ findEntriesAndRefs:
 
       return Collections.unmodifiableList(entryList);
     }
+    finally
+    {
+      readLock.unlock();
+    }
   }
 
 
@@ -4426,10 +5916,12 @@ findEntriesAndRefs:
     ctlSet.add(AssertionRequestControl.ASSERTION_REQUEST_OID);
     ctlSet.add(AuthorizationIdentityRequestControl.
          AUTHORIZATION_IDENTITY_REQUEST_OID);
+    ctlSet.add(ContentSyncRequestControl.SYNC_REQUEST_OID);
     ctlSet.add(DontUseCopyRequestControl.DONT_USE_COPY_REQUEST_OID);
     ctlSet.add(ManageDsaITRequestControl.MANAGE_DSA_IT_REQUEST_OID);
     ctlSet.add(DraftZeilengaLDAPNoOp12RequestControl.NO_OP_REQUEST_OID);
     ctlSet.add(PermissiveModifyRequestControl.PERMISSIVE_MODIFY_REQUEST_OID);
+    ctlSet.add(PersistentSearchRequestControl.PERSISTENT_SEARCH_REQUEST_OID);
     ctlSet.add(PostReadRequestControl.POST_READ_REQUEST_OID);
     ctlSet.add(PreReadRequestControl.PRE_READ_REQUEST_OID);
     ctlSet.add(ProxiedAuthorizationV1RequestControl.
@@ -4674,90 +6166,1106 @@ findEntriesAndRefs:
       return null;
     }
 
-    final String l = StaticUtils.toLowerCase(s);
+    final String l = StaticUtils.toLowerCase(s);
+
+    int semicolonPos = l.indexOf(';');
+    if (semicolonPos < 0)
+    {
+      return new ObjectPair<String,List<String>>(l,
+           Collections.<String>emptyList());
+    }
+
+    final String name = l.substring(0, semicolonPos);
+    final ArrayList<String> optionList = new ArrayList<String>(1);
+    while (true)
+    {
+      final int nextSemicolonPos = l.indexOf(';', semicolonPos+1);
+      if (nextSemicolonPos < 0)
+      {
+        optionList.add(l.substring(semicolonPos+1));
+        break;
+      }
+      else
+      {
+        optionList.add(l.substring(semicolonPos+1, nextSemicolonPos));
+        semicolonPos = nextSemicolonPos;
+      }
+    }
+
+    return new ObjectPair<String,List<String>>(name, optionList);
+  }
+
+
+
+  /**
+   * Adds all-lowercase versions of the OID and all names for the provided
+   * attribute type definition to the given map with the given options.
+   *
+   * @param  d  The attribute type definition to process.
+   * @param  m  The map to which the OID and names should be added.
+   * @param  o  The array of attribute options to use in the map.  It should be
+   *            empty if no options are needed, and must not be {@code null}.
+   */
+  private void addAttributeOIDAndNames(final AttributeTypeDefinition d,
+                                       final Map<String,List<List<String>>> m,
+                                       final List<String> o)
+  {
+    if (d == null)
+    {
+      return;
+    }
+
+    final String lowerOID = StaticUtils.toLowerCase(d.getOID());
+    if (lowerOID != null)
+    {
+      List<List<String>> l = m.get(lowerOID);
+      if (l == null)
+      {
+        l = new ArrayList<List<String>>(1);
+        m.put(lowerOID, l);
+      }
+
+      l.add(o);
+    }
+
+    for (final String name : d.getNames())
+    {
+      final String lowerName = StaticUtils.toLowerCase(name);
+      List<List<String>> l = m.get(lowerName);
+      if (l == null)
+      {
+        l = new ArrayList<List<String>>(1);
+        m.put(lowerName, l);
+      }
+
+      l.add(o);
+    }
+
+    // If a schema is available, then see if the attribute type has any
+    // subordinate types.  If so, then add them.
+    final Schema schema = schemaRef.get();
+    if (schema != null)
+    {
+      for (final AttributeTypeDefinition subordinateType :
+           schema.getSubordinateAttributeTypes(d))
+      {
+        addAttributeOIDAndNames(subordinateType, m, o);
+      }
+    }
+  }
+
+
+
+  /**
+   * Performs the necessary processing to determine whether the given entry
+   * should be returned as a search result entry or reference, or if it should
+   * not be returned at all.
+   *
+   * @param  entry              The entry to be processed.
+   * @param  includeSubEntries  Indicates whether LDAP subentries should be
+   *                            returned to the client.
+   * @param  includeChangeLog   Indicates whether entries within the changelog
+   *                            should be returned to the client.
+   * @param  hasManageDsaIT     Indicates whether the request includes the
+   *                            ManageDsaIT control, which can change how smart
+   *                            referrals should be handled.
+   * @param  entryList          The list to which the entry should be added if
+   *                            it should be returned to the client as a search
+   *                            result entry.
+   * @param  referenceList      The list that should be updated if the provided
+   *                            entry represents a smart referral that should be
+   *                            returned as a search result reference.
+   */
+  private void processSearchEntry(final Entry entry,
+                    final boolean includeSubEntries,
+                    final boolean includeChangeLog,
+                    final boolean hasManageDsaIT,
+                    final List<Entry> entryList,
+                    final List<SearchResultReference> referenceList)
+  {
+    // See if the entry should be suppressed as an LDAP subentry.
+    if ((! includeSubEntries) &&
+        (entry.hasObjectClass("ldapSubEntry") ||
+         entry.hasObjectClass("inheritableLDAPSubEntry")))
+    {
+      return;
+    }
+
+    // See if the entry should be suppressed as a changelog entry.
+    try
+    {
+      if ((! includeChangeLog) &&
+           (entry.getParsedDN().isDescendantOf(changeLogBaseDN, true)))
+      {
+        return;
+      }
+    }
+    catch (final Exception e)
+    {
+      // This should never happen.
+      Debug.debugException(e);
+    }
+
+    // See if the entry is a referral and should result in a reference rather
+    // than an entry.
+    if ((! hasManageDsaIT) && entry.hasObjectClass("referral") &&
+        entry.hasAttribute("ref"))
+    {
+      referenceList.add(new SearchResultReference(
+           entry.getAttributeValues("ref"), NO_CONTROLS));
+      return;
+    }
+
+    entryList.add(entry);
+  }
+
+
+
+  /**
+   * This class provides a mechanism for checking the entries examined by a
+   * search against the search filter and adding those that match to the set
+   * of results.  If the server has been configured to use multiple threads to
+   * evaluate searches, then the entries will be divided into batches that may
+   * be evaluated in parallel, and the results of each batch will be added to
+   * the result lists in the order in which the batches were created so that
+   * the order of the results will be the same as for a single-threaded
+   * evaluation.  If a search entry sender is provided, then matching entries
+   * will be sent to the client as soon as they are available rather than
+   * being added to the entry list.
+   */
+  private final class SearchEvaluator
+  {
+    // Indicates whether the request included the ManageDsaIT control.
+    private final boolean hasManageDsaIT;
+
+    // Indicates whether to include changelog entries in the results.
+    private final boolean includeChangeLog;
+
+    // Indicates whether to include LDAP subentries in the results.
+    private final boolean includeSubEntries;
+
+    // Indicates whether evaluation has been stopped because no more entries
+    // can be sent to the client.
+    private boolean stopped;
+
+    // The filter for the search.
+    private final Filter filter;
+
+    // The list of batches that have been submitted for evaluation, in the
+    // order in which they were created.
+    private final LinkedList<ObjectPair<SearchEvaluationBatch,Future<?>>>
+         submittedBatches;
+
+    // The list to which matching entries should be added if they are not to
+    // be sent directly to the client.
+    private final List<Entry> entryList;
+
+    // A list used to hold a matching entry before it is sent to the client.
+    private final List<Entry> pendingEntries;
+
+    // The list to which search result references should be added.
+    private final List<SearchResultReference> referenceList;
+
+    // The schema to use when evaluating the filter.
+    private final Schema schema;
+
+    // The batch to which entries are currently being added, if any.
+    private SearchEvaluationBatch currentBatch;
+
+    // The sender to use to send matching entries directly to the client, if
+    // any.
+    private final SearchEntrySender sender;
+
+
+
+    /**
+     * Creates a new search evaluator with the provided information.
+     *
+     * @param  filter             The filter for the search.
+     * @param  schema             The schema to use when evaluating the filter.
+     * @param  includeSubEntries  Indicates whether to include LDAP subentries
+     *                            in the results.
+     * @param  includeChangeLog   Indicates whether to include changelog
+     *                            entries in the results.
+     * @param  hasManageDsaIT     Indicates whether the request included the
+     *                            ManageDsaIT control.
+     * @param  sender             The sender to use to send matching entries
+     *                            directly to the client.  It may be
+     *                            {@code null} if matching entries should be
+     *                            added to the entry list instead.
+     * @param  entryList          The list to which matching entries should be
+     *                            added if they are not to be sent directly to
+     *                            the client.
+     * @param  referenceList      The list to which search result references
+     *                            should be added.
+     */
+    private SearchEvaluator(final Filter filter, final Schema schema,
+                 final boolean includeSubEntries,
+                 final boolean includeChangeLog, final boolean hasManageDsaIT,
+                 final SearchEntrySender sender, final List<Entry> entryList,
+                 final List<SearchResultReference> referenceList)
+    {
+      this.filter            = filter;
+      this.schema            = schema;
+      this.includeSubEntries = includeSubEntries;
+      this.includeChangeLog  = includeChangeLog;
+      this.hasManageDsaIT    = hasManageDsaIT;
+      this.sender            = sender;
+      this.entryList         = entryList;
+      this.referenceList     = referenceList;
+
+      submittedBatches =
+           new LinkedList<ObjectPair<SearchEvaluationBatch,Future<?>>>();
+      pendingEntries = new ArrayList<Entry>(1);
+      currentBatch = null;
+      stopped = false;
+    }
+
+
+
+    /**
+     * Indicates whether evaluation has been stopped because no more entries
+     * can be sent to the client, either because the size limit has been
+     * exceeded or because a problem was encountered while sending an entry.
+     *
+     * @return  {@code true} if evaluation has been stopped, or {@code false}
+     *          if not.
+     */
+    private boolean isStopped()
+    {
+      return stopped;
+    }
+
+
+
+    /**
+     * Evaluates the provided entry against the search criteria, or adds it to
+     * the current batch for later evaluation.
+     *
+     * @param  entry  The entry to evaluate.  It must be within the scope of
+     *                the search.
+     */
+    private void evaluate(final Entry entry)
+    {
+      if (stopped)
+      {
+        return;
+      }
+
+      if (searchEvaluationExecutor == null)
+      {
+        if (sender == null)
+        {
+          evaluateEntry(entry, entryList, referenceList);
+        }
+        else
+        {
+          evaluateEntry(entry, pendingEntries, referenceList);
+          deliver(pendingEntries);
+          pendingEntries.clear();
+        }
+        return;
+      }
+
+      if (currentBatch == null)
+      {
+        currentBatch = new SearchEvaluationBatch(this);
+      }
+
+      if (currentBatch.add(entry))
+      {
+        submittedBatches.add(
+             new ObjectPair<SearchEvaluationBatch,Future<?>>(currentBatch,
+                  searchEvaluationExecutor.submit(currentBatch)));
+        currentBatch = null;
+
+        // If the results are being sent directly to the client, then send
+        // the results of any batches at the front of the list that have
+        // already been evaluated.
+        if (sender != null)
+        {
+          while ((! stopped) && (! submittedBatches.isEmpty()) &&
+                 submittedBatches.getFirst().getSecond().isDone())
+          {
+            addResults(submittedBatches.removeFirst().getFirst());
+          }
+        }
+      }
+    }
+
+
+
+    /**
+     * Completes the evaluation of all entries provided to this evaluator, and
+     * ensures that the results have been added to the result lists or sent to
+     * the client.  The final batch will be evaluated by the calling thread.
+     */
+    private void complete()
+    {
+      if ((currentBatch != null) && submittedBatches.isEmpty())
+      {
+        // There were not enough entries to warrant more than one batch, so
+        // just evaluate them here.
+        currentBatch.run();
+        addResults(currentBatch);
+        currentBatch = null;
+        return;
+      }
+
+      if (currentBatch != null)
+      {
+        currentBatch.run();
+      }
+
+      boolean interrupted = false;
+      for (final ObjectPair<SearchEvaluationBatch,Future<?>> p :
+           submittedBatches)
+      {
+        if (stopped)
+        {
+          p.getSecond().cancel(false);
+          continue;
+        }
+
+        while (true)
+        {
+          try
+          {
+            p.getSecond().get();
+            break;
+          }
+          catch (final InterruptedException ie)
+          {
+            Debug.debugException(ie);
+            interrupted = true;
+          }
+          catch (final ExecutionException ee)
+          {
+            // This should never happen, since a batch will not throw an
+            // exception.
+            Debug.debugException(ee);
+            break;
+          }
+        }
+
+        addResults(p.getFirst());
+      }
+
+      if (currentBatch != null)
+      {
+        addResults(currentBatch);
+        currentBatch = null;
+      }
+
+      submittedBatches.clear();
+      if (interrupted)
+      {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+
+
+    /**
+     * Checks the provided entry against the search filter and, if it matches,
+     * adds it to the appropriate result list.
+     *
+     * @param  entry          The entry to evaluate.
+     * @param  entries        The list to which the entry should be added if
+     *                        it matches.
+     * @param  references     The list to which a search result reference
+     *                        should be added if the entry is a matching
+     *                        referral.
+     */
+    private void evaluateEntry(final Entry entry, final List<Entry> entries,
+                               final List<SearchResultReference> references)
+    {
+      try
+      {
+        if (filter.matchesEntry(entry, schema))
+        {
+          processSearchEntry(entry, includeSubEntries, includeChangeLog,
+               hasManageDsaIT, entries, references);
+        }
+      }
+      catch (final Exception e)
+      {
+        Debug.debugException(e);
+      }
+    }
+
+
+
+    /**
+     * Adds the results of evaluating the provided batch to the result lists,
+     * or sends the matching entries to the client.
+     *
+     * @param  batch  The batch whose results should be added.
+     */
+    private void addResults(final SearchEvaluationBatch batch)
+    {
+      if (! stopped)
+      {
+        deliver(batch.getMatchingEntries());
+        referenceList.addAll(batch.getMatchingReferences());
+      }
+    }
+
+
+
+    /**
+     * Adds the provided matching entries to the entry list, or sends them to
+     * the client.
+     *
+     * @param  entries  The matching entries.
+     */
+    private void deliver(final List<Entry> entries)
+    {
+      if (sender == null)
+      {
+        entryList.addAll(entries);
+        return;
+      }
+
+      for (final Entry e : entries)
+      {
+        if (! sender.send(e))
+        {
+          stopped = true;
+          return;
+        }
+      }
+    }
+  }
+
+
+
+  /**
+   * This class provides a task that may be used to prepare a batch of entries
+   * read from LDIF for a bulk import in a separate thread.
+   */
+  private final class BulkImportBatch
+          implements Callable<ReadOnlyEntry[]>
+  {
+    // The DN of the user performing the import.
+    private final DN authzDN;
+
+    // The entries to prepare.
+    private final Entry[] entries;
+
+    // The entry validator to use, if any.
+    private final EntryValidator entryValidator;
+
+    // The number of entries in this batch.
+    private int size;
+
+    // The schema to use, if any.
+    private final Schema schema;
+
+
+
+    /**
+     * Creates a new, empty batch.
+     *
+     * @param  authzDN  The DN of the user performing the import.
+     */
+    private BulkImportBatch(final DN authzDN)
+    {
+      this.authzDN = authzDN;
+
+      entries = new Entry[BULK_IMPORT_BATCH_SIZE];
+      entryValidator = entryValidatorRef.get();
+      schema = schemaRef.get();
+      size = 0;
+    }
+
+
+
+    /**
+     * Adds the provided entry to this batch.
+     *
+     * @param  entry  The entry to add.
+     *
+     * @return  {@code true} if this batch is now full, or {@code false} if
+     *          more entries may be added to it.
+     */
+    private boolean add(final Entry entry)
+    {
+      entries[size++] = entry;
+      return (size == entries.length);
+    }
+
+
+
+    /**
+     * Prepares all of the entries in this batch.
+     *
+     * @return  The prepared entries.
+     *
+     * @throws  LDAPException  If any of the entries may not be added to the
+     *                         server.
+     */
+    public ReadOnlyEntry[] call()
+           throws LDAPException
+    {
+      final ReadOnlyEntry[] preparedEntries = new ReadOnlyEntry[size];
+      for (int i=0; i < size; i++)
+      {
+        preparedEntries[i] = prepareBulkImportEntry(entries[i], schema,
+             entryValidator, authzDN);
+        entries[i] = null;
+      }
+
+      return preparedEntries;
+    }
+  }
+
+
+
+  /**
+   * This class provides a task that may be used to evaluate a batch of entries
+   * examined by a search in a separate thread.  The results will be held in the
+   * batch until they are added to the search results.
+   */
+  private static final class SearchEvaluationBatch
+          implements Runnable
+  {
+    // The entries to evaluate.
+    private final Entry[] entries;
+
+    // The number of entries in this batch.
+    private int size;
+
+    // The matching entries found when evaluating this batch.
+    private final List<Entry> matchingEntries;
+
+    // The search result references found when evaluating this batch.
+    private final List<SearchResultReference> matchingReferences;
+
+    // The evaluator with which this batch is associated.
+    private final SearchEvaluator evaluator;
+
+
+
+    /**
+     * Creates a new, empty batch for the provided evaluator.
+     *
+     * @param  evaluator  The evaluator with which this batch is associated.
+     */
+    private SearchEvaluationBatch(final SearchEvaluator evaluator)
+    {
+      this.evaluator = evaluator;
+
+      entries = new Entry[SEARCH_EVALUATION_BATCH_SIZE];
+      size = 0;
+      matchingEntries = new ArrayList<Entry>(10);
+      matchingReferences = new ArrayList<SearchResultReference>(0);
+    }
+
+
+
+    /**
+     * Adds the provided entry to this batch.
+     *
+     * @param  entry  The entry to add.
+     *
+     * @return  {@code true} if this batch is now full and should be submitted
+     *          for evaluation, or {@code false} if not.
+     */
+    private boolean add(final Entry entry)
+    {
+      entries[size++] = entry;
+      return (size == entries.length);
+    }
+
+
+
+    /**
+     * Evaluates the entries in this batch, holding the results until they are
+     * retrieved.
+     */
+    public void run()
+    {
+      for (int i=0; i < size; i++)
+      {
+        evaluator.evaluateEntry(entries[i], matchingEntries,
+             matchingReferences);
+        entries[i] = null;
+      }
+    }
+
+
+
+    /**
+     * Retrieves the matching entries found when evaluating this batch.
+     *
+     * @return  The matching entries found when evaluating this batch.
+     */
+    private List<Entry> getMatchingEntries()
+    {
+      return matchingEntries;
+    }
+
+
+
+    /**
+     * Retrieves the search result references found when evaluating this batch.
+     *
+     * @return  The search result references found when evaluating this batch.
+     */
+    private List<SearchResultReference> getMatchingReferences()
+    {
+      return matchingReferences;
+    }
+  }
+
+
+
+  /**
+   * This class provides a mechanism for sending matching search result entries
+   * to the client as soon as they have been identified, rather than holding
+   * all of them in memory until the search has completed.  It may only be used
+   * for searches that do not need the complete set of matching entries before
+   * any can be returned (e.g., to sort them or return a page of them).
+   */
+  private final class SearchEntrySender
+  {
+    // Indicates whether to return all operational attributes.
+    private final boolean allOpAttrs;
+
+    // Indicates whether to return all user attributes.
+    private final boolean allUserAttrs;
+
+    // Indicates whether the size limit has been exceeded.
+    private boolean sizeLimitExceeded;
+
+    // Indicates whether to return only attribute types without values.
+    private final boolean typesOnly;
+
+    // The number of entries that have been sent.
+    private int entryCount;
+
+    // The message ID for the search request.
+    private final int messageID;
+
+    // The maximum number of entries to send.
+    private final int sizeLimit;
+
+    // The exception caught while trying to send an entry, if any.
+    private LDAPException sendException;
+
+    // Information about the specific attribute types to return.
+    private final Map<String,List<List<String>>> returnAttrs;
+
+    // The schema to use for types-only entries.
+    private final Schema schema;
+
+
+
+    /**
+     * Creates a new search entry sender with the provided information.
+     *
+     * @param  messageID     The message ID for the search request.
+     * @param  sizeLimit     The maximum number of entries to send.
+     * @param  allUserAttrs  Indicates whether to return all user attributes.
+     * @param  allOpAttrs    Indicates whether to return all operational
+     *                       attributes.
+     * @param  returnAttrs   A map with information about the specific
+     *                       attribute types to return.
+     * @param  typesOnly     Indicates whether to return only attribute types
+     *                       without values.
+     * @param  schema        The schema to use for types-only entries.  It may
+     *                       be {@code null} if no schema is available.
+     */
+    private SearchEntrySender(final int messageID, final int sizeLimit,
+                 final boolean allUserAttrs, final boolean allOpAttrs,
+                 final Map<String,List<List<String>>> returnAttrs,
+                 final boolean typesOnly, final Schema schema)
+    {
+      this.messageID    = messageID;
+      this.sizeLimit    = sizeLimit;
+      this.allUserAttrs = allUserAttrs;
+      this.allOpAttrs   = allOpAttrs;
+      this.returnAttrs  = returnAttrs;
+      this.typesOnly    = typesOnly;
+      this.schema       = schema;
+
+      entryCount        = 0;
+      sizeLimitExceeded = false;
+      sendException     = null;
+    }
+
+
+
+    /**
+     * Sends the provided entry to the client, pared down to the requested set
+     * of attributes.
+     *
+     * @param  entry  The entry to send.
+     *
+     * @return  {@code true} if the entry was sent, or {@code false} if it could
+     *          not be sent because the size limit would be exceeded or because
+     *          a problem was encountered while sending it.
+     */
+    private boolean send(final Entry entry)
+    {
+      entryCount++;
+      if (entryCount > sizeLimit)
+      {
+        sizeLimitExceeded = true;
+        return false;
+      }
+
+      final SearchResultEntry searchEntry = createSearchResultEntry(entry,
+           allUserAttrs, allOpAttrs, returnAttrs, typesOnly, schema);
+      try
+      {
+        connection.sendSearchResultEntry(messageID, searchEntry,
+             searchEntry.getControls());
+        return true;
+      }
+      catch (final LDAPException le)
+      {
+        Debug.debugException(le);
+        sendException = le;
+        return false;
+      }
+    }
+
+
+
+    /**
+     * Indicates whether the size limit was exceeded.
+     *
+     * @return  {@code true} if the size limit was exceeded, or {@code false}
+     *          if not.
+     */
+    private boolean sizeLimitExceeded()
+    {
+      return sizeLimitExceeded;
+    }
+
+
+
+    /**
+     * Retrieves the exception caught while trying to send an entry, if any.
+     *
+     * @return  The exception caught while trying to send an entry, or
+     *          {@code null} if all entries were sent successfully.
+     */
+    private LDAPException getSendException()
+    {
+      return sendException;
+    }
+  }
+
+
+
+  /**
+   * This class provides a subscriber that will send information about changes
+   * to the client for a persistent search or content synchronization request.
+   */
+  private final class ChangeNotificationSubscriber
+          extends InMemoryDirectoryServerChangeNotifier.Subscriber
+  {
+    // Indicates whether to return all operational attributes.
+    private final boolean allOpAttrs;
+
+    // Indicates whether to return all user attributes.
+    private final boolean allUserAttrs;
+
+    // Indicates whether entries within the changelog should be returned.
+    private final boolean includeChangeLog;
+
+    // Indicates whether LDAP subentries should be returned.
+    private final boolean includeSubEntries;
+
+    // Indicates whether persistent search results should include the entry
+    // change notification control.
+    private final boolean returnECs;
+
+    // Indicates whether to return only attribute types without values.
+    private final boolean typesOnly;
+
+    // The base DN for the search.
+    private final DN baseDN;
+
+    // The filter for the search.
+    private final Filter filter;
+
+    // The message ID for the search request.
+    private final int messageID;
+
+    // Information about the specific attribute types to return.
+    private final Map<String,List<List<String>>> returnAttrs;
+
+    // The scope for the search.
+    private final SearchScope scope;
+
+    // The types of changes to return for a persistent search, or null for a
+    // content synchronization request.
+    private final Set<PersistentSearchChangeType> changeTypes;
+
+
+
+    /**
+     * Creates a new change notification subscriber with the provided
+     * information.
+     *
+     * @param  messageID       The message ID for the search request.
+     * @param  baseDN          The parsed base DN for the search request.
+     * @param  request         The search request.
+     * @param  controlMap      The set of request controls, indexed by OID.
+     * @param  psearchControl  The persistent search request control, or
+     *                         {@code null} if this is for a content
+     *                         synchronization request.
+     */
+    private ChangeNotificationSubscriber(final int messageID, final DN baseDN,
+                 final SearchRequestProtocolOp request,
+                 final Map<String,Control> controlMap,
+                 final PersistentSearchRequestControl psearchControl)
+    {
+      super(changeNotifier, maxChangeNotificationBacklog);
+
+      this.messageID = messageID;
+      this.baseDN    = baseDN;
+
+      scope     = request.getScope();
+      filter    = request.getFilter();
+      typesOnly = request.typesOnly();
+
+      includeChangeLog  = (! baseDN.isNullDN());
+      includeSubEntries = ((scope == SearchScope.BASE) ||
+           controlMap.containsKey(
+                SubentriesRequestControl.SUBENTRIES_REQUEST_OID));
+
+      final AtomicBoolean allUserAttrsBool = new AtomicBoolean(false);
+      final AtomicBoolean allOpAttrsBool = new AtomicBoolean(false);
+      returnAttrs = processRequestedAttributes(request.getAttributes(),
+           allUserAttrsBool, allOpAttrsBool);
+      allUserAttrs = allUserAttrsBool.get();
+      allOpAttrs = allOpAttrsBool.get();
+
+      if (psearchControl == null)
+      {
+        changeTypes = null;
+        returnECs   = false;
+      }
+      else
+      {
+        changeTypes = psearchControl.getChangeTypes();
+        returnECs   = psearchControl.returnECs();
+      }
+    }
+
+
 
-    int semicolonPos = l.indexOf(';');
-    if (semicolonPos < 0)
+    /**
+     * {@inheritDoc}
+     */
+    @Override()
+    boolean accepts(final InMemoryDirectoryServerChangeNotifier.Change change)
     {
-      return new ObjectPair<String,List<String>>(l,
-           Collections.<String>emptyList());
+      if ((changeTypes != null) &&
+          (! changeTypes.contains(change.getChangeType())))
+      {
+        return false;
+      }
+
+      return (isInScope(change.getEntryBefore()) ||
+              isInScope(change.getEntryAfter()));
     }
 
-    final String name = l.substring(0, semicolonPos);
-    final ArrayList<String> optionList = new ArrayList<String>(1);
-    while (true)
+
+
+    /**
+     * Indicates whether the provided entry is within the scope of the search.
+     *
+     * @param  entry  The entry for which to make the determination.  It may be
+     *                {@code null}.
+     *
+     * @return  {@code true} if the provided entry is not {@code null} and is
+     *          within the scope of the search, or {@code false} if not.
+     */
+    private boolean isInScope(final Entry entry)
     {
-      final int nextSemicolonPos = l.indexOf(';', semicolonPos+1);
-      if (nextSemicolonPos < 0)
+      if (entry == null)
       {
-        optionList.add(l.substring(semicolonPos+1));
-        break;
+        return false;
       }
-      else
+
+      try
       {
-        optionList.add(l.substring(semicolonPos+1, nextSemicolonPos));
-        semicolonPos = nextSemicolonPos;
+        final DN dn = entry.getParsedDN();
+        if ((! includeChangeLog) && dn.isDescendantOf(changeLogBaseDN, true))
+        {
+          return false;
+        }
+
+        return dn.matchesBaseAndScope(baseDN, scope);
+      }
+      catch (final LDAPException le)
+      {
+        Debug.debugException(le);
+        return false;
       }
     }
 
-    return new ObjectPair<String,List<String>>(name, optionList);
-  }
-
 
 
-  /**
-   * Adds all-lowercase versions of the OID and all names for the provided
-   * attribute type definition to the given map with the given options.
-   *
-   * @param  d  The attribute type definition to process.
-   * @param  m  The map to which the OID and names should be added.
-   * @param  o  The array of attribute options to use in the map.  It should be
-   *            empty if no options are needed, and must not be {@code null}.
-   */
-  private void addAttributeOIDAndNames(final AttributeTypeDefinition d,
-                                       final Map<String,List<List<String>>> m,
-                                       final List<String> o)
-  {
-    if (d == null)
+    /**
+     * Indicates whether the provided entry matches the search criteria.
+     *
+     * @param  entry   The entry for which to make the determination.  It may
+     *                 be {@code null}.
+     * @param  schema  The schema to use when evaluating the filter.
+     *
+     * @return  {@code true} if the provided entry is not {@code null} and
+     *          matches the search criteria, or {@code false} if not.
+     */
+    private boolean matches(final Entry entry, final Schema schema)
     {
-      return;
-    }
+      if ((entry == null) || (! isInScope(entry)))
+      {
+        return false;
+      }
 
-    final String lowerOID = StaticUtils.toLowerCase(d.getOID());
-    if (lowerOID != null)
-    {
-      List<List<String>> l = m.get(lowerOID);
-      if (l == null)
+      if ((! includeSubEntries) &&
+          (entry.hasObjectClass("ldapSubEntry") ||
+           entry.hasObjectClass("inheritableLDAPSubEntry")))
       {
-        l = new ArrayList<List<String>>(1);
-        m.put(lowerOID, l);
+        return false;
       }
 
-      l.add(o);
+      try
+      {
+        return filter.matchesEntry(entry, schema);
+      }
+      catch (final LDAPException le)
+      {
+        Debug.debugException(le);
+        return false;
+      }
     }
 
-    for (final String name : d.getNames())
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override()
+    boolean deliver(final InMemoryDirectoryServerChangeNotifier.Change change)
     {
-      final String lowerName = StaticUtils.toLowerCase(name);
-      List<List<String>> l = m.get(lowerName);
-      if (l == null)
+      final Schema schema = schemaRef.get();
+      final Entry entryBefore = change.getEntryBefore();
+      final Entry entryAfter = change.getEntryAfter();
+
+      final SearchResultEntry searchEntry;
+      final Control responseControl;
+      if (changeTypes != null)
       {
-        l = new ArrayList<List<String>>(1);
-        m.put(lowerName, l);
+        // For a persistent search, the entry will be returned if it matches
+        // the search criteria after the change (or before it, for a delete).
+        final Entry entry;
+        if (change.getChangeType() == PersistentSearchChangeType.DELETE)
+        {
+          entry = entryBefore;
+        }
+        else
+        {
+          entry = entryAfter;
+        }
+
+        if (! matches(entry, schema))
+        {
+          return true;
+        }
+
+        searchEntry = createSearchResultEntry(entry, allUserAttrs, allOpAttrs,
+             returnAttrs, typesOnly, schema);
+        if (returnECs)
+        {
+          responseControl = new EntryChangeNotificationControl(
+               change.getChangeType(), change.getPreviousDN(), -1L);
+        }
+        else
+        {
+          responseControl = null;
+        }
       }
+      else
+      {
+        // For a content synchronization request, an entry that no longer
+        // matches the search criteria will be reported as deleted.
+        final boolean matchesBefore = matches(entryBefore, schema);
+        final boolean matchesAfter = matches(entryAfter, schema);
 
-      l.add(o);
+        final ContentSyncState state;
+        if (matchesAfter)
+        {
+          state = (matchesBefore ? ContentSyncState.MODIFY :
+               ContentSyncState.ADD);
+          searchEntry = createSearchResultEntry(entryAfter, allUserAttrs,
+               allOpAttrs, returnAttrs, typesOnly, schema);
+        }
+        else if (matchesBefore)
+        {
+          state = ContentSyncState.DELETE;
+          searchEntry = new SearchResultEntry(new Entry(entryBefore.getDN()));
+        }
+        else
+        {
+          return true;
+        }
+
+        final Entry entry = (matchesAfter ? entryAfter : entryBefore);
+        responseControl = new ContentSyncStateControl(state,
+             getEntryUUID(entry), change.getCookie());
+      }
+
+      try
+      {
+        if (responseControl == null)
+        {
+          connection.sendSearchResultEntry(messageID, searchEntry);
+        }
+        else
+        {
+          connection.sendSearchResultEntry(messageID, searchEntry,
+               responseControl);
+        }
+        return true;
+      }
+      catch (final LDAPException le)
+      {
+        Debug.debugException(le);
+        changeNotificationSubscribers.remove(messageID);
+        return false;
+      }
     }
 
-    // If a schema is available, then see if the attribute type has any
-    // subordinate types.  If so, then add them.
-    final Schema schema = schemaRef.get();
-    if (schema != null)
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override()
+    void backlogExceeded()
     {
-      for (final AttributeTypeDefinition subordinateType :
-           schema.getSubordinateAttributeTypes(d))
+      changeNotificationSubscribers.remove(messageID);
+
+      try
       {
-        addAttributeOIDAndNames(subordinateType, m, o);
+        connection.sendSearchResultDone(messageID,
+             new SearchResultDoneProtocolOp(
+                  ResultCode.ADMIN_LIMIT_EXCEEDED_INT_VALUE, null,
+                  ERR_MEM_HANDLER_CHANGE_NOTIFICATION_BACKLOG_EXCEEDED.get(
+                       getMaxBacklog()),
+                  null));
+      }
+      catch (final LDAPException le)
+      {
+        Debug.debugException(le);
       }
     }
   }
@@ -4765,66 +7273,42 @@ findEntriesAndRefs:
 
 
   /**
-   * Performs the necessary processing to determine whether the given entry
-   * should be returned as a search result entry or reference, or if it should
-   * not be returned at all.
+   * Creates a search result entry to return to the client for the provided
+   * entry.
    *
-   * @param  entry              The entry to be processed.
-   * @param  includeSubEntries  Indicates whether LDAP subentries should be
-   *                            returned to the client.
-   * @param  includeChangeLog   Indicates whether entries within the changelog
-   *                            should be returned to the client.
-   * @param  hasManageDsaIT     Indicates whether the request includes the
-   *                            ManageDsaIT control, which can change how smart
-   *                            referrals should be handled.
-   * @param  entryList          The list to which the entry should be added if
-   *                            it should be returned to the client as a search
-   *                            result entry.
-   * @param  referenceList      The list that should be updated if the provided
-   *                            entry represents a smart referral that should be
-   *                            returned as a search result reference.
+   * @param  entry         The entry to be returned.
+   * @param  allUserAttrs  Indicates whether to return all user attributes.
+   * @param  allOpAttrs    Indicates whether to return all operational
+   *                       attributes.
+   * @param  returnAttrs   A map with information about the specific attribute
+   *                       types to return.
+   * @param  typesOnly     Indicates whether to return only attribute types
+   *                       without values.
+   * @param  schema        The schema to use for a types-only entry.  It may be
+   *                       {@code null} if no schema is available.
+   *
+   * @return  The search result entry to return to the client.
    */
-  private void processSearchEntry(final Entry entry,
-                    final boolean includeSubEntries,
-                    final boolean includeChangeLog,
-                    final boolean hasManageDsaIT,
-                    final List<Entry> entryList,
-                    final List<SearchResultReference> referenceList)
+  private SearchResultEntry createSearchResultEntry(final Entry entry,
+               final boolean allUserAttrs, final boolean allOpAttrs,
+               final Map<String,List<List<String>>> returnAttrs,
+               final boolean typesOnly, final Schema schema)
   {
-    // See if the entry should be suppressed as an LDAP subentry.
-    if ((! includeSubEntries) &&
-        (entry.hasObjectClass("ldapSubEntry") ||
-         entry.hasObjectClass("inheritableLDAPSubEntry")))
-    {
-      return;
-    }
-
-    // See if the entry should be suppressed as a changelog entry.
-    try
+    final Entry trimmedEntry = trimForRequestedAttributes(entry, allUserAttrs,
+         allOpAttrs, returnAttrs);
+    if (typesOnly)
     {
-      if ((! includeChangeLog) &&
-           (entry.getParsedDN().isDescendantOf(changeLogBaseDN, true)))
+      final Entry typesOnlyEntry = new Entry(trimmedEntry.getDN(), schema);
+      for (final Attribute a : trimmedEntry.getAttributes())
       {
-        return;
+        typesOnlyEntry.addAttribute(new Attribute(a.getName()));
       }
+      return new SearchResultEntry(typesOnlyEntry);
     }
-    catch (final Exception e)
-    {
-      // This should never happen.
-      Debug.debugException(e);
-    }
-
-    // See if the entry is a referral and should result in a reference rather
-    // than an entry.
-    if ((! hasManageDsaIT) && entry.hasObjectClass("referral") &&
-        entry.hasAttribute("ref"))
+    else
     {
-      referenceList.add(new SearchResultReference(
-           entry.getAttributeValues("ref"), NO_CONTROLS));
-      return;
+      return new SearchResultEntry(trimmedEntry);
     }
-
-    entryList.add(entry);
   }
 
 
@@ -5160,8 +7644,8 @@ findEntriesAndRefs:
   /**
    * Adds the provided changelog entry to the data set, removing an old entry if
    * necessary to remain within the maximum allowed number of changes.  This
-   * must only be called from a synchronized method, and the change number for
-   * the changelog entry must have been obtained by calling
+   * must only be called while holding the write lock, and the change number
+   * for the changelog entry must have been obtained by calling
    * {@code lastChangeNumber.incrementAndGet()}.
    *
    * @param  e        The changelog entry to add to the data set.
@@ -5202,10 +7686,13 @@ findEntriesAndRefs:
            StaticUtils.encodeGeneralizedTime(d)));
     }
 
-    entryMap.put(dn, new ReadOnlyEntry(entry));
+    final ReadOnlyEntry changeLogEntry = new ReadOnlyEntry(entry);
+    entryMap.put(dn, changeLogEntry);
     indexAdd(entry);
 
     // Update the first change number and/or trim the changelog if necessary.
+    // This is done before publishing the new changelog entry so that the
+    // journal will reflect the updated first change number.
     final long firstNumber = firstChangeNumber.get();
     if (changeNumber == 1L)
     {
@@ -5225,6 +7712,50 @@ findEntriesAndRefs:
              new RDN("changeNumber", String.valueOf(firstNumber), schema),
              changeLogBaseDN));
         indexDelete(deletedEntry);
+        publishChange(PersistentSearchChangeType.DELETE,
+             deletedEntry, null);
+      }
+    }
+
+    publishChange(PersistentSearchChangeType.ADD, null, changeLogEntry);
+  }
+
+
+
+  /**
+   * Publishes information about a change that has been applied to the data
+   * set to any persistent search and content synchronization requests that
+   * may be interested in it, and writes it to the journal if one is
+   * maintained.  This must only be called while holding the write lock, after
+   * the change has been applied and the first and last change numbers have
+   * been updated.
+   *
+   * @param  changeType   The type of change that was processed.
+   * @param  entryBefore  The entry as it appeared before the change.  It will
+   *                      be {@code null} for an add.
+   * @param  entryAfter   The entry as it appeared after the change.  It will
+   *                      be {@code null} for a delete.
+   */
+  private void publishChange(final PersistentSearchChangeType changeType,
+                             final Entry entryBefore, final Entry entryAfter)
+  {
+    changeNotifier.publish(changeType, entryBefore, entryAfter);
+
+    if (journal != null)
+    {
+      journal.append(changeType, entryBefore, entryAfter,
+           firstChangeNumber.get(), lastChangeNumber.get());
+      if (journal.checkpointNeeded())
+      {
+        try
+        {
+          journal.checkpoint(createSnapshot(), subschemaSubentryRef.get());
+        }
+        catch (final LDAPException le)
+        {
+          // The journal will try again after more changes have been made.
+          Debug.debugException(le);
+        }
       }
     }
   }
@@ -5299,7 +7830,8 @@ findEntriesAndRefs:
   public DN getDNForAuthzID(final String authzID)
          throws LDAPException
   {
-    synchronized (entryMap)
+    readLock.lock();
+    try
     {
       final String lowerAuthzID = StaticUtils.toLowerCase(authzID);
       if (lowerAuthzID.startsWith("dn:"))
@@ -5344,6 +7876,10 @@ findEntriesAndRefs:
              ERR_MEM_HANDLER_NO_SUCH_IDENTITY.get(authzID));
       }
     }
+    finally
+    {
+      readLock.unlock();
+    }
   }
 
 
@@ -5601,7 +8137,8 @@ findEntriesAndRefs:
   public boolean entryExists(final String dn, final String filter)
          throws LDAPException
   {
-    synchronized (entryMap)
+    readLock.lock();
+    try
     {
       final Entry e = getEntry(dn);
       if (e == null)
@@ -5620,6 +8157,10 @@ findEntriesAndRefs:
         return false;
       }
     }
+    finally
+    {
+      readLock.unlock();
+    }
   }
 
 
@@ -5641,7 +8182,8 @@ findEntriesAndRefs:
   public boolean entryExists(final Entry entry)
          throws LDAPException
   {
-    synchronized (entryMap)
+    readLock.lock();
+    try
     {
       final Entry e = getEntry(entry.getDN());
       if (e == null)
@@ -5662,6 +8204,10 @@ findEntriesAndRefs:
 
       return true;
     }
+    finally
+    {
+      readLock.unlock();
+    }
   }
 
 
@@ -5703,7 +8249,8 @@ findEntriesAndRefs:
   public void assertEntryExists(final String dn, final String filter)
          throws LDAPException, AssertionError
   {
-    synchronized (entryMap)
+    readLock.lock();
+    try
     {
       final Entry e = getEntry(dn);
       if (e == null)
@@ -5728,6 +8275,10 @@ findEntriesAndRefs:
              ERR_MEM_HANDLER_TEST_ENTRY_DOES_NOT_MATCH_FILTER.get(dn, filter));
       }
     }
+    finally
+    {
+      readLock.unlock();
+    }
   }
 
 
@@ -5749,7 +8300,8 @@ findEntriesAndRefs:
   public void assertEntryExists(final Entry entry)
          throws LDAPException, AssertionError
   {
-    synchronized (entryMap)
+    readLock.lock();
+    try
     {
       final Entry e = getEntry(entry.getDN());
       if (e == null)
@@ -5790,6 +8342,10 @@ findEntriesAndRefs:
         throw new AssertionError(StaticUtils.concatenateStrings(messages));
       }
     }
+    finally
+    {
+      readLock.unlock();
+    }
   }
 
 
@@ -5809,7 +8365,8 @@ findEntriesAndRefs:
   public List<String> getMissingEntryDNs(final Collection<String> dns)
          throws LDAPException
   {
-    synchronized (entryMap)
+    readLock.lock();
+    try
     {
       final List<String> missingDNs = new ArrayList<String>(dns.size());
       for (final String dn : dns)
@@ -5823,6 +8380,10 @@ findEntriesAndRefs:
 
       return missingDNs;
     }
+    finally
+    {
+      readLock.unlock();
+    }
   }
 
 
@@ -5841,7 +8402,8 @@ findEntriesAndRefs:
   public void assertEntriesExist(final Collection<String> dns)
          throws LDAPException, AssertionError
   {
-    synchronized (entryMap)
+    readLock.lock();
+    try
     {
       final List<String> missingDNs = getMissingEntryDNs(dns);
       if (missingDNs.isEmpty())
@@ -5857,6 +8419,10 @@ findEntriesAndRefs:
 
       throw new AssertionError(StaticUtils.concatenateStrings(messages));
     }
+    finally
+    {
+      readLock.unlock();
+    }
   }
 
 
@@ -5881,7 +8447,8 @@ findEntriesAndRefs:
                            final Collection<String> attributeNames)
          throws LDAPException
   {
-    synchronized (entryMap)
+    readLock.lock();
+    try
     {
       final Entry e = getEntry(dn);
       if (e == null)
@@ -5903,6 +8470,10 @@ findEntriesAndRefs:
 
       return missingAttrs;
     }
+    finally
+    {
+      readLock.unlock();
+    }
   }
 
 
@@ -5925,7 +8496,8 @@ findEntriesAndRefs:
                                     final Collection<String> attributeNames)
         throws LDAPException, AssertionError
   {
-    synchronized (entryMap)
+    readLock.lock();
+    try
     {
       final List<String> missingAttrs =
            getMissingAttributeNames(dn, attributeNames);
@@ -5946,6 +8518,10 @@ findEntriesAndRefs:
 
       throw new AssertionError(StaticUtils.concatenateStrings(messages));
     }
+    finally
+    {
+      readLock.unlock();
+    }
   }
 
 
@@ -5973,7 +8549,8 @@ findEntriesAndRefs:
                            final Collection<String> attributeValues)
        throws LDAPException
   {
-    synchronized (entryMap)
+    readLock.lock();
+    try
     {
       final Entry e = getEntry(dn);
       if (e == null)
@@ -5995,6 +8572,10 @@ findEntriesAndRefs:
 
       return missingValues;
     }
+    finally
+    {
+      readLock.unlock();
+    }
   }
 
 
@@ -6021,7 +8602,8 @@ findEntriesAndRefs:
                                 final Collection<String> attributeValues)
         throws LDAPException, AssertionError
   {
-    synchronized (entryMap)
+    readLock.lock();
+    try
     {
       final List<String> missingValues =
            getMissingAttributeValues(dn, attributeName, attributeValues);
@@ -6052,6 +8634,10 @@ findEntriesAndRefs:
 
       throw new AssertionError(StaticUtils.concatenateStrings(messages));
     }
+    finally
+    {
+      readLock.unlock();
+    }
   }
 
 
@@ -6096,7 +8682,8 @@ findEntriesAndRefs:
                                      final Collection<String> attributeNames)
          throws LDAPException, AssertionError
   {
-    synchronized (entryMap)
+    readLock.lock();
+    try
     {
       final Entry e = getEntry(dn);
       if (e == null)
@@ -6121,6 +8708,10 @@ findEntriesAndRefs:
         throw new AssertionError(StaticUtils.concatenateStrings(messages));
       }
     }
+    finally
+    {
+      readLock.unlock();
+    }
   }
 
 
@@ -6145,7 +8736,8 @@ findEntriesAndRefs:
                                  final Collection<String> attributeValues)
          throws LDAPException, AssertionError
   {
-    synchronized (entryMap)
+    readLock.lock();
+    try
     {
       final Entry e = getEntry(dn);
       if (e == null)
@@ -6171,5 +8763,9 @@ findEntriesAndRefs:
         throw new AssertionError(StaticUtils.concatenateStrings(messages));
       }
     }
+    finally
+    {
+      readLock.unlock();
+    }
   }
 }
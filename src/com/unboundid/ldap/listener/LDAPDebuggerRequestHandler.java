@@ -627,6 +627,12 @@ public final class LDAPDebuggerRequestHandler
 
     final LDAPMessage responseMessage = requestHandler.processSearchRequest(
          messageID, request, controls);
+    if (responseMessage == null)
+    {
+      // The search is still active (e.g., a persistent search), so there is
+      // no result to log.
+      return null;
+    }
 
     b.setLength(0);
     appendHeader(b, responseMessage.getMessageID());
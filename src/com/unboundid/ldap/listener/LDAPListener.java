@@ -24,12 +24,18 @@ package com.unboundid.ldap.listener;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.channels.ServerSocketChannel;
 import java.util.ArrayList;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
@@ -40,6 +46,7 @@ import com.unboundid.ldap.sdk.ResultCode;
 import com.unboundid.ldap.sdk.extensions.NoticeOfDisconnectionExtendedResult;
 import com.unboundid.util.Debug;
 import com.unboundid.util.InternalUseOnly;
+import com.unboundid.util.LDAPSDKThreadFactory;
 import com.unboundid.util.ThreadSafety;
 import com.unboundid.util.ThreadSafetyLevel;
 
@@ -90,6 +97,15 @@ import static com.unboundid.ldap.listener.ListenerMessages.*;
  * connection.close();
  * listener.shutDown(true);
  * </PRE>
+ * <BR><BR>
+ * By default, the listener will create a separate thread for each client
+ * connection that it accepts.  If the listener will need to support a large
+ * number of concurrent connections, then the
+ * {@link LDAPListenerConfig#setSelectorThreadCount} method may be used to
+ * configure it to multiplex client connections across a small number of
+ * selector threads, with requests processed by a bounded pool of worker
+ * threads.  The {@link LDAPListenerRequestHandler} API is the same in either
+ * case.
  */
 @ThreadSafety(level=ThreadSafetyLevel.NOT_THREADSAFE)
 public final class LDAPListener
@@ -105,6 +121,12 @@ public final class LDAPListener
   // The server socket that is being used to accept connections.
   private final AtomicReference<ServerSocket> serverSocket;
 
+  // The executor used to process requests read by selector threads.
+  private final AtomicReference<ExecutorService> requestExecutor;
+
+  // The selector threads used to read requests from clients, if any.
+  private final AtomicReference<LDAPListenerSelectorThread[]> selectorThreads;
+
   // The thread that is currently listening for new client connections.
   private final AtomicReference<Thread> thread;
 
@@ -135,6 +157,8 @@ public final class LDAPListener
     nextConnectionID = new AtomicLong(0L);
     serverSocket = new AtomicReference<ServerSocket>(null);
     thread = new AtomicReference<Thread>(null);
+    requestExecutor = new AtomicReference<ExecutorService>(null);
+    selectorThreads = new AtomicReference<LDAPListenerSelectorThread[]>(null);
     startLatch = new CountDownLatch(1);
     establishedConnections =
          new ConcurrentHashMap<Long,LDAPListenerClientConnection>();
@@ -155,7 +179,24 @@ public final class LDAPListener
     final ServerSocketFactory f = config.getServerSocketFactory();
     final InetAddress a = config.getListenAddress();
     final int p = config.getListenPort();
-    if (a == null)
+    if (useSelectorThreads())
+    {
+      // A server socket created through a channel will accept sockets that
+      // are also backed by channels, which can be used with selectors.
+      final ServerSocket s = ServerSocketChannel.open().socket();
+      if (a == null)
+      {
+        s.bind(new InetSocketAddress(p), 128);
+      }
+      else
+      {
+        s.bind(new InetSocketAddress(a, p), 128);
+      }
+
+      serverSocket.set(s);
+      startSelectorThreads();
+    }
+    else if (a == null)
     {
       serverSocket.set(f.createServerSocket(config.getListenPort(), 128));
     }
@@ -187,6 +228,77 @@ public final class LDAPListener
 
 
 
+  /**
+   * Indicates whether this listener should use selector threads to read
+   * requests from clients.  This requires that selector threads be enabled in
+   * the configuration and that the JVM-default server socket factory be used.
+   *
+   * @return  {@code true} if this listener should use selector threads, or
+   *          {@code false} if each connection should have its own thread.
+   */
+  private boolean useSelectorThreads()
+  {
+    return ((config.getSelectorThreadCount() > 0) &&
+         (config.getServerSocketFactory().getClass() ==
+              ServerSocketFactory.getDefault().getClass()));
+  }
+
+
+
+  /**
+   * Creates and starts the selector threads and the request executor.
+   *
+   * @throws  IOException  If a problem occurs while creating a selector.
+   */
+  private void startSelectorThreads()
+          throws IOException
+  {
+    final int port = serverSocket.get().getLocalPort();
+    final LDAPListenerSelectorThread[] threads =
+         new LDAPListenerSelectorThread[config.getSelectorThreadCount()];
+    try
+    {
+      for (int i=0; i < threads.length; i++)
+      {
+        threads[i] = new LDAPListenerSelectorThread(
+             "LDAP Listener Selector Thread " + (i+1) + " for port " + port);
+      }
+    }
+    catch (final IOException ioe)
+    {
+      Debug.debugException(ioe);
+      for (final LDAPListenerSelectorThread t : threads)
+      {
+        if (t != null)
+        {
+          t.shutDown();
+        }
+      }
+
+      serverSocket.getAndSet(null).close();
+      throw ioe;
+    }
+
+    int numWorkers = config.getRequestWorkerThreadCount();
+    if (numWorkers <= 0)
+    {
+      numWorkers = 2 * Runtime.getRuntime().availableProcessors();
+    }
+
+    requestExecutor.set(new ThreadPoolExecutor(numWorkers, numWorkers, 0L,
+         TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+         new LDAPSDKThreadFactory(
+              "LDAP Listener Request Worker Thread for port " + port, true)));
+
+    for (final LDAPListenerSelectorThread t : threads)
+    {
+      t.start();
+    }
+    selectorThreads.set(threads);
+  }
+
+
+
   /**
    * Operates in a loop, waiting for client connections to arrive and ensuring
    * that they are handled properly.  This method is for internal use only and
@@ -257,7 +369,7 @@ public final class LDAPListener
         }
 
         establishedConnections.put(c.getConnectionID(), c);
-        c.start();
+        c.startReading();
       }
     }
     finally
@@ -329,7 +441,10 @@ public final class LDAPListener
   /**
    * Indicates that this listener should stop accepting connections.  It may
    * optionally also terminate any existing connections that are already
-   * established.
+   * established.  If the listener uses selector threads and existing
+   * connections are not closed, then the selector threads and request worker
+   * threads will be stopped as soon as the last of those connections has been
+   * closed.
    *
    * @param  closeExisting  Indicates whether to close existing connections that
    *                        may already be established.
@@ -388,6 +503,36 @@ public final class LDAPListener
     if (closeExisting)
     {
       closeAllConnections(false);
+      stopSelectorThreads();
+    }
+    else if (establishedConnections.isEmpty())
+    {
+      stopSelectorThreads();
+    }
+  }
+
+
+
+  /**
+   * Stops the selector threads and the request executor, if they are in use.
+   * This may safely be called more than once, and from any thread.
+   */
+  private void stopSelectorThreads()
+  {
+    final LDAPListenerSelectorThread[] threads =
+         selectorThreads.getAndSet(null);
+    if (threads != null)
+    {
+      for (final LDAPListenerSelectorThread st : threads)
+      {
+        st.shutDown();
+      }
+    }
+
+    final ExecutorService executor = requestExecutor.getAndSet(null);
+    if (executor != null)
+    {
+      executor.shutdown();
     }
   }
 
@@ -454,6 +599,44 @@ public final class LDAPListener
 
 
 
+  /**
+   * Retrieves the selector thread that should be used to service the
+   * connection with the provided connection ID.
+   *
+   * @param  connectionID  The connection ID for the connection.
+   *
+   * @return  The selector thread that should be used to service the
+   *          connection, or {@code null} if this listener is not using
+   *          selector threads.
+   */
+  LDAPListenerSelectorThread getSelectorThread(final long connectionID)
+  {
+    final LDAPListenerSelectorThread[] threads = selectorThreads.get();
+    if (threads == null)
+    {
+      return null;
+    }
+
+    return threads[(int) (connectionID % threads.length)];
+  }
+
+
+
+  /**
+   * Retrieves the executor that should be used to process requests read by
+   * selector threads.
+   *
+   * @return  The executor that should be used to process requests read by
+   *          selector threads, or {@code null} if this listener is not using
+   *          selector threads.
+   */
+  ExecutorService getRequestExecutor()
+  {
+    return requestExecutor.get();
+  }
+
+
+
   /**
    * Retrieves the connection ID that should be used for the next connection
    * accepted by this listener.
@@ -477,5 +660,13 @@ public final class LDAPListener
   void connectionClosed(final LDAPListenerClientConnection connection)
   {
     establishedConnections.remove(connection.getConnectionID());
+
+    // If the listener has been shut down without closing existing
+    // connections, then stop the selector threads once the last of them is
+    // gone.
+    if (stopRequested.get() && establishedConnections.isEmpty())
+    {
+      stopSelectorThreads();
+    }
   }
 }
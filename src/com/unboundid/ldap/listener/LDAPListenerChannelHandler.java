@@ -0,0 +1,365 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.listener;
+
+
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.unboundid.ldap.protocol.LDAPMessage;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.util.Debug;
+import com.unboundid.util.InternalUseOnly;
+import com.unboundid.util.StaticUtils;
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+import static com.unboundid.ldap.listener.ListenerMessages.*;
+
+
+
+/**
+ * This class provides the logic used to service a client connection through a
+ * selector thread rather than a dedicated connection thread.  Requests are read
+ * by the selector thread and queued, and a request worker thread will be used
+ * to process them one at a time in the order that they were received.  If too
+ * many requests are queued for a single connection, then the selector thread
+ * will stop reading from that connection until the backlog has been reduced.
+ */
+@ThreadSafety(level=ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+final class LDAPListenerChannelHandler
+      implements Runnable
+{
+  /**
+   * The maximum number of requests that may be queued for a single connection
+   * before the selector thread stops reading from it.
+   */
+  static final int MAX_QUEUED_REQUESTS = 64;
+
+
+
+  // Indicates whether the end of the input stream has been reached.
+  private volatile boolean endOfInput;
+
+  // Indicates whether a task to process queued requests has been submitted to
+  // the executor and has not yet completed.
+  private final AtomicBoolean processingScheduled;
+
+  // Indicates whether reading has been suspended because too many requests
+  // are queued.
+  private final AtomicBoolean readingSuspended;
+
+  // Indicates whether the connection has been terminated.
+  private final AtomicBoolean terminated;
+
+  // The number of requests that are queued for processing.
+  private final AtomicInteger queuedRequestCount;
+
+  // The requests that have been read but not yet processed.
+  private final ConcurrentLinkedQueue<LDAPMessage> queuedRequests;
+
+  // The executor that will be used to process requests.
+  private final Executor requestExecutor;
+
+  // The exception caught while reading from the client, if any.
+  private volatile LDAPException readException;
+
+  // The client connection with which this handler is associated.
+  private final LDAPListenerClientConnection connection;
+
+  // The reader used to read requests from the channel.
+  private final LDAPListenerChannelReader channelReader;
+
+  // The selector thread with which this handler is associated.
+  private final LDAPListenerSelectorThread selectorThread;
+
+  // The selection key for the channel, once it has been registered.
+  private volatile SelectionKey selectionKey;
+
+  // The channel used to communicate with the client.
+  private final SocketChannel channel;
+
+
+
+  /**
+   * Creates a new channel handler with the provided information.
+   *
+   * @param  connection       The client connection with which this handler is
+   *                          associated.
+   * @param  channel          The channel used to communicate with the client.
+   *                          It must have been configured in non-blocking
+   *                          mode.
+   * @param  selectorThread   The selector thread that will be used to read
+   *                          requests from the channel.
+   * @param  requestExecutor  The executor that will be used to process
+   *                          requests.
+   */
+  LDAPListenerChannelHandler(final LDAPListenerClientConnection connection,
+                             final SocketChannel channel,
+                             final LDAPListenerSelectorThread selectorThread,
+                             final Executor requestExecutor)
+  {
+    this.connection      = connection;
+    this.channel         = channel;
+    this.selectorThread  = selectorThread;
+    this.requestExecutor = requestExecutor;
+
+    channelReader       = new LDAPListenerChannelReader(channel);
+    queuedRequests      = new ConcurrentLinkedQueue<LDAPMessage>();
+    queuedRequestCount  = new AtomicInteger(0);
+    processingScheduled = new AtomicBoolean(false);
+    readingSuspended    = new AtomicBoolean(false);
+    terminated          = new AtomicBoolean(false);
+    endOfInput          = false;
+    readException       = null;
+    selectionKey        = null;
+  }
+
+
+
+  /**
+   * Arranges for the selector thread to begin reading requests from the
+   * channel.
+   */
+  void start()
+  {
+    selectorThread.registerChannel(this);
+  }
+
+
+
+  /**
+   * Registers the channel with the provided selector.  This must only be
+   * called by the selector thread.
+   *
+   * @param  selector  The selector with which to register the channel.
+   */
+  void register(final Selector selector)
+  {
+    try
+    {
+      selectionKey = channel.register(selector, SelectionKey.OP_READ, this);
+    }
+    catch (final Exception e)
+    {
+      Debug.debugException(e);
+      endOfInput = true;
+      scheduleProcessing();
+    }
+  }
+
+
+
+  /**
+   * Reads any data that is available from the channel and schedules any
+   * complete requests for processing.  This must only be called by the
+   * selector thread.
+   */
+  void readAvailable()
+  {
+    final ArrayList<LDAPMessage> messages = new ArrayList<LDAPMessage>(1);
+    boolean channelOpen;
+    try
+    {
+      channelOpen = channelReader.readMessages(messages);
+    }
+    catch (final LDAPException le)
+    {
+      Debug.debugException(le);
+      readException = le;
+      channelOpen = false;
+    }
+    catch (final IOException ioe)
+    {
+      Debug.debugException(ioe);
+      readException = new LDAPException(ResultCode.SERVER_DOWN,
+           ERR_CHANNEL_HANDLER_READ_ERROR.get(
+                StaticUtils.getExceptionMessage(ioe)),
+           ioe);
+      channelOpen = false;
+    }
+
+    for (final LDAPMessage m : messages)
+    {
+      queuedRequests.add(m);
+      queuedRequestCount.incrementAndGet();
+    }
+
+    if (! channelOpen)
+    {
+      endOfInput = true;
+      selectionKey.cancel();
+    }
+    else if (queuedRequestCount.get() >= MAX_QUEUED_REQUESTS)
+    {
+      selectionKey.interestOps(0);
+      readingSuspended.set(true);
+
+      // The worker may have drained the queue before the flag was set, in
+      // which case it will not have resumed reading.
+      if ((queuedRequestCount.get() < MAX_QUEUED_REQUESTS) &&
+          readingSuspended.compareAndSet(true, false))
+      {
+        selectionKey.interestOps(SelectionKey.OP_READ);
+      }
+    }
+
+    if ((! messages.isEmpty()) || endOfInput)
+    {
+      scheduleProcessing();
+    }
+  }
+
+
+
+  /**
+   * Resumes reading from the channel after it had been suspended.  This must
+   * only be called by the selector thread.
+   */
+  void resumeReading()
+  {
+    final SelectionKey key = selectionKey;
+    if ((key != null) && key.isValid())
+    {
+      key.interestOps(SelectionKey.OP_READ);
+    }
+  }
+
+
+
+  /**
+   * Submits a task to process queued requests if one is not already pending.
+   */
+  private void scheduleProcessing()
+  {
+    if (processingScheduled.compareAndSet(false, true))
+    {
+      try
+      {
+        requestExecutor.execute(this);
+      }
+      catch (final Exception e)
+      {
+        // This will only happen if the executor has been shut down, in which
+        // case the connection can no longer be serviced.
+        Debug.debugException(e);
+        processingScheduled.set(false);
+        terminate();
+      }
+    }
+  }
+
+
+
+  /**
+   * Processes all queued requests for the connection.  This method is for
+   * internal use only and must not be invoked by external callers.
+   */
+  @InternalUseOnly()
+  public void run()
+  {
+    while (true)
+    {
+      while (true)
+      {
+        final LDAPMessage m = queuedRequests.poll();
+        if (m == null)
+        {
+          break;
+        }
+
+        if ((queuedRequestCount.decrementAndGet() < MAX_QUEUED_REQUESTS) &&
+            readingSuspended.compareAndSet(true, false))
+        {
+          selectorThread.resumeReading(this);
+        }
+
+        if (terminated.get())
+        {
+          continue;
+        }
+
+        if (! connection.processRequest(m))
+        {
+          terminated.set(true);
+        }
+      }
+
+      if (endOfInput)
+      {
+        terminate();
+      }
+
+      processingScheduled.set(false);
+
+      // Requests may have been queued, or the end of input reached, after the
+      // checks above but before the scheduled flag was cleared.
+      final boolean moreWork = (! queuedRequests.isEmpty()) ||
+           (endOfInput && (! terminated.get()));
+      if ((! moreWork) || (! processingScheduled.compareAndSet(false, true)))
+      {
+        return;
+      }
+    }
+  }
+
+
+
+  /**
+   * Closes the client connection if that has not already been done.
+   */
+  private void terminate()
+  {
+    if (! terminated.compareAndSet(false, true))
+    {
+      return;
+    }
+
+    final LDAPException le = readException;
+    if (le == null)
+    {
+      // This indicates that the client has closed the connection without an
+      // unbind request.  It's not all that nice, but it isn't an error so we
+      // won't notify the exception handler.
+      try
+      {
+        connection.close();
+      }
+      catch (final Exception e)
+      {
+        Debug.debugException(e);
+      }
+    }
+    else
+    {
+      connection.close(le);
+    }
+  }
+}
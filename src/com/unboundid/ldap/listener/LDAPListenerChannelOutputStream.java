@@ -0,0 +1,225 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.listener;
+
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+import com.unboundid.util.Debug;
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+import static com.unboundid.ldap.listener.ListenerMessages.*;
+
+
+
+/**
+ * This class provides an output stream that can be used to write data to a
+ * non-blocking socket channel.  If the channel is not able to accept all of the
+ * data immediately, then the write will block until it can, or until the
+ * configured write timeout elapses without any progress, in which case the
+ * channel will be closed.  The caller is responsible for ensuring that only one
+ * thread writes at any given time.
+ */
+@ThreadSafety(level=ThreadSafetyLevel.NOT_THREADSAFE)
+final class LDAPListenerChannelOutputStream
+      extends OutputStream
+{
+  /**
+   * The maximum length of time in milliseconds to wait for the channel to
+   * become writable before checking again.
+   */
+  private static final long WRITE_WAIT_INTERVAL_MILLIS = 1000L;
+
+
+
+  // The channel to which data will be written.
+  private final SocketChannel channel;
+
+  // The maximum length of time in milliseconds that a write may go without
+  // making any progress before the channel is closed, or zero if there is no
+  // limit.
+  private final long writeTimeoutMillis;
+
+  // A selector that will be used to wait for the channel to become writable.
+  // It will only be created if it is needed.
+  private Selector writeSelector;
+
+
+
+  /**
+   * Creates a new output stream that will write to the provided channel.
+   *
+   * @param  channel             The channel to which data will be written.
+   *                              It must have been configured in non-blocking
+   *                              mode.
+   * @param  writeTimeoutMillis  The maximum length of time in milliseconds
+   *                              that a write may go without making any
+   *                              progress before the channel is closed.  A
+   *                              value that is less than or equal to zero
+   *                              indicates that there should be no limit.
+   */
+  LDAPListenerChannelOutputStream(final SocketChannel channel,
+                                  final long writeTimeoutMillis)
+  {
+    this.channel = channel;
+
+    if (writeTimeoutMillis > 0L)
+    {
+      this.writeTimeoutMillis = writeTimeoutMillis;
+    }
+    else
+    {
+      this.writeTimeoutMillis = 0L;
+    }
+
+    writeSelector = null;
+  }
+
+
+
+  /**
+   * Writes the provided byte to the channel.
+   *
+   * @param  b  The byte to be written.
+   *
+   * @throws  IOException  If a problem occurs while writing to the channel.
+   */
+  @Override()
+  public void write(final int b)
+         throws IOException
+  {
+    write(new byte[] { (byte) (b & 0xFF) }, 0, 1);
+  }
+
+
+
+  /**
+   * Writes the specified portion of the provided array to the channel.
+   *
+   * @param  b    The array containing the data to be written.
+   * @param  off  The offset of the first byte to write.
+   * @param  len  The number of bytes to write.
+   *
+   * @throws  IOException  If a problem occurs while writing to the channel,
+   *                       or if the write timeout elapsed without any
+   *                       progress.
+   */
+  @Override()
+  public void write(final byte[] b, final int off, final int len)
+         throws IOException
+  {
+    final ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+    long stallStartTime = -1L;
+    while (buffer.hasRemaining())
+    {
+      if (channel.write(buffer) > 0)
+      {
+        stallStartTime = -1L;
+        continue;
+      }
+
+      long waitTimeMillis = WRITE_WAIT_INTERVAL_MILLIS;
+      if (writeTimeoutMillis > 0L)
+      {
+        final long currentTime = System.currentTimeMillis();
+        if (stallStartTime < 0L)
+        {
+          stallStartTime = currentTime;
+        }
+
+        final long remainingMillis =
+             (stallStartTime + writeTimeoutMillis) - currentTime;
+        if (remainingMillis <= 0L)
+        {
+          // The client isn't reading the data that we're sending.  Close the
+          // channel so that the connection can't tie up the thread any longer.
+          try
+          {
+            channel.close();
+          }
+          catch (final Exception e)
+          {
+            Debug.debugException(e);
+          }
+
+          throw new IOException(ERR_CHANNEL_OUTPUT_STREAM_WRITE_TIMEOUT.get(
+               writeTimeoutMillis));
+        }
+
+        waitTimeMillis = Math.min(waitTimeMillis, remainingMillis);
+      }
+
+      awaitWritable(waitTimeMillis);
+    }
+  }
+
+
+
+  /**
+   * Waits for the channel to become writable.
+   *
+   * @param  waitTimeMillis  The maximum length of time in milliseconds to
+   *                         wait.
+   *
+   * @throws  IOException  If a problem occurs while waiting.
+   */
+  private void awaitWritable(final long waitTimeMillis)
+          throws IOException
+  {
+    if (writeSelector == null)
+    {
+      writeSelector = Selector.open();
+      channel.register(writeSelector, SelectionKey.OP_WRITE);
+    }
+
+    writeSelector.select(waitTimeMillis);
+    writeSelector.selectedKeys().clear();
+  }
+
+
+
+  /**
+   * Closes the selector used to wait for the channel to become writable, if
+   * one was created.  The channel itself will not be closed.
+   */
+  @Override()
+  public void close()
+  {
+    if (writeSelector != null)
+    {
+      try
+      {
+        writeSelector.close();
+      }
+      catch (final Exception e)
+      {
+        Debug.debugException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.listener;
+
+
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+
+import com.unboundid.asn1.ASN1StreamReader;
+import com.unboundid.ldap.protocol.LDAPMessage;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+import static com.unboundid.ldap.listener.ListenerMessages.*;
+
+
+
+/**
+ * This class provides a mechanism for reading LDAP messages from a
+ * non-blocking socket channel.  Data is accumulated in a buffer until at least
+ * one complete message is available, and complete messages are then decoded
+ * and returned to the caller.  Partial messages will be retained until the
+ * remainder of the data is available.
+ */
+@ThreadSafety(level=ThreadSafetyLevel.NOT_THREADSAFE)
+final class LDAPListenerChannelReader
+{
+  /**
+   * The initial size to use for the read buffer.
+   */
+  private static final int INITIAL_BUFFER_SIZE = 8192;
+
+
+
+  // The buffer used to hold data read from the client.  When not actively
+  // reading, it will be positioned at the end of the data read so far.
+  private ByteBuffer buffer;
+
+  // The channel from which data will be read.
+  private final SocketChannel channel;
+
+
+
+  /**
+   * Creates a new channel reader for the provided socket channel.
+   *
+   * @param  channel  The socket channel from which to read data.  It must have
+   *                  been configured in non-blocking mode.
+   */
+  LDAPListenerChannelReader(final SocketChannel channel)
+  {
+    this.channel = channel;
+
+    buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+  }
+
+
+
+  /**
+   * Reads the data that is currently available from the channel and decodes
+   * any complete LDAP messages that it contains.  At most one read will be
+   * performed so that a single busy client cannot monopolize the selector
+   * thread.
+   *
+   * @param  messages  The list to which any decoded messages will be added.
+   *
+   * @return  {@code true} if the channel is still open, or {@code false} if the
+   *          end of the input stream has been reached.
+   *
+   * @throws  IOException  If a problem occurs while reading from the channel.
+   *
+   * @throws  LDAPException  If a problem occurs while decoding a message.
+   */
+  boolean readMessages(final List<LDAPMessage> messages)
+          throws IOException, LDAPException
+  {
+    if (! buffer.hasRemaining())
+    {
+      growBuffer(buffer.capacity() * 2);
+    }
+
+    final int bytesRead = channel.read(buffer);
+    if (bytesRead < 0)
+    {
+      return false;
+    }
+
+    decodeMessages(messages);
+    return true;
+  }
+
+
+
+  /**
+   * Decodes all complete messages contained in the buffer and removes them
+   * from the buffer.
+   *
+   * @param  messages  The list to which any decoded messages will be added.
+   *
+   * @throws  LDAPException  If a problem occurs while decoding a message.
+   */
+  private void decodeMessages(final List<LDAPMessage> messages)
+          throws LDAPException
+  {
+    final byte[] array = buffer.array();
+    final int end = buffer.position();
+    int pos = 0;
+
+    while (pos < end)
+    {
+      final int messageLength = getMessageLength(array, pos, end);
+      if (messageLength < 0)
+      {
+        break;
+      }
+
+      if (messageLength > (end - pos))
+      {
+        if (messageLength > buffer.capacity())
+        {
+          // Make sure the entire message will fit in the buffer once the data
+          // that precedes it has been discarded.
+          buffer.limit(end);
+          buffer.position(pos);
+          final ByteBuffer newBuffer = ByteBuffer.allocate(messageLength);
+          newBuffer.put(buffer);
+          buffer = newBuffer;
+          return;
+        }
+
+        break;
+      }
+
+      final LDAPMessage message = LDAPMessage.readFrom(
+           new ASN1StreamReader(
+                new ByteArrayInputStream(array, pos, messageLength)),
+           false);
+      if (message != null)
+      {
+        messages.add(message);
+      }
+
+      pos += messageLength;
+    }
+
+    if (pos > 0)
+    {
+      buffer.limit(end);
+      buffer.position(pos);
+      buffer.compact();
+    }
+  }
+
+
+
+  /**
+   * Determines the total length in bytes of the message that starts at the
+   * specified position in the provided array, including the BER type and
+   * length.
+   *
+   * @param  array  The array containing the data read so far.
+   * @param  start  The position at which the message starts.
+   * @param  end    The position immediately after the last byte read.
+   *
+   * @return  The total length of the message, or -1 if not enough data is
+   *          available to make the determination.
+   *
+   * @throws  LDAPException  If the message length is not valid.
+   */
+  private static int getMessageLength(final byte[] array, final int start,
+                                      final int end)
+          throws LDAPException
+  {
+    if ((end - start) < 2)
+    {
+      return -1;
+    }
+
+    final int firstLengthByte = array[start+1] & 0xFF;
+    if ((firstLengthByte & 0x80) == 0x00)
+    {
+      return 2 + firstLengthByte;
+    }
+
+    final int numLengthBytes = firstLengthByte & 0x7F;
+    if ((numLengthBytes < 1) || (numLengthBytes > 4))
+    {
+      throw new LDAPException(ResultCode.DECODING_ERROR,
+           ERR_CHANNEL_READER_INVALID_LENGTH.get(numLengthBytes));
+    }
+
+    if ((end - start) < (2 + numLengthBytes))
+    {
+      return -1;
+    }
+
+    long valueLength = 0L;
+    for (int i=0; i < numLengthBytes; i++)
+    {
+      valueLength = (valueLength << 8) | (array[start+2+i] & 0xFFL);
+    }
+
+    final long totalLength = 2L + numLengthBytes + valueLength;
+    if (totalLength > Integer.MAX_VALUE)
+    {
+      throw new LDAPException(ResultCode.DECODING_ERROR,
+           ERR_CHANNEL_READER_MESSAGE_TOO_LARGE.get(valueLength));
+    }
+
+    return (int) totalLength;
+  }
+
+
+
+  /**
+   * Replaces the current buffer with a larger one containing the same data.
+   *
+   * @param  newCapacity  The capacity to use for the new buffer.
+   */
+  private void growBuffer(final int newCapacity)
+  {
+    final ByteBuffer newBuffer = ByteBuffer.allocate(newCapacity);
+    buffer.flip();
+    newBuffer.put(buffer);
+    buffer = newBuffer;
+  }
+}
@@ -26,6 +26,8 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -55,6 +57,8 @@ import com.unboundid.ldap.sdk.LDAPException;
 import com.unboundid.ldap.sdk.LDAPRuntimeException;
 import com.unboundid.ldap.sdk.ResultCode;
 import com.unboundid.ldap.sdk.extensions.NoticeOfDisconnectionExtendedResult;
+import com.unboundid.util.ByteArrayPool;
+import com.unboundid.util.ByteStringBuffer;
 import com.unboundid.util.Debug;
 import com.unboundid.util.InternalUseOnly;
 import com.unboundid.util.ObjectPair;
@@ -73,7 +77,9 @@ import static com.unboundid.ldap.listener.ListenerMessages.*;
  * be created independently if they were accepted in some other way.  Each
  * connection has its own thread that will be used to read requests from the
  * client, and connections created outside of an {@code LDAPListener} instance,
- * then the thread must be explicitly started.
+ * then the thread must be explicitly started.  If the listener has been
+ * configured to use selector threads, then connections it accepts will instead
+ * be serviced by those selector threads and a pool of request worker threads.
  */
 @ThreadSafety(level=ThreadSafetyLevel.COMPLETELY_THREADSAFE)
 public final class LDAPListenerClientConnection
@@ -90,9 +96,24 @@ public final class LDAPListenerClientConnection
   // The buffer used to hold responses to be sent to the client.
   private final ASN1Buffer asn1Buffer;
 
+  // The pool from which the buffer used to hold responses should obtain its
+  // backing arrays, if any.
+  private final ByteArrayPool bufferPool;
+
   // The ASN.1 stream reader used to read requests from the client.
   private volatile ASN1StreamReader asn1Reader;
 
+  // Indicates whether the buffered search results should be zeroed out when
+  // they are cleared.  It must only be accessed while synchronized on this
+  // connection.
+  private boolean zeroBufferedSearchResultsOnClear;
+
+  // The buffer used to hold search result entries and references that have
+  // not yet been written to the client.  It will be null if search results
+  // should not be buffered, and must only be accessed while synchronized on
+  // this connection.
+  private final ByteStringBuffer bufferedSearchResults;
+
   // Indicates whether to suppress the next call to sendMessage to send a
   // response to the client.
   private final AtomicBoolean suppressNextResponse;
@@ -109,6 +130,10 @@ public final class LDAPListenerClientConnection
   private final CopyOnWriteArrayList<SearchReferenceTransformer>
        searchReferenceTransformers;
 
+  // The channel handler used to service this connection if it is using a
+  // selector thread rather than its own thread.
+  private final LDAPListenerChannelHandler channelHandler;
+
   // The listener that accepted this connection.
   private final LDAPListener listener;
 
@@ -118,6 +143,15 @@ public final class LDAPListenerClientConnection
   // The request handler to use for this connection.
   private final LDAPListenerRequestHandler requestHandler;
 
+  // The number of search requests currently being processed on this
+  // connection.  It must only be accessed while synchronized on this
+  // connection.
+  private int numSearchesInProgress;
+
+  // The maximum number of bytes of search results to buffer before writing
+  // them to the client.
+  private final int searchResultBufferSize;
+
   // The connection ID assigned to this connection.
   private final long connectionID;
 
@@ -187,6 +221,26 @@ public final class LDAPListenerClientConnection
       connectionID = listener.nextConnectionID();
     }
 
+    if (listener == null)
+    {
+      bufferPool = null;
+    }
+    else
+    {
+      bufferPool = listener.getConfig().getBufferPool();
+    }
+
+    final LDAPListenerSelectorThread selectorThread;
+    final SocketChannel channel = socket.getChannel();
+    if ((listener == null) || (channel == null))
+    {
+      selectorThread = null;
+    }
+    else
+    {
+      selectorThread = listener.getSelectorThread(connectionID);
+    }
+
     try
     {
       final LDAPListenerConfig config;
@@ -210,7 +264,18 @@ public final class LDAPListenerClientConnection
         socket.setSendBufferSize(sendBufferSize);
       }
 
-      asn1Reader = new ASN1StreamReader(socket.getInputStream());
+      searchResultBufferSize = config.getSearchResultBufferSize();
+
+      if (selectorThread == null)
+      {
+        asn1Reader = new ASN1StreamReader(socket.getInputStream());
+        asn1Reader.setBufferPool(bufferPool);
+      }
+      else
+      {
+        channel.configureBlocking(false);
+        asn1Reader = null;
+      }
     }
     catch (final IOException ioe)
     {
@@ -233,20 +298,21 @@ public final class LDAPListenerClientConnection
 
     try
     {
-      outputStream = socket.getOutputStream();
+      if (selectorThread == null)
+      {
+        outputStream = socket.getOutputStream();
+      }
+      else
+      {
+        outputStream = new LDAPListenerChannelOutputStream(channel,
+             listener.getConfig().getWriteTimeoutMillis());
+      }
     }
     catch (final IOException ioe)
     {
       Debug.debugException(ioe);
 
-      try
-      {
-        asn1Reader.close();
-      }
-      catch (final Exception e)
-      {
-        Debug.debugException(e);
-      }
+      closeASN1Reader();
 
       try
       {
@@ -271,14 +337,7 @@ public final class LDAPListenerClientConnection
     {
       Debug.debugException(le);
 
-      try
-      {
-        asn1Reader.close();
-      }
-      catch (final Exception e)
-      {
-        Debug.debugException(e);
-      }
+      closeASN1Reader();
 
       try
       {
@@ -301,8 +360,56 @@ public final class LDAPListenerClientConnection
       throw le;
     }
 
-    asn1Buffer           = new ASN1Buffer();
+    if (bufferPool == null)
+    {
+      asn1Buffer = new ASN1Buffer();
+    }
+    else
+    {
+      asn1Buffer = new ASN1Buffer(0, bufferPool);
+    }
+
     suppressNextResponse = new AtomicBoolean(false);
+
+    numSearchesInProgress            = 0;
+    zeroBufferedSearchResultsOnClear = false;
+    if (searchResultBufferSize > 0)
+    {
+      bufferedSearchResults = new ByteStringBuffer();
+    }
+    else
+    {
+      bufferedSearchResults = null;
+    }
+
+    if (selectorThread == null)
+    {
+      channelHandler = null;
+    }
+    else
+    {
+      channelHandler = new LDAPListenerChannelHandler(this, channel,
+           selectorThread, listener.getRequestExecutor());
+    }
+  }
+
+
+
+  /**
+   * Begins reading requests from the client.  If this connection is to be
+   * serviced by a selector thread, then it will be registered with that
+   * thread.  Otherwise, this connection's own thread will be started.
+   */
+  void startReading()
+  {
+    if (channelHandler == null)
+    {
+      start();
+    }
+    else
+    {
+      channelHandler.start();
+    }
   }
 
 
@@ -324,25 +431,47 @@ public final class LDAPListenerClientConnection
       Debug.debugException(e);
     }
 
+    closeASN1Reader();
+
     try
     {
-      asn1Reader.close();
+      outputStream.close();
     }
     catch (final Exception e)
     {
       Debug.debugException(e);
     }
 
+    socket.close();
+
+    if ((channelHandler != null) && (listener != null))
+    {
+      listener.connectionClosed(this);
+    }
+  }
+
+
+
+  /**
+   * Closes the ASN.1 stream reader used to read requests from the client, if
+   * there is one.
+   */
+  private void closeASN1Reader()
+  {
+    final ASN1StreamReader r = asn1Reader;
+    if (r == null)
+    {
+      return;
+    }
+
     try
     {
-      outputStream.close();
+      r.close();
     }
     catch (final Exception e)
     {
       Debug.debugException(e);
     }
-
-    socket.close();
   }
 
 
@@ -435,224 +564,283 @@ public final class LDAPListenerClientConnection
           return;
         }
 
-        try
+        if (! processRequest(requestMessage))
         {
-          final int messageID = requestMessage.getMessageID();
-          final List<Control> controls = requestMessage.getControls();
+          return;
+        }
+      }
+    }
+    finally
+    {
+      if (listener != null)
+      {
+        listener.connectionClosed(this);
+      }
+    }
+  }
+
+
+
+  /**
+   * Processes the provided request message using the request handler and sends
+   * any appropriate response to the client.
+   *
+   * @param  requestMessage  The request message to be processed.  It must not
+   *                         be {@code null}.
+   *
+   * @return  {@code true} if the connection is still usable and additional
+   *          requests may be processed, or {@code false} if the connection has
+   *          been closed.
+   */
+  boolean processRequest(final LDAPMessage requestMessage)
+  {
+    try
+    {
+      final int messageID = requestMessage.getMessageID();
+      final List<Control> controls = requestMessage.getControls();
 
-          LDAPMessage responseMessage;
-          switch (requestMessage.getProtocolOpType())
+      LDAPMessage responseMessage;
+      switch (requestMessage.getProtocolOpType())
+      {
+        case LDAPMessage.PROTOCOL_OP_TYPE_ABANDON_REQUEST:
+          requestHandler.processAbandonRequest(messageID,
+               requestMessage.getAbandonRequestProtocolOp(), controls);
+          responseMessage = null;
+          break;
+
+        case LDAPMessage.PROTOCOL_OP_TYPE_ADD_REQUEST:
+          try
           {
-            case LDAPMessage.PROTOCOL_OP_TYPE_ABANDON_REQUEST:
-              requestHandler.processAbandonRequest(messageID,
-                   requestMessage.getAbandonRequestProtocolOp(), controls);
-              responseMessage = null;
-              break;
-
-            case LDAPMessage.PROTOCOL_OP_TYPE_ADD_REQUEST:
-              try
-              {
-                responseMessage = requestHandler.processAddRequest(messageID,
-                     requestMessage.getAddRequestProtocolOp(), controls);
-              }
-              catch (final Exception e)
-              {
-                Debug.debugException(e);
-                responseMessage = new LDAPMessage(messageID,
-                     new AddResponseProtocolOp(
-                          ResultCode.OTHER_INT_VALUE, null,
-                          ERR_CONN_REQUEST_HANDLER_FAILURE.get(
-                               StaticUtils.getExceptionMessage(e)),
-                          null));
-              }
-              break;
-
-            case LDAPMessage.PROTOCOL_OP_TYPE_BIND_REQUEST:
-              try
-              {
-                responseMessage = requestHandler.processBindRequest(messageID,
-                     requestMessage.getBindRequestProtocolOp(), controls);
-              }
-              catch (final Exception e)
-              {
-                Debug.debugException(e);
-                responseMessage = new LDAPMessage(messageID,
-                     new BindResponseProtocolOp(
-                          ResultCode.OTHER_INT_VALUE, null,
-                          ERR_CONN_REQUEST_HANDLER_FAILURE.get(
-                               StaticUtils.getExceptionMessage(e)),
-                          null, null));
-              }
-              break;
-
-            case LDAPMessage.PROTOCOL_OP_TYPE_COMPARE_REQUEST:
-              try
-              {
-                responseMessage = requestHandler.processCompareRequest(
-                     messageID, requestMessage.getCompareRequestProtocolOp(),
-                     controls);
-              }
-              catch (final Exception e)
-              {
-                Debug.debugException(e);
-                responseMessage = new LDAPMessage(messageID,
-                     new CompareResponseProtocolOp(
-                          ResultCode.OTHER_INT_VALUE, null,
-                          ERR_CONN_REQUEST_HANDLER_FAILURE.get(
-                               StaticUtils.getExceptionMessage(e)),
-                          null));
-              }
-              break;
-
-            case LDAPMessage.PROTOCOL_OP_TYPE_DELETE_REQUEST:
-              try
-              {
-                responseMessage = requestHandler.processDeleteRequest(messageID,
-                     requestMessage.getDeleteRequestProtocolOp(), controls);
-              }
-              catch (final Exception e)
-              {
-                Debug.debugException(e);
-                responseMessage = new LDAPMessage(messageID,
-                     new DeleteResponseProtocolOp(
-                          ResultCode.OTHER_INT_VALUE, null,
-                          ERR_CONN_REQUEST_HANDLER_FAILURE.get(
-                               StaticUtils.getExceptionMessage(e)),
-                          null));
-              }
-              break;
-
-            case LDAPMessage.PROTOCOL_OP_TYPE_EXTENDED_REQUEST:
-              try
-              {
-                responseMessage = requestHandler.processExtendedRequest(
-                     messageID, requestMessage.getExtendedRequestProtocolOp(),
-                     controls);
-              }
-              catch (final Exception e)
-              {
-                Debug.debugException(e);
-                responseMessage = new LDAPMessage(messageID,
-                     new ExtendedResponseProtocolOp(
-                          ResultCode.OTHER_INT_VALUE, null,
-                          ERR_CONN_REQUEST_HANDLER_FAILURE.get(
-                               StaticUtils.getExceptionMessage(e)),
-                          null, null, null));
-              }
-              break;
-
-            case LDAPMessage.PROTOCOL_OP_TYPE_MODIFY_REQUEST:
-              try
-              {
-                responseMessage = requestHandler.processModifyRequest(messageID,
-                     requestMessage.getModifyRequestProtocolOp(), controls);
-              }
-              catch (final Exception e)
-              {
-                Debug.debugException(e);
-                responseMessage = new LDAPMessage(messageID,
-                     new ModifyResponseProtocolOp(
-                          ResultCode.OTHER_INT_VALUE, null,
-                          ERR_CONN_REQUEST_HANDLER_FAILURE.get(
-                               StaticUtils.getExceptionMessage(e)),
-                          null));
-              }
-              break;
-
-            case LDAPMessage.PROTOCOL_OP_TYPE_MODIFY_DN_REQUEST:
-              try
-              {
-                responseMessage = requestHandler.processModifyDNRequest(
-                     messageID, requestMessage.getModifyDNRequestProtocolOp(),
-                     controls);
-              }
-              catch (final Exception e)
-              {
-                Debug.debugException(e);
-                responseMessage = new LDAPMessage(messageID,
-                     new ModifyDNResponseProtocolOp(
-                          ResultCode.OTHER_INT_VALUE, null,
-                          ERR_CONN_REQUEST_HANDLER_FAILURE.get(
-                               StaticUtils.getExceptionMessage(e)),
-                          null));
-              }
-              break;
-
-            case LDAPMessage.PROTOCOL_OP_TYPE_SEARCH_REQUEST:
-              try
-              {
-                responseMessage = requestHandler.processSearchRequest(messageID,
-                     requestMessage.getSearchRequestProtocolOp(), controls);
-              }
-              catch (final Exception e)
-              {
-                Debug.debugException(e);
-                responseMessage = new LDAPMessage(messageID,
-                     new SearchResultDoneProtocolOp(
-                          ResultCode.OTHER_INT_VALUE, null,
-                          ERR_CONN_REQUEST_HANDLER_FAILURE.get(
-                               StaticUtils.getExceptionMessage(e)),
-                          null));
-              }
-              break;
-
-            case LDAPMessage.PROTOCOL_OP_TYPE_UNBIND_REQUEST:
-              requestHandler.processUnbindRequest(messageID,
-                   requestMessage.getUnbindRequestProtocolOp(), controls);
-              close();
-              return;
+            responseMessage = requestHandler.processAddRequest(messageID,
+                 requestMessage.getAddRequestProtocolOp(), controls);
+          }
+          catch (final Exception e)
+          {
+            Debug.debugException(e);
+            responseMessage = new LDAPMessage(messageID,
+                 new AddResponseProtocolOp(
+                      ResultCode.OTHER_INT_VALUE, null,
+                      ERR_CONN_REQUEST_HANDLER_FAILURE.get(
+                           StaticUtils.getExceptionMessage(e)),
+                      null));
+          }
+          break;
 
-            default:
-              close(new LDAPException(ResultCode.PROTOCOL_ERROR,
-                   ERR_CONN_INVALID_PROTOCOL_OP_TYPE.get(StaticUtils.toHex(
-                        requestMessage.getProtocolOpType()))));
-              return;
+        case LDAPMessage.PROTOCOL_OP_TYPE_BIND_REQUEST:
+          try
+          {
+            responseMessage = requestHandler.processBindRequest(messageID,
+                 requestMessage.getBindRequestProtocolOp(), controls);
           }
+          catch (final Exception e)
+          {
+            Debug.debugException(e);
+            responseMessage = new LDAPMessage(messageID,
+                 new BindResponseProtocolOp(
+                      ResultCode.OTHER_INT_VALUE, null,
+                      ERR_CONN_REQUEST_HANDLER_FAILURE.get(
+                           StaticUtils.getExceptionMessage(e)),
+                      null, null));
+          }
+          break;
 
-          if (responseMessage != null)
+        case LDAPMessage.PROTOCOL_OP_TYPE_COMPARE_REQUEST:
+          try
           {
-            try
-            {
-              sendMessage(responseMessage);
-            }
-            catch (final LDAPException le)
-            {
-              Debug.debugException(le);
-              close(le);
-              return;
-            }
+            responseMessage = requestHandler.processCompareRequest(
+                 messageID, requestMessage.getCompareRequestProtocolOp(),
+                 controls);
+          }
+          catch (final Exception e)
+          {
+            Debug.debugException(e);
+            responseMessage = new LDAPMessage(messageID,
+                 new CompareResponseProtocolOp(
+                      ResultCode.OTHER_INT_VALUE, null,
+                      ERR_CONN_REQUEST_HANDLER_FAILURE.get(
+                           StaticUtils.getExceptionMessage(e)),
+                      null));
+          }
+          break;
+
+        case LDAPMessage.PROTOCOL_OP_TYPE_DELETE_REQUEST:
+          try
+          {
+            responseMessage = requestHandler.processDeleteRequest(messageID,
+                 requestMessage.getDeleteRequestProtocolOp(), controls);
+          }
+          catch (final Exception e)
+          {
+            Debug.debugException(e);
+            responseMessage = new LDAPMessage(messageID,
+                 new DeleteResponseProtocolOp(
+                      ResultCode.OTHER_INT_VALUE, null,
+                      ERR_CONN_REQUEST_HANDLER_FAILURE.get(
+                           StaticUtils.getExceptionMessage(e)),
+                      null));
+          }
+          break;
+
+        case LDAPMessage.PROTOCOL_OP_TYPE_EXTENDED_REQUEST:
+          try
+          {
+            responseMessage = requestHandler.processExtendedRequest(
+                 messageID, requestMessage.getExtendedRequestProtocolOp(),
+                 controls);
           }
+          catch (final Exception e)
+          {
+            Debug.debugException(e);
+            responseMessage = new LDAPMessage(messageID,
+                 new ExtendedResponseProtocolOp(
+                      ResultCode.OTHER_INT_VALUE, null,
+                      ERR_CONN_REQUEST_HANDLER_FAILURE.get(
+                           StaticUtils.getExceptionMessage(e)),
+                      null, null, null));
+          }
+          break;
+
+        case LDAPMessage.PROTOCOL_OP_TYPE_MODIFY_REQUEST:
+          try
+          {
+            responseMessage = requestHandler.processModifyRequest(messageID,
+                 requestMessage.getModifyRequestProtocolOp(), controls);
+          }
+          catch (final Exception e)
+          {
+            Debug.debugException(e);
+            responseMessage = new LDAPMessage(messageID,
+                 new ModifyResponseProtocolOp(
+                      ResultCode.OTHER_INT_VALUE, null,
+                      ERR_CONN_REQUEST_HANDLER_FAILURE.get(
+                           StaticUtils.getExceptionMessage(e)),
+                      null));
+          }
+          break;
+
+        case LDAPMessage.PROTOCOL_OP_TYPE_MODIFY_DN_REQUEST:
+          try
+          {
+            responseMessage = requestHandler.processModifyDNRequest(
+                 messageID, requestMessage.getModifyDNRequestProtocolOp(),
+                 controls);
+          }
+          catch (final Exception e)
+          {
+            Debug.debugException(e);
+            responseMessage = new LDAPMessage(messageID,
+                 new ModifyDNResponseProtocolOp(
+                      ResultCode.OTHER_INT_VALUE, null,
+                      ERR_CONN_REQUEST_HANDLER_FAILURE.get(
+                           StaticUtils.getExceptionMessage(e)),
+                      null));
+          }
+          break;
+
+        case LDAPMessage.PROTOCOL_OP_TYPE_SEARCH_REQUEST:
+          searchStarted();
+          try
+          {
+            responseMessage = requestHandler.processSearchRequest(messageID,
+                 requestMessage.getSearchRequestProtocolOp(), controls);
+          }
+          catch (final Exception e)
+          {
+            Debug.debugException(e);
+            responseMessage = new LDAPMessage(messageID,
+                 new SearchResultDoneProtocolOp(
+                      ResultCode.OTHER_INT_VALUE, null,
+                      ERR_CONN_REQUEST_HANDLER_FAILURE.get(
+                           StaticUtils.getExceptionMessage(e)),
+                      null));
+          }
+          finally
+          {
+            searchCompleted();
+          }
+          break;
+
+        case LDAPMessage.PROTOCOL_OP_TYPE_UNBIND_REQUEST:
+          requestHandler.processUnbindRequest(messageID,
+               requestMessage.getUnbindRequestProtocolOp(), controls);
+          close();
+          return false;
+
+        default:
+          close(new LDAPException(ResultCode.PROTOCOL_ERROR,
+               ERR_CONN_INVALID_PROTOCOL_OP_TYPE.get(StaticUtils.toHex(
+                    requestMessage.getProtocolOpType()))));
+          return false;
+      }
+
+      try
+      {
+        if (responseMessage == null)
+        {
+          // Make sure that any search results that were buffered for a
+          // search that is continuing in the background (e.g., a persistent
+          // search) are written to the client.
+          flushBufferedSearchResults();
         }
-        catch (final Exception e)
+        else
         {
-          close(new LDAPException(ResultCode.LOCAL_ERROR,
-               ERR_CONN_EXCEPTION_IN_REQUEST_HANDLER.get(
-                    String.valueOf(requestMessage),
-                    StaticUtils.getExceptionMessage(e))));
-          return;
+          sendMessage(responseMessage);
         }
       }
-    }
-    finally
-    {
-      if (listener != null)
+      catch (final LDAPException le)
       {
-        listener.connectionClosed(this);
+        Debug.debugException(le);
+        close(le);
+        return false;
       }
     }
+    catch (final Exception e)
+    {
+      close(new LDAPException(ResultCode.LOCAL_ERROR,
+           ERR_CONN_EXCEPTION_IN_REQUEST_HANDLER.get(
+                String.valueOf(requestMessage),
+                StaticUtils.getExceptionMessage(e))));
+      return false;
+    }
+
+    return true;
   }
 
 
 
   /**
-   * Sends the provided message to the client.
+   * Sends the provided message to the client.  Any search results that have
+   * been buffered will be written to the client along with it.
    *
    * @param  message  The message to be written to the client.
    *
    * @throws  LDAPException  If a problem occurs while attempting to send the
    *                         response to the client.
    */
-  private synchronized void sendMessage(final LDAPMessage message)
+  private void sendMessage(final LDAPMessage message)
+          throws LDAPException
+  {
+    sendMessage(message, false);
+  }
+
+
+
+  /**
+   * Sends the provided message to the client.  If the message may be buffered
+   * and a search is in progress on this connection, then it will be held in
+   * the search result buffer until that buffer fills up or another message is
+   * sent that cannot be buffered.  Otherwise, the message will be written to
+   * the client immediately, along with anything that has been buffered.
+   *
+   * @param  message      The message to be written to the client.
+   * @param  allowBuffer  Indicates whether the message is a search result entry
+   *                      or reference that may be buffered.
+   *
+   * @throws  LDAPException  If a problem occurs while attempting to send the
+   *                         response to the client.
+   */
+  private synchronized void sendMessage(final LDAPMessage message,
+                                        final boolean allowBuffer)
           throws LDAPException
   {
     // If we should suppress this response (which will only be because the
@@ -677,7 +865,29 @@ public final class LDAPListenerClientConnection
 
     try
     {
-      asn1Buffer.writeTo(outputStream);
+      if ((bufferedSearchResults == null) ||
+          ((bufferedSearchResults.length() == 0) &&
+           (! (allowBuffer && (numSearchesInProgress > 0)))))
+      {
+        asn1Buffer.writeTo(outputStream);
+      }
+      else
+      {
+        Debug.debugASN1Write(asn1Buffer);
+
+        final ByteBuffer b = asn1Buffer.asByteBuffer();
+        bufferedSearchResults.append(b.array(), b.position(), b.remaining());
+        if (asn1Buffer.zeroBufferOnClear())
+        {
+          zeroBufferedSearchResultsOnClear = true;
+        }
+
+        if ((! allowBuffer) || (numSearchesInProgress == 0) ||
+            (bufferedSearchResults.length() >= searchResultBufferSize))
+        {
+          writeBufferedSearchResults();
+        }
+      }
     }
     catch (final IOException ioe)
     {
@@ -690,7 +900,11 @@ public final class LDAPListenerClientConnection
     }
     finally
     {
-      if (asn1Buffer.zeroBufferOnClear())
+      if (bufferPool != null)
+      {
+        asn1Buffer.release();
+      }
+      else if (asn1Buffer.zeroBufferOnClear())
       {
         asn1Buffer.clear();
       }
@@ -699,6 +913,90 @@ public final class LDAPListenerClientConnection
 
 
 
+  /**
+   * Writes any buffered search results to the client and clears the buffer.
+   * This must only be called while synchronized on this connection.
+   *
+   * @throws  IOException  If a problem occurs while writing to the client.
+   */
+  private void writeBufferedSearchResults()
+          throws IOException
+  {
+    try
+    {
+      bufferedSearchResults.write(outputStream);
+    }
+    finally
+    {
+      bufferedSearchResults.clear(zeroBufferedSearchResultsOnClear);
+      zeroBufferedSearchResultsOnClear = false;
+
+      // Don't hold on to a large buffer after an unusually large entry.
+      if (bufferedSearchResults.capacity() > (2 * searchResultBufferSize))
+      {
+        bufferedSearchResults.setCapacity(searchResultBufferSize);
+      }
+    }
+  }
+
+
+
+  /**
+   * Writes any buffered search results to the client.
+   *
+   * @throws  LDAPException  If a problem occurs while attempting to write the
+   *                         buffered search results.
+   */
+  private synchronized void flushBufferedSearchResults()
+          throws LDAPException
+  {
+    if ((bufferedSearchResults == null) ||
+        (bufferedSearchResults.length() == 0))
+    {
+      return;
+    }
+
+    try
+    {
+      writeBufferedSearchResults();
+    }
+    catch (final IOException ioe)
+    {
+      Debug.debugException(ioe);
+
+      throw new LDAPException(ResultCode.LOCAL_ERROR,
+           ERR_CONN_SEND_MESSAGE_EXCEPTION.get(
+                StaticUtils.getExceptionMessage(ioe)),
+           ioe);
+    }
+  }
+
+
+
+  /**
+   * Indicates that processing has started for a search request on this
+   * connection, so that search result entries and references may be buffered
+   * until it completes.
+   */
+  private synchronized void searchStarted()
+  {
+    numSearchesInProgress++;
+  }
+
+
+
+  /**
+   * Indicates that the request handler has completed processing for a search
+   * request on this connection.  Any buffered search results will be written
+   * to the client along with the next message that is sent.
+   */
+  private synchronized void searchCompleted()
+  {
+    numSearchesInProgress--;
+  }
+
+
+
   /**
    * Sends a search result entry message to the client with the provided
    * information.
@@ -725,7 +1023,7 @@ public final class LDAPListenerClientConnection
   {
     if (searchEntryTransformers.isEmpty())
     {
-      sendMessage(new LDAPMessage(messageID, protocolOp, controls));
+      sendMessage(new LDAPMessage(messageID, protocolOp, controls), true);
     }
     else
     {
@@ -766,7 +1064,7 @@ public final class LDAPListenerClientConnection
         }
       }
 
-      sendMessage(new LDAPMessage(messageID, op, c));
+      sendMessage(new LDAPMessage(messageID, op, c), true);
     }
   }
 
@@ -827,7 +1125,7 @@ public final class LDAPListenerClientConnection
   {
     if (searchReferenceTransformers.isEmpty())
     {
-      sendMessage(new LDAPMessage(messageID, protocolOp, controls));
+      sendMessage(new LDAPMessage(messageID, protocolOp, controls), true);
     }
     else
     {
@@ -868,7 +1166,7 @@ public final class LDAPListenerClientConnection
         }
       }
 
-      sendMessage(new LDAPMessage(messageID, op, c));
+      sendMessage(new LDAPMessage(messageID, op, c), true);
     }
   }
 
@@ -947,6 +1245,36 @@ public final class LDAPListenerClientConnection
 
 
 
+  /**
+   * Sends a search result done message to the client with the provided
+   * information.  This should only be used to complete a search operation that
+   * remains active after the request handler has returned from its
+   * {@code processSearchRequest} method (e.g., a persistent search), since the
+   * response returned by that method will be sent automatically.
+   *
+   * @param  messageID   The message ID for the LDAP message to send to the
+   *                     client.  It must match the message ID of the associated
+   *                     search request.
+   * @param  protocolOp  The search result done protocol op to include in the
+   *                     LDAP message to send to the client.  It must not be
+   *                     {@code null}.
+   * @param  controls    The set of controls to include in the response message.
+   *                     It may be empty or {@code null} if no controls should
+   *                     be included.
+   *
+   * @throws  LDAPException  If a problem occurs while attempting to send the
+   *                         provided response message.
+   */
+  void sendSearchResultDone(final int messageID,
+                            final SearchResultDoneProtocolOp protocolOp,
+                            final Control... controls)
+       throws LDAPException
+  {
+    sendMessage(new LDAPMessage(messageID, protocolOp, controls));
+  }
+
+
+
   /**
    * Sends an unsolicited notification message to the client with the provided
    * extended result.
@@ -1026,13 +1354,26 @@ public final class LDAPListenerClientConnection
    *
    * @throws  LDAPException  If a problem is encountered while trying to convert
    *                         the existing socket to an SSL socket.  If this is
-   *                         thrown, then the connection will have been closed.
+   *                         thrown, then the connection will have been closed
+   *                         unless it is being serviced by a selector thread,
+   *                         in which case TLS is not supported and the
+   *                         connection will remain usable in the clear.
    */
   public synchronized OutputStream convertToTLS(final SSLSocketFactory f)
          throws LDAPException
   {
+    if (channelHandler != null)
+    {
+      throw new LDAPException(ResultCode.UNWILLING_TO_PERFORM,
+           ERR_CONN_CONVERT_TO_TLS_NOT_SUPPORTED_WITH_SELECTOR.get());
+    }
+
     final OutputStream clearOutputStream = outputStream;
 
+    // Make sure that nothing that was sent before the TLS negotiation is left
+    // in the buffer to be written over the secure connection.
+    flushBufferedSearchResults();
+
     final Socket origSocket = socket;
     final String hostname   = origSocket.getInetAddress().getHostName();
     final int port          = origSocket.getPort();
@@ -1046,6 +1387,7 @@ public final class LDAPListenerClientConnection
       ((SSLSocket) socket).setUseClientMode(false);
       outputStream = socket.getOutputStream();
       asn1Reader = new ASN1StreamReader(socket.getInputStream());
+      asn1Reader.setBufferPool(bufferPool);
       suppressNextResponse.set(true);
       return clearOutputStream;
     }
@@ -25,6 +25,7 @@ package com.unboundid.ldap.listener;
 import java.net.InetAddress;
 import javax.net.ServerSocketFactory;
 
+import com.unboundid.util.ByteArrayPool;
 import com.unboundid.util.Mutable;
 import com.unboundid.util.ThreadSafety;
 import com.unboundid.util.ThreadSafetyLevel;
@@ -44,6 +45,25 @@ import com.unboundid.util.Validator;
 @ThreadSafety(level=ThreadSafetyLevel.NOT_THREADSAFE)
 public final class LDAPListenerConfig
 {
+  /**
+   * The default value (0) for the maximum number of bytes of search result
+   * entries and references to buffer for a client connection before writing
+   * them to the client, which indicates that each message should be written
+   * as soon as it is sent.
+   */
+  static final int DEFAULT_SEARCH_RESULT_BUFFER_SIZE = 0;
+
+
+
+  /**
+   * The default value (60000) for the maximum length of time in milliseconds
+   * that a write to a client serviced by a selector thread may go without
+   * making any progress before the connection is closed.
+   */
+  static final long DEFAULT_WRITE_TIMEOUT_MILLIS = 60000L;
+
+
+
   // Indicates whether to use the SO_KEEPALIVE socket option for sockets
   // accepted by the listener.
   private boolean useKeepAlive;
@@ -75,9 +95,27 @@ public final class LDAPListenerConfig
   // The receive buffer size to use for sockets accepted by the listener.
   private int receiveBufferSize;
 
+  // The number of threads to use to process requests read by selector threads.
+  private int requestWorkerThreadCount;
+
+  // The maximum number of bytes of search result entries and references to
+  // buffer for a client connection before writing them to the client.
+  private int searchResultBufferSize;
+
+  // The number of selector threads to use to read requests from clients.
+  private int selectorThreadCount;
+
   // The send buffer size to use for sockets accepted by the listener.
   private int sendBufferSize;
 
+  // The maximum length of time in milliseconds that a write to a client
+  // serviced by a selector thread may go without making any progress.
+  private long writeTimeoutMillis;
+
+  // The pool from which client connections should obtain the buffers used to
+  // encode responses and decode requests, if any.
+  private ByteArrayPool bufferPool;
+
   // The exception handler to use for the listener and associated connections.
   private LDAPListenerExceptionHandler exceptionHandler;
 
@@ -119,8 +157,14 @@ public final class LDAPListenerConfig
     maxConnections      = 0;
     receiveBufferSize   = 0;
     sendBufferSize      = 0;
+    selectorThreadCount = 0;
     exceptionHandler    = null;
+    bufferPool          = null;
     serverSocketFactory = ServerSocketFactory.getDefault();
+
+    requestWorkerThreadCount = 0;
+    searchResultBufferSize   = DEFAULT_SEARCH_RESULT_BUFFER_SIZE;
+    writeTimeoutMillis       = DEFAULT_WRITE_TIMEOUT_MILLIS;
   }
 
 
@@ -473,6 +517,227 @@ public final class LDAPListenerConfig
 
 
 
+  /**
+   * Retrieves the number of selector threads that the listener should use to
+   * read requests from clients.  If this is greater than zero, then rather than
+   * creating a separate thread for each client connection, the listener will
+   * use non-blocking I/O to multiplex all client connections across the
+   * specified number of selector threads, and requests read from those clients
+   * will be processed by a bounded pool of request worker threads.  Requests
+   * received on any single connection will still be processed one at a time,
+   * in the order that they were received.
+   * <BR><BR>
+   * Selector threads may only be used with the JVM-default server socket
+   * factory, and connections accepted in this mode do not support the StartTLS
+   * extended operation.  If a different server socket factory has been
+   * configured, then the listener will use a separate thread for each client
+   * connection regardless of this setting.
+   *
+   * @return  The number of selector threads that the listener should use to
+   *          read requests from clients, or zero if each client connection
+   *          should have its own thread.
+   */
+  public int getSelectorThreadCount()
+  {
+    return selectorThreadCount;
+  }
+
+
+
+  /**
+   * Specifies the number of selector threads that the listener should use to
+   * read requests from clients.  See the {@link #getSelectorThreadCount}
+   * method for details about how the listener operates in this mode.
+   *
+   * @param  selectorThreadCount  The number of selector threads that the
+   *                              listener should use to read requests from
+   *                              clients.  A value less than or equal to zero
+   *                              indicates that each client connection should
+   *                              have its own thread.
+   */
+  public void setSelectorThreadCount(final int selectorThreadCount)
+  {
+    if (selectorThreadCount > 0)
+    {
+      this.selectorThreadCount = selectorThreadCount;
+    }
+    else
+    {
+      this.selectorThreadCount = 0;
+    }
+  }
+
+
+
+  /**
+   * Retrieves the maximum number of threads that will be used to process
+   * requests read by selector threads.  This will only be used if the
+   * listener is configured to use selector threads.
+   *
+   * @return  The maximum number of threads that will be used to process
+   *          requests read by selector threads, or zero if the number of
+   *          threads should be based on the number of CPUs available to the
+   *          JVM.
+   */
+  public int getRequestWorkerThreadCount()
+  {
+    return requestWorkerThreadCount;
+  }
+
+
+
+  /**
+   * Specifies the maximum number of threads that will be used to process
+   * requests read by selector threads.  This will only be used if the
+   * listener is configured to use selector threads.
+   *
+   * @param  requestWorkerThreadCount  The maximum number of threads that will
+   *                                   be used to process requests read by
+   *                                   selector threads.  A value less than or
+   *                                   equal to zero indicates that the number
+   *                                   of threads should be based on the number
+   *                                   of CPUs available to the JVM.
+   */
+  public void setRequestWorkerThreadCount(final int requestWorkerThreadCount)
+  {
+    if (requestWorkerThreadCount > 0)
+    {
+      this.requestWorkerThreadCount = requestWorkerThreadCount;
+    }
+    else
+    {
+      this.requestWorkerThreadCount = 0;
+    }
+  }
+
+
+
+  /**
+   * Retrieves the maximum length of time in milliseconds that an attempt to
+   * write data to a client may go without making any progress before the
+   * connection to that client is closed.  This will only be used if the
+   * listener is configured to use selector threads, in which case a client
+   * that stops reading the responses sent to it would otherwise tie up one of
+   * the request worker threads indefinitely.
+   *
+   * @return  The maximum length of time in milliseconds that an attempt to
+   *          write data to a client may go without making any progress, or
+   *          zero if there should be no limit.
+   */
+  public long getWriteTimeoutMillis()
+  {
+    return writeTimeoutMillis;
+  }
+
+
+
+  /**
+   * Specifies the maximum length of time in milliseconds that an attempt to
+   * write data to a client may go without making any progress before the
+   * connection to that client is closed.  This will only be used if the
+   * listener is configured to use selector threads.
+   *
+   * @param  writeTimeoutMillis  The maximum length of time in milliseconds
+   *                             that an attempt to write data to a client may
+   *                             go without making any progress.  A value less
+   *                             than or equal to zero indicates that there
+   *                             should be no limit.
+   */
+  public void setWriteTimeoutMillis(final long writeTimeoutMillis)
+  {
+    if (writeTimeoutMillis > 0L)
+    {
+      this.writeTimeoutMillis = writeTimeoutMillis;
+    }
+    else
+    {
+      this.writeTimeoutMillis = 0L;
+    }
+  }
+
+
+
+  /**
+   * Retrieves the maximum number of bytes of search result entry and reference
+   * messages that may be buffered for a client connection before they are
+   * written to the client.  While a search request is being processed, the
+   * entries and references returned for it will be accumulated and written to
+   * the client together, either when the amount of buffered data reaches this
+   * size or when the search result done message is sent, which can greatly
+   * reduce the number of writes needed for searches that return a large number
+   * of entries.  Buffering is disabled by default, since it delays the
+   * delivery of entries and references to the client.
+   *
+   * @return  The maximum number of bytes of search result entry and reference
+   *          messages that may be buffered for a client connection, or 0 if
+   *          each message should be written to the client as soon as it is
+   *          sent.
+   */
+  public int getSearchResultBufferSize()
+  {
+    return searchResultBufferSize;
+  }
+
+
+
+  /**
+   * Specifies the maximum number of bytes of search result entry and reference
+   * messages that may be buffered for a client connection before they are
+   * written to the client.  A value less than or equal to zero indicates that
+   * each message should be written to the client as soon as it is sent.
+   *
+   * @param  searchResultBufferSize  The maximum number of bytes of search
+   *                                 result entry and reference messages that
+   *                                 may be buffered for a client connection.
+   */
+  public void setSearchResultBufferSize(final int searchResultBufferSize)
+  {
+    if (searchResultBufferSize > 0)
+    {
+      this.searchResultBufferSize = searchResultBufferSize;
+    }
+    else
+    {
+      this.searchResultBufferSize = 0;
+    }
+  }
+
+
+
+  /**
+   * Retrieves the pool from which client connections should obtain the
+   * buffers that they use to encode responses and decode requests.  When a
+   * buffer pool is configured, each client connection will obtain the buffer
+   * used to encode a response from the pool and return it as soon as the
+   * response has been written, rather than retaining its own buffer for the
+   * life of the connection.  A single pool may be shared by any number of
+   * listeners and connections.
+   *
+   * @return  The pool from which client connections should obtain buffers, or
+   *          {@code null} if buffers should not be pooled.
+   */
+  public ByteArrayPool getBufferPool()
+  {
+    return bufferPool;
+  }
+
+
+
+  /**
+   * Specifies the pool from which client connections should obtain the
+   * buffers that they use to encode responses and decode requests.
+   *
+   * @param  bufferPool  The pool from which client connections should obtain
+   *                     buffers.  It may be {@code null} if buffers should not
+   *                     be pooled.
+   */
+  public void setBufferPool(final ByteArrayPool bufferPool)
+  {
+    this.bufferPool = bufferPool;
+  }
+
+
+
   /**
    * Retrieves the exception handler that should be notified of any exceptions
    * caught while attempting to accept or interact with a client connection.
@@ -566,9 +831,15 @@ public final class LDAPListenerConfig
     copy.maxConnections      = maxConnections;
     copy.receiveBufferSize   = receiveBufferSize;
     copy.sendBufferSize      = sendBufferSize;
+    copy.selectorThreadCount = selectorThreadCount;
     copy.exceptionHandler    = exceptionHandler;
+    copy.bufferPool          = bufferPool;
     copy.serverSocketFactory = serverSocketFactory;
 
+    copy.requestWorkerThreadCount = requestWorkerThreadCount;
+    copy.searchResultBufferSize   = searchResultBufferSize;
+    copy.writeTimeoutMillis       = writeTimeoutMillis;
+
     return copy;
   }
 
@@ -648,6 +919,25 @@ public final class LDAPListenerConfig
     buffer.append(receiveBufferSize);
     buffer.append(", sendBufferSize=");
     buffer.append(sendBufferSize);
+    buffer.append(", searchResultBufferSize=");
+    buffer.append(searchResultBufferSize);
+
+    if (bufferPool != null)
+    {
+      buffer.append(", bufferPool=");
+      bufferPool.toString(buffer);
+    }
+
+    if (selectorThreadCount > 0)
+    {
+      buffer.append(", selectorThreadCount=");
+      buffer.append(selectorThreadCount);
+      buffer.append(", requestWorkerThreadCount=");
+      buffer.append(requestWorkerThreadCount);
+      buffer.append(", writeTimeoutMillis=");
+      buffer.append(writeTimeoutMillis);
+    }
+
     buffer.append(')');
   }
 }
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.listener;
+
+
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.unboundid.util.Debug;
+import com.unboundid.util.InternalUseOnly;
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+
+
+/**
+ * This class provides a thread that uses a selector to read requests from any
+ * number of non-blocking client connections.  Requests that are read will be
+ * handed off to the channel handler for the associated connection, which will
+ * arrange for them to be processed by a request worker thread.
+ */
+@ThreadSafety(level=ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+final class LDAPListenerSelectorThread
+      extends Thread
+{
+  // Indicates whether a request has been received to stop running.
+  private final AtomicBoolean stopRequested;
+
+  // The channel handlers that need to be registered with the selector.
+  private final ConcurrentLinkedQueue<LDAPListenerChannelHandler>
+       pendingRegistrations;
+
+  // The channel handlers for which reading should be resumed.
+  private final ConcurrentLinkedQueue<LDAPListenerChannelHandler>
+       pendingResumes;
+
+  // The selector used to wait for data to be available.
+  private final Selector selector;
+
+
+
+  /**
+   * Creates a new selector thread.
+   *
+   * @param  name  The name to use for this thread.
+   *
+   * @throws  IOException  If a problem occurs while opening the selector.
+   */
+  LDAPListenerSelectorThread(final String name)
+       throws IOException
+  {
+    setName(name);
+    setDaemon(true);
+
+    stopRequested        = new AtomicBoolean(false);
+    pendingRegistrations =
+         new ConcurrentLinkedQueue<LDAPListenerChannelHandler>();
+    pendingResumes       =
+         new ConcurrentLinkedQueue<LDAPListenerChannelHandler>();
+    selector             = Selector.open();
+  }
+
+
+
+  /**
+   * Arranges for the provided channel handler to be registered with this
+   * selector thread so that requests will be read from its channel.
+   *
+   * @param  handler  The channel handler to register.
+   */
+  void registerChannel(final LDAPListenerChannelHandler handler)
+  {
+    pendingRegistrations.add(handler);
+    selector.wakeup();
+  }
+
+
+
+  /**
+   * Arranges for this selector thread to resume reading requests from the
+   * channel associated with the provided handler after reading had been
+   * suspended because too many requests were awaiting processing.
+   *
+   * @param  handler  The channel handler for which to resume reading.
+   */
+  void resumeReading(final LDAPListenerChannelHandler handler)
+  {
+    pendingResumes.add(handler);
+    selector.wakeup();
+  }
+
+
+
+  /**
+   * Operates in a loop, waiting for data to be available on any of the
+   * registered channels and handing it off for processing.  This method is for
+   * internal use only and must not be invoked by external callers.
+   */
+  @InternalUseOnly()
+  @Override()
+  public void run()
+  {
+    try
+    {
+      while (! stopRequested.get())
+      {
+        try
+        {
+          selector.select();
+        }
+        catch (final Exception e)
+        {
+          Debug.debugException(e);
+          if (! selector.isOpen())
+          {
+            return;
+          }
+        }
+
+        while (true)
+        {
+          final LDAPListenerChannelHandler h = pendingRegistrations.poll();
+          if (h == null)
+          {
+            break;
+          }
+
+          h.register(selector);
+        }
+
+        while (true)
+        {
+          final LDAPListenerChannelHandler h = pendingResumes.poll();
+          if (h == null)
+          {
+            break;
+          }
+
+          h.resumeReading();
+        }
+
+        final Iterator<SelectionKey> iterator =
+             selector.selectedKeys().iterator();
+        while (iterator.hasNext())
+        {
+          final SelectionKey key = iterator.next();
+          iterator.remove();
+
+          final LDAPListenerChannelHandler h =
+               (LDAPListenerChannelHandler) key.attachment();
+          if (key.isValid() && key.isReadable())
+          {
+            h.readAvailable();
+          }
+        }
+      }
+    }
+    finally
+    {
+      try
+      {
+        selector.close();
+      }
+      catch (final Exception e)
+      {
+        Debug.debugException(e);
+      }
+    }
+  }
+
+
+
+  /**
+   * Indicates that this selector thread should stop running.  Any channels
+   * that are registered with it will no longer be read, but they will not be
+   * closed.
+   */
+  void shutDown()
+  {
+    stopRequested.set(true);
+    selector.wakeup();
+  }
+}
@@ -32,9 +32,11 @@ import com.unboundid.ldap.sdk.LDAPException;
 import com.unboundid.ldap.sdk.ResultCode;
 import com.unboundid.ldap.sdk.controls.AssertionRequestControl;
 import com.unboundid.ldap.sdk.controls.AuthorizationIdentityRequestControl;
+import com.unboundid.ldap.sdk.controls.ContentSyncRequestControl;
 import com.unboundid.ldap.sdk.controls.DontUseCopyRequestControl;
 import com.unboundid.ldap.sdk.controls.ManageDsaITRequestControl;
 import com.unboundid.ldap.sdk.controls.PermissiveModifyRequestControl;
+import com.unboundid.ldap.sdk.controls.PersistentSearchRequestControl;
 import com.unboundid.ldap.sdk.controls.PostReadRequestControl;
 import com.unboundid.ldap.sdk.controls.PreReadRequestControl;
 import com.unboundid.ldap.sdk.controls.ProxiedAuthorizationV1RequestControl;
@@ -146,6 +148,32 @@ final class RequestControlPreProcessor
                ERR_CONTROL_PROCESSOR_MULTIPLE_CONTROLS.get(oid));
         }
       }
+      else if (oid.equals(ContentSyncRequestControl.SYNC_REQUEST_OID))
+      {
+        switch (requestOpType)
+        {
+          case LDAPMessage.PROTOCOL_OP_TYPE_SEARCH_REQUEST:
+            // The control is acceptable for these operations.
+            break;
+
+          default:
+            if (control.isCritical())
+            {
+              throw new LDAPException(ResultCode.UNAVAILABLE_CRITICAL_EXTENSION,
+                   ERR_CONTROL_PROCESSOR_UNSUPPORTED_FOR_OP.get(oid));
+            }
+            else
+            {
+              continue;
+            }
+        }
+
+        if (m.put(oid, new ContentSyncRequestControl(control)) != null)
+        {
+          throw new LDAPException(ResultCode.CONSTRAINT_VIOLATION,
+               ERR_CONTROL_PROCESSOR_MULTIPLE_CONTROLS.get(oid));
+        }
+      }
       else if (oid.equals(DontUseCopyRequestControl.DONT_USE_COPY_REQUEST_OID))
       {
         switch (requestOpType)
@@ -231,6 +259,33 @@ final class RequestControlPreProcessor
                ERR_CONTROL_PROCESSOR_MULTIPLE_CONTROLS.get(oid));
         }
       }
+      else if (oid.equals(PersistentSearchRequestControl.
+           PERSISTENT_SEARCH_REQUEST_OID))
+      {
+        switch (requestOpType)
+        {
+          case LDAPMessage.PROTOCOL_OP_TYPE_SEARCH_REQUEST:
+            // The control is acceptable for these operations.
+            break;
+
+          default:
+            if (control.isCritical())
+            {
+              throw new LDAPException(ResultCode.UNAVAILABLE_CRITICAL_EXTENSION,
+                   ERR_CONTROL_PROCESSOR_UNSUPPORTED_FOR_OP.get(oid));
+            }
+            else
+            {
+              continue;
+            }
+        }
+
+        if (m.put(oid, new PersistentSearchRequestControl(control)) != null)
+        {
+          throw new LDAPException(ResultCode.CONSTRAINT_VIOLATION,
+               ERR_CONTROL_PROCESSOR_MULTIPLE_CONTROLS.get(oid));
+        }
+      }
       else if (oid.equals(PostReadRequestControl.POST_READ_REQUEST_OID))
       {
         switch (requestOpType)
@@ -561,6 +616,14 @@ final class RequestControlPreProcessor
            ERR_CONTROL_PROCESSOR_MULTIPLE_PROXY_CONTROLS.get());
     }
 
+    if (m.containsKey(PersistentSearchRequestControl.
+             PERSISTENT_SEARCH_REQUEST_OID) &&
+        m.containsKey(ContentSyncRequestControl.SYNC_REQUEST_OID))
+    {
+      throw new LDAPException(ResultCode.CONSTRAINT_VIOLATION,
+           ERR_CONTROL_PROCESSOR_PSEARCH_AND_SYNC.get());
+    }
+
     if (m.containsKey(
              VirtualListViewRequestControl.VIRTUAL_LIST_VIEW_REQUEST_OID))
     {
@@ -31,6 +31,7 @@ import com.unboundid.ldap.listener.LDAPListenerClientConnection;
 import com.unboundid.ldap.listener.LDAPListenerRequestHandler;
 import com.unboundid.ldap.listener.SearchEntryTransformer;
 import com.unboundid.ldap.listener.SearchReferenceTransformer;
+import com.unboundid.ldap.protocol.AbandonRequestProtocolOp;
 import com.unboundid.ldap.protocol.AddRequestProtocolOp;
 import com.unboundid.ldap.protocol.AddResponseProtocolOp;
 import com.unboundid.ldap.protocol.BindRequestProtocolOp;
@@ -172,6 +173,30 @@ public final class InMemoryOperationInterceptorRequestHandler
 
 
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override()
+  public void closeInstance()
+  {
+    wrappedHandler.closeInstance();
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override()
+  public void processAbandonRequest(final int messageID,
+                                    final AbandonRequestProtocolOp request,
+                                    final List<Control> controls)
+  {
+    wrappedHandler.processAbandonRequest(messageID, request, controls);
+  }
+
+
+
   /**
    * {@inheritDoc}
    */
@@ -822,6 +847,13 @@ public final class InMemoryOperationInterceptorRequestHandler
            messageID,
            new SearchRequestProtocolOp((SearchRequest) op.getRequest()),
            op.getRequest().getControlList());
+      if (resultMessage == null)
+      {
+        // The search is still active (e.g., a persistent search), so there is
+        // no result to intercept.
+        return null;
+      }
+
       op.setResult(resultMessage.getSearchResultDoneProtocolOp().toLDAPResult(
            toArray(resultMessage.getControls())));
       for (final InMemoryOperationInterceptor i : interceptors)
@@ -92,8 +92,8 @@ public final class AsyncRequestID
   // The connection used to process the asynchronous operation.
   private final LDAPConnection connection;
 
-  // The timer task that will allow the associated request to be cancelled.
-  private volatile AsyncTimeoutTimerTask timerTask;
+  // The timeout that will allow the associated request to be cancelled.
+  private volatile AsyncTimeoutTimer.Timeout timeout;
 
 
 
@@ -112,7 +112,7 @@ public final class AsyncRequestID
     resultQueue     = new ArrayBlockingQueue<LDAPResult>(1);
     cancelRequested = new AtomicBoolean(false);
     result          = new AtomicReference<LDAPResult>();
-    timerTask       = null;
+    timeout         = null;
   }
 
 
@@ -313,16 +313,16 @@ public final class AsyncRequestID
 
 
   /**
-   * Sets the timer task that may be used to cancel this result after a period
-   * of time.
+   * Sets the timeout that may be used to cancel this result after a period of
+   * time.
    *
-   * @param  timerTask  The timer task that may be used to cancel this result
-   *                    after a period of time.  It may be {@code null} if no
-   *                    timer task should be used.
+   * @param  timeout  The timeout that may be used to cancel this result after a
+   *                  period of time.  It may be {@code null} if no timeout
+   *                  should be used.
    */
-  void setTimerTask(final AsyncTimeoutTimerTask timerTask)
+  void setTimeout(final AsyncTimeoutTimer.Timeout timeout)
   {
-    this.timerTask = timerTask;
+    this.timeout = timeout;
   }
 
 
@@ -337,12 +337,11 @@ public final class AsyncRequestID
   {
     resultQueue.offer(result);
 
-    final AsyncTimeoutTimerTask t = timerTask;
+    final AsyncTimeoutTimer.Timeout t = timeout;
     if (t != null)
     {
       t.cancel();
-      connection.getTimer().purge();
-      timerTask = null;
+      timeout = null;
     }
   }
 
@@ -0,0 +1,644 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.sdk;
+
+
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.unboundid.util.Debug;
+import com.unboundid.util.LDAPSDKThreadFactory;
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+
+
+/**
+ * This class provides a hashed-wheel timer that is used to enforce response
+ * timeouts for asynchronous operations.  A single instance, with a single
+ * daemon thread, is shared by all connections in the JVM, so that the number
+ * of threads does not grow with the number of connections.
+ * <BR><BR>
+ * Scheduling and canceling a timeout are both constant-time operations that
+ * do not require any locking.  New and canceled timeouts are placed in
+ * non-blocking queues, and the timer thread moves them into (or out of) the
+ * appropriate wheel bucket on its next tick, so that canceled timeouts do not
+ * linger until their deadline.  The timer thread sleeps without ticking
+ * whenever there are no pending timeouts.
+ * <BR><BR>
+ * Timeouts are enforced with a granularity of one tick, so a timeout may fire
+ * up to one tick later than requested, but it will never fire early.
+ * <BR><BR>
+ * The task for an expired timeout invokes the application's async result
+ * listener, so it is not run on the timer thread.  Instead, it is handed off
+ * to a pool of daemon threads that are created as needed and that exit once
+ * they have been idle for a while, so that a listener that is slow or that
+ * blocks cannot delay the timeouts for any other operation.
+ */
+@ThreadSafety(level=ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+final class AsyncTimeoutTimer
+{
+  /**
+   * The default duration of a tick, in milliseconds.
+   */
+  static final long DEFAULT_TICK_DURATION_MILLIS = 10L;
+
+
+
+  /**
+   * The default number of buckets in the wheel.
+   */
+  static final int DEFAULT_WHEEL_SIZE = 512;
+
+
+
+  /**
+   * The timer instance shared by all connections.
+   */
+  private static final AsyncTimeoutTimer INSTANCE =
+       new AsyncTimeoutTimer(DEFAULT_TICK_DURATION_MILLIS, DEFAULT_WHEEL_SIZE);
+
+
+
+  // The number of timeouts that have been scheduled but have neither expired
+  // nor been canceled.
+  private final AtomicInteger numPending;
+
+  // The buckets that make up the wheel.  They are only accessed by the timer
+  // thread.
+  private final Bucket[] wheel;
+
+  // The condition used to wake up the timer thread when a timeout is scheduled
+  // while it is idle.
+  private final Condition workAvailable;
+
+  // The queue of timeouts that have been canceled but may still need to be
+  // removed from their bucket.
+  private final ConcurrentLinkedQueue<Timeout> canceledTimeouts;
+
+  // The queue of timeouts that have been scheduled but not yet placed in a
+  // bucket.
+  private final ConcurrentLinkedQueue<Timeout> newTimeouts;
+
+  // The mask used to select a bucket for a tick.
+  private final int wheelMask;
+
+  // The value of System.nanoTime when this timer was created.
+  private final long startTimeNanos;
+
+  // The duration of a tick, in nanoseconds.
+  private final long tickDurationNanos;
+
+  // The lock used when waiting for a timeout to be scheduled.
+  private final ReentrantLock lock;
+
+  // The executor used to run the tasks for expired timeouts.
+  private final ThreadPoolExecutor taskExecutor;
+
+  // The thread that processes the wheel, if it has been started.
+  private volatile Thread timerThread;
+
+
+
+  /**
+   * Creates a new timer with the provided settings.  The timer thread will not
+   * be started until the first timeout is scheduled.
+   *
+   * @param  tickDurationMillis  The duration of a tick, in milliseconds.  It
+   *                             must be greater than zero.
+   * @param  wheelSize           The minimum number of buckets to use for the
+   *                             wheel.  It will be rounded up to a power of
+   *                             two.
+   */
+  AsyncTimeoutTimer(final long tickDurationMillis, final int wheelSize)
+  {
+    int size = 1;
+    while (size < wheelSize)
+    {
+      size <<= 1;
+    }
+
+    wheel = new Bucket[size];
+    for (int i=0; i < size; i++)
+    {
+      wheel[i] = new Bucket();
+    }
+
+    wheelMask         = size - 1;
+    tickDurationNanos = tickDurationMillis * 1000000L;
+    startTimeNanos    = System.nanoTime();
+    numPending        = new AtomicInteger(0);
+    newTimeouts       = new ConcurrentLinkedQueue<Timeout>();
+    canceledTimeouts  = new ConcurrentLinkedQueue<Timeout>();
+    lock              = new ReentrantLock();
+    workAvailable     = lock.newCondition();
+    timerThread       = null;
+
+    taskExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L,
+         TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+         new LDAPSDKThreadFactory("UnboundID LDAP SDK Async Timeout Task",
+              true));
+  }
+
+
+
+  /**
+   * Retrieves the timer instance that is shared by all connections.
+   *
+   * @return  The timer instance that is shared by all connections.
+   */
+  static AsyncTimeoutTimer getInstance()
+  {
+    return INSTANCE;
+  }
+
+
+
+  /**
+   * Schedules the provided task to be run after the specified delay.
+   *
+   * @param  task         The task to be run.  It must not be {@code null}.
+   * @param  delayMillis  The length of time in milliseconds to wait before
+   *                      running the task.
+   *
+   * @return  A handle that may be used to cancel the timeout.
+   */
+  Timeout schedule(final Runnable task, final long delayMillis)
+  {
+    final long deadlineNanos =
+         System.nanoTime() + (Math.max(0L, delayMillis) * 1000000L);
+    final long deadlineTick = ((deadlineNanos - startTimeNanos) +
+         tickDurationNanos - 1L) / tickDurationNanos;
+
+    final Timeout timeout = new Timeout(task, deadlineTick);
+    final boolean wasIdle = (numPending.getAndIncrement() == 0);
+    newTimeouts.offer(timeout);
+
+    if (timerThread == null)
+    {
+      startTimerThread();
+    }
+
+    // The timer thread only waits when there are no pending timeouts, so it
+    // only needs to be signaled when this is the first one.
+    if (wasIdle)
+    {
+      lock.lock();
+      try
+      {
+        workAvailable.signal();
+      }
+      finally
+      {
+        lock.unlock();
+      }
+    }
+
+    return timeout;
+  }
+
+
+
+  /**
+   * Retrieves the number of timeouts that have been scheduled but have neither
+   * expired nor been canceled.
+   *
+   * @return  The number of timeouts that have been scheduled but have neither
+   *          expired nor been canceled.
+   */
+  int getNumPendingTimeouts()
+  {
+    return numPending.get();
+  }
+
+
+
+  /**
+   * Starts the timer thread if it has not already been started.
+   */
+  private synchronized void startTimerThread()
+  {
+    if (timerThread == null)
+    {
+      final Thread t = new Thread("UnboundID LDAP SDK Async Timeout Timer")
+      {
+        @Override()
+        public void run()
+        {
+          runTimer();
+        }
+      };
+      t.setDaemon(true);
+      t.start();
+      timerThread = t;
+    }
+  }
+
+
+
+  /**
+   * Retrieves the tick that corresponds to the current time.
+   *
+   * @return  The tick that corresponds to the current time.
+   */
+  private long getCurrentTick()
+  {
+    return (System.nanoTime() - startTimeNanos) / tickDurationNanos;
+  }
+
+
+
+  /**
+   * Processes the wheel until the JVM exits.  This is only invoked by the timer
+   * thread.
+   */
+  private void runTimer()
+  {
+    // The last tick that has been processed.
+    long lastTick = getCurrentTick() - 1L;
+
+    while (true)
+    {
+      try
+      {
+        transferTimeouts(lastTick);
+
+        if (numPending.get() == 0)
+        {
+          waitForTimeouts();
+
+          // Every bucket is empty (apart from canceled timeouts that will be
+          // discarded when encountered), so there is no need to process the
+          // ticks that elapsed while idle.
+          lastTick = getCurrentTick() - 1L;
+          continue;
+        }
+
+        final long sleepNanos = startTimeNanos +
+             ((lastTick + 2L) * tickDurationNanos) - System.nanoTime();
+        if (sleepNanos > 0L)
+        {
+          Thread.sleep(sleepNanos / 1000000L, (int) (sleepNanos % 1000000L));
+        }
+
+        transferTimeouts(lastTick);
+
+        final long currentTick = getCurrentTick();
+        while (lastTick < currentTick)
+        {
+          lastTick++;
+          expireTimeouts(wheel[(int) (lastTick & wheelMask)], lastTick);
+        }
+      }
+      catch (final Throwable t)
+      {
+        Debug.debugException(t);
+      }
+    }
+  }
+
+
+
+  /**
+   * Waits until at least one timeout is pending.
+   *
+   * @throws  InterruptedException  If the thread is interrupted while waiting.
+   */
+  private void waitForTimeouts()
+          throws InterruptedException
+  {
+    lock.lock();
+    try
+    {
+      while (numPending.get() == 0)
+      {
+        workAvailable.await();
+      }
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+
+
+  /**
+   * Moves newly-scheduled timeouts into the appropriate buckets, and removes
+   * canceled timeouts from their buckets.
+   *
+   * @param  lastTick  The last tick that has been processed.
+   */
+  private void transferTimeouts(final long lastTick)
+  {
+    while (true)
+    {
+      final Timeout timeout = newTimeouts.poll();
+      if (timeout == null)
+      {
+        break;
+      }
+
+      if (timeout.isCanceled())
+      {
+        continue;
+      }
+
+      // A timeout whose deadline has already passed will be placed in the
+      // bucket for the next tick to be processed.
+      final long tick = Math.max(timeout.deadlineTick, (lastTick + 1L));
+      wheel[(int) (tick & wheelMask)].add(timeout);
+    }
+
+    while (true)
+    {
+      final Timeout timeout = canceledTimeouts.poll();
+      if (timeout == null)
+      {
+        break;
+      }
+
+      if (timeout.bucket != null)
+      {
+        timeout.bucket.remove(timeout);
+      }
+    }
+  }
+
+
+
+  /**
+   * Hands off the tasks for all timeouts in the provided bucket that are due
+   * as of the specified tick to the task executor, and discards any canceled
+   * timeouts.
+   *
+   * @param  bucket  The bucket to process.
+   * @param  tick    The tick being processed.
+   */
+  private void expireTimeouts(final Bucket bucket, final long tick)
+  {
+    Timeout timeout = bucket.head;
+    while (timeout != null)
+    {
+      final Timeout next = timeout.next;
+      if (timeout.isCanceled())
+      {
+        bucket.remove(timeout);
+      }
+      else if (timeout.deadlineTick <= tick)
+      {
+        bucket.remove(timeout);
+        if (timeout.state.compareAndSet(Timeout.STATE_PENDING,
+             Timeout.STATE_EXPIRED))
+        {
+          numPending.decrementAndGet();
+          try
+          {
+            taskExecutor.execute(timeout);
+          }
+          catch (final Throwable t)
+          {
+            Debug.debugException(t);
+          }
+        }
+      }
+
+      timeout = next;
+    }
+  }
+
+
+
+  /**
+   * This class provides a handle for a scheduled timeout, which may be used to
+   * cancel it.  It also serves as an entry in a wheel bucket, and as the
+   * runnable that is handed to the task executor when the timeout expires.
+   */
+  final class Timeout
+        implements Runnable
+  {
+    /**
+     * The state for a timeout that has neither expired nor been canceled.
+     */
+    private static final int STATE_PENDING = 0;
+
+
+
+    /**
+     * The state for a timeout that has been canceled.
+     */
+    private static final int STATE_CANCELED = 1;
+
+
+
+    /**
+     * The state for a timeout that has expired.
+     */
+    private static final int STATE_EXPIRED = 2;
+
+
+
+    // The state of this timeout.
+    private final AtomicInteger state;
+
+    // The bucket that currently holds this timeout.  It is only accessed by the
+    // timer thread.
+    private Bucket bucket;
+
+    // The tick at or after which this timeout should expire.
+    private final long deadlineTick;
+
+    // The task to run when this timeout expires.
+    private final Runnable task;
+
+    // The next timeout in the bucket.  It is only accessed by the timer
+    // thread.
+    private Timeout next;
+
+    // The previous timeout in the bucket.  It is only accessed by the timer
+    // thread.
+    private Timeout previous;
+
+
+
+    /**
+     * Creates a new timeout with the provided information.
+     *
+     * @param  task          The task to run when this timeout expires.
+     * @param  deadlineTick  The tick at or after which this timeout should
+     *                       expire.
+     */
+    private Timeout(final Runnable task, final long deadlineTick)
+    {
+      this.task         = task;
+      this.deadlineTick = deadlineTick;
+
+      state    = new AtomicInteger(STATE_PENDING);
+      bucket   = null;
+      next     = null;
+      previous = null;
+    }
+
+
+
+    /**
+     * Runs the task for this timeout.  This is invoked by the task executor
+     * once the timeout has expired.
+     */
+    public void run()
+    {
+      try
+      {
+        task.run();
+      }
+      catch (final Throwable t)
+      {
+        Debug.debugException(t);
+      }
+    }
+
+
+
+    /**
+     * Cancels this timeout so that its task will not be run, if it has not
+     * already expired.
+     *
+     * @return  {@code true} if the timeout was canceled, or {@code false} if
+     *          it had already expired or been canceled.
+     */
+    boolean cancel()
+    {
+      if (state.compareAndSet(STATE_PENDING, STATE_CANCELED))
+      {
+        numPending.decrementAndGet();
+        canceledTimeouts.offer(this);
+        return true;
+      }
+
+      return false;
+    }
+
+
+
+    /**
+     * Indicates whether this timeout has been canceled.
+     *
+     * @return  {@code true} if this timeout has been canceled, or
+     *          {@code false} if not.
+     */
+    boolean isCanceled()
+    {
+      return (state.get() == STATE_CANCELED);
+    }
+
+
+
+    /**
+     * Indicates whether this timeout has expired.
+     *
+     * @return  {@code true} if this timeout has expired, or {@code false} if
+     *          not.
+     */
+    boolean isExpired()
+    {
+      return (state.get() == STATE_EXPIRED);
+    }
+  }
+
+
+
+  /**
+   * This class provides a doubly-linked list of the timeouts held in a single
+   * bucket of the wheel.  It is only accessed by the timer thread.
+   */
+  private static final class Bucket
+  {
+    // The first timeout in this bucket.
+    private Timeout head;
+
+    // The last timeout in this bucket.
+    private Timeout tail;
+
+
+
+    /**
+     * Adds the provided timeout to the end of this bucket.
+     *
+     * @param  timeout  The timeout to add.
+     */
+    private void add(final Timeout timeout)
+    {
+      timeout.bucket = this;
+      timeout.previous = tail;
+      timeout.next = null;
+
+      if (tail == null)
+      {
+        head = timeout;
+      }
+      else
+      {
+        tail.next = timeout;
+      }
+
+      tail = timeout;
+    }
+
+
+
+    /**
+     * Removes the provided timeout from this bucket.
+     *
+     * @param  timeout  The timeout to remove.  It must currently be held in
+     *                  this bucket.
+     */
+    private void remove(final Timeout timeout)
+    {
+      if (timeout.previous == null)
+      {
+        head = timeout.next;
+      }
+      else
+      {
+        timeout.previous.next = timeout.next;
+      }
+
+      if (timeout.next == null)
+      {
+        tail = timeout.previous;
+      }
+      else
+      {
+        timeout.next.previous = timeout.previous;
+      }
+
+      timeout.bucket   = null;
+      timeout.next     = null;
+      timeout.previous = null;
+    }
+  }
+}
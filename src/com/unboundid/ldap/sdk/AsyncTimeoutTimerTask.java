@@ -22,8 +22,6 @@ package com.unboundid.ldap.sdk;
 
 
 
-import java.util.TimerTask;
-
 import com.unboundid.ldap.protocol.LDAPResponse;
 import com.unboundid.util.Debug;
 import com.unboundid.util.StaticUtils;
@@ -34,10 +32,11 @@ import static com.unboundid.ldap.sdk.LDAPMessages.*;
 
 /**
  * This class provides a timer task that can be used to ensure that operation
- * timeouts for asynchronous operations are properly respected.
+ * timeouts for asynchronous operations are properly respected.  It is
+ * scheduled with the {@link AsyncTimeoutTimer} shared by all connections.
  */
 final class AsyncTimeoutTimerTask
-      extends TimerTask
+      implements Runnable
 {
   // The async helper with which this task is associated.
   private final CommonAsyncHelper helper;
@@ -60,7 +59,6 @@ final class AsyncTimeoutTimerTask
   /**
    * Generates a timeout response for the associated operation.
    */
-  @Override()
   public void run()
   {
     final long waitTimeNanos = System.nanoTime() - helper.getCreateTimeNanos();
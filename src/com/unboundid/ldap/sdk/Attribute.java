@@ -36,6 +36,7 @@ import java.util.Set;
 import com.unboundid.asn1.ASN1Buffer;
 import com.unboundid.asn1.ASN1BufferSequence;
 import com.unboundid.asn1.ASN1BufferSet;
+import com.unboundid.asn1.ASN1Constants;
 import com.unboundid.asn1.ASN1Element;
 import com.unboundid.asn1.ASN1Exception;
 import com.unboundid.asn1.ASN1OctetString;
@@ -125,8 +126,16 @@ public final class Attribute
 
 
 
-  // The set of values for this attribute.
-  private final ASN1OctetString[] values;
+  // The set of values for this attribute.  It will be null for an attribute
+  // read with lazy value decoding until the values are first accessed, and it
+  // is volatile so that values decoded by one thread are safely visible to
+  // others.
+  private volatile ASN1OctetString[] values;
+
+  // The encoded value of the set of values for this attribute, if it was read
+  // with lazy value decoding.  It is never altered, even after the values have
+  // been decoded, because the decoded values reference it.
+  private final byte[] encodedValues;
 
   // The hash code for this attribute.
   private int hashCode = -1;
@@ -152,6 +161,7 @@ public final class Attribute
 
     values = NO_VALUES;
     matchingRule = CaseIgnoreStringMatchingRule.getInstance();
+    encodedValues = null;
   }
 
 
@@ -170,6 +180,7 @@ public final class Attribute
 
     values = new ASN1OctetString[] { new ASN1OctetString(value) };
     matchingRule = CaseIgnoreStringMatchingRule.getInstance();
+    encodedValues = null;
   }
 
 
@@ -187,6 +198,7 @@ public final class Attribute
     this.name = name;
     values = new ASN1OctetString[] { new ASN1OctetString(value) };
     matchingRule = CaseIgnoreStringMatchingRule.getInstance();
+    encodedValues = null;
   }
 
 
@@ -210,6 +222,7 @@ public final class Attribute
       this.values[i] = new ASN1OctetString(values[i]);
     }
     matchingRule = CaseIgnoreStringMatchingRule.getInstance();
+    encodedValues = null;
   }
 
 
@@ -233,6 +246,7 @@ public final class Attribute
       this.values[i] = new ASN1OctetString(values[i]);
     }
     matchingRule = CaseIgnoreStringMatchingRule.getInstance();
+    encodedValues = null;
   }
 
 
@@ -252,6 +266,7 @@ public final class Attribute
     this.values = values;
 
     matchingRule = CaseIgnoreStringMatchingRule.getInstance();
+    encodedValues = null;
   }
 
 
@@ -277,6 +292,7 @@ public final class Attribute
       this.values[i++] = new ASN1OctetString(s);
     }
     matchingRule = CaseIgnoreStringMatchingRule.getInstance();
+    encodedValues = null;
   }
 
 
@@ -295,6 +311,7 @@ public final class Attribute
 
     this.name         = name;
     this.matchingRule = matchingRule;
+    encodedValues     = null;
 
     values = NO_VALUES;
   }
@@ -318,6 +335,7 @@ public final class Attribute
 
     this.name         = name;
     this.matchingRule = matchingRule;
+    encodedValues     = null;
 
     values = new ASN1OctetString[] { new ASN1OctetString(value) };
   }
@@ -341,6 +359,7 @@ public final class Attribute
 
     this.name         = name;
     this.matchingRule = matchingRule;
+    encodedValues     = null;
 
     values = new ASN1OctetString[] { new ASN1OctetString(value) };
   }
@@ -364,6 +383,7 @@ public final class Attribute
 
     this.name         = name;
     this.matchingRule = matchingRule;
+    encodedValues     = null;
 
     this.values = new ASN1OctetString[values.length];
     for (int i=0; i < values.length; i++)
@@ -391,6 +411,7 @@ public final class Attribute
 
     this.name         = name;
     this.matchingRule = matchingRule;
+    encodedValues     = null;
 
     this.values = new ASN1OctetString[values.length];
     for (int i=0; i < values.length; i++)
@@ -418,6 +439,7 @@ public final class Attribute
 
     this.name         = name;
     this.matchingRule = matchingRule;
+    encodedValues     = null;
 
     this.values = new ASN1OctetString[values.size()];
 
@@ -442,11 +464,32 @@ public final class Attribute
   {
     this.name         = name;
     this.matchingRule = matchingRule;
+    encodedValues     = null;
     this.values       = values;
   }
 
 
 
+  /**
+   * Creates a new LDAP attribute with the specified name and an encoded set of
+   * values that will not be decoded until they are first accessed.
+   *
+   * @param  name           The name for this attribute.
+   * @param  encodedValues  The value of the BER set containing the values for
+   *                        this attribute.  It must have been validated with
+   *                        the {@code countEncodedValues} method.
+   * @param  matchingRule   The matching rule for this attribute.
+   */
+  private Attribute(final String name, final byte[] encodedValues,
+                    final MatchingRule matchingRule)
+  {
+    this.name          = name;
+    this.encodedValues = encodedValues;
+    this.matchingRule  = matchingRule;
+  }
+
+
+
   /**
    * Creates a new LDAP attribute with the specified name and set of values.
    *
@@ -542,16 +585,18 @@ public final class Attribute
     ensureTrue(name.equalsIgnoreCase(attr2.name));
 
     final MatchingRule matchingRule = attr1.matchingRule;
+    final ASN1OctetString[] values1 = attr1.getRawValues();
+    final ASN1OctetString[] values2 = attr2.getRawValues();
 
     ASN1OctetString[] mergedValues =
-         new ASN1OctetString[attr1.values.length + attr2.values.length];
-    System.arraycopy(attr1.values, 0, mergedValues, 0, attr1.values.length);
+         new ASN1OctetString[values1.length + values2.length];
+    System.arraycopy(values1, 0, mergedValues, 0, values1.length);
 
-    int pos = attr1.values.length;
-    for (final ASN1OctetString s2 : attr2.values)
+    int pos = values1.length;
+    for (final ASN1OctetString s2 : values2)
     {
       boolean found = false;
-      for (final ASN1OctetString s1 : attr1.values)
+      for (final ASN1OctetString s1 : values1)
       {
         try
         {
@@ -649,7 +694,7 @@ public final class Attribute
     }
 
     final ArrayList<ASN1OctetString> newValues =
-         new ArrayList<ASN1OctetString>(Arrays.asList(attr1.values));
+         new ArrayList<ASN1OctetString>(Arrays.asList(attr1.getRawValues()));
 
     final Iterator<ASN1OctetString> iterator = newValues.iterator();
     while (iterator.hasNext())
@@ -982,12 +1027,13 @@ public final class Attribute
    */
   public String getValue()
   {
-    if (values.length == 0)
+    final ASN1OctetString[] rawValues = getRawValues();
+    if (rawValues.length == 0)
     {
       return null;
     }
 
-    return values[0].stringValue();
+    return rawValues[0].stringValue();
   }
 
 
@@ -1002,12 +1048,13 @@ public final class Attribute
    */
   public byte[] getValueByteArray()
   {
-    if (values.length == 0)
+    final ASN1OctetString[] rawValues = getRawValues();
+    if (rawValues.length == 0)
     {
       return null;
     }
 
-    return values[0].getValue();
+    return rawValues[0].getValue();
   }
 
 
@@ -1025,12 +1072,13 @@ public final class Attribute
    */
   public Boolean getValueAsBoolean()
   {
-    if (values.length == 0)
+    final ASN1OctetString[] rawValues = getRawValues();
+    if (rawValues.length == 0)
     {
       return null;
     }
 
-    final String lowerValue = toLowerCase(values[0].stringValue());
+    final String lowerValue = toLowerCase(rawValues[0].stringValue());
     if (lowerValue.equals("true") || lowerValue.equals("t") ||
         lowerValue.equals("yes") || lowerValue.equals("y") ||
         lowerValue.equals("on") || lowerValue.equals("1"))
@@ -1062,14 +1110,15 @@ public final class Attribute
    */
   public Date getValueAsDate()
   {
-    if (values.length == 0)
+    final ASN1OctetString[] rawValues = getRawValues();
+    if (rawValues.length == 0)
     {
       return null;
     }
 
     try
     {
-      return decodeGeneralizedTime(values[0].stringValue());
+      return decodeGeneralizedTime(rawValues[0].stringValue());
     }
     catch (Exception e)
     {
@@ -1089,14 +1138,15 @@ public final class Attribute
    */
   public DN getValueAsDN()
   {
-    if (values.length == 0)
+    final ASN1OctetString[] rawValues = getRawValues();
+    if (rawValues.length == 0)
     {
       return null;
     }
 
     try
     {
-      return new DN(values[0].stringValue());
+      return new DN(rawValues[0].stringValue());
     }
     catch (Exception e)
     {
@@ -1117,14 +1167,15 @@ public final class Attribute
    */
   public Integer getValueAsInteger()
   {
-    if (values.length == 0)
+    final ASN1OctetString[] rawValues = getRawValues();
+    if (rawValues.length == 0)
     {
       return null;
     }
 
     try
     {
-      return Integer.valueOf(values[0].stringValue());
+      return Integer.valueOf(rawValues[0].stringValue());
     }
     catch (NumberFormatException nfe)
     {
@@ -1145,14 +1196,15 @@ public final class Attribute
    */
   public Long getValueAsLong()
   {
-    if (values.length == 0)
+    final ASN1OctetString[] rawValues = getRawValues();
+    if (rawValues.length == 0)
     {
       return null;
     }
 
     try
     {
-      return Long.valueOf(values[0].stringValue());
+      return Long.valueOf(rawValues[0].stringValue());
     }
     catch (NumberFormatException nfe)
     {
@@ -1172,15 +1224,16 @@ public final class Attribute
    */
   public String[] getValues()
   {
-    if (values.length == 0)
+    final ASN1OctetString[] rawValues = getRawValues();
+    if (rawValues.length == 0)
     {
       return NO_STRINGS;
     }
 
-    final String[] stringValues = new String[values.length];
-    for (int i=0; i < values.length; i++)
+    final String[] stringValues = new String[rawValues.length];
+    for (int i=0; i < rawValues.length; i++)
     {
-      stringValues[i] = values[i].stringValue();
+      stringValues[i] = rawValues[i].stringValue();
     }
 
     return stringValues;
@@ -1197,15 +1250,16 @@ public final class Attribute
    */
   public byte[][] getValueByteArrays()
   {
-    if (values.length == 0)
+    final ASN1OctetString[] rawValues = getRawValues();
+    if (rawValues.length == 0)
     {
       return NO_BYTE_VALUES;
     }
 
-    final byte[][] byteValues = new byte[values.length][];
-    for (int i=0; i < values.length; i++)
+    final byte[][] byteValues = new byte[rawValues.length][];
+    for (int i=0; i < rawValues.length; i++)
     {
-      byteValues[i] = values[i].getValue();
+      byteValues[i] = rawValues[i].getValue();
     }
 
     return byteValues;
@@ -1222,7 +1276,20 @@ public final class Attribute
    */
   public ASN1OctetString[] getRawValues()
   {
-    return values;
+    ASN1OctetString[] v = values;
+    if (v == null)
+    {
+      // This attribute was read with lazy value decoding and its values have
+      // not yet been accessed.  The values will reference the encoded set
+      // rather than copies of it.  If multiple threads get here at the same
+      // time, then each will decode an equivalent set of values.
+      final byte[] encoded = encodedValues;
+      v = new ASN1OctetString[countEncodedValues(encoded)];
+      decodeEncodedValues(encoded, v);
+      values = v;
+    }
+
+    return v;
   }
 
 
@@ -1235,7 +1302,7 @@ public final class Attribute
    */
   public boolean hasValue()
   {
-    return (values.length > 0);
+    return (getRawValues().length > 0);
   }
 
 
@@ -1344,7 +1411,7 @@ public final class Attribute
    */
   boolean hasValue(final ASN1OctetString value, final MatchingRule matchingRule)
   {
-    for (final ASN1OctetString existingValue : values)
+    for (final ASN1OctetString existingValue : getRawValues())
     {
       try
       {
@@ -1379,7 +1446,7 @@ public final class Attribute
    */
   public int size()
   {
-    return values.length;
+    return getRawValues().length;
   }
 
 
@@ -1396,12 +1463,22 @@ public final class Attribute
     final ASN1BufferSequence attrSequence = buffer.beginSequence();
     buffer.addOctetString(name);
 
-    final ASN1BufferSet valueSet = buffer.beginSet();
-    for (final ASN1OctetString value : values)
+    if (encodedValues == null)
+    {
+      final ASN1BufferSet valueSet = buffer.beginSet();
+      for (final ASN1OctetString value : getRawValues())
+      {
+        buffer.addElement(value);
+      }
+      valueSet.end();
+    }
+    else
     {
-      buffer.addElement(value);
+      // The values were read with lazy value decoding, so the encoded set can
+      // be written as-is without decoding them.
+      buffer.addElement(new ASN1Element(ASN1Constants.UNIVERSAL_SET_TYPE,
+           encodedValues));
     }
-    valueSet.end();
     attrSequence.end();
   }
 
@@ -1419,7 +1496,7 @@ public final class Attribute
     final ASN1Element[] elements =
     {
       new ASN1OctetString(name),
-      new ASN1Set(values)
+      new ASN1Set(getRawValues())
     };
 
     return new ASN1Sequence(elements);
@@ -1461,6 +1538,37 @@ public final class Attribute
   public static Attribute readFrom(final ASN1StreamReader reader,
                                    final Schema schema)
          throws LDAPException
+  {
+    return readFrom(reader, schema, false);
+  }
+
+
+
+  /**
+   * Reads and decodes an attribute from the provided ASN.1 stream reader,
+   * optionally deferring the decoding of its values until they are first
+   * accessed.
+   *
+   * @param  reader              The ASN.1 stream reader from which to read the
+   *                             attribute.
+   * @param  schema              The schema to use to select the appropriate
+   *                             matching rule for this attribute.  It may be
+   *                             {@code null} if the default matching rule
+   *                             should be selected.
+   * @param  lazyValueDecoding   Indicates whether to retain the encoded set of
+   *                             values and only decode the individual values
+   *                             when they are first accessed.  The structure of
+   *                             the encoded set will still be validated.
+   *
+   * @return  The decoded attribute.
+   *
+   * @throws  LDAPException  If a problem occurs while trying to read or decode
+   *                         the attribute.
+   */
+  static Attribute readFrom(final ASN1StreamReader reader,
+                            final Schema schema,
+                            final boolean lazyValueDecoding)
+         throws LDAPException
   {
     try
     {
@@ -1471,12 +1579,25 @@ public final class Attribute
       final MatchingRule matchingRule =
            MatchingRule.selectEqualityMatchingRule(attrName, schema);
 
+      if (lazyValueDecoding)
+      {
+        final byte[] encodedValues = reader.readBytes();
+        ensureNotNull(encodedValues);
+        if (countEncodedValues(encodedValues) < 0)
+        {
+          throw new LDAPException(ResultCode.DECODING_ERROR,
+               ERR_ATTR_MALFORMED_VALUE_SET.get(attrName));
+        }
+
+        return new Attribute(attrName, encodedValues, matchingRule);
+      }
+
       final ArrayList<ASN1OctetString> valueList =
            new ArrayList<ASN1OctetString>();
       final ASN1StreamReaderSet valueSet = reader.beginSet();
       while (valueSet.hasMoreElements())
       {
-        valueList.add(new ASN1OctetString(reader.readBytes()));
+        valueList.add(reader.readOctetString());
       }
 
       final ASN1OctetString[] values = new ASN1OctetString[valueList.size()];
@@ -1484,6 +1605,11 @@ public final class Attribute
 
       return new Attribute(attrName, matchingRule, values);
     }
+    catch (LDAPException le)
+    {
+      debugException(le);
+      throw le;
+    }
     catch (Exception e)
     {
       debugException(e);
@@ -1494,6 +1620,99 @@ public final class Attribute
 
 
 
+  /**
+   * Counts the values in the provided encoded set of attribute values, making
+   * sure that it contains a properly-encoded sequence of BER elements.
+   *
+   * @param  encodedValues  The value of the BER set containing the attribute
+   *                        values.
+   *
+   * @return  The number of values in the provided set, or -1 if it is not a
+   *          properly-encoded sequence of BER elements.
+   */
+  private static int countEncodedValues(final byte[] encodedValues)
+  {
+    int numValues = 0;
+    int pos = 0;
+    while (pos < encodedValues.length)
+    {
+      // Skip over the BER type, and make sure there is at least one length
+      // byte.
+      pos++;
+      if (pos >= encodedValues.length)
+      {
+        return -1;
+      }
+
+      int length = (encodedValues[pos++] & 0xFF);
+      if ((length & 0x80) != 0)
+      {
+        final int numLengthBytes = (length & 0x7F);
+        if ((numLengthBytes < 1) || (numLengthBytes > 4) ||
+            ((pos + numLengthBytes) > encodedValues.length))
+        {
+          return -1;
+        }
+
+        length = 0;
+        for (int i=0; i < numLengthBytes; i++)
+        {
+          length = (length << 8) | (encodedValues[pos++] & 0xFF);
+        }
+      }
+
+      if ((length < 0) || (length > (encodedValues.length - pos)))
+      {
+        return -1;
+      }
+
+      pos += length;
+      numValues++;
+    }
+
+    return numValues;
+  }
+
+
+
+  /**
+   * Decodes the values in the provided encoded set of attribute values.  The
+   * values that are created will reference the provided array rather than
+   * copies of it.
+   *
+   * @param  encodedValues  The value of the BER set containing the attribute
+   *                        values.  It must have been validated with the
+   *                        {@code countEncodedValues} method.
+   * @param  values         The array into which the decoded values should be
+   *                        placed.  Its size must match the number of values in
+   *                        the encoded set.
+   */
+  private static void decodeEncodedValues(final byte[] encodedValues,
+                                          final ASN1OctetString[] values)
+  {
+    int pos = 0;
+    for (int v=0; v < values.length; v++)
+    {
+      final byte type = encodedValues[pos++];
+
+      int length = (encodedValues[pos++] & 0xFF);
+      if ((length & 0x80) != 0)
+      {
+        final int numLengthBytes = (length & 0x7F);
+        length = 0;
+        for (int i=0; i < numLengthBytes; i++)
+        {
+          length = (length << 8) | (encodedValues[pos++] & 0xFF);
+        }
+      }
+
+      values[v] = new ASN1OctetString(type, encodedValues, pos, length);
+      pos += length;
+    }
+  }
+
+
+
   /**
    * Decodes the provided ASN.1 sequence as an LDAP attribute.
    *
@@ -1554,7 +1773,7 @@ public final class Attribute
    */
   public boolean needsBase64Encoding()
   {
-    for (final ASN1OctetString v : values)
+    for (final ASN1OctetString v : getRawValues())
     {
       if (needsBase64Encoding(v.getValue()))
       {
@@ -1650,7 +1869,7 @@ public final class Attribute
     {
       int c = toLowerCase(name).hashCode();
 
-      for (final ASN1OctetString value : values)
+      for (final ASN1OctetString value : getRawValues())
       {
         try
         {
@@ -1705,7 +1924,9 @@ public final class Attribute
       return false;
     }
 
-    if (values.length != a.values.length)
+    final ASN1OctetString[] rawValues = getRawValues();
+    final ASN1OctetString[] aValues = a.getRawValues();
+    if (rawValues.length != aValues.length)
     {
       return false;
     }
@@ -1714,27 +1935,27 @@ public final class Attribute
     // and see if they are all present in the other.  However, that can be very
     // expensive for a large set of values, so we'll try to go with a more
     // efficient approach.
-    if (values.length > 10)
+    if (rawValues.length > 10)
     {
       // First, create a hash set containing the un-normalized values of the
       // first attribute.
       final HashSet<ASN1OctetString> unNormalizedValues =
-           new HashSet<ASN1OctetString>(values.length);
-      Collections.addAll(unNormalizedValues, values);
+           new HashSet<ASN1OctetString>(rawValues.length);
+      Collections.addAll(unNormalizedValues, rawValues);
 
       // Next, iterate through the values of the second attribute.  For any
       // values that exist in the un-normalized set, remove them from that
       // set.  For any values that aren't in the un-normalized set, create a
       // new set with the normalized representations of those values.
       HashSet<ASN1OctetString> normalizedMissingValues = null;
-      for (final ASN1OctetString value : a.values)
+      for (final ASN1OctetString value : aValues)
       {
         if (! unNormalizedValues.remove(value))
         {
           if (normalizedMissingValues == null)
           {
             normalizedMissingValues =
-                 new HashSet<ASN1OctetString>(values.length);
+                 new HashSet<ASN1OctetString>(rawValues.length);
           }
 
           try
@@ -1775,7 +1996,7 @@ public final class Attribute
     }
     else
     {
-      for (final ASN1OctetString value : values)
+      for (final ASN1OctetString value : rawValues)
       {
         if (! a.hasValue(value))
         {
@@ -1815,10 +2036,11 @@ public final class Attribute
    */
   public void toString(final StringBuilder buffer)
   {
+    final ASN1OctetString[] rawValues = getRawValues();
     buffer.append("Attribute(name=");
     buffer.append(name);
 
-    if (values.length == 0)
+    if (rawValues.length == 0)
     {
       buffer.append(", values={");
     }
@@ -1826,14 +2048,14 @@ public final class Attribute
     {
       buffer.append(", base64Values={'");
 
-      for (int i=0; i < values.length; i++)
+      for (int i=0; i < rawValues.length; i++)
       {
         if (i > 0)
         {
           buffer.append("', '");
         }
 
-        buffer.append(Base64.encode(values[i].getValue()));
+        buffer.append(Base64.encode(rawValues[i].getValue()));
       }
 
       buffer.append('\'');
@@ -1842,14 +2064,14 @@ public final class Attribute
     {
       buffer.append(", values={'");
 
-      for (int i=0; i < values.length; i++)
+      for (int i=0; i < rawValues.length; i++)
       {
         if (i > 0)
         {
           buffer.append("', '");
         }
 
-        buffer.append(values[i].stringValue());
+        buffer.append(rawValues[i].stringValue());
       }
 
       buffer.append('\'');
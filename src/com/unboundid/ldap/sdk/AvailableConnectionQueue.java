@@ -0,0 +1,471 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.sdk;
+
+
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+
+
+/**
+ * This class provides a bounded queue that holds the connections that are
+ * available for use in an {@link LDAPConnectionPool}.  Connections are held in
+ * one or more non-blocking stripes, and the number of connections in the queue
+ * is tracked with an atomic counter, so that connections may be checked out
+ * and released without acquiring a lock.  A lock is only used to allow threads
+ * to wait for a connection to become available, and it is only acquired when
+ * releasing a connection if there are threads waiting.
+ * <BR><BR>
+ * If the queue has a single stripe, then connections will be checked out in
+ * the order in which they were released.  If it has multiple stripes, then
+ * each thread will release connections into, and first attempt to check out
+ * connections from, a stripe selected based on its thread ID, so that threads
+ * are spread across the stripes.  A thread will check the other stripes before
+ * concluding that no connection is available.
+ */
+@ThreadSafety(level=ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+final class AvailableConnectionQueue
+      implements Iterable<LDAPConnection>
+{
+  /**
+   * The maximum number of stripes that will be used for a striped queue.
+   */
+  static final int MAX_STRIPES = 64;
+
+
+
+  // The number of connections currently held in the queue.  It is incremented
+  // before a connection is added to a stripe and decremented after one has been
+  // removed, so it will never be less than the number of connections that
+  // may be retrieved.
+  private final AtomicInteger size;
+
+  // The number of threads currently waiting for a connection.
+  private final AtomicInteger numWaiters;
+
+  // The stripes in which connections are held.
+  private final ConcurrentLinkedQueue<LDAPConnection>[] stripes;
+
+  // The condition used to signal waiting threads.
+  private final Condition notEmpty;
+
+  // The maximum number of connections that may be held in the queue.
+  private final int capacity;
+
+  // The mask used to select a stripe.
+  private final int stripeMask;
+
+  // The lock used when waiting for a connection.
+  private final ReentrantLock lock;
+
+
+
+  /**
+   * Creates a new, empty available connection queue.
+   *
+   * @param  capacity  The maximum number of connections that may be held in
+   *                   the queue.  It must be greater than zero.
+   * @param  striped   Indicates whether the queue should use multiple stripes
+   *                   with thread affinity rather than a single stripe.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  AvailableConnectionQueue(final int capacity, final boolean striped)
+  {
+    this.capacity = capacity;
+
+    final int numStripes = getNumStripes(capacity, striped);
+    stripes = new ConcurrentLinkedQueue[numStripes];
+    for (int i=0; i < numStripes; i++)
+    {
+      stripes[i] = new ConcurrentLinkedQueue<LDAPConnection>();
+    }
+
+    stripeMask = numStripes - 1;
+    size       = new AtomicInteger(0);
+    numWaiters = new AtomicInteger(0);
+    lock       = new ReentrantLock();
+    notEmpty   = lock.newCondition();
+  }
+
+
+
+  /**
+   * Determines the number of stripes to use for a queue.  For a striped queue,
+   * it will be the smallest power of two that is at least twice the number of
+   * CPUs available to the JVM, but not more than the capacity of the queue or
+   * {@link #MAX_STRIPES}.
+   *
+   * @param  capacity  The maximum number of connections that may be held in
+   *                   the queue.
+   * @param  striped   Indicates whether the queue should use multiple stripes.
+   *
+   * @return  The number of stripes to use, which will always be a power of
+   *          two.
+   */
+  static int getNumStripes(final int capacity, final boolean striped)
+  {
+    if (! striped)
+    {
+      return 1;
+    }
+
+    final int target = Math.min(Math.min(capacity, MAX_STRIPES),
+         2 * Runtime.getRuntime().availableProcessors());
+    int numStripes = 1;
+    while ((numStripes * 2) <= target)
+    {
+      numStripes *= 2;
+    }
+
+    return numStripes;
+  }
+
+
+
+  /**
+   * Retrieves the number of stripes used by this queue.
+   *
+   * @return  The number of stripes used by this queue.
+   */
+  int getNumStripes()
+  {
+    return stripes.length;
+  }
+
+
+
+  /**
+   * Adds the provided connection to this queue if there is room for it.
+   *
+   * @param  connection  The connection to add.  It must not be {@code null}.
+   *
+   * @return  {@code true} if the connection was added, or {@code false} if the
+   *          queue was already full.
+   */
+  boolean offer(final LDAPConnection connection)
+  {
+    while (true)
+    {
+      final int currentSize = size.get();
+      if (currentSize >= capacity)
+      {
+        return false;
+      }
+
+      if (size.compareAndSet(currentSize, currentSize+1))
+      {
+        break;
+      }
+    }
+
+    stripes[getHomeStripe()].offer(connection);
+
+    if (numWaiters.get() > 0)
+    {
+      lock.lock();
+      try
+      {
+        notEmpty.signal();
+      }
+      finally
+      {
+        lock.unlock();
+      }
+    }
+
+    return true;
+  }
+
+
+
+  /**
+   * Adds all of the provided connections to this queue.  An
+   * {@code IllegalStateException} will be thrown if there is not room in the
+   * queue for all of the connections.
+   *
+   * @param  connections  The connections to add.
+   */
+  void addAll(final Collection<LDAPConnection> connections)
+  {
+    for (final LDAPConnection c : connections)
+    {
+      if (! offer(c))
+      {
+        throw new IllegalStateException();
+      }
+    }
+  }
+
+
+
+  /**
+   * Retrieves and removes a connection from this queue without waiting.
+   *
+   * @return  The connection that was removed, or {@code null} if no connection
+   *          is available.
+   */
+  LDAPConnection poll()
+  {
+    if (size.get() <= 0)
+    {
+      return null;
+    }
+
+    final int homeStripe = getHomeStripe();
+    for (int i=0; i < stripes.length; i++)
+    {
+      final LDAPConnection c = stripes[(homeStripe + i) & stripeMask].poll();
+      if (c != null)
+      {
+        size.decrementAndGet();
+        return c;
+      }
+    }
+
+    return null;
+  }
+
+
+
+  /**
+   * Retrieves and removes a connection from this queue, waiting up to the
+   * specified length of time for one to become available.
+   *
+   * @param  timeout  The maximum length of time to wait.
+   * @param  unit     The time unit for the timeout.
+   *
+   * @return  The connection that was removed, or {@code null} if no connection
+   *          became available before the timeout elapsed.
+   *
+   * @throws  InterruptedException  If the thread is interrupted while waiting.
+   */
+  LDAPConnection poll(final long timeout, final TimeUnit unit)
+       throws InterruptedException
+  {
+    LDAPConnection c = poll();
+    if (c != null)
+    {
+      return c;
+    }
+
+    long remainingNanos = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try
+    {
+      // The waiter count must be incremented before checking again, so that
+      // any thread that adds a connection after that check will signal.
+      numWaiters.incrementAndGet();
+      try
+      {
+        while (true)
+        {
+          c = poll();
+          if (c != null)
+          {
+            return c;
+          }
+
+          if (remainingNanos <= 0L)
+          {
+            return null;
+          }
+
+          remainingNanos = notEmpty.awaitNanos(remainingNanos);
+        }
+      }
+      finally
+      {
+        numWaiters.decrementAndGet();
+      }
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+
+
+  /**
+   * Removes all available connections from this queue and adds them to the
+   * provided collection.
+   *
+   * @param  c  The collection to which the connections should be added.
+   *
+   * @return  The number of connections that were removed.
+   */
+  int drainTo(final Collection<LDAPConnection> c)
+  {
+    int numDrained = 0;
+    while (true)
+    {
+      final LDAPConnection conn = poll();
+      if (conn == null)
+      {
+        return numDrained;
+      }
+
+      c.add(conn);
+      numDrained++;
+    }
+  }
+
+
+
+  /**
+   * Retrieves the number of connections currently held in this queue.
+   *
+   * @return  The number of connections currently held in this queue.
+   */
+  int size()
+  {
+    return Math.max(0, size.get());
+  }
+
+
+
+  /**
+   * Retrieves the number of additional connections that may be added to this
+   * queue before it is full.
+   *
+   * @return  The number of additional connections that may be added to this
+   *          queue before it is full.
+   */
+  int remainingCapacity()
+  {
+    return Math.max(0, (capacity - size.get()));
+  }
+
+
+
+  /**
+   * Retrieves an iterator over the connections held in this queue.  The
+   * iterator is weakly consistent, so it may or may not reflect changes made
+   * while it is in use.  Its {@code remove} method may be used to remove a
+   * connection from the queue, but it will have no effect if that connection
+   * has already been removed by another thread.
+   *
+   * @return  An iterator over the connections held in this queue.
+   */
+  public Iterator<LDAPConnection> iterator()
+  {
+    return new Iterator<LDAPConnection>()
+    {
+      // The position of the stripe currently being iterated.
+      private int stripeIndex = 0;
+
+      // The iterator for the current stripe.
+      private Iterator<LDAPConnection> stripeIterator = stripes[0].iterator();
+
+      // The last connection returned by this iterator, if it may be removed.
+      private LDAPConnection lastConnection = null;
+
+      // The stripe that held the last connection returned by this iterator.
+      private ConcurrentLinkedQueue<LDAPConnection> lastStripe = null;
+
+
+
+      /**
+       * {@inheritDoc}
+       */
+      public boolean hasNext()
+      {
+        while (! stripeIterator.hasNext())
+        {
+          if (++stripeIndex >= stripes.length)
+          {
+            return false;
+          }
+
+          stripeIterator = stripes[stripeIndex].iterator();
+        }
+
+        return true;
+      }
+
+
+
+      /**
+       * {@inheritDoc}
+       */
+      public LDAPConnection next()
+      {
+        if (! hasNext())
+        {
+          throw new NoSuchElementException();
+        }
+
+        lastStripe = stripes[stripeIndex];
+        lastConnection = stripeIterator.next();
+        return lastConnection;
+      }
+
+
+
+      /**
+       * {@inheritDoc}
+       */
+      public void remove()
+      {
+        if (lastConnection == null)
+        {
+          throw new IllegalStateException();
+        }
+
+        // The stripe iterator's remove method would succeed even if another
+        // thread had already polled the connection, so remove it from the
+        // stripe directly and only update the size if that actually removed
+        // it.
+        final boolean removed = lastStripe.remove(lastConnection);
+        lastConnection = null;
+        lastStripe = null;
+        if (removed)
+        {
+          size.decrementAndGet();
+        }
+      }
+    };
+  }
+
+
+
+  /**
+   * Retrieves the index of the stripe that the current thread should use
+   * first.
+   *
+   * @return  The index of the stripe that the current thread should use first.
+   */
+  private int getHomeStripe()
+  {
+    return (((int) Thread.currentThread().getId()) & stripeMask);
+  }
+}
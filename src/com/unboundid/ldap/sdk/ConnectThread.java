@@ -25,6 +25,7 @@ package com.unboundid.ldap.sdk;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
@@ -54,6 +55,10 @@ final class ConnectThread
   // Indicates whether the connection has been successfully established.
   private final AtomicBoolean connected;
 
+  // Indicates whether the socket should be created from a socket channel
+  // rather than using the socket factory.
+  private final boolean useSocketChannel;
+
   // The socket used for the connection.
   private final AtomicReference<Socket> socket;
 
@@ -97,6 +102,34 @@ final class ConnectThread
    */
   ConnectThread(final SocketFactory socketFactory, final InetAddress address,
                 final int port, final int connectTimeoutMillis)
+  {
+    this(socketFactory, address, port, connectTimeoutMillis, false);
+  }
+
+
+
+  /**
+   * Creates a new instance of this connect thread with the provided
+   * information.
+   *
+   * @param  socketFactory         The socket factory to use to create the
+   *                               socket.
+   * @param  address               The address to which the connection should be
+   *                               established.
+   * @param  port                  The port to which the connection should be
+   *                               established.
+   * @param  connectTimeoutMillis  The maximum length of time in milliseconds
+   *                               that the connection attempt should be allowed
+   *                               to block.
+   * @param  useSocketChannel      Indicates whether the socket should be
+   *                               created from a new socket channel rather than
+   *                               with the provided socket factory.  This
+   *                               should only be {@code true} if the socket
+   *                               factory is the JVM-default socket factory.
+   */
+  ConnectThread(final SocketFactory socketFactory, final InetAddress address,
+                final int port, final int connectTimeoutMillis,
+                final boolean useSocketChannel)
   {
     super("Background connect thread for " + address + ':' + port);
     setDaemon(true);
@@ -105,6 +138,7 @@ final class ConnectThread
     this.address              = address;
     this.port                 = port;
     this.connectTimeoutMillis = connectTimeoutMillis;
+    this.useSocketChannel     = useSocketChannel;
 
     connected  = new AtomicBoolean(false);
     socket     = new AtomicReference<Socket>();
@@ -128,16 +162,24 @@ final class ConnectThread
     {
       boolean connectNeeded;
       Socket s;
-      try
+      if (useSocketChannel)
       {
-        s = socketFactory.createSocket();
+        s = SocketChannel.open().socket();
         connectNeeded = true;
       }
-      catch (final Exception e)
+      else
       {
-        debugException(e);
-        s = socketFactory.createSocket(address, port);
-        connectNeeded = false;
+        try
+        {
+          s = socketFactory.createSocket();
+          connectNeeded = true;
+        }
+        catch (final Exception e)
+        {
+          debugException(e);
+          s = socketFactory.createSocket(address, port);
+          connectNeeded = false;
+        }
       }
       socket.set(s);
 
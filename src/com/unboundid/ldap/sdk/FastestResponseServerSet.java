@@ -0,0 +1,995 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.sdk;
+
+
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import javax.net.SocketFactory;
+
+import com.unboundid.util.NotMutable;
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+import static com.unboundid.util.Debug.*;
+import static com.unboundid.util.Validator.*;
+
+
+
+/**
+ * This class provides a server set implementation that will establish a
+ * connection to the server that has been responding to operations most
+ * quickly.  The server set keeps track of the connections it has created, and
+ * it uses the {@link LDAPConnectionStatistics} of those connections to update
+ * an exponentially weighted moving average of the response time for each
+ * server.
+ * Add, compare, delete, extended, modify, modify DN, and search operations are
+ * included in the average, but bind operations are not, since their response
+ * time is frequently dominated by password verification rather than server
+ * load.
+ * <BR><BR>
+ * Servers are tried in order of increasing average response time.  A server
+ * for which no response time information is available (because no operations
+ * have yet been processed on connections to it) will be tried before any
+ * server with a known response time, so that every server is measured.  If
+ * there are multiple servers with the same average response time, then the
+ * first one in the list will be chosen.
+ * <BR><BR>
+ * A server will be ejected for a configurable length of time if an attempt to
+ * establish a connection to it fails, or if its average response time exceeds
+ * the fastest average response time of the other available servers by more
+ * than a configurable factor.  Ejected servers will only be tried if it is not
+ * possible to establish a connection to any other server.  Once the ejection
+ * period has elapsed, the response time information for the server will be
+ * discarded so that it may be measured again.  The server with the fastest
+ * average response time will never be ejected because of its response time.
+ * <BR><BR>
+ * Response time information is updated whenever a new connection is requested.
+ * It will also be updated by the health check returned by the
+ * {@link #getResponseTimeHealthCheck} method each time a connection pool
+ * performs background health checking, so that response times continue to be
+ * measured even if the pool does not need any new connections.  That health
+ * check may be combined with any other health checks using an
+ * {@link AggregateLDAPConnectionPoolHealthCheck}.  The server set only holds
+ * weak references to the connections it has created, so connections that have
+ * been discarded will not be kept in memory, although any operations processed
+ * on them since the last update will not be included in the average.  Like the
+ * {@link FewestConnectionsServerSet}, it is not suitable for use in
+ * connections that may be re-established one or more times after being closed.
+ * <BR><BR>
+ * <H2>Example</H2>
+ * The following example demonstrates the process for creating a fastest
+ * response server set that may be used to establish connections to either of
+ * two servers, and using it in a connection pool that replaces connections
+ * after five minutes so that new connections will favor the server that has
+ * been responding most quickly, and that uses the server set's health check so
+ * that response times are updated between connection replacements.
+ * <PRE>
+ * // Create arrays with the addresses and ports of the directory server
+ * // instances.
+ * String[] addresses =
+ * {
+ *   server1Address,
+ *   server2Address
+ * };
+ * int[] ports =
+ * {
+ *   server1Port,
+ *   server2Port
+ * };
+ *
+ * // Create the server set using the address and port arrays.
+ * FastestResponseServerSet fastestResponseSet =
+ *      new FastestResponseServerSet(addresses, ports);
+ *
+ * // Verify that we can establish a single connection using the server set.
+ * LDAPConnection connection = fastestResponseSet.getConnection();
+ * RootDSE rootDSEFromConnection = connection.getRootDSE();
+ * connection.close();
+ *
+ * // Verify that we can establish a connection pool using the server set.
+ * SimpleBindRequest bindRequest =
+ *      new SimpleBindRequest("uid=pool.user,dc=example,dc=com", "password");
+ * LDAPConnectionPool pool =
+ *      new LDAPConnectionPool(fastestResponseSet, bindRequest, 10);
+ * pool.setMaxConnectionAgeMillis(300000L);
+ * pool.setHealthCheck(fastestResponseSet.getResponseTimeHealthCheck());
+ * RootDSE rootDSEFromPool = pool.getRootDSE();
+ * pool.close();
+ * </PRE>
+ */
+@NotMutable()
+@ThreadSafety(level=ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+public final class FastestResponseServerSet
+       extends ServerSet
+{
+  /**
+   * The default weight that will be given to the most recent response time
+   * sample when updating the average response time for a server.
+   */
+  public static final double DEFAULT_SMOOTHING_FACTOR = 0.3d;
+
+
+
+  /**
+   * The default factor by which the average response time for a server may
+   * exceed that of the fastest available server before it will be ejected.
+   */
+  public static final double DEFAULT_OUTLIER_THRESHOLD = 3.0d;
+
+
+
+  /**
+   * The default length of time in milliseconds that a server will remain
+   * ejected.
+   */
+  public static final long DEFAULT_EJECTION_DURATION_MILLIS = 30000L;
+
+
+
+  /**
+   * The minimum length of time in milliseconds between response time updates
+   * triggered by the health check.  A connection pool invokes the health check
+   * for each of its connections in turn, and this ensures that each pass
+   * contributes a single sample rather than one per connection.
+   */
+  private static final long MIN_HEALTH_CHECK_UPDATE_INTERVAL_MILLIS = 1000L;
+
+
+
+  // The average response times in nanoseconds for each of the servers, or -1
+  // for servers with no response time information.
+  private final double[] averageResponseTimeNanos;
+
+  // The weight to give to the most recent response time sample.
+  private final double smoothingFactor;
+
+  // The factor by which a server's average response time may exceed that of
+  // the fastest available server before it will be ejected.
+  private final double outlierThreshold;
+
+  // The port numbers of the target servers.
+  private final int[] ports;
+
+  // The set of connection options to use for new connections.
+  private final LDAPConnectionOptions connectionOptions;
+
+  // The connections created by this server set that may still be established.
+  private final List<TrackedConnection> establishedConnections;
+
+  // The health check that may be used to update response times.
+  private final LDAPConnectionPoolHealthCheck responseTimeHealthCheck;
+
+  // The length of time in milliseconds that a server will remain ejected.
+  private final long ejectionDurationMillis;
+
+  // The times at which each of the servers will no longer be ejected.  A value
+  // of zero indicates that the server is not ejected.
+  private final long[] ejectedUntil;
+
+  // The time that response times were last updated.
+  private long lastUpdateTime;
+
+  // The socket factory to use to establish connections.
+  private final SocketFactory socketFactory;
+
+  // The addresses of the target servers.
+  private final String[] addresses;
+
+
+
+  /**
+   * Creates a new fastest response server set with the specified set of
+   * directory server addresses and port numbers.  It will use the default
+   * socket factory provided by the JVM to create the underlying sockets, and
+   * default settings for response time smoothing and outlier ejection.
+   *
+   * @param  addresses  The addresses of the directory servers to which the
+   *                    connections should be established.  It must not be
+   *                    {@code null} or empty.
+   * @param  ports      The ports of the directory servers to which the
+   *                    connections should be established.  It must not be
+   *                    {@code null}, and it must have the same number of
+   *                    elements as the {@code addresses} array.  The order of
+   *                    elements in the {@code addresses} array must correspond
+   *                    to the order of elements in the {@code ports} array.
+   */
+  public FastestResponseServerSet(final String[] addresses, final int[] ports)
+  {
+    this(addresses, ports, null, null);
+  }
+
+
+
+  /**
+   * Creates a new fastest response server set with the specified set of
+   * directory server addresses and port numbers.  It will use the default
+   * socket factory provided by the JVM to create the underlying sockets, and
+   * default settings for response time smoothing and outlier ejection.
+   *
+   * @param  addresses          The addresses of the directory servers to which
+   *                            the connections should be established.  It must
+   *                            not be {@code null} or empty.
+   * @param  ports              The ports of the directory servers to which the
+   *                            connections should be established.  It must not
+   *                            be {@code null}, and it must have the same
+   *                            number of elements as the {@code addresses}
+   *                            array.  The order of elements in the
+   *                            {@code addresses} array must correspond to the
+   *                            order of elements in the {@code ports} array.
+   * @param  connectionOptions  The set of connection options to use for the
+   *                            underlying connections.
+   */
+  public FastestResponseServerSet(final String[] addresses, final int[] ports,
+              final LDAPConnectionOptions connectionOptions)
+  {
+    this(addresses, ports, null, connectionOptions);
+  }
+
+
+
+  /**
+   * Creates a new fastest response server set with the specified set of
+   * directory server addresses and port numbers.  It will use the provided
+   * socket factory to create the underlying sockets, and default settings for
+   * response time smoothing and outlier ejection.
+   *
+   * @param  addresses      The addresses of the directory servers to which the
+   *                        connections should be established.  It must not be
+   *                        {@code null} or empty.
+   * @param  ports          The ports of the directory servers to which the
+   *                        connections should be established.  It must not be
+   *                        {@code null}, and it must have the same number of
+   *                        elements as the {@code addresses} array.  The order
+   *                        of elements in the {@code addresses} array must
+   *                        correspond to the order of elements in the
+   *                        {@code ports} array.
+   * @param  socketFactory  The socket factory to use to create the underlying
+   *                        connections.
+   */
+  public FastestResponseServerSet(final String[] addresses, final int[] ports,
+                                  final SocketFactory socketFactory)
+  {
+    this(addresses, ports, socketFactory, null);
+  }
+
+
+
+  /**
+   * Creates a new fastest response server set with the specified set of
+   * directory server addresses and port numbers.  It will use the provided
+   * socket factory to create the underlying sockets, and default settings for
+   * response time smoothing and outlier ejection.
+   *
+   * @param  addresses          The addresses of the directory servers to which
+   *                            the connections should be established.  It must
+   *                            not be {@code null} or empty.
+   * @param  ports              The ports of the directory servers to which the
+   *                            connections should be established.  It must not
+   *                            be {@code null}, and it must have the same
+   *                            number of elements as the {@code addresses}
+   *                            array.  The order of elements in the
+   *                            {@code addresses} array must correspond to the
+   *                            order of elements in the {@code ports} array.
+   * @param  socketFactory      The socket factory to use to create the
+   *                            underlying connections.
+   * @param  connectionOptions  The set of connection options to use for the
+   *                            underlying connections.
+   */
+  public FastestResponseServerSet(final String[] addresses, final int[] ports,
+              final SocketFactory socketFactory,
+              final LDAPConnectionOptions connectionOptions)
+  {
+    this(addresses, ports, socketFactory, connectionOptions,
+         DEFAULT_SMOOTHING_FACTOR, DEFAULT_OUTLIER_THRESHOLD,
+         DEFAULT_EJECTION_DURATION_MILLIS);
+  }
+
+
+
+  /**
+   * Creates a new fastest response server set with the specified set of
+   * directory server addresses and port numbers and the provided settings for
+   * response time smoothing and outlier ejection.
+   *
+   * @param  addresses               The addresses of the directory servers to
+   *                                 which the connections should be
+   *                                 established.  It must not be {@code null}
+   *                                 or empty.
+   * @param  ports                   The ports of the directory servers to
+   *                                 which the connections should be
+   *                                 established.  It must not be
+   *                                 {@code null}, and it must have the same
+   *                                 number of elements as the
+   *                                 {@code addresses} array.  The order of
+   *                                 elements in the {@code addresses} array
+   *                                 must correspond to the order of elements
+   *                                 in the {@code ports} array.
+   * @param  socketFactory           The socket factory to use to create the
+   *                                 underlying connections.  It may be
+   *                                 {@code null} if the default socket factory
+   *                                 should be used.
+   * @param  connectionOptions       The set of connection options to use for
+   *                                 the underlying connections.  It may be
+   *                                 {@code null} if a default set of options
+   *                                 should be used.
+   * @param  smoothingFactor         The weight to give to the most recent
+   *                                 response time sample when updating the
+   *                                 average response time for a server.  It
+   *                                 must be greater than zero and less than or
+   *                                 equal to one, with larger values allowing
+   *                                 the average to respond more quickly to
+   *                                 changes.
+   * @param  outlierThreshold        The factor by which the average response
+   *                                 time for a server may exceed that of the
+   *                                 fastest available server before it will be
+   *                                 ejected.  It must be greater than one.
+   * @param  ejectionDurationMillis  The length of time in milliseconds that a
+   *                                 server will remain ejected after a failed
+   *                                 connection attempt or a response time
+   *                                 spike.  It must be greater than or equal
+   *                                 to zero.
+   */
+  public FastestResponseServerSet(final String[] addresses, final int[] ports,
+              final SocketFactory socketFactory,
+              final LDAPConnectionOptions connectionOptions,
+              final double smoothingFactor, final double outlierThreshold,
+              final long ejectionDurationMillis)
+  {
+    ensureNotNull(addresses, ports);
+    ensureTrue(addresses.length > 0,
+               "FastestResponseServerSet.addresses must not be empty.");
+    ensureTrue(addresses.length == ports.length,
+               "FastestResponseServerSet addresses and ports arrays must be " +
+                    "the same size.");
+    ensureTrue(((smoothingFactor > 0.0d) && (smoothingFactor <= 1.0d)),
+               "FastestResponseServerSet.smoothingFactor must be greater " +
+                    "than zero and less than or equal to one.");
+    ensureTrue((outlierThreshold > 1.0d),
+               "FastestResponseServerSet.outlierThreshold must be greater " +
+                    "than one.");
+    ensureTrue((ejectionDurationMillis >= 0L),
+               "FastestResponseServerSet.ejectionDurationMillis must be " +
+                    "greater than or equal to zero.");
+
+    this.addresses              = addresses;
+    this.ports                  = ports;
+    this.smoothingFactor        = smoothingFactor;
+    this.outlierThreshold       = outlierThreshold;
+    this.ejectionDurationMillis = ejectionDurationMillis;
+
+    establishedConnections = new ArrayList<TrackedConnection>(100);
+    responseTimeHealthCheck = new ResponseTimeHealthCheck(this);
+    lastUpdateTime = 0L;
+    ejectedUntil = new long[addresses.length];
+    averageResponseTimeNanos = new double[addresses.length];
+    Arrays.fill(averageResponseTimeNanos, -1.0d);
+
+    if (socketFactory == null)
+    {
+      this.socketFactory = SocketFactory.getDefault();
+    }
+    else
+    {
+      this.socketFactory = socketFactory;
+    }
+
+    if (connectionOptions == null)
+    {
+      this.connectionOptions = new LDAPConnectionOptions();
+    }
+    else
+    {
+      this.connectionOptions = connectionOptions;
+    }
+  }
+
+
+
+  /**
+   * Retrieves the addresses of the directory servers to which the connections
+   * should be established.
+   *
+   * @return  The addresses of the directory servers to which the connections
+   *          should be established.
+   */
+  public String[] getAddresses()
+  {
+    return addresses;
+  }
+
+
+
+  /**
+   * Retrieves the ports of the directory servers to which the connections
+   * should be established.
+   *
+   * @return  The ports of the directory servers to which the connections should
+   *          be established.
+   */
+  public int[] getPorts()
+  {
+    return ports;
+  }
+
+
+
+  /**
+   * Retrieves the socket factory that will be used to establish connections.
+   *
+   * @return  The socket factory that will be used to establish connections.
+   */
+  public SocketFactory getSocketFactory()
+  {
+    return socketFactory;
+  }
+
+
+
+  /**
+   * Retrieves the set of connection options that will be used for underlying
+   * connections.
+   *
+   * @return  The set of connection options that will be used for underlying
+   *          connections.
+   */
+  public LDAPConnectionOptions getConnectionOptions()
+  {
+    return connectionOptions;
+  }
+
+
+
+  /**
+   * Retrieves the weight that will be given to the most recent response time
+   * sample when updating the average response time for a server.
+   *
+   * @return  The weight that will be given to the most recent response time
+   *          sample when updating the average response time for a server.
+   */
+  public double getSmoothingFactor()
+  {
+    return smoothingFactor;
+  }
+
+
+
+  /**
+   * Retrieves the factor by which the average response time for a server may
+   * exceed that of the fastest available server before it will be ejected.
+   *
+   * @return  The factor by which the average response time for a server may
+   *          exceed that of the fastest available server before it will be
+   *          ejected.
+   */
+  public double getOutlierThreshold()
+  {
+    return outlierThreshold;
+  }
+
+
+
+  /**
+   * Retrieves the length of time in milliseconds that a server will remain
+   * ejected after a failed connection attempt or a response time spike.
+   *
+   * @return  The length of time in milliseconds that a server will remain
+   *          ejected.
+   */
+  public long getEjectionDurationMillis()
+  {
+    return ejectionDurationMillis;
+  }
+
+
+
+  /**
+   * Retrieves a health check that will update the response time information
+   * for this server set whenever a connection pool performs background health
+   * checking, without otherwise affecting the validity of any connection.  It
+   * may be combined with other health checks using an
+   * {@link AggregateLDAPConnectionPoolHealthCheck}.
+   *
+   * @return  A health check that will update the response time information for
+   *          this server set.
+   */
+  public LDAPConnectionPoolHealthCheck getResponseTimeHealthCheck()
+  {
+    return responseTimeHealthCheck;
+  }
+
+
+
+  /**
+   * Retrieves the current average response time for the specified server, as
+   * of the last time the response time information was updated.
+   *
+   * @param  address  The address of the server for which to retrieve the
+   *                  average response time.
+   * @param  port     The port of the server for which to retrieve the average
+   *                  response time.
+   *
+   * @return  The average response time in milliseconds for the specified
+   *          server, or -1 if the server is not in this server set or no
+   *          response time information is available for it.
+   */
+  public synchronized double getAverageResponseTimeMillis(final String address,
+                                                          final int port)
+  {
+    final int slot = getSlot(address, port);
+    if ((slot < 0) || (averageResponseTimeNanos[slot] < 0.0d))
+    {
+      return -1.0d;
+    }
+
+    return (averageResponseTimeNanos[slot] / 1000000.0d);
+  }
+
+
+
+  /**
+   * Indicates whether the specified server is currently ejected, either
+   * because an attempt to establish a connection to it failed or because its
+   * response time was an outlier.
+   *
+   * @param  address  The address of the server for which to make the
+   *                  determination.
+   * @param  port     The port of the server for which to make the
+   *                  determination.
+   *
+   * @return  {@code true} if the specified server is currently ejected, or
+   *          {@code false} if not or if the server is not in this server set.
+   */
+  public synchronized boolean isEjected(final String address, final int port)
+  {
+    final int slot = getSlot(address, port);
+    return ((slot >= 0) && (ejectedUntil[slot] > System.currentTimeMillis()));
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override()
+  public LDAPConnection getConnection()
+         throws LDAPException
+  {
+    return getConnection(null);
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override()
+  public LDAPConnection getConnection(
+                           final LDAPConnectionPoolHealthCheck healthCheck)
+         throws LDAPException
+  {
+    // Order the servers so that available servers are tried in order of
+    // increasing average response time, followed by ejected servers in the
+    // order in which their ejections will expire.  Only this needs to be done
+    // while holding the lock, so that concurrent callers are not serialized
+    // behind connection attempts and health checks.
+    final Integer[] order = new Integer[addresses.length];
+    for (int i=0; i < order.length; i++)
+    {
+      order[i] = i;
+    }
+
+    synchronized (this)
+    {
+      updateResponseTimes(System.currentTimeMillis());
+
+      Arrays.sort(order, new Comparator<Integer>()
+      {
+        public int compare(final Integer i1, final Integer i2)
+        {
+          final long e1 = ejectedUntil[i1];
+          final long e2 = ejectedUntil[i2];
+          if (e1 != e2)
+          {
+            return (e1 < e2) ? -1 : 1;
+          }
+
+          return Double.compare(averageResponseTimeNanos[i1],
+               averageResponseTimeNanos[i2]);
+        }
+      });
+    }
+
+
+    // Try each server in sequence until we are able to successfully establish
+    // a connection.
+    LDAPException lastException = null;
+    for (final int slot : order)
+    {
+      try
+      {
+        final LDAPConnection conn = new LDAPConnection(socketFactory,
+             connectionOptions, addresses[slot], ports[slot]);
+        if (healthCheck != null)
+        {
+          try
+          {
+            healthCheck.ensureNewConnectionValid(conn);
+          }
+          catch (final LDAPException le)
+          {
+            debugException(le);
+            conn.close();
+            throw le;
+          }
+        }
+
+        synchronized (this)
+        {
+          establishedConnections.add(new TrackedConnection(conn, slot));
+        }
+        return conn;
+      }
+      catch (final LDAPException le)
+      {
+        debugException(le);
+        lastException = le;
+
+        synchronized (this)
+        {
+          ejectedUntil[slot] =
+               System.currentTimeMillis() + ejectionDurationMillis;
+        }
+      }
+    }
+
+
+    // If we've gotten here, then we've tried all servers without any success,
+    // so throw the last exception that was encountered.
+    throw lastException;
+  }
+
+
+
+  /**
+   * Updates the average response time for each server if that has not been
+   * done within the minimum interval for health check updates.
+   */
+  private synchronized void updateResponseTimesForHealthCheck()
+  {
+    final long currentTime = System.currentTimeMillis();
+    if ((currentTime - lastUpdateTime) >=
+         MIN_HEALTH_CHECK_UPDATE_INTERVAL_MILLIS)
+    {
+      updateResponseTimes(currentTime);
+    }
+  }
+
+
+
+  /**
+   * Updates the average response time for each server using the operations
+   * processed on connections established by this server set since they were
+   * last examined, ejects any servers whose response times are outliers, and
+   * reinstates any servers whose ejection period has elapsed.  The caller must
+   * hold the lock for this server set.
+   *
+   * @param  currentTime  The current time in milliseconds.
+   */
+  private void updateResponseTimes(final long currentTime)
+  {
+    lastUpdateTime = currentTime;
+
+    // Reinstate any servers whose ejection period has elapsed.  Any response
+    // time information for them is discarded so that they will be measured
+    // again.
+    for (int i=0; i < ejectedUntil.length; i++)
+    {
+      if ((ejectedUntil[i] != 0L) && (ejectedUntil[i] <= currentTime))
+      {
+        ejectedUntil[i] = 0L;
+        averageResponseTimeNanos[i] = -1.0d;
+      }
+    }
+
+
+    // Determine the number of operations and total response time for each
+    // server since the last update, and stop tracking any connections that
+    // have been closed or discarded.
+    final long[] numOperations = new long[addresses.length];
+    final long[] totalNanos = new long[addresses.length];
+    final Iterator<TrackedConnection> iterator =
+         establishedConnections.iterator();
+    while (iterator.hasNext())
+    {
+      if (! iterator.next().sample(numOperations, totalNanos))
+      {
+        iterator.remove();
+      }
+    }
+
+    for (int i=0; i < addresses.length; i++)
+    {
+      if ((numOperations[i] > 0L) && (ejectedUntil[i] == 0L))
+      {
+        final double sample = ((double) totalNanos[i]) / numOperations[i];
+        if (averageResponseTimeNanos[i] < 0.0d)
+        {
+          averageResponseTimeNanos[i] = sample;
+        }
+        else
+        {
+          averageResponseTimeNanos[i] = (smoothingFactor * sample) +
+               ((1.0d - smoothingFactor) * averageResponseTimeNanos[i]);
+        }
+      }
+    }
+
+
+    // Eject any available server whose average response time exceeds the
+    // fastest average response time by more than the outlier threshold.
+    double fastest = -1.0d;
+    for (int i=0; i < addresses.length; i++)
+    {
+      final double average = averageResponseTimeNanos[i];
+      if ((ejectedUntil[i] == 0L) && (average >= 0.0d) &&
+          ((fastest < 0.0d) || (average < fastest)))
+      {
+        fastest = average;
+      }
+    }
+
+    if (fastest >= 0.0d)
+    {
+      for (int i=0; i < addresses.length; i++)
+      {
+        if ((ejectedUntil[i] == 0L) &&
+            (averageResponseTimeNanos[i] > (fastest * outlierThreshold)))
+        {
+          ejectedUntil[i] = currentTime + ejectionDurationMillis;
+        }
+      }
+    }
+  }
+
+
+
+  /**
+   * Retrieves the number of connections created by this server set that are
+   * still being tracked.  This is intended for testing purposes.
+   *
+   * @return  The number of connections created by this server set that are
+   *          still being tracked.
+   */
+  synchronized int getNumTrackedConnections()
+  {
+    return establishedConnections.size();
+  }
+
+
+
+  /**
+   * Retrieves the position of the specified server in the arrays of addresses
+   * and ports.
+   *
+   * @param  address  The address of the server.
+   * @param  port     The port of the server.
+   *
+   * @return  The position of the specified server, or -1 if it is not in this
+   *          server set.
+   */
+  private int getSlot(final String address, final int port)
+  {
+    for (int i=0; i < addresses.length; i++)
+    {
+      if (addresses[i].equals(address) && (ports[i] == port))
+      {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override()
+  public void toString(final StringBuilder buffer)
+  {
+    buffer.append("FastestResponseServerSet(servers={");
+
+    for (int i=0; i < addresses.length; i++)
+    {
+      if (i > 0)
+      {
+        buffer.append(", ");
+      }
+
+      buffer.append(addresses[i]);
+      buffer.append(':');
+      buffer.append(ports[i]);
+    }
+
+    buffer.append("}, smoothingFactor=");
+    buffer.append(smoothingFactor);
+    buffer.append(", outlierThreshold=");
+    buffer.append(outlierThreshold);
+    buffer.append(", ejectionDurationMillis=");
+    buffer.append(ejectionDurationMillis);
+    buffer.append(')');
+  }
+
+
+
+  /**
+   * This class holds information about a connection created by this server
+   * set, along with the operation counts and response times from its
+   * statistics as of the last time it was examined.
+   */
+  private static final class TrackedConnection
+  {
+    // The position of the server to which the connection was established.
+    private final int slot;
+
+    // A weak reference to the connection being tracked, so that it will not be
+    // kept in memory after it has been discarded.
+    private final WeakReference<LDAPConnection> connectionRef;
+
+    // The number of operations processed as of the last examination.
+    private long lastNumOperations;
+
+    // The total response time in nanoseconds as of the last examination.
+    private long lastTotalNanos;
+
+
+
+    /**
+     * Creates a new tracked connection.
+     *
+     * @param  connection  The connection to be tracked.
+     * @param  slot        The position of the server to which the connection
+     *                     was established.
+     */
+    private TrackedConnection(final LDAPConnection connection, final int slot)
+    {
+      this.slot = slot;
+
+      connectionRef = new WeakReference<LDAPConnection>(connection);
+
+      lastNumOperations = 0L;
+      lastTotalNanos    = 0L;
+    }
+
+
+
+    /**
+     * Adds the number of operations processed on the connection and their
+     * total response time since the last examination to the values for the
+     * associated server in the provided arrays.
+     *
+     * @param  numOperations  The array of operation counts to be updated.
+     * @param  totalNanos     The array of total response times to be updated.
+     *
+     * @return  {@code true} if the connection is still established and should
+     *          continue to be tracked, or {@code false} if it has been closed
+     *          or discarded.
+     */
+    private boolean sample(final long[] numOperations, final long[] totalNanos)
+    {
+      final LDAPConnection connection = connectionRef.get();
+      if (connection == null)
+      {
+        return false;
+      }
+
+      final LDAPConnectionStatistics s = connection.getConnectionStatistics();
+      final long n = s.getNumAddResponses() + s.getNumCompareResponses() +
+           s.getNumDeleteResponses() + s.getNumExtendedResponses() +
+           s.getNumModifyResponses() + s.getNumModifyDNResponses() +
+           s.getNumSearchDoneResponses();
+      final long t = s.getTotalAddResponseTimeNanos() +
+           s.getTotalCompareResponseTimeNanos() +
+           s.getTotalDeleteResponseTimeNanos() +
+           s.getTotalExtendedResponseTimeNanos() +
+           s.getTotalModifyResponseTimeNanos() +
+           s.getTotalModifyDNResponseTimeNanos() +
+           s.getTotalSearchResponseTimeNanos();
+
+      // The statistics may have been reset, in which case the values since the
+      // reset will be used.
+      if (n >= lastNumOperations)
+      {
+        numOperations[slot] += (n - lastNumOperations);
+        totalNanos[slot] += Math.max(0L, (t - lastTotalNanos));
+      }
+      else
+      {
+        numOperations[slot] += n;
+        totalNanos[slot] += t;
+      }
+
+      lastNumOperations = n;
+      lastTotalNanos    = t;
+
+      return connection.isConnected();
+    }
+  }
+
+
+
+  /**
+   * This class provides a health check that updates the response time
+   * information for a fastest response server set whenever a connection pool
+   * checks the validity of its connections in the background.  It never
+   * considers any connection to be invalid.
+   */
+  private static final class ResponseTimeHealthCheck
+          extends LDAPConnectionPoolHealthCheck
+  {
+    // The server set whose response times will be updated.
+    private final FastestResponseServerSet serverSet;
+
+
+
+    /**
+     * Creates a new response time health check for the provided server set.
+     *
+     * @param  serverSet  The server set whose response times will be updated.
+     */
+    private ResponseTimeHealthCheck(final FastestResponseServerSet serverSet)
+    {
+      this.serverSet = serverSet;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override()
+    public void ensureConnectionValidForContinuedUse(
+                     final LDAPConnection connection)
+    {
+      serverSet.updateResponseTimesForHealthCheck();
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override()
+    public void toString(final StringBuilder buffer)
+    {
+      buffer.append("FastestResponseServerSetHealthCheck(serverSet=");
+      serverSet.toString(buffer);
+      buffer.append(')');
+    }
+  }
+}
@@ -294,7 +294,43 @@ public final class InternalSDKHelper
          throws LDAPException
   {
     return SearchResultEntry.readSearchEntryFrom(messageID, messageSequence,
-                                                 reader, schema);
+                                                 reader, schema, false);
+  }
+
+
+
+  /**
+   * Creates a new search result entry object with the protocol op and controls
+   * read from the given ASN.1 stream reader, optionally deferring the decoding
+   * of attribute values until they are first accessed.
+   *
+   * @param  messageID        The LDAP message ID for the LDAP message that is
+   *                          associated with this search result entry.
+   * @param  messageSequence  The ASN.1 stream reader sequence used in the
+   *                          course of reading the LDAP message elements.
+   * @param  reader           The ASN.1 stream reader from which to read the
+   *                          protocol op and controls.
+   * @param  schema           The schema to use to select the appropriate
+   *                          matching rule to use for each attribute.  It may
+   *                          be {@code null} if the default matching rule
+   *                          should always be used.
+   * @param  lazyDecoding     Indicates whether to defer decoding the values of
+   *                          each attribute until they are first accessed.
+   *
+   * @return  The decoded search result entry object.
+   *
+   * @throws  LDAPException  If a problem occurs while reading or decoding data
+   *                         from the ASN.1 stream reader.
+   */
+  @InternalUseOnly()
+  public static SearchResultEntry readSearchResultEntryFrom(final int messageID,
+                     final ASN1StreamReaderSequence messageSequence,
+                     final ASN1StreamReader reader, final Schema schema,
+                     final boolean lazyDecoding)
+         throws LDAPException
+  {
+    return SearchResultEntry.readSearchEntryFrom(messageID, messageSequence,
+                                                 reader, schema, lazyDecoding);
   }
 
 
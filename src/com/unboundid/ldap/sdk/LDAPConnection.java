@@ -29,7 +29,6 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
@@ -306,9 +305,6 @@ public final class LDAPConnection
   // The address of the server to which a connection should be re-established.
   private String reconnectAddress;
 
-  // A timer that may be used to enforce timeouts for asynchronous operations.
-  private Timer timer;
-
 
 
   /**
@@ -415,7 +411,6 @@ public final class LDAPConnection
     connectionName       = null;
     connectionPoolName   = null;
     cachedSchema         = null;
-    timer                = null;
 
     referralConnector = this.connectionOptions.getReferralConnector();
     if (referralConnector == null)
@@ -4438,26 +4433,19 @@ public final class LDAPConnection
     }
 
     connectionStatistics.incrementNumDisconnects();
+
+    // Detach the connection internals before closing them.  Closing them will
+    // wake up any threads waiting on responses, and those threads must see
+    // this connection as closed.
     final LDAPConnectionInternals internals = connectionInternals;
     if (internals != null)
     {
-      internals.close();
       connectionInternals = null;
+      internals.close();
     }
 
     cachedSchema = null;
     lastCommunicationTime = -1L;
-
-    synchronized (this)
-    {
-      final Timer t = timer;
-      timer = null;
-
-      if (t != null)
-      {
-        t.cancel();
-      }
-    }
   }
 
 
@@ -4512,23 +4500,6 @@ public final class LDAPConnection
 
 
 
-  /**
-   * Retrieves a timer for use with this connection, creating one if necessary.
-   *
-   * @return  A timer for use with this connection.
-   */
-  synchronized Timer getTimer()
-  {
-    if (timer == null)
-    {
-      timer = new Timer("Timer thread for " + toString(), true);
-    }
-
-    return timer;
-  }
-
-
-
   /**
    * {@inheritDoc}
    */
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.sdk;
+
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+import static com.unboundid.util.Debug.*;
+
+
+
+/**
+ * This class provides an output stream that can be used to write data to a
+ * non-blocking socket channel.  If the channel is not able to accept all of the
+ * data immediately, then the write will block until it can.  A temporary
+ * selector is used to wait for the channel to become writable so that the
+ * channel does not remain registered with any selector other than the one used
+ * by the shared reader thread.  The caller is responsible for ensuring that
+ * only one thread writes at any given time.
+ */
+@ThreadSafety(level=ThreadSafetyLevel.NOT_THREADSAFE)
+final class LDAPConnectionChannelOutputStream
+      extends OutputStream
+{
+  /**
+   * The maximum length of time in milliseconds to wait for the channel to
+   * become writable before checking again.
+   */
+  private static final long WRITE_WAIT_INTERVAL_MILLIS = 1000L;
+
+
+
+  // The channel to which data will be written.
+  private final SocketChannel channel;
+
+
+
+  /**
+   * Creates a new output stream that will write to the provided channel.
+   *
+   * @param  channel  The channel to which data will be written.  It must have
+   *                  been configured in non-blocking mode.
+   */
+  LDAPConnectionChannelOutputStream(final SocketChannel channel)
+  {
+    this.channel = channel;
+  }
+
+
+
+  /**
+   * Writes the provided byte to the channel.
+   *
+   * @param  b  The byte to be written.
+   *
+   * @throws  IOException  If a problem occurs while writing to the channel.
+   */
+  @Override()
+  public void write(final int b)
+         throws IOException
+  {
+    write(new byte[] { (byte) (b & 0xFF) }, 0, 1);
+  }
+
+
+
+  /**
+   * Writes the specified portion of the provided array to the channel.
+   *
+   * @param  b    The array containing the data to be written.
+   * @param  off  The offset of the first byte to write.
+   * @param  len  The number of bytes to write.
+   *
+   * @throws  IOException  If a problem occurs while writing to the channel.
+   */
+  @Override()
+  public void write(final byte[] b, final int off, final int len)
+         throws IOException
+  {
+    final ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+    while (buffer.hasRemaining())
+    {
+      if (channel.write(buffer) == 0)
+      {
+        awaitWritable();
+      }
+    }
+  }
+
+
+
+  /**
+   * Waits for the channel to become writable.
+   *
+   * @throws  IOException  If a problem occurs while waiting.
+   */
+  private void awaitWritable()
+          throws IOException
+  {
+    final Selector writeSelector = Selector.open();
+    try
+    {
+      channel.register(writeSelector, SelectionKey.OP_WRITE);
+      writeSelector.select(WRITE_WAIT_INTERVAL_MILLIS);
+    }
+    finally
+    {
+      try
+      {
+        writeSelector.close();
+      }
+      catch (final Exception e)
+      {
+        debugException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,371 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.sdk;
+
+
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+
+import com.unboundid.asn1.ASN1StreamReader;
+import com.unboundid.ldap.protocol.LDAPMessage;
+import com.unboundid.ldap.protocol.LDAPResponse;
+import com.unboundid.ldap.sdk.schema.Schema;
+import com.unboundid.util.ByteArrayPool;
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+import static com.unboundid.ldap.sdk.LDAPMessages.*;
+
+
+
+/**
+ * This class provides a mechanism for reading LDAP responses from a
+ * non-blocking socket channel.  Data is accumulated in a buffer until at least
+ * one complete message is available, and complete messages are then decoded
+ * and returned to the caller.  Partial messages will be retained until the
+ * remainder of the data is available.
+ */
+@ThreadSafety(level=ThreadSafetyLevel.NOT_THREADSAFE)
+final class LDAPConnectionChannelReader
+{
+  /**
+   * The initial size to use for the read buffer.
+   */
+  private static final int INITIAL_BUFFER_SIZE = 4096;
+
+
+
+  // The buffer used to hold data read from the server.  When not actively
+  // reading, it will be positioned at the end of the data read so far.
+  private ByteBuffer buffer;
+
+  // The buffer with the initial size, which will be used whenever there is no
+  // need for a larger buffer.
+  private final ByteBuffer initialBuffer;
+
+  // The pool from which larger buffers should be obtained, if any.
+  private final ByteArrayPool bufferPool;
+
+  // Indicates whether to defer decoding attribute values in search result
+  // entries until they are first accessed.
+  private final boolean useLazySearchEntryDecoding;
+
+  // Indicates whether to use zero-copy decoding for responses.
+  private final boolean useZeroCopyDecoding;
+
+  // The maximum size in bytes of a message that will be accepted.
+  private final int maxMessageSize;
+
+  // The channel from which data will be read.
+  private final SocketChannel channel;
+
+  // The host and port of the server, for use in error messages.
+  private final String hostPort;
+
+
+
+  /**
+   * Creates a new channel reader for the provided socket channel.
+   *
+   * @param  channel                     The socket channel from which to
+   *                                     read data.  It must have been
+   *                                     configured in non-blocking mode.
+   * @param  maxMessageSize              The maximum size in bytes of a
+   *                                     message that will be accepted, or a
+   *                                     value less than or equal to zero if
+   *                                     there should be no limit.
+   * @param  useZeroCopyDecoding         Indicates whether to use zero-copy
+   *                                     decoding for responses.
+   * @param  useLazySearchEntryDecoding  Indicates whether to defer decoding
+   *                                     attribute values in search result
+   *                                     entries until they are first
+   *                                     accessed.
+   * @param  bufferPool                  The pool from which buffers larger
+   *                                     than the initial size should be
+   *                                     obtained.  It may be {@code null} if
+   *                                     such buffers should be allocated.
+   * @param  hostPort                    The host and port of the server, for
+   *                                     use in error messages.
+   */
+  LDAPConnectionChannelReader(final SocketChannel channel,
+                              final int maxMessageSize,
+                              final boolean useZeroCopyDecoding,
+                              final boolean useLazySearchEntryDecoding,
+                              final ByteArrayPool bufferPool,
+                              final String hostPort)
+  {
+    this.channel                    = channel;
+    this.maxMessageSize             = maxMessageSize;
+    this.useZeroCopyDecoding        = useZeroCopyDecoding;
+    this.useLazySearchEntryDecoding = useLazySearchEntryDecoding;
+    this.bufferPool                 = bufferPool;
+    this.hostPort                   = hostPort;
+
+    initialBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    buffer        = initialBuffer;
+  }
+
+
+
+  /**
+   * Reads the data that is currently available from the channel and decodes
+   * any complete responses that it contains.  At most one read will be
+   * performed so that a single busy connection cannot monopolize the shared
+   * reader thread.
+   *
+   * @param  responses  The list to which any decoded responses will be added.
+   * @param  schema     The schema to use when decoding search result entries,
+   *                    if available.
+   *
+   * @return  {@code true} if the channel is still open, or {@code false} if the
+   *          end of the input stream has been reached.
+   *
+   * @throws  IOException  If a problem occurs while reading from the channel.
+   *
+   * @throws  LDAPException  If a problem occurs while decoding a response.
+   */
+  boolean readResponses(final List<LDAPResponse> responses,
+                        final Schema schema)
+          throws IOException, LDAPException
+  {
+    if (! buffer.hasRemaining())
+    {
+      buffer.flip();
+      growBuffer(buffer.capacity() * 2);
+    }
+
+    final int bytesRead = channel.read(buffer);
+    if (bytesRead < 0)
+    {
+      return false;
+    }
+
+    decodeResponses(responses, schema);
+    return true;
+  }
+
+
+
+  /**
+   * Retrieves any data that has been read from the channel but not yet decoded
+   * because it does not yet comprise a complete message, and clears the
+   * buffer.
+   *
+   * @return  The data that has been read but not yet decoded.  It may be empty
+   *          but will not be {@code null}.
+   */
+  byte[] removeBufferedData()
+  {
+    final byte[] data = new byte[buffer.position()];
+    buffer.flip();
+    buffer.get(data);
+    buffer.clear();
+    releaseBuffer();
+    return data;
+  }
+
+
+
+  /**
+   * Decodes all complete messages contained in the buffer and removes them
+   * from the buffer.
+   *
+   * @param  responses  The list to which any decoded responses will be added.
+   * @param  schema     The schema to use when decoding search result entries,
+   *                    if available.
+   *
+   * @throws  LDAPException  If a problem occurs while decoding a response.
+   */
+  private void decodeResponses(final List<LDAPResponse> responses,
+                               final Schema schema)
+          throws LDAPException
+  {
+    final byte[] array = buffer.array();
+    final int end = buffer.position();
+    int pos = 0;
+
+    while (pos < end)
+    {
+      final int messageLength = getMessageLength(array, pos, end);
+      if (messageLength < 0)
+      {
+        break;
+      }
+
+      if (messageLength > (end - pos))
+      {
+        if (messageLength > buffer.capacity())
+        {
+          // Make sure the entire message will fit in the buffer once the data
+          // that precedes it has been discarded.
+          buffer.limit(end);
+          buffer.position(pos);
+          growBuffer(messageLength);
+          return;
+        }
+
+        break;
+      }
+
+      // The buffer will be reused for subsequent data, so with zero-copy
+      // decoding, the reader will copy the message into its own buffer.
+      final ASN1StreamReader reader = new ASN1StreamReader(
+           new ByteArrayInputStream(array, pos, messageLength));
+      reader.setUseZeroCopyDecoding(useZeroCopyDecoding);
+      reader.setBufferPool(bufferPool);
+
+      final LDAPResponse response = LDAPMessage.readLDAPResponseFrom(reader,
+           false, schema, useLazySearchEntryDecoding);
+      if (response != null)
+      {
+        responses.add(response);
+      }
+
+      pos += messageLength;
+    }
+
+    if (pos > 0)
+    {
+      buffer.limit(end);
+      buffer.position(pos);
+      buffer.compact();
+
+      if (buffer.position() == 0)
+      {
+        releaseBuffer();
+      }
+    }
+  }
+
+
+
+  /**
+   * Determines the total length in bytes of the message that starts at the
+   * specified position in the provided array, including the BER type and
+   * length.
+   *
+   * @param  array  The array containing the data read so far.
+   * @param  start  The position at which the message starts.
+   * @param  end    The position immediately after the last byte read.
+   *
+   * @return  The total length of the message, or -1 if not enough data is
+   *          available to make the determination.
+   *
+   * @throws  LDAPException  If the message length is not valid.
+   */
+  private int getMessageLength(final byte[] array, final int start,
+                               final int end)
+          throws LDAPException
+  {
+    if ((end - start) < 2)
+    {
+      return -1;
+    }
+
+    final int firstLengthByte = array[start+1] & 0xFF;
+    if ((firstLengthByte & 0x80) == 0x00)
+    {
+      return 2 + firstLengthByte;
+    }
+
+    final int numLengthBytes = firstLengthByte & 0x7F;
+    if ((numLengthBytes < 1) || (numLengthBytes > 4))
+    {
+      throw new LDAPException(ResultCode.DECODING_ERROR,
+           ERR_CHANNEL_READER_INVALID_LENGTH.get(hostPort, numLengthBytes));
+    }
+
+    if ((end - start) < (2 + numLengthBytes))
+    {
+      return -1;
+    }
+
+    long valueLength = 0L;
+    for (int i=0; i < numLengthBytes; i++)
+    {
+      valueLength = (valueLength << 8) | (array[start+2+i] & 0xFFL);
+    }
+
+    if (((maxMessageSize > 0) && (valueLength > maxMessageSize)) ||
+        ((2L + numLengthBytes + valueLength) > Integer.MAX_VALUE))
+    {
+      throw new LDAPException(ResultCode.DECODING_ERROR,
+           ERR_CHANNEL_READER_MESSAGE_TOO_LARGE.get(hostPort, valueLength,
+                maxMessageSize));
+    }
+
+    return (int) (2L + numLengthBytes + valueLength);
+  }
+
+
+
+  /**
+   * Replaces the current buffer with a larger one containing the unread data.
+   * The current buffer must have been positioned so that the data to retain
+   * is between its position and its limit.
+   *
+   * @param  newCapacity  The minimum capacity to use for the new buffer.
+   */
+  private void growBuffer(final int newCapacity)
+  {
+    final ByteBuffer newBuffer;
+    if (bufferPool == null)
+    {
+      newBuffer = ByteBuffer.allocate(newCapacity);
+    }
+    else
+    {
+      newBuffer = ByteBuffer.wrap(bufferPool.acquire(newCapacity));
+    }
+
+    newBuffer.put(buffer);
+
+    releaseBuffer();
+    buffer = newBuffer;
+  }
+
+
+
+  /**
+   * Returns the current buffer to the pool if it was obtained from the pool,
+   * and reverts to using the initial buffer.  Any data in the initial buffer
+   * will be discarded, so this must only be called when the current buffer
+   * does not contain any data that needs to be retained.
+   */
+  private void releaseBuffer()
+  {
+    if (buffer != initialBuffer)
+    {
+      if (bufferPool != null)
+      {
+        bufferPool.release(buffer.array());
+      }
+
+      buffer = initialBuffer;
+    }
+
+    initialBuffer.clear();
+  }
+}
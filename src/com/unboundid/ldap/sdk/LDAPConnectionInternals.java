@@ -38,8 +38,10 @@ import javax.security.sasl.SaslClient;
 
 import com.unboundid.asn1.ASN1Buffer;
 import com.unboundid.ldap.protocol.LDAPMessage;
+import com.unboundid.util.ByteArrayPool;
 import com.unboundid.util.DebugType;
 import com.unboundid.util.InternalUseOnly;
+import com.unboundid.util.SynchronizedSocketFactory;
 
 import static com.unboundid.ldap.sdk.LDAPMessages.*;
 import static com.unboundid.util.Debug.*;
@@ -74,9 +76,30 @@ final class LDAPConnectionInternals
   // sending requests to the server.
   private final AtomicInteger nextMessageID;
 
+  // The number of threads that are currently attempting to write a message
+  // when write batching is enabled.
+  private final AtomicInteger numPendingWriters;
+
   // Indicates whether to operate in synchronous mode.
   private final boolean synchronousMode;
 
+  // Indicates whether responses should be read by a shared reader thread
+  // rather than a dedicated reader thread.
+  private final boolean useSharedReader;
+
+  // Indicates whether to combine messages written concurrently by multiple
+  // threads into batches that are flushed together.
+  private final boolean useWriteBatching;
+
+  // The pool from which buffers used to encode requests should be obtained, if
+  // any.
+  private final ByteArrayPool bufferPool;
+
+  // The number of messages that have been written but not yet flushed when
+  // write batching is enabled.  It must only be accessed while holding the
+  // write lock.
+  private int numUnflushedMessages;
+
   // The inet address to which the connection is established.
   private final InetAddress inetAddress;
 
@@ -93,6 +116,9 @@ final class LDAPConnectionInternals
   // associated.
   private final LDAPConnectionReader connectionReader;
 
+  // The lock used to serialize writes when write batching is enabled.
+  private final Object writeLock;
+
   // The output stream used to send requests to the server.
   private volatile OutputStream outputStream;
 
@@ -153,10 +179,22 @@ final class LDAPConnectionInternals
     synchronousMode = options.useSynchronousMode();
     saslClient      = null;
 
+    bufferPool           = options.getBufferPool();
+    useWriteBatching     = options.useWriteBatching();
+    numPendingWriters    = new AtomicInteger(0);
+    numUnflushedMessages = 0;
+    writeLock            = new Object();
+
+    @SuppressWarnings("deprecation")
+    final boolean autoReconnect = options.autoReconnect();
+    useSharedReader = options.useSharedReaderThreads() &&
+         (! synchronousMode) && (! autoReconnect) &&
+         isDefaultSocketFactory(socketFactory);
+
     try
     {
-      final ConnectThread connectThread =
-           new ConnectThread(socketFactory, inetAddress, port, timeout);
+      final ConnectThread connectThread = new ConnectThread(socketFactory,
+           inetAddress, port, timeout, useSharedReader);
       connectThread.start();
       socket = connectThread.getConnectedSocket();
 
@@ -191,7 +229,15 @@ final class LDAPConnectionInternals
                          options.getLingerTimeoutSeconds());
       socket.setTcpNoDelay(options.useTCPNoDelay());
 
-      outputStream     = new BufferedOutputStream(socket.getOutputStream());
+      if (useSharedReader)
+      {
+        outputStream = new BufferedOutputStream(
+             new LDAPConnectionChannelOutputStream(socket.getChannel()));
+      }
+      else
+      {
+        outputStream = new BufferedOutputStream(socket.getOutputStream());
+      }
       connectionReader = new LDAPConnectionReader(connection, this);
     }
     catch (final IOException ioe)
@@ -214,13 +260,67 @@ final class LDAPConnectionInternals
 
 
 
+  /**
+   * Indicates whether the provided socket factory is the JVM-default socket
+   * factory (optionally wrapped by a {@code SynchronizedSocketFactory}), and
+   * can therefore be replaced by creating a socket from a socket channel.
+   *
+   * @param  socketFactory  The socket factory to examine.
+   *
+   * @return  {@code true} if the provided socket factory is the JVM-default
+   *          socket factory, or {@code false} if not.
+   */
+  private static boolean isDefaultSocketFactory(
+                              final SocketFactory socketFactory)
+  {
+    SocketFactory f = socketFactory;
+    if (f instanceof SynchronizedSocketFactory)
+    {
+      f = ((SynchronizedSocketFactory) f).getWrappedSocketFactory();
+    }
+
+    return ((f != null) &&
+         (f.getClass() == SocketFactory.getDefault().getClass()));
+  }
+
+
+
   /**
    * Starts the connection reader for this connection internals.  This will
-   * have no effect if the connection is operating in synchronous mode.
+   * have no effect if the connection is operating in synchronous mode.  If the
+   * connection is configured to use a shared reader thread, then the socket
+   * will be registered with one of the shared reader threads rather than
+   * starting a dedicated reader thread.
+   *
+   * @throws  IOException  If a problem occurs while registering the socket with
+   *                       a shared reader thread.
    */
   void startConnectionReader()
+       throws IOException
   {
-    if (! synchronousMode)
+    if (useSharedReader)
+    {
+      try
+      {
+        connectionReader.startSharedReader(
+             LDAPConnectionSelectorThread.getSelectorThread());
+      }
+      catch (final IOException ioe)
+      {
+        debugException(ioe);
+        try
+        {
+          socket.close();
+        }
+        catch (final Exception e)
+        {
+          debugException(e);
+        }
+
+        throw ioe;
+      }
+    }
+    else if (! synchronousMode)
     {
       connectionReader.start();
     }
@@ -228,6 +328,20 @@ final class LDAPConnectionInternals
 
 
 
+  /**
+   * Indicates whether this connection was configured to read responses using a
+   * shared reader thread rather than a dedicated reader thread.
+   *
+   * @return  {@code true} if this connection was configured to use a shared
+   *          reader thread, or {@code false} if not.
+   */
+  boolean useSharedReader()
+  {
+    return useSharedReader;
+  }
+
+
+
   /**
    * Retrieves the LDAP connection with which this connection internals object
    * is associated.
@@ -499,48 +613,48 @@ final class LDAPConnectionInternals
                               ERR_CONN_NOT_ESTABLISHED.get());
     }
 
-    ASN1Buffer buffer = ASN1_BUFFERS.get().get();
-    if (buffer == null)
+    // If a buffer pool is configured, then encode the message into a buffer
+    // that is only held for the duration of the send.  Otherwise, use the
+    // buffer associated with the current thread.
+    ASN1Buffer buffer;
+    if (bufferPool == null)
     {
-      buffer = new ASN1Buffer();
-      ASN1_BUFFERS.get().set(buffer);
-    }
+      buffer = ASN1_BUFFERS.get().get();
+      if (buffer == null)
+      {
+        buffer = new ASN1Buffer();
+        ASN1_BUFFERS.get().set(buffer);
+      }
 
-    buffer.clear();
-    try
-    {
-      message.writeTo(buffer);
+      buffer.clear();
     }
-    catch (final LDAPRuntimeException lre)
+    else
     {
-      debugException(lre);
-      lre.throwLDAPException();
+      buffer = new ASN1Buffer(0, bufferPool);
     }
 
+    // The message must be encoded within the same try block whose finally
+    // clause releases the buffer, so that a pooled buffer is not leaked if the
+    // encoding fails.
     try
     {
-      final OutputStream os = outputStream;
-      if (saslClient == null)
+      message.writeTo(buffer);
+
+      if (useWriteBatching)
       {
-        buffer.writeTo(os);
+        writeBatched(buffer);
       }
       else
       {
-        // We need to wrap the data that was read using the SASL client, but we
-        // also need to precede that wrapped data with four bytes that specify
-        // the number of bytes of wrapped data.
-        final byte[] clearBytes = buffer.toByteArray();
-        final byte[] saslBytes =
-             saslClient.wrap(clearBytes, 0, clearBytes.length);
-        final byte[] lengthBytes = new byte[4];
-        lengthBytes[0] = (byte) ((saslBytes.length >> 24) & 0xFF);
-        lengthBytes[1] = (byte) ((saslBytes.length >> 16) & 0xFF);
-        lengthBytes[2] = (byte) ((saslBytes.length >> 8) & 0xFF);
-        lengthBytes[3] = (byte) (saslBytes.length & 0xFF);
-        os.write(lengthBytes);
-        os.write(saslBytes);
+        final OutputStream os = outputStream;
+        writeMessage(buffer, os);
+        os.flush();
       }
-      os.flush();
+    }
+    catch (final LDAPRuntimeException lre)
+    {
+      debugException(lre);
+      lre.throwLDAPException();
     }
     catch (final IOException ioe)
     {
@@ -584,7 +698,11 @@ final class LDAPConnectionInternals
     }
     finally
     {
-      if (buffer.zeroBufferOnClear())
+      if (bufferPool != null)
+      {
+        buffer.release();
+      }
+      else if (buffer.zeroBufferOnClear())
       {
         buffer.clear();
       }
@@ -593,6 +711,132 @@ final class LDAPConnectionInternals
 
 
 
+  /**
+   * Writes the encoded message contained in the provided buffer to the given
+   * output stream, wrapping it with the SASL client if appropriate.  The
+   * output stream will not be flushed.
+   *
+   * @param  buffer  The buffer containing the encoded message to write.
+   * @param  os      The output stream to which the message should be written.
+   *
+   * @throws  IOException  If a problem occurs while writing the message.
+   */
+  private void writeMessage(final ASN1Buffer buffer, final OutputStream os)
+          throws IOException
+  {
+    if (saslClient == null)
+    {
+      buffer.writeTo(os);
+    }
+    else
+    {
+      // We need to wrap the data that was read using the SASL client, but we
+      // also need to precede that wrapped data with four bytes that specify
+      // the number of bytes of wrapped data.
+      final byte[] clearBytes = buffer.toByteArray();
+      final byte[] saslBytes =
+           saslClient.wrap(clearBytes, 0, clearBytes.length);
+      final byte[] lengthBytes = new byte[4];
+      lengthBytes[0] = (byte) ((saslBytes.length >> 24) & 0xFF);
+      lengthBytes[1] = (byte) ((saslBytes.length >> 16) & 0xFF);
+      lengthBytes[2] = (byte) ((saslBytes.length >> 8) & 0xFF);
+      lengthBytes[3] = (byte) (saslBytes.length & 0xFF);
+      os.write(lengthBytes);
+      os.write(saslBytes);
+    }
+  }
+
+
+
+  /**
+   * Writes the encoded message contained in the provided buffer as part of a
+   * write batch.  The message will be written to the output stream, but the
+   * output stream will only be flushed if no other thread is waiting to write
+   * a message, in which case all messages written since the last flush will be
+   * sent together.  If another thread is waiting, then it is guaranteed to
+   * acquire the write lock after this thread and will flush this message along
+   * with its own.  The output stream itself will also flush any time its
+   * buffer fills up, which bounds the amount of data held in a batch.
+   *
+   * @param  buffer  The buffer containing the encoded message to write.
+   *
+   * @throws  IOException  If a problem occurs while writing the message or
+   *                       flushing the batch.
+   */
+  private void writeBatched(final ASN1Buffer buffer)
+          throws IOException
+  {
+    // The pending writer count must be incremented before trying to acquire
+    // the lock so that the thread holding the lock will know to leave the
+    // flush to this thread.
+    numPendingWriters.incrementAndGet();
+    synchronized (writeLock)
+    {
+      try
+      {
+        writeMessage(buffer, outputStream);
+        numUnflushedMessages++;
+      }
+      finally
+      {
+        if (numPendingWriters.decrementAndGet() == 0)
+        {
+          flushBatch();
+        }
+      }
+    }
+  }
+
+
+
+  /**
+   * Flushes any messages that have been written as part of the current write
+   * batch and updates the connection statistics.  This must only be called
+   * while holding the write lock.
+   *
+   * @throws  IOException  If a problem occurs while flushing the batch.
+   */
+  private void flushBatch()
+          throws IOException
+  {
+    final int batchSize = numUnflushedMessages;
+    if (batchSize == 0)
+    {
+      return;
+    }
+
+    numUnflushedMessages = 0;
+    try
+    {
+      outputStream.flush();
+    }
+    catch (final IOException ioe)
+    {
+      debugException(ioe);
+
+      // The threads that wrote the other messages in this batch have already
+      // returned, so close the socket to ensure that the connection reader
+      // will notice the failure and notify them that no response is coming.
+      if (batchSize > 1)
+      {
+        try
+        {
+          socket.close();
+        }
+        catch (final Exception e)
+        {
+          debugException(e);
+        }
+      }
+
+      throw ioe;
+    }
+
+    connection.getConnectionStatistics().incrementNumWriteBatches(batchSize);
+  }
+
+
+
   /**
    * Closes the connection associated with this connection internals.
    */
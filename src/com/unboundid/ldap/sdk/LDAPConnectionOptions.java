@@ -22,6 +22,7 @@ package com.unboundid.ldap.sdk;
 
 
 
+import com.unboundid.util.ByteArrayPool;
 import com.unboundid.util.Mutable;
 import com.unboundid.util.StaticUtils;
 import com.unboundid.util.ThreadSafety;
@@ -72,6 +73,10 @@ import static com.unboundid.util.Validator.*;
  *       connections may exhibit better performance and will not require a
  *       separate reader thread, but will not allow multiple concurrent
  *       operations to be used on the same connection.</LI>
+ *   <LI>A flag that indicates whether to read responses using a small set of
+ *       reader threads shared by all connections in the JVM rather than a
+ *       separate reader thread for each connection.  By default, each
+ *       connection will use its own reader thread.</LI>
  *   <LI>A flag that indicates whether to use the TCP_NODELAY socket option to
  *       indicate that any data written to the socket will be sent immediately
  *       rather than delaying for a short amount of time to see if any more data
@@ -141,6 +146,18 @@ import static com.unboundid.util.Validator.*;
 @ThreadSafety(level=ThreadSafetyLevel.NOT_THREADSAFE)
 public final class LDAPConnectionOptions
 {
+  /**
+   * The name of a system property that may be used to specify the number of
+   * shared reader threads that should be created for connections configured to
+   * use them.  If this property is not set, or if its value is not a positive
+   * integer, then the number of threads will be based on the number of CPUs
+   * available to the JVM.
+   */
+  public static final String PROPERTY_SHARED_READER_THREAD_COUNT =
+       LDAPConnectionOptions.class.getName() + ".sharedReaderThreadCount";
+
+
+
   /**
    * The default value ({@code false}) for the setting that controls whether to
    * attempt to abandon any request for which no response is received within the
@@ -232,6 +249,16 @@ public final class LDAPConnectionOptions
 
 
 
+  /**
+   * The default value ({@code false}) for the setting that controls whether
+   * associated connections should read responses using a set of reader threads
+   * shared across all connections in the JVM rather than a separate reader
+   * thread for each connection.
+   */
+  static final boolean DEFAULT_USE_SHARED_READER_THREADS = false;
+
+
+
   /**
    * The default value ({@code true}) for the setting that controls whether to
    * use the {@code TCP_NODELAY} socket option.
@@ -240,6 +267,32 @@ public final class LDAPConnectionOptions
 
 
 
+  /**
+   * The default value ({@code false}) for the setting that controls whether
+   * associated connections should combine requests sent concurrently by
+   * multiple threads into batches that are written to the server together.
+   */
+  static final boolean DEFAULT_USE_WRITE_BATCHING = false;
+
+
+
+  /**
+   * The default value ({@code false}) for the setting that controls whether
+   * associated connections should use zero-copy decoding for responses.
+   */
+  static final boolean DEFAULT_USE_ZERO_COPY_DECODING = false;
+
+
+
+  /**
+   * The default value ({@code false}) for the setting that controls whether
+   * associated connections should defer decoding the attribute values in
+   * search result entries until they are first accessed.
+   */
+  static final boolean DEFAULT_USE_LAZY_SEARCH_ENTRY_DECODING = false;
+
+
+
   /**
    * The default value (60000) for the setting that controls the timeout in
    * milliseconds when trying to establish a new connection.
@@ -373,9 +426,28 @@ public final class LDAPConnectionOptions
   // may be in progress on associated connections at any given time.
   private boolean useSynchronousMode;
 
+  // Indicates whether to read responses using reader threads that are shared
+  // across all connections rather than a dedicated thread per connection.
+  private boolean useSharedReaderThreads;
+
   // Indicates whether to use TCP_NODELAY for the underlying sockets.
   private boolean useTCPNoDelay;
 
+  // Indicates whether to combine requests sent concurrently by multiple threads
+  // into batches that are written to the server together.
+  private boolean useWriteBatching;
+
+  // Indicates whether to use zero-copy decoding for responses.
+  private boolean useZeroCopyDecoding;
+
+  // Indicates whether to defer decoding the attribute values in search result
+  // entries until they are first accessed.
+  private boolean useLazySearchEntryDecoding;
+
+  // The pool from which associated connections should obtain the buffers used
+  // to encode requests and decode responses, if any.
+  private ByteArrayPool bufferPool;
+
   // The disconnect handler for associated connections.
   private DisconnectHandler disconnectHandler;
 
@@ -433,7 +505,11 @@ public final class LDAPConnectionOptions
     usePooledSchema                = DEFAULT_USE_POOLED_SCHEMA;
     useSchema                      = DEFAULT_USE_SCHEMA;
     useSynchronousMode             = DEFAULT_USE_SYNCHRONOUS_MODE;
+    useSharedReaderThreads         = DEFAULT_USE_SHARED_READER_THREADS;
     useTCPNoDelay                  = DEFAULT_USE_TCP_NODELAY;
+    useWriteBatching               = DEFAULT_USE_WRITE_BATCHING;
+    useZeroCopyDecoding            = DEFAULT_USE_ZERO_COPY_DECODING;
+    useLazySearchEntryDecoding     = DEFAULT_USE_LAZY_SEARCH_ENTRY_DECODING;
     connectTimeout                 = DEFAULT_CONNECT_TIMEOUT_MILLIS;
     lingerTimeout                  = DEFAULT_LINGER_TIMEOUT_SECONDS;
     maxMessageSize                 = DEFAULT_MAX_MESSAGE_SIZE;
@@ -442,6 +518,7 @@ public final class LDAPConnectionOptions
     responseTimeout                = DEFAULT_RESPONSE_TIMEOUT_MILLIS;
     receiveBufferSize              = DEFAULT_RECEIVE_BUFFER_SIZE;
     sendBufferSize                 = DEFAULT_SEND_BUFFER_SIZE;
+    bufferPool                     = null;
     disconnectHandler              = null;
     referralConnector              = null;
     sslSocketVerifier              = DEFAULT_SSL_SOCKET_VERIFIER;
@@ -476,7 +553,11 @@ public final class LDAPConnectionOptions
     o.usePooledSchema                 = usePooledSchema;
     o.useSchema                       = useSchema;
     o.useSynchronousMode              = useSynchronousMode;
+    o.useSharedReaderThreads          = useSharedReaderThreads;
     o.useTCPNoDelay                   = useTCPNoDelay;
+    o.useWriteBatching                = useWriteBatching;
+    o.useZeroCopyDecoding             = useZeroCopyDecoding;
+    o.useLazySearchEntryDecoding      = useLazySearchEntryDecoding;
     o.connectTimeout                  = connectTimeout;
     o.lingerTimeout                   = lingerTimeout;
     o.maxMessageSize                  = maxMessageSize;
@@ -484,6 +565,7 @@ public final class LDAPConnectionOptions
     o.responseTimeout                 = responseTimeout;
     o.referralConnector               = referralConnector;
     o.referralHopLimit                = referralHopLimit;
+    o.bufferPool                      = bufferPool;
     o.disconnectHandler               = disconnectHandler;
     o.unsolicitedNotificationHandler  = unsolicitedNotificationHandler;
     o.receiveBufferSize               = receiveBufferSize;
@@ -1016,6 +1098,70 @@ public final class LDAPConnectionOptions
 
 
 
+  /**
+   * Indicates whether associated connections should read responses using a
+   * small set of reader threads that are shared by all such connections in the
+   * JVM, rather than a separate reader thread for each connection.  This can
+   * dramatically reduce the number of threads required by applications that
+   * maintain a large number of connections (e.g., in connection pools), since
+   * each shared reader thread uses a selector to wait for data on any number of
+   * connections.
+   * <BR><BR>
+   * Shared reader threads can only be used for connections created with the
+   * JVM-default socket factory, and they will not be used for connections that
+   * operate in synchronous mode or that are configured to automatically
+   * reconnect.  If a connection that uses a shared reader thread is later
+   * secured with StartTLS or a SASL mechanism that provides integrity or
+   * confidentiality protection, then it will switch to using its own reader
+   * thread at that time.  Responses for connections using shared reader
+   * threads will be delivered on a shared thread, so any
+   * {@link AsyncResultListener}, {@link AsyncSearchResultListener}, or
+   * {@link IntermediateResponseListener} used with those connections should
+   * not block.
+   * <BR><BR>
+   * The number of shared reader threads defaults to the number of CPUs
+   * available to the JVM (with a minimum of two and a maximum of eight), but
+   * may be overridden using the {@link #PROPERTY_SHARED_READER_THREAD_COUNT}
+   * system property.  It is fixed once the first connection that uses a shared
+   * reader thread is established.
+   * <BR><BR>
+   * Note that this option must be set on the connection before any attempt is
+   * made to establish the connection.  It will have no effect on connections
+   * that have already been established.
+   *
+   * @return  {@code true} if associated connections should read responses using
+   *          shared reader threads, or {@code false} if each connection should
+   *          use its own reader thread.
+   */
+  public boolean useSharedReaderThreads()
+  {
+    return useSharedReaderThreads;
+  }
+
+
+
+  /**
+   * Specifies whether associated connections should read responses using a
+   * small set of reader threads that are shared by all such connections in the
+   * JVM, rather than a separate reader thread for each connection.  See the
+   * {@link #useSharedReaderThreads()} method for details about the
+   * circumstances in which shared reader threads may be used.
+   * <BR><BR>
+   * Note that this option must be set on the connection before any attempt is
+   * made to establish the connection.  It will have no effect on connections
+   * that have already been established.
+   *
+   * @param  useSharedReaderThreads  Indicates whether associated connections
+   *                                 should read responses using shared reader
+   *                                 threads.
+   */
+  public void setUseSharedReaderThreads(final boolean useSharedReaderThreads)
+  {
+    this.useSharedReaderThreads = useSharedReaderThreads;
+  }
+
+
+
   /**
    * Indicates whether to use the TCP_NODELAY option for the underlying sockets
    * used by associated connections.
@@ -1046,6 +1192,204 @@ public final class LDAPConnectionOptions
 
 
 
+  /**
+   * Indicates whether associated connections should combine requests that are
+   * sent concurrently by multiple threads into batches that are written to the
+   * server together.  This can reduce the number of system calls and network
+   * packets needed for applications that send a large number of requests on
+   * the same connection without waiting for the responses (for example, using
+   * asynchronous operations), at the cost of some additional coordination
+   * between the threads sending those requests.
+   * <BR><BR>
+   * When write batching is enabled, a thread sending a request will not flush
+   * the data to the server if another thread is already waiting to send a
+   * request on the same connection, but will instead leave it to that thread
+   * to flush both requests together.  The last thread in a burst of requests
+   * will always flush, so requests will not be held back waiting for more to
+   * arrive.  A batch will also be flushed whenever the amount of buffered data
+   * exceeds the size of the connection's output buffer.  Statistics about the
+   * batches that have been written may be obtained from the
+   * {@link LDAPConnectionStatistics} object for the connection.
+   * <BR><BR>
+   * Note that this option must be set on the connection before any attempt is
+   * made to establish the connection.  It will have no effect on connections
+   * that have already been established.
+   *
+   * @return  {@code true} if associated connections should use write batching,
+   *          or {@code false} if each request should be flushed to the server
+   *          as soon as it has been written.
+   */
+  public boolean useWriteBatching()
+  {
+    return useWriteBatching;
+  }
+
+
+
+  /**
+   * Specifies whether associated connections should combine requests that are
+   * sent concurrently by multiple threads into batches that are written to the
+   * server together.  See the {@link #useWriteBatching()} method for details
+   * about write batching.
+   * <BR><BR>
+   * Note that this option must be set on the connection before any attempt is
+   * made to establish the connection.  It will have no effect on connections
+   * that have already been established.
+   *
+   * @param  useWriteBatching  Indicates whether associated connections should
+   *                           use write batching.
+   */
+  public void setUseWriteBatching(final boolean useWriteBatching)
+  {
+    this.useWriteBatching = useWriteBatching;
+  }
+
+
+
+  /**
+   * Indicates whether associated connections should use zero-copy decoding for
+   * responses read from the server.  When zero-copy decoding is enabled, each
+   * response message will be read into a single buffer, and the attribute
+   * values in search result entries will reference that buffer rather than
+   * separate copies of the data.  The byte array for a value will only be
+   * created if it is requested, and string values will be decoded directly
+   * from the buffer.  This can substantially reduce the number of objects
+   * allocated when processing search results with many attribute values.
+   * However, the entire message will be retained in memory for as long as any
+   * attribute value from it remains referenced, so applications that hold on
+   * to a small part of a large number of entries may be better served without
+   * it.
+   * <BR><BR>
+   * Note that this option must be set on the connection before any attempt is
+   * made to establish the connection.  It will have no effect on connections
+   * that have already been established.
+   *
+   * @return  {@code true} if associated connections should use zero-copy
+   *          decoding, or {@code false} if not.
+   */
+  public boolean useZeroCopyDecoding()
+  {
+    return useZeroCopyDecoding;
+  }
+
+
+
+  /**
+   * Specifies whether associated connections should use zero-copy decoding for
+   * responses read from the server.  See the {@link #useZeroCopyDecoding()}
+   * method for details about zero-copy decoding.
+   * <BR><BR>
+   * Note that this option must be set on the connection before any attempt is
+   * made to establish the connection.  It will have no effect on connections
+   * that have already been established.
+   *
+   * @param  useZeroCopyDecoding  Indicates whether associated connections
+   *                              should use zero-copy decoding.
+   */
+  public void setUseZeroCopyDecoding(final boolean useZeroCopyDecoding)
+  {
+    this.useZeroCopyDecoding = useZeroCopyDecoding;
+  }
+
+
+
+  /**
+   * Indicates whether associated connections should defer decoding the
+   * attribute values in search result entries until they are first accessed.
+   * When lazy search entry decoding is enabled, the names of the attributes in
+   * each entry will be decoded when the entry is read, but the encoded set of
+   * values for each attribute will be retained and only decoded the first time
+   * any of the values of that attribute are accessed.  This can substantially
+   * reduce the cost of processing search results for applications that only
+   * use the DN or a small subset of the attributes returned in each entry.
+   * The structure of each entry will still be validated when it is read, so
+   * malformed entries will be rejected in the same way as without lazy
+   * decoding.  Lazy decoding does not alter the behavior of the entries, and
+   * it can be combined with zero-copy decoding.
+   * <BR><BR>
+   * Note that this option must be set on the connection before any attempt is
+   * made to establish the connection.  It will have no effect on connections
+   * that have already been established.
+   *
+   * @return  {@code true} if associated connections should use lazy search
+   *          entry decoding, or {@code false} if not.
+   */
+  public boolean useLazySearchEntryDecoding()
+  {
+    return useLazySearchEntryDecoding;
+  }
+
+
+
+  /**
+   * Specifies whether associated connections should defer decoding the
+   * attribute values in search result entries until they are first accessed.
+   * See the {@link #useLazySearchEntryDecoding()} method for details about
+   * lazy search entry decoding.
+   * <BR><BR>
+   * Note that this option must be set on the connection before any attempt is
+   * made to establish the connection.  It will have no effect on connections
+   * that have already been established.
+   *
+   * @param  useLazySearchEntryDecoding  Indicates whether associated
+   *                                     connections should use lazy search
+   *                                     entry decoding.
+   */
+  public void setUseLazySearchEntryDecoding(
+                   final boolean useLazySearchEntryDecoding)
+  {
+    this.useLazySearchEntryDecoding = useLazySearchEntryDecoding;
+  }
+
+
+
+  /**
+   * Retrieves the pool from which associated connections should obtain the
+   * buffers that they use to encode requests and decode responses.  When a
+   * buffer pool is configured, each request will be encoded into a buffer
+   * obtained from the pool and the buffer will be returned to the pool as soon
+   * as the request has been written, rather than using a buffer that is
+   * retained for the life of the sending thread.  Temporary buffers used while
+   * reading responses will also be obtained from the pool.  Buffers whose
+   * contents may be referenced by the objects returned to the caller are never
+   * obtained from the pool.  A single pool may be shared across any number of
+   * connections, and the pool statistics may be used to determine how
+   * effective it is for a given workload.
+   * <BR><BR>
+   * Note that this option must be set on the connection before any attempt is
+   * made to establish the connection.  It will have no effect on connections
+   * that have already been established.
+   *
+   * @return  The pool from which associated connections should obtain
+   *          buffers, or {@code null} if buffers should not be pooled.
+   */
+  public ByteArrayPool getBufferPool()
+  {
+    return bufferPool;
+  }
+
+
+
+  /**
+   * Specifies the pool from which associated connections should obtain the
+   * buffers that they use to encode requests and decode responses.  See the
+   * {@link #getBufferPool()} method for details about buffer pooling.
+   * <BR><BR>
+   * Note that this option must be set on the connection before any attempt is
+   * made to establish the connection.  It will have no effect on connections
+   * that have already been established.
+   *
+   * @param  bufferPool  The pool from which associated connections should
+   *                     obtain buffers.  It may be {@code null} if buffers
+   *                     should not be pooled.
+   */
+  public void setBufferPool(final ByteArrayPool bufferPool)
+  {
+    this.bufferPool = bufferPool;
+  }
+
+
+
   /**
    * Indicates whether associated connections should attempt to follow any
    * referrals that they encounter.
@@ -1467,8 +1811,16 @@ public final class LDAPConnectionOptions
     buffer.append(pooledSchemaTimeout);
     buffer.append(", useSynchronousMode=");
     buffer.append(useSynchronousMode);
+    buffer.append(", useSharedReaderThreads=");
+    buffer.append(useSharedReaderThreads);
     buffer.append(", useTCPNoDelay=");
     buffer.append(useTCPNoDelay);
+    buffer.append(", useWriteBatching=");
+    buffer.append(useWriteBatching);
+    buffer.append(", useZeroCopyDecoding=");
+    buffer.append(useZeroCopyDecoding);
+    buffer.append(", useLazySearchEntryDecoding=");
+    buffer.append(useLazySearchEntryDecoding);
     buffer.append(", captureConnectStackTrace=");
     buffer.append(captureConnectStackTrace);
     buffer.append(", connectTimeoutMillis=");
@@ -1485,6 +1837,11 @@ public final class LDAPConnectionOptions
     buffer.append(sendBufferSize);
     buffer.append(", allowConcurrentSocketFactoryUse=");
     buffer.append(allowConcurrentSocketFactoryUse);
+    if (bufferPool != null)
+    {
+      buffer.append(", bufferPool=");
+      bufferPool.toString(buffer);
+    }
     if (disconnectHandler != null)
     {
       buffer.append(", disconnectHandlerClass=");
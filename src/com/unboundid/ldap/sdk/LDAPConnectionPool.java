@@ -30,7 +30,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.logging.Level;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -189,6 +188,15 @@ import static com.unboundid.util.Validator.*;
  * {@link #setMaxWaitTimeMillis(long)} method to specify a maximum wait time to
  * allow the pool to wait for a connection to become available rather than
  * throwing an exception if no connections are immediately available.
+ * <BR><BR>
+ * Connections that are not in use are held in a structure that allows them to
+ * be checked out and released without acquiring a lock.  By default, they will
+ * be checked out in the order in which they were released.  For applications
+ * in which a large number of threads use the same pool concurrently, the
+ * {@link #PROPERTY_USE_STRIPED_CONNECTION_QUEUE} system property may be set to
+ * "true" before creating the pool to spread the available connections across
+ * multiple stripes, with each thread preferring a particular stripe, to further
+ * reduce contention.
  */
 @ThreadSafety(level=ThreadSafetyLevel.COMPLETELY_THREADSAFE)
 public final class LDAPConnectionPool
@@ -202,6 +210,19 @@ public final class LDAPConnectionPool
 
 
 
+  /**
+   * The name of a system property that may be used to indicate that connection
+   * pools should hold their available connections in multiple stripes, with
+   * each thread preferring a particular stripe when checking out and releasing
+   * connections.  If this property is set to "true" when a pool is created,
+   * then that pool will use striping.  Otherwise, a single stripe will be used
+   * and connections will be checked out in the order they were released.
+   */
+  public static final String PROPERTY_USE_STRIPED_CONNECTION_QUEUE =
+       LDAPConnectionPool.class.getName() + ".useStripedConnectionQueue";
+
+
+
   /**
    * The name of the connection property that may be used to indicate that a
    * particular connection should have a different maximum connection age than
@@ -261,7 +282,7 @@ public final class LDAPConnectionPool
   private final LDAPConnectionPoolStatistics poolStatistics;
 
   // The set of connections that are currently available for use.
-  private final LinkedBlockingQueue<LDAPConnection> availableConnections;
+  private final AvailableConnectionQueue availableConnections;
 
   // The length of time in milliseconds between periodic health checks against
   // the available connections in this pool.
@@ -638,8 +659,8 @@ public final class LDAPConnectionPool
          Collections.unmodifiableSet(EnumSet.noneOf(OperationType.class)));
     numConnections            = maxConnections;
     minConnectionGoal         = 0;
-    availableConnections      =
-         new LinkedBlockingQueue<LDAPConnection>(numConnections);
+    availableConnections      = new AvailableConnectionQueue(numConnections,
+         Boolean.getBoolean(PROPERTY_USE_STRIPED_CONNECTION_QUEUE));
 
     if (! connection.isConnected())
     {
@@ -1141,8 +1162,8 @@ public final class LDAPConnectionPool
 
     numConnections = maxConnections;
 
-    availableConnections =
-         new LinkedBlockingQueue<LDAPConnection>(numConnections);
+    availableConnections = new AvailableConnectionQueue(numConnections,
+         Boolean.getBoolean(PROPERTY_USE_STRIPED_CONNECTION_QUEUE));
     availableConnections.addAll(connList);
 
     failedReplaceCount                 =
@@ -23,13 +23,19 @@ package com.unboundid.ldap.sdk;
 
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.lang.reflect.Constructor;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
@@ -56,7 +62,12 @@ import static com.unboundid.util.StaticUtils.*;
 /**
  * This class provides a thread that will read data from the socket associated
  * with an LDAP connection.  It will accept messages from the server, and
- * associate responses with their corresponding requests.
+ * associate responses with their corresponding requests.  If the connection is
+ * configured to use shared reader threads, then this thread will not be
+ * started, and responses will instead be read by a
+ * {@link LDAPConnectionSelectorThread} that is shared with other connections.
+ * In that case, this thread will only be started if the connection later needs
+ * to be secured with StartTLS or SASL QoP.
  */
 @InternalUseOnly()
 final class LDAPConnectionReader
@@ -75,6 +86,10 @@ final class LDAPConnectionReader
   // Indicates whether a request has been made to close the associated socket.
   private volatile boolean closeRequested;
 
+  // Indicates whether to defer decoding attribute values in search result
+  // entries until they are first accessed.
+  private final boolean useLazySearchEntryDecoding;
+
   // The map that will be used to associate message IDs with the corresponding
   // response acceptors.
   private final ConcurrentHashMap<Integer,ResponseAcceptor> acceptorMap;
@@ -101,6 +116,18 @@ final class LDAPConnectionReader
   // an outstanding StartTLS request.
   private volatile SSLSocketFactory sslSocketFactory;
 
+  // The reader used to read data from the socket channel when the connection
+  // is using a shared reader thread.  It will be null if the connection is
+  // using its own reader thread.
+  private volatile LDAPConnectionChannelReader channelReader;
+
+  // The shared reader thread used to read data for the connection, if any.
+  private volatile LDAPConnectionSelectorThread selectorThread;
+
+  // The selection key for the socket channel, once it has been registered with
+  // the shared reader thread.
+  private volatile SelectionKey selectionKey;
+
   // The thread that is used to read data from the client.
   private volatile Thread thread;
 
@@ -135,9 +162,18 @@ final class LDAPConnectionReader
                                                    DEFAULT_INPUT_BUFFER_SIZE);
     asn1StreamReader = new ASN1StreamReader(inputStream,
          connection.getConnectionOptions().getMaxMessageSize());
+    asn1StreamReader.setUseZeroCopyDecoding(
+         connection.getConnectionOptions().useZeroCopyDecoding());
+    asn1StreamReader.setBufferPool(
+         connection.getConnectionOptions().getBufferPool());
 
     acceptorMap          = new ConcurrentHashMap<Integer,ResponseAcceptor>();
     closeRequested       = false;
+    useLazySearchEntryDecoding =
+         connection.getConnectionOptions().useLazySearchEntryDecoding();
+    channelReader        = null;
+    selectorThread       = null;
+    selectionKey         = null;
     sslSocketFactory     = null;
     startTLSException    = null;
     startTLSOutputStream = null;
@@ -230,6 +266,241 @@ final class LDAPConnectionReader
 
 
 
+  /**
+   * Arranges for responses to be read from the connection by the provided
+   * shared reader thread rather than by this thread.  The socket must have
+   * been created from a socket channel.
+   *
+   * @param  selectorThread  The shared reader thread that should be used to
+   *                         read responses from the connection.
+   *
+   * @throws  IOException  If a problem occurs while placing the socket channel
+   *                       in non-blocking mode.
+   */
+  void startSharedReader(final LDAPConnectionSelectorThread selectorThread)
+       throws IOException
+  {
+    final SocketChannel channel = socket.getChannel();
+    channel.configureBlocking(false);
+
+    final LDAPConnectionOptions options = connection.getConnectionOptions();
+    channelReader = new LDAPConnectionChannelReader(channel,
+         options.getMaxMessageSize(), options.useZeroCopyDecoding(),
+         options.useLazySearchEntryDecoding(), options.getBufferPool(),
+         connection.getHostPort());
+    this.selectorThread = selectorThread;
+    selectorThread.registerChannel(this);
+  }
+
+
+
+  /**
+   * Registers the socket channel with the provided selector.  This must only
+   * be called by the shared reader thread.
+   *
+   * @param  selector  The selector with which to register the channel.
+   */
+  void registerChannel(final Selector selector)
+  {
+    if (closeRequested || (channelReader == null))
+    {
+      return;
+    }
+
+    try
+    {
+      selectionKey = socket.getChannel().register(selector,
+           SelectionKey.OP_READ, this);
+    }
+    catch (final Exception e)
+    {
+      debugException(e);
+      closeSharedReader(e);
+    }
+  }
+
+
+
+  /**
+   * Reads any data that is available from the socket channel and delivers any
+   * complete responses that it contains.  This must only be called by the
+   * shared reader thread.
+   */
+  void readAvailable()
+  {
+    final LDAPConnectionChannelReader reader = channelReader;
+    if (closeRequested || (reader == null))
+    {
+      return;
+    }
+
+    final ArrayList<LDAPResponse> responses = new ArrayList<LDAPResponse>(1);
+    boolean channelOpen = true;
+    Exception readException = null;
+    try
+    {
+      channelOpen = reader.readResponses(responses,
+           connection.getCachedSchema());
+    }
+    catch (final Exception e)
+    {
+      readException = e;
+    }
+
+    // Deliver any responses that were decoded before a failure, since they may
+    // be all that the caller is waiting for.
+    for (final LDAPResponse response : responses)
+    {
+      try
+      {
+        processResponse(response);
+      }
+      catch (final Exception e)
+      {
+        readException = e;
+        break;
+      }
+    }
+
+    if (readException != null)
+    {
+      closeSharedReader(readException);
+    }
+    else if (! channelOpen)
+    {
+      connection.setDisconnectInfo(
+           DisconnectType.SERVER_CLOSED_WITHOUT_NOTICE, null, null);
+      closeRequested = true;
+      closeInternal(true, null);
+    }
+  }
+
+
+
+  /**
+   * Terminates a connection using a shared reader thread as a result of the
+   * provided exception.
+   *
+   * @param  e  The exception that caused the connection to be terminated.
+   */
+  private void closeSharedReader(final Exception e)
+  {
+    if (closeRequested || connection.closeRequested() ||
+        (connection.getDisconnectType() != null))
+    {
+      // This exception resulted from the connection being closed in a way that
+      // we already knew about.
+      debugException(Level.FINEST, e);
+    }
+    else
+    {
+      debugException(e);
+    }
+
+    final Throwable t;
+    if (e instanceof LDAPException)
+    {
+      t = e.getCause();
+    }
+    else
+    {
+      t = e;
+    }
+
+    final String message;
+    if (t == null)
+    {
+      connection.setDisconnectInfo(DisconnectType.DECODE_ERROR,
+           e.getMessage(), null);
+      message = e.getMessage();
+    }
+    else if (t instanceof IOException)
+    {
+      connection.setDisconnectInfo(DisconnectType.IO_ERROR, e.getMessage(), t);
+      message = ERR_READER_CLOSING_DUE_TO_IO_EXCEPTION.get(
+           connection.getHostPort(), getExceptionMessage(t));
+    }
+    else if (t instanceof ASN1Exception)
+    {
+      connection.setDisconnectInfo(DisconnectType.DECODE_ERROR,
+           e.getMessage(), t);
+      message = ERR_READER_CLOSING_DUE_TO_ASN1_EXCEPTION.get(
+           connection.getHostPort(), getExceptionMessage(t));
+    }
+    else
+    {
+      connection.setDisconnectInfo(DisconnectType.LOCAL_ERROR,
+           e.getMessage(), t);
+      message = ERR_READER_CLOSING_DUE_TO_EXCEPTION.get(
+           connection.getHostPort(), getExceptionMessage(t));
+    }
+
+    debug(Level.WARNING, DebugType.LDAP, message, t);
+    closeRequested = true;
+    closeInternal(true, message);
+  }
+
+
+
+  /**
+   * Stops reading responses with a shared reader thread and prepares the
+   * connection to be read by this thread instead.  The socket channel will be
+   * deregistered from the shared reader thread and placed back in blocking
+   * mode.  This thread will not be started, since the caller may need to
+   * perform additional processing (e.g., TLS negotiation) first.  This will
+   * have no effect if the connection is not using a shared reader thread.
+   *
+   * @return  {@code true} if the connection had been using a shared reader
+   *          thread, or {@code false} if not.
+   *
+   * @throws  IOException  If a problem occurs while placing the socket channel
+   *                       in blocking mode.
+   */
+  private boolean stopSharedReader()
+          throws IOException
+  {
+    final LDAPConnectionChannelReader reader = channelReader;
+    if (reader == null)
+    {
+      return false;
+    }
+
+    final SelectionKey key = selectionKey;
+    if (key != null)
+    {
+      selectorThread.deregisterChannel(key);
+    }
+    channelReader = null;
+    selectionKey  = null;
+
+    socket.getChannel().configureBlocking(true);
+
+    // There shouldn't be any data that has been read but not yet decoded, but
+    // if there is then make sure it won't be lost.
+    final byte[] bufferedData = reader.removeBufferedData();
+    if (bufferedData.length == 0)
+    {
+      inputStream = new BufferedInputStream(socket.getInputStream(),
+           DEFAULT_INPUT_BUFFER_SIZE);
+    }
+    else
+    {
+      inputStream = new BufferedInputStream(
+           new SequenceInputStream(new ByteArrayInputStream(bufferedData),
+                socket.getInputStream()),
+           DEFAULT_INPUT_BUFFER_SIZE);
+    }
+    asn1StreamReader = new ASN1StreamReader(inputStream,
+         connection.getConnectionOptions().getMaxMessageSize());
+    asn1StreamReader.setUseZeroCopyDecoding(
+         connection.getConnectionOptions().useZeroCopyDecoding());
+    asn1StreamReader.setBufferPool(
+         connection.getConnectionOptions().getBufferPool());
+    return true;
+  }
+
+
+
   /**
    * Operates in a loop, reading data from the server and decoding the
    * responses, and associating them with their corresponding requests.
@@ -249,7 +520,7 @@ final class LDAPConnectionReader
         try
         {
           response = LDAPMessage.readLDAPResponseFrom(asn1StreamReader, true,
-               connection.getCachedSchema());
+               connection.getCachedSchema(), useLazySearchEntryDecoding);
         }
         catch (LDAPException le)
         {
@@ -308,6 +579,10 @@ final class LDAPConnectionReader
                                              DEFAULT_INPUT_BUFFER_SIZE);
                 asn1StreamReader = new ASN1StreamReader(inputStream,
                      connectionOptions.getMaxMessageSize());
+                asn1StreamReader.setUseZeroCopyDecoding(
+                     connectionOptions.useZeroCopyDecoding());
+                asn1StreamReader.setBufferPool(
+                     connectionOptions.getBufferPool());
                 startTLSOutputStream = sslSocket.getOutputStream();
                 socket = sslSocket;
                 connection.getConnectionInternals(true).setSocket(sslSocket);
@@ -446,135 +721,7 @@ final class LDAPConnectionReader
           }
         }
 
-        debugLDAPResult(response, connection);
-        connection.setLastCommunicationTime();
-
-        final ResponseAcceptor responseAcceptor;
-        if ((response instanceof SearchResultEntry) ||
-            (response instanceof SearchResultReference))
-        {
-          responseAcceptor = acceptorMap.get(response.getMessageID());
-        }
-        else if (response instanceof IntermediateResponse)
-        {
-          final IntermediateResponse ir = (IntermediateResponse) response;
-          responseAcceptor = acceptorMap.get(response.getMessageID());
-           IntermediateResponseListener l = null;
-          if (responseAcceptor instanceof LDAPRequest)
-          {
-            final LDAPRequest r = (LDAPRequest) responseAcceptor;
-            l = r.getIntermediateResponseListener();
-
-          }
-          else if (responseAcceptor instanceof IntermediateResponseListener)
-          {
-            l = (IntermediateResponseListener) responseAcceptor;
-          }
-
-          if (l == null)
-          {
-            debug(Level.WARNING, DebugType.LDAP,
-                  WARN_INTERMEDIATE_RESPONSE_WITH_NO_LISTENER.get(
-                       String.valueOf(ir)));
-          }
-          else
-          {
-            try
-            {
-              l.intermediateResponseReturned(ir);
-            }
-            catch (Exception e)
-            {
-              debugException(e);
-            }
-          }
-          continue;
-        }
-        else
-        {
-          responseAcceptor = acceptorMap.remove(response.getMessageID());
-        }
-
-
-        if (responseAcceptor == null)
-        {
-          if ((response instanceof ExtendedResult) &&
-              (response.getMessageID() == 0))
-          {
-            // This is an intermediate response message, so handle it
-            // appropriately.
-            ExtendedResult extendedResult = (ExtendedResult) response;
-
-            final String oid = extendedResult.getOID();
-            if (NoticeOfDisconnectionExtendedResult.
-                     NOTICE_OF_DISCONNECTION_RESULT_OID.equals(oid))
-            {
-              extendedResult = new NoticeOfDisconnectionExtendedResult(
-                                        extendedResult);
-              connection.setDisconnectInfo(
-                   DisconnectType.SERVER_CLOSED_WITH_NOTICE,
-                   extendedResult.getDiagnosticMessage(), null);
-            }
-            else if ("1.3.6.1.4.1.30221.2.6.5".equals(oid))
-            {
-              try
-              {
-                final Class<?> c = Class.forName("com.unboundid.ldap.sdk." +
-                     "unboundidds.extensions." +
-                     "InteractiveTransactionAbortedExtendedResult");
-                final Constructor<?> ctor =
-                     c.getConstructor(ExtendedResult.class);
-                extendedResult =
-                     (ExtendedResult) ctor.newInstance(extendedResult);
-              }
-              catch (Exception e)
-              {
-                // This is fine.  It can happen if the client is using the
-                // standard edition of the LDAP SDK which does not have
-                // support for UnboundID-specific content.
-                debugException(e);
-              }
-            }
-
-            final UnsolicitedNotificationHandler handler =
-                 connection.getConnectionOptions().
-                      getUnsolicitedNotificationHandler();
-            if (handler == null)
-            {
-              if (debugEnabled(DebugType.LDAP))
-              {
-                debug(Level.WARNING, DebugType.LDAP,
-                     WARN_READER_UNHANDLED_UNSOLICITED_NOTIFICATION.get(
-                          response));
-              }
-            }
-            else
-            {
-              handler.handleUnsolicitedNotification(connection,
-                                                    extendedResult);
-            }
-            continue;
-          }
-
-          if (debugEnabled(DebugType.LDAP))
-          {
-            debug(Level.WARNING, DebugType.LDAP,
-                  WARN_READER_NO_ACCEPTOR.get(response));
-          }
-          continue;
-        }
-
-        try
-        {
-          responseAcceptor.responseReceived(response);
-        }
-        catch (LDAPException le)
-        {
-          debugException(le);
-          debug(Level.WARNING, DebugType.LDAP,
-                ERR_READER_ACCEPTOR_ERROR.get(String.valueOf(response),
-                     connection.getHostPort(), getExceptionMessage(le)), le);
-        }
+        processResponse(response);
       }
       catch (Exception e)
       {
@@ -656,6 +803,147 @@ final class LDAPConnectionReader
 
 
 
+  /**
+   * Delivers the provided response to the appropriate response acceptor,
+   * intermediate response listener, or unsolicited notification handler.
+   *
+   * @param  response  The response to be delivered.
+   */
+  private void processResponse(final LDAPResponse response)
+  {
+    debugLDAPResult(response, connection);
+    connection.setLastCommunicationTime();
+
+    final ResponseAcceptor responseAcceptor;
+    if ((response instanceof SearchResultEntry) ||
+        (response instanceof SearchResultReference))
+    {
+      responseAcceptor = acceptorMap.get(response.getMessageID());
+    }
+    else if (response instanceof IntermediateResponse)
+    {
+      final IntermediateResponse ir = (IntermediateResponse) response;
+      responseAcceptor = acceptorMap.get(response.getMessageID());
+       IntermediateResponseListener l = null;
+      if (responseAcceptor instanceof LDAPRequest)
+      {
+        final LDAPRequest r = (LDAPRequest) responseAcceptor;
+        l = r.getIntermediateResponseListener();
+
+      }
+      else if (responseAcceptor instanceof IntermediateResponseListener)
+      {
+        l = (IntermediateResponseListener) responseAcceptor;
+      }
+
+      if (l == null)
+      {
+        debug(Level.WARNING, DebugType.LDAP,
+              WARN_INTERMEDIATE_RESPONSE_WITH_NO_LISTENER.get(
+                   String.valueOf(ir)));
+      }
+      else
+      {
+        try
+        {
+          l.intermediateResponseReturned(ir);
+        }
+        catch (Exception e)
+        {
+          debugException(e);
+        }
+      }
+      return;
+    }
+    else
+    {
+      responseAcceptor = acceptorMap.remove(response.getMessageID());
+    }
+
+
+    if (responseAcceptor == null)
+    {
+      if ((response instanceof ExtendedResult) &&
+          (response.getMessageID() == 0))
+      {
+        // This is an intermediate response message, so handle it
+        // appropriately.
+        ExtendedResult extendedResult = (ExtendedResult) response;
+
+        final String oid = extendedResult.getOID();
+        if (NoticeOfDisconnectionExtendedResult.
+                 NOTICE_OF_DISCONNECTION_RESULT_OID.equals(oid))
+        {
+          extendedResult = new NoticeOfDisconnectionExtendedResult(
+                                    extendedResult);
+          connection.setDisconnectInfo(
+               DisconnectType.SERVER_CLOSED_WITH_NOTICE,
+               extendedResult.getDiagnosticMessage(), null);
+        }
+        else if ("1.3.6.1.4.1.30221.2.6.5".equals(oid))
+        {
+          try
+          {
+            final Class<?> c = Class.forName("com.unboundid.ldap.sdk." +
+                 "unboundidds.extensions." +
+                 "InteractiveTransactionAbortedExtendedResult");
+            final Constructor<?> ctor =
+                 c.getConstructor(ExtendedResult.class);
+            extendedResult =
+                 (ExtendedResult) ctor.newInstance(extendedResult);
+          }
+          catch (Exception e)
+          {
+            // This is fine.  It can happen if the client is using the
+            // standard edition of the LDAP SDK which does not have
+            // support for UnboundID-specific content.
+            debugException(e);
+          }
+        }
+
+        final UnsolicitedNotificationHandler handler =
+             connection.getConnectionOptions().
+                  getUnsolicitedNotificationHandler();
+        if (handler == null)
+        {
+          if (debugEnabled(DebugType.LDAP))
+          {
+            debug(Level.WARNING, DebugType.LDAP,
+                 WARN_READER_UNHANDLED_UNSOLICITED_NOTIFICATION.get(
+                      response));
+          }
+        }
+        else
+        {
+          handler.handleUnsolicitedNotification(connection,
+                                                extendedResult);
+        }
+        return;
+      }
+
+      if (debugEnabled(DebugType.LDAP))
+      {
+        debug(Level.WARNING, DebugType.LDAP,
+              WARN_READER_NO_ACCEPTOR.get(response));
+      }
+      return;
+    }
+
+    try
+    {
+      responseAcceptor.responseReceived(response);
+    }
+    catch (LDAPException le)
+    {
+      debugException(le);
+      debug(Level.WARNING, DebugType.LDAP,
+            ERR_READER_ACCEPTOR_ERROR.get(String.valueOf(response),
+                 connection.getHostPort(), getExceptionMessage(le)), le);
+    }
+  }
+
+
+
   /**
    * Reads a response from the server, blocking if necessary until the response
    * has been received.  This should only be used for connections operating in
@@ -679,7 +967,8 @@ final class LDAPConnectionReader
       try
       {
         final LDAPResponse response = LDAPMessage.readLDAPResponseFrom(
-             asn1StreamReader, false, connection.getCachedSchema());
+             asn1StreamReader, false, connection.getCachedSchema(),
+             useLazySearchEntryDecoding);
         if (response == null)
         {
           return new ConnectionClosedResponse(ResultCode.SERVER_DOWN, null);
@@ -910,7 +1199,27 @@ final class LDAPConnectionReader
   {
     final LDAPConnectionOptions connectionOptions =
          connection.getConnectionOptions();
-    if (connection.synchronousMode())
+
+    // If the connection is using a shared reader thread, then perform the TLS
+    // negotiation in this thread and switch to a dedicated reader thread once
+    // it is complete.
+    final boolean startReaderThread;
+    try
+    {
+      startReaderThread = stopSharedReader();
+    }
+    catch (final Exception e)
+    {
+      debugException(e);
+      connection.setDisconnectInfo(DisconnectType.SECURITY_PROBLEM,
+           getExceptionMessage(e), e);
+      closeRequested = true;
+      closeInternal(true, getExceptionMessage(e));
+      throw new LDAPException(ResultCode.SERVER_DOWN,
+           ERR_CONNREADER_STARTTLS_FAILED.get(getExceptionMessage(e)), e);
+    }
+
+    if (connection.synchronousMode() || startReaderThread)
     {
       try
       {
@@ -953,11 +1262,18 @@ final class LDAPConnectionReader
                                      DEFAULT_INPUT_BUFFER_SIZE);
         asn1StreamReader = new ASN1StreamReader(inputStream,
              connectionOptions.getMaxMessageSize());
+        asn1StreamReader.setUseZeroCopyDecoding(
+             connectionOptions.useZeroCopyDecoding());
+        asn1StreamReader.setBufferPool(connectionOptions.getBufferPool());
         startTLSOutputStream = sslSocket.getOutputStream();
         socket = sslSocket;
         connection.getConnectionInternals(true).setSocket(sslSocket);
         final OutputStream outputStream = startTLSOutputStream;
         startTLSOutputStream = null;
+        if (startReaderThread)
+        {
+          start();
+        }
         return outputStream;
       }
       catch (Exception e)
@@ -1010,14 +1326,37 @@ final class LDAPConnectionReader
 
   /**
    * Updates this connection reader to ensure that any subsequent data read
-   * over this connection will be decoded using the provided SASL client.
+   * over this connection will be decoded using the provided SASL client.  If
+   * the connection is using a shared reader thread, then it will switch to
+   * using this thread instead.
    *
    * @param  saslClient  The SASL client to use to decode data read over this
    *                     connection.
+   *
+   * @throws  LDAPException  If a problem occurs while switching from a shared
+   *                         reader thread to this thread.
    */
   void applySASLQoP(final SaslClient saslClient)
+       throws LDAPException
   {
+    final boolean startReaderThread;
+    try
+    {
+      startReaderThread = stopSharedReader();
+    }
+    catch (final Exception e)
+    {
+      debugException(e);
+      throw new LDAPException(ResultCode.LOCAL_ERROR,
+           ERR_CONNREADER_SASL_QOP_FAILED.get(getExceptionMessage(e)), e);
+    }
+
     InternalASN1Helper.setSASLClient(asn1StreamReader, saslClient);
+
+    if (startReaderThread)
+    {
+      start();
+    }
   }
 
 
@@ -1078,6 +1417,16 @@ final class LDAPConnectionReader
      final InputStream is = inputStream;
      inputStream = null;
 
+     // If the connection is using a shared reader thread, then make sure that
+     // the selector releases the channel so that the socket will actually be
+     // closed.
+     final SelectionKey key = selectionKey;
+     if (key != null)
+     {
+       key.cancel();
+       selectorThread.wakeup();
+     }
+
      try
      {
        if (is != null)
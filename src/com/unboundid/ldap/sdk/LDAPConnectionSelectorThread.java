@@ -0,0 +1,357 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.sdk;
+
+
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.unboundid.util.InternalUseOnly;
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+import static com.unboundid.util.Debug.*;
+
+
+
+/**
+ * This class provides a thread that uses a selector to read responses from any
+ * number of non-blocking LDAP connections.  A small set of these threads is
+ * shared by all connections in the JVM that are configured to use shared reader
+ * threads, so that a large number of connections does not require a large
+ * number of reader threads.  Responses that are read will be handed off to the
+ * connection reader for the associated connection, which will deliver them to
+ * the appropriate response acceptors.
+ */
+@ThreadSafety(level=ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+final class LDAPConnectionSelectorThread
+      extends Thread
+{
+  /**
+   * The default maximum number of shared reader threads to create if the
+   * number has not been specified with a system property.
+   */
+  private static final int DEFAULT_MAX_THREAD_COUNT = 8;
+
+
+
+  /**
+   * The counter used to select the shared reader thread for a new connection.
+   */
+  private static final AtomicLong NEXT_THREAD_INDEX = new AtomicLong(0L);
+
+
+
+  /**
+   * The set of shared reader threads.  It will be created when the first
+   * connection that uses shared reader threads is established.
+   */
+  private static LDAPConnectionSelectorThread[] threads = null;
+
+
+
+  // The latches for threads waiting for cancelled keys to be deregistered from
+  // the selector.
+  private final ConcurrentLinkedQueue<CountDownLatch> pendingDeregistrations;
+
+  // The connection readers for which the channels need to be registered with
+  // the selector.
+  private final ConcurrentLinkedQueue<LDAPConnectionReader>
+       pendingRegistrations;
+
+  // The selector used to wait for data to be available.
+  private final Selector selector;
+
+
+
+  /**
+   * Creates a new selector thread.
+   *
+   * @param  name  The name to use for this thread.
+   *
+   * @throws  IOException  If a problem occurs while opening the selector.
+   */
+  private LDAPConnectionSelectorThread(final String name)
+          throws IOException
+  {
+    setName(name);
+    setDaemon(true);
+
+    pendingDeregistrations = new ConcurrentLinkedQueue<CountDownLatch>();
+    pendingRegistrations   =
+         new ConcurrentLinkedQueue<LDAPConnectionReader>();
+    selector               = Selector.open();
+  }
+
+
+
+  /**
+   * Retrieves the shared reader thread that should be used for a new
+   * connection, creating the set of shared reader threads if necessary.
+   *
+   * @return  The shared reader thread that should be used for a new
+   *          connection.
+   *
+   * @throws  IOException  If a problem occurs while creating the shared reader
+   *                       threads.
+   */
+  static LDAPConnectionSelectorThread getSelectorThread()
+         throws IOException
+  {
+    final LDAPConnectionSelectorThread[] threadArray;
+    synchronized (LDAPConnectionSelectorThread.class)
+    {
+      if (threads == null)
+      {
+        final LDAPConnectionSelectorThread[] newThreads =
+             new LDAPConnectionSelectorThread[getThreadCount()];
+        for (int i=0; i < newThreads.length; i++)
+        {
+          newThreads[i] = new LDAPConnectionSelectorThread(
+               "LDAPConnection Shared Reader Thread " + (i+1) + " of " +
+                    newThreads.length);
+        }
+
+        for (final LDAPConnectionSelectorThread t : newThreads)
+        {
+          t.start();
+        }
+
+        threads = newThreads;
+      }
+
+      threadArray = threads;
+    }
+
+    final long index = NEXT_THREAD_INDEX.getAndIncrement();
+    return threadArray[(int) ((index & 0x7FFFFFFFFFFFFFFFL) %
+         threadArray.length)];
+  }
+
+
+
+  /**
+   * Determines the number of shared reader threads that should be created.
+   *
+   * @return  The number of shared reader threads that should be created.
+   */
+  private static int getThreadCount()
+  {
+    final String propertyValue = System.getProperty(
+         LDAPConnectionOptions.PROPERTY_SHARED_READER_THREAD_COUNT);
+    if (propertyValue != null)
+    {
+      try
+      {
+        final int count = Integer.parseInt(propertyValue.trim());
+        if (count > 0)
+        {
+          return count;
+        }
+      }
+      catch (final Exception e)
+      {
+        debugException(e);
+      }
+    }
+
+    final int numCPUs = Runtime.getRuntime().availableProcessors();
+    return Math.max(2, Math.min(DEFAULT_MAX_THREAD_COUNT, numCPUs));
+  }
+
+
+
+  /**
+   * Arranges for the channel associated with the provided connection reader to
+   * be registered with this selector thread so that responses will be read
+   * from it.
+   *
+   * @param  reader  The connection reader to register.
+   */
+  void registerChannel(final LDAPConnectionReader reader)
+  {
+    pendingRegistrations.add(reader);
+    selector.wakeup();
+  }
+
+
+
+  /**
+   * Ensures that the provided selection key has been cancelled and that the
+   * associated channel is no longer registered with this selector, so that the
+   * channel may be placed in blocking mode or closed.  If this is called from a
+   * thread other than this selector thread, then it will wait for the selector
+   * thread to complete the deregistration.
+   *
+   * @param  key  The selection key to deregister.
+   */
+  void deregisterChannel(final SelectionKey key)
+  {
+    key.cancel();
+
+    if (Thread.currentThread() == this)
+    {
+      flushCancelledKeys();
+      return;
+    }
+
+    final CountDownLatch latch = new CountDownLatch(1);
+    pendingDeregistrations.add(latch);
+    selector.wakeup();
+
+    boolean interrupted = false;
+    while (isAlive())
+    {
+      try
+      {
+        if (latch.await(100L, TimeUnit.MILLISECONDS))
+        {
+          break;
+        }
+      }
+      catch (final InterruptedException ie)
+      {
+        debugException(ie);
+        interrupted = true;
+      }
+    }
+
+    if (interrupted)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+
+
+  /**
+   * Wakes up this selector thread so that any channels that have been closed
+   * will be deregistered from the selector and their underlying sockets will
+   * be released.
+   */
+  void wakeup()
+  {
+    selector.wakeup();
+  }
+
+
+
+  /**
+   * Operates in a loop, waiting for data to be available on any of the
+   * registered channels and handing it off for processing.  This method is for
+   * internal use only and must not be invoked by external callers.
+   */
+  @InternalUseOnly()
+  @Override()
+  public void run()
+  {
+    final ArrayList<SelectionKey> readyKeys = new ArrayList<SelectionKey>(10);
+    while (true)
+    {
+      try
+      {
+        selector.select();
+      }
+      catch (final Exception e)
+      {
+        debugException(e);
+        if (! selector.isOpen())
+        {
+          return;
+        }
+      }
+
+      while (true)
+      {
+        final LDAPConnectionReader r = pendingRegistrations.poll();
+        if (r == null)
+        {
+          break;
+        }
+
+        r.registerChannel(selector);
+      }
+
+      if (! pendingDeregistrations.isEmpty())
+      {
+        flushCancelledKeys();
+        while (true)
+        {
+          final CountDownLatch l = pendingDeregistrations.poll();
+          if (l == null)
+          {
+            break;
+          }
+
+          l.countDown();
+        }
+      }
+
+      // Copy the selected keys so that a channel may be deregistered while its
+      // responses are being processed.
+      readyKeys.addAll(selector.selectedKeys());
+      selector.selectedKeys().clear();
+      for (final SelectionKey key : readyKeys)
+      {
+        if (key.isValid() && key.isReadable())
+        {
+          try
+          {
+            ((LDAPConnectionReader) key.attachment()).readAvailable();
+          }
+          catch (final Throwable t)
+          {
+            // This should never happen, but we don't want it to take down the
+            // thread that is reading for other connections.
+            debugException(t);
+          }
+        }
+      }
+      readyKeys.clear();
+    }
+  }
+
+
+
+  /**
+   * Performs a non-blocking select to ensure that any cancelled keys have been
+   * deregistered from the selector.  This must only be called by this selector
+   * thread.
+   */
+  private void flushCancelledKeys()
+  {
+    try
+    {
+      selector.selectNow();
+    }
+    catch (final Exception e)
+    {
+      debugException(e);
+    }
+  }
+}
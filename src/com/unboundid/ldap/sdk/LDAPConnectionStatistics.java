@@ -72,6 +72,10 @@ public final class LDAPConnectionStatistics
   // The number of add responses received on the associated connection.
   private final AtomicLong numAddResponses;
 
+  // The number of messages that have been sent on the associated connection as
+  // part of a write batch.
+  private final AtomicLong numBatchedMessages;
+
   // The number of bind requests sent over the associated connection.
   private final AtomicLong numBindRequests;
 
@@ -134,6 +138,14 @@ public final class LDAPConnectionStatistics
   // The number of unbind requests sent over the associated connection.
   private final AtomicLong numUnbindRequests;
 
+  // The number of write batches that have been flushed on the associated
+  // connection.
+  private final AtomicLong numWriteBatches;
+
+  // The largest number of messages included in a single write batch on the
+  // associated connection.
+  private final AtomicLong maxWriteBatchSize;
+
   // The total length of time spent waiting for add responses.
   private final AtomicLong totalAddResponseTime;
 
@@ -166,9 +178,11 @@ public final class LDAPConnectionStatistics
    */
   public LDAPConnectionStatistics()
   {
+    maxWriteBatchSize           = new AtomicLong(0L);
     numAbandonRequests          = new AtomicLong(0L);
     numAddRequests              = new AtomicLong(0L);
     numAddResponses             = new AtomicLong(0L);
+    numBatchedMessages          = new AtomicLong(0L);
     numBindRequests             = new AtomicLong(0L);
     numBindResponses            = new AtomicLong(0L);
     numCompareRequests          = new AtomicLong(0L);
@@ -188,6 +202,7 @@ public final class LDAPConnectionStatistics
     numSearchReferenceResponses = new AtomicLong(0L);
     numSearchDoneResponses      = new AtomicLong(0L);
     numUnbindRequests           = new AtomicLong(0L);
+    numWriteBatches             = new AtomicLong(0L);
     totalAddResponseTime        = new AtomicLong(0L);
     totalBindResponseTime       = new AtomicLong(0L);
     totalCompareResponseTime    = new AtomicLong(0L);
@@ -205,9 +220,11 @@ public final class LDAPConnectionStatistics
    */
   public void reset()
   {
+    maxWriteBatchSize.set(0L);
     numAbandonRequests.set(0L);
     numAddRequests.set(0L);
     numAddResponses.set(0L);
+    numBatchedMessages.set(0L);
     numBindRequests.set(0L);
     numBindResponses.set(0L);
     numCompareRequests.set(0L);
@@ -227,6 +244,7 @@ public final class LDAPConnectionStatistics
     numSearchReferenceResponses.set(0L);
     numSearchDoneResponses.set(0L);
     numUnbindRequests.set(0L);
+    numWriteBatches.set(0L);
     totalAddResponseTime.set(0L);
     totalBindResponseTime.set(0L);
     totalCompareResponseTime.set(0L);
@@ -1445,6 +1463,98 @@ public final class LDAPConnectionStatistics
 
 
 
+  /**
+   * Retrieves the number of write batches that have been flushed on the
+   * associated connection.  This will only be updated for connections that
+   * are configured to use write batching.
+   *
+   * @return  The number of write batches that have been flushed on the
+   *          associated connection.
+   */
+  public long getNumWriteBatches()
+  {
+    return numWriteBatches.get();
+  }
+
+
+
+  /**
+   * Retrieves the total number of messages that have been sent as part of a
+   * write batch on the associated connection.
+   *
+   * @return  The total number of messages that have been sent as part of a
+   *          write batch on the associated connection.
+   */
+  public long getNumBatchedMessages()
+  {
+    return numBatchedMessages.get();
+  }
+
+
+
+  /**
+   * Retrieves the largest number of messages that have been included in a
+   * single write batch on the associated connection.
+   *
+   * @return  The largest number of messages that have been included in a
+   *          single write batch on the associated connection.
+   */
+  public long getMaxWriteBatchSize()
+  {
+    return maxWriteBatchSize.get();
+  }
+
+
+
+  /**
+   * Retrieves the average number of messages included in each write batch on
+   * the associated connection.
+   *
+   * @return  The average number of messages included in each write batch on
+   *          the associated connection, or {@code Double.NaN} if no write
+   *          batches have yet been flushed.
+   */
+  public double getAverageWriteBatchSize()
+  {
+    final long batches  = numWriteBatches.get();
+    final long messages = numBatchedMessages.get();
+
+    if (batches > 0)
+    {
+      return (1.0d * messages / batches);
+    }
+    else
+    {
+      return Double.NaN;
+    }
+  }
+
+
+
+  /**
+   * Updates the write batch counters to reflect a batch that has been flushed
+   * on the associated connection.
+   *
+   * @param  batchSize  The number of messages included in the batch.
+   */
+  void incrementNumWriteBatches(final int batchSize)
+  {
+    numWriteBatches.incrementAndGet();
+    numBatchedMessages.addAndGet(batchSize);
+
+    while (true)
+    {
+      final long currentMax = maxWriteBatchSize.get();
+      if ((batchSize <= currentMax) ||
+          maxWriteBatchSize.compareAndSet(currentMax, batchSize))
+      {
+        return;
+      }
+    }
+  }
+
+
+
   /**
    * Retrieves a string representation of this LDAP connection statistics
    * object.
@@ -1500,6 +1610,9 @@ public final class LDAPConnectionStatistics
     final long searchDone        = numSearchDoneResponses.get();
     final long searchTimes       = totalSearchResponseTime.get();
     final long unbindRequests    = numUnbindRequests.get();
+    final long writeBatches      = numWriteBatches.get();
+    final long batchedMessages   = numBatchedMessages.get();
+    final long maxBatchSize      = maxWriteBatchSize.get();
 
     final DecimalFormat f = new DecimalFormat("0.000");
 
@@ -1614,6 +1727,18 @@ public final class LDAPConnectionStatistics
     buffer.append(", numUnbindRequests=");
     buffer.append(unbindRequests);
 
+    if (writeBatches > 0L)
+    {
+      buffer.append(", numWriteBatches=");
+      buffer.append(writeBatches);
+      buffer.append(", numBatchedMessages=");
+      buffer.append(batchedMessages);
+      buffer.append(", maxWriteBatchSize=");
+      buffer.append(maxBatchSize);
+      buffer.append(", averageWriteBatchSize=");
+      buffer.append(f.format(1.0d * batchedMessages / writeBatches));
+    }
+
     buffer.append(')');
   }
 }
@@ -0,0 +1,2063 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.sdk;
+
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.unboundid.util.ThreadSafety;
+import com.unboundid.util.ThreadSafetyLevel;
+
+import static com.unboundid.ldap.sdk.LDAPMessages.*;
+import static com.unboundid.util.Debug.*;
+import static com.unboundid.util.StaticUtils.*;
+import static com.unboundid.util.Validator.*;
+
+
+
+/**
+ * This class provides an implementation of an LDAP connection pool which
+ * shares a small, fixed set of connections among any number of concurrent
+ * operations.  Rather than giving each operation exclusive use of a
+ * connection, this pool takes advantage of the ability of LDAP to have
+ * multiple outstanding operations on the same connection, so that a handful
+ * of connections may be used to process a large number of concurrent
+ * requests.
+ * <BR><BR>
+ * Each connection in the pool may have up to a configurable number of
+ * operations in progress at any time.  Whenever a connection is needed, the
+ * pool selects the connection with the fewest outstanding operations.  If all
+ * of the connections already have the maximum number of outstanding
+ * operations, then the pool will wait for up to the configured maximum wait
+ * time for one of them to complete before failing.
+ * <BR><BR>
+ * Operations may be processed either synchronously through the methods
+ * inherited from the {@link AbstractConnectionPool} class, or asynchronously
+ * through methods like {@link #asyncSearch} and {@link #asyncModify}.  The
+ * asynchronous methods do not tie up the calling thread while the operation
+ * is in progress, and the pool will automatically reclaim the capacity used
+ * by an asynchronous operation when its result is received.  An asynchronous
+ * operation that should be abandoned should be abandoned through the
+ * {@link #abandon} method of this pool or the {@link AsyncRequestID#cancel}
+ * method, so that the pool is aware that no result will be received for it.
+ * <BR><BR>
+ * Because the connections in this pool are used concurrently, they must not
+ * operate in synchronous mode, and a connection obtained from the
+ * {@link #getConnection} method will generally be in use by other threads at
+ * the same time.  Applications must not perform any operation that will
+ * alter the state of a connection in this pool (for example, a bind or
+ * StartTLS operation), or that requires multiple operations to be processed
+ * on the same connection without interference (for example, LDAP
+ * transactions).  The connections will be authenticated with the bind request
+ * provided when the pool is created, and that authentication state should be
+ * used for all operations processed through the pool.
+ * <BR><BR>
+ * <H2>Example</H2>
+ * The following example demonstrates the process for creating a pool with
+ * four connections, each of which may have up to 50 outstanding operations,
+ * and using it to process an asynchronous modify operation:
+ * <PRE>
+ * LDAPMultiplexingConnectionPool pool = new LDAPMultiplexingConnectionPool(
+ *      new SingleServerSet(host, port), bindRequest, 4, 50);
+ * AsyncRequestID requestID = pool.asyncModify(modifyRequest, resultListener);
+ * LDAPResult modifyResult = requestID.get();
+ * pool.close();
+ * </PRE>
+ */
+@ThreadSafety(level=ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+public final class LDAPMultiplexingConnectionPool
+       extends AbstractConnectionPool
+{
+  /**
+   * The default health check interval for this connection pool, which is set to
+   * 60000 milliseconds (60 seconds).
+   */
+  private static final long DEFAULT_HEALTH_CHECK_INTERVAL = 60000L;
+
+
+
+  // The types of operations that should be retried if they fail in a manner
+  // that may be the result of a connection that is no longer valid.
+  private final AtomicReference<Set<OperationType>> retryOperationTypes;
+
+  // The number of threads currently waiting for capacity to become available.
+  private final AtomicInteger numWaiters;
+
+  // The connections maintained for this connection pool.
+  private final AtomicReferenceArray<MultiplexedConnection> connections;
+
+  // Indicates whether this connection pool has been closed.
+  private volatile boolean closed;
+
+  // The bind request to use to perform authentication whenever a new connection
+  // is established.
+  private final BindRequest bindRequest;
+
+  // The condition used to signal threads waiting for capacity to become
+  // available.
+  private final Condition capacityAvailable;
+
+  // The maximum number of outstanding operations for each connection.
+  private final int maxOperationsPerConnection;
+
+  // The health check implementation that should be used for this connection
+  // pool.
+  private LDAPConnectionPoolHealthCheck healthCheck;
+
+  // The thread that will be used to perform periodic background health checks
+  // for this connection pool.
+  private final LDAPConnectionPoolHealthCheckThread healthCheckThread;
+
+  // The statistics for this connection pool.
+  private final LDAPConnectionPoolStatistics poolStatistics;
+
+  // The length of time in milliseconds between periodic health checks against
+  // the connections in this pool.
+  private volatile long healthCheckInterval;
+
+  // The maximum length of time in milliseconds to wait for capacity to become
+  // available when trying to obtain a connection from the pool.
+  private volatile long maxWaitTime;
+
+  // The post-connect processor for this connection pool, if any.
+  private final PostConnectProcessor postConnectProcessor;
+
+  // The lock used when waiting for capacity to become available.
+  private final ReentrantLock waitLock;
+
+  // The server set to use for establishing connections for use by this pool.
+  private final ServerSet serverSet;
+
+  // The user-friendly name assigned to this connection pool.
+  private String connectionPoolName;
+
+
+
+  /**
+   * Creates a new LDAP multiplexing connection pool which will use the
+   * provided server set and bind request for creating new connections.
+   *
+   * @param  serverSet                   The server set to use to create the
+   *                                     connections.  It is acceptable for the
+   *                                     server set to create the connections
+   *                                     across multiple servers.  The
+   *                                     connections it creates must not
+   *                                     operate in synchronous mode.
+   * @param  bindRequest                 The bind request to use to
+   *                                     authenticate the connections that are
+   *                                     established.  It may be {@code null}
+   *                                     if no authentication should be
+   *                                     performed on the connections.
+   * @param  numConnections              The number of connections to maintain
+   *                                     in the pool.  It must be greater than
+   *                                     zero.
+   * @param  maxOperationsPerConnection  The maximum number of operations that
+   *                                     may be outstanding on any single
+   *                                     connection at the same time.  It must
+   *                                     be greater than zero.
+   *
+   * @throws  LDAPException  If a problem occurs while establishing the
+   *                         connections.  If this is thrown, then any
+   *                         connections that had been created will be closed.
+   */
+  public LDAPMultiplexingConnectionPool(final ServerSet serverSet,
+              final BindRequest bindRequest, final int numConnections,
+              final int maxOperationsPerConnection)
+         throws LDAPException
+  {
+    this(serverSet, bindRequest, numConnections, maxOperationsPerConnection,
+         null);
+  }
+
+
+
+  /**
+   * Creates a new LDAP multiplexing connection pool which will use the
+   * provided server set and bind request for creating new connections.
+   *
+   * @param  serverSet                   The server set to use to create the
+   *                                     connections.  It is acceptable for the
+   *                                     server set to create the connections
+   *                                     across multiple servers.  The
+   *                                     connections it creates must not
+   *                                     operate in synchronous mode.
+   * @param  bindRequest                 The bind request to use to
+   *                                     authenticate the connections that are
+   *                                     established.  It may be {@code null}
+   *                                     if no authentication should be
+   *                                     performed on the connections.
+   * @param  numConnections              The number of connections to maintain
+   *                                     in the pool.  It must be greater than
+   *                                     zero.
+   * @param  maxOperationsPerConnection  The maximum number of operations that
+   *                                     may be outstanding on any single
+   *                                     connection at the same time.  It must
+   *                                     be greater than zero.
+   * @param  postConnectProcessor        A processor that should be used to
+   *                                     perform any post-connect processing
+   *                                     for connections in this pool.  It may
+   *                                     be {@code null} if no special
+   *                                     processing is needed.
+   *
+   * @throws  LDAPException  If a problem occurs while establishing the
+   *                         connections.  If this is thrown, then any
+   *                         connections that had been created will be closed.
+   */
+  public LDAPMultiplexingConnectionPool(final ServerSet serverSet,
+              final BindRequest bindRequest, final int numConnections,
+              final int maxOperationsPerConnection,
+              final PostConnectProcessor postConnectProcessor)
+         throws LDAPException
+  {
+    ensureNotNull(serverSet);
+    ensureTrue(numConnections > 0,
+         "LDAPMultiplexingConnectionPool.numConnections must be greater " +
+              "than zero.");
+    ensureTrue(maxOperationsPerConnection > 0,
+         "LDAPMultiplexingConnectionPool.maxOperationsPerConnection must be " +
+              "greater than zero.");
+
+    this.serverSet                  = serverSet;
+    this.bindRequest                = bindRequest;
+    this.maxOperationsPerConnection = maxOperationsPerConnection;
+    this.postConnectProcessor       = postConnectProcessor;
+
+    healthCheck         = new LDAPConnectionPoolHealthCheck();
+    healthCheckInterval = DEFAULT_HEALTH_CHECK_INTERVAL;
+    poolStatistics      = new LDAPConnectionPoolStatistics(this);
+    connectionPoolName  = null;
+    maxWaitTime         = 0L;
+    closed              = false;
+    retryOperationTypes = new AtomicReference<Set<OperationType>>(
+         Collections.unmodifiableSet(EnumSet.noneOf(OperationType.class)));
+
+    numWaiters        = new AtomicInteger(0);
+    waitLock          = new ReentrantLock();
+    capacityAvailable = waitLock.newCondition();
+
+    connections =
+         new AtomicReferenceArray<MultiplexedConnection>(numConnections);
+    for (int i=0; i < numConnections; i++)
+    {
+      try
+      {
+        connections.set(i, new MultiplexedConnection(createConnection()));
+      }
+      catch (final LDAPException le)
+      {
+        debugException(le);
+
+        for (int j=0; j < i; j++)
+        {
+          final LDAPConnection c = connections.get(j).getConnection();
+          c.setDisconnectInfo(DisconnectType.POOL_CREATION_FAILURE, null, le);
+          c.terminate(null);
+        }
+
+        throw le;
+      }
+    }
+
+    healthCheckThread = new LDAPConnectionPoolHealthCheckThread(this);
+    healthCheckThread.start();
+  }
+
+
+
+  /**
+   * Creates a new LDAP connection for use in this pool.
+   *
+   * @return  A new connection created for use in this pool.
+   *
+   * @throws  LDAPException  If a problem occurs while attempting to establish
+   *                         the connection.  If a connection had been created,
+   *                         it will be closed.
+   */
+  @SuppressWarnings("deprecation")
+  private LDAPConnection createConnection()
+          throws LDAPException
+  {
+    final LDAPConnection c;
+    try
+    {
+      c = serverSet.getConnection(healthCheck);
+    }
+    catch (final LDAPException le)
+    {
+      debugException(le);
+      poolStatistics.incrementNumFailedConnectionAttempts();
+      throw le;
+    }
+    c.setConnectionPool(this);
+
+
+    // The connection must be able to have multiple outstanding operations,
+    // which is not possible in synchronous mode.
+    if (c.synchronousMode())
+    {
+      poolStatistics.incrementNumFailedConnectionAttempts();
+      final LDAPException le = new LDAPException(ResultCode.NOT_SUPPORTED,
+           ERR_MULTIPLEXING_POOL_SYNCHRONOUS_MODE.get());
+      c.setDisconnectInfo(DisconnectType.POOL_CREATION_FAILURE, null, le);
+      c.terminate(null);
+      throw le;
+    }
+
+
+    // Auto-reconnect must be disabled for pooled connections, so turn it off
+    // if the associated connection options have it enabled for some reason.
+    LDAPConnectionOptions opts = c.getConnectionOptions();
+    if (opts.autoReconnect())
+    {
+      opts = opts.duplicate();
+      opts.setAutoReconnect(false);
+      c.setConnectionOptions(opts);
+    }
+
+
+    // Invoke pre-authentication post-connect processing.
+    if (postConnectProcessor != null)
+    {
+      try
+      {
+        postConnectProcessor.processPreAuthenticatedConnection(c);
+      }
+      catch (Exception e)
+      {
+        debugException(e);
+
+        try
+        {
+          poolStatistics.incrementNumFailedConnectionAttempts();
+          c.setDisconnectInfo(DisconnectType.POOL_CREATION_FAILURE, null, e);
+          c.terminate(null);
+        }
+        catch (Exception e2)
+        {
+          debugException(e2);
+        }
+
+        if (e instanceof LDAPException)
+        {
+          throw ((LDAPException) e);
+        }
+        else
+        {
+          throw new LDAPException(ResultCode.CONNECT_ERROR,
+               ERR_POOL_POST_CONNECT_ERROR.get(getExceptionMessage(e)), e);
+        }
+      }
+    }
+
+
+    // Authenticate the connection if appropriate.
+    BindResult bindResult = null;
+    try
+    {
+      if (bindRequest != null)
+      {
+        bindResult = c.bind(bindRequest.duplicate());
+      }
+    }
+    catch (final LDAPBindException lbe)
+    {
+      debugException(lbe);
+      bindResult = lbe.getBindResult();
+    }
+    catch (final LDAPException le)
+    {
+      debugException(le);
+      bindResult = new BindResult(le);
+    }
+
+    if (bindResult != null)
+    {
+      try
+      {
+        healthCheck.ensureConnectionValidAfterAuthentication(c, bindResult);
+        if (bindResult.getResultCode() != ResultCode.SUCCESS)
+        {
+          throw new LDAPBindException(bindResult);
+        }
+      }
+      catch (final LDAPException le)
+      {
+        debugException(le);
+
+        try
+        {
+          poolStatistics.incrementNumFailedConnectionAttempts();
+          c.setDisconnectInfo(DisconnectType.BIND_FAILED, null, le);
+          c.terminate(null);
+        }
+        catch (final Exception e)
+        {
+          debugException(e);
+        }
+
+        throw le;
+      }
+    }
+
+
+    // Invoke post-authentication post-connect processing.
+    if (postConnectProcessor != null)
+    {
+      try
+      {
+        postConnectProcessor.processPostAuthenticatedConnection(c);
+      }
+      catch (Exception e)
+      {
+        debugException(e);
+        try
+        {
+          poolStatistics.incrementNumFailedConnectionAttempts();
+          c.setDisconnectInfo(DisconnectType.POOL_CREATION_FAILURE, null, e);
+          c.terminate(null);
+        }
+        catch (Exception e2)
+        {
+          debugException(e2);
+        }
+
+        if (e instanceof LDAPException)
+        {
+          throw ((LDAPException) e);
+        }
+        else
+        {
+          throw new LDAPException(ResultCode.CONNECT_ERROR,
+               ERR_POOL_POST_CONNECT_ERROR.get(getExceptionMessage(e)), e);
+        }
+      }
+    }
+
+
+    // Finish setting up the connection.
+    c.setConnectionPoolName(connectionPoolName);
+    poolStatistics.incrementNumSuccessfulConnectionAttempts();
+
+    return c;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override()
+  public void close()
+  {
+    close(true, 1);
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override()
+  public void close(final boolean unbind, final int numThreads)
+  {
+    closed = true;
+    healthCheckThread.stopRunning();
+    signalWaiters(true);
+
+    final ArrayList<LDAPConnection> connList =
+         new ArrayList<LDAPConnection>(connections.length());
+    for (int i=0; i < connections.length(); i++)
+    {
+      connList.add(connections.get(i).getConnection());
+    }
+
+    if (numThreads > 1)
+    {
+      final ParallelPoolCloser closer =
+           new ParallelPoolCloser(connList, unbind, numThreads);
+      closer.closeConnections();
+    }
+    else
+    {
+      for (final LDAPConnection conn : connList)
+      {
+        poolStatistics.incrementNumConnectionsClosedUnneeded();
+        conn.setDisconnectInfo(DisconnectType.POOL_CLOSED, null, null);
+        if (unbind)
+        {
+          conn.terminate(null);
+        }
+        else
+        {
+          conn.setClosed();
+        }
+      }
+    }
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override()
+  public boolean isClosed()
+  {
+    return closed;
+  }
+
+
+
+  /**
+   * {@inheritDoc}  The connection that is returned will be shared with other
+   * threads using this pool, and it must not be used to perform any operation
+   * that alters its state.  The connection must be released back to the pool
+   * once the operation for which it was obtained has completed.
+   */
+  @Override()
+  public LDAPConnection getConnection()
+         throws LDAPException
+  {
+    return checkOut().getConnection();
+  }
+
+
+
+  /**
+   * Obtains the connection with the fewest outstanding operations and reserves
+   * capacity for an additional operation on it, waiting if necessary for
+   * capacity to become available.
+   *
+   * @return  The connection on which capacity has been reserved.
+   *
+   * @throws  LDAPException  If the pool has been closed, or if no capacity
+   *                         became available within the maximum wait time.
+   */
+  private MultiplexedConnection checkOut()
+          throws LDAPException
+  {
+    final long stopWaitingTime = System.currentTimeMillis() + maxWaitTime;
+    boolean waited = false;
+    int numInvalid = 0;
+    while (true)
+    {
+      if (closed)
+      {
+        poolStatistics.incrementNumFailedCheckouts();
+        throw new LDAPException(ResultCode.CONNECT_ERROR,
+                                ERR_POOL_CLOSED.get());
+      }
+
+      final MultiplexedConnection mc = reserve();
+      if (mc != null)
+      {
+        try
+        {
+          healthCheck.ensureConnectionValidForCheckout(mc.getConnection());
+          if (waited)
+          {
+            poolStatistics.incrementNumSuccessfulCheckoutsAfterWaiting();
+          }
+          else
+          {
+            poolStatistics.incrementNumSuccessfulCheckoutsWithoutWaiting();
+          }
+          return mc;
+        }
+        catch (final LDAPException le)
+        {
+          debugException(le);
+          poolStatistics.incrementNumConnectionsClosedDefunct();
+          operationCompleted(mc);
+          replaceConnection(mc);
+
+          if (++numInvalid > connections.length())
+          {
+            poolStatistics.incrementNumFailedCheckouts();
+            throw le;
+          }
+          continue;
+        }
+      }
+
+      final long remainingWaitTime =
+           stopWaitingTime - System.currentTimeMillis();
+      if (remainingWaitTime <= 0L)
+      {
+        poolStatistics.incrementNumFailedCheckouts();
+        throw new LDAPException(ResultCode.CONNECT_ERROR,
+                                ERR_POOL_NO_CONNECTIONS.get());
+      }
+
+      waitForCapacity(remainingWaitTime);
+      waited = true;
+    }
+  }
+
+
+
+  /**
+   * Selects the connection with the fewest outstanding operations and reserves
+   * capacity for an additional operation on it.  Any connection that is found
+   * to no longer be established will be replaced.
+   *
+   * @return  The connection on which capacity has been reserved, or
+   *          {@code null} if all connections already have the maximum number
+   *          of outstanding operations.
+   */
+  private MultiplexedConnection reserve()
+  {
+    while (true)
+    {
+      MultiplexedConnection best = null;
+      int bestNumOutstanding = maxOperationsPerConnection;
+      for (int i=0; i < connections.length(); i++)
+      {
+        MultiplexedConnection mc = connections.get(i);
+        if (! mc.getConnection().isConnected())
+        {
+          mc = replaceConnection(mc);
+          if (mc == null)
+          {
+            continue;
+          }
+        }
+
+        final int numOutstanding = mc.getNumOutstanding();
+        if (numOutstanding < bestNumOutstanding)
+        {
+          best = mc;
+          bestNumOutstanding = numOutstanding;
+        }
+      }
+
+      if (best == null)
+      {
+        // Before concluding that there is no capacity, reclaim the capacity
+        // used by any asynchronous operations that were abandoned without
+        // this pool being notified.
+        if (purgeAbandonedOperations() > 0)
+        {
+          continue;
+        }
+
+        return null;
+      }
+
+      if (best.tryReserve(maxOperationsPerConnection))
+      {
+        return best;
+      }
+    }
+  }
+
+
+
+  /**
+   * Waits for up to the specified length of time for capacity to become
+   * available on any of the connections in this pool.
+   *
+   * @param  waitTimeMillis  The maximum length of time in milliseconds to
+   *                         wait.
+   *
+   * @throws  LDAPException  If the thread is interrupted while waiting.
+   */
+  private void waitForCapacity(final long waitTimeMillis)
+          throws LDAPException
+  {
+    try
+    {
+      waitLock.lockInterruptibly();
+      try
+      {
+        // The waiter count must be incremented before checking for capacity,
+        // so that any operation that completes after that check will signal.
+        numWaiters.incrementAndGet();
+        try
+        {
+          if ((! closed) && (! hasAvailableCapacity()))
+          {
+            capacityAvailable.await(waitTimeMillis, TimeUnit.MILLISECONDS);
+          }
+        }
+        finally
+        {
+          numWaiters.decrementAndGet();
+        }
+      }
+      finally
+      {
+        waitLock.unlock();
+      }
+    }
+    catch (final InterruptedException ie)
+    {
+      debugException(ie);
+      Thread.currentThread().interrupt();
+      poolStatistics.incrementNumFailedCheckouts();
+      throw new LDAPException(ResultCode.LOCAL_ERROR,
+           ERR_POOL_CHECKOUT_INTERRUPTED.get(), ie);
+    }
+  }
+
+
+
+  /**
+   * Indicates whether any of the connections in this pool can accept an
+   * additional operation, or is no longer established and should be replaced.
+   *
+   * @return  {@code true} if any of the connections in this pool can accept an
+   *          additional operation or should be replaced, or {@code false} if
+   *          not.
+   */
+  private boolean hasAvailableCapacity()
+  {
+    for (int i=0; i < connections.length(); i++)
+    {
+      final MultiplexedConnection mc = connections.get(i);
+      if ((mc.getNumOutstanding() < maxOperationsPerConnection) ||
+          (! mc.getConnection().isConnected()))
+      {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+
+
+  /**
+   * Releases the capacity reserved for an operation on the provided connection
+   * and notifies a waiting thread, if there is one.
+   *
+   * @param  mc  The connection on which the operation was processed.
+   */
+  private void operationCompleted(final MultiplexedConnection mc)
+  {
+    mc.release();
+    signalWaiters(false);
+  }
+
+
+
+  /**
+   * Notifies threads waiting for capacity to become available, if there are
+   * any.
+   *
+   * @param  all  Indicates whether all waiting threads should be notified
+   *              rather than just one.
+   */
+  private void signalWaiters(final boolean all)
+  {
+    if (numWaiters.get() > 0)
+    {
+      waitLock.lock();
+      try
+      {
+        if (all)
+        {
+          capacityAvailable.signalAll();
+        }
+        else
+        {
+          capacityAvailable.signal();
+        }
+      }
+      finally
+      {
+        waitLock.unlock();
+      }
+    }
+  }
+
+
+
+  /**
+   * Terminates the provided connection and attempts to replace it with a
+   * newly-established connection.  If another thread is already replacing the
+   * connection, or if the connection is no longer part of this pool, then no
+   * new connection will be created.
+   *
+   * @param  mc  The connection to be replaced.
+   *
+   * @return  The connection that was created to replace the provided
+   *          connection, or {@code null} if no replacement was created.
+   */
+  private MultiplexedConnection replaceConnection(
+                                     final MultiplexedConnection mc)
+  {
+    final LDAPConnection conn = mc.getConnection();
+    conn.setDisconnectInfo(DisconnectType.POOLED_CONNECTION_DEFUNCT, null,
+                           null);
+    conn.terminate(null);
+
+    if (closed || (! mc.startReplacement()))
+    {
+      return null;
+    }
+
+    try
+    {
+      final int index = indexOf(mc);
+      if (index < 0)
+      {
+        return null;
+      }
+
+      final MultiplexedConnection newMC =
+           new MultiplexedConnection(createConnection());
+      if (connections.compareAndSet(index, mc, newMC))
+      {
+        if (closed)
+        {
+          newMC.getConnection().setDisconnectInfo(DisconnectType.POOL_CLOSED,
+               null, null);
+          newMC.getConnection().terminate(null);
+          return null;
+        }
+
+        signalWaiters(true);
+        return newMC;
+      }
+
+      poolStatistics.incrementNumConnectionsClosedUnneeded();
+      newMC.getConnection().setDisconnectInfo(
+           DisconnectType.POOLED_CONNECTION_UNNEEDED, null, null);
+      newMC.getConnection().terminate(null);
+      return null;
+    }
+    catch (final LDAPException le)
+    {
+      debugException(le);
+      return null;
+    }
+    finally
+    {
+      mc.endReplacement();
+    }
+  }
+
+
+
+  /**
+   * Retrieves the position of the provided connection in this pool.
+   *
+   * @param  mc  The connection for which to retrieve the position.
+   *
+   * @return  The position of the provided connection in this pool, or -1 if it
+   *          is no longer part of this pool.
+   */
+  private int indexOf(final MultiplexedConnection mc)
+  {
+    for (int i=0; i < connections.length(); i++)
+    {
+      if (connections.get(i) == mc)
+      {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+
+
+  /**
+   * Retrieves the pooled connection wrapper for the provided connection.
+   *
+   * @param  connection  The connection for which to retrieve the wrapper.
+   *
+   * @return  The pooled connection wrapper for the provided connection, or
+   *          {@code null} if the connection is no longer part of this pool.
+   */
+  private MultiplexedConnection getMultiplexedConnection(
+                                     final LDAPConnection connection)
+  {
+    for (int i=0; i < connections.length(); i++)
+    {
+      final MultiplexedConnection mc = connections.get(i);
+      if (mc.getConnection() == connection)
+      {
+        return mc;
+      }
+    }
+
+    return null;
+  }
+
+
+
+  /**
+   * Reclaims the capacity used by any asynchronous operations that have been
+   * abandoned or canceled without this pool being notified.
+   *
+   * @return  The number of operations for which capacity was reclaimed.
+   */
+  private int purgeAbandonedOperations()
+  {
+    int numPurged = 0;
+    for (int i=0; i < connections.length(); i++)
+    {
+      final Iterator<MultiplexedOperation> iterator =
+           connections.get(i).getPendingOperations().iterator();
+      while (iterator.hasNext())
+      {
+        final MultiplexedOperation op = iterator.next();
+        final AsyncRequestID requestID = op.getAsyncRequestID();
+        if ((requestID != null) && requestID.isDone() && op.complete())
+        {
+          numPurged++;
+        }
+      }
+    }
+
+    return numPurged;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override()
+  public void releaseConnection(final LDAPConnection connection)
+  {
+    if (connection == null)
+    {
+      return;
+    }
+
+    connection.setConnectionPoolName(connectionPoolName);
+
+    final MultiplexedConnection mc = getMultiplexedConnection(connection);
+    if (mc == null)
+    {
+      // The connection has already been replaced, so there is no capacity to
+      // release.
+      return;
+    }
+
+    try
+    {
+      healthCheck.ensureConnectionValidForRelease(connection);
+    }
+    catch (LDAPException le)
+    {
+      releaseDefunctConnection(connection);
+      return;
+    }
+
+    operationCompleted(mc);
+    poolStatistics.incrementNumReleasedValid();
+  }
+
+
+
+  /**
+   * {@inheritDoc}  Note that any other operations in progress on the provided
+   * connection will fail when it is closed.
+   */
+  @Override()
+  public void releaseDefunctConnection(final LDAPConnection connection)
+  {
+    if (connection == null)
+    {
+      return;
+    }
+
+    connection.setConnectionPoolName(connectionPoolName);
+    poolStatistics.incrementNumConnectionsClosedDefunct();
+
+    final MultiplexedConnection mc = getMultiplexedConnection(connection);
+    if (mc == null)
+    {
+      connection.setDisconnectInfo(DisconnectType.POOLED_CONNECTION_DEFUNCT,
+                                   null, null);
+      connection.terminate(null);
+      return;
+    }
+
+    operationCompleted(mc);
+    replaceConnection(mc);
+  }
+
+
+
+  /**
+   * {@inheritDoc}  Note that any other operations in progress on the provided
+   * connection will fail when it is closed.
+   */
+  @Override()
+  public LDAPConnection replaceDefunctConnection(
+                             final LDAPConnection connection)
+         throws LDAPException
+  {
+    poolStatistics.incrementNumConnectionsClosedDefunct();
+
+    final MultiplexedConnection mc = getMultiplexedConnection(connection);
+    if (mc == null)
+    {
+      connection.setDisconnectInfo(DisconnectType.POOLED_CONNECTION_DEFUNCT,
+                                   null, null);
+      connection.terminate(null);
+    }
+    else
+    {
+      operationCompleted(mc);
+      replaceConnection(mc);
+    }
+
+    if (closed)
+    {
+      throw new LDAPException(ResultCode.CONNECT_ERROR, ERR_POOL_CLOSED.get());
+    }
+
+    return getConnection();
+  }
+
+
+
+  /**
+   * Processes the provided add request as an asynchronous operation using a
+   * connection from this pool.
+   *
+   * @param  addRequest      The add request to be processed.  It must not be
+   *                         {@code null}.
+   * @param  resultListener  The async result listener to use to handle the
+   *                         response for the add operation.  It may be
+   *                         {@code null} if the result is going to be obtained
+   *                         from the returned {@code AsyncRequestID} object via
+   *                         the {@code Future} API.
+   *
+   * @return  An async request ID that may be used to reference the operation.
+   *
+   * @throws  LDAPException  If no connection is available, or if a problem
+   *                         occurs while sending the request.
+   */
+  public AsyncRequestID asyncAdd(final AddRequest addRequest,
+                                 final AsyncResultListener resultListener)
+         throws LDAPException
+  {
+    ensureNotNull(addRequest);
+
+    final MultiplexedConnection mc = checkOut();
+    final MultiplexedOperation op =
+         new MultiplexedOperation(mc, resultListener, null, null);
+    try
+    {
+      return op.setAsyncRequestID(
+           mc.getConnection().asyncAdd(addRequest, op));
+    }
+    catch (final LDAPException le)
+    {
+      handleAsyncException(op, le);
+      throw le;
+    }
+  }
+
+
+
+  /**
+   * Processes the provided compare request as an asynchronous operation using
+   * a connection from this pool.
+   *
+   * @param  compareRequest  The compare request to be processed.  It must not
+   *                         be {@code null}.
+   * @param  resultListener  The async result listener to use to handle the
+   *                         response for the compare operation.  It may be
+   *                         {@code null} if the result is going to be obtained
+   *                         from the returned {@code AsyncRequestID} object via
+   *                         the {@code Future} API.
+   *
+   * @return  An async request ID that may be used to reference the operation.
+   *
+   * @throws  LDAPException  If no connection is available, or if a problem
+   *                         occurs while sending the request.
+   */
+  public AsyncRequestID asyncCompare(final CompareRequest compareRequest,
+                             final AsyncCompareResultListener resultListener)
+         throws LDAPException
+  {
+    ensureNotNull(compareRequest);
+
+    final MultiplexedConnection mc = checkOut();
+    final MultiplexedOperation op =
+         new MultiplexedOperation(mc, null, resultListener, null);
+    try
+    {
+      return op.setAsyncRequestID(
+           mc.getConnection().asyncCompare(compareRequest, op));
+    }
+    catch (final LDAPException le)
+    {
+      handleAsyncException(op, le);
+      throw le;
+    }
+  }
+
+
+
+  /**
+   * Processes the provided delete request as an asynchronous operation using a
+   * connection from this pool.
+   *
+   * @param  deleteRequest   The delete request to be processed.  It must not be
+   *                         {@code null}.
+   * @param  resultListener  The async result listener to use to handle the
+   *                         response for the delete operation.  It may be
+   *                         {@code null} if the result is going to be obtained
+   *                         from the returned {@code AsyncRequestID} object via
+   *                         the {@code Future} API.
+   *
+   * @return  An async request ID that may be used to reference the operation.
+   *
+   * @throws  LDAPException  If no connection is available, or if a problem
+   *                         occurs while sending the request.
+   */
+  public AsyncRequestID asyncDelete(final DeleteRequest deleteRequest,
+                                    final AsyncResultListener resultListener)
+         throws LDAPException
+  {
+    ensureNotNull(deleteRequest);
+
+    final MultiplexedConnection mc = checkOut();
+    final MultiplexedOperation op =
+         new MultiplexedOperation(mc, resultListener, null, null);
+    try
+    {
+      return op.setAsyncRequestID(
+           mc.getConnection().asyncDelete(deleteRequest, op));
+    }
+    catch (final LDAPException le)
+    {
+      handleAsyncException(op, le);
+      throw le;
+    }
+  }
+
+
+
+  /**
+   * Processes the provided modify request as an asynchronous operation using a
+   * connection from this pool.
+   *
+   * @param  modifyRequest   The modify request to be processed.  It must not be
+   *                         {@code null}.
+   * @param  resultListener  The async result listener to use to handle the
+   *                         response for the modify operation.  It may be
+   *                         {@code null} if the result is going to be obtained
+   *                         from the returned {@code AsyncRequestID} object via
+   *                         the {@code Future} API.
+   *
+   * @return  An async request ID that may be used to reference the operation.
+   *
+   * @throws  LDAPException  If no connection is available, or if a problem
+   *                         occurs while sending the request.
+   */
+  public AsyncRequestID asyncModify(final ModifyRequest modifyRequest,
+                                    final AsyncResultListener resultListener)
+         throws LDAPException
+  {
+    ensureNotNull(modifyRequest);
+
+    final MultiplexedConnection mc = checkOut();
+    final MultiplexedOperation op =
+         new MultiplexedOperation(mc, resultListener, null, null);
+    try
+    {
+      return op.setAsyncRequestID(
+           mc.getConnection().asyncModify(modifyRequest, op));
+    }
+    catch (final LDAPException le)
+    {
+      handleAsyncException(op, le);
+      throw le;
+    }
+  }
+
+
+
+  /**
+   * Processes the provided modify DN request as an asynchronous operation using
+   * a connection from this pool.
+   *
+   * @param  modifyDNRequest  The modify DN request to be processed.  It must
+   *                          not be {@code null}.
+   * @param  resultListener   The async result listener to use to handle the
+   *                          response for the modify DN operation.  It may be
+   *                          {@code null} if the result is going to be
+   *                          obtained from the returned {@code AsyncRequestID}
+   *                          object via the {@code Future} API.
+   *
+   * @return  An async request ID that may be used to reference the operation.
+   *
+   * @throws  LDAPException  If no connection is available, or if a problem
+   *                         occurs while sending the request.
+   */
+  public AsyncRequestID asyncModifyDN(final ModifyDNRequest modifyDNRequest,
+                                      final AsyncResultListener resultListener)
+         throws LDAPException
+  {
+    ensureNotNull(modifyDNRequest);
+
+    final MultiplexedConnection mc = checkOut();
+    final MultiplexedOperation op =
+         new MultiplexedOperation(mc, resultListener, null, null);
+    try
+    {
+      return op.setAsyncRequestID(
+           mc.getConnection().asyncModifyDN(modifyDNRequest, op));
+    }
+    catch (final LDAPException le)
+    {
+      handleAsyncException(op, le);
+      throw le;
+    }
+  }
+
+
+
+  /**
+   * Processes the provided search request as an asynchronous operation using a
+   * connection from this pool.
+   *
+   * @param  searchRequest  The search request to be processed.  It must not be
+   *                        {@code null}, and it must be configured with a
+   *                        search result listener that is also an
+   *                        {@code AsyncSearchResultListener}.
+   *
+   * @return  An async request ID that may be used to reference the operation.
+   *
+   * @throws  LDAPException  If the provided search request does not have a
+   *                         search result listener that is an
+   *                         {@code AsyncSearchResultListener}, if no
+   *                         connection is available, or if a problem occurs
+   *                         while sending the request.
+   */
+  public AsyncRequestID asyncSearch(final SearchRequest searchRequest)
+         throws LDAPException
+  {
+    ensureNotNull(searchRequest);
+
+    final SearchResultListener searchListener =
+         searchRequest.getSearchResultListener();
+    if (searchListener == null)
+    {
+      final LDAPException le = new LDAPException(ResultCode.PARAM_ERROR,
+           ERR_ASYNC_SEARCH_NO_LISTENER.get());
+      debugCodingError(le);
+      throw le;
+    }
+    else if (! (searchListener instanceof AsyncSearchResultListener))
+    {
+      final LDAPException le = new LDAPException(ResultCode.PARAM_ERROR,
+           ERR_ASYNC_SEARCH_INVALID_LISTENER.get());
+      debugCodingError(le);
+      throw le;
+    }
+
+    final MultiplexedConnection mc = checkOut();
+    final MultiplexedOperation op = new MultiplexedOperation(mc, null, null,
+         (AsyncSearchResultListener) searchListener);
+
+    // The search request must be re-created so that the pool will be notified
+    // when the search completes.
+    final SearchRequest r = new SearchRequest(op, searchRequest.getControls(),
+         searchRequest.getBaseDN(), searchRequest.getScope(),
+         searchRequest.getDereferencePolicy(), searchRequest.getSizeLimit(),
+         searchRequest.getTimeLimitSeconds(), searchRequest.typesOnly(),
+         searchRequest.getFilter(), searchRequest.getAttributes());
+    if (searchRequest.followReferralsInternal() != null)
+    {
+      r.setFollowReferrals(searchRequest.followReferralsInternal());
+    }
+    r.setResponseTimeoutMillis(searchRequest.getResponseTimeoutMillis(null));
+    r.setIntermediateResponseListener(
+         searchRequest.getIntermediateResponseListener());
+
+    try
+    {
+      return op.setAsyncRequestID(mc.getConnection().asyncSearch(r));
+    }
+    catch (final LDAPException le)
+    {
+      handleAsyncException(op, le);
+      throw le;
+    }
+  }
+
+
+
+  /**
+   * Handles an exception encountered while sending an asynchronous request.
+   * The capacity reserved for the operation will be released, and the
+   * connection will be replaced if it no longer appears to be valid.
+   *
+   * @param  op  The operation for which the exception was encountered.
+   * @param  le  The exception that was encountered.
+   */
+  private void handleAsyncException(final MultiplexedOperation op,
+                                    final LDAPException le)
+  {
+    debugException(le);
+    op.complete();
+
+    final MultiplexedConnection mc = op.getMultiplexedConnection();
+    try
+    {
+      healthCheck.ensureConnectionValidAfterException(mc.getConnection(), le);
+    }
+    catch (final LDAPException le2)
+    {
+      debugException(le2);
+      poolStatistics.incrementNumConnectionsClosedDefunct();
+      replaceConnection(mc);
+    }
+  }
+
+
+
+  /**
+   * Abandons an asynchronous operation that was started using this pool, and
+   * releases the capacity reserved for it.  No result will be provided to the
+   * listener for the operation.
+   *
+   * @param  requestID  The async request ID for the operation to abandon.  It
+   *                    must not be {@code null}.
+   *
+   * @throws  LDAPException  If a problem occurs while sending the abandon
+   *                         request to the server.
+   */
+  public void abandon(final AsyncRequestID requestID)
+         throws LDAPException
+  {
+    ensureNotNull(requestID);
+
+    for (int i=0; i < connections.length(); i++)
+    {
+      final MultiplexedConnection mc = connections.get(i);
+      for (final MultiplexedOperation op : mc.getPendingOperations())
+      {
+        if (op.getAsyncRequestID() == requestID)
+        {
+          try
+          {
+            mc.getConnection().abandon(requestID);
+          }
+          finally
+          {
+            op.complete();
+          }
+          return;
+        }
+      }
+    }
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override()
+  public Set<OperationType> getOperationTypesToRetryDueToInvalidConnections()
+  {
+    return retryOperationTypes.get();
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override()
+  public void setRetryFailedOperationsDueToInvalidConnections(
+                   final Set<OperationType> operationTypes)
+  {
+    if ((operationTypes == null) || operationTypes.isEmpty())
+    {
+      retryOperationTypes.set(
+           Collections.unmodifiableSet(EnumSet.noneOf(OperationType.class)));
+    }
+    else
+    {
+      final EnumSet<OperationType> s = EnumSet.noneOf(OperationType.class);
+      s.addAll(operationTypes);
+      retryOperationTypes.set(Collections.unmodifiableSet(s));
+    }
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override()
+  public String getConnectionPoolName()
+  {
+    return connectionPoolName;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override()
+  public void setConnectionPoolName(final String connectionPoolName)
+  {
+    this.connectionPoolName = connectionPoolName;
+  }
+
+
+
+  /**
+   * Retrieves the maximum number of operations that may be outstanding on any
+   * single connection in this pool at the same time.
+   *
+   * @return  The maximum number of operations that may be outstanding on any
+   *          single connection in this pool at the same time.
+   */
+  public int getMaxOperationsPerConnection()
+  {
+    return maxOperationsPerConnection;
+  }
+
+
+
+  /**
+   * Retrieves the total number of operations currently outstanding on all
+   * connections in this pool, including connections that have been checked
+   * out but not yet released.
+   *
+   * @return  The total number of operations currently outstanding on all
+   *          connections in this pool.
+   */
+  public int getNumOutstandingOperations()
+  {
+    int numOutstanding = 0;
+    for (int i=0; i < connections.length(); i++)
+    {
+      numOutstanding += connections.get(i).getNumOutstanding();
+    }
+
+    return numOutstanding;
+  }
+
+
+
+  /**
+   * Retrieves the maximum length of time in milliseconds to wait for capacity
+   * to become available when trying to obtain a connection from the pool.
+   *
+   * @return  The maximum length of time in milliseconds to wait for capacity
+   *          to become available when trying to obtain a connection from the
+   *          pool, or zero to indicate that the pool should not block at all
+   *          if all connections already have the maximum number of outstanding
+   *          operations.
+   */
+  public long getMaxWaitTimeMillis()
+  {
+    return maxWaitTime;
+  }
+
+
+
+  /**
+   * Specifies the maximum length of time in milliseconds to wait for capacity
+   * to become available when trying to obtain a connection from the pool.
+   *
+   * @param  maxWaitTime  The maximum length of time in milliseconds to wait for
+   *                      capacity to become available when trying to obtain a
+   *                      connection from the pool.  A value of zero should be
+   *                      used to indicate that the pool should not block at all
+   *                      if all connections already have the maximum number of
+   *                      outstanding operations.
+   */
+  public void setMaxWaitTimeMillis(final long maxWaitTime)
+  {
+    if (maxWaitTime > 0L)
+    {
+      this.maxWaitTime = maxWaitTime;
+    }
+    else
+    {
+      this.maxWaitTime = 0L;
+    }
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override()
+  public LDAPConnectionPoolHealthCheck getHealthCheck()
+  {
+    return healthCheck;
+  }
+
+
+
+  /**
+   * Sets the health check implementation for this connection pool.
+   *
+   * @param  healthCheck  The health check implementation for this connection
+   *                      pool.  It must not be {@code null}.
+   */
+  public void setHealthCheck(final LDAPConnectionPoolHealthCheck healthCheck)
+  {
+    ensureNotNull(healthCheck);
+    this.healthCheck = healthCheck;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override()
+  public long getHealthCheckIntervalMillis()
+  {
+    return healthCheckInterval;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override()
+  public void setHealthCheckIntervalMillis(final long healthCheckInterval)
+  {
+    ensureTrue(healthCheckInterval > 0L,
+         "LDAPConnectionPool.healthCheckInterval must be greater than 0.");
+    this.healthCheckInterval = healthCheckInterval;
+    healthCheckThread.wakeUp();
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override()
+  protected void doHealthCheck()
+  {
+    purgeAbandonedOperations();
+
+    for (int i=0; i < connections.length(); i++)
+    {
+      if (closed)
+      {
+        return;
+      }
+
+      final MultiplexedConnection mc = connections.get(i);
+      try
+      {
+        healthCheck.ensureConnectionValidForContinuedUse(mc.getConnection());
+      }
+      catch (final Exception e)
+      {
+        debugException(e);
+        poolStatistics.incrementNumConnectionsClosedDefunct();
+        replaceConnection(mc);
+      }
+    }
+  }
+
+
+
+  /**
+   * {@inheritDoc}  For this pool, it is the number of connections that can
+   * accept at least one more operation.
+   */
+  @Override()
+  public int getCurrentAvailableConnections()
+  {
+    int numAvailable = 0;
+    for (int i=0; i < connections.length(); i++)
+    {
+      final MultiplexedConnection mc = connections.get(i);
+      if (mc.getConnection().isConnected() &&
+          (mc.getNumOutstanding() < maxOperationsPerConnection))
+      {
+        numAvailable++;
+      }
+    }
+
+    return numAvailable;
+  }
+
+
+
+  /**
+   * {@inheritDoc}  For this pool, it is the number of connections that it
+   * maintains.
+   */
+  @Override()
+  public int getMaximumAvailableConnections()
+  {
+    return connections.length();
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override()
+  public LDAPConnectionPoolStatistics getConnectionPoolStatistics()
+  {
+    return poolStatistics;
+  }
+
+
+
+  /**
+   * Closes this connection pool in the event that it becomes unreferenced.
+   *
+   * @throws  Throwable  If an unexpected problem occurs.
+   */
+  @Override()
+  protected void finalize()
+            throws Throwable
+  {
+    super.finalize();
+
+    close();
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override()
+  public void toString(final StringBuilder buffer)
+  {
+    buffer.append("LDAPMultiplexingConnectionPool(");
+
+    final String name = connectionPoolName;
+    if (name != null)
+    {
+      buffer.append("name='");
+      buffer.append(name);
+      buffer.append("', ");
+    }
+
+    buffer.append("serverSet=");
+    serverSet.toString(buffer);
+    buffer.append(", numConnections=");
+    buffer.append(connections.length());
+    buffer.append(", maxOperationsPerConnection=");
+    buffer.append(maxOperationsPerConnection);
+    buffer.append(", numOutstandingOperations=");
+    buffer.append(getNumOutstandingOperations());
+    buffer.append(')');
+  }
+
+
+
+  /**
+   * This class holds a connection in the pool along with information about the
+   * operations outstanding on it.
+   */
+  private static final class MultiplexedConnection
+  {
+    // Indicates whether a thread is currently replacing this connection.
+    private final AtomicBoolean replacing;
+
+    // The number of operations currently outstanding on this connection.
+    private final AtomicInteger numOutstanding;
+
+    // The asynchronous operations currently outstanding on this connection.
+    private final ConcurrentHashMap<MultiplexedOperation,Boolean>
+         pendingOperations;
+
+    // The connection.
+    private final LDAPConnection connection;
+
+
+
+    /**
+     * Creates a new multiplexed connection wrapper for the provided
+     * connection.
+     *
+     * @param  connection  The connection to wrap.
+     */
+    private MultiplexedConnection(final LDAPConnection connection)
+    {
+      this.connection = connection;
+
+      replacing         = new AtomicBoolean(false);
+      numOutstanding    = new AtomicInteger(0);
+      pendingOperations =
+           new ConcurrentHashMap<MultiplexedOperation,Boolean>();
+    }
+
+
+
+    /**
+     * Retrieves the wrapped connection.
+     *
+     * @return  The wrapped connection.
+     */
+    private LDAPConnection getConnection()
+    {
+      return connection;
+    }
+
+
+
+    /**
+     * Retrieves the number of operations currently outstanding on this
+     * connection.
+     *
+     * @return  The number of operations currently outstanding on this
+     *          connection.
+     */
+    private int getNumOutstanding()
+    {
+      return numOutstanding.get();
+    }
+
+
+
+    /**
+     * Attempts to reserve capacity for an additional operation on this
+     * connection.
+     *
+     * @param  maxOutstanding  The maximum number of operations that may be
+     *                         outstanding on this connection.
+     *
+     * @return  {@code true} if capacity was reserved, or {@code false} if the
+     *          connection already has the maximum number of outstanding
+     *          operations.
+     */
+    private boolean tryReserve(final int maxOutstanding)
+    {
+      while (true)
+      {
+        final int current = numOutstanding.get();
+        if (current >= maxOutstanding)
+        {
+          return false;
+        }
+
+        if (numOutstanding.compareAndSet(current, current+1))
+        {
+          return true;
+        }
+      }
+    }
+
+
+
+    /**
+     * Releases the capacity reserved for an operation on this connection.
+     */
+    private void release()
+    {
+      numOutstanding.decrementAndGet();
+    }
+
+
+
+    /**
+     * Retrieves the map whose keys are the asynchronous operations currently
+     * outstanding on this connection.
+     *
+     * @return  The map whose keys are the asynchronous operations currently
+     *          outstanding on this connection.
+     */
+    private ConcurrentHashMap<MultiplexedOperation,Boolean>
+                 getPendingOperationMap()
+    {
+      return pendingOperations;
+    }
+
+
+
+    /**
+     * Retrieves the asynchronous operations currently outstanding on this
+     * connection.
+     *
+     * @return  The asynchronous operations currently outstanding on this
+     *          connection.
+     */
+    private Set<MultiplexedOperation> getPendingOperations()
+    {
+      return pendingOperations.keySet();
+    }
+
+
+
+    /**
+     * Indicates that the current thread is about to replace this connection.
+     *
+     * @return  {@code true} if the current thread should replace this
+     *          connection, or {@code false} if another thread is already
+     *          doing so.
+     */
+    private boolean startReplacement()
+    {
+      return replacing.compareAndSet(false, true);
+    }
+
+
+
+    /**
+     * Indicates that the current thread is no longer replacing this
+     * connection.
+     */
+    private void endReplacement()
+    {
+      replacing.set(false);
+    }
+  }
+
+
+
+  /**
+   * This class provides the listener used for asynchronous operations
+   * processed through the pool.  It releases the capacity reserved for the
+   * operation when its result is received, and then forwards the result to
+   * the listener provided by the caller.
+   */
+  private final class MultiplexedOperation
+          implements AsyncResultListener, AsyncCompareResultListener,
+                     AsyncSearchResultListener
+  {
+    /**
+     * The serial version UID for this serializable class.
+     */
+    private static final long serialVersionUID = -6014582286337318393L;
+
+
+
+    // Indicates whether the operation has completed.
+    private final AtomicBoolean completed;
+
+    // The listener to notify of the result of a compare operation.
+    private final AsyncCompareResultListener compareResultListener;
+
+    // The listener to notify of the result of an add, delete, modify, or
+    // modify DN operation.
+    private final AsyncResultListener resultListener;
+
+    // The listener to notify of the results of a search operation.
+    private final AsyncSearchResultListener searchResultListener;
+
+    // The async request ID for the operation.
+    private volatile AsyncRequestID asyncRequestID;
+
+    // The connection on which the operation is being processed.
+    private final MultiplexedConnection connection;
+
+
+
+    /**
+     * Creates a new multiplexed operation that has reserved capacity on the
+     * provided connection.  Only the listener appropriate for the type of
+     * operation needs to be provided.
+     *
+     * @param  connection             The connection on which the operation
+     *                                will be processed.
+     * @param  resultListener         The listener to notify of the result of
+     *                                an add, delete, modify, or modify DN
+     *                                operation.  It may be {@code null} if
+     *                                the result is not needed.
+     * @param  compareResultListener  The listener to notify of the result of a
+     *                                compare operation.  It may be
+     *                                {@code null} if the result is not needed.
+     * @param  searchResultListener   The listener to notify of the results of
+     *                                a search operation.
+     */
+    private MultiplexedOperation(final MultiplexedConnection connection,
+                 final AsyncResultListener resultListener,
+                 final AsyncCompareResultListener compareResultListener,
+                 final AsyncSearchResultListener searchResultListener)
+    {
+      this.connection           = connection;
+      this.searchResultListener = searchResultListener;
+
+      if (resultListener == null)
+      {
+        this.resultListener = DiscardAsyncListener.getInstance();
+      }
+      else
+      {
+        this.resultListener = resultListener;
+      }
+
+      if (compareResultListener == null)
+      {
+        this.compareResultListener = DiscardAsyncListener.getInstance();
+      }
+      else
+      {
+        this.compareResultListener = compareResultListener;
+      }
+
+      completed      = new AtomicBoolean(false);
+      asyncRequestID = null;
+
+      connection.getPendingOperationMap().put(this, Boolean.TRUE);
+    }
+
+
+
+    /**
+     * Retrieves the connection on which the operation is being processed.
+     *
+     * @return  The connection on which the operation is being processed.
+     */
+    private MultiplexedConnection getMultiplexedConnection()
+    {
+      return connection;
+    }
+
+
+
+    /**
+     * Retrieves the async request ID for the operation.
+     *
+     * @return  The async request ID for the operation, or {@code null} if the
+     *          request has not yet been sent.
+     */
+    private AsyncRequestID getAsyncRequestID()
+    {
+      return asyncRequestID;
+    }
+
+
+
+    /**
+     * Sets the async request ID for the operation once the request has been
+     * sent.
+     *
+     * @param  asyncRequestID  The async request ID for the operation.
+     *
+     * @return  The provided async request ID.
+     */
+    private AsyncRequestID setAsyncRequestID(
+                                final AsyncRequestID asyncRequestID)
+    {
+      this.asyncRequestID = asyncRequestID;
+      return asyncRequestID;
+    }
+
+
+
+    /**
+     * Marks the operation as complete and releases the capacity reserved for
+     * it, if that has not already been done.
+     *
+     * @return  {@code true} if the operation was marked complete by this
+     *          method, or {@code false} if it had already been marked
+     *          complete.
+     */
+    private boolean complete()
+    {
+      if (completed.compareAndSet(false, true))
+      {
+        connection.getPendingOperationMap().remove(this);
+        operationCompleted(connection);
+        return true;
+      }
+
+      return false;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void ldapResultReceived(final AsyncRequestID requestID,
+                                   final LDAPResult ldapResult)
+    {
+      complete();
+      resultListener.ldapResultReceived(requestID, ldapResult);
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void compareResultReceived(final AsyncRequestID requestID,
+                                      final CompareResult compareResult)
+    {
+      complete();
+      compareResultListener.compareResultReceived(requestID, compareResult);
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void searchEntryReturned(final SearchResultEntry searchEntry)
+    {
+      searchResultListener.searchEntryReturned(searchEntry);
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void searchReferenceReturned(
+                     final SearchResultReference searchReference)
+    {
+      searchResultListener.searchReferenceReturned(searchReference);
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void searchResultReceived(final AsyncRequestID requestID,
+                                     final SearchResult searchResult)
+    {
+      complete();
+      searchResultListener.searchResultReceived(requestID, searchResult);
+    }
+  }
+}
@@ -255,6 +255,8 @@ public final class SearchResultEntry
    *                          matching rule to use for each attribute.  It may
    *                          be {@code null} if the default matching rule
    *                          should always be used.
+   * @param  lazyDecoding     Indicates whether to defer decoding the values of
+   *                          each attribute until they are first accessed.
    *
    * @return  The decoded search result entry object.
    *
@@ -263,7 +265,8 @@ public final class SearchResultEntry
    */
   static SearchResultEntry readSearchEntryFrom(final int messageID,
               final ASN1StreamReaderSequence messageSequence,
-              final ASN1StreamReader reader, final Schema schema)
+              final ASN1StreamReader reader, final Schema schema,
+              final boolean lazyDecoding)
          throws LDAPException
   {
     try
@@ -275,7 +278,7 @@ public final class SearchResultEntry
       final ASN1StreamReaderSequence attrSequence = reader.beginSequence();
       while (attrSequence.hasMoreElements())
       {
-        attrList.add(Attribute.readFrom(reader, schema));
+        attrList.add(Attribute.readFrom(reader, schema, lazyDecoding));
       }
 
       Control[] controls = NO_CONTROLS;
@@ -0,0 +1,595 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.util;
+
+
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+
+/**
+ * This class provides a pool of byte arrays that may be shared by multiple
+ * components to reduce the number of arrays that need to be allocated and
+ * garbage collected when processing a sustained load.  Arrays are held in a
+ * set of size classes, each of which holds arrays whose length is a power of
+ * two between the minimum and maximum array sizes for the pool, and a request
+ * for an array of a given size will be satisfied with an array from the
+ * smallest size class that is large enough to hold it.  Requests for arrays
+ * larger than the maximum array size will always be satisfied with a newly
+ * allocated array of exactly the requested size, and those arrays will not be
+ * retained when released.
+ * <BR><BR>
+ * Each size class will retain at most a configurable number of bytes, so that
+ * the total amount of memory held by the pool is bounded.  Arrays that are
+ * released when their size class is full will simply be discarded.
+ * <BR><BR>
+ * Arrays obtained from the pool may contain data left over from a previous
+ * use, and arrays that are released may be provided to another caller, so an
+ * array must not be used in any way after it has been released.  The pool
+ * keeps a count of the arrays in each size class that it has provided and not
+ * yet had released, and it will only retain a released array if its length
+ * exactly matches a size class whose count is greater than zero.  A release
+ * that would cause that count to become negative (for example, because an
+ * array was released more than once, or because an array of a pooled size was
+ * not obtained from the pool) will be counted as an invalid release and the
+ * array will not be retained.  The pool does not keep track of individual
+ * arrays, so that acquiring and releasing an array requires no allocation or
+ * locking, and as a result it cannot detect an invalid release while other
+ * arrays of the same size class are outstanding.  Arrays that are never
+ * released are not retained by the pool, but they remain included in the count
+ * of outstanding arrays so that components that fail to release their arrays
+ * can be detected.
+ */
+@Mutable()
+@ThreadSafety(level=ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+public final class ByteArrayPool
+{
+  /**
+   * The default minimum array size (1024 bytes) for a pool.
+   */
+  public static final int DEFAULT_MIN_ARRAY_SIZE = 1024;
+
+
+
+  /**
+   * The default maximum array size (1048576 bytes) for a pool.
+   */
+  public static final int DEFAULT_MAX_ARRAY_SIZE = 1048576;
+
+
+
+  /**
+   * The default maximum number of bytes (4194304) that will be retained in
+   * each size class.
+   */
+  public static final int DEFAULT_MAX_RETAINED_BYTES_PER_SIZE_CLASS = 4194304;
+
+
+
+  /**
+   * The largest power of two that may be used as an array size.
+   */
+  private static final int LARGEST_ARRAY_SIZE = 1 << 30;
+
+
+
+  // The number of pooled arrays currently held in each size class.
+  private final AtomicInteger[] sizeClassCounts;
+
+  // The number of arrays in each size class that have been provided by the
+  // pool and not yet released.
+  private final AtomicLong[] outstandingCounts;
+
+  // The number of requests satisfied with a pooled array.
+  private final AtomicLong numHits;
+
+  // The number of requests that required a new array to be allocated.
+  private final AtomicLong numMisses;
+
+  // The number of released arrays that were retained for reuse.
+  private final AtomicLong numReleased;
+
+  // The number of released arrays that were not retained, either because they
+  // did not correspond to a size class or because that size class was full.
+  private final AtomicLong numDiscarded;
+
+  // The number of attempts to release an array of a pooled size when no
+  // arrays of that size were outstanding.
+  private final AtomicLong numInvalidReleases;
+
+  // The arrays held in each size class.
+  private final ConcurrentLinkedQueue<byte[]>[] sizeClasses;
+
+  // The maximum number of arrays that will be retained in each size class.
+  private final int[] maxArraysPerSizeClass;
+
+  // The base-two logarithm of the minimum array size.
+  private final int minArraySizeShift;
+
+  // The maximum array size that will be pooled.
+  private final int maxArraySize;
+
+  // The minimum array size that will be pooled.
+  private final int minArraySize;
+
+
+
+  /**
+   * Creates a new byte array pool with the default settings.
+   */
+  public ByteArrayPool()
+  {
+    this(DEFAULT_MIN_ARRAY_SIZE, DEFAULT_MAX_ARRAY_SIZE,
+         DEFAULT_MAX_RETAINED_BYTES_PER_SIZE_CLASS);
+  }
+
+
+
+  /**
+   * Creates a new byte array pool with the provided settings.
+   *
+   * @param  minArraySize                The minimum size in bytes for arrays
+   *                                     held in the pool.  It must be greater
+   *                                     than zero, and it will be rounded up
+   *                                     to the nearest power of two.
+   * @param  maxArraySize                The maximum size in bytes for arrays
+   *                                     held in the pool.  It must be greater
+   *                                     than or equal to the minimum array
+   *                                     size, and it will be rounded up to the
+   *                                     nearest power of two.
+   * @param  maxRetainedBytesPerSizeClass  The maximum number of bytes that
+   *                                     will be retained in each size class.
+   *                                     Each size class will be allowed to
+   *                                     retain at least one array, regardless
+   *                                     of this value.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public ByteArrayPool(final int minArraySize, final int maxArraySize,
+                       final int maxRetainedBytesPerSizeClass)
+  {
+    Validator.ensureTrue(minArraySize > 0);
+    Validator.ensureTrue(maxArraySize >= minArraySize);
+    Validator.ensureTrue(maxArraySize <= LARGEST_ARRAY_SIZE);
+
+    this.minArraySize = roundUpToPowerOfTwo(minArraySize);
+    this.maxArraySize = roundUpToPowerOfTwo(maxArraySize);
+    minArraySizeShift = Integer.numberOfTrailingZeros(this.minArraySize);
+
+    final int numSizeClasses =
+         Integer.numberOfTrailingZeros(this.maxArraySize) -
+              minArraySizeShift + 1;
+    sizeClasses = new ConcurrentLinkedQueue[numSizeClasses];
+    outstandingCounts = new AtomicLong[numSizeClasses];
+    sizeClassCounts = new AtomicInteger[numSizeClasses];
+    maxArraysPerSizeClass = new int[numSizeClasses];
+    for (int i=0; i < numSizeClasses; i++)
+    {
+      sizeClasses[i] = new ConcurrentLinkedQueue<byte[]>();
+      outstandingCounts[i] = new AtomicLong(0L);
+      sizeClassCounts[i] = new AtomicInteger(0);
+      maxArraysPerSizeClass[i] = Math.max(1,
+           (maxRetainedBytesPerSizeClass >> (minArraySizeShift + i)));
+    }
+
+    numHits        = new AtomicLong(0L);
+    numMisses      = new AtomicLong(0L);
+    numReleased    = new AtomicLong(0L);
+    numDiscarded   = new AtomicLong(0L);
+
+    numInvalidReleases = new AtomicLong(0L);
+  }
+
+
+
+  /**
+   * Retrieves the minimum size in bytes for arrays held in this pool.
+   *
+   * @return  The minimum size in bytes for arrays held in this pool.
+   */
+  public int getMinArraySize()
+  {
+    return minArraySize;
+  }
+
+
+
+  /**
+   * Retrieves the maximum size in bytes for arrays held in this pool.
+   *
+   * @return  The maximum size in bytes for arrays held in this pool.
+   */
+  public int getMaxArraySize()
+  {
+    return maxArraySize;
+  }
+
+
+
+  /**
+   * Retrieves an array with at least the specified number of bytes.  If the
+   * size does not exceed the maximum array size for this pool, then the length
+   * of the array will be the smallest size class that can hold the requested
+   * number of bytes, and it should be released back to this pool when it is no
+   * longer needed.
+   *
+   * @param  minimumSize  The minimum number of bytes that the array must be
+   *                      able to hold.  It must be greater than or equal to
+   *                      zero.
+   *
+   * @return  An array with at least the specified number of bytes.
+   */
+  public byte[] acquire(final int minimumSize)
+  {
+    if (minimumSize > maxArraySize)
+    {
+      numMisses.incrementAndGet();
+      return new byte[minimumSize];
+    }
+
+    final int sizeClass = getSizeClass(minimumSize);
+
+    byte[] array = sizeClasses[sizeClass].poll();
+    if (array == null)
+    {
+      numMisses.incrementAndGet();
+      array = new byte[minArraySize << sizeClass];
+    }
+    else
+    {
+      sizeClassCounts[sizeClass].decrementAndGet();
+      numHits.incrementAndGet();
+    }
+
+    outstandingCounts[sizeClass].incrementAndGet();
+    return array;
+  }
+
+
+
+  /**
+   * Releases the provided array so that it may be reused.  The array must not
+   * be used in any way after it has been released.  If the length of the array
+   * does not match one of the size classes for this pool, or if that size class
+   * is already full, then the array will be discarded.  If no arrays of that
+   * size are outstanding, then the array could not have been obtained from this
+   * pool (or it has already been released), so it will be counted as an
+   * invalid release and will not be retained.
+   *
+   * @param  array  The array to release.  It may be {@code null}, in which case
+   *                no action will be taken.
+   */
+  public void release(final byte[] array)
+  {
+    if (array == null)
+    {
+      return;
+    }
+
+    final int length = array.length;
+    if ((length < minArraySize) || (length > maxArraySize) ||
+        ((length & (length - 1)) != 0))
+    {
+      numDiscarded.incrementAndGet();
+      return;
+    }
+
+    final int sizeClass =
+         Integer.numberOfTrailingZeros(length) - minArraySizeShift;
+
+    final AtomicLong outstanding = outstandingCounts[sizeClass];
+    while (true)
+    {
+      final long numOutstanding = outstanding.get();
+      if (numOutstanding <= 0L)
+      {
+        numInvalidReleases.incrementAndGet();
+        return;
+      }
+
+      if (outstanding.compareAndSet(numOutstanding, (numOutstanding - 1L)))
+      {
+        break;
+      }
+    }
+
+    final AtomicInteger count = sizeClassCounts[sizeClass];
+    if (count.incrementAndGet() > maxArraysPerSizeClass[sizeClass])
+    {
+      count.decrementAndGet();
+      numDiscarded.incrementAndGet();
+      return;
+    }
+
+    sizeClasses[sizeClass].offer(array);
+    numReleased.incrementAndGet();
+  }
+
+
+
+  /**
+   * Retrieves the number of requests that were satisfied with an array that
+   * had previously been released to this pool.
+   *
+   * @return  The number of requests that were satisfied with a pooled array.
+   */
+  public long getNumHits()
+  {
+    return numHits.get();
+  }
+
+
+
+  /**
+   * Retrieves the number of requests that required a new array to be
+   * allocated, either because there was no pooled array of the appropriate
+   * size available or because the requested size exceeded the maximum array
+   * size for this pool.
+   *
+   * @return  The number of requests that required a new array to be
+   *          allocated.
+   */
+  public long getNumMisses()
+  {
+    return numMisses.get();
+  }
+
+
+
+  /**
+   * Retrieves the percentage of requests that were satisfied with a pooled
+   * array.
+   *
+   * @return  The percentage of requests that were satisfied with a pooled
+   *          array, or {@code Double.NaN} if no arrays have been requested.
+   */
+  public double getHitPercent()
+  {
+    final long hits = numHits.get();
+    final long total = hits + numMisses.get();
+    if (total == 0L)
+    {
+      return Double.NaN;
+    }
+
+    return (100.0d * hits) / total;
+  }
+
+
+
+  /**
+   * Retrieves the number of arrays obtained from this pool that have not yet
+   * been released.  Arrays larger than the maximum array size are not
+   * included.  A value that continues to grow may indicate that some component
+   * is failing to release the arrays that it obtains.
+   *
+   * @return  The number of arrays obtained from this pool that have not yet
+   *          been released.
+   */
+  public long getNumOutstanding()
+  {
+    long total = 0L;
+    for (final AtomicLong count : outstandingCounts)
+    {
+      total += count.get();
+    }
+
+    return total;
+  }
+
+
+
+  /**
+   * Retrieves the number of released arrays that were retained so that they
+   * could be reused.
+   *
+   * @return  The number of released arrays that were retained for reuse.
+   */
+  public long getNumReleased()
+  {
+    return numReleased.get();
+  }
+
+
+
+  /**
+   * Retrieves the number of released arrays that were not retained, either
+   * because their length did not match a size class for this pool or because
+   * that size class was already full.
+   *
+   * @return  The number of released arrays that were not retained.
+   */
+  public long getNumDiscarded()
+  {
+    return numDiscarded.get();
+  }
+
+
+
+  /**
+   * Retrieves the number of attempts to release an array whose length matches
+   * a size class for this pool when no arrays of that size were outstanding,
+   * which means that the array was not obtained from this pool or that it had
+   * already been released.  Any nonzero value indicates that some component is
+   * misusing the pool.
+   *
+   * @return  The number of invalid attempts to release an array.
+   */
+  public long getNumInvalidReleases()
+  {
+    return numInvalidReleases.get();
+  }
+
+
+
+  /**
+   * Retrieves the number of arrays currently held in this pool.
+   *
+   * @return  The number of arrays currently held in this pool.
+   */
+  public int getNumPooledArrays()
+  {
+    int total = 0;
+    for (final AtomicInteger count : sizeClassCounts)
+    {
+      total += count.get();
+    }
+
+    return total;
+  }
+
+
+
+  /**
+   * Retrieves the total number of bytes in the arrays currently held in this
+   * pool.
+   *
+   * @return  The total number of bytes in the arrays currently held in this
+   *          pool.
+   */
+  public long getNumPooledBytes()
+  {
+    long total = 0L;
+    for (int i=0; i < sizeClassCounts.length; i++)
+    {
+      total += ((long) sizeClassCounts[i].get()) * (minArraySize << i);
+    }
+
+    return total;
+  }
+
+
+
+  /**
+   * Removes all arrays currently held in this pool and resets the counts of
+   * hits, misses, released arrays, discarded arrays, and invalid releases.
+   * Arrays that are currently outstanding will continue to be tracked, since
+   * they may still be released.
+   */
+  public void clear()
+  {
+    for (int i=0; i < sizeClasses.length; i++)
+    {
+      while (sizeClasses[i].poll() != null)
+      {
+        sizeClassCounts[i].decrementAndGet();
+      }
+    }
+
+    numHits.set(0L);
+    numMisses.set(0L);
+    numReleased.set(0L);
+    numDiscarded.set(0L);
+    numInvalidReleases.set(0L);
+  }
+
+
+
+  /**
+   * Retrieves the index of the smallest size class that can hold an array of
+   * the specified size.
+   *
+   * @param  size  The size for which to make the determination.  It must not
+   *               be greater than the maximum array size.
+   *
+   * @return  The index of the smallest size class that can hold an array of
+   *          the specified size.
+   */
+  private int getSizeClass(final int size)
+  {
+    if (size <= minArraySize)
+    {
+      return 0;
+    }
+
+    return (32 - Integer.numberOfLeadingZeros(size - 1)) - minArraySizeShift;
+  }
+
+
+
+  /**
+   * Rounds the provided value up to the nearest power of two.
+   *
+   * @param  value  The value to round.  It must be greater than zero and less
+   *                than or equal to 2^30.
+   *
+   * @return  The smallest power of two that is greater than or equal to the
+   *          provided value.
+   */
+  private static int roundUpToPowerOfTwo(final int value)
+  {
+    if (value <= 1)
+    {
+      return 1;
+    }
+
+    return 1 << (32 - Integer.numberOfLeadingZeros(value - 1));
+  }
+
+
+
+  /**
+   * Retrieves a string representation of this byte array pool.
+   *
+   * @return  A string representation of this byte array pool.
+   */
+  @Override()
+  public String toString()
+  {
+    final StringBuilder buffer = new StringBuilder();
+    toString(buffer);
+    return buffer.toString();
+  }
+
+
+
+  /**
+   * Appends a string representation of this byte array pool to the provided
+   * buffer.
+   *
+   * @param  buffer  The buffer to which the string representation should be
+   *                 appended.
+   */
+  public void toString(final StringBuilder buffer)
+  {
+    buffer.append("ByteArrayPool(minArraySize=");
+    buffer.append(minArraySize);
+    buffer.append(", maxArraySize=");
+    buffer.append(maxArraySize);
+    buffer.append(", numHits=");
+    buffer.append(numHits.get());
+    buffer.append(", numMisses=");
+    buffer.append(numMisses.get());
+    buffer.append(", numOutstanding=");
+    buffer.append(getNumOutstanding());
+    buffer.append(", numReleased=");
+    buffer.append(numReleased.get());
+    buffer.append(", numDiscarded=");
+    buffer.append(numDiscarded.get());
+    buffer.append(", numInvalidReleases=");
+    buffer.append(numInvalidReleases.get());
+    buffer.append(", numPooledArrays=");
+    buffer.append(getNumPooledArrays());
+    buffer.append(')');
+  }
+}
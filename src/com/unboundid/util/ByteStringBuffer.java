@@ -85,6 +85,13 @@ public final class ByteStringBuffer
   // The backing array for this buffer.
   private byte[] array;
 
+  // The pool from which backing arrays should be obtained, if any.
+  private transient ByteArrayPool pool;
+
+  // Indicates whether the current backing array was obtained from the pool
+  // and should be released back to it when it is no longer needed.
+  private transient boolean arrayFromPool;
+
   // The length of the backing array.
   private int capacity;
 
@@ -118,6 +125,43 @@ public final class ByteStringBuffer
 
 
 
+  /**
+   * Creates a new byte string buffer whose backing arrays will be obtained
+   * from the provided pool.  Whenever the buffer needs to grow, the new
+   * backing array will be obtained from the pool and the previous array will
+   * be released to it.  The {@link #release} method should be called when the
+   * buffer is no longer needed so that its backing array can be reused.
+   *
+   * @param  initialCapacity  The initial capacity to use for the buffer.  It
+   *                          must be greater than or equal to zero.  If it is
+   *                          zero, then no array will be obtained from the
+   *                          pool until data is appended to the buffer.
+   * @param  pool             The pool from which to obtain backing arrays.
+   *                          It may be {@code null} if arrays should always
+   *                          be allocated.
+   */
+  public ByteStringBuffer(final int initialCapacity, final ByteArrayPool pool)
+  {
+    this.pool = pool;
+
+    if ((pool == null) || (initialCapacity == 0))
+    {
+      array         = new byte[initialCapacity];
+      capacity      = initialCapacity;
+      arrayFromPool = false;
+    }
+    else
+    {
+      array         = pool.acquire(initialCapacity);
+      capacity      = array.length;
+      arrayFromPool = true;
+    }
+
+    endPos = 0;
+  }
+
+
+
   /**
    * Appends the provided boolean value to this buffer.
    *
@@ -1441,6 +1485,26 @@ public final class ByteStringBuffer
 
 
 
+  /**
+   * Releases the backing array for this buffer to the pool from which it was
+   * obtained, if any, and clears the buffer.  The buffer may continue to be
+   * used after it has been released, in which case a new backing array will be
+   * obtained when data is appended, but any backing array previously retrieved
+   * from this buffer must no longer be used.
+   */
+  public void release()
+  {
+    endPos = 0;
+
+    if (arrayFromPool)
+    {
+      replaceArray(StaticUtils.NO_BYTES, false);
+      capacity = 0;
+    }
+  }
+
+
+
   /**
    * Retrieves the current backing array for this buffer.  The data will begin
    * at position 0 and will contain {@link ByteStringBuffer#length} bytes.
@@ -1536,10 +1600,10 @@ public final class ByteStringBuffer
     if (capacity < minimumCapacity)
     {
       final int newCapacity = Math.max(minimumCapacity, (2 * capacity) + 2);
-      final byte[] newArray = new byte[newCapacity];
+      final byte[] newArray = allocateArray(newCapacity);
       System.arraycopy(array, 0, newArray, 0, capacity);
-      array = newArray;
-      capacity = newCapacity;
+      replaceArray(newArray, (pool != null));
+      capacity = newArray.length;
     }
   }
 
@@ -1572,16 +1636,16 @@ public final class ByteStringBuffer
     }
     else if (this.capacity < capacity)
     {
-      final byte[] newArray = new byte[capacity];
+      final byte[] newArray = allocateArray(capacity);
       System.arraycopy(array, 0, newArray, 0, this.capacity);
-      array = newArray;
+      replaceArray(newArray, (pool != null));
       this.capacity = capacity;
     }
     else
     {
-      final byte[] newArray = new byte[capacity];
+      final byte[] newArray = allocateArray(capacity);
       System.arraycopy(array, 0, newArray, 0, capacity);
-      array = newArray;
+      replaceArray(newArray, (pool != null));
       endPos = Math.min(endPos, capacity);
       this.capacity = capacity;
     }
@@ -1589,6 +1653,51 @@ public final class ByteStringBuffer
 
 
 
+  /**
+   * Obtains a new backing array that can hold at least the specified number of
+   * bytes, from the associated pool if there is one.
+   *
+   * @param  minimumSize  The minimum number of bytes that the array must be
+   *                      able to hold.
+   *
+   * @return  The new backing array.
+   */
+  private byte[] allocateArray(final int minimumSize)
+  {
+    if (pool == null)
+    {
+      return new byte[minimumSize];
+    }
+    else
+    {
+      return pool.acquire(minimumSize);
+    }
+  }
+
+
+
+  /**
+   * Replaces the backing array for this buffer with the provided array,
+   * releasing the current backing array to the associated pool if it was
+   * obtained from that pool.  The capacity will not be updated.
+   *
+   * @param  newArray     The new backing array for this buffer.
+   * @param  newFromPool  Indicates whether the new backing array was obtained
+   *                      from the associated pool.
+   */
+  private void replaceArray(final byte[] newArray, final boolean newFromPool)
+  {
+    if (arrayFromPool)
+    {
+      pool.release(array);
+    }
+
+    array         = newArray;
+    arrayFromPool = newFromPool;
+  }
+
+
+
   /**
    * Trims the backing array to the minimal size required for this buffer.
    *
@@ -1600,7 +1709,7 @@ public final class ByteStringBuffer
     {
       final byte[] newArray = new byte[endPos];
       System.arraycopy(array, 0, newArray, 0, endPos);
-      array = newArray;
+      replaceArray(newArray, false);
       capacity = endPos;
     }
 
@@ -232,6 +232,41 @@ import static com.unboundid.util.json.JSONMessages.*;
  * </PRE>
  * <BR>
  * <B>The "server-details" Section for Selecting from a Set of Servers in a
+ * Fastest Response Manner</B>
+ * <BR>
+ * If you have a set of servers that you want to connect to in a manner that
+ * favors the server that has been responding to operations most quickly (and
+ * temporarily avoids servers that cannot be reached or whose response times
+ * are much longer than the others), the "server-details" value should be a
+ * JSON object that contains a "fastest-response-set" field whose value is a
+ * JSON object that contains a "server" field with an array of JSON objects,
+ * each of which contains "address" and "port" fields for a target server.  For
+ * example, the following is a valid specification that may be used to
+ * establish connections across the servers ldap1.example.com and
+ * ldap2.example.com, both on port 389:
+ * <PRE>
+ *   {
+ *     "server-details":
+ *     {
+ *       "fastest-response-set":
+ *       {
+ *         "servers":
+ *         [
+ *           {
+ *             "address":"ldap1.example.com",
+ *             "port":389
+ *           },
+ *           {
+ *             "address":"ldap2.example.com",
+ *             "port":389
+ *           }
+ *         ]
+ *       }
+ *     }
+ *   }
+ * </PRE>
+ * <BR>
+ * <B>The "server-details" Section for Selecting from a Set of Servers in a
  * Failover Manner</B>
  * <BR>
  * If you have a set of servers that you want to connect to in a manner that
@@ -28,6 +28,7 @@ import javax.net.SocketFactory;
 
 import com.unboundid.ldap.sdk.FailoverServerSet;
 import com.unboundid.ldap.sdk.FastestConnectServerSet;
+import com.unboundid.ldap.sdk.FastestResponseServerSet;
 import com.unboundid.ldap.sdk.FewestConnectionsServerSet;
 import com.unboundid.ldap.sdk.LDAPConnectionOptions;
 import com.unboundid.ldap.sdk.LDAPException;
@@ -66,7 +67,8 @@ final class ServerDetails
    * use in conjunction with a failover server set.  Its value must be an array
    * of JSON objects, where each of those objects must have one field, which
    * should be one of the following types:  failover-set, fastest-connect-set,
-   * fewest-connections-set, round-robin-set, or single-server.
+   * fastest-response-set, fewest-connections-set, round-robin-set, or
+   * single-server.
    */
   private static final String FIELD_FAILOVER_ORDER = "failover-order";
 
@@ -93,6 +95,17 @@ final class ServerDetails
 
 
 
+  /**
+   * The name of the field that may be used to provide information about a set
+   * of servers that should be accessed in a manner that selects the server that
+   * has been responding to operations most quickly.  Its value must be a JSON
+   * object that must contain only the servers field.
+   */
+  private static final String FIELD_FASTEST_RESPONSE_SET =
+       "fastest-response-set";
+
+
+
   /**
    * The name of the field that may be used to provide information about a set
    * of servers that should be accessed in a manner that selects the server with
@@ -217,6 +230,7 @@ final class ServerDetails
     LDAPConnectionDetailsJSONSpecification.validateAllowedFields(o, fieldName,
          FIELD_FAILOVER_SET,
          FIELD_FASTEST_CONNECT_SET,
+         FIELD_FASTEST_RESPONSE_SET,
          FIELD_FEWEST_CONNECTIONS_SET,
          FIELD_ROUND_ROBIN_SET,
          FIELD_SINGLE_SERVER);
@@ -307,6 +321,19 @@ final class ServerDetails
     }
 
 
+    // See if it's a fastest response set definition.
+    final JSONObject fastestResponseSetObject =
+         LDAPConnectionDetailsJSONSpecification.getObject(o,
+              FIELD_FASTEST_RESPONSE_SET);
+    if (fastestResponseSetObject != null)
+    {
+      final ObjectPair<String[],int[]> servers =
+           parseServers(fastestResponseSetObject, FIELD_SERVERS);
+      return new FastestResponseServerSet(servers.getFirst(),
+           servers.getSecond(), socketFactory, ldapConnectionOptions);
+    }
+
+
     // See if it's a fewest connections set definition.
     final JSONObject fewestConnectionsSetObject =
          LDAPConnectionDetailsJSONSpecification.getObject(o,
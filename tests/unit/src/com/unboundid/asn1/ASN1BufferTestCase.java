@@ -31,6 +31,7 @@ import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import com.unboundid.ldap.sdk.LDAPSDKTestCase;
+import com.unboundid.util.ByteArrayPool;
 
 
 
@@ -912,4 +913,46 @@ public class ASN1BufferTestCase
       assertTrue(Arrays.equals(b.toByteArray(), elementBytes));
     }
   }
+
+
+
+  /**
+   * Tests the behavior of a buffer that obtains its backing arrays from a
+   * pool.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testPooledBuffer()
+         throws Exception
+  {
+    final ByteArrayPool pool = new ByteArrayPool(64, 65536, 1048576);
+    final ASN1Buffer b = new ASN1Buffer(0, pool);
+    assertEquals(pool.getNumOutstanding(), 0L);
+
+    for (int i=0; i < 2; i++)
+    {
+      final ASN1BufferSequence s = b.beginSequence();
+      b.addInteger(i);
+      b.addOctetString(new byte[5000]);
+      b.addOctetString("foo");
+      s.end();
+
+      final ASN1Sequence expected = new ASN1Sequence(
+           new ASN1Integer(i),
+           new ASN1OctetString(new byte[5000]),
+           new ASN1OctetString("foo"));
+      assertTrue(Arrays.equals(b.toByteArray(), expected.encode()));
+      assertEquals(pool.getNumOutstanding(), 1L);
+
+      b.release();
+      assertEquals(b.length(), 0);
+      assertEquals(pool.getNumOutstanding(), 0L);
+    }
+
+    assertTrue(pool.getNumHits() > 0L);
+
+    b.release();
+    assertEquals(pool.getNumOutstanding(), 0L);
+  }
 }
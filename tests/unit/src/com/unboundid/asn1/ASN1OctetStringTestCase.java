@@ -23,6 +23,8 @@ package com.unboundid.asn1;
 
 
 import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
@@ -877,4 +879,127 @@ public class ASN1OctetStringTestCase
                             (byte) 0x00 };
     ASN1OctetString.decodeAsOctetString(elementBytes);
   }
+
+
+
+  /**
+   * Tests to ensure that concurrent calls to {@code getValue} and
+   * {@code getValueLength} for elements whose values reference a portion of a
+   * larger array always return the correct value.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testConcurrentGetValueForSlice()
+         throws Exception
+  {
+    final byte[] sharedArray = new byte[1024];
+    for (int i=0; i < sharedArray.length; i++)
+    {
+      sharedArray[i] = (byte) i;
+    }
+
+    final ASN1OctetString[] elements = new ASN1OctetString[20000];
+    for (int i=0; i < elements.length; i++)
+    {
+      final int offset = 1 + (i % 500);
+      elements[i] = new ASN1OctetString(sharedArray, offset, (i % 7) + 1);
+    }
+
+    final CountDownLatch startLatch = new CountDownLatch(1);
+    final AtomicReference<String> failure = new AtomicReference<String>();
+    final GetValueThread[] threads = new GetValueThread[4];
+    for (int i=0; i < threads.length; i++)
+    {
+      threads[i] = new GetValueThread(elements, startLatch, failure);
+      threads[i].start();
+    }
+
+    startLatch.countDown();
+    for (final GetValueThread t : threads)
+    {
+      t.join();
+    }
+
+    assertNull(failure.get(), failure.get());
+  }
+
+
+
+  /**
+   * A thread that retrieves the values of a set of slice-backed octet string
+   * elements and verifies that each value is correct.
+   */
+  private static final class GetValueThread
+          extends Thread
+  {
+    // The elements to examine.
+    private final ASN1OctetString[] elements;
+
+    // The latch to await before examining the elements.
+    private final CountDownLatch startLatch;
+
+    // A reference that will be updated with a description of the first
+    // problem found.
+    private final AtomicReference<String> failure;
+
+
+
+    /**
+     * Creates a new thread with the provided information.
+     *
+     * @param  elements    The elements to examine.
+     * @param  startLatch  The latch to await before examining the elements.
+     * @param  failure     A reference that will be updated with a description
+     *                     of the first problem found.
+     */
+    private GetValueThread(final ASN1OctetString[] elements,
+                           final CountDownLatch startLatch,
+                           final AtomicReference<String> failure)
+    {
+      this.elements   = elements;
+      this.startLatch = startLatch;
+      this.failure    = failure;
+    }
+
+
+
+    /**
+     * Examines each of the elements.
+     */
+    @Override()
+    public void run()
+    {
+      try
+      {
+        startLatch.await();
+      }
+      catch (final InterruptedException ie)
+      {
+        failure.compareAndSet(null, ie.toString());
+        return;
+      }
+
+      for (int i=0; i < elements.length; i++)
+      {
+        final int expectedLength = (i % 7) + 1;
+        final byte[] value = elements[i].getValue();
+        if ((value.length != expectedLength) ||
+            (elements[i].getValueLength() != expectedLength))
+        {
+          failure.compareAndSet(null, "Wrong length for element " + i);
+          return;
+        }
+
+        for (int j=0; j < value.length; j++)
+        {
+          if (value[j] != (byte) (1 + (i % 500) + j))
+          {
+            failure.compareAndSet(null, "Wrong value for element " + i);
+            return;
+          }
+        }
+      }
+    }
+  }
 }
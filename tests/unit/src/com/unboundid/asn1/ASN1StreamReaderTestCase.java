@@ -34,6 +34,8 @@ import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import com.unboundid.ldap.sdk.LDAPSDKTestCase;
+import com.unboundid.util.ByteArrayPool;
+import com.unboundid.util.StaticUtils;
 
 
 
@@ -1330,4 +1332,195 @@ public class ASN1StreamReaderTestCase
     assertFalse(reader.ignoreInitialSocketTimeoutException());
     assertFalse(reader.ignoreSubsequentSocketTimeoutException());
   }
+
+
+
+  /**
+   * Tests the behavior when reading octet strings without zero-copy decoding.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testReadOctetString()
+         throws Exception
+  {
+    ASN1Buffer b = new ASN1Buffer();
+    b.addOctetString("foo");
+    b.addOctetString((byte) 0x80, "bar");
+    b.addOctetString();
+
+    ASN1StreamReader reader =
+         new ASN1StreamReader(new ByteArrayInputStream(b.toByteArray()));
+    assertFalse(reader.useZeroCopyDecoding());
+
+    ASN1OctetString s = reader.readOctetString();
+    assertEquals(s.getType(), (byte) 0x04);
+    assertEquals(s.stringValue(), "foo");
+
+    s = reader.readOctetString();
+    assertEquals(s.getType(), (byte) 0x80);
+    assertEquals(s.stringValue(), "bar");
+
+    s = reader.readOctetString();
+    assertEquals(s.getValueLength(), 0);
+    assertEquals(s.stringValue(), "");
+
+    assertNull(reader.readOctetString());
+  }
+
+
+
+  /**
+   * Tests the behavior when reading sequences with zero-copy decoding
+   * enabled, including nested sequences and elements that follow them.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testZeroCopyDecoding()
+         throws Exception
+  {
+    ASN1Buffer b = new ASN1Buffer();
+    for (int i=0; i < 2; i++)
+    {
+      ASN1BufferSequence outer = b.beginSequence();
+      b.addInteger(i);
+      b.addOctetString("dn " + i);
+      ASN1BufferSequence inner = b.beginSequence((byte) 0x30);
+      b.addOctetString("value " + i);
+      b.addOctetString();
+      b.addOctetString(new byte[] { 0x01, 0x02, 0x03 });
+      inner.end();
+      b.addBoolean(true);
+      b.addNull();
+      b.addElement(new ASN1Element((byte) 0x01, new byte[] { 0x00, 0x00 }));
+      b.addOctetString("last");
+      outer.end();
+    }
+    b.addOctetString("after");
+
+    ASN1StreamReader reader =
+         new ASN1StreamReader(new ByteArrayInputStream(b.toByteArray()));
+    reader.setUseZeroCopyDecoding(true);
+    assertTrue(reader.useZeroCopyDecoding());
+
+    for (int i=0; i < 2; i++)
+    {
+      ASN1StreamReaderSequence outer = reader.beginSequence();
+      assertNotNull(outer);
+      assertEquals(reader.readInteger().intValue(), i);
+      assertEquals(reader.peek(), 0x04);
+      assertEquals(reader.readString(), "dn " + i);
+
+      ASN1StreamReaderSequence inner = reader.beginSequence();
+      assertTrue(inner.hasMoreElements());
+      ASN1OctetString s = reader.readOctetString();
+      assertEquals(s.getValueLength(), ("value " + i).length());
+      assertEquals(s.stringValue(), "value " + i);
+      assertEquals(s.getValue(), StaticUtils.getBytes("value " + i));
+      assertEquals(reader.readOctetString().getValueLength(), 0);
+      assertEquals(reader.readOctetString().getValue(),
+           new byte[] { 0x01, 0x02, 0x03 });
+      assertFalse(inner.hasMoreElements());
+
+      assertTrue(reader.readBoolean());
+      reader.readNull();
+
+      try
+      {
+        reader.readBoolean();
+        fail("Expected an exception for a Boolean with an invalid length");
+      }
+      catch (final ASN1Exception ae)
+      {
+        // This was expected.
+      }
+
+      assertTrue(outer.hasMoreElements());
+      assertEquals(reader.readOctetString().stringValue(), "last");
+      assertFalse(outer.hasMoreElements());
+    }
+
+    assertEquals(reader.readOctetString().stringValue(), "after");
+    assertNull(reader.beginSequence());
+  }
+
+
+
+  /**
+   * Tests the behavior when zero-copy decoding is enabled and the input stream
+   * ends before the entire value of a sequence could be read.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test(expectedExceptions = { IOException.class })
+  public void testZeroCopyDecodingTruncatedSequence()
+         throws Exception
+  {
+    ASN1Buffer b = new ASN1Buffer();
+    ASN1BufferSequence s = b.beginSequence();
+    b.addOctetString("foo");
+    b.addOctetString("bar");
+    s.end();
+
+    final byte[] encoded = b.toByteArray();
+    ASN1StreamReader reader = new ASN1StreamReader(new ByteArrayInputStream(
+         encoded, 0, (encoded.length - 1)));
+    reader.setUseZeroCopyDecoding(true);
+    reader.beginSequence();
+  }
+
+
+
+  /**
+   * Tests the behavior when reading data with a buffer pool, which should be
+   * used for temporary buffers but not for values returned to the caller.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testBufferPool()
+         throws Exception
+  {
+    final StringBuilder longString = new StringBuilder();
+    for (int i=0; i < 500; i++)
+    {
+      longString.append("0123456789");
+    }
+
+    ASN1Buffer b = new ASN1Buffer();
+    for (int i=0; i < 3; i++)
+    {
+      b.addOctetString(longString.toString());
+      b.addOctetString("short");
+      b.addOctetString(longString.toString());
+    }
+
+    final ByteArrayPool pool = new ByteArrayPool(1024, 65536, 1048576);
+    ASN1StreamReader reader =
+         new ASN1StreamReader(new ByteArrayInputStream(b.toByteArray()));
+    assertNull(reader.getBufferPool());
+    reader.setBufferPool(pool);
+    assertSame(reader.getBufferPool(), pool);
+
+    for (int i=0; i < 3; i++)
+    {
+      assertEquals(reader.readString(), longString.toString());
+      assertEquals(reader.readString(), "short");
+
+      final ASN1OctetString s = reader.readOctetString();
+      assertEquals(s.stringValue(), longString.toString());
+      assertEquals(s.getValueLength(), 5000);
+    }
+    assertNull(reader.readString());
+    reader.close();
+
+    assertEquals(pool.getNumMisses(), 1L);
+    assertEquals(pool.getNumHits(), 2L);
+    assertEquals(pool.getNumOutstanding(), 0L);
+    assertEquals(pool.getNumPooledArrays(), 1);
+
+    reader.setBufferPool(null);
+    assertNull(reader.getBufferPool());
+  }
 }
@@ -29,7 +29,9 @@ import java.util.List;
 
 import org.testng.annotations.Test;
 
+import com.unboundid.asn1.ASN1Integer;
 import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.asn1.ASN1Sequence;
 import com.unboundid.ldap.sdk.AddRequest;
 import com.unboundid.ldap.sdk.Attribute;
 import com.unboundid.ldap.sdk.BindResult;
@@ -2267,6 +2269,120 @@ public final class InMemoryDirectoryControlsTestCase
 
 
 
+  /**
+   * Tests to ensure that the results of a search using the simple paged
+   * results control are retained so that subsequent pages are taken from them
+   * rather than by processing the search again, and that cookies that do not
+   * reference retained results are still handled.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testSimplePagedResultsCursor()
+         throws Exception
+  {
+    final InMemoryDirectoryServer ds = getTestDS(true, true);
+
+    final LDAPConnection conn = ds.getConnection();
+
+    for (int i=0; i < 100; i++)
+    {
+      conn.add(generateUserEntry("test." + i, "ou=People,dc=example,dc=com",
+           "Test", String.valueOf(i), "password"));
+    }
+
+    final SearchRequest searchRequest = new SearchRequest(
+         "ou=People,dc=example,dc=com", SearchScope.ONE,
+         "(objectClass=person)");
+    final List<SearchResultEntry> allEntries =
+         conn.search(searchRequest).getSearchEntries();
+    final int totalEntries = allEntries.size();
+
+
+    // Get the first page of results, and then delete the last matching entry.
+    // Since the remaining pages will be taken from the retained results, they
+    // should still include that entry.
+    searchRequest.setControls(new SimplePagedResultsControl(10));
+    SearchResult searchResult = conn.search(searchRequest);
+    assertEquals(searchResult.getEntryCount(), 10);
+    ASN1OctetString cookie =
+         SimplePagedResultsControl.get(searchResult).getCookie();
+    assertTrue(cookie.getValueLength() > 0);
+
+    conn.delete(allEntries.get(totalEntries - 1).getDN());
+
+    int returnedEntries = 10;
+    while (cookie.getValueLength() > 0)
+    {
+      searchRequest.setControls(new SimplePagedResultsControl(10, cookie));
+      searchResult = conn.search(searchRequest);
+      assertEquals(searchResult.getResultCode(), ResultCode.SUCCESS);
+
+      for (final SearchResultEntry e : searchResult.getSearchEntries())
+      {
+        assertEquals(e.getParsedDN(),
+             allEntries.get(returnedEntries).getParsedDN());
+        returnedEntries++;
+      }
+
+      final SimplePagedResultsControl pagedResultsResponse =
+           SimplePagedResultsControl.get(searchResult);
+      assertEquals(pagedResultsResponse.getSize(), totalEntries);
+      cookie = pagedResultsResponse.getCookie();
+    }
+
+    assertEquals(returnedEntries, totalEntries);
+
+
+    // A cookie that only contains an offset should still be accepted, and the
+    // search will be processed again.
+    searchRequest.setControls(new SimplePagedResultsControl(10,
+         new ASN1OctetString(new ASN1Integer(totalEntries - 5).encode())));
+    searchResult = conn.search(searchRequest);
+    assertEquals(searchResult.getEntryCount(), 4);
+    assertEquals(SimplePagedResultsControl.get(searchResult).getSize(),
+         (totalEntries - 1));
+    assertEquals(SimplePagedResultsControl.get(searchResult).getCookie().
+         getValueLength(), 0);
+
+
+    // A cookie that references results that are not retained should also be
+    // accepted.
+    searchRequest.setControls(new SimplePagedResultsControl(10,
+         new ASN1OctetString(new ASN1Sequence(new ASN1Integer(10),
+              new ASN1Integer(12345)).encode())));
+    searchResult = conn.search(searchRequest);
+    assertEquals(searchResult.getEntryCount(), 10);
+    assertEquals(searchResult.getSearchEntries().get(0).getParsedDN(),
+         allEntries.get(10).getParsedDN());
+    cookie = SimplePagedResultsControl.get(searchResult).getCookie();
+    assertTrue(cookie.getValueLength() > 0);
+
+
+    // Results retained for one search should not be used for a different one.
+    final SearchRequest otherRequest = new SearchRequest(
+         "ou=People,dc=example,dc=com", SearchScope.ONE, "(uid=test.1*)");
+    otherRequest.setControls(new SimplePagedResultsControl(5, cookie));
+    searchResult = conn.search(otherRequest);
+    assertEquals(searchResult.getResultCode(), ResultCode.SUCCESS);
+    assertEquals(SimplePagedResultsControl.get(searchResult).getSize(), 11);
+    assertEquals(searchResult.getEntryCount(), 0);
+
+
+    // A page size of zero with a non-empty cookie indicates that the paged
+    // search is being abandoned.
+    searchRequest.setControls(new SimplePagedResultsControl(0, cookie));
+    searchResult = conn.search(searchRequest);
+    assertEquals(searchResult.getResultCode(), ResultCode.SUCCESS);
+    assertEquals(searchResult.getEntryCount(), 0);
+    assertEquals(SimplePagedResultsControl.get(searchResult).getCookie().
+         getValueLength(), 0);
+
+    conn.close();
+  }
+
+
+
   /**
    * Provides test coverage for the subentries request control.
    *
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.listener;
+
+
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPSDKTestCase;
+import com.unboundid.ldap.sdk.controls.PersistentSearchChangeType;
+
+
+
+/**
+ * This class provides a set of test cases for the
+ * InMemoryDirectoryServerChangeNotifier class.
+ */
+public final class InMemoryDirectoryServerChangeNotifierTestCase
+       extends LDAPSDKTestCase
+{
+  /**
+   * Tests the behavior of the change sequence cookies.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testCookies()
+         throws Exception
+  {
+    final InMemoryDirectoryServerChangeNotifier notifier =
+         new InMemoryDirectoryServerChangeNotifier();
+
+    final ASN1OctetString cookie1 = notifier.getCookie();
+    assertEquals(notifier.getCookie().stringValue(), cookie1.stringValue());
+
+    notifier.publish(PersistentSearchChangeType.ADD, null,
+         new Entry("dc=example,dc=com"));
+    final ASN1OctetString cookie2 = notifier.getCookie();
+    assertFalse(cookie2.stringValue().equals(cookie1.stringValue()));
+
+    notifier.invalidateCookies();
+    final ASN1OctetString cookie3 = notifier.getCookie();
+    assertFalse(cookie3.stringValue().equals(cookie2.stringValue()));
+
+    // A different notifier should never produce the same cookie.
+    assertFalse(new InMemoryDirectoryServerChangeNotifier().getCookie().
+         stringValue().equals(cookie1.stringValue()));
+  }
+
+
+
+  /**
+   * Tests to ensure that changes published before a subscriber is started are
+   * held and delivered in order once it is started, and that changes not
+   * accepted by the subscriber are not delivered.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testDelivery()
+         throws Exception
+  {
+    final InMemoryDirectoryServerChangeNotifier notifier =
+         new InMemoryDirectoryServerChangeNotifier();
+
+    final TestSubscriber subscriber =
+         new TestSubscriber(notifier, 10, new CountDownLatch(3));
+    notifier.register(subscriber);
+    assertEquals(notifier.getSubscriberCount(), 1);
+
+    notifier.publish(PersistentSearchChangeType.ADD, null,
+         new Entry("ou=1,dc=example,dc=com"));
+    notifier.publish(PersistentSearchChangeType.ADD, null,
+         new Entry("ou=ignore,dc=example,dc=com"));
+    notifier.publish(PersistentSearchChangeType.MODIFY,
+         new Entry("ou=2,dc=example,dc=com"),
+         new Entry("ou=2,dc=example,dc=com"));
+    assertTrue(subscriber.delivered.isEmpty());
+
+    subscriber.start();
+    notifier.publish(PersistentSearchChangeType.DELETE,
+         new Entry("ou=3,dc=example,dc=com"), null);
+
+    assertTrue(subscriber.latch.await(10L, TimeUnit.SECONDS));
+    assertEquals(subscriber.delivered.size(), 3);
+    assertEquals(subscriber.delivered.get(0).getChangeType(),
+         PersistentSearchChangeType.ADD);
+    assertEquals(subscriber.delivered.get(0).getEntryAfter().getDN(),
+         "ou=1,dc=example,dc=com");
+    assertEquals(subscriber.delivered.get(1).getChangeType(),
+         PersistentSearchChangeType.MODIFY);
+    assertEquals(subscriber.delivered.get(2).getChangeType(),
+         PersistentSearchChangeType.DELETE);
+    assertEquals(subscriber.delivered.get(2).getEntryBefore().getDN(),
+         "ou=3,dc=example,dc=com");
+    assertTrue(subscriber.delivered.get(0).getSequenceNumber() <
+         subscriber.delivered.get(1).getSequenceNumber());
+    assertFalse(subscriber.backlogExceeded);
+
+    subscriber.cancel();
+    assertTrue(subscriber.isCancelled());
+    assertEquals(notifier.getSubscriberCount(), 0);
+  }
+
+
+
+  /**
+   * Tests to ensure that a subscriber is terminated rather than blocking the
+   * publisher if it falls too far behind.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testBacklogExceeded()
+         throws Exception
+  {
+    final InMemoryDirectoryServerChangeNotifier notifier =
+         new InMemoryDirectoryServerChangeNotifier();
+
+    final TestSubscriber subscriber =
+         new TestSubscriber(notifier, 2, new CountDownLatch(1));
+    notifier.register(subscriber);
+
+    for (int i=0; i < 5; i++)
+    {
+      notifier.publish(PersistentSearchChangeType.ADD, null,
+           new Entry("ou=" + i + ",dc=example,dc=com"));
+    }
+    assertEquals(notifier.getSubscriberCount(), 0);
+
+    subscriber.start();
+    assertTrue(subscriber.latch.await(10L, TimeUnit.SECONDS));
+    assertTrue(subscriber.backlogExceeded);
+    assertTrue(subscriber.delivered.isEmpty());
+    assertTrue(subscriber.isCancelled());
+  }
+
+
+
+  /**
+   * A subscriber implementation that records the changes delivered to it.
+   */
+  private static final class TestSubscriber
+          extends InMemoryDirectoryServerChangeNotifier.Subscriber
+  {
+    // Indicates whether the backlog was exceeded.
+    private volatile boolean backlogExceeded;
+
+    // A latch that is counted down for each delivered change and when the
+    // backlog is exceeded.
+    private final CountDownLatch latch;
+
+    // The changes that have been delivered.
+    private final List<InMemoryDirectoryServerChangeNotifier.Change> delivered;
+
+
+
+    /**
+     * Creates a new test subscriber.
+     *
+     * @param  notifier    The notifier to use.
+     * @param  maxBacklog  The maximum backlog.
+     * @param  latch       The latch to count down.
+     */
+    private TestSubscriber(final InMemoryDirectoryServerChangeNotifier notifier,
+                           final int maxBacklog, final CountDownLatch latch)
+    {
+      super(notifier, maxBacklog);
+
+      this.latch = latch;
+
+      backlogExceeded = false;
+      delivered =
+           new CopyOnWriteArrayList<InMemoryDirectoryServerChangeNotifier.
+                Change>();
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override()
+    boolean accepts(final InMemoryDirectoryServerChangeNotifier.Change change)
+    {
+      final Entry e = (change.getEntryAfter() == null)
+           ? change.getEntryBefore()
+           : change.getEntryAfter();
+      return (! e.getDN().startsWith("ou=ignore"));
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override()
+    boolean deliver(final InMemoryDirectoryServerChangeNotifier.Change change)
+    {
+      delivered.add(change);
+      latch.countDown();
+      return true;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override()
+    void backlogExceeded()
+    {
+      backlogExceeded = true;
+      latch.countDown();
+    }
+  }
+}
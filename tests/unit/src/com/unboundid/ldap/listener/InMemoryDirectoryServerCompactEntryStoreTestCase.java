@@ -0,0 +1,355 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.listener;
+
+
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.testng.annotations.Test;
+
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.LDAPSDKTestCase;
+import com.unboundid.ldap.sdk.ReadOnlyEntry;
+import com.unboundid.ldap.sdk.schema.Schema;
+
+
+
+/**
+ * This class provides a set of test cases for the
+ * InMemoryDirectoryServerCompactEntryStore class.
+ */
+public final class InMemoryDirectoryServerCompactEntryStoreTestCase
+       extends LDAPSDKTestCase
+{
+  /**
+   * Tests the behavior when storing and retrieving entries with a variety of
+   * attribute types and values.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testStoreAndRetrieve()
+         throws Exception
+  {
+    final InMemoryDirectoryServerCompactEntryStore store =
+         new InMemoryDirectoryServerCompactEntryStore(
+              new AtomicReference<Schema>());
+    assertEquals(store.getAllocatedBytes(), 0L);
+    assertEquals(store.getLiveBytes(), 0L);
+
+    final ReadOnlyEntry e1 = new ReadOnlyEntry(
+         "dn: ou=People,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: organizationalUnit",
+         "ou: People",
+         "description;lang-en: An attribute with options");
+    final ReadOnlyEntry e2 = new ReadOnlyEntry("uid=test,dc=example,dc=com",
+         new Attribute("objectClass", "top", "person"),
+         new Attribute("uid", "test"),
+         new Attribute("cn", "Test"),
+         new Attribute("sn", "User"),
+         new Attribute("userCertificate;binary",
+              new byte[] { 0x00, (byte) 0x80, (byte) 0xFF, 0x7F }),
+         new Attribute("description", new byte[0]));
+    final ReadOnlyEntry e3 = new ReadOnlyEntry("dc=example,dc=com",
+         new Attribute[0]);
+
+    final InMemoryDirectoryServerCompactEntryStore.StoredEntry s1 =
+         store.store(e1);
+    final InMemoryDirectoryServerCompactEntryStore.StoredEntry s2 =
+         store.store(e2);
+    final InMemoryDirectoryServerCompactEntryStore.StoredEntry s3 =
+         store.store(e3);
+    assertEquals(store.getAllocatedBytes(),
+         (long) InMemoryDirectoryServerCompactEntryStore.SEGMENT_SIZE);
+    assertTrue(store.getLiveBytes() > 0L);
+    assertFalse(store.needsCompaction());
+
+    assertEquals(s1.getEntry(e1.getParsedDN()), e1);
+    assertEquals(s2.getEntry(e2.getParsedDN()), e2);
+    assertEquals(s3.getEntry(e3.getParsedDN()), e3);
+
+    assertTrue(s1.getEntry(e1.getParsedDN()).hasAttribute(
+         "description;lang-en"));
+    assertEquals(s2.getEntry(e2.getParsedDN()).getAttributeValueBytes(
+         "userCertificate;binary"),
+         new byte[] { 0x00, (byte) 0x80, (byte) 0xFF, 0x7F });
+
+    // Releasing an entry should reduce the number of live bytes but not the
+    // allocated bytes, and retaining it again should restore them.
+    final long liveBytes = store.getLiveBytes();
+    store.release(s2);
+    assertTrue(store.getLiveBytes() < liveBytes);
+    assertEquals(store.getAllocatedBytes(),
+         (long) InMemoryDirectoryServerCompactEntryStore.SEGMENT_SIZE);
+    assertEquals(s2.getEntry(e2.getParsedDN()), e2);
+    store.retain(s2);
+    assertEquals(store.getLiveBytes(), liveBytes);
+
+    // Clearing the store should not affect entries that have already been
+    // stored, but subsequent entries should be written to a new segment.
+    store.clear();
+    assertEquals(s1.getEntry(e1.getParsedDN()), e1);
+    assertEquals(store.getAllocatedBytes(), 0L);
+    assertEquals(store.getLiveBytes(), 0L);
+
+    final InMemoryDirectoryServerCompactEntryStore.StoredEntry s4 =
+         store.store(e1);
+    assertEquals(s4.getEntry(e1.getParsedDN()), e1);
+    assertEquals(store.getAllocatedBytes(),
+         (long) InMemoryDirectoryServerCompactEntryStore.SEGMENT_SIZE);
+
+    // Releasing the only entry in the segment means that the segment no
+    // longer holds any live entries.
+    store.release(s4);
+    assertEquals(store.getAllocatedBytes(), 0L);
+    assertEquals(store.getLiveBytes(), 0L);
+  }
+
+
+
+  /**
+   * Tests the behavior when compacting a store in which most of the entries
+   * have been released.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testCompaction()
+         throws Exception
+  {
+    final InMemoryDirectoryServerCompactEntryStore store =
+         new InMemoryDirectoryServerCompactEntryStore(
+              new AtomicReference<Schema>());
+
+    // Each segment can hold eight of these entries, so they will be written to
+    // three segments, with the last four in the current segment.
+    final ReadOnlyEntry[] entries = new ReadOnlyEntry[20];
+    final InMemoryDirectoryServerCompactEntryStore.StoredEntry[] handles =
+         new InMemoryDirectoryServerCompactEntryStore.StoredEntry[20];
+    for (int i=0; i < entries.length; i++)
+    {
+      final byte[] value = new byte[1000000];
+      value[0] = (byte) i;
+      entries[i] = new ReadOnlyEntry(
+           "cn=entry " + (10 + i) + ",dc=example,dc=com",
+           new Attribute("objectClass", "top", "device"),
+           new Attribute("cn", "entry " + (10 + i)),
+           new Attribute("description", value));
+      handles[i] = store.store(entries[i]);
+    }
+
+    assertEquals(store.getAllocatedBytes(),
+         3L * InMemoryDirectoryServerCompactEntryStore.SEGMENT_SIZE);
+    final long entrySize = store.getLiveBytes() / 20L;
+    assertFalse(store.needsCompaction());
+
+    // Releasing all of the entries in the first segment should allow it to be
+    // reclaimed without compaction.
+    for (int i=0; i < 8; i++)
+    {
+      store.release(handles[i]);
+    }
+    assertEquals(store.getAllocatedBytes(),
+         2L * InMemoryDirectoryServerCompactEntryStore.SEGMENT_SIZE);
+    assertEquals(store.getLiveBytes(), (12L * entrySize));
+    assertFalse(store.needsCompaction());
+
+    // Releasing all but one entry in the second segment and half of the
+    // entries in the current segment should make it necessary to compact the
+    // store.
+    for (int i=8; i < 15; i++)
+    {
+      store.release(handles[i]);
+    }
+    assertFalse(store.needsCompaction());
+    store.release(handles[16]);
+    store.release(handles[17]);
+    assertEquals(store.getAllocatedBytes(),
+         2L * InMemoryDirectoryServerCompactEntryStore.SEGMENT_SIZE);
+    assertEquals(store.getLiveBytes(), (3L * entrySize));
+    assertTrue(store.needsCompaction());
+
+    // The remaining entries in both segments should be relocated to a new
+    // segment.
+    store.beginCompaction();
+    final int[] liveIndexes = { 15, 18, 19 };
+    for (final int i : liveIndexes)
+    {
+      final InMemoryDirectoryServerCompactEntryStore.StoredEntry r =
+           store.relocate(handles[i]);
+      assertNotSame(r, handles[i]);
+      assertSame(store.relocate(r), r);
+      assertEquals(r.getEntry(entries[i].getParsedDN()), entries[i]);
+    }
+    store.endCompaction();
+
+    assertEquals(store.getAllocatedBytes(),
+         (long) InMemoryDirectoryServerCompactEntryStore.SEGMENT_SIZE);
+    assertEquals(store.getLiveBytes(), (3L * entrySize));
+    assertEquals(store.getNumCompactions(), 1L);
+    assertFalse(store.needsCompaction());
+
+    // The original handles should remain usable, as they would be for a
+    // snapshot, and retaining them should make their segments live again.
+    assertEquals(handles[0].getEntry(entries[0].getParsedDN()), entries[0]);
+    assertEquals(handles[15].getEntry(entries[15].getParsedDN()),
+         entries[15]);
+    store.retain(handles[0]);
+    assertEquals(store.getAllocatedBytes(),
+         2L * InMemoryDirectoryServerCompactEntryStore.SEGMENT_SIZE);
+    assertEquals(store.getLiveBytes(), (4L * entrySize));
+  }
+
+
+
+  /**
+   * Tests the behavior when storing entries that use a large number of
+   * distinct attribute names, and entries with a large number of values.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testManyAttributesAndValues()
+         throws Exception
+  {
+    final InMemoryDirectoryServerCompactEntryStore store =
+         new InMemoryDirectoryServerCompactEntryStore(
+              new AtomicReference<Schema>());
+
+    final ArrayList<Attribute> attrs = new ArrayList<Attribute>(301);
+    attrs.add(new Attribute("objectClass", "top", "extensibleObject"));
+    for (int i=0; i < 300; i++)
+    {
+      attrs.add(new Attribute("attr" + i, "value" + i));
+    }
+
+    final ReadOnlyEntry e1 =
+         new ReadOnlyEntry("ou=many attributes,dc=example,dc=com", attrs);
+    final InMemoryDirectoryServerCompactEntryStore.StoredEntry s1 =
+         store.store(e1);
+    assertEquals(s1.getEntry(e1.getParsedDN()), e1);
+
+    final String[] values = new String[1000];
+    for (int i=0; i < values.length; i++)
+    {
+      values[i] = "uid=user." + i + ",ou=People,dc=example,dc=com";
+    }
+
+    final ReadOnlyEntry e2 = new ReadOnlyEntry(
+         "cn=large group,dc=example,dc=com",
+         new Attribute("objectClass", "top", "groupOfNames"),
+         new Attribute("cn", "large group"),
+         new Attribute("member", values));
+    final InMemoryDirectoryServerCompactEntryStore.StoredEntry s2 =
+         store.store(e2);
+    assertEquals(s2.getEntry(e2.getParsedDN()), e2);
+    assertEquals(s1.getEntry(e1.getParsedDN()), e1);
+  }
+
+
+
+  /**
+   * Tests the behavior when storing an entry that is larger than a segment.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testEntryLargerThanSegment()
+         throws Exception
+  {
+    final InMemoryDirectoryServerCompactEntryStore store =
+         new InMemoryDirectoryServerCompactEntryStore(
+              new AtomicReference<Schema>());
+
+    final ReadOnlyEntry small = new ReadOnlyEntry("dc=example,dc=com",
+         new Attribute("objectClass", "top", "domain"),
+         new Attribute("dc", "example"));
+    final InMemoryDirectoryServerCompactEntryStore.StoredEntry smallHandle =
+         store.store(small);
+
+    final byte[] photo =
+         new byte[InMemoryDirectoryServerCompactEntryStore.SEGMENT_SIZE + 1];
+    for (int i=0; i < photo.length; i++)
+    {
+      photo[i] = (byte) i;
+    }
+
+    final ReadOnlyEntry large = new ReadOnlyEntry(
+         "uid=large,dc=example,dc=com",
+         new Attribute("objectClass", "top", "person", "inetOrgPerson"),
+         new Attribute("uid", "large"),
+         new Attribute("jpegPhoto", photo));
+    final InMemoryDirectoryServerCompactEntryStore.StoredEntry largeHandle =
+         store.store(large);
+    assertEquals(largeHandle.getEntry(large.getParsedDN()), large);
+    assertTrue(store.getAllocatedBytes() >
+         (2L * InMemoryDirectoryServerCompactEntryStore.SEGMENT_SIZE));
+
+    // The next small entry should still go in the original segment.
+    final long allocated = store.getAllocatedBytes();
+    final InMemoryDirectoryServerCompactEntryStore.StoredEntry smallHandle2 =
+         store.store(small);
+    assertEquals(store.getAllocatedBytes(), allocated);
+    assertEquals(smallHandle.getEntry(small.getParsedDN()), small);
+    assertEquals(smallHandle2.getEntry(small.getParsedDN()), small);
+  }
+
+
+
+  /**
+   * Tests to ensure that entries are decoded with the schema currently held
+   * in the reference provided to the store.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testDecodeWithSchema()
+         throws Exception
+  {
+    final AtomicReference<Schema> schemaRef = new AtomicReference<Schema>();
+    final InMemoryDirectoryServerCompactEntryStore store =
+         new InMemoryDirectoryServerCompactEntryStore(schemaRef);
+
+    final ReadOnlyEntry e = new ReadOnlyEntry(
+         "dn: uid=test,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: person",
+         "uid: test",
+         "cn: Test User",
+         "sn: User",
+         "telephoneNumber: +1 123 456 7890");
+    final DN dn = e.getParsedDN();
+    final InMemoryDirectoryServerCompactEntryStore.StoredEntry s =
+         store.store(e);
+
+    assertFalse(s.getEntry(dn).hasAttributeValue("telephoneNumber",
+         "+11234567890"));
+
+    schemaRef.set(Schema.getDefaultStandardSchema());
+    assertTrue(s.getEntry(dn).hasAttributeValue("cn", "TEST USER"));
+    assertTrue(s.getEntry(dn).hasAttributeValue("telephoneNumber",
+         "+11234567890"));
+  }
+}
@@ -23,6 +23,8 @@ package com.unboundid.ldap.listener;
 
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.EnumSet;
 
 import org.testng.annotations.Test;
@@ -115,6 +117,20 @@ public final class InMemoryDirectoryServerConfigTestCase
 
     assertTrue(cfg.generateOperationalAttributes());
 
+    assertFalse(cfg.allowConcurrentReadOperations());
+
+    assertEquals(cfg.getSearchEvaluationThreads(), 1);
+
+    assertFalse(cfg.streamSearchResults());
+
+    assertEquals(cfg.getMaxChangeNotificationBacklog(), 1000);
+
+    assertNull(cfg.getJournalDirectory());
+
+    assertEquals(cfg.getJournalCheckpointInterval(), 100000);
+
+    assertFalse(cfg.useCompactEntryStorage());
+
     assertEquals(cfg.getMaxChangeLogEntries(), 0);
 
     assertEquals(cfg.getMaxConnections(), 0);
@@ -122,6 +138,15 @@ public final class InMemoryDirectoryServerConfigTestCase
     assertNotNull(cfg.getEqualityIndexAttributes());
     assertTrue(cfg.getEqualityIndexAttributes().isEmpty());
 
+    assertNotNull(cfg.getPresenceIndexAttributes());
+    assertTrue(cfg.getPresenceIndexAttributes().isEmpty());
+
+    assertNotNull(cfg.getSubstringIndexAttributes());
+    assertTrue(cfg.getSubstringIndexAttributes().isEmpty());
+
+    assertNotNull(cfg.getOrderingIndexAttributes());
+    assertTrue(cfg.getOrderingIndexAttributes().isEmpty());
+
     assertNotNull(cfg.getReferentialIntegrityAttributes());
     assertTrue(cfg.getReferentialIntegrityAttributes().isEmpty());
 
@@ -189,6 +214,8 @@ public final class InMemoryDirectoryServerConfigTestCase
 
     assertTrue(cfg.generateOperationalAttributes());
 
+    assertFalse(cfg.allowConcurrentReadOperations());
+
     assertEquals(cfg.getMaxChangeLogEntries(), 0);
 
     assertEquals(cfg.getMaxConnections(), 0);
@@ -196,6 +223,15 @@ public final class InMemoryDirectoryServerConfigTestCase
     assertNotNull(cfg.getEqualityIndexAttributes());
     assertTrue(cfg.getEqualityIndexAttributes().isEmpty());
 
+    assertNotNull(cfg.getPresenceIndexAttributes());
+    assertTrue(cfg.getPresenceIndexAttributes().isEmpty());
+
+    assertNotNull(cfg.getSubstringIndexAttributes());
+    assertTrue(cfg.getSubstringIndexAttributes().isEmpty());
+
+    assertNotNull(cfg.getOrderingIndexAttributes());
+    assertTrue(cfg.getOrderingIndexAttributes().isEmpty());
+
     assertNotNull(cfg.getReferentialIntegrityAttributes());
     assertTrue(cfg.getReferentialIntegrityAttributes().isEmpty());
 
@@ -952,6 +988,195 @@ public final class InMemoryDirectoryServerConfigTestCase
 
 
 
+  /**
+   * Tests the behavior of the methods for allowing concurrent read operations.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testAllowConcurrentReadOperations()
+         throws Exception
+  {
+    final InMemoryDirectoryServerConfig cfg =
+         new InMemoryDirectoryServerConfig("dc=example,dc=com");
+
+    assertFalse(cfg.allowConcurrentReadOperations());
+
+    assertNotNull(cfg.toString());
+
+    cfg.setAllowConcurrentReadOperations(true);
+    assertTrue(cfg.allowConcurrentReadOperations());
+    assertTrue(new InMemoryDirectoryServerConfig(
+         cfg).allowConcurrentReadOperations());
+
+    assertNotNull(cfg.toString());
+
+    cfg.setAllowConcurrentReadOperations(false);
+    assertFalse(cfg.allowConcurrentReadOperations());
+
+    assertNotNull(cfg.toString());
+  }
+
+
+
+  /**
+   * Tests the behavior of the methods for the number of search evaluation
+   * threads.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testSearchEvaluationThreads()
+         throws Exception
+  {
+    final InMemoryDirectoryServerConfig cfg =
+         new InMemoryDirectoryServerConfig("dc=example,dc=com");
+
+    assertEquals(cfg.getSearchEvaluationThreads(), 1);
+
+    cfg.setSearchEvaluationThreads(4);
+    assertEquals(cfg.getSearchEvaluationThreads(), 4);
+    assertEquals(
+         new InMemoryDirectoryServerConfig(cfg).getSearchEvaluationThreads(),
+         4);
+    assertTrue(cfg.toString().contains("searchEvaluationThreads=4"));
+
+    cfg.setSearchEvaluationThreads(0);
+    assertEquals(cfg.getSearchEvaluationThreads(), 1);
+
+    cfg.setSearchEvaluationThreads(-1);
+    assertEquals(cfg.getSearchEvaluationThreads(), 1);
+    assertFalse(cfg.toString().contains("searchEvaluationThreads"));
+  }
+
+
+
+  /**
+   * Tests the behavior of the methods for streaming search results.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testStreamSearchResults()
+         throws Exception
+  {
+    final InMemoryDirectoryServerConfig cfg =
+         new InMemoryDirectoryServerConfig("dc=example,dc=com");
+
+    assertFalse(cfg.streamSearchResults());
+    assertFalse(cfg.toString().contains("streamSearchResults"));
+
+    cfg.setStreamSearchResults(true);
+    assertTrue(cfg.streamSearchResults());
+    assertTrue(new InMemoryDirectoryServerConfig(cfg).streamSearchResults());
+    assertTrue(cfg.toString().contains("streamSearchResults=true"));
+
+    cfg.setStreamSearchResults(false);
+    assertFalse(cfg.streamSearchResults());
+  }
+
+
+
+  /**
+   * Tests the behavior of the methods for the maximum change notification
+   * backlog.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testMaxChangeNotificationBacklog()
+         throws Exception
+  {
+    final InMemoryDirectoryServerConfig cfg =
+         new InMemoryDirectoryServerConfig("dc=example,dc=com");
+
+    assertEquals(cfg.getMaxChangeNotificationBacklog(), 1000);
+
+    cfg.setMaxChangeNotificationBacklog(50);
+    assertEquals(cfg.getMaxChangeNotificationBacklog(), 50);
+    assertEquals(
+         new InMemoryDirectoryServerConfig(cfg).
+              getMaxChangeNotificationBacklog(),
+         50);
+    assertTrue(cfg.toString().contains("maxChangeNotificationBacklog=50"));
+
+    cfg.setMaxChangeNotificationBacklog(0);
+    assertEquals(cfg.getMaxChangeNotificationBacklog(), 1000);
+
+    cfg.setMaxChangeNotificationBacklog(-1);
+    assertEquals(cfg.getMaxChangeNotificationBacklog(), 1000);
+  }
+
+
+
+  /**
+   * Tests the behavior of the methods for the journal directory and checkpoint
+   * interval.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testJournal()
+         throws Exception
+  {
+    final InMemoryDirectoryServerConfig cfg =
+         new InMemoryDirectoryServerConfig("dc=example,dc=com");
+
+    assertNull(cfg.getJournalDirectory());
+    assertEquals(cfg.getJournalCheckpointInterval(), 100000);
+    assertFalse(cfg.toString().contains("journalDirectory"));
+
+    final File journalDir = createTempDir();
+    cfg.setJournalDirectory(journalDir);
+    cfg.setJournalCheckpointInterval(500);
+    assertEquals(cfg.getJournalDirectory(), journalDir);
+    assertEquals(cfg.getJournalCheckpointInterval(), 500);
+
+    final InMemoryDirectoryServerConfig copy =
+         new InMemoryDirectoryServerConfig(cfg);
+    assertEquals(copy.getJournalDirectory(), journalDir);
+    assertEquals(copy.getJournalCheckpointInterval(), 500);
+
+    assertTrue(cfg.toString().contains("journalDirectory='" +
+         journalDir.getAbsolutePath() + '\''));
+    assertTrue(cfg.toString().contains("journalCheckpointInterval=500"));
+
+    cfg.setJournalCheckpointInterval(0);
+    assertEquals(cfg.getJournalCheckpointInterval(), 0);
+
+    cfg.setJournalDirectory(null);
+    assertNull(cfg.getJournalDirectory());
+    assertFalse(cfg.toString().contains("journalDirectory"));
+  }
+
+
+
+  /**
+   * Tests the behavior of the methods for compact entry storage.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testUseCompactEntryStorage()
+         throws Exception
+  {
+    final InMemoryDirectoryServerConfig cfg =
+         new InMemoryDirectoryServerConfig("dc=example,dc=com");
+
+    assertFalse(cfg.useCompactEntryStorage());
+    assertFalse(cfg.toString().contains("useCompactEntryStorage"));
+
+    cfg.setUseCompactEntryStorage(true);
+    assertTrue(cfg.useCompactEntryStorage());
+    assertTrue(new InMemoryDirectoryServerConfig(cfg).useCompactEntryStorage());
+    assertTrue(cfg.toString().contains("useCompactEntryStorage=true"));
+
+    cfg.setUseCompactEntryStorage(false);
+    assertFalse(cfg.useCompactEntryStorage());
+  }
+
+
+
   /**
    * Tests the behavior of the methods for maintaining a changelog.
    *
@@ -1075,6 +1300,63 @@ public final class InMemoryDirectoryServerConfigTestCase
 
 
 
+  /**
+   * Tests the behavior of the methods for interacting with the presence,
+   * substring, and ordering index attributes.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testPresenceSubstringAndOrderingIndexAttributes()
+         throws Exception
+  {
+    final InMemoryDirectoryServerConfig cfg =
+         new InMemoryDirectoryServerConfig("dc=example,dc=com");
+
+    cfg.setPresenceIndexAttributes("description");
+    assertEquals(cfg.getPresenceIndexAttributes().size(), 1);
+    assertTrue(cfg.getPresenceIndexAttributes().contains("description"));
+
+    cfg.setSubstringIndexAttributes("cn", "mail");
+    assertEquals(cfg.getSubstringIndexAttributes().size(), 2);
+    assertTrue(cfg.getSubstringIndexAttributes().contains("cn"));
+    assertTrue(cfg.getSubstringIndexAttributes().contains("mail"));
+
+    cfg.setOrderingIndexAttributes(Arrays.asList("createTimestamp",
+         "employeeNumber", "sn"));
+    assertEquals(cfg.getOrderingIndexAttributes().size(), 3);
+    assertTrue(cfg.getOrderingIndexAttributes().contains("createTimestamp"));
+    assertTrue(cfg.getOrderingIndexAttributes().contains("employeeNumber"));
+    assertTrue(cfg.getOrderingIndexAttributes().contains("sn"));
+
+    assertNotNull(cfg.toString());
+
+    final InMemoryDirectoryServerConfig copy =
+         new InMemoryDirectoryServerConfig(cfg);
+    assertEquals(copy.getPresenceIndexAttributes(),
+         cfg.getPresenceIndexAttributes());
+    assertEquals(copy.getSubstringIndexAttributes(),
+         cfg.getSubstringIndexAttributes());
+    assertEquals(copy.getOrderingIndexAttributes(),
+         cfg.getOrderingIndexAttributes());
+
+    cfg.setPresenceIndexAttributes((String[]) null);
+    assertTrue(cfg.getPresenceIndexAttributes().isEmpty());
+
+    cfg.setSubstringIndexAttributes((Collection<String>) null);
+    assertTrue(cfg.getSubstringIndexAttributes().isEmpty());
+
+    cfg.setOrderingIndexAttributes();
+    assertTrue(cfg.getOrderingIndexAttributes().isEmpty());
+
+    assertEquals(copy.getOrderingIndexAttributes().size(), 3);
+
+    assertNotNull(cfg.toString());
+  }
+
+
+
+
   /**
    * Tests the behavior of the methods for interacting with the referential
    * integrity attributes.
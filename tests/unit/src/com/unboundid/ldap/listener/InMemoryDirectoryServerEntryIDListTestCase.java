@@ -0,0 +1,148 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.listener;
+
+
+
+import java.util.Arrays;
+
+import org.testng.annotations.Test;
+
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.LDAPSDKTestCase;
+
+
+
+/**
+ * This class provides a set of test cases for the
+ * InMemoryDirectoryServerEntryIDList and InMemoryDirectoryServerEntryIDMap
+ * classes.
+ */
+public final class InMemoryDirectoryServerEntryIDListTestCase
+       extends LDAPSDKTestCase
+{
+  /**
+   * Tests adding and removing entry IDs, both in and out of order.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testAddAndRemove()
+         throws Exception
+  {
+    final InMemoryDirectoryServerEntryIDList l =
+         new InMemoryDirectoryServerEntryIDList();
+    assertTrue(l.isEmpty());
+    assertEquals(l.toArray().length, 0);
+
+    for (int i=0; i < 100; i += 2)
+    {
+      assertTrue(l.add(i));
+    }
+    assertTrue(l.add(51));
+    assertTrue(l.add(1));
+    assertFalse(l.add(50));
+    assertEquals(l.size(), 52);
+    assertTrue(l.contains(51));
+    assertFalse(l.contains(53));
+
+    final int[] ids = l.toArray();
+    final int[] sorted = ids.clone();
+    Arrays.sort(sorted);
+    assertTrue(Arrays.equals(ids, sorted));
+
+    assertTrue(l.remove(51));
+    assertFalse(l.remove(51));
+    assertFalse(l.contains(51));
+
+    for (int i=0; i < 100; i++)
+    {
+      l.remove(i);
+    }
+    assertTrue(l.isEmpty());
+    assertTrue(l.add(7));
+    assertTrue(Arrays.equals(l.toArray(), new int[] { 7 }));
+  }
+
+
+
+  /**
+   * Tests the methods used to combine sorted arrays of entry IDs.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testIntersectAndUnion()
+         throws Exception
+  {
+    final int[] a = { 1, 3, 5, 7, 9 };
+    final int[] b = { 2, 3, 4, 5, 10 };
+    final int[] empty = InMemoryDirectoryServerEntryIDList.NO_IDS;
+
+    assertTrue(Arrays.equals(
+         InMemoryDirectoryServerEntryIDList.intersect(a, b),
+         new int[] { 3, 5 }));
+    assertTrue(Arrays.equals(
+         InMemoryDirectoryServerEntryIDList.intersect(a, empty), empty));
+    assertTrue(Arrays.equals(InMemoryDirectoryServerEntryIDList.union(a, b),
+         new int[] { 1, 2, 3, 4, 5, 7, 9, 10 }));
+    assertTrue(Arrays.equals(
+         InMemoryDirectoryServerEntryIDList.union(empty, b), b));
+  }
+
+
+
+  /**
+   * Tests the assignment, reference counting, and reuse of entry IDs.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testEntryIDMap()
+         throws Exception
+  {
+    final InMemoryDirectoryServerEntryIDMap m =
+         new InMemoryDirectoryServerEntryIDMap();
+    final DN dn1 = new DN("dc=example,dc=com");
+    final DN dn2 = new DN("ou=People,dc=example,dc=com");
+
+    final int id1 = m.acquire(dn1);
+    final int id2 = m.acquire(dn2);
+    assertFalse(id1 == id2);
+    assertEquals(m.acquire(dn1), id1);
+    assertEquals(m.size(), 2);
+    assertEquals(m.getID(dn2), id2);
+    assertEquals(m.getDN(id1), dn1);
+    assertEquals(m.getDNs(new int[] { id1, id2 }).size(), 2);
+
+    m.release(id1);
+    assertEquals(m.getID(dn1), id1);
+    m.release(id1);
+    assertEquals(m.getID(dn1), -1);
+    assertNull(m.getDN(id1));
+    assertEquals(m.size(), 1);
+
+    final DN dn3 = new DN("ou=Groups,dc=example,dc=com");
+    assertEquals(m.acquire(dn3), id1);
+    assertEquals(m.getDN(id1), dn3);
+    assertNull(m.getDN(12345));
+  }
+}
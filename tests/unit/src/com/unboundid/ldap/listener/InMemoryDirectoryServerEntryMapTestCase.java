@@ -0,0 +1,749 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.listener;
+
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.testng.annotations.Test;
+
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPSDKTestCase;
+import com.unboundid.ldap.sdk.ReadOnlyEntry;
+import com.unboundid.ldap.sdk.schema.Schema;
+
+
+
+/**
+ * This class provides a set of test cases for the in-memory directory server
+ * entry map.
+ */
+public final class InMemoryDirectoryServerEntryMapTestCase
+       extends LDAPSDKTestCase
+{
+  /**
+   * Tests the behavior of an entry map that has not been populated.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testEmptyMap()
+         throws Exception
+  {
+    final InMemoryDirectoryServerEntryMap m =
+         new InMemoryDirectoryServerEntryMap();
+
+    assertEquals(m.size(), 0);
+    assertTrue(m.isEmpty());
+    assertNull(m.get(new DN("dc=example,dc=com")));
+    assertNull(m.get("dc=example,dc=com"));
+    assertFalse(m.containsKey(new DN("dc=example,dc=com")));
+    assertNull(m.remove(new DN("dc=example,dc=com")));
+    assertFalse(m.entrySet().iterator().hasNext());
+    assertEquals(m, new TreeMap<DN,ReadOnlyEntry>());
+
+    assertTrue(m.getReadOnlyView().isEmpty());
+  }
+
+
+
+  /**
+   * Performs a series of random updates against both an entry map and a tree
+   * map and ensures that they always have the same content and ordering.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testRandomUpdates()
+         throws Exception
+  {
+    final InMemoryDirectoryServerEntryMap m =
+         new InMemoryDirectoryServerEntryMap();
+    final TreeMap<DN,ReadOnlyEntry> expected = new TreeMap<DN,ReadOnlyEntry>();
+
+    final Random random = new Random(12345L);
+    for (int i=0; i < 5000; i++)
+    {
+      final ReadOnlyEntry e = createEntry(random.nextInt(500));
+      if (random.nextInt(3) == 0)
+      {
+        assertEquals(m.remove(e.getParsedDN()),
+             expected.remove(e.getParsedDN()));
+      }
+      else
+      {
+        assertEquals(m.put(e.getParsedDN(), e),
+             expected.put(e.getParsedDN(), e));
+      }
+
+      assertEquals(m.size(), expected.size());
+    }
+
+    assertMapsEqual(m, expected);
+
+    for (final DN dn : new ArrayList<DN>(expected.keySet()))
+    {
+      assertNotNull(m.remove(dn));
+    }
+
+    assertTrue(m.isEmpty());
+    assertFalse(m.entrySet().iterator().hasNext());
+  }
+
+
+
+  /**
+   * Tests the behavior of an entry map that holds its entries in a compact
+   * entry store.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testCompactEntryStore()
+         throws Exception
+  {
+    final InMemoryDirectoryServerEntryMap m =
+         new InMemoryDirectoryServerEntryMap(
+              new InMemoryDirectoryServerCompactEntryStore(
+                   new AtomicReference<Schema>()));
+    final TreeMap<DN,ReadOnlyEntry> expected = new TreeMap<DN,ReadOnlyEntry>();
+
+    final Random random = new Random(12345L);
+    for (int i=0; i < 5000; i++)
+    {
+      final ReadOnlyEntry e = createEntry(random.nextInt(500));
+      if (random.nextInt(3) == 0)
+      {
+        assertEquals(m.remove(e.getParsedDN()),
+             expected.remove(e.getParsedDN()));
+      }
+      else
+      {
+        assertEquals(m.put(e.getParsedDN(), e),
+             expected.put(e.getParsedDN(), e));
+      }
+
+      assertEquals(m.size(), expected.size());
+    }
+
+    assertEquals(m, expected);
+
+    // Entries should be decoded each time they are retrieved.
+    final DN dn = expected.firstKey();
+    assertEquals(m.get(dn), expected.get(dn));
+    assertNotSame(m.get(dn), m.get(dn));
+
+    // A read-only view should not be affected by later changes.
+    final InMemoryDirectoryServerEntryMap view = m.getReadOnlyView();
+    m.remove(dn);
+    assertEquals(view, expected);
+    assertFalse(m.containsKey(dn));
+
+    // Entries from a map that does not use the store should be encoded when
+    // they are added, and entries from a map that does use the store should
+    // be decoded when they are added to a map that does not.
+    final InMemoryDirectoryServerEntryMap heapMap =
+         new InMemoryDirectoryServerEntryMap();
+    heapMap.putAll(view);
+    assertEquals(heapMap, expected);
+
+    m.clear();
+    assertTrue(m.isEmpty());
+    m.putAll(heapMap);
+    assertEquals(m, expected);
+    assertNotSame(m.get(dn), heapMap.get(dn));
+    assertSame(heapMap.get(dn), heapMap.get(dn));
+  }
+
+
+
+  /**
+   * Tests to ensure that an entry map that holds its entries in a compact
+   * entry store keeps track of the live entries in the store, and compacts
+   * the store when most of its space is no longer in use.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testCompactEntryStoreCompaction()
+         throws Exception
+  {
+    final InMemoryDirectoryServerCompactEntryStore store =
+         new InMemoryDirectoryServerCompactEntryStore(
+              new AtomicReference<Schema>());
+    final InMemoryDirectoryServerEntryMap m =
+         new InMemoryDirectoryServerEntryMap(store);
+
+    final ArrayList<ReadOnlyEntry> entries = new ArrayList<ReadOnlyEntry>(24);
+    for (int i=0; i < 24; i++)
+    {
+      final byte[] value = new byte[1000000];
+      value[0] = (byte) i;
+      final ReadOnlyEntry e = new ReadOnlyEntry(
+           "cn=entry " + (10 + i) + ",dc=example,dc=com",
+           new Attribute("objectClass", "top", "device"),
+           new Attribute("cn", "entry " + (10 + i)),
+           new Attribute("description", value));
+      entries.add(e);
+      m.put(e.getParsedDN(), e);
+    }
+
+    final long entrySize = store.getLiveBytes() / 24L;
+    assertEquals(store.getLiveBytes(), (24L * entrySize));
+    assertEquals(store.getAllocatedBytes(),
+         3L * InMemoryDirectoryServerCompactEntryStore.SEGMENT_SIZE);
+
+    // Replacing an entry should release the old version.
+    m.put(entries.get(0).getParsedDN(), entries.get(0));
+    assertEquals(store.getLiveBytes(), (24L * entrySize));
+
+    final InMemoryDirectoryServerEntryMap view = m.getReadOnlyView();
+    final TreeMap<DN,ReadOnlyEntry> expected = new TreeMap<DN,ReadOnlyEntry>();
+    for (final ReadOnlyEntry e : entries)
+    {
+      expected.put(e.getParsedDN(), e);
+    }
+
+    // Removing three out of every four entries should cause the store to be
+    // compacted, so that segments in which only a few entries remain no longer
+    // need to be retained.
+    long numLive = 24L;
+    for (int i=0; i < 24; i++)
+    {
+      if ((i % 4) != 3)
+      {
+        m.remove(entries.get(i).getParsedDN());
+        expected.remove(entries.get(i).getParsedDN());
+        numLive--;
+        assertEquals(store.getLiveBytes(), (numLive * entrySize));
+        assertFalse(store.needsCompaction());
+      }
+    }
+
+    assertEquals(store.getNumCompactions(), 1L);
+    assertEquals(store.getAllocatedBytes(),
+         2L * InMemoryDirectoryServerCompactEntryStore.SEGMENT_SIZE);
+    assertEquals(m, expected);
+
+    // The read-only view should still hold all of the original entries, and
+    // restoring its content should make them live again.
+    assertEquals(view.size(), 24);
+    assertEquals(view.get(entries.get(0).getParsedDN()), entries.get(0));
+
+    final List<Map.Entry<DN,ReadOnlyEntry>> removedEntries =
+         new ArrayList<Map.Entry<DN,ReadOnlyEntry>>(24);
+    final List<Map.Entry<DN,ReadOnlyEntry>> addedEntries =
+         new ArrayList<Map.Entry<DN,ReadOnlyEntry>>(24);
+    m.replaceContent(view, removedEntries, addedEntries);
+    assertEquals(m.size(), 24);
+    assertEquals(store.getLiveBytes(), (24L * entrySize));
+
+    m.clear();
+    assertEquals(store.getLiveBytes(), 0L);
+    assertEquals(store.getAllocatedBytes(), 0L);
+
+    m.putAll(view);
+    assertEquals(store.getLiveBytes(), (24L * entrySize));
+    assertEquals(m.get(entries.get(23).getParsedDN()), entries.get(23));
+  }
+
+
+
+  /**
+   * Tests to ensure that a read-only view is not affected by subsequent
+   * changes to the map, and that it cannot be altered.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testReadOnlyView()
+         throws Exception
+  {
+    final InMemoryDirectoryServerEntryMap m =
+         new InMemoryDirectoryServerEntryMap();
+    for (int i=0; i < 100; i++)
+    {
+      final ReadOnlyEntry e = createEntry(i);
+      m.put(e.getParsedDN(), e);
+    }
+
+    final TreeMap<DN,ReadOnlyEntry> expected =
+         new TreeMap<DN,ReadOnlyEntry>(m);
+    final InMemoryDirectoryServerEntryMap view = m.getReadOnlyView();
+    assertSame(view.getReadOnlyView(), view);
+
+    final Iterator<Map.Entry<DN,ReadOnlyEntry>> iterator =
+         m.entrySet().iterator();
+
+    for (int i=0; i < 100; i += 2)
+    {
+      m.remove(createEntry(i).getParsedDN());
+    }
+
+    for (int i=100; i < 200; i++)
+    {
+      final ReadOnlyEntry e = createEntry(i);
+      m.put(e.getParsedDN(), e);
+    }
+
+    assertEquals(m.size(), 150);
+    assertMapsEqual(view, expected);
+
+    int count = 0;
+    while (iterator.hasNext())
+    {
+      iterator.next();
+      count++;
+    }
+    assertEquals(count, 100);
+
+    try
+    {
+      final ReadOnlyEntry e = createEntry(1000);
+      view.put(e.getParsedDN(), e);
+      fail("Expected an exception when trying to alter a read-only view");
+    }
+    catch (final UnsupportedOperationException uoe)
+    {
+      // This was expected.
+    }
+
+    try
+    {
+      view.clear();
+      fail("Expected an exception when trying to clear a read-only view");
+    }
+    catch (final UnsupportedOperationException uoe)
+    {
+      // This was expected.
+    }
+
+    m.clear();
+    assertTrue(m.isEmpty());
+    assertMapsEqual(view, expected);
+  }
+
+
+
+  /**
+   * Tests the behavior of the putAll method when the map is empty and the
+   * provided map is either another entry map or a tree map.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testPutAll()
+         throws Exception
+  {
+    final TreeMap<DN,ReadOnlyEntry> expected = new TreeMap<DN,ReadOnlyEntry>();
+    for (int i=0; i < 1000; i++)
+    {
+      final ReadOnlyEntry e = createEntry(i);
+      expected.put(e.getParsedDN(), e);
+    }
+
+    final InMemoryDirectoryServerEntryMap m1 =
+         new InMemoryDirectoryServerEntryMap();
+    m1.putAll(expected);
+    assertMapsEqual(m1, expected);
+
+    final InMemoryDirectoryServerEntryMap m2 =
+         new InMemoryDirectoryServerEntryMap();
+    m2.putAll(m1.getReadOnlyView());
+    assertMapsEqual(m2, expected);
+
+    m2.remove(createEntry(0).getParsedDN());
+    assertEquals(m2.size(), 999);
+    assertMapsEqual(m1, expected);
+
+    final ReadOnlyEntry e = createEntry(1000);
+    m2.putAll(expected);
+    m2.put(e.getParsedDN(), e);
+    assertEquals(m2.size(), 1001);
+    assertMapsEqual(m1, expected);
+  }
+
+
+
+  /**
+   * Tests the behavior of the replaceContent method, both when restoring a
+   * read-only view obtained from the same map and when replacing the content
+   * with a map that does not share any of its structure.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testReplaceContent()
+         throws Exception
+  {
+    final InMemoryDirectoryServerEntryMap m =
+         new InMemoryDirectoryServerEntryMap();
+    for (int i=0; i < 2000; i++)
+    {
+      final ReadOnlyEntry e = createEntry(i);
+      m.put(e.getParsedDN(), e);
+    }
+
+    final InMemoryDirectoryServerEntryMap view = m.getReadOnlyView();
+    final TreeMap<DN,ReadOnlyEntry> viewContent =
+         new TreeMap<DN,ReadOnlyEntry>(view);
+
+    final Random random = new Random(54321L);
+    for (int i=0; i < 50; i++)
+    {
+      final int id = random.nextInt(2100);
+      if (random.nextBoolean())
+      {
+        m.remove(createEntry(id).getParsedDN());
+      }
+      else
+      {
+        final ReadOnlyEntry e = createEntry(id);
+        m.put(e.getParsedDN(), e);
+      }
+    }
+
+    TreeMap<DN,ReadOnlyEntry> oldContent = new TreeMap<DN,ReadOnlyEntry>(m);
+    ArrayList<Map.Entry<DN,ReadOnlyEntry>> removed =
+         new ArrayList<Map.Entry<DN,ReadOnlyEntry>>();
+    ArrayList<Map.Entry<DN,ReadOnlyEntry>> added =
+         new ArrayList<Map.Entry<DN,ReadOnlyEntry>>();
+    m.replaceContent(view, removed, added);
+    assertMapsEqual(m, viewContent);
+    assertDiff(oldContent, viewContent, removed, added);
+    assertTrue(removed.size() <= 50);
+    assertTrue(added.size() <= 50);
+
+    final DN people = new DN("ou=People,dc=example,dc=com");
+    assertEquals(m.getChildDNs(people), viewContent.keySet());
+
+    final TreeMap<DN,ReadOnlyEntry> unrelatedContent =
+         new TreeMap<DN,ReadOnlyEntry>();
+    for (int i=1000; i < 3000; i++)
+    {
+      final ReadOnlyEntry e = createEntry(i);
+      unrelatedContent.put(e.getParsedDN(), e);
+    }
+
+    oldContent = new TreeMap<DN,ReadOnlyEntry>(m);
+    removed = new ArrayList<Map.Entry<DN,ReadOnlyEntry>>();
+    added = new ArrayList<Map.Entry<DN,ReadOnlyEntry>>();
+    m.replaceContent(unrelatedContent, removed, added);
+    assertMapsEqual(m, unrelatedContent);
+    assertDiff(oldContent, unrelatedContent, removed, added);
+    assertEquals(m.getChildDNs(people), unrelatedContent.keySet());
+
+    removed = new ArrayList<Map.Entry<DN,ReadOnlyEntry>>();
+    added = new ArrayList<Map.Entry<DN,ReadOnlyEntry>>();
+    m.replaceContent(new TreeMap<DN,ReadOnlyEntry>(), removed, added);
+    assertTrue(m.isEmpty());
+    assertEquals(removed.size(), 2000);
+    assertTrue(added.isEmpty());
+    assertTrue(m.getChildDNs(people).isEmpty());
+
+    assertMapsEqual(view, viewContent);
+  }
+
+
+
+  /**
+   * Tests to ensure that a read-only view can be serialized and deserialized.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testSerialization()
+         throws Exception
+  {
+    final InMemoryDirectoryServerEntryMap m =
+         new InMemoryDirectoryServerEntryMap();
+    for (int i=0; i < 10; i++)
+    {
+      final ReadOnlyEntry e = createEntry(i);
+      m.put(e.getParsedDN(), e);
+    }
+
+    final ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    final ObjectOutputStream objectOutputStream =
+         new ObjectOutputStream(byteOutputStream);
+    objectOutputStream.writeObject(m.getReadOnlyView());
+    objectOutputStream.close();
+
+    final ObjectInputStream objectInputStream = new ObjectInputStream(
+         new ByteArrayInputStream(byteOutputStream.toByteArray()));
+    final Map<?,?> decoded = (Map<?,?>) objectInputStream.readObject();
+    objectInputStream.close();
+
+    assertEquals(decoded, m);
+  }
+
+
+
+  /**
+   * Tests the methods used to navigate the hierarchy of entries in the map,
+   * both for a map that may be updated and for a read-only view.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testHierarchy()
+         throws Exception
+  {
+    final InMemoryDirectoryServerEntryMap m =
+         new InMemoryDirectoryServerEntryMap();
+    final String[] dns =
+    {
+      "dc=example,dc=com",
+      "ou=People,dc=example,dc=com",
+      "ou=Groups,dc=example,dc=com",
+      "ou=Sub,ou=People,dc=example,dc=com",
+      "uid=user.1,ou=Sub,ou=People,dc=example,dc=com",
+      "dc=example,dc=org",
+      "ou=People,dc=example,dc=org"
+    };
+    for (final String dn : dns)
+    {
+      final ReadOnlyEntry e = new ReadOnlyEntry(new Entry(dn));
+      m.put(e.getParsedDN(), e);
+    }
+    for (int i=0; i < 5; i++)
+    {
+      final ReadOnlyEntry e = createEntry(i);
+      m.put(e.getParsedDN(), e);
+    }
+
+    final DN base = new DN("dc=example,dc=com");
+    final DN people = new DN("ou=People,dc=example,dc=com");
+    final DN groups = new DN("ou=Groups,dc=example,dc=com");
+
+    for (final InMemoryDirectoryServerEntryMap map :
+         new InMemoryDirectoryServerEntryMap[] { m, m.getReadOnlyView() })
+    {
+      assertTrue(map.hasSubordinates(base));
+      assertTrue(map.hasSubordinates(people));
+      assertFalse(map.hasSubordinates(groups));
+      assertFalse(map.hasSubordinates(new DN("dc=missing,dc=com")));
+      assertTrue(map.hasSubordinates(new DN("dc=com")));
+
+      assertEquals(map.getChildDNs(base).size(), 2);
+      assertTrue(map.getChildDNs(base).contains(people));
+      assertTrue(map.getChildDNs(base).contains(groups));
+      assertEquals(map.getChildDNs(people).size(), 6);
+      assertTrue(map.getChildDNs(groups).isEmpty());
+
+      int count = 0;
+      final Iterator<Map.Entry<DN,ReadOnlyEntry>> childIterator =
+           map.childIterator(people);
+      while (childIterator.hasNext())
+      {
+        assertEquals(childIterator.next().getKey().getParent(), people);
+        count++;
+      }
+      assertEquals(count, 6);
+
+      count = 0;
+      final Iterator<Map.Entry<DN,ReadOnlyEntry>> subtreeIterator =
+           map.subtreeIterator(base);
+      while (subtreeIterator.hasNext())
+      {
+        assertTrue(subtreeIterator.next().getKey().isDescendantOf(base, true));
+        count++;
+      }
+      assertEquals(count, 10);
+
+      assertFalse(map.subtreeIterator(new DN("dc=missing")).hasNext());
+      assertTrue(map.subtreeIterator(groups).hasNext());
+    }
+
+    final DN sub = new DN("ou=Sub,ou=People,dc=example,dc=com");
+    m.remove(new DN("uid=user.1,ou=Sub,ou=People,dc=example,dc=com"));
+    assertFalse(m.hasSubordinates(sub));
+    assertTrue(m.getReadOnlyView().getChildDNs(sub).isEmpty());
+
+    final InMemoryDirectoryServerEntryMap copy =
+         new InMemoryDirectoryServerEntryMap();
+    copy.putAll(m.getReadOnlyView());
+    assertEquals(copy.getChildDNs(people), m.getChildDNs(people));
+
+    m.clear();
+    assertTrue(m.getChildDNs(people).isEmpty());
+    assertEquals(copy.getChildDNs(people).size(), 6);
+  }
+
+
+
+  /**
+   * Tests to ensure that a read-only view identifies the same child DNs as
+   * the index maintained by a map that may be updated, including for entries
+   * whose parent entries do not exist in the map.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testChildDNsInReadOnlyView()
+         throws Exception
+  {
+    final InMemoryDirectoryServerEntryMap m =
+         new InMemoryDirectoryServerEntryMap();
+    final ArrayList<DN> allDNs = new ArrayList<DN>();
+    final DN base = new DN("dc=example,dc=com");
+    allDNs.add(base);
+
+    final Random random = new Random(67890L);
+    for (int i=0; i < 2000; i++)
+    {
+      final DN parentDN = allDNs.get(random.nextInt(allDNs.size()));
+      final DN dn = new DN("ou=" + i + ',' + parentDN);
+      allDNs.add(dn);
+      final ReadOnlyEntry e = new ReadOnlyEntry(new Entry(dn));
+      m.put(dn, e);
+    }
+
+    // Remove some of the entries so that some of the remaining entries will
+    // not have parents.
+    for (int i=0; i < 200; i++)
+    {
+      m.remove(allDNs.get(random.nextInt(allDNs.size())));
+    }
+
+    final InMemoryDirectoryServerEntryMap view = m.getReadOnlyView();
+    for (final DN dn : allDNs)
+    {
+      assertEquals(view.getChildDNs(dn), m.getChildDNs(dn));
+    }
+  }
+
+
+
+  /**
+   * Creates a test entry with the provided identifier.
+   *
+   * @param  i  The identifier to use for the entry.
+   *
+   * @return  The test entry that was created.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  private static ReadOnlyEntry createEntry(final int i)
+          throws Exception
+  {
+    return new ReadOnlyEntry(
+         "dn: uid=user." + i + ",ou=People,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: person",
+         "uid: user." + i,
+         "cn: User " + i,
+         "sn: " + i);
+  }
+
+
+
+  /**
+   * Ensures that the provided lists of removed and added entries reflect the
+   * differences between the old and new content.  Entries are considered to
+   * have changed if the new content holds a different entry object for the
+   * same DN.
+   *
+   * @param  oldContent  The content of the map before it was replaced.
+   * @param  newContent  The content of the map after it was replaced.
+   * @param  removed     The entries reported as removed.
+   * @param  added       The entries reported as added.
+   */
+  private static void assertDiff(
+       final Map<DN,ReadOnlyEntry> oldContent,
+       final Map<DN,ReadOnlyEntry> newContent,
+       final List<Map.Entry<DN,ReadOnlyEntry>> removed,
+       final List<Map.Entry<DN,ReadOnlyEntry>> added)
+  {
+    final TreeMap<DN,ReadOnlyEntry> expectedRemoved =
+         new TreeMap<DN,ReadOnlyEntry>();
+    for (final Map.Entry<DN,ReadOnlyEntry> e : oldContent.entrySet())
+    {
+      if (newContent.get(e.getKey()) != e.getValue())
+      {
+        expectedRemoved.put(e.getKey(), e.getValue());
+      }
+    }
+
+    final TreeMap<DN,ReadOnlyEntry> expectedAdded =
+         new TreeMap<DN,ReadOnlyEntry>();
+    for (final Map.Entry<DN,ReadOnlyEntry> e : newContent.entrySet())
+    {
+      if (oldContent.get(e.getKey()) != e.getValue())
+      {
+        expectedAdded.put(e.getKey(), e.getValue());
+      }
+    }
+
+    assertEquals(removed.size(), expectedRemoved.size());
+    for (final Map.Entry<DN,ReadOnlyEntry> e : removed)
+    {
+      assertSame(e.getValue(), expectedRemoved.get(e.getKey()));
+    }
+
+    assertEquals(added.size(), expectedAdded.size());
+    for (final Map.Entry<DN,ReadOnlyEntry> e : added)
+    {
+      assertSame(e.getValue(), expectedAdded.get(e.getKey()));
+    }
+  }
+
+
+
+  /**
+   * Ensures that the provided entry map has the same content and ordering as
+   * the given tree map.
+   *
+   * @param  m         The entry map to examine.
+   * @param  expected  The tree map with the expected content.
+   */
+  private static void assertMapsEqual(final InMemoryDirectoryServerEntryMap m,
+                                      final TreeMap<DN,ReadOnlyEntry> expected)
+  {
+    assertEquals(m.size(), expected.size());
+    assertEquals(m, expected);
+
+    final Iterator<Map.Entry<DN,ReadOnlyEntry>> expectedIterator =
+         expected.entrySet().iterator();
+    for (final Map.Entry<DN,ReadOnlyEntry> e : m.entrySet())
+    {
+      final Map.Entry<DN,ReadOnlyEntry> expectedEntry = expectedIterator.next();
+      assertEquals(e.getKey(), expectedEntry.getKey());
+      assertSame(e.getValue(), expectedEntry.getValue());
+      assertEquals(m.get(e.getKey()), e.getValue());
+    }
+
+    assertFalse(expectedIterator.hasNext());
+  }
+}
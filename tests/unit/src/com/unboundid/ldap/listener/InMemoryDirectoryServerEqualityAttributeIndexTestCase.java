@@ -23,6 +23,7 @@ package com.unboundid.ldap.listener;
 
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Map;
 import java.util.TreeSet;
@@ -352,6 +353,76 @@ public final class InMemoryDirectoryServerEqualityAttributeIndexTestCase
 
 
 
+  /**
+   * Tests the behavior of indexes that share an entry ID map, including
+   * ensuring that entry IDs are released once no index refers to them.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testSharedEntryIDs()
+         throws Exception
+  {
+    final Schema schema = Schema.getDefaultStandardSchema();
+    final InMemoryDirectoryServerEntryIDMap entryIDs =
+         new InMemoryDirectoryServerEntryIDMap();
+    final InMemoryDirectoryServerEqualityAttributeIndex ocIndex =
+         new InMemoryDirectoryServerEqualityAttributeIndex("objectClass",
+              schema, entryIDs);
+    final InMemoryDirectoryServerEqualityAttributeIndex ouIndex =
+         new InMemoryDirectoryServerEqualityAttributeIndex("ou", schema,
+              entryIDs);
+
+    final ArrayList<Entry> entryList = new ArrayList<Entry>();
+    for (int i=0; i < 10;  i++)
+    {
+      final Entry e = new Entry(
+           "dn: ou=Test " + i + ",dc=example,dc=com",
+           "objectClass: top",
+           "objectClass: organizationalUnit",
+           "ou: Test " + i,
+           "ou: Unit " + i);
+      entryList.add(e);
+      ocIndex.processAdd(e);
+      ouIndex.processAdd(e);
+    }
+    assertEquals(entryIDs.size(), 10);
+
+    final int[] ocIDs =
+         ocIndex.getMatchingEntryIDs(new ASN1OctetString("top"));
+    assertEquals(ocIDs.length, 10);
+    assertEquals(ocIndex.countMatchingEntries(new ASN1OctetString("TOP")), 10);
+    for (int i=1; i < ocIDs.length; i++)
+    {
+      assertTrue(ocIDs[i-1] < ocIDs[i]);
+    }
+
+    final int[] ouIDs =
+         ouIndex.getMatchingEntryIDs(new ASN1OctetString("test 3"));
+    assertEquals(ouIDs.length, 1);
+    assertEquals(entryIDs.getDN(ouIDs[0]),
+         new DN("ou=Test 3,dc=example,dc=com"));
+    assertTrue(Arrays.equals(
+         InMemoryDirectoryServerEntryIDList.intersect(ocIDs, ouIDs), ouIDs));
+
+    assertEquals(
+         ouIndex.getMatchingEntryIDs(new ASN1OctetString("missing")).length,
+         0);
+
+    ouIndex.processDelete(entryList.get(3));
+    assertEquals(entryIDs.size(), 10);
+    ocIndex.processDelete(entryList.get(3));
+    assertEquals(entryIDs.size(), 9);
+    assertEquals(entryIDs.getID(new DN("ou=Test 3,dc=example,dc=com")), -1);
+
+    ouIndex.clear();
+    assertEquals(entryIDs.size(), 9);
+    ocIndex.clear();
+    assertEquals(entryIDs.size(), 0);
+  }
+
+
+
   /**
    * Asserts that the provided collection is not {@code null} but is empty.
    *
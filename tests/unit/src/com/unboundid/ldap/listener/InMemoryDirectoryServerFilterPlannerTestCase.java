@@ -0,0 +1,349 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.listener;
+
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPSDKTestCase;
+import com.unboundid.ldap.sdk.schema.AttributeTypeDefinition;
+import com.unboundid.ldap.sdk.schema.Schema;
+
+
+
+/**
+ * This class provides a set of test cases for the
+ * InMemoryDirectoryServerFilterPlanner class.
+ */
+public final class InMemoryDirectoryServerFilterPlannerTestCase
+       extends LDAPSDKTestCase
+{
+  // The entries that have been indexed.
+  private ArrayList<Entry> entries;
+
+  // The planner to use in testing.
+  private InMemoryDirectoryServerFilterPlanner planner;
+
+  // The schema to use in testing.
+  private Schema schema;
+
+
+
+  /**
+   * Creates a planner with equality indexes for uid and sn, a presence index
+   * for description, a substring index for cn, and an ordering index for
+   * employeeNumber, and populates those indexes with a set of entries.  Every
+   * entry has the same sn value, so that attribute is not at all selective.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @BeforeClass()
+  public void setUpPlanner()
+         throws Exception
+  {
+    schema = Schema.getDefaultStandardSchema();
+
+    final HashMap<AttributeTypeDefinition,
+         InMemoryDirectoryServerEqualityAttributeIndex> eqIndexes =
+         new HashMap<AttributeTypeDefinition,
+              InMemoryDirectoryServerEqualityAttributeIndex>(2);
+    final HashMap<AttributeTypeDefinition,
+         InMemoryDirectoryServerPresenceAttributeIndex> presIndexes =
+         new HashMap<AttributeTypeDefinition,
+              InMemoryDirectoryServerPresenceAttributeIndex>(1);
+    final HashMap<AttributeTypeDefinition,
+         InMemoryDirectoryServerSubstringAttributeIndex> subIndexes =
+         new HashMap<AttributeTypeDefinition,
+              InMemoryDirectoryServerSubstringAttributeIndex>(1);
+    final HashMap<AttributeTypeDefinition,
+         InMemoryDirectoryServerOrderingAttributeIndex> ordIndexes =
+         new HashMap<AttributeTypeDefinition,
+              InMemoryDirectoryServerOrderingAttributeIndex>(1);
+    final ArrayList<InMemoryDirectoryServerAttributeIndex> allIndexes =
+         new ArrayList<InMemoryDirectoryServerAttributeIndex>(5);
+
+    final InMemoryDirectoryServerEntryIDMap entryIDs =
+         new InMemoryDirectoryServerEntryIDMap();
+    for (final String s : new String[] { "uid", "sn" })
+    {
+      final InMemoryDirectoryServerEqualityAttributeIndex i =
+           new InMemoryDirectoryServerEqualityAttributeIndex(s, schema,
+                entryIDs);
+      eqIndexes.put(i.getAttributeType(), i);
+      allIndexes.add(i);
+    }
+
+    final InMemoryDirectoryServerPresenceAttributeIndex presIndex =
+         new InMemoryDirectoryServerPresenceAttributeIndex("description",
+              schema);
+    presIndexes.put(presIndex.getAttributeType(), presIndex);
+    allIndexes.add(presIndex);
+
+    final InMemoryDirectoryServerSubstringAttributeIndex subIndex =
+         new InMemoryDirectoryServerSubstringAttributeIndex("cn", schema);
+    subIndexes.put(subIndex.getAttributeType(), subIndex);
+    allIndexes.add(subIndex);
+
+    final InMemoryDirectoryServerOrderingAttributeIndex ordIndex =
+         new InMemoryDirectoryServerOrderingAttributeIndex("employeeNumber",
+              schema);
+    ordIndexes.put(ordIndex.getAttributeType(), ordIndex);
+    allIndexes.add(ordIndex);
+
+    entries = new ArrayList<Entry>(100);
+    for (int i=0; i < 100; i++)
+    {
+      final Entry e = new Entry("uid=user." + i + ",dc=example,dc=com");
+      e.addAttribute("objectClass", "top", "person", "inetOrgPerson");
+      e.addAttribute("uid", "user." + i);
+      e.addAttribute("cn", "User " + i);
+      e.addAttribute("sn", "User");
+      e.addAttribute("employeeNumber", String.valueOf(1000 + i));
+      if ((i % 10) == 0)
+      {
+        e.addAttribute("description", "Every tenth user");
+      }
+      entries.add(e);
+
+      for (final InMemoryDirectoryServerAttributeIndex index : allIndexes)
+      {
+        index.processAdd(e);
+      }
+    }
+
+    planner = new InMemoryDirectoryServerFilterPlanner(
+         new AtomicReference<Schema>(schema), entryIDs, eqIndexes,
+         presIndexes, subIndexes, ordIndexes);
+  }
+
+
+
+  /**
+   * Retrieves a set of filters to use in testing.
+   *
+   * @return  A set of filters to use in testing.
+   */
+  @DataProvider(name="filters")
+  public Object[][] getFilters()
+  {
+    return new Object[][]
+    {
+      new Object[] { "(uid=user.5)" },
+      new Object[] { "(uid=nonexistent)" },
+      new Object[] { "(description=*)" },
+      new Object[] { "(cn=User 4*)" },
+      new Object[] { "(employeeNumber>=1090)" },
+      new Object[] { "(employeeNumber<=1009)" },
+      new Object[] { "(&(sn=User)(uid=user.7))" },
+      new Object[] { "(&(description=*)(employeeNumber>=1050))" },
+      new Object[] { "(&(sn=User)(description=*)(cn=*ser 5*))" },
+      new Object[] { "(&(objectClass=person)(uid=user.9))" },
+      new Object[] { "(&(uid=user.1)(uid=user.2))" },
+      new Object[] { "(|(uid=user.1)(uid=user.2)(description=*))" },
+      new Object[] { "(|(uid=user.1)(givenName=user))" },
+      new Object[] { "(sn=User)" },
+      new Object[] { "(employeeNumber>=1000)" },
+      new Object[] { "(!(uid=user.1))" },
+      new Object[] { "(objectClass=*)" },
+      new Object[] { "(&)" },
+      new Object[] { "(|)" }
+    };
+  }
+
+
+
+  /**
+   * Ensures that whenever the planner provides a candidate list, that list
+   * includes every entry that actually matches the filter.
+   *
+   * @param  filterString  The string representation of the filter to test.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test(dataProvider="filters")
+  public void testCandidatesIncludeAllMatches(final String filterString)
+         throws Exception
+  {
+    final Filter filter = Filter.create(filterString);
+    final StringBuilder plan = new StringBuilder();
+    final Set<DN> candidates =
+         planner.getCandidateDNs(filter, entries.size(), plan);
+    assertTrue(plan.length() > 0);
+
+    if (candidates == null)
+    {
+      assertTrue(plan.toString().contains("plan=scan"), plan.toString());
+      return;
+    }
+
+    assertTrue(plan.toString().contains("candidates=" + candidates.size()),
+         plan.toString());
+    for (final Entry e : entries)
+    {
+      if (filter.matchesEntry(e, schema))
+      {
+        assertTrue(candidates.contains(e.getParsedDN()),
+             "Missing entry " + e.getDN() + " for filter " + filterString +
+                  " with plan " + plan);
+      }
+    }
+  }
+
+
+
+  /**
+   * Tests the estimates that the planner obtains from the indexes.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testEstimates()
+         throws Exception
+  {
+    assertEquals(planner.estimate(Filter.create("(uid=user.5)")), 1);
+    assertEquals(planner.estimate(Filter.create("(uid=nonexistent)")), 0);
+    assertEquals(planner.estimate(Filter.create("(sn=User)")), 100);
+    assertEquals(planner.estimate(Filter.create("(description=*)")), 10);
+    assertEquals(planner.estimate(Filter.create("(employeeNumber>=1090)")),
+         10);
+    assertEquals(planner.estimate(Filter.create("(employeeNumber<=1009)")),
+         10);
+    assertEquals(planner.estimate(Filter.create("(cn=*zzz*)")), 0);
+    assertTrue(planner.estimate(Filter.create("(cn=User 4*)")) >= 11);
+
+    assertEquals(
+         planner.estimate(Filter.create("(&(sn=User)(description=*))")), 10);
+    assertEquals(
+         planner.estimate(Filter.create("(|(uid=user.1)(description=*))")),
+         11);
+
+    assertEquals(planner.estimate(Filter.create("(givenName=user)")), -1);
+    assertEquals(planner.estimate(Filter.create("(!(uid=user.1))")), -1);
+    assertEquals(
+         planner.estimate(Filter.create("(|(uid=user.1)(givenName=user))")),
+         -1);
+    assertEquals(planner.estimate(Filter.create("(&)")), -1);
+    assertEquals(planner.estimate(Filter.create("(|)")), 0);
+  }
+
+
+
+  /**
+   * Tests to ensure that the planner evaluates the most selective component
+   * of an AND filter first and does not bother evaluating the remaining
+   * components once the candidate list is small enough.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testANDShortCircuit()
+         throws Exception
+  {
+    final StringBuilder plan = new StringBuilder();
+    final Set<DN> candidates = planner.getCandidateDNs(
+         Filter.create("(&(sn=User)(employeeNumber>=1050)(uid=user.77))"),
+         entries.size(), plan);
+    assertNotNull(candidates);
+    assertEquals(candidates.size(), 1);
+    assertTrue(candidates.contains(new DN("uid=user.77,dc=example,dc=com")));
+
+    final String planString = plan.toString();
+    assertTrue(planString.contains("and{(uid=user.77):equality(1)"),
+         planString);
+    assertTrue(planString.contains("(employeeNumber>=1050):skipped"),
+         planString);
+    assertTrue(planString.contains("(sn=User):skipped"), planString);
+  }
+
+
+
+  /**
+   * Tests to ensure that the planner will continue to intersect the
+   * components of an AND filter while the candidate list is large, and that
+   * unindexed components are reported in the plan.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testANDIntersection()
+         throws Exception
+  {
+    final StringBuilder plan = new StringBuilder();
+    final Set<DN> candidates = planner.getCandidateDNs(
+         Filter.create("(&(employeeNumber<=1039)(employeeNumber>=1020)" +
+              "(givenName=user))"),
+         entries.size(), plan);
+    assertNotNull(candidates);
+    assertEquals(candidates.size(), 20);
+
+    final String planString = plan.toString();
+    assertFalse(planString.contains("skipped"), planString);
+    assertTrue(planString.contains("(givenName=user):unindexed"), planString);
+  }
+
+
+
+  /**
+   * Tests to ensure that the planner will choose to scan the entries when the
+   * estimated candidate list is too large for an index to be worthwhile, or
+   * when the filter cannot be processed using the indexes.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testScan()
+         throws Exception
+  {
+    StringBuilder plan = new StringBuilder();
+    assertNull(planner.getCandidateDNs(Filter.create("(sn=User)"),
+         entries.size(), plan));
+    assertTrue(plan.toString().contains("plan=scan (estimate 100 of 100"),
+         plan.toString());
+
+    plan = new StringBuilder();
+    assertNull(planner.getCandidateDNs(Filter.create("(!(uid=user.1))"),
+         entries.size(), plan));
+    assertTrue(plan.toString().contains("plan=scan (unindexed)"),
+         plan.toString());
+
+    // The same filter will use the index if there are enough entries.
+    plan = new StringBuilder();
+    assertNotNull(planner.getCandidateDNs(Filter.create("(sn=User)"), 1000,
+         plan));
+    assertTrue(plan.toString().contains("(sn=User):equality(100)"),
+         plan.toString());
+
+    // The planner should also work without a plan buffer.
+    assertNotNull(planner.getCandidateDNs(Filter.create("(uid=user.1)"),
+         entries.size(), null));
+  }
+}
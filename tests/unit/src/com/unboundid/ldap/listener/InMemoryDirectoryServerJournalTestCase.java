@@ -0,0 +1,336 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.listener;
+
+
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.LDAPSDKTestCase;
+import com.unboundid.ldap.sdk.ReadOnlyEntry;
+import com.unboundid.ldap.sdk.controls.PersistentSearchChangeType;
+
+
+
+/**
+ * This class provides a set of test cases for the
+ * InMemoryDirectoryServerJournal class.
+ */
+public final class InMemoryDirectoryServerJournalTestCase
+       extends LDAPSDKTestCase
+{
+  /**
+   * Tests the behavior when recovering from a journal directory that does not
+   * yet exist.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testRecoverFromNewDirectory()
+         throws Exception
+  {
+    final File journalDir = new File(createTempDir(), "journal");
+    assertFalse(journalDir.exists());
+
+    final InMemoryDirectoryServerJournal journal =
+         new InMemoryDirectoryServerJournal(journalDir, 0);
+    assertTrue(journalDir.isDirectory());
+
+    assertNull(journal.recover(createInitialSnapshot(),
+         createSubschemaSubentry(), null));
+    assertTrue(new File(journalDir,
+         InMemoryDirectoryServerJournal.JOURNAL_FILE_PREFIX + '0').exists());
+    assertFalse(new File(journalDir,
+         InMemoryDirectoryServerJournal.CHECKPOINT_FILE_NAME).exists());
+  }
+
+
+
+  /**
+   * Tests the behavior when journaling changes and replaying them without a
+   * checkpoint.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testReplayWithoutCheckpoint()
+         throws Exception
+  {
+    final File journalDir = createTempDir();
+
+    final InMemoryDirectoryServerJournal journal =
+         new InMemoryDirectoryServerJournal(journalDir, 0);
+    assertNull(journal.recover(createInitialSnapshot(),
+         createSubschemaSubentry(), null));
+    appendTestChanges(journal);
+    assertEquals(journal.getChangesSinceCheckpoint(), 6);
+    assertFalse(journal.checkpointNeeded());
+
+    final InMemoryDirectoryServerJournal.RecoveredContent content =
+         new InMemoryDirectoryServerJournal(journalDir, 0).recover(
+              createInitialSnapshot(), createSubschemaSubentry(), null);
+    assertNotNull(content);
+    assertEquals(content.getReplayedChanges(), 6);
+    assertTestChangesApplied(content.getSnapshot());
+  }
+
+
+
+  /**
+   * Tests to ensure that a record that was only partially written at the end
+   * of a journal file will be ignored.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testPartialRecordIgnored()
+         throws Exception
+  {
+    final File journalDir = createTempDir();
+
+    final InMemoryDirectoryServerJournal journal =
+         new InMemoryDirectoryServerJournal(journalDir, 0);
+    assertNull(journal.recover(createInitialSnapshot(),
+         createSubschemaSubentry(), null));
+    appendTestChanges(journal);
+
+    // Append the start of a record that claims to be much longer than the
+    // data that follows it.
+    final FileOutputStream outputStream = new FileOutputStream(
+         new File(journalDir,
+              InMemoryDirectoryServerJournal.JOURNAL_FILE_PREFIX + '0'),
+         true);
+    outputStream.write(new byte[] { 0x00, 0x00, 0x10, 0x00, 0x01, 0x02 });
+    outputStream.close();
+
+    final InMemoryDirectoryServerJournal.RecoveredContent content =
+         new InMemoryDirectoryServerJournal(journalDir, 0).recover(
+              createInitialSnapshot(), createSubschemaSubentry(), null);
+    assertNotNull(content);
+    assertEquals(content.getReplayedChanges(), 6);
+    assertTestChangesApplied(content.getSnapshot());
+  }
+
+
+
+  /**
+   * Tests the behavior when a checkpoint is written once the checkpoint
+   * interval has been reached, and additional changes are journaled after it.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testCheckpoint()
+         throws Exception
+  {
+    final File journalDir = createTempDir();
+
+    final InMemoryDirectoryServerJournal journal =
+         new InMemoryDirectoryServerJournal(journalDir, 5);
+    assertNull(journal.recover(createInitialSnapshot(),
+         createSubschemaSubentry(), null));
+    appendTestChanges(journal);
+    assertTrue(journal.checkpointNeeded());
+
+    final Map<DN,ReadOnlyEntry> entryMap = new HashMap<DN,ReadOnlyEntry>(2);
+    addEntry(entryMap, new ReadOnlyEntry(
+         "dn: dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: domain",
+         "dc: example"));
+    addEntry(entryMap, new ReadOnlyEntry(
+         "dn: ou=moved,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: organizationalUnit",
+         "ou: moved"));
+    InMemoryDirectoryServerJournal.waitForCheckpoint(journal.checkpoint(
+         new InMemoryDirectoryServerSnapshot(entryMap, 1L, 5L),
+         createSubschemaSubentry()));
+    assertFalse(journal.checkpointNeeded());
+    assertEquals(journal.getChangesSinceCheckpoint(), 0);
+
+    assertTrue(new File(journalDir,
+         InMemoryDirectoryServerJournal.CHECKPOINT_FILE_NAME).exists());
+    assertFalse(new File(journalDir,
+         InMemoryDirectoryServerJournal.TEMP_CHECKPOINT_FILE_NAME).exists());
+    assertFalse(new File(journalDir,
+         InMemoryDirectoryServerJournal.JOURNAL_FILE_PREFIX + '0').exists());
+    assertTrue(new File(journalDir,
+         InMemoryDirectoryServerJournal.JOURNAL_FILE_PREFIX + '1').exists());
+
+    final ReadOnlyEntry added = new ReadOnlyEntry(
+         "dn: ou=after checkpoint,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: organizationalUnit",
+         "ou: after checkpoint");
+    journal.append(PersistentSearchChangeType.ADD, null, added, 1L, 6L);
+
+    final InMemoryDirectoryServerJournal.RecoveredContent content =
+         new InMemoryDirectoryServerJournal(journalDir, 5).recover(
+              createInitialSnapshot(), createSubschemaSubentry(), null);
+    assertNotNull(content);
+    assertEquals(content.getReplayedChanges(), 1);
+
+    final InMemoryDirectoryServerSnapshot snapshot = content.getSnapshot();
+    assertEquals(snapshot.getEntryMap().size(), 3);
+    assertEquals(snapshot.getEntryMap().get(added.getParsedDN()), added);
+    assertNotNull(snapshot.getEntryMap().get(
+         new DN("ou=moved,dc=example,dc=com")));
+    assertEquals(snapshot.getFirstChangeNumber(), 1L);
+    assertEquals(snapshot.getLastChangeNumber(), 6L);
+  }
+
+
+
+  /**
+   * Appends a set of test changes to the provided journal.  The changes add a
+   * "dc=example,dc=com" entry and two organizational units beneath it, modify
+   * one of them and delete it, and rename the other to "ou=moved".
+   *
+   * @param  journal  The journal to which the changes should be appended.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  private static void appendTestChanges(
+                           final InMemoryDirectoryServerJournal journal)
+          throws Exception
+  {
+    final ReadOnlyEntry base = new ReadOnlyEntry(
+         "dn: dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: domain",
+         "dc: example");
+    final ReadOnlyEntry ou1 = new ReadOnlyEntry(
+         "dn: ou=1,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: organizationalUnit",
+         "ou: 1");
+    final ReadOnlyEntry ou1Modified = new ReadOnlyEntry(
+         "dn: ou=1,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: organizationalUnit",
+         "ou: 1",
+         "description: modified");
+    final ReadOnlyEntry ou2 = new ReadOnlyEntry(
+         "dn: ou=2,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: organizationalUnit",
+         "ou: 2");
+    final ReadOnlyEntry moved = new ReadOnlyEntry(
+         "dn: ou=moved,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: organizationalUnit",
+         "ou: moved");
+
+    journal.append(PersistentSearchChangeType.ADD, null, base, 0L, 1L);
+    journal.append(PersistentSearchChangeType.ADD, null, ou1, 1L, 2L);
+    journal.append(PersistentSearchChangeType.ADD, null, ou2, 1L, 3L);
+    journal.append(PersistentSearchChangeType.MODIFY, ou1, ou1Modified, 1L,
+         4L);
+    journal.append(PersistentSearchChangeType.MODIFY_DN, ou2, moved, 1L, 5L);
+    journal.append(PersistentSearchChangeType.DELETE, ou1Modified, null, 1L,
+         5L);
+  }
+
+
+
+  /**
+   * Ensures that the provided snapshot reflects the changes appended by the
+   * {@link #appendTestChanges} method.
+   *
+   * @param  snapshot  The snapshot to examine.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  private static void assertTestChangesApplied(
+                           final InMemoryDirectoryServerSnapshot snapshot)
+          throws Exception
+  {
+    final Map<DN,ReadOnlyEntry> entryMap = snapshot.getEntryMap();
+    assertEquals(entryMap.size(), 2);
+    assertNotNull(entryMap.get(new DN("dc=example,dc=com")));
+    assertNotNull(entryMap.get(new DN("ou=moved,dc=example,dc=com")));
+    assertEquals(entryMap.get(new DN("ou=moved,dc=example,dc=com")),
+         new ReadOnlyEntry(
+              "dn: ou=moved,dc=example,dc=com",
+              "objectClass: top",
+              "objectClass: organizationalUnit",
+              "ou: moved"));
+    assertEquals(snapshot.getFirstChangeNumber(), 1L);
+    assertEquals(snapshot.getLastChangeNumber(), 5L);
+  }
+
+
+
+  /**
+   * Creates an empty snapshot to use as the initial content when recovering.
+   *
+   * @return  The snapshot that was created.
+   */
+  private static InMemoryDirectoryServerSnapshot createInitialSnapshot()
+  {
+    return new InMemoryDirectoryServerSnapshot(
+         new HashMap<DN,ReadOnlyEntry>(0), 0L, 0L);
+  }
+
+
+
+  /**
+   * Creates a minimal subschema subentry to use when recovering.
+   *
+   * @return  The subschema subentry that was created.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  private static ReadOnlyEntry createSubschemaSubentry()
+          throws Exception
+  {
+    return new ReadOnlyEntry(
+         "dn: cn=schema",
+         "objectClass: top",
+         "objectClass: ldapSubentry",
+         "objectClass: subschema",
+         "cn: schema");
+  }
+
+
+
+  /**
+   * Adds the provided entry to the given map.
+   *
+   * @param  entryMap  The map to which the entry should be added.
+   * @param  e         The entry to add.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  private static void addEntry(final Map<DN,ReadOnlyEntry> entryMap,
+                               final ReadOnlyEntry e)
+          throws Exception
+  {
+    entryMap.put(e.getParsedDN(), e);
+  }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.listener;
+
+
+
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPSDKTestCase;
+import com.unboundid.ldap.sdk.schema.Schema;
+
+
+
+/**
+ * This class provides a set of test cases for the
+ * InMemoryDirectoryServerOrderingAttributeIndex class.
+ */
+public final class InMemoryDirectoryServerOrderingAttributeIndexTestCase
+       extends LDAPSDKTestCase
+{
+  /**
+   * Tests the behavior when trying to create an index when no schema is
+   * available.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test(expectedExceptions = { LDAPException.class })
+  public void testIndexWithoutSchema()
+         throws Exception
+  {
+    new InMemoryDirectoryServerOrderingAttributeIndex("sn", null);
+  }
+
+
+
+  /**
+   * Tests the behavior when trying to create an index for an undefined
+   * attribute type.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test(expectedExceptions = { LDAPException.class })
+  public void testIndexWithUndefinedAttribute()
+         throws Exception
+  {
+    new InMemoryDirectoryServerOrderingAttributeIndex("undefined",
+         Schema.getDefaultStandardSchema());
+  }
+
+
+
+  /**
+   * Tests the behavior of an ordering index for an attribute with an integer
+   * syntax, for which values must be ordered numerically rather than
+   * lexicographically.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testIntegerOrdering()
+         throws Exception
+  {
+    final InMemoryDirectoryServerOrderingAttributeIndex index =
+         new InMemoryDirectoryServerOrderingAttributeIndex("changeNumber",
+              Schema.getDefaultStandardSchema());
+    assertTrue(index.getAttributeType().hasNameOrOID("changeNumber"));
+
+    final int[] values = { 5, 10, 50, 100, 500 };
+    for (final int v : values)
+    {
+      index.processAdd(createEntry(v));
+    }
+    index.processAdd(new Entry(
+         "dn: ou=Test,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: organizationalUnit",
+         "ou: Test"));
+
+    Set<DN> dnSet =
+         index.getEntriesGreaterThanOrEqualTo(new ASN1OctetString("50"));
+    assertEquals(dnSet.size(), 3);
+    assertTrue(dnSet.contains(createEntry(50).getParsedDN()));
+    assertTrue(dnSet.contains(createEntry(100).getParsedDN()));
+    assertTrue(dnSet.contains(createEntry(500).getParsedDN()));
+
+    dnSet = index.getEntriesLessThanOrEqualTo(new ASN1OctetString("50"));
+    assertEquals(dnSet.size(), 3);
+    assertTrue(dnSet.contains(createEntry(5).getParsedDN()));
+    assertTrue(dnSet.contains(createEntry(10).getParsedDN()));
+    assertTrue(dnSet.contains(createEntry(50).getParsedDN()));
+
+    dnSet = index.getEntriesLessThanOrEqualTo(new ASN1OctetString("49"));
+    assertEquals(dnSet.size(), 2);
+
+    assertEquals(
+         index.countEntriesGreaterThanOrEqualTo(new ASN1OctetString("50")), 3);
+    assertEquals(
+         index.countEntriesLessThanOrEqualTo(new ASN1OctetString("50")), 3);
+    assertEquals(
+         index.countEntriesLessThanOrEqualTo(new ASN1OctetString("49")), 2);
+
+    assertTrue(index.getEntriesGreaterThanOrEqualTo(
+         new ASN1OctetString("501")).isEmpty());
+    assertTrue(index.getEntriesLessThanOrEqualTo(
+         new ASN1OctetString("4")).isEmpty());
+
+    index.processDelete(createEntry(50));
+    dnSet = index.getEntriesGreaterThanOrEqualTo(new ASN1OctetString("50"));
+    assertEquals(dnSet.size(), 2);
+    assertFalse(dnSet.contains(createEntry(50).getParsedDN()));
+
+    index.clear();
+    assertTrue(index.getEntriesGreaterThanOrEqualTo(
+         new ASN1OctetString("0")).isEmpty());
+  }
+
+
+
+  /**
+   * Tests the behavior of an ordering index for an attribute with a string
+   * syntax, including values that differ only in capitalization.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testStringOrdering()
+         throws Exception
+  {
+    final InMemoryDirectoryServerOrderingAttributeIndex index =
+         new InMemoryDirectoryServerOrderingAttributeIndex("sn",
+              Schema.getDefaultStandardSchema());
+
+    final Entry e1 = new Entry(
+         "dn: cn=Entry 1,dc=example,dc=com",
+         "objectClass: person",
+         "cn: Entry 1",
+         "sn: Apple");
+    final Entry e2 = new Entry(
+         "dn: cn=Entry 2,dc=example,dc=com",
+         "objectClass: person",
+         "cn: Entry 2",
+         "sn: banana",
+         "sn: Cherry");
+    index.processAdd(e1);
+    index.processAdd(e2);
+
+    Set<DN> dnSet =
+         index.getEntriesLessThanOrEqualTo(new ASN1OctetString("APPLE"));
+    assertEquals(dnSet.size(), 1);
+    assertTrue(dnSet.contains(e1.getParsedDN()));
+
+    dnSet = index.getEntriesGreaterThanOrEqualTo(new ASN1OctetString("c"));
+    assertEquals(dnSet.size(), 1);
+    assertTrue(dnSet.contains(e2.getParsedDN()));
+
+    dnSet = index.getEntriesGreaterThanOrEqualTo(new ASN1OctetString("a"));
+    assertEquals(dnSet.size(), 2);
+
+    index.processDelete(e2);
+    assertTrue(index.getEntriesGreaterThanOrEqualTo(
+         new ASN1OctetString("b")).isEmpty());
+  }
+
+
+
+  /**
+   * Creates an entry with the provided changeNumber value.
+   *
+   * @param  changeNumber  The changeNumber value for the entry.
+   *
+   * @return  The entry that was created.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  private static Entry createEntry(final int changeNumber)
+          throws Exception
+  {
+    return new Entry(
+         "dn: changeNumber=" + changeNumber + ",cn=changelog",
+         "objectClass: top",
+         "objectClass: changeLogEntry",
+         "changeNumber: " + changeNumber);
+  }
+}
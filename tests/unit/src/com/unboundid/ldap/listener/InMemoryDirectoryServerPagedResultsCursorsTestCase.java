@@ -0,0 +1,154 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.listener;
+
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPSDKTestCase;
+import com.unboundid.ldap.sdk.SearchResultReference;
+
+
+
+/**
+ * This class provides a set of test cases for the
+ * InMemoryDirectoryServerPagedResultsCursors class.
+ */
+public final class InMemoryDirectoryServerPagedResultsCursorsTestCase
+       extends LDAPSDKTestCase
+{
+  /**
+   * Tests the behavior when registering and retrieving cursors.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testRegisterAndGet()
+         throws Exception
+  {
+    final InMemoryDirectoryServerPagedResultsCursors cursors =
+         new InMemoryDirectoryServerPagedResultsCursors();
+    assertEquals(cursors.size(), 0);
+
+    final List<Entry> entries = new ArrayList<Entry>(3);
+    entries.add(new Entry("dc=example,dc=com"));
+    entries.add(new Entry("ou=People,dc=example,dc=com"));
+    entries.add(new Entry("ou=Groups,dc=example,dc=com"));
+
+    final List<SearchResultReference> references =
+         new ArrayList<SearchResultReference>(1);
+    references.add(new SearchResultReference(
+         new String[] { "ldap://ds.example.com/dc=example,dc=com" }, null));
+
+    final int id1 = cursors.register("key1", entries, references);
+    final int id2 = cursors.register("key2", entries,
+         Collections.<SearchResultReference>emptyList());
+    assertFalse(id1 == id2);
+    assertEquals(cursors.size(), 2);
+
+    // The cursor should not be affected by changes to the provided lists.
+    entries.remove(0);
+    references.clear();
+
+    final InMemoryDirectoryServerPagedResultsCursors.Cursor cursor =
+         cursors.get(id1, "key1");
+    assertNotNull(cursor);
+    assertEquals(cursor.getEntries().size(), 3);
+    assertEquals(cursor.getEntries().get(0).getDN(), "dc=example,dc=com");
+    assertEquals(cursor.getReferences().size(), 1);
+
+    assertNotNull(cursors.get(id2, "key2"));
+    assertEquals(cursors.get(id2, "key2").getEntries().size(), 3);
+
+    // A cursor should not be returned for a different key or unknown ID.
+    assertNull(cursors.get(id1, "key2"));
+    assertNull(cursors.get(12345, "key1"));
+
+    cursors.remove(id1);
+    assertNull(cursors.get(id1, "key1"));
+    assertEquals(cursors.size(), 1);
+
+    cursors.clear();
+    assertEquals(cursors.size(), 0);
+  }
+
+
+
+  /**
+   * Tests to ensure that the least recently used cursor is discarded when the
+   * maximum number of cursors is reached.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testMaxCursors()
+         throws Exception
+  {
+    final InMemoryDirectoryServerPagedResultsCursors cursors =
+         new InMemoryDirectoryServerPagedResultsCursors(2, 300000L);
+
+    final List<Entry> entries = Collections.emptyList();
+    final List<SearchResultReference> references = Collections.emptyList();
+
+    final int id1 = cursors.register("key", entries, references);
+    final int id2 = cursors.register("key", entries, references);
+
+    // Use the first cursor so that the second one is the least recently used.
+    assertNotNull(cursors.get(id1, "key"));
+
+    final int id3 = cursors.register("key", entries, references);
+    assertEquals(cursors.size(), 2);
+    assertNotNull(cursors.get(id1, "key"));
+    assertNull(cursors.get(id2, "key"));
+    assertNotNull(cursors.get(id3, "key"));
+  }
+
+
+
+  /**
+   * Tests to ensure that cursors are discarded once they have expired.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testExpiration()
+         throws Exception
+  {
+    final InMemoryDirectoryServerPagedResultsCursors cursors =
+         new InMemoryDirectoryServerPagedResultsCursors(10, 50L);
+
+    final List<Entry> entries = Collections.emptyList();
+    final List<SearchResultReference> references = Collections.emptyList();
+
+    final int id = cursors.register("key", entries, references);
+    assertNotNull(cursors.get(id, "key"));
+
+    Thread.sleep(100L);
+    assertNull(cursors.get(id, "key"));
+    assertEquals(cursors.size(), 0);
+  }
+}
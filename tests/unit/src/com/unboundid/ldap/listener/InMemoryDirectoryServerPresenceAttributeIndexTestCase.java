@@ -0,0 +1,121 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.listener;
+
+
+
+import org.testng.annotations.Test;
+
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPSDKTestCase;
+import com.unboundid.ldap.sdk.schema.Schema;
+
+
+
+/**
+ * This class provides a set of test cases for the
+ * InMemoryDirectoryServerPresenceAttributeIndex class.
+ */
+public final class InMemoryDirectoryServerPresenceAttributeIndexTestCase
+       extends LDAPSDKTestCase
+{
+  /**
+   * Tests the behavior when trying to create an index when no schema is
+   * available.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test(expectedExceptions = { LDAPException.class })
+  public void testIndexWithoutSchema()
+         throws Exception
+  {
+    new InMemoryDirectoryServerPresenceAttributeIndex("description", null);
+  }
+
+
+
+  /**
+   * Tests the behavior when trying to create an index for an undefined
+   * attribute type.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test(expectedExceptions = { LDAPException.class })
+  public void testIndexWithUndefinedAttribute()
+         throws Exception
+  {
+    new InMemoryDirectoryServerPresenceAttributeIndex("undefined",
+         Schema.getDefaultStandardSchema());
+  }
+
+
+
+  /**
+   * Tests the behavior when adding and removing entries with and without the
+   * indexed attribute.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testAddAndDelete()
+         throws Exception
+  {
+    final InMemoryDirectoryServerPresenceAttributeIndex index =
+         new InMemoryDirectoryServerPresenceAttributeIndex("description",
+              Schema.getDefaultStandardSchema());
+    assertNotNull(index.getAttributeType());
+    assertTrue(index.getAttributeType().hasNameOrOID("description"));
+    assertTrue(index.getMatchingEntries().isEmpty());
+
+    final Entry withAttr = new Entry(
+         "dn: ou=With,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: organizationalUnit",
+         "ou: With",
+         "DESCRIPTION: foo",
+         "description: bar");
+    final Entry withoutAttr = new Entry(
+         "dn: ou=Without,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: organizationalUnit",
+         "ou: Without");
+
+    index.processAdd(withAttr);
+    index.processAdd(withoutAttr);
+    assertEquals(index.getMatchingEntries().size(), 1);
+    assertTrue(index.getMatchingEntries().contains(
+         new DN("ou=With,dc=example,dc=com")));
+
+    index.processDelete(withoutAttr);
+    assertEquals(index.getMatchingEntries().size(), 1);
+
+    index.processDelete(withAttr);
+    assertTrue(index.getMatchingEntries().isEmpty());
+
+    index.processAdd(withAttr);
+    assertEquals(index.getMatchingEntries().size(), 1);
+
+    index.clear();
+    assertTrue(index.getMatchingEntries().isEmpty());
+  }
+}
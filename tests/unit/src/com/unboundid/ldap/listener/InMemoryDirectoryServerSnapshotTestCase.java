@@ -22,11 +22,19 @@ package com.unboundid.ldap.listener;
 
 
 
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
 import org.testng.annotations.Test;
 
 import com.unboundid.ldap.sdk.DN;
 import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
 import com.unboundid.ldap.sdk.LDAPSDKTestCase;
+import com.unboundid.ldap.sdk.ReadOnlyEntry;
+import com.unboundid.ldap.sdk.SearchScope;
 
 
 
@@ -331,4 +339,238 @@ public final class InMemoryDirectoryServerSnapshotTestCase
       ds.shutDown(true);
     }
   }
+
+
+
+  /**
+   * Tests to ensure that restoring a snapshot leaves the attribute indexes
+   * consistent with the restored content.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testRestoreSnapshotWithIndexes()
+         throws Exception
+  {
+    final InMemoryDirectoryServerConfig config =
+         new InMemoryDirectoryServerConfig("dc=example,dc=com");
+    config.setEqualityIndexAttributes("uid", "sn");
+    config.setPresenceIndexAttributes("description");
+    config.setSubstringIndexAttributes("cn");
+    final InMemoryDirectoryServer ds = new InMemoryDirectoryServer(config);
+
+    ds.add(generateDomainEntry("example", "dc=com"));
+    ds.add(generateOrgUnitEntry("People", "dc=example,dc=com"));
+    for (int i=0; i < 20; i++)
+    {
+      ds.add(generateUserEntry("user." + i, "ou=People,dc=example,dc=com",
+           "User", String.valueOf(i), "password"));
+    }
+
+    final InMemoryDirectoryServerSnapshot snapshot = ds.createSnapshot();
+
+    ds.modify(
+         "dn: uid=user.1,ou=People,dc=example,dc=com",
+         "changetype: modify",
+         "replace: sn",
+         "sn: changed",
+         "-",
+         "add: description",
+         "description: changed");
+    ds.delete("uid=user.2,ou=People,dc=example,dc=com");
+    ds.add(generateUserEntry("user.20", "ou=People,dc=example,dc=com",
+         "New", "User", "password"));
+
+    assertEquals(countMatches(ds, "(sn=changed)"), 1);
+    assertEquals(countMatches(ds, "(description=*)"), 1);
+    assertEquals(countMatches(ds, "(uid=user.2)"), 0);
+    assertEquals(countMatches(ds, "(uid=user.20)"), 1);
+    assertEquals(countMatches(ds, "(cn=New*)"), 1);
+
+    ds.restoreSnapshot(snapshot);
+
+    assertEquals(countMatches(ds, "(sn=changed)"), 0);
+    assertEquals(countMatches(ds, "(sn=1)"), 1);
+    assertEquals(countMatches(ds, "(description=*)"), 0);
+    assertEquals(countMatches(ds, "(uid=user.2)"), 1);
+    assertEquals(countMatches(ds, "(uid=user.20)"), 0);
+    assertEquals(countMatches(ds, "(cn=New*)"), 0);
+    assertEquals(countMatches(ds, "(cn=User*)"), 20);
+
+    ds.clear();
+    assertEquals(ds.countEntries(), 0);
+
+    ds.restoreSnapshot(snapshot);
+    assertEquals(countMatches(ds, "(uid=user.2)"), 1);
+    assertEquals(countMatches(ds, "(cn=User*)"), 20);
+  }
+
+
+
+  /**
+   * Tests the ability to write a snapshot to a file and read it back and
+   * restore it into a different server instance.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testWriteAndReadSnapshotFile()
+         throws Exception
+  {
+    final InMemoryDirectoryServerConfig config =
+         new InMemoryDirectoryServerConfig("dc=example,dc=com");
+    config.setMaxChangeLogEntries(100);
+    final InMemoryDirectoryServer ds = new InMemoryDirectoryServer(config);
+
+    ds.add(generateDomainEntry("example", "dc=com"));
+    ds.add(generateOrgUnitEntry("People", "dc=example,dc=com"));
+    ds.add(generateUserEntry("test.user", "ou=People,dc=example,dc=com",
+         "Test", "User", "password"));
+    ds.modify(
+         "dn: ou=People,dc=example,dc=com",
+         "changetype: modify",
+         "replace: description",
+         "description: foo");
+
+    final InMemoryDirectoryServerSnapshot snapshot = ds.createSnapshot();
+    final File snapshotFile = createTempFile();
+    snapshot.writeTo(snapshotFile);
+
+    final InMemoryDirectoryServerSnapshot readSnapshot =
+         InMemoryDirectoryServerSnapshot.readFrom(snapshotFile,
+              ds.getSchema());
+    assertNotNull(readSnapshot);
+    assertEquals(readSnapshot.getFirstChangeNumber(),
+         snapshot.getFirstChangeNumber());
+    assertEquals(readSnapshot.getLastChangeNumber(),
+         snapshot.getLastChangeNumber());
+    assertEquals(readSnapshot.getEntryMap(), snapshot.getEntryMap());
+
+    final InMemoryDirectoryServer ds2 = new InMemoryDirectoryServer(config);
+    ds2.restoreSnapshot(readSnapshot);
+    ds2.assertEntryExists("dc=example,dc=com");
+    ds2.assertEntryExists("uid=test.user,ou=People,dc=example,dc=com");
+    ds2.assertValueExists("ou=People,dc=example,dc=com", "description",
+         "foo");
+    ds2.assertEntryExists("changeNumber=4,cn=changelog");
+    assertEquals(ds2.countEntries(), ds.countEntries());
+  }
+
+
+
+  /**
+   * Tests the ability to write and read a snapshot file containing enough
+   * entries that they will be decoded in parallel.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testWriteAndReadLargeSnapshotFile()
+         throws Exception
+  {
+    final Map<DN,ReadOnlyEntry> entryMap =
+         new HashMap<DN,ReadOnlyEntry>(20000);
+    for (int i=0; i < 20000; i++)
+    {
+      final ReadOnlyEntry e = new ReadOnlyEntry(
+           "dn: uid=user." + i + ",dc=example,dc=com",
+           "objectClass: top",
+           "objectClass: person",
+           "uid: user." + i,
+           "cn: User " + i,
+           "sn: " + i);
+      entryMap.put(e.getParsedDN(), e);
+    }
+
+    final InMemoryDirectoryServerSnapshot snapshot =
+         new InMemoryDirectoryServerSnapshot(entryMap, 0L, 0L);
+    final File snapshotFile = createTempFile();
+    snapshot.writeTo(snapshotFile);
+
+    final InMemoryDirectoryServerSnapshot readSnapshot =
+         InMemoryDirectoryServerSnapshot.readFrom(snapshotFile, null);
+    assertEquals(readSnapshot.getEntryMap().size(), 20000);
+    assertEquals(readSnapshot.getEntryMap(), entryMap);
+  }
+
+
+
+  /**
+   * Tests the behavior when trying to read a snapshot from a file that does not
+   * contain a valid snapshot.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testReadInvalidSnapshotFile()
+         throws Exception
+  {
+    final File emptyFile = createTempFile();
+    try
+    {
+      InMemoryDirectoryServerSnapshot.readFrom(emptyFile, null);
+      fail("Expected an exception when reading an empty file");
+    }
+    catch (final LDAPException le)
+    {
+      // This was expected.
+    }
+
+    final File invalidFile = createTempFile("this is not a snapshot");
+    try
+    {
+      InMemoryDirectoryServerSnapshot.readFrom(invalidFile, null);
+      fail("Expected an exception when reading an invalid file");
+    }
+    catch (final LDAPException le)
+    {
+      // This was expected.
+    }
+
+
+    // Write a valid snapshot and then truncate it.
+    final Map<DN,ReadOnlyEntry> entryMap = new HashMap<DN,ReadOnlyEntry>(1);
+    final ReadOnlyEntry e = new ReadOnlyEntry(generateDomainEntry("example",
+         "dc=com"));
+    entryMap.put(e.getParsedDN(), e);
+
+    final File truncatedFile = createTempFile();
+    new InMemoryDirectoryServerSnapshot(entryMap, 0L, 0L).writeTo(
+         truncatedFile);
+    final RandomAccessFile raf = new RandomAccessFile(truncatedFile, "rw");
+    raf.setLength(raf.length() - 4L);
+    raf.close();
+
+    try
+    {
+      InMemoryDirectoryServerSnapshot.readFrom(truncatedFile, null);
+      fail("Expected an exception when reading a truncated file");
+    }
+    catch (final LDAPException le)
+    {
+      // This was expected.
+    }
+  }
+
+
+
+  /**
+   * Retrieves the number of entries in the server that match the provided
+   * filter.
+   *
+   * @param  ds      The server in which to search.
+   * @param  filter  The filter to use for the search.
+   *
+   * @return  The number of entries in the server that match the provided
+   *          filter.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  private static int countMatches(final InMemoryDirectoryServer ds,
+                                  final String filter)
+          throws Exception
+  {
+    return ds.search("dc=example,dc=com", SearchScope.SUB, filter).
+         getEntryCount();
+  }
 }
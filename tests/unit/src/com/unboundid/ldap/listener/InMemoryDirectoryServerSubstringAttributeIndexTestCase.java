@@ -0,0 +1,215 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.listener;
+
+
+
+import java.util.ArrayList;
+import java.util.Set;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPSDKTestCase;
+import com.unboundid.ldap.sdk.schema.Schema;
+
+
+
+/**
+ * This class provides a set of test cases for the
+ * InMemoryDirectoryServerSubstringAttributeIndex class.
+ */
+public final class InMemoryDirectoryServerSubstringAttributeIndexTestCase
+       extends LDAPSDKTestCase
+{
+  /**
+   * Tests the behavior when trying to create an index when no schema is
+   * available.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test(expectedExceptions = { LDAPException.class })
+  public void testIndexWithoutSchema()
+         throws Exception
+  {
+    new InMemoryDirectoryServerSubstringAttributeIndex("cn", null);
+  }
+
+
+
+  /**
+   * Tests the behavior when trying to create an index for an undefined
+   * attribute type.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test(expectedExceptions = { LDAPException.class })
+  public void testIndexWithUndefinedAttribute()
+         throws Exception
+  {
+    new InMemoryDirectoryServerSubstringAttributeIndex("undefined",
+         Schema.getDefaultStandardSchema());
+  }
+
+
+
+  /**
+   * Retrieves a set of substring filters to use in testing.
+   *
+   * @return  A set of substring filters to use in testing.
+   */
+  @DataProvider(name="substringFilters")
+  public Object[][] getSubstringFilters()
+  {
+    return new Object[][]
+    {
+      new Object[] { "(cn=a*)" },
+      new Object[] { "(cn=Al*)" },
+      new Object[] { "(cn=*son)" },
+      new Object[] { "(cn=*N)" },
+      new Object[] { "(cn=*ohn*)" },
+      new Object[] { "(cn=*john  s*)" },
+      new Object[] { "(cn=j*n*h)" },
+      new Object[] { "(cn=a*ice*ith)" },
+      new Object[] { "(cn=*xyz*)" },
+      new Object[] { "(cn=xyz*)" },
+      new Object[] { "(cn=*xyz)" },
+      new Object[] { "(cn=alice johnson*)" },
+      new Object[] { "(cn=*alice johnson)" },
+      new Object[] { "(cn=*alice johnsonx*)" }
+    };
+  }
+
+
+
+  /**
+   * Ensures that the set of entries returned by the index for a substring
+   * filter always includes all of the entries that actually match that
+   * filter.
+   *
+   * @param  filterString  The string representation of the filter to test.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test(dataProvider="substringFilters")
+  public void testGetMatchingEntries(final String filterString)
+         throws Exception
+  {
+    final Schema schema = Schema.getDefaultStandardSchema();
+    final InMemoryDirectoryServerSubstringAttributeIndex index =
+         new InMemoryDirectoryServerSubstringAttributeIndex("cn", schema);
+    assertTrue(index.getAttributeType().hasNameOrOID("cn"));
+
+    final ArrayList<Entry> entries = new ArrayList<Entry>(10);
+    entries.add(createEntry("Alice Johnson", "AJ"));
+    entries.add(createEntry("Alice Smith"));
+    entries.add(createEntry("John Smith", "Johnny"));
+    entries.add(createEntry("Al"));
+    entries.add(createEntry("Jon Hurwitz"));
+    entries.add(createEntry("Bob Allison"));
+    for (final Entry e : entries)
+    {
+      index.processAdd(e);
+    }
+
+    final Filter filter = Filter.create(filterString);
+    Set<DN> dnSet = index.getMatchingEntries(filter.getRawSubInitialValue(),
+         filter.getRawSubAnyValues(), filter.getRawSubFinalValue());
+    assertNotNull(dnSet);
+    for (final Entry e : entries)
+    {
+      if (filter.matchesEntry(e, schema))
+      {
+        assertTrue(dnSet.contains(e.getParsedDN()),
+             "Missing entry " + e.getDN() + " for filter " + filterString);
+      }
+    }
+
+    if (filterString.contains("xyz"))
+    {
+      assertTrue(dnSet.isEmpty());
+    }
+
+    for (final Entry e : entries)
+    {
+      index.processDelete(e);
+    }
+
+    dnSet = index.getMatchingEntries(filter.getRawSubInitialValue(),
+         filter.getRawSubAnyValues(), filter.getRawSubFinalValue());
+    assertNotNull(dnSet);
+    assertTrue(dnSet.isEmpty());
+  }
+
+
+
+  /**
+   * Tests to ensure that the index will not attempt to process a filter when
+   * it does not have any components that are long enough to be indexed.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testUnindexableFilter()
+         throws Exception
+  {
+    final InMemoryDirectoryServerSubstringAttributeIndex index =
+         new InMemoryDirectoryServerSubstringAttributeIndex("cn",
+              Schema.getDefaultStandardSchema());
+    index.processAdd(createEntry("Alice Johnson"));
+
+    final Filter filter = Filter.create("(cn=*al*)");
+    assertNull(index.getMatchingEntries(filter.getRawSubInitialValue(),
+         filter.getRawSubAnyValues(), filter.getRawSubFinalValue()));
+    assertEquals(index.estimateMatchingEntries(filter.getRawSubInitialValue(),
+         filter.getRawSubAnyValues(), filter.getRawSubFinalValue()), -1);
+
+    index.clear();
+    final Filter f = Filter.create("(cn=alice*)");
+    assertTrue(index.getMatchingEntries(f.getRawSubInitialValue(),
+         f.getRawSubAnyValues(), f.getRawSubFinalValue()).isEmpty());
+    assertEquals(index.estimateMatchingEntries(f.getRawSubInitialValue(),
+         f.getRawSubAnyValues(), f.getRawSubFinalValue()), 0);
+  }
+
+
+
+  /**
+   * Creates a person entry with the provided common name values.
+   *
+   * @param  cnValues  The values for the cn attribute.  The first will also
+   *                   be used in the entry DN.
+   *
+   * @return  The entry that was created.
+   */
+  private static Entry createEntry(final String... cnValues)
+  {
+    final Entry e = new Entry("cn=" + cnValues[0] + ",dc=example,dc=com");
+    e.addAttribute("objectClass", "top", "person");
+    e.addAttribute("cn", cnValues);
+    e.addAttribute("sn", "Test");
+    return e;
+  }
+}
@@ -28,11 +28,15 @@ import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.testng.annotations.Test;
 
 import com.unboundid.asn1.ASN1OctetString;
 import com.unboundid.ldap.sdk.AddRequest;
+import com.unboundid.ldap.sdk.AsyncRequestID;
+import com.unboundid.ldap.sdk.AsyncSearchResultListener;
 import com.unboundid.ldap.sdk.Attribute;
 import com.unboundid.ldap.sdk.BindResult;
 import com.unboundid.ldap.sdk.CompareRequest;
@@ -44,6 +48,8 @@ import com.unboundid.ldap.sdk.DN;
 import com.unboundid.ldap.sdk.DereferencePolicy;
 import com.unboundid.ldap.sdk.Entry;
 import com.unboundid.ldap.sdk.ExtendedResult;
+import com.unboundid.ldap.sdk.IntermediateResponse;
+import com.unboundid.ldap.sdk.IntermediateResponseListener;
 import com.unboundid.ldap.sdk.InternalSDKHelper;
 import com.unboundid.ldap.sdk.LDAPConnection;
 import com.unboundid.ldap.sdk.LDAPConnectionOptions;
@@ -63,11 +69,25 @@ import com.unboundid.ldap.sdk.RootDSE;
 import com.unboundid.ldap.sdk.SearchRequest;
 import com.unboundid.ldap.sdk.SearchResult;
 import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultReference;
 import com.unboundid.ldap.sdk.SearchScope;
 import com.unboundid.ldap.sdk.SimpleBindRequest;
 import com.unboundid.ldap.sdk.TestUnsolicitedNotificationHandler;
 import com.unboundid.ldap.sdk.controls.AuthorizationIdentityRequestControl;
 import com.unboundid.ldap.sdk.controls.AuthorizationIdentityResponseControl;
+import com.unboundid.ldap.sdk.controls.ContentSyncDoneControl;
+import com.unboundid.ldap.sdk.controls.ContentSyncInfoIntermediateResponse;
+import com.unboundid.ldap.sdk.controls.ContentSyncInfoType;
+import com.unboundid.ldap.sdk.controls.ContentSyncRequestControl;
+import com.unboundid.ldap.sdk.controls.ContentSyncRequestMode;
+import com.unboundid.ldap.sdk.controls.ContentSyncState;
+import com.unboundid.ldap.sdk.controls.ContentSyncStateControl;
+import com.unboundid.ldap.sdk.controls.EntryChangeNotificationControl;
+import com.unboundid.ldap.sdk.controls.PersistentSearchChangeType;
+import com.unboundid.ldap.sdk.controls.PersistentSearchRequestControl;
+import com.unboundid.ldap.sdk.controls.ServerSideSortRequestControl;
+import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
+import com.unboundid.ldap.sdk.controls.SortKey;
 import com.unboundid.ldap.sdk.schema.AttributeTypeDefinition;
 import com.unboundid.ldap.sdk.schema.Schema;
 import com.unboundid.ldap.sdk.extensions.StartTLSExtendedRequest;
@@ -5817,4 +5837,1413 @@ public final class InMemoryDirectoryServerTestCase
 
     ds.shutDown(true);
   }
+
+
+
+  /**
+   * Tests the behavior of the server when it is configured to allow read
+   * operations to be processed concurrently.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testConcurrentReadOperations()
+         throws Exception
+  {
+    final InMemoryDirectoryServerConfig cfg =
+         new InMemoryDirectoryServerConfig("dc=example,dc=com");
+    cfg.addAdditionalBindCredentials("cn=Directory Manager", "password");
+    cfg.setAllowConcurrentReadOperations(true);
+
+    final InMemoryDirectoryServer ds = new InMemoryDirectoryServer(cfg);
+    ds.startListening();
+
+    ds.add(
+         "dn: dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: domain",
+         "dc: example");
+    ds.add(
+         "dn: uid=test.user,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: person",
+         "objectClass: organizationalPerson",
+         "objectClass: inetOrgPerson",
+         "uid: test.user",
+         "givenName: Test",
+         "sn: User",
+         "cn: Test User",
+         "userPassword: password");
+
+    final ArrayList<LDAPConnection> connList = new ArrayList<LDAPConnection>(5);
+    for (int i=0; i < 5; i++)
+    {
+      connList.add(ds.getConnection());
+    }
+
+
+    // Introduce a processing delay and issue a compare request on each
+    // connection at the same time.  If the requests are processed concurrently,
+    // then the total time will be much less than the sum of the delays.
+    ds.setProcessingDelayMillis(1000L);
+
+    final long startTime = System.currentTimeMillis();
+    final ArrayList<AsyncRequestID> requestIDs =
+         new ArrayList<AsyncRequestID>(5);
+    for (final LDAPConnection conn : connList)
+    {
+      requestIDs.add(conn.asyncCompare(
+           new CompareRequest("uid=test.user,dc=example,dc=com", "sn", "User"),
+           null));
+    }
+
+    for (final AsyncRequestID requestID : requestIDs)
+    {
+      final CompareResult compareResult = (CompareResult) requestID.get();
+      assertEquals(compareResult.getResultCode(), ResultCode.COMPARE_TRUE);
+    }
+
+    assertTrue((System.currentTimeMillis() - startTime) < 4000L);
+
+    ds.setProcessingDelayMillis(0L);
+
+
+    // Make sure that reads and writes work as expected.
+    final LDAPConnection conn = connList.get(0);
+    assertResultCodeEquals(conn,
+         new SimpleBindRequest("uid=test.user,dc=example,dc=com", "password"),
+         ResultCode.SUCCESS);
+    assertResultCodeEquals(conn,
+         new PLAINBindRequest("dn:uid=test.user,dc=example,dc=com", "password"),
+         ResultCode.SUCCESS);
+
+    conn.modify("uid=test.user,dc=example,dc=com",
+         new Modification(ModificationType.REPLACE, "description", "foo"));
+    assertEquals(conn.search("dc=example,dc=com", SearchScope.SUB,
+         "(description=foo)").getEntryCount(), 1);
+
+    conn.delete("uid=test.user,dc=example,dc=com");
+    assertEquals(ds.countEntries(), 1);
+    assertEntryMissing(conn, "uid=test.user,dc=example,dc=com");
+
+    for (final LDAPConnection c : connList)
+    {
+      c.close();
+    }
+
+    ds.shutDown(true);
+  }
+
+
+
+  /**
+   * Tests to ensure that searches processed using presence, substring, and
+   * ordering indexes return the same results as the same searches processed
+   * without any indexes, both before and after the indexed data is altered.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testSearchWithPresenceSubstringAndOrderingIndexes()
+         throws Exception
+  {
+    final InMemoryDirectoryServerConfig unindexedConfig =
+         new InMemoryDirectoryServerConfig("dc=example,dc=com");
+    unindexedConfig.setSchema(Schema.getDefaultStandardSchema());
+    final InMemoryDirectoryServer unindexedDS =
+         new InMemoryDirectoryServer(unindexedConfig);
+
+    final InMemoryDirectoryServerConfig indexedConfig =
+         new InMemoryDirectoryServerConfig(unindexedConfig);
+    indexedConfig.setPresenceIndexAttributes("description", "employeeNumber");
+    indexedConfig.setSubstringIndexAttributes("cn", "mail");
+    indexedConfig.setOrderingIndexAttributes("employeeNumber", "sn");
+    final InMemoryDirectoryServer indexedDS =
+         new InMemoryDirectoryServer(indexedConfig);
+
+    final ArrayList<Entry> entries = new ArrayList<Entry>(52);
+    entries.add(new Entry(
+         "dn: dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: domain",
+         "dc: example"));
+    entries.add(new Entry(
+         "dn: ou=People,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: organizationalUnit",
+         "ou: People"));
+    for (int i=0; i < 50; i++)
+    {
+      final Entry e = new Entry(
+           "dn: uid=user." + i + ",ou=People,dc=example,dc=com",
+           "objectClass: top",
+           "objectClass: person",
+           "objectClass: organizationalPerson",
+           "objectClass: inetOrgPerson",
+           "uid: user." + i,
+           "givenName: User",
+           "sn: " + (char) ('a' + (i % 26)) + "lpha" + i,
+           "cn: User " + i + " Number",
+           "mail: user." + i + "@example.com",
+           "employeeNumber: " + (i * 10));
+      if ((i % 3) == 0)
+      {
+        e.addAttribute("description", "Entry " + i);
+      }
+      entries.add(e);
+    }
+
+    unindexedDS.addEntries(entries);
+    indexedDS.addEntries(entries);
+
+    final String[] filters =
+    {
+      "(description=*)",
+      "(employeeNumber=*)",
+      "(cn=user 1*)",
+      "(cn=*5 number)",
+      "(cn=*er 4*)",
+      "(cn=u*2*r)",
+      "(mail=*@example.com)",
+      "(mail=*xyz*)",
+      "(employeeNumber>=250)",
+      "(employeeNumber<=95)",
+      "(&(employeeNumber>=100)(employeeNumber<=200))",
+      "(sn>=m)",
+      "(sn<=Delta)",
+      "(&(description=*)(cn=*3*))",
+      "(|(employeeNumber>=480)(cn=user 1 *))",
+      "(&(objectClass=person)(sn>=x))"
+    };
+
+    assertSameSearchResults(indexedDS, unindexedDS, filters);
+
+    for (final InMemoryDirectoryServer ds :
+         new InMemoryDirectoryServer[] { unindexedDS, indexedDS })
+    {
+      ds.modify("uid=user.1,ou=People,dc=example,dc=com",
+           new Modification(ModificationType.REPLACE, "description", "new"),
+           new Modification(ModificationType.REPLACE, "employeeNumber",
+                "9999"),
+           new Modification(ModificationType.REPLACE, "cn", "Renamed User"));
+      ds.delete("uid=user.3,ou=People,dc=example,dc=com");
+      ds.modifyDN("uid=user.6,ou=People,dc=example,dc=com", "uid=user.60",
+           true);
+    }
+
+    assertSameSearchResults(indexedDS, unindexedDS, filters);
+    assertEquals(indexedDS.search("dc=example,dc=com", SearchScope.SUB,
+         "(employeeNumber>=999)").getEntryCount(), 1);
+  }
+
+
+
+  /**
+   * Tests to ensure that a server configured to evaluate searches with
+   * multiple threads returns exactly the same results, in the same order, as a
+   * server that evaluates searches with a single thread, including when the
+   * server-side sort and simple paged results controls are used.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testParallelSearchEvaluation()
+         throws Exception
+  {
+    final InMemoryDirectoryServerConfig serialConfig =
+         new InMemoryDirectoryServerConfig("dc=example,dc=com");
+    serialConfig.setSchema(Schema.getDefaultStandardSchema());
+    final InMemoryDirectoryServer serialDS =
+         new InMemoryDirectoryServer(serialConfig);
+
+    final InMemoryDirectoryServerConfig parallelConfig =
+         new InMemoryDirectoryServerConfig(serialConfig);
+    parallelConfig.setSearchEvaluationThreads(4);
+    final InMemoryDirectoryServer parallelDS =
+         new InMemoryDirectoryServer(parallelConfig);
+
+    final int numEntries =
+         (InMemoryRequestHandler.SEARCH_EVALUATION_BATCH_SIZE * 3) + 17;
+    final ArrayList<Entry> entries = new ArrayList<Entry>(numEntries + 2);
+    entries.add(new Entry(
+         "dn: dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: domain",
+         "dc: example"));
+    entries.add(new Entry(
+         "dn: ou=People,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: organizationalUnit",
+         "ou: People"));
+    for (int i=0; i < numEntries; i++)
+    {
+      entries.add(new Entry(
+           "dn: uid=user." + i + ",ou=People,dc=example,dc=com",
+           "objectClass: top",
+           "objectClass: person",
+           "objectClass: organizationalPerson",
+           "objectClass: inetOrgPerson",
+           "uid: user." + i,
+           "givenName: User",
+           "sn: " + (numEntries - i),
+           "cn: User " + i,
+           "employeeNumber: " + (i % 7)));
+    }
+    entries.add(new Entry(
+         "dn: ou=Referral,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: referral",
+         "objectClass: extensibleObject",
+         "ou: Referral",
+         "employeeNumber: 3",
+         "ref: ldap://ds.example.com:389/dc=example,dc=com"));
+
+    serialDS.addEntries(entries);
+    parallelDS.addEntries(entries);
+    serialDS.startListening();
+    parallelDS.startListening();
+
+    final LDAPConnection serialConn = serialDS.getConnection();
+    final LDAPConnection parallelConn = parallelDS.getConnection();
+
+    for (final String filter :
+         new String[] { "(employeeNumber=3)", "(objectClass=*)", "(cn=*9*)",
+              "(employeeNumber=nonexistent)" })
+    {
+      final SearchRequest searchRequest = new SearchRequest(
+           "dc=example,dc=com", SearchScope.SUB, filter);
+      assertSameOrderedResults(serialConn.search(searchRequest),
+           parallelConn.search(searchRequest));
+
+      searchRequest.setControls(new ServerSideSortRequestControl(
+           new SortKey("sn")));
+      assertSameOrderedResults(serialConn.search(searchRequest),
+           parallelConn.search(searchRequest));
+
+      ASN1OctetString serialCookie = null;
+      ASN1OctetString parallelCookie = null;
+      while (true)
+      {
+        searchRequest.setControls(
+             new SimplePagedResultsControl(500, serialCookie));
+        final SearchResult serialResult = serialConn.search(searchRequest);
+
+        searchRequest.setControls(
+             new SimplePagedResultsControl(500, parallelCookie));
+        final SearchResult parallelResult = parallelConn.search(searchRequest);
+        assertSameOrderedResults(serialResult, parallelResult);
+
+        serialCookie = SimplePagedResultsControl.get(serialResult).getCookie();
+        parallelCookie =
+             SimplePagedResultsControl.get(parallelResult).getCookie();
+        if (serialCookie.getValueLength() == 0)
+        {
+          assertEquals(parallelCookie.getValueLength(), 0);
+          break;
+        }
+      }
+    }
+
+    serialConn.close();
+    parallelConn.close();
+    serialDS.shutDown(true);
+    parallelDS.shutDown(true);
+  }
+
+
+
+  /**
+   * Tests to ensure that servers configured to send search result entries as
+   * soon as they are identified, with and without parallel evaluation, return
+   * exactly the same results as a server that holds the entries until the
+   * search has completed, including when size limits, requested attributes,
+   * and controls that require buffering are used.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testStreamSearchResults()
+         throws Exception
+  {
+    final InMemoryDirectoryServerConfig bufferedConfig =
+         new InMemoryDirectoryServerConfig("dc=example,dc=com");
+    bufferedConfig.setSchema(Schema.getDefaultStandardSchema());
+    final InMemoryDirectoryServer bufferedDS =
+         new InMemoryDirectoryServer(bufferedConfig);
+
+    final InMemoryDirectoryServerConfig streamingConfig =
+         new InMemoryDirectoryServerConfig(bufferedConfig);
+    streamingConfig.setStreamSearchResults(true);
+    final InMemoryDirectoryServer streamingDS =
+         new InMemoryDirectoryServer(streamingConfig);
+
+    final InMemoryDirectoryServerConfig parallelConfig =
+         new InMemoryDirectoryServerConfig(streamingConfig);
+    parallelConfig.setSearchEvaluationThreads(4);
+    final InMemoryDirectoryServer parallelDS =
+         new InMemoryDirectoryServer(parallelConfig);
+
+    final int numEntries =
+         (InMemoryRequestHandler.SEARCH_EVALUATION_BATCH_SIZE * 2) + 5;
+    final ArrayList<Entry> entries = new ArrayList<Entry>(numEntries + 3);
+    entries.add(new Entry(
+         "dn: dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: domain",
+         "dc: example"));
+    entries.add(new Entry(
+         "dn: ou=People,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: organizationalUnit",
+         "ou: People"));
+    for (int i=0; i < numEntries; i++)
+    {
+      entries.add(new Entry(
+           "dn: uid=user." + i + ",ou=People,dc=example,dc=com",
+           "objectClass: top",
+           "objectClass: person",
+           "objectClass: organizationalPerson",
+           "objectClass: inetOrgPerson",
+           "uid: user." + i,
+           "givenName: User",
+           "sn: " + (numEntries - i),
+           "cn: User " + i,
+           "employeeNumber: " + (i % 5)));
+    }
+    entries.add(new Entry(
+         "dn: ou=Referral,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: referral",
+         "objectClass: extensibleObject",
+         "ou: Referral",
+         "employeeNumber: 2",
+         "ref: ldap://ds.example.com:389/dc=example,dc=com"));
+
+    final InMemoryDirectoryServer[] servers =
+         { bufferedDS, streamingDS, parallelDS };
+    final LDAPConnection[] conns = new LDAPConnection[servers.length];
+    for (int i=0; i < servers.length; i++)
+    {
+      servers[i].addEntries(entries);
+      servers[i].startListening();
+      conns[i] = servers[i].getConnection();
+    }
+
+    final ArrayList<SearchRequest> requests = new ArrayList<SearchRequest>(10);
+    requests.add(new SearchRequest("dc=example,dc=com", SearchScope.SUB,
+         "(employeeNumber=2)"));
+    requests.add(new SearchRequest("dc=example,dc=com", SearchScope.SUB,
+         "(objectClass=*)", "cn", "sn"));
+    requests.add(new SearchRequest("dc=example,dc=com", SearchScope.BASE,
+         "(objectClass=*)"));
+    requests.add(new SearchRequest("ou=People,dc=example,dc=com",
+         SearchScope.ONE, "(cn=*7*)", "1.1"));
+    requests.add(new SearchRequest("", SearchScope.BASE, "(objectClass=*)"));
+
+    final SearchRequest typesOnlyRequest = new SearchRequest(
+         "dc=example,dc=com", SearchScope.SUB, "(employeeNumber=4)", "cn");
+    typesOnlyRequest.setTypesOnly(true);
+    requests.add(typesOnlyRequest);
+
+    final SearchRequest sortRequest = new SearchRequest("dc=example,dc=com",
+         SearchScope.SUB, "(employeeNumber=1)");
+    sortRequest.setControls(new ServerSideSortRequestControl(
+         new SortKey("sn")));
+    requests.add(sortRequest);
+
+    final SearchRequest pagedRequest = new SearchRequest("dc=example,dc=com",
+         SearchScope.SUB, "(objectClass=person)");
+    pagedRequest.setControls(new SimplePagedResultsControl(100));
+    requests.add(pagedRequest);
+
+    for (final SearchRequest r : requests)
+    {
+      final SearchResult bufferedResult = conns[0].search(r);
+      assertResultCodeEquals(bufferedResult, ResultCode.SUCCESS);
+      for (int i=1; i < conns.length; i++)
+      {
+        final SearchResult result = conns[i].search(r);
+        assertResultCodeEquals(result, ResultCode.SUCCESS);
+        assertSameOrderedResults(bufferedResult, result);
+
+        final List<SearchResultEntry> bufferedEntries =
+             bufferedResult.getSearchEntries();
+        final List<SearchResultEntry> resultEntries = result.getSearchEntries();
+        for (int j=0; j < bufferedEntries.size(); j++)
+        {
+          assertEquals(resultEntries.get(j), bufferedEntries.get(j));
+        }
+      }
+    }
+
+    // Make sure that the size limit is enforced in the same way.
+    final SearchRequest sizeLimitRequest = new SearchRequest(
+         "dc=example,dc=com", SearchScope.SUB, "(objectClass=person)");
+    sizeLimitRequest.setSizeLimit(1500);
+    for (final LDAPConnection conn : conns)
+    {
+      try
+      {
+        conn.search(sizeLimitRequest);
+        fail("Expected a size limit exceeded result");
+      }
+      catch (final LDAPSearchException lse)
+      {
+        assertEquals(lse.getResultCode(), ResultCode.SIZE_LIMIT_EXCEEDED);
+        assertEquals(lse.getEntryCount(), 1500);
+      }
+    }
+
+    for (int i=0; i < servers.length; i++)
+    {
+      conns[i].close();
+      servers[i].shutDown(true);
+    }
+  }
+
+
+
+  /**
+   * Tests the behavior of the server when processing persistent search
+   * requests.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testPersistentSearch()
+         throws Exception
+  {
+    final InMemoryDirectoryServer ds = createChangeNotificationTestDS();
+    final LDAPConnection conn = ds.getConnection();
+
+    assertTrue(conn.getRootDSE().supportsControl(
+         PersistentSearchRequestControl.PERSISTENT_SEARCH_REQUEST_OID));
+
+
+    // Start a persistent search that will also return the initial content.
+    final TestChangeNotificationListener listener =
+         new TestChangeNotificationListener();
+    final SearchRequest searchRequest = new SearchRequest(listener,
+         "ou=People,dc=example,dc=com", SearchScope.SUB,
+         "(|(uid=*)(ou=People))");
+    searchRequest.addControl(new PersistentSearchRequestControl(
+         PersistentSearchChangeType.allChangeTypes(), false, true));
+    final AsyncRequestID requestID = conn.asyncSearch(searchRequest);
+
+    SearchResultEntry e = listener.nextEntry();
+    assertEquals(e.getParsedDN(), new DN("ou=People,dc=example,dc=com"));
+    assertNull(EntryChangeNotificationControl.get(e));
+
+
+    // Make a set of changes and verify that the matching ones are returned.
+    conn.add(
+         "dn: uid=test.1,ou=People,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: person",
+         "objectClass: organizationalPerson",
+         "objectClass: inetOrgPerson",
+         "uid: test.1",
+         "givenName: Test",
+         "sn: 1",
+         "cn: Test 1");
+    conn.add(
+         "dn: ou=Not Matching,ou=People,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: organizationalUnit",
+         "ou: Not Matching");
+    conn.modify(
+         "dn: uid=test.1,ou=People,dc=example,dc=com",
+         "changetype: modify",
+         "replace: description",
+         "description: foo");
+    conn.modifyDN("uid=test.1,ou=People,dc=example,dc=com", "uid=test.2",
+         true);
+    conn.delete("uid=test.2,ou=People,dc=example,dc=com");
+
+    e = listener.nextEntry();
+    assertEquals(e.getParsedDN(),
+         new DN("uid=test.1,ou=People,dc=example,dc=com"));
+    EntryChangeNotificationControl ecn = EntryChangeNotificationControl.get(e);
+    assertNotNull(ecn);
+    assertEquals(ecn.getChangeType(), PersistentSearchChangeType.ADD);
+
+    e = listener.nextEntry();
+    assertEquals(e.getParsedDN(),
+         new DN("uid=test.1,ou=People,dc=example,dc=com"));
+    assertEquals(e.getAttributeValue("description"), "foo");
+    ecn = EntryChangeNotificationControl.get(e);
+    assertEquals(ecn.getChangeType(), PersistentSearchChangeType.MODIFY);
+
+    e = listener.nextEntry();
+    assertEquals(e.getParsedDN(),
+         new DN("uid=test.2,ou=People,dc=example,dc=com"));
+    ecn = EntryChangeNotificationControl.get(e);
+    assertEquals(ecn.getChangeType(), PersistentSearchChangeType.MODIFY_DN);
+    assertEquals(new DN(ecn.getPreviousDN()),
+         new DN("uid=test.1,ou=People,dc=example,dc=com"));
+
+    e = listener.nextEntry();
+    assertEquals(e.getParsedDN(),
+         new DN("uid=test.2,ou=People,dc=example,dc=com"));
+    ecn = EntryChangeNotificationControl.get(e);
+    assertEquals(ecn.getChangeType(), PersistentSearchChangeType.DELETE);
+
+
+    // Abandon the search and verify that no more changes are returned.
+    conn.abandon(requestID);
+    conn.add(
+         "dn: uid=test.3,ou=People,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: person",
+         "objectClass: organizationalPerson",
+         "objectClass: inetOrgPerson",
+         "uid: test.3",
+         "givenName: Test",
+         "sn: 3",
+         "cn: Test 3");
+    assertNull(listener.poll(200L));
+    assertNull(listener.result);
+
+
+    // A persistent search cannot be processed without a client connection.
+    try
+    {
+      ds.search(searchRequest);
+      fail("Expected an exception for a persistent search without a " +
+           "client connection");
+    }
+    catch (final LDAPSearchException lse)
+    {
+      assertEquals(lse.getResultCode(), ResultCode.UNWILLING_TO_PERFORM);
+    }
+
+    conn.close();
+    ds.shutDown(true);
+  }
+
+
+
+  /**
+   * Tests the behavior of the server when processing content synchronization
+   * requests.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testContentSync()
+         throws Exception
+  {
+    final InMemoryDirectoryServer ds = createChangeNotificationTestDS();
+    final LDAPConnection conn = ds.getConnection();
+
+    assertTrue(conn.getRootDSE().supportsControl(
+         ContentSyncRequestControl.SYNC_REQUEST_OID));
+
+
+    // A refreshOnly request without a cookie should return all matching
+    // entries and a cookie.
+    SearchRequest searchRequest = new SearchRequest(
+         "ou=People,dc=example,dc=com", SearchScope.SUB, "(objectClass=*)");
+    searchRequest.addControl(new ContentSyncRequestControl(
+         ContentSyncRequestMode.REFRESH_ONLY));
+    SearchResult searchResult = conn.search(searchRequest);
+    assertEquals(searchResult.getEntryCount(), 1);
+
+    final SearchResultEntry peopleEntry =
+         searchResult.getSearchEntries().get(0);
+    ContentSyncStateControl stateControl =
+         ContentSyncStateControl.get(peopleEntry);
+    assertNotNull(stateControl);
+    assertEquals(stateControl.getState(), ContentSyncState.ADD);
+    assertEquals(stateControl.getEntryUUID().toString(),
+         ds.getEntry(peopleEntry.getDN(), "entryUUID").getAttributeValue(
+              "entryUUID"));
+
+    ContentSyncDoneControl doneControl =
+         ContentSyncDoneControl.get(searchResult);
+    assertNotNull(doneControl);
+    assertFalse(doneControl.refreshDeletes());
+    final ASN1OctetString cookie = doneControl.getCookie();
+    assertNotNull(cookie);
+
+
+    // A refreshOnly request with a current cookie should not return anything.
+    searchRequest.setControls(new ContentSyncRequestControl(
+         ContentSyncRequestMode.REFRESH_ONLY, cookie, false));
+    searchResult = conn.search(searchRequest);
+    assertEquals(searchResult.getEntryCount(), 0);
+    doneControl = ContentSyncDoneControl.get(searchResult);
+    assertTrue(doneControl.refreshDeletes());
+    assertEquals(doneControl.getCookie().stringValue(), cookie.stringValue());
+
+
+    // Start a refreshAndPersist request and make some changes.
+    final TestChangeNotificationListener listener =
+         new TestChangeNotificationListener();
+    searchRequest = new SearchRequest(listener, "ou=People,dc=example,dc=com",
+         SearchScope.SUB, "(objectClass=person)");
+    searchRequest.setIntermediateResponseListener(listener);
+    searchRequest.addControl(new ContentSyncRequestControl(
+         ContentSyncRequestMode.REFRESH_AND_PERSIST));
+    final AsyncRequestID requestID = conn.asyncSearch(searchRequest);
+
+    final ContentSyncInfoIntermediateResponse ir =
+         listener.nextIntermediateResponse();
+    assertEquals(ir.getType(), ContentSyncInfoType.REFRESH_PRESENT);
+    assertTrue(ir.refreshDone());
+    assertEquals(ir.getCookie().stringValue(), cookie.stringValue());
+
+    conn.add(
+         "dn: uid=test.1,ou=People,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: person",
+         "objectClass: organizationalPerson",
+         "objectClass: inetOrgPerson",
+         "uid: test.1",
+         "givenName: Test",
+         "sn: 1",
+         "cn: Test 1");
+    conn.modify(
+         "dn: uid=test.1,ou=People,dc=example,dc=com",
+         "changetype: modify",
+         "replace: description",
+         "description: foo");
+    conn.delete("uid=test.1,ou=People,dc=example,dc=com");
+
+    SearchResultEntry e = listener.nextEntry();
+    stateControl = ContentSyncStateControl.get(e);
+    assertEquals(stateControl.getState(), ContentSyncState.ADD);
+    final UUID entryUUID = stateControl.getEntryUUID();
+    assertNotNull(stateControl.getCookie());
+    assertFalse(stateControl.getCookie().stringValue().equals(
+         cookie.stringValue()));
+
+    e = listener.nextEntry();
+    stateControl = ContentSyncStateControl.get(e);
+    assertEquals(stateControl.getState(), ContentSyncState.MODIFY);
+    assertEquals(stateControl.getEntryUUID(), entryUUID);
+    assertEquals(e.getAttributeValue("description"), "foo");
+
+    e = listener.nextEntry();
+    stateControl = ContentSyncStateControl.get(e);
+    assertEquals(stateControl.getState(), ContentSyncState.DELETE);
+    assertEquals(stateControl.getEntryUUID(), entryUUID);
+    assertEquals(e.getParsedDN(),
+         new DN("uid=test.1,ou=People,dc=example,dc=com"));
+
+    conn.abandon(requestID);
+
+
+    // The original cookie is no longer current, so it should be rejected.
+    searchRequest = new SearchRequest("ou=People,dc=example,dc=com",
+         SearchScope.SUB, "(objectClass=*)");
+    searchRequest.addControl(new ContentSyncRequestControl(
+         ContentSyncRequestMode.REFRESH_ONLY, cookie, false));
+    try
+    {
+      conn.search(searchRequest);
+      fail("Expected an exception for a stale sync cookie");
+    }
+    catch (final LDAPSearchException lse)
+    {
+      assertEquals(lse.getResultCode(), ResultCode.E_SYNC_REFRESH_REQUIRED);
+    }
+
+    conn.close();
+    ds.shutDown(true);
+  }
+
+
+
+  /**
+   * Tests the ability to recover the content of the server from a journal
+   * directory when a new instance is created.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testJournal()
+         throws Exception
+  {
+    final File journalDir = createTempDir();
+    final InMemoryDirectoryServerConfig cfg =
+         new InMemoryDirectoryServerConfig("dc=example,dc=com");
+    cfg.setJournalDirectory(journalDir);
+    cfg.setJournalCheckpointInterval(0);
+    cfg.setMaxChangeLogEntries(5);
+
+    final InMemoryDirectoryServer ds1 = new InMemoryDirectoryServer(cfg);
+    ds1.add(
+         "dn: dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: domain",
+         "dc: example");
+    ds1.add(
+         "dn: ou=People,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: organizationalUnit",
+         "ou: People");
+    for (int i=0; i < 5; i++)
+    {
+      ds1.add(
+           "dn: uid=user." + i + ",ou=People,dc=example,dc=com",
+           "objectClass: top",
+           "objectClass: person",
+           "objectClass: organizationalPerson",
+           "objectClass: inetOrgPerson",
+           "uid: user." + i,
+           "givenName: User",
+           "sn: " + i,
+           "cn: User " + i);
+    }
+
+    // Write a checkpoint so that recovery will need to use both the
+    // checkpoint and the changes journaled after it.
+    ds1.checkpointJournal();
+    assertTrue(new File(journalDir,
+         InMemoryDirectoryServerJournal.CHECKPOINT_FILE_NAME).exists());
+
+    ds1.modify("uid=user.0,ou=People,dc=example,dc=com",
+         new Modification(ModificationType.REPLACE, "description", "foo"));
+    ds1.delete("uid=user.1,ou=People,dc=example,dc=com");
+    ds1.modifyDN("uid=user.2,ou=People,dc=example,dc=com", "uid=moved",
+         true);
+
+    final InMemoryDirectoryServer ds2 = new InMemoryDirectoryServer(cfg);
+    assertEquals(ds2.countEntries(true), ds1.countEntries(true));
+    assertEquals(ds2.createSnapshot().getFirstChangeNumber(),
+         ds1.createSnapshot().getFirstChangeNumber());
+    assertEquals(ds2.createSnapshot().getLastChangeNumber(),
+         ds1.createSnapshot().getLastChangeNumber());
+
+    for (final SearchResultEntry e : ds1.search("dc=example,dc=com",
+         SearchScope.SUB, "(objectClass=*)", "*", "+").getSearchEntries())
+    {
+      assertEquals(ds2.getEntry(e.getDN(), "*", "+"), e);
+    }
+    for (final SearchResultEntry e : ds1.search("cn=changelog",
+         SearchScope.SUB, "(objectClass=*)", "*", "+").getSearchEntries())
+    {
+      assertEquals(ds2.getEntry(e.getDN(), "*", "+"), e);
+    }
+
+    ds2.assertEntryExists("uid=moved,ou=People,dc=example,dc=com");
+    ds2.assertEntryMissing("uid=user.1,ou=People,dc=example,dc=com");
+    ds2.assertAttributeExists("uid=user.0,ou=People,dc=example,dc=com",
+         "description");
+
+    // Changes made to the recovered instance should also be journaled, and
+    // clearing the server should be reflected after a restart.
+    ds2.add(
+         "dn: ou=Groups,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: organizationalUnit",
+         "ou: Groups");
+    final InMemoryDirectoryServer ds3 = new InMemoryDirectoryServer(cfg);
+    ds3.assertEntryExists("ou=Groups,dc=example,dc=com");
+    assertEquals(ds3.countEntries(true), ds2.countEntries(true));
+
+    ds3.clear();
+    final InMemoryDirectoryServer ds4 = new InMemoryDirectoryServer(cfg);
+    ds4.assertEntryMissing("dc=example,dc=com");
+    assertEquals(ds4.countEntries(true), ds3.countEntries(true));
+  }
+
+
+
+  /**
+   * Tests to ensure that an attempt to write a journal checkpoint will fail
+   * for a server that is not configured with a journal directory.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test(expectedExceptions = { LDAPException.class })
+  public void testCheckpointJournalWithoutJournal()
+         throws Exception
+  {
+    final InMemoryDirectoryServer ds =
+         new InMemoryDirectoryServer("dc=example,dc=com");
+    ds.checkpointJournal();
+  }
+
+
+
+  /**
+   * Provides test coverage for bulk imports from LDIF.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testBulkImportFromLDIF()
+         throws Exception
+  {
+    final InMemoryDirectoryServerConfig cfg =
+         new InMemoryDirectoryServerConfig("dc=example,dc=com");
+    cfg.setSchema(Schema.getDefaultStandardSchema());
+    cfg.setEqualityIndexAttributes("uid");
+    cfg.setMaxChangeLogEntries(100);
+
+    final InMemoryDirectoryServer ds = new InMemoryDirectoryServer(cfg);
+
+    final List<String> ldifLines = new ArrayList<String>();
+    ldifLines.addAll(Arrays.asList(
+         "dn: dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: domain",
+         "dc: example",
+         "",
+         "dn: ou=People,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: organizationalUnit",
+         "ou: People",
+         ""));
+
+    // Put the user entries in descending order to ensure that they are sorted
+    // before they are loaded.
+    for (int i=2999; i >= 0; i--)
+    {
+      ldifLines.addAll(Arrays.asList(
+           "dn: uid=user." + i + ",ou=People,dc=example,dc=com",
+           "objectClass: inetOrgPerson",
+           "uid: user." + i,
+           "givenName: User",
+           "sn: " + i,
+           "cn: User " + i,
+           ""));
+    }
+
+    final File ldifFile1 =
+         createTempFile(ldifLines.toArray(new String[ldifLines.size()]));
+
+    final InMemoryDirectoryServerBulkImportResult result =
+         ds.bulkImportFromLDIF(true, ldifFile1.getAbsolutePath(), 4);
+    assertNotNull(result);
+    assertEquals(result.getEntriesImported(), 3002);
+    assertTrue(result.getPrepareDurationMillis() >= 0L);
+    assertTrue(result.getLoadDurationMillis() >= 0L);
+    assertEquals(result.getTotalDurationMillis(),
+         result.getPrepareDurationMillis() + result.getLoadDurationMillis());
+    assertTrue(result.getEntriesPerSecond() > 0.0d);
+    assertNotNull(result.toString());
+
+    assertEquals(ds.countEntries(), 3002);
+    ds.assertEntryExists("uid=user.1234,ou=People,dc=example,dc=com");
+    ds.assertValueExists("uid=user.1234,ou=People,dc=example,dc=com",
+         "objectClass", "person");
+    ds.assertEntryMissing("changeNumber=1,cn=changelog");
+
+    final Entry e = ds.getEntry("uid=user.1234,ou=People,dc=example,dc=com",
+         "*", "+");
+    assertTrue(e.hasAttribute("entryUUID"));
+    assertTrue(e.hasAttribute("createTimestamp"));
+
+    assertEquals(ds.search("dc=example,dc=com", SearchScope.SUB,
+         "(uid=user.2999)").getEntryCount(), 1);
+    assertEquals(ds.search("ou=People,dc=example,dc=com", SearchScope.ONE,
+         "(objectClass=person)").getEntryCount(), 3000);
+
+
+    // Add entries to the existing content using the calling thread.
+    final File ldifFile2 = createTempFile(
+         "dn: uid=user.3000,ou=People,dc=example,dc=com",
+         "objectClass: inetOrgPerson",
+         "uid: user.3000",
+         "givenName: User",
+         "sn: 3000",
+         "cn: User 3000",
+         "",
+         "dn: ou=Groups,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: organizationalUnit",
+         "ou: Groups");
+    assertEquals(ds.bulkImportFromLDIF(false, ldifFile2.getAbsolutePath(),
+         1).getEntriesImported(), 2);
+    assertEquals(ds.countEntries(), 3004);
+    assertEquals(ds.search("dc=example,dc=com", SearchScope.SUB,
+         "(uid=user.3000)").getEntryCount(), 1);
+
+
+    // Make sure that a normal change is still recorded in the changelog.
+    ds.delete("ou=Groups,dc=example,dc=com");
+    ds.assertEntryExists("changeNumber=1,cn=changelog");
+    assertEquals(ds.countEntries(), 3003);
+
+
+    // Try to add entries that already exist.
+    try
+    {
+      ds.bulkImportFromLDIF(false, ldifFile1.getAbsolutePath(), 4);
+      fail("Expected an exception for an import with entries that already " +
+           "exist");
+    }
+    catch (final LDAPException le)
+    {
+      assertEquals(le.getResultCode(), ResultCode.ENTRY_ALREADY_EXISTS);
+    }
+    finally
+    {
+      assertEquals(ds.countEntries(), 3003);
+    }
+
+    // Try to clear and add entries without their parents.
+    try
+    {
+      ds.bulkImportFromLDIF(true, ldifFile2.getAbsolutePath(), 4);
+      fail("Expected an exception for an import without parent entries.");
+    }
+    catch (final LDAPException le)
+    {
+      assertEquals(le.getResultCode(), ResultCode.NO_SUCH_OBJECT);
+    }
+    finally
+    {
+      assertEquals(ds.countEntries(), 3003);
+    }
+
+    // Try to import an entry that violates the schema.
+    final File ldifFile3 = createTempFile(
+         "dn: uid=no.sn,ou=People,dc=example,dc=com",
+         "objectClass: inetOrgPerson",
+         "uid: no.sn",
+         "cn: No SN");
+    try
+    {
+      ds.bulkImportFromLDIF(false, ldifFile3.getAbsolutePath(), 4);
+      fail("Expected an exception for an import with an invalid entry.");
+    }
+    catch (final LDAPException le)
+    {
+      assertEquals(le.getResultCode(), ResultCode.OBJECT_CLASS_VIOLATION);
+    }
+    finally
+    {
+      assertEquals(ds.countEntries(), 3003);
+    }
+
+    // Try to import an entry more than once.
+    final File ldifFile4 = createTempFile(
+         "dn: ou=Groups,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: organizationalUnit",
+         "ou: Groups",
+         "",
+         "dn: ou=Groups,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: organizationalUnit",
+         "ou: Groups");
+    try
+    {
+      ds.bulkImportFromLDIF(false, ldifFile4.getAbsolutePath(), 1);
+      fail("Expected an exception for an import with duplicate entries.");
+    }
+    catch (final LDAPException le)
+    {
+      assertEquals(le.getResultCode(), ResultCode.ENTRY_ALREADY_EXISTS);
+    }
+    finally
+    {
+      assertEquals(ds.countEntries(), 3003);
+    }
+
+    // Try to import an entry below a referral.
+    final File ldifFile5 = createTempFile(
+         "dn: ou=Referral,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: referral",
+         "objectClass: extensibleObject",
+         "ou: Referral",
+         "ref: ldap://ds.example.com:389/ou=Referral,dc=example,dc=com",
+         "",
+         "dn: ou=below,ou=Referral,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: organizationalUnit",
+         "ou: below");
+    try
+    {
+      ds.bulkImportFromLDIF(false, ldifFile5.getAbsolutePath(), 1);
+      fail("Expected an exception for an import below a referral.");
+    }
+    catch (final LDAPException le)
+    {
+      assertEquals(le.getResultCode(), ResultCode.REFERRAL);
+    }
+    finally
+    {
+      assertEquals(ds.countEntries(), 3003);
+    }
+
+    // Try to import from a malformed file.
+    final File ldifFile6 = createTempFile(
+         "This is not a valid LDIF file.",
+         "Attempting to import it shouldn't have any effect on existing data.");
+    try
+    {
+      ds.bulkImportFromLDIF(true, ldifFile6.getAbsolutePath(), 4);
+      fail("Expected an exception for an import from a malformed file.");
+    }
+    catch (final LDAPException le)
+    {
+      // This was expected.
+    }
+    finally
+    {
+      assertEquals(ds.countEntries(), 3003);
+    }
+
+    // Clear and re-import the original file.
+    assertEquals(ds.bulkImportFromLDIF(true, ldifFile1.getAbsolutePath(),
+         0).getEntriesImported(), 3002);
+    assertEquals(ds.countEntries(), 3002);
+    ds.assertEntryMissing("changeNumber=1,cn=changelog");
+  }
+
+
+
+  /**
+   * Provides test coverage for a server that holds its entries in compact
+   * entry storage.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testCompactEntryStorage()
+         throws Exception
+  {
+    final InMemoryDirectoryServerConfig cfg =
+         new InMemoryDirectoryServerConfig("dc=example,dc=com");
+    cfg.setSchema(Schema.getDefaultStandardSchema());
+    cfg.setEqualityIndexAttributes("uid", "member");
+    cfg.setUseCompactEntryStorage(true);
+
+    final InMemoryDirectoryServer ds = new InMemoryDirectoryServer(cfg);
+    ds.startListening();
+
+    final LDAPConnection conn = ds.getConnection();
+    conn.add(
+         "dn: dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: domain",
+         "dc: example");
+    conn.add(
+         "dn: ou=People,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: organizationalUnit",
+         "ou: People");
+
+    for (int i=0; i < 100; i++)
+    {
+      conn.add(
+           "dn: uid=user." + i + ",ou=People,dc=example,dc=com",
+           "objectClass: inetOrgPerson",
+           "uid: user." + i,
+           "givenName: User",
+           "sn: " + i,
+           "cn: User " + i);
+    }
+
+    conn.add(
+         "dn: cn=Group,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: groupOfNames",
+         "cn: Group",
+         "member: uid=user.1,ou=People,dc=example,dc=com");
+
+    assertEquals(ds.countEntries(), 103);
+
+    // Matching should use the server schema for entries decoded from the
+    // store.
+    ds.assertValueExists("uid=user.5,ou=People,dc=example,dc=com", "cn",
+         "USER 5");
+    assertEquals(conn.search("dc=example,dc=com", SearchScope.SUB,
+         "(uid=USER.50)").getEntryCount(), 1);
+    assertEquals(conn.search("dc=example,dc=com", SearchScope.SUB,
+         "(member=UID=User.1,OU=People,DC=example,DC=com)").getEntryCount(),
+         1);
+
+    final InMemoryDirectoryServerSnapshot snapshot = ds.createSnapshot();
+
+    conn.modify(
+         "dn: uid=user.5,ou=People,dc=example,dc=com",
+         "changetype: modify",
+         "replace: description",
+         "description: modified");
+    ds.assertValueExists("uid=user.5,ou=People,dc=example,dc=com",
+         "description", "modified");
+
+    conn.modifyDN("uid=user.6,ou=People,dc=example,dc=com", "uid=user.600",
+         true);
+    ds.assertEntryMissing("uid=user.6,ou=People,dc=example,dc=com");
+    ds.assertEntryExists("uid=user.600,ou=People,dc=example,dc=com");
+
+    conn.delete("uid=user.7,ou=People,dc=example,dc=com");
+    ds.assertEntryMissing("uid=user.7,ou=People,dc=example,dc=com");
+    assertEquals(ds.countEntries(), 102);
+
+    // Restoring the snapshot should undo the changes, even though the entries
+    // it references were written before they were made.
+    ds.restoreSnapshot(snapshot);
+    assertEquals(ds.countEntries(), 103);
+    ds.assertAttributeMissing("uid=user.5,ou=People,dc=example,dc=com",
+         "description");
+    ds.assertEntryExists("uid=user.6,ou=People,dc=example,dc=com");
+    ds.assertEntryExists("uid=user.7,ou=People,dc=example,dc=com");
+    assertEquals(conn.search("dc=example,dc=com", SearchScope.SUB,
+         "(uid=user.7)").getEntryCount(), 1);
+
+    // Clear the server and use a bulk import to load new content.
+    ds.clear();
+    assertEquals(ds.countEntries(), 0);
+
+    final File ldifFile = createTempFile(
+         "dn: dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: domain",
+         "dc: example",
+         "",
+         "dn: ou=Imported,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: organizationalUnit",
+         "ou: Imported");
+    assertEquals(ds.bulkImportFromLDIF(true, ldifFile.getAbsolutePath(),
+         2).getEntriesImported(), 2);
+    ds.assertEntryExists("ou=Imported,dc=example,dc=com");
+    assertEquals(conn.search("dc=example,dc=com", SearchScope.SUB,
+         "(ou=imported)").getEntryCount(), 1);
+
+    conn.close();
+    ds.shutDown(true);
+  }
+
+
+
+  /**
+   * Creates and starts an in-memory directory server instance for use in
+   * testing change notification.
+   *
+   * @return  The in-memory directory server instance that was created.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  private static InMemoryDirectoryServer createChangeNotificationTestDS()
+          throws Exception
+  {
+    final InMemoryDirectoryServer ds =
+         new InMemoryDirectoryServer("dc=example,dc=com");
+    ds.add(
+         "dn: dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: domain",
+         "dc: example");
+    ds.add(
+         "dn: ou=People,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: organizationalUnit",
+         "ou: People");
+    ds.startListening();
+    return ds;
+  }
+
+
+
+  /**
+   * This class provides a search result and intermediate response listener
+   * that can be used to wait for the results of a persistent search or
+   * content synchronization request.
+   */
+  private static final class TestChangeNotificationListener
+          implements AsyncSearchResultListener, IntermediateResponseListener
+  {
+    /**
+     * The serial version UID for this serializable class.
+     */
+    private static final long serialVersionUID = 3305412862431227018L;
+
+
+
+    // The search result, if one has been received.
+    private volatile SearchResult result;
+
+    // The entries and intermediate responses that have been received.
+    private final LinkedBlockingQueue<Object> queue;
+
+
+
+    /**
+     * Creates a new instance of this listener.
+     */
+    private TestChangeNotificationListener()
+    {
+      queue = new LinkedBlockingQueue<Object>();
+      result = null;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void searchEntryReturned(final SearchResultEntry searchEntry)
+    {
+      queue.add(searchEntry);
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void searchReferenceReturned(
+                     final SearchResultReference searchReference)
+    {
+      queue.add(searchReference);
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void searchResultReceived(final AsyncRequestID requestID,
+                                     final SearchResult searchResult)
+    {
+      result = searchResult;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void intermediateResponseReturned(
+                     final IntermediateResponse intermediateResponse)
+    {
+      queue.add(intermediateResponse);
+    }
+
+
+
+    /**
+     * Waits for the next item to be received.
+     *
+     * @param  timeoutMillis  The maximum length of time in milliseconds to
+     *                        wait.
+     *
+     * @return  The next item, or {@code null} if none was received within the
+     *          timeout.
+     *
+     * @throws  Exception  If an unexpected problem occurs.
+     */
+    private Object poll(final long timeoutMillis)
+            throws Exception
+    {
+      return queue.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+
+
+    /**
+     * Waits for the next search result entry to be received.
+     *
+     * @return  The next search result entry.
+     *
+     * @throws  Exception  If an unexpected problem occurs.
+     */
+    private SearchResultEntry nextEntry()
+            throws Exception
+    {
+      final Object o = poll(10000L);
+      assertNotNull(o, "No search result entry received");
+      assertTrue(o instanceof SearchResultEntry,
+           "Expected a search result entry but got " + o);
+      return (SearchResultEntry) o;
+    }
+
+
+
+    /**
+     * Waits for the next intermediate response to be received and decodes it
+     * as a sync info intermediate response.
+     *
+     * @return  The decoded sync info intermediate response.
+     *
+     * @throws  Exception  If an unexpected problem occurs.
+     */
+    private ContentSyncInfoIntermediateResponse nextIntermediateResponse()
+            throws Exception
+    {
+      final Object o = poll(10000L);
+      assertNotNull(o, "No intermediate response received");
+      assertTrue(o instanceof IntermediateResponse,
+           "Expected an intermediate response but got " + o);
+      return ContentSyncInfoIntermediateResponse.decode(
+           (IntermediateResponse) o);
+    }
+  }
+
+
+
+  /**
+   * Ensures that the provided search results contain the same entries and
+   * references in the same order.
+   *
+   * @param  r1  The first search result.
+   * @param  r2  The second search result.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  private static void assertSameOrderedResults(final SearchResult r1,
+                                               final SearchResult r2)
+          throws Exception
+  {
+    assertEquals(r1.getEntryCount(), r2.getEntryCount());
+    assertEquals(r1.getReferenceCount(), r2.getReferenceCount());
+
+    final List<SearchResultEntry> entries1 = r1.getSearchEntries();
+    final List<SearchResultEntry> entries2 = r2.getSearchEntries();
+    for (int i=0; i < entries1.size(); i++)
+    {
+      assertEquals(entries2.get(i).getParsedDN(),
+           entries1.get(i).getParsedDN());
+    }
+  }
+
+
+
+  /**
+   * Ensures that the provided servers return the same set of entries for
+   * each of the given filters.
+   *
+   * @param  ds1      The first server to search.
+   * @param  ds2      The second server to search.
+   * @param  filters  The filters to use for the searches.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  private static void assertSameSearchResults(final InMemoryDirectoryServer ds1,
+                                              final InMemoryDirectoryServer ds2,
+                                              final String... filters)
+          throws Exception
+  {
+    for (final String filter : filters)
+    {
+      final SearchResult r1 =
+           ds1.search("dc=example,dc=com", SearchScope.SUB, filter);
+      final SearchResult r2 =
+           ds2.search("dc=example,dc=com", SearchScope.SUB, filter);
+      assertEquals(r1.getEntryCount(), r2.getEntryCount(),
+           "Entry count mismatch for filter " + filter);
+
+      final ArrayList<DN> dns1 = new ArrayList<DN>(r1.getEntryCount());
+      for (final SearchResultEntry e : r1.getSearchEntries())
+      {
+        dns1.add(e.getParsedDN());
+      }
+
+      for (final SearchResultEntry e : r2.getSearchEntries())
+      {
+        assertTrue(dns1.contains(e.getParsedDN()),
+             "Missing entry " + e.getDN() + " for filter " + filter);
+      }
+    }
+  }
 }
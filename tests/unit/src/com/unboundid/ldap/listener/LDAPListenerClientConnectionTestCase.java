@@ -25,22 +25,39 @@ package com.unboundid.ldap.listener;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.testng.annotations.Test;
 
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedSearchEntry;
+import com.unboundid.ldap.listener.interceptor.InMemoryOperationInterceptor;
 import com.unboundid.ldap.sdk.AddRequest;
+import com.unboundid.ldap.sdk.AsyncRequestID;
+import com.unboundid.ldap.sdk.AsyncSearchResultListener;
 import com.unboundid.ldap.sdk.CompareRequest;
 import com.unboundid.ldap.sdk.DeleteRequest;
+import com.unboundid.ldap.sdk.Entry;
 import com.unboundid.ldap.sdk.ExtendedRequest;
 import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionOptions;
 import com.unboundid.ldap.sdk.LDAPException;
 import com.unboundid.ldap.sdk.LDAPSDKTestCase;
 import com.unboundid.ldap.sdk.ModifyRequest;
 import com.unboundid.ldap.sdk.ModifyDNRequest;
 import com.unboundid.ldap.sdk.ResultCode;
 import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultReference;
 import com.unboundid.ldap.sdk.SearchScope;
 import com.unboundid.ldap.sdk.SimpleBindRequest;
+import com.unboundid.util.ByteArrayPool;
 import com.unboundid.util.TestInputStream;
 import com.unboundid.util.TestOutputStream;
 import com.unboundid.util.TestSocket;
@@ -233,4 +250,324 @@ public final class LDAPListenerClientConnectionTestCase
       TestRequestHandler.setThrowOnProcessRequest(false);
     }
   }
+
+
+
+  /**
+   * Tests the behavior when returning a large number of search result entries
+   * and references with a variety of search result buffer sizes, including
+   * entries that are larger than the buffer.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testBufferedSearchResults()
+         throws Exception
+  {
+    final char[] largeValue = new char[100000];
+    Arrays.fill(largeValue, 'x');
+
+    final List<Entry> entries = new ArrayList<Entry>(1000);
+    for (int i=0; i < 1000; i++)
+    {
+      final Entry e = new Entry("ou=test " + i + ",dc=example,dc=com");
+      e.addAttribute("objectClass", "top", "organizationalUnit");
+      e.addAttribute("ou", "test " + i);
+      if ((i % 250) == 0)
+      {
+        e.addAttribute("description", new String(largeValue));
+      }
+      entries.add(e);
+    }
+
+    final List<SearchResultReference> references =
+         new ArrayList<SearchResultReference>(2);
+    references.add(new SearchResultReference(
+         new String[] { "ldap://ds1.example.com/dc=example,dc=com" }, null));
+    references.add(new SearchResultReference(
+         new String[] { "ldap://ds2.example.com/dc=example,dc=com" }, null));
+
+    for (final int bufferSize : new int[] { 0, 1, 1024, 65536 })
+    {
+      for (final int selectorThreadCount : new int[] { 0, 1 })
+      {
+        final LDAPListenerConfig config = new LDAPListenerConfig(0,
+             new CannedResponseRequestHandler(ResultCode.SUCCESS, null, null,
+                  null, entries, references));
+        config.setSearchResultBufferSize(bufferSize);
+        config.setSelectorThreadCount(selectorThreadCount);
+
+        final LDAPListener listener = new LDAPListener(config);
+        listener.startListening();
+
+        final LDAPConnection conn =
+             new LDAPConnection("127.0.0.1", listener.getListenPort());
+
+        for (int i=0; i < 2; i++)
+        {
+          final SearchResult result = conn.search("dc=example,dc=com",
+               SearchScope.SUB, "(objectClass=*)");
+          assertEquals(result.getResultCode(), ResultCode.SUCCESS);
+          assertEquals(result.getEntryCount(), 1000);
+          assertEquals(result.getReferenceCount(), 2);
+
+          for (int j=0; j < 1000; j++)
+          {
+            assertEquals(result.getSearchEntries().get(j), entries.get(j));
+          }
+        }
+
+        assertResultCodeEquals(conn,
+             new CompareRequest("dc=example,dc=com", "foo", "bar"),
+             ResultCode.SUCCESS);
+
+        conn.close();
+        listener.shutDown(true);
+      }
+    }
+  }
+
+
+
+  /**
+   * Tests to ensure that search result entries are written to the client as
+   * soon as they are sent when the search result buffer size has not been
+   * set, even if the search has not yet completed.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testSearchResultsNotBufferedByDefault()
+         throws Exception
+  {
+    final CountDownLatch releaseLatch = new CountDownLatch(1);
+    final InMemoryDirectoryServerConfig config =
+         new InMemoryDirectoryServerConfig("dc=example,dc=com");
+    config.addInMemoryOperationInterceptor(
+         new BlockingSearchEntryInterceptor(releaseLatch));
+
+    final InMemoryDirectoryServer ds = new InMemoryDirectoryServer(config);
+    ds.add(
+         "dn: dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: domain",
+         "dc: example");
+    ds.add(
+         "dn: ou=People,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: organizationalUnit",
+         "ou: People");
+    ds.startListening();
+
+    final LDAPConnection conn = ds.getConnection();
+    try
+    {
+      final QueueingSearchResultListener listener =
+           new QueueingSearchResultListener();
+      final AsyncRequestID requestID = conn.asyncSearch(new SearchRequest(
+           listener, "dc=example,dc=com", SearchScope.SUB, "(objectClass=*)"));
+
+      // The first entry must be received while the server is still blocked
+      // before sending the second entry.
+      assertNotNull(listener.entries.poll(10L, TimeUnit.SECONDS));
+      assertTrue(listener.entries.isEmpty());
+      assertFalse(requestID.isDone());
+
+      releaseLatch.countDown();
+      assertResultCodeEquals(requestID.get(10L, TimeUnit.SECONDS),
+           ResultCode.SUCCESS);
+      assertNotNull(listener.entries.poll(10L, TimeUnit.SECONDS));
+    }
+    finally
+    {
+      releaseLatch.countDown();
+      conn.close();
+      ds.shutDown(true);
+    }
+  }
+
+
+
+  /**
+   * An in-memory operation interceptor that blocks before allowing any search
+   * result entry after the first to be sent, until a latch is released.
+   */
+  private static final class BlockingSearchEntryInterceptor
+          extends InMemoryOperationInterceptor
+  {
+    // The number of entries that have been intercepted.
+    private final AtomicInteger numEntries;
+
+    // The latch that must be released before entries after the first will be
+    // sent.
+    private final CountDownLatch releaseLatch;
+
+
+
+    /**
+     * Creates a new interceptor with the provided latch.
+     *
+     * @param  releaseLatch  The latch that must be released before entries
+     *                       after the first will be sent.
+     */
+    private BlockingSearchEntryInterceptor(final CountDownLatch releaseLatch)
+    {
+      this.releaseLatch = releaseLatch;
+
+      numEntries = new AtomicInteger(0);
+    }
+
+
+
+    /**
+     * Blocks until the latch is released if the provided entry is not the
+     * first.
+     *
+     * @param  entry  The entry to be sent.
+     */
+    @Override()
+    public void processSearchEntry(final InMemoryInterceptedSearchEntry entry)
+    {
+      if (numEntries.getAndIncrement() > 0)
+      {
+        try
+        {
+          releaseLatch.await(30L, TimeUnit.SECONDS);
+        }
+        catch (final InterruptedException ie)
+        {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+  }
+
+
+
+  /**
+   * An async search result listener that adds each returned entry to a queue.
+   */
+  private static final class QueueingSearchResultListener
+          implements AsyncSearchResultListener
+  {
+    /**
+     * The serial version UID for this serializable class.
+     */
+    private static final long serialVersionUID = -4096187538208466632L;
+
+
+
+    // The entries that have been returned.
+    private final LinkedBlockingQueue<SearchResultEntry> entries =
+         new LinkedBlockingQueue<SearchResultEntry>();
+
+
+
+    /**
+     * Adds the provided entry to the queue.
+     *
+     * @param  searchEntry  The entry that was returned.
+     */
+    public void searchEntryReturned(final SearchResultEntry searchEntry)
+    {
+      entries.add(searchEntry);
+    }
+
+
+
+    /**
+     * Ignores the provided reference.
+     *
+     * @param  searchReference  The reference that was returned.
+     */
+    public void searchReferenceReturned(
+                     final SearchResultReference searchReference)
+    {
+      // No implementation required.
+    }
+
+
+
+    /**
+     * Ignores the search result.
+     *
+     * @param  requestID     The async request ID for the search.
+     * @param  searchResult  The result for the search.
+     */
+    public void searchResultReceived(final AsyncRequestID requestID,
+                                     final SearchResult searchResult)
+    {
+      // No implementation required.
+    }
+  }
+
+
+
+  /**
+   * Tests the behavior when both the client and the listener use buffer pools
+   * to encode and decode messages, including entries that are larger than the
+   * maximum array size for the pools.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testBufferPool()
+         throws Exception
+  {
+    final char[] largeValue = new char[20000];
+    Arrays.fill(largeValue, 'x');
+
+    final List<Entry> entries = new ArrayList<Entry>(100);
+    for (int i=0; i < 100; i++)
+    {
+      final Entry e = new Entry("ou=test " + i + ",dc=example,dc=com");
+      e.addAttribute("objectClass", "top", "organizationalUnit");
+      e.addAttribute("ou", "test " + i);
+      e.addAttribute("description", new String(largeValue, 0, (i * 200)));
+      entries.add(e);
+    }
+
+    for (final boolean useSharedReader : new boolean[] { false, true })
+    {
+      final ByteArrayPool listenerPool = new ByteArrayPool(64, 16384, 1048576);
+      final LDAPListenerConfig config = new LDAPListenerConfig(0,
+           new CannedResponseRequestHandler(ResultCode.SUCCESS, null, null,
+                null, entries, null));
+      config.setBufferPool(listenerPool);
+
+      final LDAPListener listener = new LDAPListener(config);
+      listener.startListening();
+
+      final ByteArrayPool clientPool = new ByteArrayPool(64, 16384, 1048576);
+      final LDAPConnectionOptions options = new LDAPConnectionOptions();
+      options.setBufferPool(clientPool);
+      options.setUseSharedReaderThreads(useSharedReader);
+
+      final LDAPConnection conn = new LDAPConnection(options, "127.0.0.1",
+           listener.getListenPort());
+
+      for (int i=0; i < 3; i++)
+      {
+        final SearchResult result = conn.search("dc=example,dc=com",
+             SearchScope.SUB, "(objectClass=*)");
+        assertEquals(result.getResultCode(), ResultCode.SUCCESS);
+        assertEquals(result.getEntryCount(), 100);
+
+        for (int j=0; j < 100; j++)
+        {
+          assertEquals(result.getSearchEntries().get(j), entries.get(j));
+        }
+      }
+
+      conn.close();
+      listener.shutDown(true);
+
+      assertTrue(clientPool.getNumHits() > 0L);
+      assertEquals(clientPool.getNumOutstanding(), 0L);
+      assertTrue(listenerPool.getNumHits() > 0L);
+      assertEquals(listenerPool.getNumOutstanding(), 0L);
+      assertEquals(clientPool.getNumInvalidReleases(), 0L);
+      assertEquals(listenerPool.getNumInvalidReleases(), 0L);
+    }
+  }
 }
@@ -28,6 +28,7 @@ import java.net.InetAddress;
 import org.testng.annotations.Test;
 
 import com.unboundid.ldap.sdk.LDAPSDKTestCase;
+import com.unboundid.util.ByteArrayPool;
 import com.unboundid.util.LDAPSDKUsageException;
 import com.unboundid.util.ThrowsOnCreateServerSocketFactory;
 
@@ -530,6 +531,82 @@ public final class LDAPListenerConfigTestCase
 
 
 
+  /**
+   * Provides test coverage for the search result buffer size configuration.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testSearchResultBufferSize()
+         throws Exception
+  {
+    LDAPListenerConfig c = new LDAPListenerConfig(1234,
+         new CannedResponseRequestHandler());
+    assertEquals(c.getSearchResultBufferSize(), 0);
+    c = c.duplicate();
+    assertEquals(c.getSearchResultBufferSize(), 0);
+
+    assertNotNull(c.toString());
+
+    c.setSearchResultBufferSize(1234);
+    assertEquals(c.getSearchResultBufferSize(), 1234);
+    c = c.duplicate();
+    assertEquals(c.getSearchResultBufferSize(), 1234);
+
+    assertNotNull(c.toString());
+
+    c.setSearchResultBufferSize(0);
+    assertEquals(c.getSearchResultBufferSize(), 0);
+    c = c.duplicate();
+    assertEquals(c.getSearchResultBufferSize(), 0);
+
+    assertNotNull(c.toString());
+
+    c.setSearchResultBufferSize(-1);
+    assertEquals(c.getSearchResultBufferSize(), 0);
+    c = c.duplicate();
+    assertEquals(c.getSearchResultBufferSize(), 0);
+
+    assertNotNull(c.toString());
+  }
+
+
+
+  /**
+   * Provides test coverage for the buffer pool configuration.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testBufferPool()
+         throws Exception
+  {
+    LDAPListenerConfig c = new LDAPListenerConfig(1234,
+         new CannedResponseRequestHandler());
+    assertNull(c.getBufferPool());
+    c = c.duplicate();
+    assertNull(c.getBufferPool());
+
+    assertNotNull(c.toString());
+
+    final ByteArrayPool pool = new ByteArrayPool();
+    c.setBufferPool(pool);
+    assertSame(c.getBufferPool(), pool);
+    c = c.duplicate();
+    assertSame(c.getBufferPool(), pool);
+
+    assertNotNull(c.toString());
+
+    c.setBufferPool(null);
+    assertNull(c.getBufferPool());
+    c = c.duplicate();
+    assertNull(c.getBufferPool());
+
+    assertNotNull(c.toString());
+  }
+
+
+
   /**
    * Provides test coverage for the exception handler configuration.
    *
@@ -605,4 +682,57 @@ public final class LDAPListenerConfigTestCase
 
     assertNotNull(c.toString());
   }
+
+
+
+  /**
+   * Provides test coverage for the selector thread configuration.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testSelectorThreads()
+         throws Exception
+  {
+    LDAPListenerConfig c = new LDAPListenerConfig(1234,
+         new CannedResponseRequestHandler());
+    assertEquals(c.getSelectorThreadCount(), 0);
+    assertEquals(c.getRequestWorkerThreadCount(), 0);
+    assertEquals(c.getWriteTimeoutMillis(),
+         LDAPListenerConfig.DEFAULT_WRITE_TIMEOUT_MILLIS);
+    c = c.duplicate();
+    assertEquals(c.getSelectorThreadCount(), 0);
+    assertEquals(c.getRequestWorkerThreadCount(), 0);
+    assertEquals(c.getWriteTimeoutMillis(),
+         LDAPListenerConfig.DEFAULT_WRITE_TIMEOUT_MILLIS);
+
+    assertNotNull(c.toString());
+
+    c.setSelectorThreadCount(4);
+    c.setRequestWorkerThreadCount(16);
+    c.setWriteTimeoutMillis(1234L);
+    assertEquals(c.getSelectorThreadCount(), 4);
+    assertEquals(c.getRequestWorkerThreadCount(), 16);
+    assertEquals(c.getWriteTimeoutMillis(), 1234L);
+    c = c.duplicate();
+    assertEquals(c.getSelectorThreadCount(), 4);
+    assertEquals(c.getRequestWorkerThreadCount(), 16);
+    assertEquals(c.getWriteTimeoutMillis(), 1234L);
+
+    assertNotNull(c.toString());
+    assertTrue(c.toString().contains("writeTimeoutMillis=1234"));
+
+    c.setSelectorThreadCount(-1);
+    c.setRequestWorkerThreadCount(-1);
+    c.setWriteTimeoutMillis(-1L);
+    assertEquals(c.getSelectorThreadCount(), 0);
+    assertEquals(c.getRequestWorkerThreadCount(), 0);
+    assertEquals(c.getWriteTimeoutMillis(), 0L);
+    c = c.duplicate();
+    assertEquals(c.getSelectorThreadCount(), 0);
+    assertEquals(c.getRequestWorkerThreadCount(), 0);
+    assertEquals(c.getWriteTimeoutMillis(), 0L);
+
+    assertNotNull(c.toString());
+  }
 }
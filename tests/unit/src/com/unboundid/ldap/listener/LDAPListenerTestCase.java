@@ -23,12 +23,32 @@ package com.unboundid.ldap.listener;
 
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
 
 import org.testng.annotations.Test;
 
+import com.unboundid.ldap.sdk.AsyncRequestID;
+import com.unboundid.ldap.sdk.BasicAsyncResultListener;
+import com.unboundid.ldap.protocol.LDAPMessage;
+import com.unboundid.ldap.protocol.SearchRequestProtocolOp;
+import com.unboundid.ldap.sdk.Entry;
 import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPResult;
 import com.unboundid.ldap.sdk.LDAPSDKTestCase;
+import com.unboundid.ldap.sdk.ModifyRequest;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.extensions.StartTLSExtendedRequest;
+import com.unboundid.util.ssl.SSLUtil;
+import com.unboundid.util.ssl.TrustAllTrustManager;
 import com.unboundid.util.ThrowsOnAcceptServerSocketFactory;
 import com.unboundid.util.ThrowsOnCreateServerSocketFactory;
 
@@ -143,4 +163,274 @@ public final class LDAPListenerTestCase
 
     listener.shutDown(true);
   }
+
+
+
+  /**
+   * Tests the behavior when the listener is configured to use selector threads
+   * with an in-memory request handler.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testSelectorThreads()
+         throws Exception
+  {
+    final InMemoryDirectoryServerConfig dsConfig =
+         new InMemoryDirectoryServerConfig("dc=example,dc=com");
+    final LDAPListenerConfig config = new LDAPListenerConfig(0,
+         new InMemoryRequestHandler(dsConfig));
+    config.setListenAddress(InetAddress.getByName("127.0.0.1"));
+    config.setSelectorThreadCount(2);
+    config.setRequestWorkerThreadCount(4);
+
+    final LDAPListener listener = new LDAPListener(config);
+    listener.startListening();
+    final int listenPort = listener.getListenPort();
+    assertTrue(listenPort > 0);
+
+    final ArrayList<LDAPConnection> conns = new ArrayList<LDAPConnection>(20);
+    for (int i=0; i < 20; i++)
+    {
+      conns.add(new LDAPConnection("127.0.0.1", listenPort));
+    }
+
+    final LDAPConnection conn = conns.get(0);
+    conn.add(
+         "dn: dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: domain",
+         "dc: example");
+
+    // Add an entry that is larger than the initial read buffer size.
+    final StringBuilder buffer = new StringBuilder(20000);
+    for (int i=0; i < 20000; i++)
+    {
+      buffer.append('x');
+    }
+    conn.add(new Entry(
+         "dn: ou=People,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: organizationalUnit",
+         "ou: People",
+         "description: " + buffer));
+
+    final SearchResultEntry e =
+         conns.get(19).getEntry("ou=People,dc=example,dc=com");
+    assertNotNull(e);
+    assertEquals(e.getAttributeValue("description").length(), 20000);
+
+    // Send a number of pipelined requests on a single connection and make sure
+    // that all of them are processed.
+    final ArrayList<AsyncRequestID> requestIDs =
+         new ArrayList<AsyncRequestID>(200);
+    for (int i=0; i < 200; i++)
+    {
+      requestIDs.add(conn.asyncModify(new ModifyRequest(
+           "dn: dc=example,dc=com",
+           "changetype: modify",
+           "replace: description",
+           "description: " + i), new BasicAsyncResultListener()));
+    }
+
+    for (final AsyncRequestID id : requestIDs)
+    {
+      final LDAPResult r = id.get(10L, TimeUnit.SECONDS);
+      assertNotNull(r);
+      assertEquals(r.getResultCode(), ResultCode.SUCCESS);
+    }
+
+    assertEquals(conns.get(5).getEntry("dc=example,dc=com").
+         getAttributeValue("description"), "199");
+
+    // StartTLS is not supported when using selector threads, but the
+    // connection should remain usable.
+    final SSLUtil sslUtil = new SSLUtil(new TrustAllTrustManager());
+    final LDAPListenerConfig startTLSConfig = new LDAPListenerConfig(0,
+         new StartTLSRequestHandler(sslUtil.createSSLSocketFactory(),
+              new CannedResponseRequestHandler()));
+    startTLSConfig.setSelectorThreadCount(1);
+    final LDAPListener startTLSListener = new LDAPListener(startTLSConfig);
+    startTLSListener.startListening();
+    final LDAPConnection startTLSConn =
+         new LDAPConnection("localhost", startTLSListener.getListenPort());
+    try
+    {
+      startTLSConn.processExtendedOperation(
+           new StartTLSExtendedRequest(sslUtil.createSSLContext()));
+      fail("Expected an exception when trying to use StartTLS with selector " +
+           "threads");
+    }
+    catch (final LDAPException le)
+    {
+      assertEquals(le.getResultCode(), ResultCode.UNWILLING_TO_PERFORM);
+    }
+    assertNull(startTLSConn.getEntry(""));
+    startTLSConn.close();
+    startTLSListener.shutDown(true);
+
+    // Send a malformed message over a raw socket and make sure that the server
+    // closes the connection.
+    final Socket badSocket = new Socket("127.0.0.1", listenPort);
+    badSocket.setSoTimeout(10000);
+    badSocket.getOutputStream().write(
+         new byte[] { 0x30, (byte) 0x85, 0x01, 0x02, 0x03, 0x04, 0x05 });
+    badSocket.getOutputStream().flush();
+    final InputStream badInputStream = badSocket.getInputStream();
+    while (badInputStream.read() >= 0)
+    {
+      // Skip over the notice of disconnection.
+    }
+    badSocket.close();
+
+    // Send part of a message over a raw socket and close it.
+    final Socket partialSocket = new Socket("127.0.0.1", listenPort);
+    partialSocket.getOutputStream().write(new byte[] { 0x30, 0x10, 0x02 });
+    partialSocket.getOutputStream().flush();
+    partialSocket.close();
+
+    for (final LDAPConnection c : conns)
+    {
+      assertNotNull(c.getRootDSE());
+      c.close();
+    }
+
+    listener.shutDown(true);
+  }
+
+
+
+  /**
+   * Tests to ensure that when a listener using selector threads is shut down
+   * without closing existing connections, the selector threads and request
+   * worker threads remain available until the last connection is closed.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testSelectorThreadsStopAfterShutDownWithoutClosing()
+         throws Exception
+  {
+    final InMemoryDirectoryServerConfig dsConfig =
+         new InMemoryDirectoryServerConfig("dc=example,dc=com");
+    final LDAPListenerConfig config = new LDAPListenerConfig(0,
+         new InMemoryRequestHandler(dsConfig));
+    config.setListenAddress(InetAddress.getByName("127.0.0.1"));
+    config.setSelectorThreadCount(1);
+
+    final LDAPListener listener = new LDAPListener(config);
+    listener.startListening();
+
+    final LDAPConnection conn =
+         new LDAPConnection("127.0.0.1", listener.getListenPort());
+    assertNotNull(conn.getRootDSE());
+    assertNotNull(listener.getRequestExecutor());
+
+    listener.shutDown(false);
+    assertNotNull(listener.getRequestExecutor());
+    assertNotNull(listener.getSelectorThread(0L));
+    assertNotNull(conn.getRootDSE());
+
+    conn.close();
+
+    final long stopWaitTime = System.currentTimeMillis() + 10000L;
+    while ((listener.getRequestExecutor() != null) &&
+         (System.currentTimeMillis() < stopWaitTime))
+    {
+      Thread.sleep(10L);
+    }
+    assertNull(listener.getRequestExecutor());
+    assertNull(listener.getSelectorThread(0L));
+  }
+
+
+
+  /**
+   * Tests to ensure that when a listener uses selector threads, a client that
+   * stops reading the responses sent to it will have its connection closed
+   * once the write timeout elapses rather than tying up a request worker
+   * thread indefinitely.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testSelectorThreadsWriteTimeout()
+         throws Exception
+  {
+    final InMemoryDirectoryServerConfig dsConfig =
+         new InMemoryDirectoryServerConfig("dc=example,dc=com");
+    final LDAPListenerConfig config = new LDAPListenerConfig(0,
+         new InMemoryRequestHandler(dsConfig));
+    config.setListenAddress(InetAddress.getByName("127.0.0.1"));
+    config.setSelectorThreadCount(1);
+    config.setRequestWorkerThreadCount(1);
+    config.setSendBufferSize(4096);
+    config.setWriteTimeoutMillis(500L);
+
+    final LDAPListener listener = new LDAPListener(config);
+    listener.startListening();
+    final int listenPort = listener.getListenPort();
+
+    final LDAPConnection conn = new LDAPConnection("127.0.0.1", listenPort);
+    conn.add(
+         "dn: dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: domain",
+         "dc: example");
+
+    // Add an entry that is much larger than the socket buffers.
+    final StringBuilder buffer = new StringBuilder(2000000);
+    for (int i=0; i < 2000000; i++)
+    {
+      buffer.append('x');
+    }
+    conn.add(new Entry(
+         "dn: ou=People,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: organizationalUnit",
+         "ou: People",
+         "description: " + buffer));
+
+    // Request the large entry over a raw socket, but don't read the response.
+    final Socket stalledSocket = new Socket();
+    stalledSocket.setReceiveBufferSize(4096);
+    stalledSocket.connect(new InetSocketAddress("127.0.0.1", listenPort));
+    stalledSocket.getOutputStream().write(new LDAPMessage(1,
+         new SearchRequestProtocolOp(new SearchRequest(
+              "ou=People,dc=example,dc=com", SearchScope.BASE,
+              "(objectClass=*)"))).encode().encode());
+    stalledSocket.getOutputStream().flush();
+
+    // Give the only request worker thread time to start writing the response.
+    // It will be blocked until the write times out and the stalled connection
+    // is closed, after which other connections should be serviced again.
+    Thread.sleep(100L);
+    assertNotNull(conn.getEntry("dc=example,dc=com"));
+
+    stalledSocket.setSoTimeout(10000);
+    final InputStream stalledInputStream = stalledSocket.getInputStream();
+    long bytesRead = 0L;
+    try
+    {
+      final byte[] readBuffer = new byte[8192];
+      while (true)
+      {
+        final int n = stalledInputStream.read(readBuffer);
+        if (n < 0)
+        {
+          break;
+        }
+        bytesRead += n;
+      }
+    }
+    catch (final IOException ioe)
+    {
+      // The connection may have been reset.
+    }
+    assertTrue(bytesRead < 2000000L);
+    stalledSocket.close();
+
+    conn.close();
+    listener.shutDown(true);
+  }
 }
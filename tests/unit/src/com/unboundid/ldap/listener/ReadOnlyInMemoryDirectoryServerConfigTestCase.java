@@ -22,6 +22,7 @@ package com.unboundid.ldap.listener;
 
 
 
+import java.io.File;
 import java.util.Arrays;
 import java.util.EnumSet;
 
@@ -418,6 +419,107 @@ public final class ReadOnlyInMemoryDirectoryServerConfigTestCase
     }
 
 
+    // Test methods related to concurrent read operations.
+    assertFalse(readOnlyConfig.allowConcurrentReadOperations());
+
+    try
+    {
+      readOnlyConfig.setAllowConcurrentReadOperations(true);
+      fail("Expected an exception when trying to call " +
+           "setAllowConcurrentReadOperations");
+    }
+    catch (final UnsupportedOperationException e)
+    {
+      // This was expected.
+    }
+
+
+    // Test methods related to search evaluation threads.
+    assertEquals(readOnlyConfig.getSearchEvaluationThreads(), 1);
+
+    try
+    {
+      readOnlyConfig.setSearchEvaluationThreads(4);
+      fail("Expected an exception when trying to call " +
+           "setSearchEvaluationThreads");
+    }
+    catch (final UnsupportedOperationException e)
+    {
+      // This was expected.
+    }
+
+
+    // Test methods related to streaming search results.
+    assertFalse(readOnlyConfig.streamSearchResults());
+
+    try
+    {
+      readOnlyConfig.setStreamSearchResults(true);
+      fail("Expected an exception when trying to call " +
+           "setStreamSearchResults");
+    }
+    catch (final UnsupportedOperationException e)
+    {
+      // This was expected.
+    }
+
+
+    // Test methods related to the maximum change notification backlog.
+    assertEquals(readOnlyConfig.getMaxChangeNotificationBacklog(), 1000);
+
+    try
+    {
+      readOnlyConfig.setMaxChangeNotificationBacklog(50);
+      fail("Expected an exception when trying to call " +
+           "setMaxChangeNotificationBacklog");
+    }
+    catch (final UnsupportedOperationException e)
+    {
+      // This was expected.
+    }
+
+
+    // Test methods related to the journal.
+    assertNull(readOnlyConfig.getJournalDirectory());
+    assertEquals(readOnlyConfig.getJournalCheckpointInterval(), 100000);
+
+    try
+    {
+      readOnlyConfig.setJournalDirectory(new File("journal"));
+      fail("Expected an exception when trying to call setJournalDirectory");
+    }
+    catch (final UnsupportedOperationException e)
+    {
+      // This was expected.
+    }
+
+    try
+    {
+      readOnlyConfig.setJournalCheckpointInterval(500);
+      fail("Expected an exception when trying to call " +
+           "setJournalCheckpointInterval");
+    }
+    catch (final UnsupportedOperationException e)
+    {
+      // This was expected.
+    }
+
+
+    // Test methods related to compact entry storage.
+    assertFalse(readOnlyConfig.useCompactEntryStorage());
+
+    try
+    {
+      readOnlyConfig.setUseCompactEntryStorage(true);
+      fail("Expected an exception when trying to call " +
+           "setUseCompactEntryStorage");
+    }
+    catch (final UnsupportedOperationException e)
+    {
+      // This was expected.
+    }
+
+
     // Test methods related to changelog entries.
     assertEquals(readOnlyConfig.getMaxChangeLogEntries(), 0);
 
@@ -461,6 +563,87 @@ public final class ReadOnlyInMemoryDirectoryServerConfigTestCase
     }
 
 
+    // Test methods related to presence index attributes.
+    assertNotNull(readOnlyConfig.getPresenceIndexAttributes());
+    assertTrue(readOnlyConfig.getPresenceIndexAttributes().isEmpty());
+
+    try
+    {
+      readOnlyConfig.setPresenceIndexAttributes("cn");
+      fail("Expected an exception when trying to call " +
+           "setPresenceIndexAttributes");
+    }
+    catch (final UnsupportedOperationException e)
+    {
+      // This was expected
+    }
+
+    try
+    {
+      readOnlyConfig.setPresenceIndexAttributes(Arrays.asList("cn", "sn"));
+      fail("Expected an exception when trying to call " +
+           "setPresenceIndexAttributes");
+    }
+    catch (final UnsupportedOperationException e)
+    {
+      // This was expected
+    }
+
+
+    // Test methods related to substring index attributes.
+    assertNotNull(readOnlyConfig.getSubstringIndexAttributes());
+    assertTrue(readOnlyConfig.getSubstringIndexAttributes().isEmpty());
+
+    try
+    {
+      readOnlyConfig.setSubstringIndexAttributes("cn");
+      fail("Expected an exception when trying to call " +
+           "setSubstringIndexAttributes");
+    }
+    catch (final UnsupportedOperationException e)
+    {
+      // This was expected
+    }
+
+    try
+    {
+      readOnlyConfig.setSubstringIndexAttributes(Arrays.asList("cn", "sn"));
+      fail("Expected an exception when trying to call " +
+           "setSubstringIndexAttributes");
+    }
+    catch (final UnsupportedOperationException e)
+    {
+      // This was expected
+    }
+
+
+    // Test methods related to ordering index attributes.
+    assertNotNull(readOnlyConfig.getOrderingIndexAttributes());
+    assertTrue(readOnlyConfig.getOrderingIndexAttributes().isEmpty());
+
+    try
+    {
+      readOnlyConfig.setOrderingIndexAttributes("cn");
+      fail("Expected an exception when trying to call " +
+           "setOrderingIndexAttributes");
+    }
+    catch (final UnsupportedOperationException e)
+    {
+      // This was expected
+    }
+
+    try
+    {
+      readOnlyConfig.setOrderingIndexAttributes(Arrays.asList("cn", "sn"));
+      fail("Expected an exception when trying to call " +
+           "setOrderingIndexAttributes");
+    }
+    catch (final UnsupportedOperationException e)
+    {
+      // This was expected
+    }
+
+
     // Test methods related to referential integrity attributes.
     assertNotNull(readOnlyConfig.getReferentialIntegrityAttributes());
     assertTrue(readOnlyConfig.getReferentialIntegrityAttributes().isEmpty());
@@ -562,7 +745,16 @@ public final class ReadOnlyInMemoryDirectoryServerConfigTestCase
     config.addSASLBindHandler(new TestSASLBindHandler());
     config.setGenerateOperationalAttributes(false);
     config.setMaxChangeLogEntries(100);
+    config.setSearchEvaluationThreads(4);
+    config.setStreamSearchResults(true);
+    config.setMaxChangeNotificationBacklog(50);
+    config.setJournalDirectory(new File("journal"));
+    config.setJournalCheckpointInterval(500);
+    config.setUseCompactEntryStorage(true);
     config.setEqualityIndexAttributes("uid", "cn");
+    config.setPresenceIndexAttributes("description");
+    config.setSubstringIndexAttributes("cn", "mail");
+    config.setOrderingIndexAttributes("sn");
     config.setReferentialIntegrityAttributes("member", "uniqueMember", "owner",
          "seeAlso");
 
@@ -933,6 +1125,107 @@ public final class ReadOnlyInMemoryDirectoryServerConfigTestCase
     }
 
 
+    // Test methods related to concurrent read operations.
+    assertFalse(readOnlyConfig.allowConcurrentReadOperations());
+
+    try
+    {
+      readOnlyConfig.setAllowConcurrentReadOperations(true);
+      fail("Expected an exception when trying to call " +
+           "setAllowConcurrentReadOperations");
+    }
+    catch (final UnsupportedOperationException e)
+    {
+      // This was expected.
+    }
+
+
+    // Test methods related to search evaluation threads.
+    assertEquals(readOnlyConfig.getSearchEvaluationThreads(), 4);
+
+    try
+    {
+      readOnlyConfig.setSearchEvaluationThreads(1);
+      fail("Expected an exception when trying to call " +
+           "setSearchEvaluationThreads");
+    }
+    catch (final UnsupportedOperationException e)
+    {
+      // This was expected.
+    }
+
+
+    // Test methods related to streaming search results.
+    assertTrue(readOnlyConfig.streamSearchResults());
+
+    try
+    {
+      readOnlyConfig.setStreamSearchResults(false);
+      fail("Expected an exception when trying to call " +
+           "setStreamSearchResults");
+    }
+    catch (final UnsupportedOperationException e)
+    {
+      // This was expected.
+    }
+
+
+    // Test methods related to the maximum change notification backlog.
+    assertEquals(readOnlyConfig.getMaxChangeNotificationBacklog(), 50);
+
+    try
+    {
+      readOnlyConfig.setMaxChangeNotificationBacklog(1000);
+      fail("Expected an exception when trying to call " +
+           "setMaxChangeNotificationBacklog");
+    }
+    catch (final UnsupportedOperationException e)
+    {
+      // This was expected.
+    }
+
+
+    // Test methods related to the journal.
+    assertEquals(readOnlyConfig.getJournalDirectory(), new File("journal"));
+    assertEquals(readOnlyConfig.getJournalCheckpointInterval(), 500);
+
+    try
+    {
+      readOnlyConfig.setJournalDirectory(null);
+      fail("Expected an exception when trying to call setJournalDirectory");
+    }
+    catch (final UnsupportedOperationException e)
+    {
+      // This was expected.
+    }
+
+    try
+    {
+      readOnlyConfig.setJournalCheckpointInterval(100000);
+      fail("Expected an exception when trying to call " +
+           "setJournalCheckpointInterval");
+    }
+    catch (final UnsupportedOperationException e)
+    {
+      // This was expected.
+    }
+
+
+    // Test methods related to compact entry storage.
+    assertTrue(readOnlyConfig.useCompactEntryStorage());
+
+    try
+    {
+      readOnlyConfig.setUseCompactEntryStorage(false);
+      fail("Expected an exception when trying to call " +
+           "setUseCompactEntryStorage");
+    }
+    catch (final UnsupportedOperationException e)
+    {
+      // This was expected.
+    }
+
+
     // Test methods related to changelog entries.
     assertEquals(readOnlyConfig.getMaxChangeLogEntries(), 100);
 
@@ -956,6 +1249,26 @@ public final class ReadOnlyInMemoryDirectoryServerConfigTestCase
     assertTrue(readOnlyConfig.getEqualityIndexAttributes().contains("cn"));
 
 
+    // Test methods related to presence index attributes.
+    assertNotNull(readOnlyConfig.getPresenceIndexAttributes());
+    assertEquals(readOnlyConfig.getPresenceIndexAttributes().size(), 1);
+    assertTrue(
+         readOnlyConfig.getPresenceIndexAttributes().contains("description"));
+
+
+    // Test methods related to substring index attributes.
+    assertNotNull(readOnlyConfig.getSubstringIndexAttributes());
+    assertEquals(readOnlyConfig.getSubstringIndexAttributes().size(), 2);
+    assertTrue(readOnlyConfig.getSubstringIndexAttributes().contains("cn"));
+    assertTrue(readOnlyConfig.getSubstringIndexAttributes().contains("mail"));
+
+
+    // Test methods related to ordering index attributes.
+    assertNotNull(readOnlyConfig.getOrderingIndexAttributes());
+    assertEquals(readOnlyConfig.getOrderingIndexAttributes().size(), 1);
+    assertTrue(readOnlyConfig.getOrderingIndexAttributes().contains("sn"));
+
+
     // Test methods related to referential integrity attributes.
     assertNotNull(readOnlyConfig.getReferentialIntegrityAttributes());
     assertFalse(readOnlyConfig.getReferentialIntegrityAttributes().isEmpty());
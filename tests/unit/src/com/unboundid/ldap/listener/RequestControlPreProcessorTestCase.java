@@ -35,9 +35,13 @@ import com.unboundid.ldap.sdk.LDAPException;
 import com.unboundid.ldap.sdk.LDAPSDKTestCase;
 import com.unboundid.ldap.sdk.controls.AssertionRequestControl;
 import com.unboundid.ldap.sdk.controls.AuthorizationIdentityRequestControl;
+import com.unboundid.ldap.sdk.controls.ContentSyncRequestControl;
+import com.unboundid.ldap.sdk.controls.ContentSyncRequestMode;
 import com.unboundid.ldap.sdk.controls.DontUseCopyRequestControl;
 import com.unboundid.ldap.sdk.controls.ManageDsaITRequestControl;
 import com.unboundid.ldap.sdk.controls.PermissiveModifyRequestControl;
+import com.unboundid.ldap.sdk.controls.PersistentSearchChangeType;
+import com.unboundid.ldap.sdk.controls.PersistentSearchRequestControl;
 import com.unboundid.ldap.sdk.controls.PostReadRequestControl;
 import com.unboundid.ldap.sdk.controls.PreReadRequestControl;
 import com.unboundid.ldap.sdk.controls.ProxiedAuthorizationV1RequestControl;
@@ -192,6 +196,74 @@ public final class RequestControlPreProcessorTestCase
 
 
 
+  /**
+   * Provides test coverage for the content synchronization request control.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testContentSyncControl()
+         throws Exception
+  {
+    final String oid = ContentSyncRequestControl.SYNC_REQUEST_OID;
+
+    final Control vc = new ContentSyncRequestControl(true,
+         ContentSyncRequestMode.REFRESH_ONLY, null, false);
+    final Control vn = new ContentSyncRequestControl(false,
+         ContentSyncRequestMode.REFRESH_ONLY, null, false);
+    final Control ic = new Control(oid, true, new ASN1OctetString("foo"));
+    final Control in = new Control(oid, false, new ASN1OctetString("foo"));
+
+    final Class<?> c = ContentSyncRequestControl.class;
+
+    // Test with acceptable operation types.
+    for (final byte opType : Arrays.asList(
+              LDAPMessage.PROTOCOL_OP_TYPE_SEARCH_REQUEST))
+    {
+      // A valid critical control.
+      ensureControlHandled(opType, Arrays.asList(vc), oid, c);
+
+      // A valid non-critical control.
+      ensureControlHandled(opType, Arrays.asList(vn), oid, c);
+
+      // Multiple instances of the control.
+      ensureException(opType, Arrays.asList(vc, vn));
+
+      // Malformed critical control.
+      ensureException(opType, Arrays.asList(ic));
+
+      // Malformed non-critical control.
+      ensureException(opType, Arrays.asList(in));
+    }
+
+    // Test with unacceptable operation types.
+    for (final byte opType : Arrays.asList(
+              LDAPMessage.PROTOCOL_OP_TYPE_ABANDON_REQUEST,
+              LDAPMessage.PROTOCOL_OP_TYPE_ADD_REQUEST,
+              LDAPMessage.PROTOCOL_OP_TYPE_BIND_REQUEST,
+              LDAPMessage.PROTOCOL_OP_TYPE_COMPARE_REQUEST,
+              LDAPMessage.PROTOCOL_OP_TYPE_DELETE_REQUEST,
+              LDAPMessage.PROTOCOL_OP_TYPE_EXTENDED_REQUEST,
+              LDAPMessage.PROTOCOL_OP_TYPE_MODIFY_REQUEST,
+              LDAPMessage.PROTOCOL_OP_TYPE_MODIFY_DN_REQUEST,
+              LDAPMessage.PROTOCOL_OP_TYPE_UNBIND_REQUEST))
+    {
+      // A valid critical control.
+      ensureException(opType, Arrays.asList(vc));
+
+      // A valid non-critical control.
+      ensureControlIgnored(opType, Arrays.asList(vn), oid);
+
+      // Malformed critical control.
+      ensureException(opType, Arrays.asList(ic));
+
+      // Malformed non-critical control.
+      ensureControlIgnored(opType, Arrays.asList(in), oid);
+    }
+  }
+
+
+
   /**
    * Provides test coverage for the don't use copy request control.
    *
@@ -391,6 +463,75 @@ public final class RequestControlPreProcessorTestCase
 
 
 
+  /**
+   * Provides test coverage for the persistent search request control.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testPersistentSearchControl()
+         throws Exception
+  {
+    final String oid =
+         PersistentSearchRequestControl.PERSISTENT_SEARCH_REQUEST_OID;
+
+    final Control vc = new PersistentSearchRequestControl(
+         PersistentSearchChangeType.allChangeTypes(), true, true, true);
+    final Control vn = new PersistentSearchRequestControl(
+         PersistentSearchChangeType.allChangeTypes(), true, true, false);
+    final Control ic = new Control(oid, true, new ASN1OctetString("foo"));
+    final Control in = new Control(oid, false, new ASN1OctetString("foo"));
+
+    final Class<?> c = PersistentSearchRequestControl.class;
+
+    // Test with acceptable operation types.
+    for (final byte opType : Arrays.asList(
+              LDAPMessage.PROTOCOL_OP_TYPE_SEARCH_REQUEST))
+    {
+      // A valid critical control.
+      ensureControlHandled(opType, Arrays.asList(vc), oid, c);
+
+      // A valid non-critical control.
+      ensureControlHandled(opType, Arrays.asList(vn), oid, c);
+
+      // Multiple instances of the control.
+      ensureException(opType, Arrays.asList(vc, vn));
+
+      // Malformed critical control.
+      ensureException(opType, Arrays.asList(ic));
+
+      // Malformed non-critical control.
+      ensureException(opType, Arrays.asList(in));
+    }
+
+    // Test with unacceptable operation types.
+    for (final byte opType : Arrays.asList(
+              LDAPMessage.PROTOCOL_OP_TYPE_ABANDON_REQUEST,
+              LDAPMessage.PROTOCOL_OP_TYPE_ADD_REQUEST,
+              LDAPMessage.PROTOCOL_OP_TYPE_BIND_REQUEST,
+              LDAPMessage.PROTOCOL_OP_TYPE_COMPARE_REQUEST,
+              LDAPMessage.PROTOCOL_OP_TYPE_DELETE_REQUEST,
+              LDAPMessage.PROTOCOL_OP_TYPE_EXTENDED_REQUEST,
+              LDAPMessage.PROTOCOL_OP_TYPE_MODIFY_REQUEST,
+              LDAPMessage.PROTOCOL_OP_TYPE_MODIFY_DN_REQUEST,
+              LDAPMessage.PROTOCOL_OP_TYPE_UNBIND_REQUEST))
+    {
+      // A valid critical control.
+      ensureException(opType, Arrays.asList(vc));
+
+      // A valid non-critical control.
+      ensureControlIgnored(opType, Arrays.asList(vn), oid);
+
+      // Malformed critical control.
+      ensureException(opType, Arrays.asList(ic));
+
+      // Malformed non-critical control.
+      ensureControlIgnored(opType, Arrays.asList(in), oid);
+    }
+  }
+
+
+
   /**
    * Provides test coverage for the post-read control.
    *
@@ -1134,6 +1275,26 @@ public final class RequestControlPreProcessorTestCase
 
 
 
+  /**
+   * Provides test coverage for the case in which a request includes both the
+   * persistent search and content synchronization request controls.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testPersistentSearchAndContentSyncControls()
+         throws Exception
+  {
+    ensureException(LDAPMessage.PROTOCOL_OP_TYPE_SEARCH_REQUEST,
+         Arrays.<Control>asList(
+              new PersistentSearchRequestControl(
+                   PersistentSearchChangeType.allChangeTypes(), true, true),
+              new ContentSyncRequestControl(
+                   ContentSyncRequestMode.REFRESH_AND_PERSIST)));
+  }
+
+
+
   /**
    * Ensures that processing can be performed correctly with the provided
    * information.
@@ -22,6 +22,9 @@ package com.unboundid.ldap.sdk;
 
 
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import org.testng.annotations.Test;
 
 import com.unboundid.ldap.listener.InMemoryDirectoryServer;
@@ -185,4 +188,109 @@ public final class AsyncTimeoutTestCase
     conn.close();
     ds.shutDown(true);
   }
+
+
+
+  /**
+   * Tests to ensure that an async result listener that blocks when it is
+   * notified of a timeout does not prevent the timeout for an operation on
+   * another connection from being enforced.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testBlockingListenerDoesNotDelayOtherTimeouts()
+         throws Exception
+  {
+    final InMemoryDirectoryServer ds = new InMemoryDirectoryServer(
+         new InMemoryDirectoryServerConfig("dc=example,dc=com"));
+    ds.add(
+         "dn: dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: domain",
+         "dc: example");
+    ds.startListening();
+
+    final LDAPConnection blockedConn = ds.getConnection();
+    final LDAPConnection otherConn = ds.getConnection();
+    final BlockingAsyncResultListener blockingListener =
+         new BlockingAsyncResultListener();
+    try
+    {
+      ds.setProcessingDelayMillis(5000L);
+
+      final CompareRequest blockedRequest =
+           new CompareRequest("dc=example,dc=com", "objectClass", "top");
+      blockedRequest.setResponseTimeoutMillis(100L);
+      blockedConn.asyncCompare(blockedRequest, blockingListener);
+      assertTrue(blockingListener.enteredLatch.await(10L, TimeUnit.SECONDS));
+
+      // The listener for the first operation is now blocked, but the timeout
+      // for an operation on the other connection should still be enforced.
+      final CompareRequest otherRequest =
+           new CompareRequest("dc=example,dc=com", "objectClass", "top");
+      otherRequest.setResponseTimeoutMillis(100L);
+
+      final long startTime = System.currentTimeMillis();
+      final AsyncRequestID asyncID =
+           otherConn.asyncCompare(otherRequest, new TestAsyncListener());
+      final LDAPResult result = asyncID.get(4000L, TimeUnit.MILLISECONDS);
+      assertTrue((System.currentTimeMillis() - startTime) < 4000L);
+      assertResultCodeEquals(result, ResultCode.TIMEOUT);
+    }
+    finally
+    {
+      blockingListener.releaseLatch.countDown();
+      blockedConn.close();
+      otherConn.close();
+      ds.shutDown(true);
+    }
+  }
+
+
+
+  /**
+   * An async compare result listener that blocks until a latch is released
+   * when it is notified of a result.
+   */
+  private static final class BlockingAsyncResultListener
+          implements AsyncCompareResultListener
+  {
+    /**
+     * The serial version UID for this serializable class.
+     */
+    private static final long serialVersionUID = 2715924306845183079L;
+
+
+
+    // The latch that will be released when the listener is notified of a
+    // result.
+    private final CountDownLatch enteredLatch = new CountDownLatch(1);
+
+    // The latch that must be released before the listener will return.
+    private final CountDownLatch releaseLatch = new CountDownLatch(1);
+
+
+
+    /**
+     * Blocks until the release latch is released.
+     *
+     * @param  requestID      The async request ID for the operation.
+     * @param  compareResult  The result for the operation.
+     */
+    public void compareResultReceived(final AsyncRequestID requestID,
+                                      final CompareResult compareResult)
+    {
+      enteredLatch.countDown();
+
+      try
+      {
+        releaseLatch.await(30L, TimeUnit.SECONDS);
+      }
+      catch (final InterruptedException ie)
+      {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
 }
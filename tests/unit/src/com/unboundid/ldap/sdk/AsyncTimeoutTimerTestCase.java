@@ -0,0 +1,216 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.sdk;
+
+
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.testng.annotations.Test;
+
+
+
+/**
+ * This class provides a set of test cases for the AsyncTimeoutTimer class.
+ */
+public final class AsyncTimeoutTimerTestCase
+       extends LDAPSDKTestCase
+{
+  /**
+   * Tests to ensure that a scheduled timeout will fire, and not before its
+   * deadline.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testTimeoutFires()
+         throws Exception
+  {
+    final AsyncTimeoutTimer timer = new AsyncTimeoutTimer(5L, 16);
+    final CountDownLatch latch = new CountDownLatch(1);
+    final AtomicLong firedTime = new AtomicLong(0L);
+
+    final long startTime = System.nanoTime();
+    final AsyncTimeoutTimer.Timeout timeout = timer.schedule(new Runnable()
+    {
+      public void run()
+      {
+        firedTime.set(System.nanoTime());
+        latch.countDown();
+      }
+    }, 50L);
+    assertEquals(timer.getNumPendingTimeouts(), 1);
+
+    assertTrue(latch.await(30L, TimeUnit.SECONDS));
+    assertTrue((firedTime.get() - startTime) >= 50000000L);
+    assertTrue(timeout.isExpired());
+    assertFalse(timeout.isCanceled());
+    assertFalse(timeout.cancel());
+    assertEquals(timer.getNumPendingTimeouts(), 0);
+  }
+
+
+
+  /**
+   * Tests to ensure that a canceled timeout will not fire.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testCanceledTimeoutDoesNotFire()
+         throws Exception
+  {
+    final AsyncTimeoutTimer timer = new AsyncTimeoutTimer(1L, 4);
+    final AtomicInteger numFired = new AtomicInteger(0);
+    final Runnable task = new Runnable()
+    {
+      public void run()
+      {
+        numFired.incrementAndGet();
+      }
+    };
+
+    final AsyncTimeoutTimer.Timeout canceled = timer.schedule(task, 20L);
+    final CountDownLatch latch = new CountDownLatch(1);
+    timer.schedule(new Runnable()
+    {
+      public void run()
+      {
+        latch.countDown();
+      }
+    }, 100L);
+
+    assertTrue(canceled.cancel());
+    assertTrue(canceled.isCanceled());
+    assertFalse(canceled.cancel());
+    assertEquals(timer.getNumPendingTimeouts(), 1);
+
+    assertTrue(latch.await(30L, TimeUnit.SECONDS));
+    assertEquals(numFired.get(), 0);
+    assertFalse(canceled.isExpired());
+    assertEquals(timer.getNumPendingTimeouts(), 0);
+  }
+
+
+
+  /**
+   * Tests the behavior with a large number of timeouts whose delays span
+   * multiple rotations of a small wheel, including timeouts that are
+   * scheduled after the timer thread has gone idle.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testManyTimeouts()
+         throws Exception
+  {
+    final AsyncTimeoutTimer timer = new AsyncTimeoutTimer(1L, 8);
+
+    for (int round=0; round < 2; round++)
+    {
+      final CountDownLatch latch = new CountDownLatch(500);
+      final AtomicInteger numEarly = new AtomicInteger(0);
+      final AtomicInteger numFired = new AtomicInteger(0);
+      final Runnable noOp = new Runnable()
+      {
+        public void run()
+        {
+          numFired.incrementAndGet();
+        }
+      };
+
+      final AsyncTimeoutTimer.Timeout[] canceled =
+           new AsyncTimeoutTimer.Timeout[500];
+      for (int i=0; i < 1000; i++)
+      {
+        final long delay = (i % 100);
+        if ((i % 2) == 0)
+        {
+          final long deadline = System.nanoTime() + (delay * 1000000L);
+          timer.schedule(new Runnable()
+          {
+            public void run()
+            {
+              if (System.nanoTime() < deadline)
+              {
+                numEarly.incrementAndGet();
+              }
+              latch.countDown();
+            }
+          }, delay);
+        }
+        else
+        {
+          canceled[i/2] = timer.schedule(noOp, delay + 50L);
+        }
+      }
+
+      for (final AsyncTimeoutTimer.Timeout t : canceled)
+      {
+        t.cancel();
+      }
+
+      assertTrue(latch.await(30L, TimeUnit.SECONDS));
+      assertEquals(numEarly.get(), 0);
+      assertEquals(numFired.get(), 0);
+      assertEquals(timer.getNumPendingTimeouts(), 0);
+
+      // Give the timer thread a chance to go idle before the next round.
+      Thread.sleep(50L);
+    }
+  }
+
+
+
+  /**
+   * Tests to ensure that an exception thrown by a task does not prevent other
+   * timeouts from firing.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testTaskThrowsException()
+         throws Exception
+  {
+    final AsyncTimeoutTimer timer = new AsyncTimeoutTimer(1L, 4);
+    timer.schedule(new Runnable()
+    {
+      public void run()
+      {
+        throw new RuntimeException("expected");
+      }
+    }, 0L);
+
+    final CountDownLatch latch = new CountDownLatch(1);
+    timer.schedule(new Runnable()
+    {
+      public void run()
+      {
+        latch.countDown();
+      }
+    }, 10L);
+
+    assertTrue(latch.await(30L, TimeUnit.SECONDS));
+  }
+}
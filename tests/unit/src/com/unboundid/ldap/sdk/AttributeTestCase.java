@@ -22,6 +22,7 @@ package com.unboundid.ldap.sdk;
 
 
 
+import java.io.ByteArrayInputStream;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.LinkedHashMap;
@@ -31,9 +32,12 @@ import org.testng.annotations.BeforeClass;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import com.unboundid.asn1.ASN1Buffer;
+import com.unboundid.asn1.ASN1Element;
 import com.unboundid.asn1.ASN1Integer;
 import com.unboundid.asn1.ASN1OctetString;
 import com.unboundid.asn1.ASN1Sequence;
+import com.unboundid.asn1.ASN1StreamReader;
 import com.unboundid.ldap.matchingrules.IntegerMatchingRule;
 import com.unboundid.ldap.matchingrules.CaseExactStringMatchingRule;
 import com.unboundid.ldap.matchingrules.CaseIgnoreStringMatchingRule;
@@ -2102,4 +2106,92 @@ public class AttributeTestCase
       new Object[] { "a\r\nb", true },
     };
   }
+
+
+
+  /**
+   * Tests the behavior when reading attributes with lazy value decoding.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testLazyValueDecoding()
+         throws Exception
+  {
+    final StringBuilder longValue = new StringBuilder();
+    for (int i=0; i < 100; i++)
+    {
+      longValue.append("0123456789");
+    }
+
+    final Attribute[] attrs =
+    {
+      new Attribute("cn"),
+      new Attribute("description", "foo", "", longValue.toString()),
+      new Attribute("userCertificate;binary", new byte[] { 0x00, 0x01 })
+    };
+
+    final ASN1Buffer buffer = new ASN1Buffer();
+    for (final Attribute a : attrs)
+    {
+      a.writeTo(buffer);
+    }
+    final byte[] encoded = buffer.toByteArray();
+
+    final ASN1StreamReader reader =
+         new ASN1StreamReader(new ByteArrayInputStream(encoded));
+    final Attribute[] lazyAttrs = new Attribute[attrs.length];
+    for (int i=0; i < attrs.length; i++)
+    {
+      lazyAttrs[i] = Attribute.readFrom(reader, null, true);
+      assertEquals(lazyAttrs[i].getName(), attrs[i].getName());
+    }
+
+    // Re-encoding the attributes should not require decoding the values.
+    buffer.clear();
+    for (final Attribute a : lazyAttrs)
+    {
+      a.writeTo(buffer);
+    }
+    assertEquals(buffer.toByteArray(), encoded);
+
+    for (int i=0; i < attrs.length; i++)
+    {
+      assertEquals(lazyAttrs[i], attrs[i]);
+      assertEquals(lazyAttrs[i].hashCode(), attrs[i].hashCode());
+      assertEquals(lazyAttrs[i].size(), attrs[i].size());
+      assertTrue(Arrays.deepEquals(lazyAttrs[i].getValueByteArrays(),
+           attrs[i].getValueByteArrays()));
+      assertEquals(lazyAttrs[i].toString(), attrs[i].toString());
+      assertEquals(lazyAttrs[i].encode().encode(), attrs[i].encode().encode());
+    }
+
+    assertTrue(lazyAttrs[1].hasValue(longValue.toString()));
+    assertTrue(lazyAttrs[1].hasValue(""));
+    assertEquals(lazyAttrs[1].getValue(), "foo");
+    assertFalse(lazyAttrs[0].hasValue());
+  }
+
+
+
+  /**
+   * Tests the behavior when reading an attribute with lazy value decoding when
+   * the encoded set of values is malformed.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test(expectedExceptions = { LDAPException.class })
+  public void testLazyValueDecodingMalformedValueSet()
+         throws Exception
+  {
+    // The second value claims a length that extends beyond the end of the set.
+    final ASN1Sequence attrSequence = new ASN1Sequence(
+         new ASN1OctetString("description"),
+         new ASN1Element((byte) 0x31,
+              new byte[] { 0x04, 0x01, 0x61, 0x04, 0x05, 0x62 }));
+
+    final ASN1StreamReader reader = new ASN1StreamReader(
+         new ByteArrayInputStream(attrSequence.encode()));
+    Attribute.readFrom(reader, null, true);
+  }
 }
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.sdk;
+
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+
+
+/**
+ * This class provides a set of test cases for the AvailableConnectionQueue
+ * class.
+ */
+public final class AvailableConnectionQueueTestCase
+       extends LDAPSDKTestCase
+{
+  /**
+   * Tests the behavior of a queue with a single stripe.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testSingleStripe()
+         throws Exception
+  {
+    final AvailableConnectionQueue q = new AvailableConnectionQueue(3, false);
+    assertEquals(q.getNumStripes(), 1);
+    assertEquals(q.size(), 0);
+    assertEquals(q.remainingCapacity(), 3);
+    assertNull(q.poll());
+    assertFalse(q.iterator().hasNext());
+
+    final LDAPConnection c1 = new LDAPConnection();
+    final LDAPConnection c2 = new LDAPConnection();
+    final LDAPConnection c3 = new LDAPConnection();
+    final LDAPConnection c4 = new LDAPConnection();
+    q.addAll(Arrays.asList(c1, c2));
+    assertTrue(q.offer(c3));
+    assertFalse(q.offer(c4));
+    assertEquals(q.size(), 3);
+    assertEquals(q.remainingCapacity(), 0);
+
+    // Connections should be returned in the order they were added.
+    assertSame(q.poll(), c1);
+    assertSame(q.poll(), c2);
+    assertTrue(q.offer(c1));
+    assertSame(q.poll(), c3);
+    assertSame(q.poll(), c1);
+    assertNull(q.poll());
+
+    try
+    {
+      q.addAll(Arrays.asList(c1, c2, c3, c4));
+      fail("Expected an exception when adding too many connections");
+    }
+    catch (final IllegalStateException ise)
+    {
+      // This was expected.
+    }
+
+    final List<LDAPConnection> drained = new ArrayList<LDAPConnection>(3);
+    assertEquals(q.drainTo(drained), 3);
+    assertEquals(drained, Arrays.asList(c1, c2, c3));
+    assertEquals(q.size(), 0);
+  }
+
+
+
+  /**
+   * Tests the behavior of the iterator, including removing connections with
+   * it.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testIterator()
+         throws Exception
+  {
+    final AvailableConnectionQueue q = new AvailableConnectionQueue(100, true);
+
+    final HashSet<LDAPConnection> expected = new HashSet<LDAPConnection>(10);
+    for (int i=0; i < 10; i++)
+    {
+      final LDAPConnection c = new LDAPConnection();
+      expected.add(c);
+      assertTrue(q.offer(c));
+    }
+
+    final HashSet<LDAPConnection> found = new HashSet<LDAPConnection>(10);
+    for (final LDAPConnection c : q)
+    {
+      found.add(c);
+    }
+    assertEquals(found.size(), 10);
+    assertTrue(found.containsAll(expected));
+
+    final Iterator<LDAPConnection> iterator = q.iterator();
+    try
+    {
+      iterator.remove();
+      fail("Expected an exception when removing before calling next");
+    }
+    catch (final IllegalStateException ise)
+    {
+      // This was expected.
+    }
+
+    final LDAPConnection removed = iterator.next();
+    iterator.remove();
+    assertEquals(q.size(), 9);
+    assertEquals(q.remainingCapacity(), 91);
+
+    // Removing a connection that has already been polled by another thread
+    // should not affect the size of the queue.
+    final Iterator<LDAPConnection> staleIterator = q.iterator();
+    final LDAPConnection polledElsewhere = staleIterator.next();
+    final HashSet<LDAPConnection> polled = new HashSet<LDAPConnection>(9);
+    LDAPConnection p = q.poll();
+    while (p != polledElsewhere)
+    {
+      assertNotNull(p);
+      polled.add(p);
+      p = q.poll();
+    }
+    final int sizeAfterPoll = q.size();
+    staleIterator.remove();
+    assertEquals(q.size(), sizeAfterPoll);
+    for (final LDAPConnection c : polled)
+    {
+      assertTrue(q.offer(c));
+    }
+    assertTrue(q.offer(polledElsewhere));
+    assertEquals(q.size(), 9);
+
+    for (int i=0; i < 9; i++)
+    {
+      final LDAPConnection c = q.poll();
+      assertNotNull(c);
+      assertNotSame(c, removed);
+    }
+
+    assertNull(q.poll());
+  }
+
+
+
+  /**
+   * Tests the number of stripes selected for various capacities.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testGetNumStripes()
+         throws Exception
+  {
+    assertEquals(AvailableConnectionQueue.getNumStripes(1000, false), 1);
+    assertEquals(AvailableConnectionQueue.getNumStripes(1, true), 1);
+
+    for (final int capacity : new int[] { 2, 3, 7, 100, 10000 })
+    {
+      final int numStripes =
+           AvailableConnectionQueue.getNumStripes(capacity, true);
+      assertTrue(numStripes >= 1);
+      assertTrue(numStripes <= capacity);
+      assertTrue(numStripes <= AvailableConnectionQueue.MAX_STRIPES);
+      assertEquals((numStripes & (numStripes - 1)), 0);
+    }
+  }
+
+
+
+  /**
+   * Tests the behavior when waiting for a connection to become available.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testPollWithTimeout()
+         throws Exception
+  {
+    final AvailableConnectionQueue q = new AvailableConnectionQueue(10, true);
+
+    final long startTime = System.currentTimeMillis();
+    assertNull(q.poll(50L, TimeUnit.MILLISECONDS));
+    assertTrue((System.currentTimeMillis() - startTime) >= 40L);
+
+    final LDAPConnection c = new LDAPConnection();
+    final Thread t = new Thread()
+    {
+      @Override()
+      public void run()
+      {
+        try
+        {
+          Thread.sleep(50L);
+        }
+        catch (final InterruptedException ie)
+        {
+          // No action is required.
+        }
+
+        q.offer(c);
+      }
+    };
+    t.start();
+
+    assertSame(q.poll(30000L, TimeUnit.MILLISECONDS), c);
+    t.join();
+  }
+
+
+
+  /**
+   * Tests the behavior when connections are checked out and released by a
+   * number of threads concurrently, some of which wait for connections.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testConcurrentAccess()
+         throws Exception
+  {
+    final AvailableConnectionQueue q = new AvailableConnectionQueue(4, true);
+    final HashSet<LDAPConnection> connections = new HashSet<LDAPConnection>(4);
+    for (int i=0; i < 4; i++)
+    {
+      final LDAPConnection c = new LDAPConnection();
+      connections.add(c);
+      assertTrue(q.offer(c));
+    }
+
+    final AtomicInteger failures = new AtomicInteger(0);
+    final Thread[] threads = new Thread[16];
+    for (int i=0; i < threads.length; i++)
+    {
+      threads[i] = new Thread()
+      {
+        @Override()
+        public void run()
+        {
+          try
+          {
+            for (int j=0; j < 1000; j++)
+            {
+              final LDAPConnection c = q.poll(30000L, TimeUnit.MILLISECONDS);
+              if ((c == null) || (! q.offer(c)))
+              {
+                failures.incrementAndGet();
+              }
+            }
+          }
+          catch (final Exception e)
+          {
+            failures.incrementAndGet();
+          }
+        }
+      };
+      threads[i].start();
+    }
+
+    for (final Thread t : threads)
+    {
+      t.join();
+    }
+
+    assertEquals(failures.get(), 0);
+    assertEquals(q.size(), 4);
+
+    final HashSet<LDAPConnection> remaining = new HashSet<LDAPConnection>(4);
+    assertEquals(q.drainTo(remaining), 4);
+    assertTrue(remaining.containsAll(connections));
+  }
+}
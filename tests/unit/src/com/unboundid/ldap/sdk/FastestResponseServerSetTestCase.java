@@ -0,0 +1,417 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.sdk;
+
+
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.net.SocketFactory;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.interceptor.
+            InMemoryInterceptedSearchRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryOperationInterceptor;
+import com.unboundid.util.LDAPSDKUsageException;
+
+
+
+/**
+ * This class provides a set of test cases for the fastest response server
+ * set.
+ */
+public final class FastestResponseServerSetTestCase
+       extends LDAPSDKTestCase
+{
+  // The directory server instance that will delay its search responses.
+  private InMemoryDirectoryServer slowDS = null;
+
+  // The directory server instance that will not delay its search responses.
+  private InMemoryDirectoryServer fastDS = null;
+
+  // The ports of the directory server instances, with the slow server first.
+  private final int[] ports = new int[2];
+
+  // The addresses of the directory server instances.
+  private final String[] addresses = new String[2];
+
+
+
+  /**
+   * Prepares a couple of directory server instances to use in the testing.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @BeforeClass()
+  public void setUp()
+         throws Exception
+  {
+    final InMemoryDirectoryServerConfig slowConfig =
+         new InMemoryDirectoryServerConfig("dc=example,dc=com");
+    slowConfig.addInMemoryOperationInterceptor(
+         new InMemoryOperationInterceptor()
+         {
+           @Override()
+           public void processSearchRequest(
+                            final InMemoryInterceptedSearchRequest request)
+           {
+             try
+             {
+               Thread.sleep(50L);
+             }
+             catch (final InterruptedException ie)
+             {
+               // No action is required.
+             }
+           }
+         });
+
+    slowDS = new InMemoryDirectoryServer(slowConfig);
+    slowDS.startListening();
+
+    fastDS = new InMemoryDirectoryServer("dc=example,dc=com");
+    fastDS.startListening();
+
+    addresses[0] = "localhost";
+    addresses[1] = "localhost";
+
+    ports[0] = slowDS.getListenPort();
+    ports[1] = fastDS.getListenPort();
+  }
+
+
+
+  /**
+   * Cleans up after testing has completed.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @AfterClass()
+  public void cleanUp()
+         throws Exception
+  {
+    slowDS.shutDown(true);
+    fastDS.shutDown(true);
+  }
+
+
+
+  /**
+   * Tests the behavior of the server set when created with the default
+   * settings.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testDefaultSettings()
+         throws Exception
+  {
+    final FastestResponseServerSet set =
+         new FastestResponseServerSet(addresses, ports);
+
+    assertNotNull(set.getAddresses());
+    assertEquals(set.getAddresses(), addresses);
+
+    assertNotNull(set.getPorts());
+    assertEquals(set.getPorts(), ports);
+
+    assertNotNull(set.getSocketFactory());
+
+    assertNotNull(set.getConnectionOptions());
+
+    assertEquals(set.getSmoothingFactor(),
+         FastestResponseServerSet.DEFAULT_SMOOTHING_FACTOR);
+    assertEquals(set.getOutlierThreshold(),
+         FastestResponseServerSet.DEFAULT_OUTLIER_THRESHOLD);
+    assertEquals(set.getEjectionDurationMillis(),
+         FastestResponseServerSet.DEFAULT_EJECTION_DURATION_MILLIS);
+
+    assertNotNull(set.toString());
+
+    final LDAPConnection conn = set.getConnection();
+    assertTrue(conn.isConnected());
+    assertNotNull(conn.getRootDSE());
+    conn.close();
+
+    final LDAPConnectionPool pool = new LDAPConnectionPool(set, null, 1, 5);
+    assertNotNull(pool.getRootDSE());
+    pool.close();
+  }
+
+
+
+  /**
+   * Tests to ensure that connections will be routed to the server with the
+   * fastest response time, and that a server whose response time is an
+   * outlier will be ejected.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testRouteToFastestServer()
+         throws Exception
+  {
+    // Use a separate fast server so that it can be shut down without
+    // affecting other tests.
+    final InMemoryDirectoryServer tempFastDS =
+         new InMemoryDirectoryServer("dc=example,dc=com");
+    tempFastDS.startListening();
+
+    final int[] setPorts = { ports[0], tempFastDS.getListenPort() };
+
+    final LDAPConnectionOptions connectionOptions = new LDAPConnectionOptions();
+    connectionOptions.setUseSynchronousMode(true);
+
+    final FastestResponseServerSet set = new FastestResponseServerSet(
+         addresses, setPorts, SocketFactory.getDefault(), connectionOptions,
+         0.5d, 3.0d, 3600000L);
+    assertEquals(set.getSmoothingFactor(), 0.5d);
+    assertEquals(set.getOutlierThreshold(), 3.0d);
+    assertEquals(set.getEjectionDurationMillis(), 3600000L);
+    assertEquals(set.getAverageResponseTimeMillis(addresses[0], setPorts[0]),
+         -1.0d);
+
+    // Neither server has any response time information, so the first
+    // connection should be established to the first server in the list.
+    final LDAPConnection slowConn = set.getConnection();
+    assertEquals(slowConn.getConnectedPort(), setPorts[0]);
+    slowConn.getRootDSE();
+    slowConn.getRootDSE();
+
+    // The second connection should go to the server that has not yet been
+    // measured.
+    final LDAPConnection fastConn = set.getConnection();
+    assertEquals(fastConn.getConnectedPort(), setPorts[1]);
+    fastConn.getRootDSE();
+    fastConn.getRootDSE();
+
+    // Now that both servers have been measured, the slow server should be
+    // ejected and subsequent connections should go to the fast server.
+    final LDAPConnection conn3 = set.getConnection();
+    assertEquals(conn3.getConnectedPort(), setPorts[1]);
+    assertTrue(set.getAverageResponseTimeMillis(addresses[0], setPorts[0]) >=
+         50.0d);
+    assertTrue(set.getAverageResponseTimeMillis(addresses[1], setPorts[1]) >=
+         0.0d);
+    assertTrue(set.isEjected(addresses[0], setPorts[0]));
+    assertFalse(set.isEjected(addresses[1], setPorts[1]));
+    assertFalse(set.isEjected("unknown", 389));
+    assertEquals(set.getAverageResponseTimeMillis("unknown", 389), -1.0d);
+
+    // Even though the slow server is ejected, it should still be used if the
+    // fast server is unavailable.
+    slowConn.close();
+    fastConn.close();
+    conn3.close();
+    tempFastDS.shutDown(true);
+
+    final LDAPConnection conn4 = set.getConnection();
+    assertEquals(conn4.getConnectedPort(), setPorts[0]);
+    assertTrue(set.isEjected(addresses[1], setPorts[1]));
+    conn4.close();
+  }
+
+
+
+  /**
+   * Tests to ensure that an ejected server will be reinstated once its
+   * ejection period has elapsed.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testEjectionExpires()
+         throws Exception
+  {
+    final int unavailablePort;
+    final InMemoryDirectoryServer tempDS =
+         new InMemoryDirectoryServer("dc=example,dc=com");
+    tempDS.startListening();
+    unavailablePort = tempDS.getListenPort();
+    tempDS.shutDown(true);
+
+    final FastestResponseServerSet set = new FastestResponseServerSet(
+         new String[] { "localhost", "localhost" },
+         new int[] { unavailablePort, ports[1] }, null, null, 0.3d, 2.0d, 0L);
+
+    final LDAPConnection conn1 = set.getConnection();
+    assertEquals(conn1.getConnectedPort(), ports[1]);
+    conn1.close();
+
+    // With an ejection duration of zero, the unavailable server should be
+    // tried again (and fail again) on the next attempt.
+    final LDAPConnection conn2 = set.getConnection();
+    assertEquals(conn2.getConnectedPort(), ports[1]);
+    conn2.close();
+  }
+
+
+
+  /**
+   * Tests to ensure that a slow health check for a new connection does not
+   * prevent other threads from obtaining connections from the server set.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testHealthCheckDoesNotBlockOtherThreads()
+         throws Exception
+  {
+    final FastestResponseServerSet set =
+         new FastestResponseServerSet(addresses, ports);
+
+    final CountDownLatch checkStarted = new CountDownLatch(1);
+    final CountDownLatch releaseCheck = new CountDownLatch(1);
+    final LDAPConnectionPoolHealthCheck healthCheck =
+         new LDAPConnectionPoolHealthCheck()
+         {
+           @Override()
+           public void ensureNewConnectionValid(final LDAPConnection conn)
+           {
+             checkStarted.countDown();
+             try
+             {
+               releaseCheck.await(30L, TimeUnit.SECONDS);
+             }
+             catch (final InterruptedException ie)
+             {
+               // No action is required.
+             }
+           }
+         };
+
+    final AtomicReference<LDAPConnection> checkedConn =
+         new AtomicReference<LDAPConnection>();
+    final Thread checkThread = new Thread()
+    {
+      @Override()
+      public void run()
+      {
+        try
+        {
+          checkedConn.set(set.getConnection(healthCheck));
+        }
+        catch (final LDAPException le)
+        {
+          // The assertion below will fail.
+        }
+      }
+    };
+    checkThread.start();
+    assertTrue(checkStarted.await(30L, TimeUnit.SECONDS));
+
+    // While the health check is in progress, this thread should still be able
+    // to get a connection and query the server set.
+    final LDAPConnection conn = set.getConnection();
+    assertFalse(set.isEjected(addresses[0], ports[0]));
+    assertTrue(checkThread.isAlive());
+    conn.close();
+
+    releaseCheck.countDown();
+    checkThread.join(30000L);
+    assertNotNull(checkedConn.get());
+    checkedConn.get().close();
+  }
+
+
+
+  /**
+   * Tests to ensure that the server set's health check will update response
+   * times without any new connections being requested, and that connections
+   * which have been closed are no longer tracked.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testResponseTimeHealthCheck()
+         throws Exception
+  {
+    final FastestResponseServerSet set =
+         new FastestResponseServerSet(addresses, ports);
+    final LDAPConnectionPoolHealthCheck healthCheck =
+         set.getResponseTimeHealthCheck();
+    assertNotNull(healthCheck);
+    assertNotNull(healthCheck.toString());
+
+    final LDAPConnection slowConn = set.getConnection();
+    assertEquals(slowConn.getConnectedPort(), ports[0]);
+    final LDAPConnection closedConn = set.getConnection();
+    assertEquals(set.getNumTrackedConnections(), 2);
+
+    slowConn.getRootDSE();
+    closedConn.close();
+    assertEquals(set.getAverageResponseTimeMillis(addresses[0], ports[0]),
+         -1.0d);
+
+    // Health check updates are rate limited, so wait long enough for the next
+    // one to be processed.
+    Thread.sleep(1100L);
+    healthCheck.ensureConnectionValidForContinuedUse(slowConn);
+    assertTrue(set.getAverageResponseTimeMillis(addresses[0], ports[0]) >=
+         50.0d);
+    assertEquals(set.getNumTrackedConnections(), 1);
+
+    slowConn.close();
+  }
+
+
+
+  /**
+   * Tests the behavior when none of the servers are available.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test(expectedExceptions = { LDAPException.class })
+  public void testNoServersAvailable()
+         throws Exception
+  {
+    final InMemoryDirectoryServer tempDS =
+         new InMemoryDirectoryServer("dc=example,dc=com");
+    tempDS.startListening();
+    final int unavailablePort = tempDS.getListenPort();
+    tempDS.shutDown(true);
+
+    final FastestResponseServerSet set = new FastestResponseServerSet(
+         new String[] { "localhost" }, new int[] { unavailablePort });
+    set.getConnection();
+  }
+
+
+
+  /**
+   * Tests to ensure that an invalid smoothing factor will be rejected.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test(expectedExceptions = { LDAPSDKUsageException.class })
+  public void testInvalidSmoothingFactor()
+         throws Exception
+  {
+    new FastestResponseServerSet(addresses, ports, null, null, 0.0d, 3.0d,
+         1000L);
+  }
+}
@@ -32,6 +32,7 @@ import com.unboundid.ldap.listener.InMemoryDirectoryServer;
 import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
 import com.unboundid.ldap.listener.InMemoryListenerConfig;
 import com.unboundid.ldap.sdk.extensions.StartTLSExtendedRequest;
+import com.unboundid.util.ByteArrayPool;
 import com.unboundid.util.LDAPSDKUsageException;
 import com.unboundid.util.StaticUtils;
 import com.unboundid.util.SynchronizedSocketFactory;
@@ -70,7 +71,12 @@ public class LDAPConnectionOptionsTestCase
     assertEquals(opts.getLingerTimeoutSeconds(), 5);
     assertTrue(opts.useReuseAddress());
     assertFalse(opts.useSynchronousMode());
+    assertFalse(opts.useSharedReaderThreads());
     assertTrue(opts.useTCPNoDelay());
+    assertFalse(opts.useWriteBatching());
+    assertFalse(opts.useZeroCopyDecoding());
+    assertFalse(opts.useLazySearchEntryDecoding());
+    assertNull(opts.getBufferPool());
     assertEquals(opts.getConnectTimeoutMillis(), 60000L);
     assertEquals(opts.getResponseTimeoutMillis(), 300000L);
     assertFalse(opts.abandonOnTimeout());
@@ -132,6 +138,11 @@ public class LDAPConnectionOptionsTestCase
     opts.setReceiveBufferSize(1234);
     opts.setSendBufferSize(1234);
     opts.setUseSynchronousMode(true);
+    opts.setUseSharedReaderThreads(true);
+    opts.setUseWriteBatching(true);
+    opts.setUseZeroCopyDecoding(true);
+    opts.setUseLazySearchEntryDecoding(true);
+    opts.setBufferPool(new ByteArrayPool());
     opts.setUseSchema(true);
     opts.setAllowConcurrentSocketFactoryUse(false);
     opts.setSSLSocketVerifier(new HostNameSSLSocketVerifier(true));
@@ -162,6 +173,11 @@ public class LDAPConnectionOptionsTestCase
     assertEquals(dup.getReceiveBufferSize(), 1234);
     assertEquals(dup.getSendBufferSize(), 1234);
     assertEquals(dup.useSynchronousMode(), opts.useSynchronousMode());
+    assertTrue(dup.useSharedReaderThreads());
+    assertTrue(dup.useWriteBatching());
+    assertTrue(dup.useZeroCopyDecoding());
+    assertTrue(dup.useLazySearchEntryDecoding());
+    assertSame(dup.getBufferPool(), opts.getBufferPool());
     assertEquals(dup.useSchema(), opts.useSchema());
     assertEquals(dup.usePooledSchema(), opts.usePooledSchema());
     assertEquals(dup.allowConcurrentSocketFactoryUse(),
@@ -609,6 +625,122 @@ public class LDAPConnectionOptionsTestCase
 
 
 
+  /**
+   * Tests the ability to get and set the flag that controls whether to use
+   * shared reader threads.
+   */
+  @Test()
+  public void testUseSharedReaderThreads()
+  {
+    final LDAPConnectionOptions opts = new LDAPConnectionOptions();
+
+    assertFalse(opts.useSharedReaderThreads());
+    assertTrue(opts.toString().contains("useSharedReaderThreads=false"));
+
+    opts.setUseSharedReaderThreads(true);
+    assertTrue(opts.useSharedReaderThreads());
+    assertTrue(opts.toString().contains("useSharedReaderThreads=true"));
+
+    opts.setUseSharedReaderThreads(false);
+    assertFalse(opts.useSharedReaderThreads());
+    assertNotNull(opts.toString());
+  }
+
+
+
+  /**
+   * Tests the ability to get and set the flag that controls whether to use
+   * write batching.
+   */
+  @Test()
+  public void testUseWriteBatching()
+  {
+    final LDAPConnectionOptions opts = new LDAPConnectionOptions();
+
+    assertFalse(opts.useWriteBatching());
+    assertTrue(opts.toString().contains("useWriteBatching=false"));
+
+    opts.setUseWriteBatching(true);
+    assertTrue(opts.useWriteBatching());
+    assertTrue(opts.toString().contains("useWriteBatching=true"));
+
+    opts.setUseWriteBatching(false);
+    assertFalse(opts.useWriteBatching());
+    assertNotNull(opts.toString());
+  }
+
+
+
+  /**
+   * Tests the ability to get and set the flag that controls whether to use
+   * zero-copy decoding.
+   */
+  @Test()
+  public void testUseZeroCopyDecoding()
+  {
+    final LDAPConnectionOptions opts = new LDAPConnectionOptions();
+
+    assertFalse(opts.useZeroCopyDecoding());
+    assertTrue(opts.toString().contains("useZeroCopyDecoding=false"));
+
+    opts.setUseZeroCopyDecoding(true);
+    assertTrue(opts.useZeroCopyDecoding());
+    assertTrue(opts.toString().contains("useZeroCopyDecoding=true"));
+
+    opts.setUseZeroCopyDecoding(false);
+    assertFalse(opts.useZeroCopyDecoding());
+    assertNotNull(opts.toString());
+  }
+
+
+
+  /**
+   * Tests the ability to get and set the flag that controls whether to use
+   * lazy search entry decoding.
+   */
+  @Test()
+  public void testUseLazySearchEntryDecoding()
+  {
+    final LDAPConnectionOptions opts = new LDAPConnectionOptions();
+
+    assertFalse(opts.useLazySearchEntryDecoding());
+    assertTrue(opts.toString().contains("useLazySearchEntryDecoding=false"));
+
+    opts.setUseLazySearchEntryDecoding(true);
+    assertTrue(opts.useLazySearchEntryDecoding());
+    assertTrue(opts.toString().contains("useLazySearchEntryDecoding=true"));
+
+    opts.setUseLazySearchEntryDecoding(false);
+    assertFalse(opts.useLazySearchEntryDecoding());
+    assertNotNull(opts.toString());
+  }
+
+
+
+  /**
+   * Tests the ability to get and set the buffer pool for associated
+   * connections.
+   */
+  @Test()
+  public void testBufferPool()
+  {
+    final LDAPConnectionOptions opts = new LDAPConnectionOptions();
+
+    assertNull(opts.getBufferPool());
+    assertFalse(opts.toString().contains("bufferPool="));
+
+    final ByteArrayPool pool = new ByteArrayPool();
+    opts.setBufferPool(pool);
+    assertSame(opts.getBufferPool(), pool);
+    assertTrue(opts.toString().contains("bufferPool=ByteArrayPool("));
+
+    opts.setBufferPool(null);
+    assertNull(opts.getBufferPool());
+    assertNotNull(opts.toString());
+  }
+
+
+
   /**
    * Tests the ability to get and set the flag that controls whether to use
    * schema information when reading data from the server.
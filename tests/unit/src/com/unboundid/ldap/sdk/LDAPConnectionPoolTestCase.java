@@ -25,6 +25,7 @@ package com.unboundid.ldap.sdk;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
@@ -3154,4 +3155,80 @@ public class LDAPConnectionPoolTestCase
     pool.close();
     ds.shutDown(true);
   }
+
+
+
+  /**
+   * Tests the behavior of a connection pool that uses a striped connection
+   * queue when accessed concurrently by multiple threads.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testStripedConnectionQueue()
+         throws Exception
+  {
+    final InMemoryDirectoryServer ds = getTestDS();
+
+    final SingleServerSet serverSet =
+         new SingleServerSet("localhost", ds.getListenPort());
+    final LDAPConnectionPool pool;
+    System.setProperty(LDAPConnectionPool.PROPERTY_USE_STRIPED_CONNECTION_QUEUE,
+         "true");
+    try
+    {
+      pool = new LDAPConnectionPool(serverSet, null, 8, 8);
+    }
+    finally
+    {
+      System.clearProperty(
+           LDAPConnectionPool.PROPERTY_USE_STRIPED_CONNECTION_QUEUE);
+    }
+
+    pool.setCreateIfNecessary(false);
+    pool.setMaxWaitTimeMillis(30000L);
+    assertEquals(pool.getCurrentAvailableConnections(), 8);
+
+    final AtomicInteger failures = new AtomicInteger(0);
+    final Thread[] threads = new Thread[16];
+    for (int i=0; i < threads.length; i++)
+    {
+      threads[i] = new Thread()
+      {
+        @Override()
+        public void run()
+        {
+          try
+          {
+            for (int j=0; j < 100; j++)
+            {
+              final LDAPConnection conn = pool.getConnection();
+              conn.getRootDSE();
+              pool.releaseConnection(conn);
+            }
+          }
+          catch (final Exception e)
+          {
+            failures.incrementAndGet();
+          }
+        }
+      };
+      threads[i].start();
+    }
+
+    for (final Thread t : threads)
+    {
+      t.join();
+    }
+
+    assertEquals(failures.get(), 0);
+    assertEquals(pool.getCurrentAvailableConnections(), 8);
+    assertEquals(pool.getConnectionPoolStatistics().
+         getNumSuccessfulCheckouts(), 1600L);
+    assertEquals(pool.getConnectionPoolStatistics().
+         getNumReleasedValid(), 1600L);
+
+    pool.close();
+    assertEquals(pool.getCurrentAvailableConnections(), 0);
+  }
 }
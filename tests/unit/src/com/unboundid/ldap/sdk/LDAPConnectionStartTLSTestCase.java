@@ -132,6 +132,41 @@ public final class LDAPConnectionStartTLSTestCase
 
 
 
+  /**
+   * Tests the behavior of a connection that uses a shared reader thread when it
+   * is secured with StartTLS.  It should switch to a dedicated reader thread.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testStartTLSWithSharedReaderThreads()
+         throws Exception
+  {
+    final LDAPConnectionOptions options = new LDAPConnectionOptions();
+    options.setUseSharedReaderThreads(true);
+
+    final LDAPConnection conn = new LDAPConnection(options, "localhost",
+         ds.getListenPort("WithStartTLS"));
+    final LDAPConnectionReader reader =
+         conn.getConnectionInternals(true).getConnectionReader();
+    assertTrue(conn.getConnectionInternals(true).useSharedReader());
+    assertNull(reader.getReaderThread());
+    assertNotNull(conn.getRootDSE());
+
+    final SSLUtil sslUtil = new SSLUtil(new TrustAllTrustManager());
+    final ExtendedResult startTLSResult = conn.processExtendedOperation(
+         new StartTLSExtendedRequest(sslUtil.createSSLSocketFactory()));
+    assertResultCodeEquals(startTLSResult, ResultCode.SUCCESS);
+
+    assertNotNull(conn.getRootDSE());
+    assertNotNull(conn.getSSLSession());
+    assertNotNull(reader.getReaderThread());
+
+    conn.close();
+  }
+
+
+
   /**
    * Tests the behavior of an LDAP connection that is established, secured with
    * StartTLS, and then the reconnect method invoked.  The reconnected
@@ -22,10 +22,16 @@ package com.unboundid.ldap.sdk;
 
 
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+
 
 
 /**
@@ -99,6 +105,11 @@ public class LDAPConnectionStatisticsTestCase
 
     assertEquals(stats.getNumAbandonRequests(), 0L);
 
+    assertEquals(stats.getNumWriteBatches(), 0L);
+    assertEquals(stats.getNumBatchedMessages(), 0L);
+    assertEquals(stats.getMaxWriteBatchSize(), 0L);
+    assertEquals(stats.getAverageWriteBatchSize(), Double.NaN);
+
     assertEquals(stats.getNumAddRequests(), 0L);
     assertEquals(stats.getNumAddResponses(), 0L);
     assertEquals(stats.getTotalAddResponseTimeNanos(), 0L);
@@ -830,4 +841,90 @@ public class LDAPConnectionStatisticsTestCase
 
     conn.close();
   }
+
+
+
+  /**
+   * Tests to ensure that write batch statistics are properly maintained for a
+   * connection that uses write batching, and that all requests sent
+   * concurrently by multiple threads are processed.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testWriteBatching()
+         throws Exception
+  {
+    final InMemoryDirectoryServer ds = getTestDS(true, false);
+
+    final LDAPConnectionOptions opts = new LDAPConnectionOptions();
+    opts.setUseWriteBatching(true);
+
+    final LDAPConnection conn =
+         new LDAPConnection(opts, "localhost", ds.getListenPort());
+    final LDAPConnectionStatistics stats = conn.getConnectionStatistics();
+
+    // Send a burst of asynchronous requests from a single thread.
+    final List<AsyncRequestID> requestIDs = new ArrayList<AsyncRequestID>(500);
+    final TestAsyncListener listener = new TestAsyncListener();
+    for (int i=0; i < 500; i++)
+    {
+      requestIDs.add(conn.asyncCompare(new CompareRequest("dc=example,dc=com",
+           "dc", "example"), listener));
+    }
+
+    for (final AsyncRequestID id : requestIDs)
+    {
+      assertEquals(id.get().getResultCode(), ResultCode.COMPARE_TRUE);
+    }
+
+    assertEquals(stats.getNumBatchedMessages(), 500L);
+    assertTrue(stats.getNumWriteBatches() >= 1L);
+    assertTrue(stats.getNumWriteBatches() <= 500L);
+
+    // Send requests concurrently from multiple threads.
+    final AtomicInteger numFailures = new AtomicInteger(0);
+    final Thread[] threads = new Thread[8];
+    for (int i=0; i < threads.length; i++)
+    {
+      threads[i] = new Thread()
+      {
+        @Override()
+        public void run()
+        {
+          for (int j=0; j < 100; j++)
+          {
+            try
+            {
+              conn.getEntry("dc=example,dc=com");
+            }
+            catch (final Exception e)
+            {
+              numFailures.incrementAndGet();
+            }
+          }
+        }
+      };
+      threads[i].start();
+    }
+
+    for (final Thread t : threads)
+    {
+      t.join();
+    }
+
+    assertEquals(numFailures.get(), 0);
+    assertEquals(stats.getNumBatchedMessages(), 1300L);
+    assertTrue(stats.getNumWriteBatches() <= 1300L);
+    assertTrue(stats.getMaxWriteBatchSize() >= 1L);
+    assertTrue(stats.getAverageWriteBatchSize() >= 1.0d);
+    assertTrue(stats.toString().contains("numWriteBatches="));
+
+    conn.close();
+
+    stats.reset();
+    assertEquals(stats.getNumWriteBatches(), 0L);
+    assertEquals(stats.getNumBatchedMessages(), 0L);
+    assertEquals(stats.getMaxWriteBatchSize(), 0L);
+  }
 }
@@ -23,6 +23,8 @@ package com.unboundid.ldap.sdk;
 
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 import javax.net.SocketFactory;
 
 import org.testng.annotations.Test;
@@ -39,6 +41,8 @@ import com.unboundid.ldap.sdk.extensions.WhoAmIExtendedResult;
 import com.unboundid.ldap.sdk.schema.Schema;
 import com.unboundid.ldap.sdk.unboundidds.controls.
             IntermediateClientRequestControl;
+import com.unboundid.util.ByteArrayPool;
+import com.unboundid.util.StaticUtils;
 
 
 
@@ -5186,6 +5190,357 @@ public class LDAPConnectionTestCase
 
 
 
+  /**
+   * Tests the behavior of connections configured to use zero-copy decoding,
+   * both with and without shared reader threads.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testZeroCopyDecoding()
+         throws Exception
+  {
+    final InMemoryDirectoryServer ds = getTestDS(true, true);
+
+    for (int i=0; i < 50; i++)
+    {
+      ds.add(
+           "dn: uid=user." + i + ",ou=People,dc=example,dc=com",
+           "objectClass: top",
+           "objectClass: person",
+           "objectClass: organizationalPerson",
+           "objectClass: inetOrgPerson",
+           "uid: user." + i,
+           "givenName: User",
+           "sn: " + i,
+           "cn: User " + i,
+           "description: first",
+           "description: second",
+           "description: ");
+    }
+
+    for (final boolean useSharedReader : new boolean[] { false, true })
+    {
+      final LDAPConnectionOptions options = new LDAPConnectionOptions();
+      options.setUseZeroCopyDecoding(true);
+      options.setUseSharedReaderThreads(useSharedReader);
+
+      final LDAPConnection conn =
+           new LDAPConnection(options, "localhost", ds.getListenPort());
+
+      final SearchResult searchResult = conn.search("dc=example,dc=com",
+           SearchScope.SUB, "(objectClass=*)");
+      assertEquals(searchResult.getEntryCount(), 53);
+
+      for (final SearchResultEntry e : searchResult.getSearchEntries())
+      {
+        final Entry dsEntry = ds.getEntry(e.getDN());
+        assertEquals(new Entry(e.getDN(), e.getAttributes()),
+             new Entry(dsEntry.getDN(), dsEntry.getAttributes()));
+      }
+
+      final SearchResultEntry e =
+           conn.getEntry("uid=user.7,ou=People,dc=example,dc=com");
+      assertNotNull(e);
+      assertEquals(e.getAttributeValue("uid"), "user.7");
+      assertTrue(Arrays.equals(e.getAttributeValueBytes("sn"),
+           StaticUtils.getBytes("7")));
+      assertTrue(e.hasAttributeValue("description", ""));
+      assertEquals(e.getAttribute("description").size(), 3);
+
+      assertResultCodeEquals(conn.compare(
+           "uid=user.7,ou=People,dc=example,dc=com", "sn", "7"),
+           ResultCode.COMPARE_TRUE);
+
+      conn.close();
+    }
+  }
+
+
+
+  /**
+   * Tests the behavior of connections configured to use lazy search entry
+   * decoding, with and without shared reader threads and zero-copy decoding.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testLazySearchEntryDecoding()
+         throws Exception
+  {
+    final InMemoryDirectoryServer ds = getTestDS(true, true);
+
+    for (int i=0; i < 50; i++)
+    {
+      ds.add(
+           "dn: uid=user." + i + ",ou=People,dc=example,dc=com",
+           "objectClass: top",
+           "objectClass: person",
+           "objectClass: organizationalPerson",
+           "objectClass: inetOrgPerson",
+           "uid: user." + i,
+           "givenName: User",
+           "sn: " + i,
+           "cn: User " + i,
+           "description: first",
+           "description: second",
+           "description: ");
+    }
+
+    for (final boolean useSharedReader : new boolean[] { false, true })
+    {
+      for (final boolean useZeroCopy : new boolean[] { false, true })
+      {
+        final LDAPConnectionOptions options = new LDAPConnectionOptions();
+        options.setUseLazySearchEntryDecoding(true);
+        options.setUseZeroCopyDecoding(useZeroCopy);
+        options.setUseSharedReaderThreads(useSharedReader);
+
+        final LDAPConnection conn =
+             new LDAPConnection(options, "localhost", ds.getListenPort());
+
+        final SearchResult searchResult = conn.search("dc=example,dc=com",
+             SearchScope.SUB, "(objectClass=*)");
+        assertEquals(searchResult.getEntryCount(), 53);
+
+        for (final SearchResultEntry e : searchResult.getSearchEntries())
+        {
+          final Entry dsEntry = ds.getEntry(e.getDN());
+          assertEquals(new Entry(e.getDN(), e.getAttributes()),
+               new Entry(dsEntry.getDN(), dsEntry.getAttributes()));
+        }
+
+        final SearchResultEntry e =
+             conn.getEntry("uid=user.7,ou=People,dc=example,dc=com");
+        assertNotNull(e);
+        assertTrue(e.hasAttribute("cn"));
+        assertEquals(e.getAttributeValue("uid"), "user.7");
+        assertTrue(Arrays.equals(e.getAttributeValueBytes("sn"),
+             StaticUtils.getBytes("7")));
+        assertTrue(e.hasAttributeValue("description", ""));
+        assertEquals(e.getAttribute("description").size(), 3);
+
+        conn.close();
+      }
+    }
+  }
+
+
+
+  /**
+   * Tests to ensure that a pooled buffer is released when a request cannot be
+   * encoded.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testBufferPoolReleasedOnEncodingFailure()
+         throws Exception
+  {
+    final InMemoryDirectoryServer ds = getTestDS(true, true);
+
+    final ByteArrayPool pool = new ByteArrayPool();
+    final LDAPConnectionOptions options = new LDAPConnectionOptions();
+    options.setBufferPool(pool);
+
+    final LDAPConnection conn =
+         new LDAPConnection(options, "localhost", ds.getListenPort());
+    try
+    {
+      assertNotNull(conn.getRootDSE());
+      assertEquals(pool.getNumOutstanding(), 0L);
+
+      try
+      {
+        conn.bind(new SimpleBindRequest("cn=Directory Manager",
+             new FailingPasswordProvider()));
+        fail("Expected an exception from a bind request that cannot be " +
+             "encoded");
+      }
+      catch (final LDAPException le)
+      {
+        assertResultCodeEquals(le, ResultCode.PARAM_ERROR);
+      }
+
+      assertEquals(pool.getNumOutstanding(), 0L);
+      assertEquals(pool.getNumInvalidReleases(), 0L);
+    }
+    finally
+    {
+      conn.close();
+    }
+  }
+
+
+
+  /**
+   * A password provider that always fails to provide a password.
+   */
+  private static final class FailingPasswordProvider
+          extends PasswordProvider
+  {
+    /**
+     * The serial version UID for this serializable class.
+     */
+    private static final long serialVersionUID = 8233761617404263713L;
+
+
+
+    /**
+     * Throws an exception to indicate that the password is not available.
+     *
+     * @return  This method never returns normally.
+     *
+     * @throws  LDAPException  Always.
+     */
+    @Override()
+    public byte[] getPasswordBytes()
+           throws LDAPException
+    {
+      throw new LDAPException(ResultCode.PARAM_ERROR, "No password");
+    }
+  }
+
+
+
+  /**
+   * Tests the behavior of connections configured to use shared reader threads.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testSharedReaderThreads()
+         throws Exception
+  {
+    final InMemoryDirectoryServer ds = getTestDS(true, true);
+
+    final StringBuilder largeValue = new StringBuilder();
+    for (int i=0; i < 2000; i++)
+    {
+      largeValue.append("0123456789");
+    }
+
+    for (int i=0; i < 50; i++)
+    {
+      ds.add(
+           "dn: uid=user." + i + ",ou=People,dc=example,dc=com",
+           "objectClass: top",
+           "objectClass: person",
+           "objectClass: organizationalPerson",
+           "objectClass: inetOrgPerson",
+           "uid: user." + i,
+           "givenName: User",
+           "sn: " + i,
+           "cn: User " + i,
+           "description: " + largeValue);
+    }
+
+    final LDAPConnectionOptions options = new LDAPConnectionOptions();
+    options.setUseSharedReaderThreads(true);
+
+    final ArrayList<LDAPConnection> conns = new ArrayList<LDAPConnection>(20);
+    try
+    {
+      for (int i=0; i < 20; i++)
+      {
+        final LDAPConnection conn =
+             new LDAPConnection(options, "localhost", ds.getListenPort());
+        conns.add(conn);
+
+        assertTrue(conn.getConnectionInternals(true).useSharedReader());
+        assertNull(conn.getConnectionInternals(true).getConnectionReader().
+             getReaderThread());
+      }
+
+      // Make sure that each connection can process multiple concurrent
+      // operations, including searches that return large responses.
+      final ArrayList<AsyncRequestID> requestIDs =
+           new ArrayList<AsyncRequestID>(200);
+      for (final LDAPConnection conn : conns)
+      {
+        for (int i=0; i < 10; i++)
+        {
+          requestIDs.add(conn.asyncModify(new ModifyRequest(
+               "dn: uid=user." + i + ",ou=People,dc=example,dc=com",
+               "changetype: modify",
+               "replace: givenName",
+               "givenName: " + conn.getConnectionID()),
+               null));
+        }
+      }
+
+      for (final AsyncRequestID requestID : requestIDs)
+      {
+        assertResultCodeEquals(requestID.get(10L, TimeUnit.SECONDS),
+             ResultCode.SUCCESS);
+      }
+
+      for (final LDAPConnection conn : conns)
+      {
+        final SearchResult searchResult = conn.search("dc=example,dc=com",
+             SearchScope.SUB, "(objectClass=person)");
+        assertEquals(searchResult.getEntryCount(), 51);
+        assertEquals(conn.getActiveOperationCount(), 0);
+      }
+
+
+      // Make sure that responses larger than the maximum message size will
+      // cause the connection to be closed.
+      final LDAPConnectionOptions smallMessageOptions = options.duplicate();
+      smallMessageOptions.setMaxMessageSize(1000);
+      final LDAPConnection smallMessageConn = new LDAPConnection(
+           smallMessageOptions, "localhost", ds.getListenPort());
+      conns.add(smallMessageConn);
+      try
+      {
+        smallMessageConn.getEntry(
+             "uid=user.0,ou=People,dc=example,dc=com");
+        fail("Expected an exception when retrieving a large entry");
+      }
+      catch (final LDAPException le)
+      {
+        assertResultCodeEquals(le, ResultCode.DECODING_ERROR);
+      }
+      assertFalse(smallMessageConn.isConnected());
+
+
+      // Make sure that connections are able to detect when the server closes
+      // them.
+      ds.closeAllConnections(true);
+      for (final LDAPConnection conn : conns)
+      {
+        final long stopWaitingTime = System.currentTimeMillis() + 10000L;
+        while (conn.isConnected() &&
+             (System.currentTimeMillis() < stopWaitingTime))
+        {
+          Thread.sleep(10L);
+        }
+        assertFalse(conn.isConnected());
+      }
+
+
+      // Make sure that shared reader threads will not be used for connections
+      // in synchronous mode.
+      final LDAPConnectionOptions synchronousOptions = options.duplicate();
+      synchronousOptions.setUseSynchronousMode(true);
+      final LDAPConnection synchronousConn = new LDAPConnection(
+           synchronousOptions, "localhost", ds.getListenPort());
+      conns.add(synchronousConn);
+      assertFalse(synchronousConn.getConnectionInternals(true).
+           useSharedReader());
+      assertNotNull(synchronousConn.getRootDSE());
+    }
+    finally
+    {
+      for (final LDAPConnection conn : conns)
+      {
+        conn.close();
+      }
+    }
+  }
+
+
+
   /**
    * Ensures that the last communication time for the provided connection has
    * been updated since the last value.
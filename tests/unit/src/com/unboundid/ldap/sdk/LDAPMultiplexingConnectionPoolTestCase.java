@@ -0,0 +1,530 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.ldap.sdk;
+
+
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.interceptor.
+            InMemoryInterceptedSearchRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryOperationInterceptor;
+import com.unboundid.util.LDAPSDKUsageException;
+
+
+
+/**
+ * This class provides a set of test cases for the LDAP multiplexing connection
+ * pool.
+ */
+public final class LDAPMultiplexingConnectionPoolTestCase
+       extends LDAPSDKTestCase
+{
+  /**
+   * The base DN for searches that will block until the current latch is
+   * released.
+   */
+  private static final String BLOCKED_BASE_DN = "ou=blocked,dc=example,dc=com";
+
+
+
+  // The latch that searches below the blocked base DN will wait on.
+  private final AtomicReference<CountDownLatch> blockLatch =
+       new AtomicReference<CountDownLatch>(new CountDownLatch(0));
+
+  // The directory server instance to use for testing.
+  private InMemoryDirectoryServer ds = null;
+
+
+
+  /**
+   * Prepares a directory server instance to use in the testing.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @BeforeClass()
+  public void setUp()
+         throws Exception
+  {
+    final InMemoryDirectoryServerConfig config =
+         new InMemoryDirectoryServerConfig("dc=example,dc=com");
+    config.addInMemoryOperationInterceptor(
+         new InMemoryOperationInterceptor()
+         {
+           @Override()
+           public void processSearchRequest(
+                            final InMemoryInterceptedSearchRequest request)
+           {
+             if (request.getRequest().getBaseDN().equalsIgnoreCase(
+                  BLOCKED_BASE_DN))
+             {
+               try
+               {
+                 blockLatch.get().await(30L, TimeUnit.SECONDS);
+               }
+               catch (final InterruptedException ie)
+               {
+                 // No action is required.
+               }
+             }
+           }
+         });
+
+    ds = new InMemoryDirectoryServer(config);
+    ds.add(
+         "dn: dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: domain",
+         "dc: example");
+    ds.startListening();
+  }
+
+
+
+  /**
+   * Cleans up after testing has completed.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @AfterClass()
+  public void cleanUp()
+         throws Exception
+  {
+    blockLatch.get().countDown();
+    ds.shutDown(true);
+  }
+
+
+
+  /**
+   * Creates a pool that connects to the test server.
+   *
+   * @param  numConnections  The number of connections for the pool.
+   * @param  maxOperations   The maximum number of outstanding operations per
+   *                         connection.
+   *
+   * @return  The pool that was created.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  private LDAPMultiplexingConnectionPool createPool(final int numConnections,
+                                                    final int maxOperations)
+          throws Exception
+  {
+    return new LDAPMultiplexingConnectionPool(
+         new SingleServerSet("localhost", ds.getListenPort()), null,
+         numConnections, maxOperations);
+  }
+
+
+
+  /**
+   * Creates a search request targeting the blocked base DN.
+   *
+   * @param  listener  The listener to use for the search.
+   *
+   * @return  The search request that was created.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  private static SearchRequest createBlockedSearch(
+                                    final TestAsyncListener listener)
+          throws Exception
+  {
+    return new SearchRequest(listener, BLOCKED_BASE_DN, SearchScope.BASE,
+         "(objectClass=*)");
+  }
+
+
+
+  /**
+   * Tests the behavior of the pool when processing operations synchronously.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testSynchronousOperations()
+         throws Exception
+  {
+    final LDAPMultiplexingConnectionPool pool = createPool(2, 10);
+    pool.setConnectionPoolName("testSynchronousOperations");
+
+    assertEquals(pool.getConnectionPoolName(), "testSynchronousOperations");
+    assertEquals(pool.getMaxOperationsPerConnection(), 10);
+    assertEquals(pool.getMaximumAvailableConnections(), 2);
+    assertEquals(pool.getCurrentAvailableConnections(), 2);
+    assertEquals(pool.getNumOutstandingOperations(), 0);
+    assertEquals(pool.getMaxWaitTimeMillis(), 0L);
+    assertNotNull(pool.getHealthCheck());
+    assertNotNull(pool.toString());
+    assertFalse(pool.isClosed());
+
+    assertNotNull(pool.getRootDSE());
+    assertNotNull(pool.getEntry("dc=example,dc=com"));
+
+    assertEquals(pool.add(
+         "dn: ou=sync,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: organizationalUnit",
+         "ou: sync").getResultCode(),
+         ResultCode.SUCCESS);
+    assertEquals(pool.modify(
+         "dn: ou=sync,dc=example,dc=com",
+         "changetype: modify",
+         "replace: description",
+         "description: foo").getResultCode(),
+         ResultCode.SUCCESS);
+    assertTrue(pool.compare("ou=sync,dc=example,dc=com", "description",
+         "foo").compareMatched());
+    assertEquals(pool.delete("ou=sync,dc=example,dc=com").getResultCode(),
+         ResultCode.SUCCESS);
+
+    // Checked-out connections count against the limit until released.
+    final LDAPConnection conn = pool.getConnection();
+    assertTrue(conn.isConnected());
+    assertEquals(pool.getNumOutstandingOperations(), 1);
+    pool.releaseConnection(conn);
+    assertEquals(pool.getNumOutstandingOperations(), 0);
+
+    assertTrue(pool.getConnectionPoolStatistics().
+         getNumSuccessfulCheckouts() > 0L);
+
+    pool.close();
+    assertTrue(pool.isClosed());
+
+    try
+    {
+      pool.getConnection();
+      fail("Expected an exception when getting a connection from a closed " +
+           "pool");
+    }
+    catch (final LDAPException le)
+    {
+      assertEquals(le.getResultCode(), ResultCode.CONNECT_ERROR);
+    }
+  }
+
+
+
+  /**
+   * Tests the behavior of the pool when processing operations asynchronously.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testAsynchronousOperations()
+         throws Exception
+  {
+    final LDAPMultiplexingConnectionPool pool = createPool(2, 10);
+    final TestAsyncListener listener = new TestAsyncListener();
+
+    AsyncRequestID requestID = pool.asyncAdd(new AddRequest(
+         "dn: ou=async,dc=example,dc=com",
+         "objectClass: top",
+         "objectClass: organizationalUnit",
+         "ou: async"), listener);
+    assertEquals(requestID.get().getResultCode(), ResultCode.SUCCESS);
+
+    requestID = pool.asyncModify(new ModifyRequest(
+         "dn: ou=async,dc=example,dc=com",
+         "changetype: modify",
+         "replace: description",
+         "description: foo"), null);
+    assertEquals(requestID.get().getResultCode(), ResultCode.SUCCESS);
+
+    requestID = pool.asyncCompare(new CompareRequest(
+         "ou=async,dc=example,dc=com", "description", "foo"), listener);
+    assertEquals(requestID.get().getResultCode(), ResultCode.COMPARE_TRUE);
+
+    requestID = pool.asyncSearch(new SearchRequest(listener,
+         "dc=example,dc=com", SearchScope.SUB, "(ou=async)"));
+    assertEquals(requestID.get().getResultCode(), ResultCode.SUCCESS);
+
+    requestID = pool.asyncModifyDN(new ModifyDNRequest(
+         "ou=async,dc=example,dc=com", "ou=async2", true), listener);
+    assertEquals(requestID.get().getResultCode(), ResultCode.SUCCESS);
+
+    requestID = pool.asyncDelete(
+         new DeleteRequest("ou=async2,dc=example,dc=com"), listener);
+    assertEquals(requestID.get().getResultCode(), ResultCode.SUCCESS);
+
+    assertEquals(listener.getWriteResults(), 3);
+    assertEquals(listener.getCompareResults(), 1);
+    assertEquals(listener.getSearchResults(), 1);
+    assertEquals(listener.getSearchEntries(), 1);
+    assertEquals(pool.getNumOutstandingOperations(), 0);
+
+    try
+    {
+      pool.asyncSearch(new SearchRequest("dc=example,dc=com", SearchScope.BASE,
+           "(objectClass=*)"));
+      fail("Expected an exception for an async search without a listener");
+    }
+    catch (final LDAPException le)
+    {
+      assertEquals(le.getResultCode(), ResultCode.PARAM_ERROR);
+    }
+
+    assertEquals(pool.getNumOutstandingOperations(), 0);
+    pool.close();
+  }
+
+
+
+  /**
+   * Tests to ensure that operations are spread across the connections based on
+   * the number of outstanding operations, and that the per-connection limit is
+   * enforced.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testLeastOutstandingSelectionAndLimit()
+         throws Exception
+  {
+    final LDAPMultiplexingConnectionPool pool = createPool(2, 2);
+    final CountDownLatch latch = new CountDownLatch(1);
+    blockLatch.set(latch);
+
+    try
+    {
+      final TestAsyncListener listener = new TestAsyncListener();
+      final AsyncRequestID[] requestIDs = new AsyncRequestID[4];
+      for (int i=0; i < requestIDs.length; i++)
+      {
+        requestIDs[i] = pool.asyncSearch(createBlockedSearch(listener));
+      }
+
+      assertEquals(pool.getNumOutstandingOperations(), 4);
+      assertEquals(pool.getCurrentAvailableConnections(), 0);
+
+      try
+      {
+        pool.asyncSearch(createBlockedSearch(listener));
+        fail("Expected an exception when all connections are at the limit");
+      }
+      catch (final LDAPException le)
+      {
+        assertEquals(le.getResultCode(), ResultCode.CONNECT_ERROR);
+      }
+
+      latch.countDown();
+      for (final AsyncRequestID requestID : requestIDs)
+      {
+        assertEquals(requestID.get().getResultCode(),
+             ResultCode.NO_SUCH_OBJECT);
+      }
+
+      assertEquals(pool.getNumOutstandingOperations(), 0);
+      assertEquals(pool.getCurrentAvailableConnections(), 2);
+      assertEquals(pool.getConnectionPoolStatistics().getNumFailedCheckouts(),
+           1L);
+    }
+    finally
+    {
+      latch.countDown();
+      pool.close();
+    }
+  }
+
+
+
+  /**
+   * Tests to ensure that a thread will wait for capacity to become available
+   * if a maximum wait time is configured.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testWaitForCapacity()
+         throws Exception
+  {
+    final LDAPMultiplexingConnectionPool pool = createPool(1, 1);
+    pool.setMaxWaitTimeMillis(30000L);
+    assertEquals(pool.getMaxWaitTimeMillis(), 30000L);
+
+    final CountDownLatch latch = new CountDownLatch(1);
+    blockLatch.set(latch);
+
+    try
+    {
+      final AsyncRequestID requestID =
+           pool.asyncSearch(createBlockedSearch(new TestAsyncListener()));
+
+      final Thread t = new Thread()
+      {
+        @Override()
+        public void run()
+        {
+          try
+          {
+            Thread.sleep(50L);
+          }
+          catch (final InterruptedException ie)
+          {
+            // No action is required.
+          }
+
+          latch.countDown();
+        }
+      };
+      t.start();
+
+      assertNotNull(pool.getRootDSE());
+      t.join();
+
+      assertEquals(requestID.get().getResultCode(),
+           ResultCode.NO_SUCH_OBJECT);
+      assertEquals(pool.getConnectionPoolStatistics().
+           getNumSuccessfulCheckoutsAfterWaiting(), 1L);
+    }
+    finally
+    {
+      latch.countDown();
+      pool.close();
+    }
+  }
+
+
+
+  /**
+   * Tests to ensure that the capacity used by abandoned and canceled
+   * operations is reclaimed.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testAbandonAndCancel()
+         throws Exception
+  {
+    final LDAPMultiplexingConnectionPool pool = createPool(1, 1);
+    final CountDownLatch latch = new CountDownLatch(1);
+    blockLatch.set(latch);
+
+    try
+    {
+      final TestAsyncListener listener = new TestAsyncListener();
+      final AsyncRequestID requestID1 =
+           pool.asyncSearch(createBlockedSearch(listener));
+      assertEquals(pool.getNumOutstandingOperations(), 1);
+
+      pool.abandon(requestID1);
+      assertEquals(pool.getNumOutstandingOperations(), 0);
+
+      // Canceling the request through the async request ID will not notify the
+      // pool directly, but the capacity should be reclaimed when it is needed.
+      final AsyncRequestID requestID2 =
+           pool.asyncSearch(createBlockedSearch(listener));
+      assertTrue(requestID2.cancel(true));
+      assertEquals(pool.getNumOutstandingOperations(), 1);
+
+      final AsyncRequestID requestID3 =
+           pool.asyncSearch(createBlockedSearch(listener));
+      assertEquals(pool.getNumOutstandingOperations(), 1);
+
+      latch.countDown();
+      assertEquals(requestID3.get().getResultCode(),
+           ResultCode.NO_SUCH_OBJECT);
+      assertEquals(pool.getNumOutstandingOperations(), 0);
+    }
+    finally
+    {
+      latch.countDown();
+      pool.close();
+    }
+  }
+
+
+
+  /**
+   * Tests to ensure that a connection that is closed will be replaced.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testReplaceClosedConnection()
+         throws Exception
+  {
+    final LDAPMultiplexingConnectionPool pool = createPool(1, 5);
+
+    final LDAPConnection conn = pool.getConnection();
+    pool.releaseDefunctConnection(conn);
+    assertFalse(conn.isConnected());
+    assertEquals(pool.getNumOutstandingOperations(), 0);
+
+    final LDAPConnection newConn = pool.getConnection();
+    assertNotSame(newConn, conn);
+    assertTrue(newConn.isConnected());
+    pool.releaseConnection(newConn);
+
+    // Closing the connection without notifying the pool should cause it to be
+    // replaced on the next checkout.
+    newConn.terminate(null);
+    assertFalse(newConn.isConnected());
+    assertNotNull(pool.getRootDSE());
+    assertEquals(pool.getCurrentAvailableConnections(), 1);
+
+    pool.close();
+  }
+
+
+
+  /**
+   * Tests to ensure that connections operating in synchronous mode are
+   * rejected.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test(expectedExceptions = { LDAPException.class })
+  public void testSynchronousModeRejected()
+         throws Exception
+  {
+    final LDAPConnectionOptions options = new LDAPConnectionOptions();
+    options.setUseSynchronousMode(true);
+
+    new LDAPMultiplexingConnectionPool(
+         new SingleServerSet("localhost", ds.getListenPort(), options), null,
+         2, 10);
+  }
+
+
+
+  /**
+   * Tests to ensure that an invalid maximum number of operations per
+   * connection is rejected.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test(expectedExceptions = { LDAPSDKUsageException.class })
+  public void testInvalidMaxOperationsPerConnection()
+         throws Exception
+  {
+    createPool(1, 0);
+  }
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright 2017 UnboundID Corp.
+ * All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2017 UnboundID Corp.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+package com.unboundid.util;
+
+
+
+import org.testng.annotations.Test;
+
+
+
+/**
+ * This class provides a set of test cases for the {@code ByteArrayPool}
+ * class.
+ */
+public final class ByteArrayPoolTestCase
+       extends UtilTestCase
+{
+  /**
+   * Tests the behavior of a pool created with the default settings.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testDefaultSettings()
+         throws Exception
+  {
+    final ByteArrayPool pool = new ByteArrayPool();
+
+    assertEquals(pool.getMinArraySize(), ByteArrayPool.DEFAULT_MIN_ARRAY_SIZE);
+    assertEquals(pool.getMaxArraySize(), ByteArrayPool.DEFAULT_MAX_ARRAY_SIZE);
+    assertEquals(pool.getNumHits(), 0L);
+    assertEquals(pool.getNumMisses(), 0L);
+    assertTrue(Double.isNaN(pool.getHitPercent()));
+    assertEquals(pool.getNumOutstanding(), 0L);
+    assertEquals(pool.getNumReleased(), 0L);
+    assertEquals(pool.getNumDiscarded(), 0L);
+    assertEquals(pool.getNumPooledArrays(), 0);
+    assertEquals(pool.getNumPooledBytes(), 0L);
+    assertNotNull(pool.toString());
+  }
+
+
+
+  /**
+   * Tests the behavior when acquiring and releasing arrays, including the
+   * size classes used for the arrays and the hit and miss counts.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testAcquireAndRelease()
+         throws Exception
+  {
+    final ByteArrayPool pool = new ByteArrayPool(1000, 10000, 1000000);
+    assertEquals(pool.getMinArraySize(), 1024);
+    assertEquals(pool.getMaxArraySize(), 16384);
+
+    final byte[] a1 = pool.acquire(0);
+    assertEquals(a1.length, 1024);
+
+    final byte[] a2 = pool.acquire(1025);
+    assertEquals(a2.length, 2048);
+
+    final byte[] a3 = pool.acquire(16384);
+    assertEquals(a3.length, 16384);
+
+    assertEquals(pool.getNumHits(), 0L);
+    assertEquals(pool.getNumMisses(), 3L);
+    assertEquals(pool.getNumOutstanding(), 3L);
+    assertEquals(pool.getHitPercent(), 0.0d);
+
+    pool.release(a1);
+    pool.release(a2);
+    pool.release(a3);
+    assertEquals(pool.getNumOutstanding(), 0L);
+    assertEquals(pool.getNumReleased(), 3L);
+    assertEquals(pool.getNumPooledArrays(), 3);
+    assertEquals(pool.getNumPooledBytes(), (1024L + 2048L + 16384L));
+
+    assertSame(pool.acquire(2000), a2);
+    assertSame(pool.acquire(1), a1);
+    assertNotSame(pool.acquire(5000), a3);
+
+    assertEquals(pool.getNumHits(), 2L);
+    assertEquals(pool.getNumMisses(), 4L);
+    assertEquals(pool.getNumOutstanding(), 3L);
+    assertEquals(pool.getNumPooledArrays(), 1);
+    assertTrue(Math.abs(pool.getHitPercent() - (200.0d / 6.0d)) < 0.001d);
+
+    pool.release(null);
+    assertEquals(pool.getNumReleased(), 3L);
+    assertNotNull(pool.toString());
+  }
+
+
+
+  /**
+   * Tests the behavior for arrays that cannot be held in the pool.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testArraysNotPooled()
+         throws Exception
+  {
+    final ByteArrayPool pool = new ByteArrayPool(1024, 4096, 1000000);
+
+    final byte[] oversize = pool.acquire(5000);
+    assertEquals(oversize.length, 5000);
+    assertEquals(pool.getNumMisses(), 1L);
+    assertEquals(pool.getNumOutstanding(), 0L);
+
+    pool.release(oversize);
+    pool.release(new byte[100]);
+    pool.release(new byte[1500]);
+    assertEquals(pool.getNumDiscarded(), 3L);
+    assertEquals(pool.getNumReleased(), 0L);
+    assertEquals(pool.getNumPooledArrays(), 0);
+    assertEquals(pool.getNumOutstanding(), 0L);
+  }
+
+
+
+  /**
+   * Tests to ensure that the number of arrays retained in each size class is
+   * limited, and that the pool can be cleared.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testSizeClassLimitAndClear()
+         throws Exception
+  {
+    final ByteArrayPool pool = new ByteArrayPool(1024, 2048, 2048);
+
+    final byte[][] small = new byte[3][];
+    final byte[][] large = new byte[2][];
+    for (int i=0; i < small.length; i++)
+    {
+      small[i] = pool.acquire(1024);
+    }
+    for (int i=0; i < large.length; i++)
+    {
+      large[i] = pool.acquire(2048);
+    }
+    assertEquals(pool.getNumOutstanding(), 5L);
+
+    for (final byte[] a : small)
+    {
+      pool.release(a);
+    }
+    for (final byte[] a : large)
+    {
+      pool.release(a);
+    }
+
+    // Two 1024-byte arrays and one 2048-byte array fit in the retained size.
+    assertEquals(pool.getNumPooledArrays(), 3);
+    assertEquals(pool.getNumPooledBytes(), 4096L);
+    assertEquals(pool.getNumReleased(), 3L);
+    assertEquals(pool.getNumDiscarded(), 2L);
+    assertEquals(pool.getNumOutstanding(), 0L);
+
+    final byte[] outstanding = pool.acquire(1024);
+    assertEquals(pool.getNumHits(), 1L);
+
+    pool.clear();
+    assertEquals(pool.getNumPooledArrays(), 0);
+    assertEquals(pool.getNumPooledBytes(), 0L);
+    assertEquals(pool.getNumHits(), 0L);
+    assertEquals(pool.getNumMisses(), 0L);
+    assertEquals(pool.getNumReleased(), 0L);
+    assertEquals(pool.getNumDiscarded(), 0L);
+    assertEquals(pool.getNumOutstanding(), 1L);
+
+    pool.release(outstanding);
+    assertEquals(pool.getNumOutstanding(), 0L);
+    assertEquals(pool.getNumPooledArrays(), 1);
+  }
+
+
+
+  /**
+   * Tests to ensure that arrays which were not obtained from the pool, or
+   * which have already been released, will not be retained when no arrays of
+   * the same size class are outstanding.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testInvalidReleases()
+         throws Exception
+  {
+    final ByteArrayPool pool = new ByteArrayPool(1024, 4096, 1000000);
+
+    final byte[] a = pool.acquire(1024);
+    pool.release(a);
+    assertEquals(pool.getNumReleased(), 1L);
+    assertEquals(pool.getNumOutstanding(), 0L);
+    assertEquals(pool.getNumInvalidReleases(), 0L);
+
+    pool.release(a);
+    pool.release(new byte[1024]);
+    pool.release(new byte[4096]);
+    assertEquals(pool.getNumInvalidReleases(), 3L);
+    assertEquals(pool.getNumReleased(), 1L);
+    assertEquals(pool.getNumDiscarded(), 0L);
+    assertEquals(pool.getNumOutstanding(), 0L);
+    assertEquals(pool.getNumPooledArrays(), 1);
+
+    final byte[] b = pool.acquire(1000);
+    final byte[] c = pool.acquire(1000);
+    assertSame(b, a);
+    assertNotSame(c, a);
+    assertEquals(pool.getNumOutstanding(), 2L);
+
+    pool.release(b);
+    pool.release(c);
+    pool.release(b);
+    assertEquals(pool.getNumInvalidReleases(), 4L);
+    assertEquals(pool.getNumOutstanding(), 0L);
+    assertEquals(pool.getNumPooledArrays(), 2);
+    assertTrue(pool.toString().contains("numInvalidReleases=4"));
+
+    // Outstanding arrays are counted separately for each size class, so an
+    // array from one size class cannot be used to release another.
+    final byte[] d = pool.acquire(1024);
+    pool.release(new byte[2048]);
+    assertEquals(pool.getNumInvalidReleases(), 5L);
+    assertEquals(pool.getNumOutstanding(), 1L);
+    pool.release(d);
+    assertEquals(pool.getNumInvalidReleases(), 5L);
+    assertEquals(pool.getNumOutstanding(), 0L);
+
+    pool.clear();
+    assertEquals(pool.getNumInvalidReleases(), 0L);
+  }
+
+
+
+  /**
+   * Tests the behavior of byte string buffers that obtain their backing arrays
+   * from a pool.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testPooledByteStringBuffer()
+         throws Exception
+  {
+    final ByteArrayPool pool = new ByteArrayPool(16, 1024, 65536);
+
+    final ByteStringBuffer buffer = new ByteStringBuffer(0, pool);
+    assertEquals(buffer.capacity(), 0);
+    assertEquals(pool.getNumOutstanding(), 0L);
+
+    for (int i=0; i < 100; i++)
+    {
+      buffer.append("0123456789");
+    }
+    assertEquals(buffer.length(), 1000);
+    assertEquals(buffer.capacity(), 1024);
+    assertEquals(pool.getNumOutstanding(), 1L);
+    assertTrue(pool.getNumReleased() > 0L);
+
+    final StringBuilder expected = new StringBuilder();
+    for (int i=0; i < 100; i++)
+    {
+      expected.append("0123456789");
+    }
+    assertEquals(buffer.toString(), expected.toString());
+
+    buffer.release();
+    assertEquals(buffer.length(), 0);
+    assertEquals(buffer.capacity(), 0);
+    assertEquals(pool.getNumOutstanding(), 0L);
+
+    buffer.append("foo");
+    assertEquals(buffer.toString(), "foo");
+    assertEquals(pool.getNumOutstanding(), 1L);
+    assertTrue(pool.getNumHits() > 0L);
+
+    buffer.release();
+    buffer.release();
+    assertEquals(pool.getNumOutstanding(), 0L);
+
+    final ByteStringBuffer presized = new ByteStringBuffer(100, pool);
+    assertEquals(presized.capacity(), 128);
+    assertEquals(pool.getNumOutstanding(), 1L);
+    presized.release();
+    assertEquals(pool.getNumOutstanding(), 0L);
+
+    final ByteStringBuffer trimmed = new ByteStringBuffer(0, pool);
+    trimmed.append("trimmed");
+    assertEquals(pool.getNumOutstanding(), 1L);
+    trimmed.trimToSize();
+    assertEquals(trimmed.capacity(), 7);
+    assertEquals(trimmed.toString(), "trimmed");
+    assertEquals(pool.getNumOutstanding(), 0L);
+    trimmed.release();
+    trimmed.release();
+    assertEquals(trimmed.length(), 0);
+    assertEquals(pool.getNumOutstanding(), 0L);
+    assertEquals(pool.getNumInvalidReleases(), 0L);
+
+    final ByteStringBuffer unpooled = new ByteStringBuffer(100, null);
+    unpooled.append("bar");
+    assertEquals(unpooled.capacity(), 100);
+    unpooled.release();
+    assertEquals(unpooled.length(), 0);
+    assertEquals(unpooled.capacity(), 100);
+  }
+}
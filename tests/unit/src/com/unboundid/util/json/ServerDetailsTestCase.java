@@ -33,7 +33,9 @@ import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
 import com.unboundid.ldap.listener.InMemoryListenerConfig;
 import com.unboundid.ldap.sdk.FailoverServerSet;
 import com.unboundid.ldap.sdk.FastestConnectServerSet;
+import com.unboundid.ldap.sdk.FastestResponseServerSet;
 import com.unboundid.ldap.sdk.FewestConnectionsServerSet;
+import com.unboundid.ldap.sdk.LDAPConnection;
 import com.unboundid.ldap.sdk.LDAPException;
 import com.unboundid.ldap.sdk.LDAPSDKTestCase;
 import com.unboundid.ldap.sdk.RoundRobinServerSet;
@@ -367,6 +369,49 @@ public final class ServerDetailsTestCase
 
 
 
+  /**
+   * Tests the behavior for the case in which the server-details references a
+   * fastest response set.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test()
+  public void testFastestResponseSet()
+         throws Exception
+  {
+    final JSONObject o = new JSONObject(
+         new JSONField("server-details", new JSONObject(
+              new JSONField("fastest-response-set", new JSONObject(
+                   new JSONField("servers", new JSONArray(
+                        new JSONObject(
+                             new JSONField("address", "localhost"),
+                             new JSONField("port", ds.getListenPort("LDAP1"))),
+                        new JSONObject(
+                             new JSONField("address", "localhost"),
+                             new JSONField("port",
+                                  ds.getListenPort("LDAP2"))))))))));
+
+    final LDAPConnectionDetailsJSONSpecification spec =
+         new LDAPConnectionDetailsJSONSpecification(o);
+
+    assertNotNull(spec.getServerSet());
+    assertTrue(spec.getServerSet() instanceof FastestResponseServerSet);
+
+    final FastestResponseServerSet serverSet =
+         (FastestResponseServerSet) spec.getServerSet();
+
+    assertTrue(Arrays.equals(serverSet.getAddresses(),
+         new String[] { "localhost", "localhost" }));
+    assertTrue(Arrays.equals(serverSet.getPorts(),
+         new int[] { ds.getListenPort("LDAP1"), ds.getListenPort("LDAP2") }));
+
+    final LDAPConnection conn = spec.createConnection();
+    assertTrue(conn.isConnected());
+    conn.close();
+  }
+
+
+
   /**
    * Tests the behavior for the case in which the server-details references a
    * round-robin set.